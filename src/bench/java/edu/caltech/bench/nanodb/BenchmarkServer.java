@@ -0,0 +1,145 @@
+package edu.caltech.bench.nanodb;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.BufferManager;
+import edu.caltech.nanodb.storage.TupleFile;
+import edu.caltech.nanodb.transactions.TransactionManager;
+
+
+/**
+ * This class runs a database server in a temporary data directory for the
+ * benchmarks that need tables, and loads the tables' synthetic datasets.
+ * Datasets are generated from {@link #SEED} so that every run of a
+ * benchmark measures the same data.
+ */
+public class BenchmarkServer {
+
+    /** The seed of the random number generators that produce datasets. */
+    public static final long SEED = 122L;
+
+
+    /** The number of rows that {@link #loadTable} adds per transaction. */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+
+    /** The temporary data directory of the server. */
+    private File baseDir;
+
+
+    /** The database server that the benchmark runs against. */
+    private NanoDBServer server;
+
+
+    /**
+     * Starts a database server with the default properties.
+     *
+     * @throws IOException if the data directory couldn't be created
+     */
+    public BenchmarkServer() throws IOException {
+        this(new Properties());
+    }
+
+
+    /**
+     * Starts a database server with the specified properties, in a new
+     * temporary data directory.
+     *
+     * @param props the server properties to start the server with
+     * @throws IOException if the data directory couldn't be created
+     */
+    public BenchmarkServer(Properties props) throws IOException {
+        baseDir = Files.createTempDirectory("nanodb-bench").toFile();
+        props.setProperty(ServerProperties.PROP_BASE_DIRECTORY,
+            baseDir.getAbsolutePath());
+
+        server = new NanoDBServer();
+        server.startup(props);
+    }
+
+
+    public NanoDBServer getServer() {
+        return server;
+    }
+
+
+    /**
+     * Executes a command, reporting a failure as an exception so that the
+     * benchmark doesn't measure a broken setup.
+     *
+     * @param command the command to execute
+     */
+    public void doCommand(String command) {
+        CommandResult result = server.doCommand(command, false);
+        if (result.failed()) {
+            throw new IllegalStateException("Command failed:  " + command,
+                result.getFailure());
+        }
+    }
+
+
+    /**
+     * Returns the tuple file of a table.
+     *
+     * @param tableName the name of the table
+     * @return the tuple file that stores the table
+     */
+    public TupleFile getTupleFile(String tableName) {
+        return server.getStorageManager().getTableManager()
+            .openTable(tableName).getTupleFile();
+    }
+
+
+    /**
+     * Adds rows to a table.  The rows are added directly to the table's tuple
+     * file, which is much faster than issuing an <tt>INSERT</tt> for each
+     * row, but bypasses constraints and indexes, and doesn't update the
+     * table's statistics.  The session's pins are released after each row, as the server does
+     * after each command, so that the pages that were used can be evicted.
+     * The rows are committed in batches.
+     *
+     * @param tableName the name of the table to load
+     * @param rows the rows to add to the table
+     */
+    public void loadTable(String tableName, Iterable<? extends Tuple> rows) {
+        TransactionManager txnManager =
+            server.getStorageManager().getTransactionManager();
+        BufferManager bufferManager =
+            server.getStorageManager().getBufferManager();
+        TupleFile tupleFile = getTupleFile(tableName);
+
+        int count = 0;
+        txnManager.startTransaction(false);
+        for (Tuple row : rows) {
+            tupleFile.addTuple(row).unpin();
+            bufferManager.unpinAllSessionPages();
+
+            if (++count % LOAD_BATCH_SIZE == 0) {
+                txnManager.commitTransaction();
+                txnManager.startTransaction(false);
+            }
+        }
+        txnManager.commitTransaction();
+    }
+
+
+    /**
+     * Shuts down the server and removes its data directory.
+     *
+     * @throws IOException if the data directory couldn't be removed
+     */
+    public void shutdown() throws IOException {
+        server.shutdown();
+        FileUtils.deleteDirectory(baseDir);
+    }
+}
@@ -0,0 +1,113 @@
+package edu.caltech.bench.nanodb.expressions;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleComparator;
+import edu.caltech.nanodb.expressions.TupleHasher;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * Measures comparing tuples with a {@link TupleComparator} and with the
+ * static comparison methods, and hashing tuples with {@link TupleHasher}.
+ * Each benchmark operation processes all of the generated tuples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TupleComparatorBenchmark {
+
+    /** The number of tuples that are compared or hashed. */
+    private static final int NUM_TUPLES = 1024;
+
+
+    private TupleLiteral[] tuples;
+
+
+    private TupleComparator comparator;
+
+
+    private List<Integer> keyColumns;
+
+
+    @Setup
+    public void setup() {
+        Schema schema = new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(20)),
+            new ColumnInfo("C", ColumnType.DOUBLE)
+        );
+
+        // Few distinct values in the first column, so that the comparisons
+        // often need to look at the second column too.
+        SplittableRandom random = new SplittableRandom(BenchmarkServer.SEED);
+        tuples = new TupleLiteral[NUM_TUPLES];
+        for (int i = 0; i < NUM_TUPLES; i++) {
+            tuples[i] = new TupleLiteral(random.nextInt(16),
+                "value" + random.nextInt(1000), random.nextDouble());
+        }
+
+        List<OrderByExpression> orderBy = new ArrayList<>();
+        orderBy.add(new OrderByExpression(
+            new ColumnValue(new ColumnName("A")), true));
+        orderBy.add(new OrderByExpression(
+            new ColumnValue(new ColumnName("B")), false));
+        comparator = new TupleComparator(schema, orderBy);
+
+        keyColumns = List.of(0, 1);
+    }
+
+
+    @Benchmark
+    public void compareOrderBy(Blackhole bh) {
+        for (int i = 1; i < NUM_TUPLES; i++)
+            bh.consume(comparator.compare(tuples[i - 1], tuples[i]));
+    }
+
+
+    @Benchmark
+    public void compareTuples(Blackhole bh) {
+        for (int i = 1; i < NUM_TUPLES; i++)
+            bh.consume(TupleComparator.compareTuples(tuples[i - 1], tuples[i]));
+    }
+
+
+    @Benchmark
+    public void hashAllColumns(Blackhole bh) {
+        for (TupleLiteral tuple : tuples)
+            bh.consume(TupleHasher.hashTuple(tuple));
+    }
+
+
+    @Benchmark
+    public void hashKeyColumns(Blackhole bh) {
+        for (TupleLiteral tuple : tuples)
+            bh.consume(TupleHasher.hashTuple(tuple, keyColumns));
+    }
+}
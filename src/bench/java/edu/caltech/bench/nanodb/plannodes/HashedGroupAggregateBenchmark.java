@@ -0,0 +1,113 @@
+package edu.caltech.bench.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.functions.FunctionDirectory;
+import edu.caltech.nanodb.plannodes.HashedGroupAggregateNode;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.plannodes.TupleBagNode;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * Measures grouping and aggregating rows with a
+ * {@link HashedGroupAggregateNode}, computing <tt>COUNT</tt>, <tt>SUM</tt>
+ * and <tt>MAX</tt> of each group, for few and for many groups.  Each
+ * benchmark operation aggregates all of the rows and produces all of the
+ * groups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashedGroupAggregateBenchmark {
+
+    /** The number of rows to aggregate. */
+    private static final int NUM_ROWS = 100000;
+
+
+    /** The number of distinct values of the grouping column. */
+    @Param({"16", "10000"})
+    public int numGroups;
+
+
+    private PlanNode plan;
+
+
+    @Setup
+    public void setup() {
+        Schema schema = new Schema(
+            new ColumnInfo("G", ColumnType.INTEGER),
+            new ColumnInfo("V", ColumnType.INTEGER)
+        );
+
+        SplittableRandom random = new SplittableRandom(BenchmarkServer.SEED);
+        TupleBagNode bag = new TupleBagNode(schema);
+        for (int i = 0; i < NUM_ROWS; i++) {
+            bag.addTuple(new TupleLiteral(random.nextInt(numGroups),
+                random.nextInt(1000)));
+        }
+
+        List<Expression> groupBy = new ArrayList<>();
+        groupBy.add(new ColumnValue(new ColumnName("G")));
+
+        FunctionDirectory functions = new FunctionDirectory();
+        Map<String, FunctionCall> aggregates = new HashMap<>();
+        for (String funcName : new String[] {"COUNT", "SUM", "MAX"}) {
+            FunctionCall call = new FunctionCall(funcName, false,
+                new ColumnValue(new ColumnName("V")));
+            call.resolve(functions);
+            aggregates.put(call.toString(), call);
+        }
+
+        plan = new HashedGroupAggregateNode(bag, groupBy, aggregates);
+        plan.prepare();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        plan.cleanUp();
+    }
+
+
+    @Benchmark
+    public int aggregate() {
+        plan.initialize();
+
+        int count = 0;
+        while (plan.getNextTuple() != null)
+            count++;
+
+        return count;
+    }
+}
@@ -0,0 +1,101 @@
+package edu.caltech.bench.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.plannodes.SortNode;
+import edu.caltech.nanodb.plannodes.TupleBagNode;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * Measures sorting rows with a {@link SortNode}, both entirely in memory
+ * and with a memory limit that forces the rows to be sorted in runs.  Each
+ * benchmark operation sorts and produces all of the rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortNodeBenchmark {
+
+    /** The number of rows to sort. */
+    private static final int NUM_ROWS = 100000;
+
+
+    /**
+     * The memory limit of the sort, in bytes.  Zero means that the sort has
+     * no limit.
+     */
+    @Param({"0", "262144"})
+    public long memoryLimit;
+
+
+    private PlanNode plan;
+
+
+    @Setup
+    public void setup() {
+        Schema schema = new Schema(
+            new ColumnInfo("K", ColumnType.INTEGER),
+            new ColumnInfo("V", ColumnType.VARCHAR(20))
+        );
+
+        SplittableRandom random = new SplittableRandom(BenchmarkServer.SEED);
+        TupleBagNode bag = new TupleBagNode(schema);
+        for (int i = 0; i < NUM_ROWS; i++)
+            bag.addTuple(new TupleLiteral(random.nextInt(), "v" + i));
+
+        List<OrderByExpression> orderBy = new ArrayList<>();
+        orderBy.add(new OrderByExpression(
+            new ColumnValue(new ColumnName("K")), true));
+
+        plan = new SortNode(bag, orderBy,
+            memoryLimit == 0 ? Long.MAX_VALUE : memoryLimit);
+        plan.prepare();
+    }
+
+
+    @TearDown
+    public void tearDown() {
+        plan.cleanUp();
+    }
+
+
+    @Benchmark
+    public int sort() {
+        plan.initialize();
+
+        int count = 0;
+        while (plan.getNextTuple() != null)
+            count++;
+
+        return count;
+    }
+}
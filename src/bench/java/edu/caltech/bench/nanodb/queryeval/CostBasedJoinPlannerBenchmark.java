@@ -0,0 +1,114 @@
+package edu.caltech.bench.nanodb.queryeval;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.queryeval.CostBasedJoinPlanner;
+import edu.caltech.nanodb.queryeval.Planner;
+import edu.caltech.nanodb.sqlparse.ParseUtil;
+
+
+/**
+ * Measures how long the {@link CostBasedJoinPlanner} takes to plan a chain
+ * of equijoins over analyzed tables, for increasing numbers of tables.  The
+ * query is parsed once; only the planning is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CostBasedJoinPlannerBenchmark {
+
+    /** The largest number of tables joined. */
+    private static final int MAX_TABLES = 6;
+
+
+    /** The number of tables joined by the query. */
+    @Param({"2", "4", "6"})
+    public int numTables;
+
+
+    private BenchmarkServer server;
+
+
+    private Planner planner;
+
+
+    private SelectClause selClause;
+
+
+    @Setup
+    public void setup() throws IOException {
+        server = new BenchmarkServer();
+
+        // The tables have different sizes, so that the join order matters.
+        SplittableRandom random = new SplittableRandom(BenchmarkServer.SEED);
+        for (int t = 1; t <= MAX_TABLES; t++) {
+            String tableName = "bench_join" + t;
+            server.doCommand("CREATE TABLE " + tableName +
+                " (a INTEGER, b INTEGER, c VARCHAR(20));");
+
+            List<TupleLiteral> rows = new ArrayList<>();
+            for (int i = 0; i < 100 * t; i++) {
+                rows.add(new TupleLiteral(i, random.nextInt(100 * (t + 1)),
+                    "row" + i));
+            }
+            server.loadTable(tableName, rows);
+            server.doCommand("ANALYZE " + tableName + ";");
+        }
+
+        // bench_join1.b = bench_join2.a AND bench_join2.b = bench_join3.a ...
+        StringBuilder from = new StringBuilder("bench_join1");
+        StringBuilder where = new StringBuilder("bench_join1.c > 'row5'");
+        for (int t = 2; t <= numTables; t++) {
+            from.append(", bench_join").append(t);
+            where.append(String.format(" AND bench_join%d.b = bench_join%d.a",
+                t - 1, t));
+        }
+        String query = "SELECT * FROM " + from + " WHERE " + where + ";";
+
+        SelectCommand cmd = (SelectCommand) ParseUtil.parseCommand(query);
+        selClause = cmd.getSelectClause();
+        selClause.computeSchema(
+            server.getServer().getStorageManager().getTableManager(), null);
+
+        planner = new CostBasedJoinPlanner();
+        planner.setStorageManager(server.getServer().getStorageManager());
+    }
+
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+
+    @Benchmark
+    public PlanNode makePlan() {
+        return planner.makePlan(selClause, null);
+    }
+}
@@ -0,0 +1,163 @@
+package edu.caltech.bench.nanodb.storage;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.BufferManager;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBPage;
+
+
+/**
+ * Measures {@link BufferManager#getPage} when the requested pages are
+ * cached, and when almost all of them must be loaded from the table file,
+ * both from one thread and from several threads contending for the Buffer
+ * Manager.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferManagerBenchmark {
+
+    /** The number of pages that the page cache can hold. */
+    private static final int CACHE_PAGES = 32;
+
+
+    /** The number of pages requested by the cache-hit benchmarks. */
+    private static final int HOT_PAGES = 16;
+
+
+    /** The approximate number of data pages in the table. */
+    private static final int TABLE_PAGES = 1024;
+
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        BenchmarkServer server;
+
+        BufferManager bufferManager;
+
+        DBFile dbFile;
+
+        int numPages;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            server = new BenchmarkServer();
+            server.doCommand(
+                "CREATE TABLE bench_pages (a INTEGER, b VARCHAR(100));");
+
+            // Each row takes up a bit more than 100 bytes.
+            int numRows = TABLE_PAGES * ServerProperties.DEFAULT_PAGE_SIZE / 110;
+            String padding = "x".repeat(100);
+            List<TupleLiteral> rows = new ArrayList<>();
+            for (int i = 0; i < numRows; i++)
+                rows.add(new TupleLiteral(i, padding));
+            server.loadTable("bench_pages", rows);
+            server.getServer().getStorageManager().flushAllData();
+
+            // The table is loaded with the default page cache, and then the
+            // cache is made much smaller than the table.
+            server.getServer().getPropertyRegistry().setPropertyValue(
+                ServerProperties.PROP_PAGECACHE_SIZE,
+                CACHE_PAGES * ServerProperties.DEFAULT_PAGE_SIZE);
+
+            bufferManager = server.getServer().getStorageManager().getBufferManager();
+            dbFile = server.getTupleFile("bench_pages").getDBFile();
+            numPages = dbFile.getNumPages();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            server.shutdown();
+        }
+    }
+
+
+    /**
+     * Each benchmark thread requests its own reproducible sequence of pages.
+     */
+    @State(Scope.Thread)
+    public static class PageSequence {
+        private static final AtomicInteger nextThread = new AtomicInteger();
+
+        SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            random = new SplittableRandom(
+                BenchmarkServer.SEED + nextThread.getAndIncrement());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            SessionState.remove();
+        }
+    }
+
+
+    /**
+     * Gets and releases a page.  A page that is loaded stays pinned by the
+     * session until the end of the command, so the session's pins are also
+     * released, as the server does after each command; otherwise no page
+     * could be evicted.
+     */
+    private static int getPage(Database db, int pageNo) {
+        DBPage dbPage = db.bufferManager.getPage(db.dbFile, pageNo, false);
+        int pinCount = dbPage.getPinCount();
+        dbPage.unpin();
+        db.bufferManager.unpinAllSessionPages();
+        return pinCount;
+    }
+
+
+    @Benchmark
+    public int getPageHit(Database db, PageSequence seq) {
+        return getPage(db, 1 + seq.random.nextInt(HOT_PAGES));
+    }
+
+
+    @Benchmark
+    public int getPageMiss(Database db, PageSequence seq) {
+        return getPage(db, 1 + seq.random.nextInt(db.numPages - 1));
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public int getPageHitContended(Database db, PageSequence seq) {
+        return getPageHit(db, seq);
+    }
+
+
+    @Benchmark
+    @Threads(4)
+    public int getPageMissContended(Database db, PageSequence seq) {
+        return getPageMiss(db, seq);
+    }
+}
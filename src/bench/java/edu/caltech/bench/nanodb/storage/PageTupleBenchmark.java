@@ -0,0 +1,107 @@
+package edu.caltech.bench.nanodb.storage;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.TupleFile;
+
+
+/**
+ * Measures decoding column values from the tuples of a table page with
+ * {@link PageTuple#getColumnValue}.  Each benchmark operation decodes the
+ * values of all of the tuples on one page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageTupleBenchmark {
+
+    private BenchmarkServer server;
+
+
+    /** The tuples of the table's first data page, kept pinned. */
+    private List<PageTuple> tuples;
+
+
+    @Setup
+    public void setup() throws IOException {
+        server = new BenchmarkServer();
+        server.doCommand("CREATE TABLE bench_decode (a INTEGER, b BIGINT, " +
+            "c DOUBLE, d VARCHAR(40), e CHAR(8));");
+
+        // Every tenth value of the first column is NULL.
+        SplittableRandom random = new SplittableRandom(BenchmarkServer.SEED);
+        List<TupleLiteral> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(new TupleLiteral(i % 10 == 0 ? null : random.nextInt(),
+                random.nextLong(), random.nextDouble(),
+                "row" + random.nextInt(1000000), "c" + i % 100));
+        }
+        server.loadTable("bench_decode", rows);
+
+        TupleFile tupleFile = server.getTupleFile("bench_decode");
+        tuples = new ArrayList<>();
+        PageTuple tuple = (PageTuple) tupleFile.getFirstTuple();
+        int pageNo = tuple.getDBPage().getPageNo();
+        while (tuple != null && tuple.getDBPage().getPageNo() == pageNo) {
+            tuple.pin();
+            tuples.add(tuple);
+            tuple = (PageTuple) tupleFile.getNextTuple(tuple);
+        }
+    }
+
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (PageTuple tuple : tuples)
+            tuple.unpin();
+
+        server.shutdown();
+    }
+
+
+    @Benchmark
+    public void decodeAllColumns(Blackhole bh) {
+        for (PageTuple tuple : tuples) {
+            for (int i = 0; i < tuple.getColumnCount(); i++)
+                bh.consume(tuple.getColumnValue(i));
+        }
+    }
+
+
+    @Benchmark
+    public void decodeIntColumn(Blackhole bh) {
+        for (PageTuple tuple : tuples)
+            bh.consume(tuple.getColumnValue(0));
+    }
+
+
+    @Benchmark
+    public void decodeStringColumn(Blackhole bh) {
+        for (PageTuple tuple : tuples)
+            bh.consume(tuple.getColumnValue(3));
+    }
+}
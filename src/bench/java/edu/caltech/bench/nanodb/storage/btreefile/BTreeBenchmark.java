@@ -0,0 +1,112 @@
+package edu.caltech.bench.nanodb.storage.btreefile;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.BufferManager;
+import edu.caltech.nanodb.storage.btreefile.BTreeTupleFile;
+
+
+/**
+ * Measures inserting tuples into a B<sup>+</sup> tree tuple file, and
+ * looking up tuples by their key.  The tree is loaded with
+ * {@link #NUM_ROWS} rows in random order, so that it has several levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BTreeBenchmark {
+
+    /** The number of rows that the tree is loaded with. */
+    private static final int NUM_ROWS = 50000;
+
+
+    private BenchmarkServer server;
+
+
+    private BufferManager bufferManager;
+
+
+    private BTreeTupleFile tupleFile;
+
+
+    private SplittableRandom random;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new BenchmarkServer();
+        server.doCommand("CREATE TABLE bench_btree (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (storage = 'btree');");
+
+        random = new SplittableRandom(BenchmarkServer.SEED);
+        List<TupleLiteral> rows = new ArrayList<>();
+        for (int i = 0; i < NUM_ROWS; i++)
+            rows.add(new TupleLiteral(i, "row" + i));
+
+        // Shuffle the rows so the tree isn't built from sorted input.
+        for (int i = rows.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            rows.set(i, rows.set(j, rows.get(i)));
+        }
+
+        server.loadTable("bench_btree", rows);
+        tupleFile = (BTreeTupleFile) server.getTupleFile("bench_btree");
+        bufferManager = server.getServer().getStorageManager().getBufferManager();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+
+    /**
+     * The pages that are loaded stay pinned by the session until the end of
+     * the command, so each operation releases the session's pins, as the
+     * server does after each command.
+     */
+    private Tuple release(Tuple tuple) {
+        tuple.unpin();
+        bufferManager.unpinAllSessionPages();
+        return tuple;
+    }
+
+
+    @Benchmark
+    public Tuple lookup() {
+        int key = random.nextInt(NUM_ROWS);
+        return release(tupleFile.findFirstTupleEquals(new TupleLiteral(key)));
+    }
+
+
+    @Benchmark
+    public Tuple insert() {
+        int key = random.nextInt();
+        return release(tupleFile.addTuple(new TupleLiteral(key, "new" + key)));
+    }
+}
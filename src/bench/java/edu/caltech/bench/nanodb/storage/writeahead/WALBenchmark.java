@@ -0,0 +1,145 @@
+package edu.caltech.bench.nanodb.storage.writeahead;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.caltech.bench.nanodb.BenchmarkServer;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.writeahead.WALManager;
+import edu.caltech.nanodb.transactions.TransactionManager;
+
+
+/**
+ * Measures the throughput of the write-ahead log:  appending update-page
+ * records to the {@link WALManager}, appending them and forcing the log to
+ * disk after each one, and committing single-update transactions.  The
+ * updates are small changes to one data page of a table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WALBenchmark {
+
+    /** The offset in the page of the region that the updates change. */
+    private static final int UPDATE_OFFSET = 1024;
+
+
+    /** The number of distinct integers in the updated region. */
+    private static final int UPDATE_SLOTS = 256;
+
+
+    private BenchmarkServer server;
+
+
+    private StorageManager storageManager;
+
+
+    private TransactionManager txnManager;
+
+
+    private DBFile dbFile;
+
+
+    private int counter;
+
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new BenchmarkServer();
+        server.doCommand("CREATE TABLE bench_wal (a INTEGER, b VARCHAR(100));");
+
+        List<TupleLiteral> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            rows.add(new TupleLiteral(i, "row" + i));
+        server.loadTable("bench_wal", rows);
+
+        storageManager = server.getServer().getStorageManager();
+        txnManager = storageManager.getTransactionManager();
+        dbFile = server.getTupleFile("bench_wal").getDBFile();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+
+    /**
+     * The append benchmarks run within one transaction per iteration, so
+     * that the log doesn't grow without bound between commits.
+     */
+    @State(Scope.Thread)
+    public static class Transaction {
+        @Setup(Level.Iteration)
+        public void begin(WALBenchmark bench) {
+            bench.txnManager.startTransaction(false);
+        }
+
+        @TearDown(Level.Iteration)
+        public void commit(WALBenchmark bench) {
+            bench.txnManager.commitTransaction();
+        }
+    }
+
+
+    /**
+     * Changes an integer on the table's first data page, and logs the
+     * change.  The updates overwrite the table's rows; the table isn't read
+     * again.  Like a command, the update releases the pages that the session
+     * has pinned, including the log's pages.
+     */
+    private void updatePage() {
+        counter++;
+
+        DBPage dbPage = storageManager.loadDBPage(dbFile, 1);
+        dbPage.writeInt(UPDATE_OFFSET + 4 * (counter % UPDATE_SLOTS), counter);
+        txnManager.recordPageUpdate(dbPage);
+        dbPage.unpin();
+
+        storageManager.getBufferManager().unpinAllSessionPages();
+    }
+
+
+    @Benchmark
+    public void append(Transaction txn) {
+        updatePage();
+    }
+
+
+    @Benchmark
+    public void appendAndForce(Transaction txn) {
+        updatePage();
+        txnManager.forceWAL();
+    }
+
+
+    @Benchmark
+    public void commit() {
+        txnManager.startTransaction(false);
+        updatePage();
+        txnManager.commitTransaction();
+    }
+}
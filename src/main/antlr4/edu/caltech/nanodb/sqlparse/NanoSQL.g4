@@ -21,6 +21,7 @@ command:
 commandNoSemicolon:
         createTableStmt
       | createIndexStmt
+      | createStatsStmt
       | dropTableStmt
       | dropIndexStmt
       | selectStmt
@@ -28,6 +29,9 @@ commandNoSemicolon:
       | updateStmt
       | deleteStmt
       | explainStmt
+      | prepareStmt
+      | executeStmt
+      | deallocateStmt
       | beginTxnStmt
       | commitTxnStmt
       | rollbackTxnStmt
@@ -140,6 +144,17 @@ createIndexStmt:
         ;
 
 
+//============================================================================
+// CREATE STATISTICS ...
+//
+
+createStatsStmt:
+        CREATE STATISTICS (IF NOT EXISTS)?
+        statsName=IDENT ON tableName=IDENT
+        '(' columnName+=IDENT (',' columnName+=IDENT)+ ')'
+        ;
+
+
 //============================================================================
 // DROP INDEX ...
 //
@@ -207,7 +222,7 @@ rollbackTxnStmt:
 // Other utility statements
 //   SHOW PROPERTIES
 //   SET PROPERTY '...' = ...
-//   SHOW '...' STATS
+//   SHOW '...' STATS [TO FILE '...'] [FORMAT '...']
 //   FLUSH
 //   CRASH
 //   EXIT (or QUIT)
@@ -220,7 +235,10 @@ setPropStmt:
         SET PROPERTY name=STRING_LITERAL '=' expression ;
 
 showSystemStatsStmt:
-        SHOW name=STRING_LITERAL STATS ;
+        SHOW name=STRING_LITERAL STATS
+        ( TO FILE fileName=STRING_LITERAL )?
+        ( FORMAT format=STRING_LITERAL )?
+        ;
 
 flushStmt:
         FLUSH ;
@@ -317,12 +335,32 @@ deleteStmt:
 
 
 explainStmt:
-          EXPLAIN selectStmt    # ExplainSelect
-        | EXPLAIN insertStmt    # ExplainInsert
-        | EXPLAIN updateStmt    # ExplainUpdate
-        | EXPLAIN deleteStmt    # ExplainDelete
+          EXPLAIN ANALYZE? selectStmt    # ExplainSelect
+        | EXPLAIN ANALYZE? insertStmt    # ExplainInsert
+        | EXPLAIN ANALYZE? updateStmt    # ExplainUpdate
+        | EXPLAIN ANALYZE? deleteStmt    # ExplainDelete
         ;
 
+//============================================================================
+// Prepared statements
+//   PREPARE name AS ...
+//   EXECUTE name [(value, ...)]
+//   DEALLOCATE name
+//
+// The prepared statement may refer to parameters $1, $2, etc. whose values
+// are specified each time it is executed.
+//
+
+prepareStmt:
+        PREPARE name=IDENT AS
+        ( selectStmt | insertStmt | updateStmt | deleteStmt ) ;
+
+executeStmt:
+        EXECUTE name=IDENT ( '(' expression (',' expression)* ')' )? ;
+
+deallocateStmt:
+        DEALLOCATE name=IDENT ;
+
 //============================================================================
 // Some commands take properties to specify e.g. page-size for tables, type of
 // storage format, etc.
@@ -350,6 +388,7 @@ cmdProperties:
 // expressions alone; this is well under 50 lines.)
 expression:
         literalValue                                        # ExprLiteral
+      | PARAMETER                                           # ExprParameter
       | columnRef                                           # ExprColumnRef
       | functionCall                                        # ExprFunctionCall
       | op=('+' | '-') expression                           # ExprUnarySign
@@ -22,6 +22,7 @@ CONSTRAINT  : [Cc][Oo][Nn][Ss][Tt][Rr][Aa][Ii][Nn][Tt] ;
 CRASH       : [Cc][Rr][Aa][Ss][Hh] ;
 CREATE      : [Cc][Rr][Ee][Aa][Tt][Ee] ;
 CROSS       : [Cc][Rr][Oo][Ss][Ss] ;
+DEALLOCATE  : [Dd][Ee][Aa][Ll][Ll][Oo][Cc][Aa][Tt][Ee] ;
 DEFAULT     : [Dd][Ee][Ff][Aa][Uu][Ll][Tt] ;
 DELETE      : [Dd][Ee][Ll][Ee][Tt][Ee] ;
 DESC        : [Dd][Ee][Ss][Cc] ;
@@ -30,6 +31,7 @@ DISTINCT    : [Dd][Ii][Ss][Tt][Ii][Nn][Cc][Tt] ;
 DROP        : [Dd][Rr][Oo][Pp] ;
 DUMP        : [Dd][Uu][Mm][Pp] ;
 EXCEPT      : [Ee][Xx][Cc][Ee][Pp][Tt] ;
+EXECUTE     : [Ee][Xx][Ee][Cc][Uu][Tt][Ee] ;
 EXISTS      : [Ee][Xx][Ii][Ss][Tt][Ss] ;
 EXIT        : [Ee][Xx][Ii][Tt] ;
 EXPLAIN     : [Ee][Xx][Pp][Ll][Aa][Ii][Nn] ;
@@ -66,6 +68,7 @@ OPTIMIZE    : [Oo][Pp][Tt][Ii][Mm][Ii][Zz][Ee] ;
 OR          : [Oo][Rr] ;
 ORDER       : [Oo][Rr][Dd][Ee][Rr] ;
 OUTER       : [Oo][Uu][Tt][Ee][Rr] ;
+PREPARE     : [Pp][Rr][Ee][Pp][Aa][Rr][Ee] ;
 PRIMARY     : [Pp][Rr][Ii][Mm][Aa][Rr][Yy] ;
 PROPERTIES  : [Pp][Rr][Oo][Pp][Ee][Rr][Tt][Ii][Ee][Ss] ;
 PROPERTY    : [Pp][Rr][Oo][Pp][Ee][Rr][Tt][Yy] ;
@@ -82,6 +85,7 @@ SHOW        : [Ss][Hh][Oo][Ww] ;
 SIMILAR     : [Ss][Ii][Mm][Ii][Ll][Aa][Rr] ;
 SOME        : [Ss][Oo][Mm][Ee] ;
 START       : [Ss][Tt][Aa][Rr][Tt] ;
+STATISTICS  : [Ss][Tt][Aa][Tt][Ii][Ss][Tt][Ii][Cc][Ss] ;
 STATS       : [Ss][Tt][Aa][Tt][Ss] ;
 TABLE       : [Tt][Aa][Bb][Ll][Ee] ;
 TABLES      : [Tt][Aa][Bb][Ll][Ee][Ss] ;
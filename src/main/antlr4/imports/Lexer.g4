@@ -20,6 +20,10 @@ DECIMAL_LITERAL:
 STRING_LITERAL:
         '\'' .*? '\'' ;
 
+// The parameters of a prepared statement are numbered from 1:  $1, $2, etc.
+PARAMETER:
+        '$' [0-9]+ ;
+
 //============================================================================
 // Stuff We Ignore
 //
@@ -78,6 +78,17 @@ public abstract class Command {
     }
 
 
+    /**
+     * Prepares this command to be executed again, e.g. when it is reused
+     * from the plan cache or by a prepared statement.  The command's output
+     * goes to the output stream of the current session, which may not be the
+     * one the command was created in.
+     */
+    public void reset() {
+        out = SessionState.get().getOutputStream();
+    }
+
+
     /**
      * Actually performs the command.
      *
@@ -0,0 +1,159 @@
+package edu.caltech.nanodb.commands;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.nanodb.storage.TupleFile;
+
+
+/**
+ * This command-class represents the <tt>CREATE STATISTICS</tt> DDL command,
+ * which declares that statistics should be kept on a group of a table's
+ * columns, so that the planner can account for correlations between them
+ * (see {@link MultiColumnStats}).  The statistics themselves are collected
+ * the next time the table is analyzed.
+ */
+public class CreateStatisticsCommand extends Command {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     **/
+    private static Logger logger =
+        LogManager.getLogger(CreateStatisticsCommand.class);
+
+
+    /** The name of the statistics object being created. */
+    private String statsName;
+
+
+    /** The name of the table whose columns the statistics are on. */
+    private String tableName;
+
+
+    /**
+     * If this flag is {@code true} then the statistics should only be
+     * created if statistics of the same name don't already exist.
+     */
+    private boolean ifNotExists;
+
+
+    /** The names of the columns the statistics are on. */
+    private ArrayList<String> columnNames = new ArrayList<>();
+
+
+    public CreateStatisticsCommand(String statsName, String tableName) {
+        super(Type.DDL);
+
+        if (statsName == null)
+            throw new IllegalArgumentException("statsName cannot be null");
+
+        if (tableName == null)
+            throw new IllegalArgumentException("tableName cannot be null");
+
+        this.statsName = statsName;
+        this.tableName = tableName;
+    }
+
+
+    /**
+     * Sets the flag indicating whether the statistics should only be
+     * created if they don't already exist.
+     *
+     * @param b the flag indicating whether the statistics should only be
+     *          created if they don't already exist.
+     */
+    public void setIfNotExists(boolean b) {
+        ifNotExists = b;
+    }
+
+
+    public String getStatsName() {
+        return statsName;
+    }
+
+
+    public String getTableName() {
+        return tableName;
+    }
+
+
+    /**
+     * Returns the names of the columns the statistics are on, as an
+     * unmodifiable list.
+     *
+     * @return the names of the columns the statistics are on
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(columnNames);
+    }
+
+
+    /**
+     * Adds a column to the columns the statistics are on.
+     *
+     * @param columnName the name of the column
+     */
+    public void addColumn(String columnName) {
+        if (columnName == null)
+            throw new IllegalArgumentException("columnName cannot be null");
+
+        columnNames.add(columnName);
+    }
+
+
+    @Override
+    public void execute(NanoDBServer server) throws ExecutionException {
+        TableManager tableManager = server.getStorageManager().getTableManager();
+        TableInfo tableInfo = tableManager.openTable(tableName);
+        TupleFile tupleFile = tableInfo.getTupleFile();
+        TableStats stats = tupleFile.getStats();
+
+        if (stats.getMultiColumnStats(statsName) != null) {
+            if (ifNotExists) {
+                out.printf("Statistics %s on table %s already exist; " +
+                    "skipping.%n", statsName, tableName);
+                return;
+            }
+
+            throw new ExecutionException(String.format(
+                "Statistics %s already exist on table %s", statsName,
+                tableName));
+        }
+
+        if (columnNames.size() < MultiColumnStats.MIN_COLUMNS ||
+            columnNames.size() > MultiColumnStats.MAX_COLUMNS) {
+            throw new ExecutionException(String.format(
+                "Statistics must be on %d to %d columns; got %d",
+                MultiColumnStats.MIN_COLUMNS, MultiColumnStats.MAX_COLUMNS,
+                columnNames.size()));
+        }
+
+        int[] cols = tableInfo.getSchema().getColumnIndexes(columnNames);
+        stats.addMultiColumnStats(new MultiColumnStats(statsName, cols,
+            columnNames.toArray(new String[0])));
+        tupleFile.getManager().saveMetadata(tupleFile);
+
+        logger.debug(String.format("New statistics %s on table %s are " +
+            "created!", statsName, tableName));
+
+        out.printf("Created statistics %s on table %s.  They will be " +
+            "collected the next time the table is analyzed.%n", statsName,
+            tableName);
+    }
+
+
+    @Override
+    public String toString() {
+        return "CreateStatistics[" + statsName + " ON " + tableName + " " +
+            columnNames + "]";
+    }
+}
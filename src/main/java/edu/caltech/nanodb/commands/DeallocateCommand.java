@@ -0,0 +1,48 @@
+package edu.caltech.nanodb.commands;
+
+
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.SessionState;
+
+
+/**
+ * This command-class represents the <tt>DEALLOCATE</tt> command, which
+ * discards a statement prepared in the current session.
+ */
+public class DeallocateCommand extends Command {
+
+    /** The name of the prepared statement to discard. */
+    private String name;
+
+
+    public DeallocateCommand(String name) {
+        super(Command.Type.UTILITY);
+
+        if (name == null)
+            throw new IllegalArgumentException("name cannot be null");
+
+        this.name = name;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    @Override
+    public void execute(NanoDBServer server) throws ExecutionException {
+        if (SessionState.get().removePreparedStatement(name) == null) {
+            throw new ExecutionException(
+                "No prepared statement named " + name);
+        }
+
+        out.println("Deallocated prepared statement " + name);
+    }
+
+
+    @Override
+    public String toString() {
+        return "Deallocate[" + name + "]";
+    }
+}
@@ -158,11 +158,16 @@ public class DeleteCommand extends QueryCommand {
         StorageManager storageManager = server.getStorageManager();
         TableManager tableManager = storageManager.getTableManager();
         tableInfo = tableManager.openTable(tableName);
+        if (tableInfo.getTupleFile().isAppendOnly()) {
+            throw new ExecutionException("Table " + tableName +
+                " is append-only, so its rows can't be deleted");
+        }
 
         // Create a plan for executing the SQL query.
         Planner planner = server.getQueryPlanner();
         plan = planner.makeSimpleSelect(tableName, whereExpr, null);
         plan.prepare();
+        plan.bindExpressions();
     }
 
 
@@ -0,0 +1,105 @@
+package edu.caltech.nanodb.commands;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionException;
+import edu.caltech.nanodb.queryeval.TupleProcessor;
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.SessionState;
+
+
+/**
+ * This command-class represents the <tt>EXECUTE</tt> command, which executes
+ * a statement prepared in the current session, with the specified values
+ * bound to its parameters.
+ */
+public class ExecuteCommand extends Command {
+
+    /** The name of the prepared statement to execute. */
+    private String name;
+
+
+    /** The values of the statement's parameters. */
+    private List<Expression> args;
+
+
+    /**
+     * The tuple-processor to send the results of a prepared <tt>SELECT</tt>
+     * to, or {@code null} to print them.
+     */
+    private TupleProcessor tupleProcessor;
+
+
+    public ExecuteCommand(String name, List<Expression> args) {
+        super(Command.Type.DML);
+
+        if (name == null)
+            throw new IllegalArgumentException("name cannot be null");
+
+        if (args == null)
+            throw new IllegalArgumentException("args cannot be null");
+
+        this.name = name;
+        this.args = args;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    public List<Expression> getArgs() {
+        return args;
+    }
+
+
+    public void setTupleProcessor(TupleProcessor tupleProcessor) {
+        this.tupleProcessor = tupleProcessor;
+    }
+
+
+    @Override
+    public void execute(NanoDBServer server) throws ExecutionException {
+        PreparedStatement prepared =
+            SessionState.get().getPreparedStatement(name);
+        if (prepared == null)
+            throw new ExecutionException("No prepared statement named " + name);
+
+        ArrayList<Object> values = new ArrayList<>();
+        for (Expression arg : args) {
+            if (arg.hasSymbols()) {
+                throw new ExecutionException(
+                    "EXECUTE values cannot contain symbols!");
+            }
+
+            try {
+                values.add(arg.evaluate());
+            } catch (ExpressionException e) {
+                throw new ExecutionException(
+                    "Couldn't evaluate an EXECUTE value.", e);
+            }
+        }
+
+        QueryCommand statement = prepared.bind(server, values);
+        statement.reset();
+        if (statement instanceof SelectCommand)
+            ((SelectCommand) statement).setTupleProcessor(tupleProcessor);
+
+        try {
+            statement.execute(server);
+        } catch (RuntimeException e) {
+            prepared.invalidate();
+            throw e;
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "Execute[" + name + args + "]";
+    }
+}
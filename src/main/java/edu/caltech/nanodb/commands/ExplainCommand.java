@@ -6,7 +6,10 @@ import edu.caltech.nanodb.server.NanoDBServer;
 
 /**
  * This Command class represents the <tt>EXPLAIN</tt> SQL command, which prints
- * out details of how SQL DML statements will be evaluated.
+ * out details of how SQL DML statements will be evaluated.  The
+ * <tt>EXPLAIN ANALYZE</tt> form also executes the statement, and prints the
+ * actual rows, time and buffer activity of each plan node next to its
+ * estimated cost.
  */
 public class ExplainCommand extends Command {
 
@@ -16,20 +19,41 @@ public class ExplainCommand extends Command {
     private QueryCommand cmdToExplain;
 
 
+    /**
+     * If this flag is true then the command is executed as well as
+     * explained, so that its actual execution can be reported.
+     */
+    private boolean analyze;
+
+
     /**
      * Construct an explain command.
      *
      * @param cmdToExplain the command that should be explained.
      */
     public ExplainCommand(QueryCommand cmdToExplain) {
+        this(cmdToExplain, false);
+    }
+
+
+    /**
+     * Construct an explain command, that may also execute the command.
+     *
+     * @param cmdToExplain the command that should be explained.
+     * @param analyze true if the command should be executed, and its actual
+     *        execution reported with its plan.
+     */
+    public ExplainCommand(QueryCommand cmdToExplain, boolean analyze) {
         super(Command.Type.UTILITY);
         this.cmdToExplain = cmdToExplain;
+        this.analyze = analyze;
     }
 
 
     @Override
     public void execute(NanoDBServer server) throws ExecutionException {
         cmdToExplain.setExplain(true);
+        cmdToExplain.setAnalyze(analyze);
         cmdToExplain.execute(server);
     }
 }
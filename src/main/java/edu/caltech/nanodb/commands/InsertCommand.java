@@ -8,6 +8,8 @@ import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.expressions.ExpressionException;
 import edu.caltech.nanodb.expressions.TupleLiteral;
 
+import edu.caltech.nanodb.plannodes.PlanUtils;
+
 import edu.caltech.nanodb.queryast.SelectClause;
 
 import edu.caltech.nanodb.queryeval.Planner;
@@ -206,9 +208,10 @@ public class InsertCommand extends QueryCommand {
     public void execute(NanoDBServer server) throws ExecutionException {
         if (values != null) {
             // Inserting a single row.
-            if (!explain)
+            if (!explain || analyze)
                 insertSingleRow(server);
-            else
+
+            if (explain)
                 out.println("Nothing to explain about INSERT ... VALUES");
         } else {
             // Inserting the results of a SELECT query.
@@ -273,6 +276,10 @@ public class InsertCommand extends QueryCommand {
         // Create a plan for executing the SQL query.
         Planner planner = server.getQueryPlanner();
         plan = planner.makePlan(selClause, null);
+
+        // The query may read the table being inserted into, so it can't be
+        // scanned by other threads while tuples are added to it.
+        PlanUtils.disableParallelism(plan);
     }
 
 
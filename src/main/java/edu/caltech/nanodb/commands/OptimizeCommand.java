@@ -1,11 +1,15 @@
 package edu.caltech.nanodb.commands;
 
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import edu.caltech.nanodb.relations.TableInfo;
 import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TableManager;
 
 
 /**
@@ -28,7 +32,10 @@ public class OptimizeCommand extends Command {
      * method.
      */
     public OptimizeCommand() {
-        super(Command.Type.UTILITY);
+        // Optimizing a table moves its tuples around, so no other command may
+        // use the table at the same time.  Treating OPTIMIZE as DDL makes it
+        // take the schema lock exclusively.
+        super(Command.Type.DDL);
         tableNames = new LinkedHashSet<>();
     }
 
@@ -70,7 +77,37 @@ public class OptimizeCommand extends Command {
 
     @Override
     public void execute(NanoDBServer server) throws ExecutionException {
-        throw new ExecutionException("Not yet implemented!");
+
+        // Make sure that all the tables are valid.
+
+        StorageManager storageManager = server.getStorageManager();
+        TableManager tableManager = storageManager.getTableManager();
+
+        ArrayList<TableInfo> tableInfos = new ArrayList<>();
+
+        for (String table : tableNames) {
+            TableInfo tableInfo = tableManager.openTable(table);
+            if (tableInfo == null)
+                throw new ExecutionException("Table " + table + " doesn't exist.");
+
+            tableInfos.add(tableInfo);
+        }
+
+        // Now, optimize each table.
+
+        for (TableInfo tableInfo : tableInfos) {
+            int oldNumPages = storageManager.getNumPages(tableInfo.getDBFile());
+
+            out.println("Optimizing table " + tableInfo.getTableName());
+            tableManager.optimizeTable(tableInfo);
+
+            // Emptied pages are only truncated once the transaction commits.
+            out.printf("Table %s went from %d to %d pages.%n",
+                tableInfo.getTableName(), oldNumPages,
+                storageManager.getNumPages(tableInfo.getDBFile()));
+        }
+
+        out.println("Optimization complete.");
     }
 
 
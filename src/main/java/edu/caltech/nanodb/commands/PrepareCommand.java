@@ -0,0 +1,98 @@
+package edu.caltech.nanodb.commands;
+
+
+import java.util.List;
+
+import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.SessionState;
+
+
+/**
+ * This command-class represents the <tt>PREPARE</tt> command, which saves a
+ * <tt>SELECT</tt>, <tt>INSERT</tt>, <tt>UPDATE</tt> or <tt>DELETE</tt>
+ * statement in the current session so that it can be executed many times by
+ * name.  The statement may refer to parameters <tt>$1</tt>, <tt>$2</tt>,
+ * etc. whose values are given when it is executed.
+ */
+public class PrepareCommand extends Command {
+
+    /** The name of the statement being prepared. */
+    private String name;
+
+
+    /** The statement being prepared. */
+    private QueryCommand statement;
+
+
+    /** The text of the statement being prepared. */
+    private String statementText;
+
+
+    /** The values bound to the statement's parameters. */
+    private List<Object> parameterValues;
+
+
+    /** The number of parameters that the statement takes. */
+    private int numParameters;
+
+
+    public PrepareCommand(String name, QueryCommand statement,
+                          String statementText, List<Object> parameterValues,
+                          int numParameters) {
+        super(Command.Type.UTILITY);
+
+        if (name == null)
+            throw new IllegalArgumentException("name cannot be null");
+
+        if (statement == null)
+            throw new IllegalArgumentException("statement cannot be null");
+
+        this.name = name;
+        this.statement = statement;
+        this.statementText = statementText;
+        this.parameterValues = parameterValues;
+        this.numParameters = numParameters;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    public QueryCommand getStatement() {
+        return statement;
+    }
+
+
+    public List<Object> getParameterValues() {
+        return parameterValues;
+    }
+
+
+    public int getNumParameters() {
+        return numParameters;
+    }
+
+
+    @Override
+    public void execute(NanoDBServer server) throws ExecutionException {
+        SessionState state = SessionState.get();
+        if (state.getPreparedStatement(name) != null) {
+            throw new ExecutionException(
+                "Prepared statement " + name + " already exists");
+        }
+
+        state.addPreparedStatement(new PreparedStatement(name, statement,
+            statementText, parameterValues, numParameters));
+
+        out.printf("Prepared statement %s with %d parameters.%n", name,
+            numParameters);
+    }
+
+
+    @Override
+    public String toString() {
+        return "Prepare[" + name + ": " + statement + "]";
+    }
+}
@@ -0,0 +1,152 @@
+package edu.caltech.nanodb.commands;
+
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.server.NanoDBServer;
+
+
+/**
+ * <p>
+ * This class holds a statement prepared by <tt>PREPARE</tt> in a session,
+ * so that it can be executed many times by <tt>EXECUTE</tt> without being
+ * parsed and planned each time.  The statement is planned the first time it
+ * is executed, and its plan is reused until the server's
+ * {@linkplain edu.caltech.nanodb.server.PlanCache plan cache} is
+ * invalidated, e.g. by a DDL command or by new table statistics.  The
+ * statement is then parsed again from its text and planned afresh, since a
+ * statement's analysis can't be repeated against the new schema.
+ * </p>
+ * <p>
+ * The plan is generic:  it is chosen without knowing the parameters'
+ * values, so the planner can't e.g. estimate the selectivity of a
+ * comparison to a parameter.
+ * </p>
+ */
+public class PreparedStatement {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(PreparedStatement.class);
+
+
+    /** The name of the prepared statement. */
+    private String name;
+
+
+    /**
+     * The text of the statement, for parsing it again when its plan becomes
+     * invalid.
+     */
+    private String statementText;
+
+
+    /** The statement itself. */
+    private QueryCommand statement;
+
+
+    /** The values bound to the statement's parameters. */
+    private List<Object> parameterValues;
+
+
+    /** The number of parameters that the statement takes. */
+    private int numParameters;
+
+
+    /** True if the statement has been executed since it was parsed. */
+    private boolean executed;
+
+
+    /**
+     * The plan-cache version that the statement was last executed with, or
+     * -1 if the statement must be parsed again.
+     */
+    private long version;
+
+
+    public PreparedStatement(String name, QueryCommand statement,
+                             String statementText, List<Object> parameterValues,
+                             int numParameters) {
+        if (name == null)
+            throw new IllegalArgumentException("name cannot be null");
+
+        if (statement == null)
+            throw new IllegalArgumentException("statement cannot be null");
+
+        this.name = name;
+        this.statement = statement;
+        this.statementText = statementText;
+        this.parameterValues = parameterValues;
+        this.numParameters = numParameters;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    public String getStatementText() {
+        return statementText;
+    }
+
+
+    public int getNumParameters() {
+        return numParameters;
+    }
+
+
+    /**
+     * Binds values to the statement's parameters, and returns the statement
+     * to execute.  If the plan cache has been invalidated since the statement
+     * was last executed, the statement is parsed again first.
+     *
+     * @param server the server that the statement will be executed on
+     * @param values the values of the statement's parameters, in order
+     * @return the statement, ready to execute
+     * @throws ExecutionException if the wrong number of values is given
+     */
+    public QueryCommand bind(NanoDBServer server, List<Object> values) {
+        if (values.size() != numParameters) {
+            throw new ExecutionException(String.format(
+                "Prepared statement %s takes %d parameters, but %d values " +
+                "were given", name, numParameters, values.size()));
+        }
+
+        long currentVersion = server.getPlanCache().getVersion();
+        if (executed && version != currentVersion) {
+            logger.debug("Plan of prepared statement " + name +
+                " is invalid; parsing the statement again");
+
+            PrepareCommand prepare = (PrepareCommand) server.parseCommand(
+                "PREPARE " + name + " AS " + statementText);
+            statement = prepare.getStatement();
+            parameterValues = prepare.getParameterValues();
+        }
+        version = currentVersion;
+        executed = true;
+
+        parameterValues.clear();
+        parameterValues.addAll(values);
+
+        return statement;
+    }
+
+
+    /**
+     * Records that the statement failed to execute, so its state is not
+     * reliable, and it must be parsed again before it is next executed.
+     */
+    public void invalidate() {
+        version = -1;
+    }
+
+
+    @Override
+    public String toString() {
+        return "PreparedStatement[" + name + ": " + statementText + "]";
+    }
+}
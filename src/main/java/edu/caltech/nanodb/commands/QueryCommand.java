@@ -1,13 +1,17 @@
 package edu.caltech.nanodb.commands;
 
 
+import edu.caltech.nanodb.plannodes.InstrumentNode;
 import edu.caltech.nanodb.plannodes.PlanNode;
 import edu.caltech.nanodb.queryeval.EvalStats;
 import edu.caltech.nanodb.queryeval.PlanCost;
 import edu.caltech.nanodb.queryeval.QueryEvaluator;
 import edu.caltech.nanodb.queryeval.TupleProcessor;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
 import edu.caltech.nanodb.server.EventDispatcher;
 import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.properties.ServerProperties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -60,6 +64,11 @@ public abstract class QueryCommand extends Command {
     private QueryCommand.Type queryType;
 
 
+    /**
+     * The plan for the command.  This is {@code null} until the command is
+     * first executed, and the plan is then reused if the command is
+     * executed again.
+     */
     protected PlanNode plan;
 
 
@@ -70,6 +79,14 @@ public abstract class QueryCommand extends Command {
     protected boolean explain = false;
 
 
+    /**
+     * If this flag is true, and the command is to be explained, then the
+     * command is also executed, and the explained plan includes the
+     * measurements of each plan node's execution.
+     */
+    protected boolean analyze = false;
+
+
     /**
      * Initializes a new query-command object.
      *
@@ -86,9 +103,34 @@ public abstract class QueryCommand extends Command {
     }
 
 
+    public void setAnalyze(boolean f) {
+        analyze = f;
+    }
+
+
+    /**
+     * Returns the plan for the command, or {@code null} if the command
+     * hasn't been executed yet.
+     *
+     * @return the plan for the command
+     */
+    public PlanNode getPlan() {
+        return plan;
+    }
+
+
     @Override
     public void execute(NanoDBServer server) {
-        prepareQueryPlan(server);
+        // A command is only executed again if nothing that its plan depends
+        // on has changed, so its plan can be reused.
+        if (plan == null)
+            prepareQueryPlan(server);
+
+        // Only SELECT results can be produced in batches, since the
+        // other commands modify the tuples that their plans produce.
+        boolean allowBatches = (queryType == Type.SELECT) &&
+            server.getPropertyRegistry().getBooleanProperty(
+                ServerProperties.PROP_ENABLE_BATCH_EXECUTION);
 
         if (!explain) {
             // Debug:  print out the plan and its costing details.
@@ -109,7 +151,8 @@ public abstract class QueryCommand extends Command {
 
             EvalStats stats;
             try {
-                stats = QueryEvaluator.executePlan(plan, processor);
+                stats = QueryEvaluator.executePlan(plan, processor,
+                    allowBatches);
             } catch (Exception e) {
                 throw new ExecutionException(e);
             }
@@ -141,6 +184,27 @@ public abstract class QueryCommand extends Command {
             }
             // out.println(desc + stats.getRowsProduced() + " rows.");
         } else {
+            EvalStats stats = null;
+            if (analyze) {
+                // Execute the query with every plan node measured.  The
+                // results of a SELECT are discarded, but the other commands
+                // still modify their tables.
+                plan = InstrumentNode.instrumentPlan(plan);
+
+                TupleProcessor processor;
+                if (queryType == Type.SELECT)
+                    processor = new DiscardingTupleProcessor();
+                else
+                    processor = getTupleProcessor(server.getEventDispatcher());
+
+                try {
+                    stats = QueryEvaluator.executePlan(plan, processor,
+                        allowBatches);
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+
             out.println("Explain Plan:");
             plan.printNodeTree(out, true, "    ");
 
@@ -154,6 +218,11 @@ public abstract class QueryCommand extends Command {
             } else {
                 out.println("Plan cost is not available.");
             }
+
+            if (stats != null) {
+                out.printf("Actual %d tuples in %f sec%n",
+                    stats.getRowsProduced(), stats.getElapsedTimeSecs());
+            }
         }
     }
 
@@ -187,4 +256,26 @@ public abstract class QueryCommand extends Command {
      * the query
      */
     protected abstract TupleProcessor getTupleProcessor(EventDispatcher eventDispatcher);
+
+
+    /**
+     * This tuple-processor discards the results of a <tt>SELECT</tt> that is
+     * executed by <tt>EXPLAIN ANALYZE</tt>.
+     */
+    private static class DiscardingTupleProcessor implements TupleProcessor {
+        @Override
+        public void setSchema(Schema schema) {
+            // Do nothing.
+        }
+
+        @Override
+        public void process(Tuple tuple) {
+            // Do nothing.
+        }
+
+        @Override
+        public void finish() {
+            // Do nothing.
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package edu.caltech.nanodb.commands;
 
 
+import java.util.Set;
+
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.ResultCache;
 import edu.caltech.nanodb.server.SessionState;
 import edu.caltech.nanodb.queryast.SelectClause;
 import edu.caltech.nanodb.queryeval.Planner;
@@ -42,6 +45,14 @@ public class SelectCommand extends QueryCommand {
     private TupleProcessor tupleProcessor;
 
 
+    /**
+     * The normalized text of the command, which is the key of its results
+     * in the server's {@link ResultCache}, or {@code null} if the results
+     * aren't cached.
+     */
+    private String resultCacheKey;
+
+
     public SelectCommand(SelectClause selClause) {
         super(QueryCommand.Type.SELECT);
 
@@ -81,11 +92,62 @@ public class SelectCommand extends QueryCommand {
     }
 
 
+    public void setResultCacheKey(String resultCacheKey) {
+        this.resultCacheKey = resultCacheKey;
+    }
+
+
+    /**
+     * Executes the query, unless its results are in the server's result
+     * cache, in which case the cached results are produced instead.  If the
+     * results can be cached, they are added to the cache as they are
+     * produced.
+     */
+    @Override
+    public void execute(NanoDBServer server) {
+        ResultCache resultCache = server.getResultCache();
+        if (explain || resultCacheKey == null || !resultCache.isEnabled()) {
+            super.execute(server);
+            return;
+        }
+
+        TupleProcessor processor = getTupleProcessor(server.getEventDispatcher());
+        if (resultCache.replay(resultCacheKey, processor)) {
+            logger.debug("Produced cached results of query:  " + resultCacheKey);
+            return;
+        }
+
+        Set<String> tables = ResultCache.getCacheableTables(selClause);
+        if (tables == null) {
+            super.execute(server);
+            return;
+        }
+
+        tupleProcessor = resultCache.capture(resultCacheKey, tables, processor);
+        try {
+            super.execute(server);
+        } finally {
+            tupleProcessor = processor;
+        }
+    }
+
+
     public void setTupleProcessor(TupleProcessor tupleProcessor) {
         this.tupleProcessor = tupleProcessor;
     }
 
 
+    /**
+     * Forgets the tuple-processor of the last execution as well, so that a
+     * new one must be set, or the results are printed.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        tupleProcessor = null;
+    }
+
+
     @Override
     protected TupleProcessor getTupleProcessor(EventDispatcher eventDispatcher) {
         if (tupleProcessor == null) {
@@ -1,36 +1,130 @@
 package edu.caltech.nanodb.commands;
 
 
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.LatencyHistogram;
 import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.server.performance.SessionCounters;
 
 
 /**
- * Implements the "SHOW [system] STATS" command.
+ * Implements the "SHOW [system] STATS" command, which reports the
+ * performance counters and latency histograms of a subsystem.  The
+ * <tt>'session'</tt> system reports the storage activity of the current
+ * session and of its last command, and <tt>'all'</tt> reports every system.
+ * The statistics can be written to a file instead of the console, and can be
+ * formatted as JSON.
  */
 public class ShowSystemStatsCommand extends Command {
 
     public static final String STORAGE_SYSTEM = "storage";
 
 
+    public static final String BUFFER_SYSTEM = "buffer";
+
+
+    public static final String WAL_SYSTEM = "wal";
+
+
+    public static final String TXN_SYSTEM = "txn";
+
+
+    public static final String PLAN_CACHE_SYSTEM = "plancache";
+
+
+    public static final String RESULT_CACHE_SYSTEM = "resultcache";
+
+
+    public static final String SESSION_SYSTEM = "session";
+
+
+    public static final String ALL_SYSTEMS = "all";
+
+
+    /** The format that prints one statistic per line. */
+    public static final String TEXT_FORMAT = "text";
+
+
+    /** The format that prints the statistics as a JSON object. */
+    public static final String JSON_FORMAT = "json";
+
+
     /**
      * The subsystem that we are displaying statistics for.
      */
     private String systemName;
 
 
+    /**
+     * The path and filename to write the statistics to, or {@code null} to
+     * print them to the console.
+     */
+    private String fileName;
+
+
+    /** The format to print the statistics in. */
+    private String format;
+
+
     /**
      * These are the performance counters corresponding to various subsystems.
      */
     private static final String[][] PERF_COUNTERS = {
         {STORAGE_SYSTEM, PerformanceCounters.STORAGE_PAGES_READ},
         {STORAGE_SYSTEM, PerformanceCounters.STORAGE_PAGES_WRITTEN},
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_BYTES_READ},
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_BYTES_WRITTEN},
         {STORAGE_SYSTEM, PerformanceCounters.STORAGE_FILE_CHANGES},
-        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_FILE_DISTANCE_TRAVELED}
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_FILE_DISTANCE_TRAVELED},
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_FILE_SYNCS},
+        {BUFFER_SYSTEM, PerformanceCounters.BUFFER_HITS},
+        {BUFFER_SYSTEM, PerformanceCounters.BUFFER_MISSES},
+        {BUFFER_SYSTEM, PerformanceCounters.BUFFER_EVICTIONS},
+        {BUFFER_SYSTEM, PerformanceCounters.BUFFER_DIRTY_EVICTIONS},
+        {WAL_SYSTEM, PerformanceCounters.WAL_FORCES},
+        {TXN_SYSTEM, PerformanceCounters.TXN_COMMITS},
+        {PLAN_CACHE_SYSTEM, PerformanceCounters.PLAN_CACHE_HITS},
+        {PLAN_CACHE_SYSTEM, PerformanceCounters.PLAN_CACHE_MISSES},
+        {PLAN_CACHE_SYSTEM, PerformanceCounters.PLAN_CACHE_INVALIDATIONS},
+        {RESULT_CACHE_SYSTEM, PerformanceCounters.RESULT_CACHE_HITS},
+        {RESULT_CACHE_SYSTEM, PerformanceCounters.RESULT_CACHE_MISSES},
+        {RESULT_CACHE_SYSTEM, PerformanceCounters.RESULT_CACHE_EVICTIONS}
+    };
+
+
+    /**
+     * These are the latency histograms corresponding to various subsystems.
+     */
+    private static final String[][] HISTOGRAMS = {
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_PAGE_LOAD_LATENCY},
+        {STORAGE_SYSTEM, PerformanceCounters.STORAGE_FILE_SYNC_LATENCY},
+        {TXN_SYSTEM, PerformanceCounters.TXN_COMMIT_LATENCY}
     };
 
 
     public ShowSystemStatsCommand(String systemName) {
+        this(systemName, null, null);
+    }
+
+
+    /**
+     * Creates a command to show the statistics of a subsystem.
+     *
+     * @param systemName the name of the subsystem
+     * @param fileName the path and filename to write the statistics to, or
+     *        {@code null} to print them to the console
+     * @param format the format to print the statistics in, or {@code null}
+     *        for the text format
+     */
+    public ShowSystemStatsCommand(String systemName, String fileName,
+                                  String format) {
         super(Command.Type.UTILITY);
 
         if (systemName == null)
@@ -39,21 +133,172 @@ public class ShowSystemStatsCommand extends Command {
         this.systemName = systemName.trim().toLowerCase();
 
         // Make sure the actual system-name is recognized!
-        if (!this.systemName.equals(STORAGE_SYSTEM)) {
+        if (!isSystemRecognized(this.systemName)) {
             throw new IllegalArgumentException(
                 "Unrecognized system-stats argument:  " + this.systemName);
         }
+
+        this.fileName = fileName;
+
+        this.format = (format == null) ? TEXT_FORMAT :
+            format.trim().toLowerCase();
+        if (!this.format.equals(TEXT_FORMAT) && !this.format.equals(JSON_FORMAT)) {
+            throw new IllegalArgumentException(
+                "Unrecognized system-stats format:  " + this.format);
+        }
+    }
+
+
+    private static boolean isSystemRecognized(String systemName) {
+        if (systemName.equals(SESSION_SYSTEM) || systemName.equals(ALL_SYSTEMS))
+            return true;
+
+        for (String[] pair : PERF_COUNTERS) {
+            if (pair[0].equals(systemName))
+                return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Returns true if the statistics of a subsystem are being shown.
+     */
+    private boolean includes(String system) {
+        return systemName.equals(ALL_SYSTEMS) || systemName.equals(system);
     }
 
 
     @Override
     public void execute(NanoDBServer server) throws ExecutionException {
+        // Figure out where the statistics should go.
+        PrintStream statsOut = out;
+        if (fileName != null) {
+            try {
+                statsOut = new PrintStream(fileName);
+            } catch (FileNotFoundException e) {
+                throw new ExecutionException(e);
+            }
+        }
+
+        if (format.equals(JSON_FORMAT))
+            printJSON(statsOut);
+        else
+            printText(statsOut);
+
+        if (fileName != null) {
+            statsOut.close();
+            out.printf("Wrote %s statistics to %s.%n", systemName, fileName);
+        }
+    }
+
+
+    private void printText(PrintStream statsOut) {
         for (String[] pair : PERF_COUNTERS) {
-            if (pair[0].equals(systemName)) {
+            if (includes(pair[0])) {
                 String name = pair[1];
                 long value = PerformanceCounters.get(name);
-                out.printf("%s = %d%n", name, value);
+                statsOut.printf("%s = %d%n", name, value);
+            }
+        }
+
+        for (String[] pair : HISTOGRAMS) {
+            if (includes(pair[0])) {
+                String name = pair[1];
+                LatencyHistogram histogram = PerformanceCounters.getHistogram(name);
+                statsOut.printf("%s:  %s%n", name, histogram);
+            }
+        }
+
+        if (includes(SESSION_SYSTEM)) {
+            SessionState state = SessionState.get();
+            statsOut.printf("session.id = %d%n", state.getSessionID());
+            printSessionCounters(statsOut, "session",
+                state.getCounters());
+            printSessionCounters(statsOut, "session.lastCommand",
+                state.getLastCommandCounters());
+        }
+    }
+
+
+    private static void printSessionCounters(PrintStream statsOut,
+        String prefix, SessionCounters counters) {
+        if (counters == null)
+            return;
+
+        for (Map.Entry<String, Long> entry : counters.getValues().entrySet()) {
+            statsOut.printf("%s.%s = %d%n", prefix, entry.getKey(),
+                entry.getValue());
+        }
+    }
+
+
+    private void printJSON(PrintStream statsOut) {
+        List<String> members = new ArrayList<>();
+
+        for (String[] pair : PERF_COUNTERS) {
+            if (includes(pair[0])) {
+                String name = pair[1];
+                members.add(String.format("\"%s\": %d", name,
+                    PerformanceCounters.get(name)));
+            }
+        }
+
+        for (String[] pair : HISTOGRAMS) {
+            if (includes(pair[0])) {
+                String name = pair[1];
+                LatencyHistogram histogram = PerformanceCounters.getHistogram(name);
+                members.add(String.format("\"%s\": {\"count\": %d, " +
+                    "\"meanNanos\": %d, \"p50Nanos\": %d, \"p95Nanos\": %d, " +
+                    "\"p99Nanos\": %d, \"maxNanos\": %d}", name,
+                    histogram.getCount(), histogram.getMeanNanos(),
+                    histogram.getPercentileNanos(50),
+                    histogram.getPercentileNanos(95),
+                    histogram.getPercentileNanos(99),
+                    histogram.getMaxNanos()));
             }
         }
+
+        if (includes(SESSION_SYSTEM)) {
+            SessionState state = SessionState.get();
+            StringBuilder buf = new StringBuilder();
+            buf.append("\"session\": {\"id\": ").append(state.getSessionID());
+            buf.append(", \"totals\": ");
+            appendJSON(buf, state.getCounters());
+            buf.append(", \"lastCommand\": ");
+            appendJSON(buf, state.getLastCommandCounters());
+            buf.append("}");
+            members.add(buf.toString());
+        }
+
+        statsOut.println("{");
+        for (int i = 0; i < members.size(); i++) {
+            statsOut.print("  ");
+            statsOut.print(members.get(i));
+            statsOut.println(i < members.size() - 1 ? "," : "");
+        }
+        statsOut.println("}");
+    }
+
+
+    private static void appendJSON(StringBuilder buf, SessionCounters counters) {
+        if (counters == null) {
+            buf.append("null");
+            return;
+        }
+
+        buf.append("{");
+        boolean first = true;
+        for (Map.Entry<String, Long> entry : counters.getValues().entrySet()) {
+            if (first)
+                first = false;
+            else
+                buf.append(", ");
+
+            buf.append('"').append(entry.getKey()).append("\": ");
+            buf.append(entry.getValue());
+        }
+        buf.append("}");
     }
 }
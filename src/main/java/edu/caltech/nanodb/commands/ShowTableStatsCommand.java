@@ -3,6 +3,7 @@ package edu.caltech.nanodb.commands;
 
 import edu.caltech.nanodb.expressions.ColumnName;
 import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
 import edu.caltech.nanodb.queryeval.TableStats;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.TableInfo;
@@ -50,5 +51,11 @@ public class ShowTableStatsCommand extends Command {
                 colStat.getNumUniqueValues(), colStat.getNumNullValues(),
                 colStat.getMinValue(), colStat.getMaxValue());
         }
+
+        for (MultiColumnStats group : stats.getMultiColumnStats()) {
+            out.printf("\tStatistics %s on (%s):  %d unique combinations%n",
+                group.getName(), String.join(", ", group.getColumnNames()),
+                group.getNumUniqueValues());
+        }
     }
 }
@@ -98,6 +98,12 @@ public class UpdateCommand extends QueryCommand {
          */
         public void setSchema(Schema schema) {
             this.schema = schema;
+
+            ArrayList<Expression> exprs = new ArrayList<>();
+            for (UpdateValue value : values)
+                exprs.add(value.getExpression());
+
+            environment.bind(new Schema[] {schema}, exprs);
         }
 
         /**
@@ -218,11 +224,16 @@ public class UpdateCommand extends QueryCommand {
         StorageManager storageManager = server.getStorageManager();
         TableManager tableManager = storageManager.getTableManager();
         tableInfo = tableManager.openTable(tableName);
+        if (tableInfo.getTupleFile().isAppendOnly()) {
+            throw new ExecutionException("Table " + tableName +
+                " is append-only, so its rows can't be updated");
+        }
 
         // Create a plan for executing the SQL query.
         Planner planner = server.getQueryPlanner();
         plan = planner.makeSimpleSelect(tableName, whereExpr, null);
         plan.prepare();
+        plan.bindExpressions();
     }
 
 
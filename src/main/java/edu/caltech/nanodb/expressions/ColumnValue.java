@@ -23,6 +23,24 @@ public class ColumnValue extends Expression {
     private ColumnName columnName;
 
 
+    /**
+     * If this column reference has been bound to a slot of an environment,
+     * this is the array of schemas it was bound against; otherwise it is
+     * {@code null}.
+     *
+     * @see Environment#bind
+     */
+    private Schema[] boundSchemas;
+
+
+    /** The index of the tuple holding the bound column's value. */
+    private int boundTupleIndex;
+
+
+    /** The index of the bound column within its tuple. */
+    private int boundColumnIndex;
+
+
     /**
      * Initialize a new column-value expression object with the specified
      * column-name.
@@ -61,6 +79,31 @@ public class ColumnValue extends Expression {
      */
     public void setColumnName(ColumnName columnName) {
         this.columnName = columnName;
+        unbind();
+    }
+
+
+    /**
+     * Binds this column reference to a specific column of one of the tuples
+     * in an environment.  This is called by {@link Environment#bind}.
+     *
+     * @param schemas the schemas the reference was resolved against
+     * @param tupleIndex the index of the tuple holding the column
+     * @param columnIndex the index of the column within the tuple
+     */
+    void bind(Schema[] schemas, int tupleIndex, int columnIndex) {
+        boundSchemas = schemas;
+        boundTupleIndex = tupleIndex;
+        boundColumnIndex = columnIndex;
+    }
+
+
+    /**
+     * Removes any binding of this column reference, so that it is resolved
+     * by name when evaluated.
+     */
+    void unbind() {
+        boundSchemas = null;
     }
 
 
@@ -84,6 +127,9 @@ public class ColumnValue extends Expression {
 
 
     public Object evaluate(Environment env) throws ExpressionException {
+        if (boundSchemas != null && env.isBoundTo(boundSchemas))
+            return env.getBoundColumnValue(boundTupleIndex, boundColumnIndex);
+
         if (columnName.isColumnWildcard()) {
             List<Tuple> tuples = env.getCurrentTuples();
             if (tuples.size() > 1) {
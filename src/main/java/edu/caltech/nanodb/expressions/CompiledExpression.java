@@ -0,0 +1,36 @@
+package edu.caltech.nanodb.expressions;
+
+
+/**
+ * A compiled form of an {@link Expression}, produced by
+ * {@link ExpressionCompiler}.  A compiled expression produces exactly the same
+ * results as the expression it was compiled from, but evaluates it with
+ * evaluators specialized for the types of the expression's operands, rather
+ * than by interpreting the expression tree.
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * Evaluates the expression against the specified environment.
+     *
+     * @param env the environment to evaluate the expression against
+     * @return the result of the expression
+     * @throws ExpressionException if an error occurs during evaluation
+     *
+     * @see Expression#evaluate(Environment)
+     */
+    public abstract Object evaluate(Environment env);
+
+
+    /**
+     * Evaluates the expression as a Boolean predicate against the specified
+     * environment.  A <tt>NULL</tt> result is reported as <tt>false</tt>.
+     *
+     * @param env the environment to evaluate the expression against
+     * @return the result of the predicate
+     * @throws ExpressionException if an error occurs during evaluation
+     *
+     * @see Expression#evaluatePredicate(Environment)
+     */
+    public abstract boolean evaluatePredicate(Environment env);
+}
@@ -47,6 +47,16 @@ import edu.caltech.nanodb.relations.Tuple;
  * environment contains a value for a particular symbol, that value is
  * returned.  It is only if the child environment <em>doesn't</em>
  * contain a value that the parent environment is utilized.
+ * <p>
+ * Resolving column names against the environment's schemas for every tuple
+ * is expensive, so plan nodes can also <em>bind</em> their expressions to an
+ * environment after the plan is prepared, by calling {@link #bind} with the
+ * schemas of the tuples the node will add to the environment.  Each column
+ * reference that resolves to a single column of those schemas records the
+ * tuple index and column index of its value, and then reads its value
+ * directly from the tuple while the environment holds tuples of exactly those
+ * schemas.  Column references that can't be bound, such as references to an
+ * enclosing query's columns, continue to be resolved by name.
  */
 public class Environment {
 
@@ -71,12 +81,29 @@ public class Environment {
     private ArrayList<Environment> parents = new ArrayList<>();
 
 
+    /**
+     * The schemas that column references were most recently bound against,
+     * or {@code null} if no expressions have been bound to this environment.
+     * A column reference is bound to this specific array object, so that
+     * references bound against an earlier layout are not mistakenly used.
+     */
+    private Schema[] boundSchemas;
+
+
+    /**
+     * True if the schemas of the tuples added since the environment was
+     * cleared are a prefix of {@link #boundSchemas}.
+     */
+    private boolean matchesBoundSchemas = true;
+
+
     /**
      * Reset the environment.
      */
     public void clear() {
         currentSchemas.clear();
         currentTuples.clear();
+        matchesBoundSchemas = true;
     }
 
 
@@ -98,11 +125,136 @@ public class Environment {
         if (tuple == null)
             throw new NullPointerException("tuple cannot be null");
 
+        if (matchesBoundSchemas) {
+            int i = currentSchemas.size();
+            matchesBoundSchemas = boundSchemas != null &&
+                i < boundSchemas.length && boundSchemas[i] == schema;
+        }
+
         currentSchemas.add(schema);
         currentTuples.add(tuple);
     }
 
 
+    /**
+     * Binds the column references in the specified expressions to slots of
+     * the tuples that will be added to this environment, so that they can
+     * be evaluated without looking up column names.  The tuples must be
+     * added in the same order as the schemas are specified here, and with
+     * these exact schema objects; otherwise the bound references fall back
+     * to name lookup.  Binding expressions against a new set of schemas
+     * invalidates the bindings made against the previous set.
+     *
+     * @param schemas the schemas of the tuples that the expressions will be
+     *        evaluated against, in the order they will be added
+     * @param exprs the expressions to bind; {@code null} values are ignored
+     */
+    public void bind(Schema[] schemas, Iterable<Expression> exprs) {
+        if (schemas == null)
+            throw new IllegalArgumentException("schemas cannot be null");
+
+        if (exprs == null)
+            throw new IllegalArgumentException("exprs cannot be null");
+
+        // Keep the current bindings if the schemas are the same objects, so
+        // that a node can bind its expressions in several calls.
+        if (!isSameSchemas(schemas, boundSchemas))
+            boundSchemas = schemas.clone();
+
+        ExpressionProcessor binder = new ExpressionProcessor() {
+            @Override
+            public void enter(Expression node) {
+                if (node instanceof ColumnValue)
+                    bindColumnValue((ColumnValue) node);
+            }
+
+            @Override
+            public Expression leave(Expression node) {
+                return node;
+            }
+        };
+
+        for (Expression expr : exprs) {
+            if (expr != null)
+                expr.traverse(binder);
+        }
+    }
+
+
+    /**
+     * Returns true if the two arrays hold the very same schema objects.
+     */
+    private static boolean isSameSchemas(Schema[] a, Schema[] b) {
+        if (a == null || b == null || a.length != b.length)
+            return false;
+
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i])
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Binds a single column reference against {@link #boundSchemas}, using
+     * the same resolution rules as {@link #getColumnValue}.  References that
+     * are wildcards, ambiguous, or not found are left unbound.
+     */
+    private void bindColumnValue(ColumnValue colValue) {
+        ColumnName colName = colValue.getColumnName();
+        colValue.unbind();
+
+        if (colName.isColumnWildcard())
+            return;
+
+        int tupleIndex = -1;
+        int columnIndex = -1;
+        for (int i = 0; i < boundSchemas.length; i++) {
+            SortedMap<Integer, ColumnInfo> cols =
+                boundSchemas[i].findColumns(colName);
+            if (cols.isEmpty())
+                continue;
+
+            if (tupleIndex != -1 || cols.size() > 1)
+                return;  // Ambiguous; report the error when evaluating.
+
+            tupleIndex = i;
+            columnIndex = cols.firstKey();
+        }
+
+        if (tupleIndex != -1)
+            colValue.bind(boundSchemas, tupleIndex, columnIndex);
+    }
+
+
+    /**
+     * Returns true if column references bound against the specified schemas
+     * may read their values directly from this environment's tuples.
+     *
+     * @param schemas the schemas that a column reference was bound against
+     * @return true if the environment currently holds tuples of exactly the
+     *         specified schemas
+     */
+    boolean isBoundTo(Schema[] schemas) {
+        return schemas == boundSchemas && matchesBoundSchemas &&
+            currentSchemas.size() == schemas.length;
+    }
+
+
+    /**
+     * Returns the value of a column in one of the environment's current
+     * tuples.  This is used to evaluate bound column references.
+     *
+     * @param tupleIndex the index of the tuple in the environment
+     * @param columnIndex the index of the column in the tuple
+     * @return the value of the column
+     */
+    Object getBoundColumnValue(int tupleIndex, int columnIndex) {
+        return currentTuples.get(tupleIndex).getColumnValue(columnIndex);
+    }
+
+
     /**
      * Given a table name, this method returns the current tuple being
      * considered from that table.  If the table name does not appear in this
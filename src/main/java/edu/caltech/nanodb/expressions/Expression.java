@@ -47,6 +47,12 @@ public abstract class Expression implements Cloneable {
          */
         private boolean hasSymbols;
 
+        /**
+         * A flag indicating whether the expression refers to any parameters
+         * of a prepared statement.
+         */
+        private boolean hasParameters;
+
         /**
          * If not {@code null}, this is the collection of symbols that have
          * been found in the expression.
@@ -86,6 +92,8 @@ public abstract class Expression implements Cloneable {
                     if (!cn.isColumnWildcard())
                         symbols.add(cv.getColumnName());
                 }
+            } else if (e instanceof ParameterValue) {
+                hasParameters = true;
             } else if (e instanceof SubqueryOperator) {
                 SubqueryOperator subOp = (SubqueryOperator) e;
                 SelectClause subquery = subOp.getSubquery();
@@ -221,6 +229,21 @@ public abstract class Expression implements Cloneable {
     }
 
 
+    /**
+     * Returns true if this expression can be computed once and replaced with
+     * its value:  it contains no symbols, and no parameters of a prepared
+     * statement, whose values may change each time the statement is executed.
+     *
+     * @return true if the expression always has the same value, false
+     *         otherwise
+     */
+    public final boolean isConstant() {
+        SymbolFinder f = new SymbolFinder();
+        traverse(f);
+        return !f.hasSymbols && !f.hasParameters;
+    }
+
+
     /**
      * This method stores all of the symbols in an expression into a collection,
      * so that the expression's symbols can be validated against the schema that
@@ -0,0 +1,957 @@
+package edu.caltech.nanodb.expressions;
+
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
+
+
+/**
+ * <p>
+ * This class compiles expressions into trees of evaluators that are
+ * specialized for the types of the values involved.  Column types are known
+ * once an expression is resolved against a schema, so instead of boxing every
+ * intermediate value and choosing how to coerce operands for every row, the
+ * compiled evaluators compute integer results with <tt>long</tt> arithmetic
+ * and floating-point results with <tt>double</tt> arithmetic, and only box
+ * the final result.  Comparisons between numeric values and decimal literals,
+ * between strings, and Boolean connectives and <tt>IS NULL</tt> tests are
+ * specialized as well.
+ * </p>
+ * <p>
+ * Compiled expressions produce the same results as the interpreter, including
+ * the types of results and the treatment of <tt>NULL</tt>s.  Subexpressions
+ * that the compiler doesn't specialize are evaluated by the interpreter.  If a
+ * value turns out not to have the type that the schema declared for it, the
+ * compiled expression permanently falls back to interpreting the expression.
+ * </p>
+ */
+public class ExpressionCompiler {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(ExpressionCompiler.class);
+
+
+    /**
+     * This class should not be instantiated.
+     */
+    private ExpressionCompiler() {
+        throw new UnsupportedOperationException();
+    }
+
+
+    /**
+     * Compiles an expression to be evaluated against tuples of the specified
+     * schema.  The expression should already be bound to the environment it
+     * will be evaluated against, as column references are evaluated through
+     * the expression's {@link ColumnValue} objects.
+     *
+     * @param expr the expression to compile
+     * @param schema the schema of the tuples the expression will be evaluated
+     *        against
+     * @return the compiled expression, or {@code null} if the compiler can't
+     *         evaluate any part of the expression faster than the interpreter
+     */
+    public static CompiledExpression compile(Expression expr, Schema schema) {
+        if (expr == null)
+            throw new IllegalArgumentException("expr cannot be null");
+
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        Node root = compileNode(expr, schema);
+        if (root instanceof InterpretedNode)
+            return null;
+
+        logger.debug("Compiled expression " + expr);
+        return new Compiled(expr, root);
+    }
+
+
+    /** The kinds of values that compiled evaluators produce. */
+    private enum Kind {
+        /** <tt>TINYINT</tt>, <tt>SMALLINT</tt> and <tt>INTEGER</tt> values. */
+        INT,
+
+        /** <tt>BIGINT</tt> values. */
+        LONG,
+
+        /** <tt>FLOAT</tt> values. */
+        FLOAT,
+
+        /** <tt>DOUBLE</tt> values. */
+        DOUBLE,
+
+        /** Character-string values. */
+        STRING,
+
+        /** Any other kind of value. */
+        OBJECT;
+
+
+        boolean isIntegral() {
+            return this == INT || this == LONG;
+        }
+
+
+        boolean isNumeric() {
+            return ordinal() <= DOUBLE.ordinal();
+        }
+
+
+        /**
+         * Returns the kind that two numeric kinds are coerced to, following
+         * {@link TypeConverter#coerceArithmetic}.
+         */
+        static Kind widen(Kind a, Kind b) {
+            return (a.ordinal() >= b.ordinal()) ? a : b;
+        }
+    }
+
+
+    /**
+     * Thrown by compiled evaluators when a value doesn't have the type that
+     * the evaluator was specialized for.
+     */
+    private static class TypeMismatchException extends RuntimeException {
+        static final TypeMismatchException INSTANCE = new TypeMismatchException();
+
+        private TypeMismatchException() {
+            super(null, null, false, false);
+        }
+    }
+
+
+    /**
+     * The top-level compiled expression, which falls back to the interpreter
+     * if the compiled evaluators encounter a value of an unexpected type.
+     */
+    private static class Compiled extends CompiledExpression {
+        private final Expression expr;
+
+        private final Node root;
+
+        private boolean interpret;
+
+
+        Compiled(Expression expr, Node root) {
+            this.expr = expr;
+            this.root = root;
+        }
+
+
+        private void fallBack() {
+            logger.warn("Value types don't match the schema; interpreting " +
+                "expression " + expr + " from now on");
+            interpret = true;
+        }
+
+
+        @Override
+        public Object evaluate(Environment env) {
+            if (!interpret) {
+                try {
+                    return root.evalObject(env);
+                } catch (TypeMismatchException e) {
+                    fallBack();
+                }
+            }
+            return expr.evaluate(env);
+        }
+
+
+        @Override
+        public boolean evaluatePredicate(Environment env) {
+            if (!interpret) {
+                try {
+                    return root.evalPredicate(env);
+                } catch (TypeMismatchException e) {
+                    fallBack();
+                }
+            }
+            return expr.evaluatePredicate(env);
+        }
+
+
+        @Override
+        public String toString() {
+            return "compiled(" + expr + ")";
+        }
+    }
+
+
+    /**
+     * The base class of compiled evaluators.  Numeric evaluators produce
+     * unboxed values through {@link #evalLong} (for integral kinds) or
+     * {@link #evalDouble} (for floating-point kinds), and report
+     * <tt>NULL</tt> results through {@link #wasNull}.
+     */
+    private abstract static class Node {
+        final Kind kind;
+
+        /** True if the last unboxed value produced was <tt>NULL</tt>. */
+        boolean wasNull;
+
+
+        Node(Kind kind) {
+            this.kind = kind;
+        }
+
+
+        abstract Object evalObject(Environment env);
+
+
+        long evalLong(Environment env) {
+            throw new IllegalStateException("Not an integral evaluator");
+        }
+
+
+        double evalDouble(Environment env) {
+            throw new IllegalStateException("Not a floating-point evaluator");
+        }
+
+
+        boolean evalPredicate(Environment env) {
+            Object value = evalObject(env);
+            return value != null && TypeConverter.getBooleanValue(value);
+        }
+
+
+        /**
+         * Evaluates a numeric node as a <tt>double</tt>, converted to the
+         * precision of the specified kind as {@link TypeConverter} would.
+         * The node's {@link #wasNull} flag reports a <tt>NULL</tt> result.
+         */
+        static double evalAsDouble(Node node, Kind target, Environment env) {
+            if (node.kind.isIntegral()) {
+                long value = node.evalLong(env);
+                return (target == Kind.FLOAT) ? (float) value : (double) value;
+            }
+            return node.evalDouble(env);
+        }
+    }
+
+
+    /** Evaluates a subexpression with the interpreter. */
+    private static class InterpretedNode extends Node {
+        private final Expression expr;
+
+
+        InterpretedNode(Expression expr) {
+            super(Kind.OBJECT);
+            this.expr = expr;
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            return expr.evaluate(env);
+        }
+
+
+        @Override
+        boolean evalPredicate(Environment env) {
+            return expr.evaluatePredicate(env);
+        }
+    }
+
+
+    /** Retrieves the value of a column. */
+    private static class ColumnNode extends Node {
+        private final ColumnValue colValue;
+
+
+        ColumnNode(ColumnValue colValue, Kind kind) {
+            super(kind);
+            this.colValue = colValue;
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            return colValue.evaluate(env);
+        }
+
+
+        @Override
+        long evalLong(Environment env) {
+            Object value = colValue.evaluate(env);
+            wasNull = (value == null);
+            if (wasNull)
+                return 0;
+
+            if (kind == Kind.INT) {
+                if (value instanceof Integer || value instanceof Short ||
+                    value instanceof Byte) {
+                    return ((Number) value).intValue();
+                }
+            } else if (value instanceof Long) {
+                return (Long) value;
+            }
+            throw TypeMismatchException.INSTANCE;
+        }
+
+
+        @Override
+        double evalDouble(Environment env) {
+            Object value = colValue.evaluate(env);
+            wasNull = (value == null);
+            if (wasNull)
+                return 0;
+
+            if (kind == Kind.FLOAT ? value instanceof Float :
+                value instanceof Double) {
+                return ((Number) value).doubleValue();
+            }
+            throw TypeMismatchException.INSTANCE;
+        }
+    }
+
+
+    /** Produces a constant value. */
+    private static class LiteralNode extends Node {
+        private final Object value;
+
+        private final long longValue;
+
+        private final double doubleValue;
+
+
+        LiteralNode(Object value, Kind kind) {
+            super(kind);
+            this.value = value;
+
+            wasNull = (value == null);
+            if (kind.isIntegral()) {
+                longValue = ((Number) value).longValue();
+                doubleValue = 0;
+            } else if (kind.isNumeric()) {
+                longValue = 0;
+                doubleValue = ((Number) value).doubleValue();
+            } else {
+                longValue = 0;
+                doubleValue = 0;
+            }
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            return value;
+        }
+
+
+        @Override
+        long evalLong(Environment env) {
+            return longValue;
+        }
+
+
+        @Override
+        double evalDouble(Environment env) {
+            return doubleValue;
+        }
+    }
+
+
+    /**
+     * Performs an arithmetic operation on two numeric values.  Integral
+     * results are computed with <tt>long</tt> arithmetic and then narrowed,
+     * which gives the same results as <tt>int</tt> arithmetic; likewise,
+     * <tt>FLOAT</tt> results are computed in <tt>double</tt> precision and
+     * then rounded.
+     */
+    private static class ArithmeticNode extends Node {
+        private final ArithmeticOperator.Type type;
+
+        private final Node left;
+
+        private final Node right;
+
+
+        ArithmeticNode(ArithmeticOperator.Type type, Node left, Node right) {
+            super(Kind.widen(left.kind, right.kind));
+            this.type = type;
+            this.left = left;
+            this.right = right;
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            switch (kind) {
+                case INT: {
+                    long result = evalLong(env);
+                    return wasNull ? null : Integer.valueOf((int) result);
+                }
+                case LONG: {
+                    long result = evalLong(env);
+                    return wasNull ? null : Long.valueOf(result);
+                }
+                case FLOAT: {
+                    double result = evalDouble(env);
+                    return wasNull ? null : Float.valueOf((float) result);
+                }
+                default: {
+                    double result = evalDouble(env);
+                    return wasNull ? null : Double.valueOf(result);
+                }
+            }
+        }
+
+
+        @Override
+        long evalLong(Environment env) {
+            long a = left.evalLong(env);
+            long b = right.evalLong(env);
+            wasNull = left.wasNull || right.wasNull;
+            if (wasNull)
+                return 0;
+
+            long result;
+            switch (type) {
+                case ADD:
+                    result = a + b;
+                    break;
+
+                case SUBTRACT:
+                    result = a - b;
+                    break;
+
+                case MULTIPLY:
+                    result = a * b;
+                    break;
+
+                case DIVIDE:
+                    if (b == 0)
+                        throw new DivideByZeroException();
+
+                    result = a / b;
+                    break;
+
+                case REMAINDER:
+                    if (b == 0)
+                        throw new DivideByZeroException();
+
+                    result = a % b;
+                    break;
+
+                default:
+                    throw new ExpressionException(
+                        "Unsupported arithmetic type " + type);
+            }
+
+            return (kind == Kind.INT) ? (int) result : result;
+        }
+
+
+        @Override
+        double evalDouble(Environment env) {
+            double a = evalAsDouble(left, kind, env);
+            double b = evalAsDouble(right, kind, env);
+            wasNull = left.wasNull || right.wasNull;
+            if (wasNull)
+                return 0;
+
+            double result;
+            switch (type) {
+                case ADD:
+                    result = a + b;
+                    break;
+
+                case SUBTRACT:
+                    result = a - b;
+                    break;
+
+                case MULTIPLY:
+                    result = a * b;
+                    break;
+
+                case DIVIDE:
+                    if (b == 0)
+                        throw new DivideByZeroException();
+
+                    result = a / b;
+                    break;
+
+                case REMAINDER:
+                    if (b == 0)
+                        throw new DivideByZeroException();
+
+                    result = a % b;
+                    break;
+
+                default:
+                    throw new ExpressionException(
+                        "Unsupported arithmetic type " + type);
+            }
+
+            return (kind == Kind.FLOAT) ? (float) result : result;
+        }
+    }
+
+
+    /**
+     * The base class of compiled comparisons, which produce <tt>TRUE</tt>,
+     * <tt>FALSE</tt> or <tt>NULL</tt> from the sign of a comparison.
+     */
+    private abstract static class ComparisonNode extends Node {
+        /** Returned by {@link #compare} when either operand is NULL. */
+        static final int NULL_RESULT = Integer.MIN_VALUE;
+
+        private final CompareOperator.Type type;
+
+
+        ComparisonNode(CompareOperator.Type type) {
+            super(Kind.OBJECT);
+            this.type = type;
+        }
+
+
+        /**
+         * Returns the sign of comparing the left operand to the right one,
+         * or {@link #NULL_RESULT} if either operand is <tt>NULL</tt>.
+         */
+        abstract int compare(Environment env);
+
+
+        private boolean test(int c) {
+            switch (type) {
+                case EQUALS:
+                    return c == 0;
+
+                case NOT_EQUALS:
+                    return c != 0;
+
+                case LESS_THAN:
+                    return c < 0;
+
+                case GREATER_THAN:
+                    return c > 0;
+
+                case LESS_OR_EQUAL:
+                    return c <= 0;
+
+                case GREATER_OR_EQUAL:
+                    return c >= 0;
+
+                default:
+                    throw new ExpressionException(
+                        "Unrecognized comparison type " + type);
+            }
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            int c = compare(env);
+            return (c == NULL_RESULT) ? null : Boolean.valueOf(test(c));
+        }
+
+
+        @Override
+        boolean evalPredicate(Environment env) {
+            int c = compare(env);
+            return c != NULL_RESULT && test(c);
+        }
+    }
+
+
+    /** Compares two numeric values. */
+    private static class NumericComparisonNode extends ComparisonNode {
+        private final Node left;
+
+        private final Node right;
+
+        private final Kind compareKind;
+
+
+        NumericComparisonNode(CompareOperator.Type type, Node left,
+                              Node right) {
+            super(type);
+            this.left = left;
+            this.right = right;
+            compareKind = Kind.widen(left.kind, right.kind);
+        }
+
+
+        @Override
+        int compare(Environment env) {
+            if (compareKind.isIntegral()) {
+                long a = left.evalLong(env);
+                long b = right.evalLong(env);
+                if (left.wasNull || right.wasNull)
+                    return NULL_RESULT;
+
+                return Long.compare(a, b);
+            }
+
+            // Double.compare() orders widened FLOAT values the same way as
+            // Float.compare() orders the original values.
+            double a = evalAsDouble(left, compareKind, env);
+            double b = evalAsDouble(right, compareKind, env);
+            if (left.wasNull || right.wasNull)
+                return NULL_RESULT;
+
+            return Double.compare(a, b);
+        }
+    }
+
+
+    /**
+     * Compares a numeric value to a decimal literal.  The interpreter
+     * converts the value to a {@code BigDecimal} to compare it; this node
+     * computes the same result without doing so in the common cases.
+     */
+    private static class DecimalComparisonNode extends ComparisonNode {
+        private final Node operand;
+
+        private final BigDecimal constant;
+
+        /** True if the constant is the left operand of the comparison. */
+        private final boolean constantOnLeft;
+
+        /**
+         * For integral operands:  the sign of comparing any {@code long}
+         * value to the constant, if the constant is outside the range of
+         * {@code long}; otherwise 0.
+         */
+        private final int outOfRangeSign;
+
+        /** The floor of the constant, if it is within range. */
+        private final long floor;
+
+        /** True if the constant is an integer. */
+        private final boolean isInteger;
+
+        /** The constant, rounded to a double. */
+        private final double approx;
+
+
+        DecimalComparisonNode(CompareOperator.Type type, Node operand,
+                              BigDecimal constant, boolean constantOnLeft) {
+            super(type);
+            this.operand = operand;
+            this.constant = constant;
+            this.constantOnLeft = constantOnLeft;
+
+            BigDecimal floorValue = constant.setScale(0, RoundingMode.FLOOR);
+            isInteger = (floorValue.compareTo(constant) == 0);
+            if (floorValue.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) {
+                outOfRangeSign = -1;
+                floor = 0;
+            } else if (floorValue.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) {
+                outOfRangeSign = 1;
+                floor = 0;
+            } else {
+                outOfRangeSign = 0;
+                floor = floorValue.longValueExact();
+            }
+            approx = constant.doubleValue();
+        }
+
+
+        @Override
+        int compare(Environment env) {
+            int c;
+            if (operand.kind.isIntegral()) {
+                long value = operand.evalLong(env);
+                if (operand.wasNull)
+                    return NULL_RESULT;
+
+                if (outOfRangeSign != 0)
+                    c = outOfRangeSign;
+                else if (value != floor)
+                    c = (value < floor) ? -1 : 1;
+                else
+                    c = isInteger ? 0 : -1;
+            } else {
+                double value = operand.evalDouble(env);
+                if (operand.wasNull)
+                    return NULL_RESULT;
+
+                // The double nearest to the constant separates values that
+                // are definitely above or below it; anything else requires
+                // an exact comparison.
+                if (Double.isFinite(value) && value < approx)
+                    c = -1;
+                else if (Double.isFinite(value) && value > approx)
+                    c = 1;
+                else
+                    c = new BigDecimal(value).compareTo(constant);
+            }
+
+            return constantOnLeft ? -c : c;
+        }
+    }
+
+
+    /** Compares two character strings. */
+    private static class StringComparisonNode extends ComparisonNode {
+        private final Node left;
+
+        private final Node right;
+
+
+        StringComparisonNode(CompareOperator.Type type, Node left,
+                             Node right) {
+            super(type);
+            this.left = left;
+            this.right = right;
+        }
+
+
+        @Override
+        int compare(Environment env) {
+            Object a = left.evalObject(env);
+            Object b = right.evalObject(env);
+            if (a == null || b == null)
+                return NULL_RESULT;
+
+            if (!(a instanceof String && b instanceof String))
+                throw TypeMismatchException.INSTANCE;
+
+            return Integer.signum(((String) a).compareTo((String) b));
+        }
+    }
+
+
+    /** Evaluates an <tt>AND</tt>, <tt>OR</tt> or <tt>NOT</tt> expression. */
+    private static class BooleanNode extends Node {
+        private final BooleanOperator.Type type;
+
+        private final Node[] terms;
+
+
+        BooleanNode(BooleanOperator.Type type, Node[] terms) {
+            super(Kind.OBJECT);
+            this.type = type;
+            this.terms = terms;
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            return Boolean.valueOf(evalPredicate(env));
+        }
+
+
+        @Override
+        boolean evalPredicate(Environment env) {
+            // As in the interpreter, NULL terms are treated as FALSE.
+            switch (type) {
+                case AND_EXPR:
+                    for (Node term : terms) {
+                        if (!term.evalPredicate(env))
+                            return false;
+                    }
+                    return true;
+
+                case OR_EXPR:
+                    for (Node term : terms) {
+                        if (term.evalPredicate(env))
+                            return true;
+                    }
+                    return false;
+
+                default:
+                    return !terms[0].evalPredicate(env);
+            }
+        }
+    }
+
+
+    /** Evaluates an <tt>IS NULL</tt> or <tt>IS NOT NULL</tt> test. */
+    private static class IsNullNode extends Node {
+        private final Node operand;
+
+        private final boolean invert;
+
+
+        IsNullNode(Node operand, boolean invert) {
+            super(Kind.OBJECT);
+            this.operand = operand;
+            this.invert = invert;
+        }
+
+
+        @Override
+        Object evalObject(Environment env) {
+            return Boolean.valueOf(evalPredicate(env));
+        }
+
+
+        @Override
+        boolean evalPredicate(Environment env) {
+            return (operand.evalObject(env) == null) != invert;
+        }
+    }
+
+
+    /**
+     * Returns the kind of the values of a column of the specified type.
+     */
+    private static Kind getKind(Schema schema, ColumnValue colValue) {
+        try {
+            switch (colValue.getColumnInfo(schema).getType().getBaseType()) {
+                case TINYINT:
+                case SMALLINT:
+                case INTEGER:
+                    return Kind.INT;
+
+                case BIGINT:
+                    return Kind.LONG;
+
+                case FLOAT:
+                    return Kind.FLOAT;
+
+                case DOUBLE:
+                    return Kind.DOUBLE;
+
+                case CHAR:
+                case VARCHAR:
+                case TEXT:
+                    return Kind.STRING;
+
+                default:
+                    return Kind.OBJECT;
+            }
+        } catch (SchemaNameException e) {
+            // Probably a reference to an enclosing query's column.
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns the kind of a literal value, based on its Java class.
+     */
+    private static Kind getKind(Object value) {
+        if (value instanceof Integer || value instanceof Short ||
+            value instanceof Byte) {
+            return Kind.INT;
+        } else if (value instanceof Long) {
+            return Kind.LONG;
+        } else if (value instanceof Float) {
+            return Kind.FLOAT;
+        } else if (value instanceof Double) {
+            return Kind.DOUBLE;
+        } else if (value instanceof String) {
+            return Kind.STRING;
+        }
+        return Kind.OBJECT;
+    }
+
+
+    private static Node compileNode(Expression expr, Schema schema) {
+        if (expr instanceof ColumnValue) {
+            ColumnValue colValue = (ColumnValue) expr;
+            if (colValue.getColumnName().isColumnWildcard())
+                return new InterpretedNode(expr);
+
+            Kind kind = getKind(schema, colValue);
+            if (kind == null)
+                return new InterpretedNode(expr);
+
+            return new ColumnNode(colValue, kind);
+        } else if (expr instanceof LiteralValue) {
+            Object value = expr.evaluate();
+            return new LiteralNode(value, getKind(value));
+        } else if (expr instanceof ArithmeticOperator) {
+            return compileArithmetic((ArithmeticOperator) expr, schema);
+        } else if (expr instanceof CompareOperator) {
+            return compileComparison((CompareOperator) expr, schema);
+        } else if (expr instanceof BooleanOperator) {
+            return compileBoolean((BooleanOperator) expr, schema);
+        } else if (expr instanceof IsNullOperator) {
+            IsNullOperator isNull = (IsNullOperator) expr;
+            Node operand = compileNode(isNull.getExpression(), schema);
+            if (operand instanceof InterpretedNode)
+                return new InterpretedNode(expr);
+
+            return new IsNullNode(operand, isNull.isInverted());
+        }
+
+        return new InterpretedNode(expr);
+    }
+
+
+    private static boolean isNumeric(Node node) {
+        // NULL literals have no useful kind.
+        return node.kind.isNumeric() &&
+            !(node instanceof LiteralNode && node.wasNull);
+    }
+
+
+    private static Node compileArithmetic(ArithmeticOperator arith,
+                                          Schema schema) {
+        Node left = compileNode(arith.getLeftExpression(), schema);
+        Node right = compileNode(arith.getRightExpression(), schema);
+
+        // POWER has different overflow behavior for INTEGER and BIGINT, so
+        // it is left to the interpreter.
+        if (arith.getType() == ArithmeticOperator.Type.POWER ||
+            !isNumeric(left) || !isNumeric(right)) {
+            return new InterpretedNode(arith);
+        }
+
+        return new ArithmeticNode(arith.getType(), left, right);
+    }
+
+
+    private static Node compileComparison(CompareOperator cmp, Schema schema) {
+        Node left = compileNode(cmp.getLeftExpression(), schema);
+        Node right = compileNode(cmp.getRightExpression(), schema);
+
+        if (isNumeric(left) && isNumeric(right))
+            return new NumericComparisonNode(cmp.getType(), left, right);
+
+        if (isNumeric(left) && right instanceof LiteralNode &&
+            ((LiteralNode) right).value instanceof BigDecimal) {
+            return new DecimalComparisonNode(cmp.getType(), left,
+                (BigDecimal) ((LiteralNode) right).value, false);
+        }
+
+        if (isNumeric(right) && left instanceof LiteralNode &&
+            ((LiteralNode) left).value instanceof BigDecimal) {
+            return new DecimalComparisonNode(cmp.getType(), right,
+                (BigDecimal) ((LiteralNode) left).value, true);
+        }
+
+        if (left.kind == Kind.STRING && right.kind == Kind.STRING)
+            return new StringComparisonNode(cmp.getType(), left, right);
+
+        return new InterpretedNode(cmp);
+    }
+
+
+    private static Node compileBoolean(BooleanOperator bool, Schema schema) {
+        int numTerms = bool.getNumTerms();
+        if (numTerms == 0 ||
+            bool.getType() == BooleanOperator.Type.NOT_EXPR && numTerms != 1) {
+            // Let the interpreter report the error.
+            return new InterpretedNode(bool);
+        }
+
+        Node[] terms = new Node[numTerms];
+        boolean anyCompiled = false;
+        for (int i = 0; i < numTerms; i++) {
+            terms[i] = compileNode(bool.getTerm(i), schema);
+            if (!(terms[i] instanceof InterpretedNode))
+                anyCompiled = true;
+        }
+
+        if (!anyCompiled)
+            return new InterpretedNode(bool);
+
+        return new BooleanNode(bool.getType(), terms);
+    }
+}
@@ -27,6 +27,27 @@ public class IsNullOperator extends Expression {
     }
 
 
+    /**
+     * Returns the expression that is checked for "nullness".
+     *
+     * @return the expression that is checked for "nullness"
+     */
+    public Expression getExpression() {
+        return expr;
+    }
+
+
+    /**
+     * Returns true if this operator computes <tt>IS NOT NULL</tt>, or false
+     * if it computes <tt>IS NULL</tt>.
+     *
+     * @return true if this operator computes <tt>IS NOT NULL</tt>
+     */
+    public boolean isInverted() {
+        return invert;
+    }
+
+
     @Override
     public ColumnInfo getColumnInfo(Schema schema) throws SchemaNameException {
         // This operator always returns Boolean values, so just pass a Boolean
@@ -58,7 +79,7 @@ public class IsNullOperator extends Expression {
      */
     public Expression simplify() {
         expr = expr.simplify();
-        if (!expr.hasSymbols()) {
+        if (expr.isConstant()) {
             expr = new LiteralValue(expr.evaluate());
             return new LiteralValue(evaluate());
         }
@@ -84,7 +84,7 @@ public class NegateOperator extends Expression {
      */
     public Expression simplify() {
         expr = expr.simplify();
-        if (!expr.hasSymbols())
+        if (expr.isConstant())
             return new LiteralValue(evaluate());
 
         return this;
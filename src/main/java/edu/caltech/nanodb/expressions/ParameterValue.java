@@ -0,0 +1,126 @@
+package edu.caltech.nanodb.expressions;
+
+
+import java.util.List;
+
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
+
+
+/**
+ * <p>
+ * This expression class represents a parameter of a prepared statement,
+ * written <tt>$1</tt>, <tt>$2</tt>, etc.  The parameter's value is supplied
+ * each time the statement is executed, by binding it into a list of values
+ * that all of the statement's parameters share.
+ * </p>
+ * <p>
+ * Since the value can change between executions of the same plan, a
+ * parameter is not a {@link LiteralValue}, and expressions that refer to
+ * parameters are never simplified into constants.  Only code that evaluates
+ * the parameter each time a plan is executed may treat it as a constant.
+ * </p>
+ */
+public class ParameterValue extends Expression {
+
+    /** The 1-based index of this parameter in the statement. */
+    private int index;
+
+
+    /**
+     * The values bound to the statement's parameters.  This list is shared
+     * by all of the statement's parameters, and by copies of them.
+     */
+    private List<Object> values;
+
+
+    public ParameterValue(int index, List<Object> values) {
+        if (index < 1)
+            throw new IllegalArgumentException("index must be at least 1");
+
+        if (values == null)
+            throw new IllegalArgumentException("values cannot be null");
+
+        this.index = index;
+        this.values = values;
+    }
+
+
+    public int getIndex() {
+        return index;
+    }
+
+
+    /**
+     * Returns the type of the value currently bound to the parameter, so
+     * this must only be called once the parameter has a value.
+     */
+    public ColumnInfo getColumnInfo(Schema schema) throws SchemaNameException {
+        ColumnType colType = new ColumnType(TypeConverter.getSQLType(evaluate()));
+        return new ColumnInfo(toString(), colType);
+    }
+
+
+    /**
+     * For parameters, evaluation simply involves returning the value that is
+     * currently bound to the parameter.
+     */
+    public Object evaluate(Environment env) {
+        if (index > values.size()) {
+            throw new ExpressionException(
+                "No value is bound to parameter " + this);
+        }
+
+        return values.get(index - 1);
+    }
+
+
+    @Override
+    public Expression traverse(ExpressionProcessor p) {
+        p.enter(this);
+        return p.leave(this);
+    }
+
+
+    @Override
+    public String toString() {
+        return "$" + index;
+    }
+
+
+    /**
+     * Checks if the argument is a parameter of the same statement, with the
+     * same index.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof ParameterValue) {
+            ParameterValue other = (ParameterValue) obj;
+            return index == other.index && values == other.values;
+        }
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        int hash = 11;
+        hash = 31 * hash + index;
+        hash = 31 * hash + System.identityHashCode(values);
+        return hash;
+    }
+
+
+    /**
+     * Creates a copy of expression.
+     *
+     * @design The copy shares the list of bound values, so that values bound
+     * to the statement are seen by every copy of its parameters.
+     */
+    @Override
+    protected Object clone() throws CloneNotSupportedException {
+        return super.clone();
+    }
+}
@@ -157,6 +157,8 @@ public class TupleLiteral implements Tuple, Serializable {
 
     /**
      * Appends the specified tuple's contents to this tuple-literal object.
+     * Columns that were projected out of the tuple are appended as
+     * <tt>NULL</tt>.
      *
      * @param tuple the tuple data to copy into this tuple-literal
      * @throws IllegalArgumentException if <tt>tuple</tt> is <tt>null</tt>.
@@ -165,8 +167,10 @@ public class TupleLiteral implements Tuple, Serializable {
         if (tuple == null)
             throw new IllegalArgumentException("tuple cannot be null");
 
-        for (int i = 0; i < tuple.getColumnCount(); i++)
-            values.add(tuple.getColumnValue(i));
+        for (int i = 0; i < tuple.getColumnCount(); i++) {
+            values.add(tuple.isColumnProjectedOut(i) ? null :
+                tuple.getColumnValue(i));
+        }
     }
 
 
@@ -50,4 +50,39 @@ public abstract class AggregateFunction extends ScalarFunction {
      * @return the result of the aggregate computation.
      */
     public abstract Object getResult();
+
+
+    /**
+     * Returns true if this aggregate function can fold the partial state of
+     * another instance of the same function into its own state, via the
+     * {@link #mergeResult} method.  This allows an aggregate to be computed
+     * in two phases:  several workers each aggregate part of the input, and
+     * then their partial results are merged into the final result.  The
+     * default implementation returns {@code false}.
+     *
+     * @return true if this aggregate function supports {@link #mergeResult}
+     */
+    public boolean supportsMerge() {
+        return false;
+    }
+
+
+    /**
+     * Folds the partial state of another instance of this aggregate function
+     * into this function's state, so that this function's result is the same
+     * as if it had been handed all of the values handed to both functions.
+     * The other function must be configured the same way as this function
+     * (e.g. both must be <tt>DISTINCT</tt> or neither), and should not be
+     * used after it is merged.
+     *
+     * @param other the aggregate function whose state should be merged into
+     *        this function's state
+     *
+     * @throws UnsupportedOperationException if this aggregate function
+     *         doesn't support merging partial results
+     */
+    public void mergeResult(AggregateFunction other) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() +
+            " doesn't support merging partial results");
+    }
 }
@@ -111,6 +111,54 @@ public class CountAggregate extends AggregateFunction {
     }
 
 
+    /**
+     * Counts can always be merged, except for a <tt>COUNT(DISTINCT ...)</tt>
+     * over sorted inputs, since that only remembers the last value it saw.
+     */
+    @Override
+    public boolean supportsMerge() {
+        return !(distinct && sortedInputs);
+    }
+
+
+    @Override
+    public void mergeResult(AggregateFunction other) {
+        if (!supportsMerge())
+            super.mergeResult(other);
+
+        CountAggregate otherCount = (CountAggregate) other;
+        if (otherCount.count == -1)
+            return;
+
+        if (count == -1)
+            count = 0;
+
+        if (distinct) {
+            // Only count the other function's values that we haven't
+            // already seen.
+            for (Object value : otherCount.valuesSeen) {
+                if (valuesSeen.add(value))
+                    count++;
+            }
+        } else {
+            count += otherCount.count;
+        }
+    }
+
+
+    /**
+     * Each copy of the function needs its own set of values seen, since
+     * copies are used to compute the counts of different groups.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object clone() throws CloneNotSupportedException {
+        CountAggregate fn = (CountAggregate) super.clone();
+        fn.valuesSeen = (HashSet<Object>) valuesSeen.clone();
+        return fn;
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         if (args.size() != 1) {
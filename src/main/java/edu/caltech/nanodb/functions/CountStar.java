@@ -39,6 +39,18 @@ public class CountStar extends AggregateFunction {
     }
 
 
+    @Override
+    public boolean supportsMerge() {
+        return true;
+    }
+
+
+    @Override
+    public void mergeResult(AggregateFunction other) {
+        count += ((CountStar) other).count;
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         if (args.size() != 1) {
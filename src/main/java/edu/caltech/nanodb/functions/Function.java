@@ -31,6 +31,18 @@ package edu.caltech.nanodb.functions;
  */
 public abstract class Function implements Cloneable {
 
+    /**
+     * Returns true if the function always produces the same result from the
+     * same arguments and the same database contents.  The results of queries
+     * that call non-deterministic functions are never cached.
+     *
+     * @return true if the function is deterministic
+     */
+    public boolean isDeterministic() {
+        return true;
+    }
+
+
     /**
      * Creates a copy of expression.
      */
@@ -68,6 +68,20 @@ public class MinMaxAggregate extends AggregateFunction {
     }
 
 
+    @Override
+    public boolean supportsMerge() {
+        return true;
+    }
+
+
+    @Override
+    public void mergeResult(AggregateFunction other) {
+        // The other function's result is the min/max of its inputs, so it
+        // can simply be added as another value.
+        addValue(((MinMaxAggregate) other).result);
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         if (args.size() != 1) {
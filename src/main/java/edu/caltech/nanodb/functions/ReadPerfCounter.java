@@ -18,6 +18,13 @@ import edu.caltech.nanodb.server.performance.PerformanceCounters;
  * Returns the current value of the specified performance counter.
  */
 public class ReadPerfCounter extends SimpleFunction {
+    /** The value of a performance counter changes as the database is used. */
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         return new ColumnType(SQLDataType.INTEGER);
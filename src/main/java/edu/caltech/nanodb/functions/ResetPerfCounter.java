@@ -18,6 +18,13 @@ import edu.caltech.nanodb.server.performance.PerformanceCounters;
  * Resets the specified performance counter, and returns the old value.
  */
 public class ResetPerfCounter extends SimpleFunction {
+    /** Resetting a performance counter is a side effect. */
+    @Override
+    public boolean isDeterministic() {
+        return false;
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         return new ColumnType(SQLDataType.INTEGER);
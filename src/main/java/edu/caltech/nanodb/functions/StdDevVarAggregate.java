@@ -1,11 +1,10 @@
 package edu.caltech.nanodb.functions;
 
 
-import java.util.ArrayList;
 import java.util.List;
 
-import edu.caltech.nanodb.expressions.ArithmeticOperator;
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.TypeConverter;
 
 import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.relations.Schema;
@@ -14,14 +13,33 @@ import edu.caltech.nanodb.relations.Schema;
 /**
  * This aggregate function can be used to compute either the standard deviation
  * or the variance of a collection of values.
+ * <p>
+ * The population variance is computed in a single pass with Welford's
+ * algorithm, which keeps a running count, mean, and sum of squared
+ * differences from the mean, rather than storing every value.  Two partial
+ * states are combined with Chan et al.'s pairwise formula, so the function
+ * supports {@link #mergeResult}.
  */
 public class StdDevVarAggregate extends AggregateFunction {
 
+    /** True to compute the standard deviation, false for the variance. */
     private boolean computeStdDev;
 
-    private Object sum;
 
-    private ArrayList<Object> values;
+    /** The number of non-<tt>NULL</tt> values seen so far. */
+    private long count;
+
+
+    /** The mean of the values seen so far. */
+    private double mean;
+
+
+    /**
+     * The sum of the squared differences between the values seen so far and
+     * their mean.
+     */
+    private double m2;
+
 
     public StdDevVarAggregate(boolean computeStdDev) {
         super(/* supportsDistinct */ false);
@@ -31,8 +49,9 @@ public class StdDevVarAggregate extends AggregateFunction {
 
     @Override
     public void clearResult() {
-        sum = null;
-        values = null;
+        count = 0;
+        mean = 0;
+        m2 = 0;
     }
 
 
@@ -41,57 +60,51 @@ public class StdDevVarAggregate extends AggregateFunction {
         if (value == null)
             return;
 
-        if (values == null) {
-            // This is the first value. Create a new array list and store it.
-            values = new ArrayList<Object>();
-            values.add(value);
-        } else {
-            // Store the new value
-            values.add(value);
-        }
+        double x = TypeConverter.getDoubleValue(value);
 
-        if (sum == null) {
-            // This is the first value.  Store it.
-            sum = value;
-        } else {
-            // Add in the new value.
-            sum = ArithmeticOperator.evalObjects(ArithmeticOperator.Type.ADD,
-                sum, value);
-        }
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
     }
 
 
     @Override
     public Object getResult() {
-        if (sum == null || values == null)
+        if (count == 0)
             return null;
-        else {
-            // TODO:  Need to generate NUMERIC result.  Using double right now.
-            double count = (double) values.size();
-            // Compute average from the sum and count.
-            Object avg = ArithmeticOperator.evalObjects(
-                ArithmeticOperator.Type.DIVIDE, sum, count);
-
-            // Compute the sum of the square of the residuals.
-            Object sumSquaresResids = squareDifference(values.get(0), avg);
-            for (int i = 1; i < count; i++) {
-                sumSquaresResids = ArithmeticOperator.evalObjects(
-                    ArithmeticOperator.Type.ADD, sumSquaresResids,
-                    squareDifference(values.get(i), avg));
-            }
-
-            // Compute the variance.
-            Object var = ArithmeticOperator.evalObjects(
-                ArithmeticOperator.Type.DIVIDE, sumSquaresResids, count);
-
-            // Compute standard deviation if necessary.
-            if (computeStdDev) {
-                return ArithmeticOperator.evalObjects(
-                    ArithmeticOperator.Type.POWER, var, Double.valueOf(.5));
-            } else {
-                return var;
-            }
+
+        // TODO:  Need to generate NUMERIC result.  Using double right now.
+        double var = m2 / count;
+        return computeStdDev ? Math.sqrt(var) : var;
+    }
+
+
+    @Override
+    public boolean supportsMerge() {
+        return true;
+    }
+
+
+    @Override
+    public void mergeResult(AggregateFunction other) {
+        StdDevVarAggregate otherVar = (StdDevVarAggregate) other;
+        if (otherVar.count == 0)
+            return;
+
+        if (count == 0) {
+            count = otherVar.count;
+            mean = otherVar.mean;
+            m2 = otherVar.m2;
+            return;
         }
+
+        long total = count + otherVar.count;
+        double delta = otherVar.mean - mean;
+
+        mean += delta * otherVar.count / total;
+        m2 += otherVar.m2 + delta * delta * ((double) count * otherVar.count / total);
+        count = total;
     }
 
 
@@ -107,15 +120,4 @@ public class StdDevVarAggregate extends AggregateFunction {
         // same type as the values of the column.
         return args.get(0).getColumnInfo(schema).getType();
     }
-
-
-    /**
-     * Helper function that computes the square of the difference between
-     * two values.
-     */
-    private Object squareDifference(Object value, Object avg) {
-        return ArithmeticOperator.evalObjects(ArithmeticOperator.Type.POWER,
-            ArithmeticOperator.evalObjects(ArithmeticOperator.Type.SUBTRACT, value, avg),
-            Integer.valueOf(2));
-    }
 }
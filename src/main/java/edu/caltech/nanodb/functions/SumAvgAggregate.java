@@ -108,6 +108,47 @@ public class SumAvgAggregate extends AggregateFunction {
     }
 
 
+    @Override
+    public boolean supportsMerge() {
+        return true;
+    }
+
+
+    @Override
+    public void mergeResult(AggregateFunction other) {
+        SumAvgAggregate otherSumAvg = (SumAvgAggregate) other;
+
+        if (distinct) {
+            // The other function's sum may include values we have already
+            // seen, so add in its distinct values one by one.
+            for (Object value : otherSumAvg.set)
+                addValue(value);
+        } else if (otherSumAvg.sum != null) {
+            if (sum == null) {
+                sum = otherSumAvg.sum;
+            } else {
+                sum = ArithmeticOperator.evalObjects(
+                    ArithmeticOperator.Type.ADD, sum, otherSumAvg.sum);
+            }
+            count += otherSumAvg.count;
+        }
+    }
+
+
+    /**
+     * Each copy of the function needs its own set of distinct values, since
+     * copies are used to compute the results of different groups.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object clone() throws CloneNotSupportedException {
+        SumAvgAggregate fn = (SumAvgAggregate) super.clone();
+        if (set != null)
+            fn.set = (HashSet<Object>) set.clone();
+        return fn;
+    }
+
+
     @Override
     public ColumnType getReturnType(List<Expression> args, Schema schema) {
         if (args.size() != 1) {
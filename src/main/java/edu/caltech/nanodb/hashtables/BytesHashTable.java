@@ -0,0 +1,271 @@
+package edu.caltech.nanodb.hashtables;
+
+
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * An open-addressing hash table that maps byte-sequence keys to dense
+ * integer IDs.  The first key added is given ID 0, the next key ID 1, and so
+ * forth.  The bytes of all keys are stored back to back in a single byte
+ * array, and each key's offset and hash code are stored in primitive arrays
+ * indexed by ID.  The hash table itself is an array of IDs that is searched
+ * with linear probing, so the table holds no per-entry objects at all.
+ * </p>
+ * <p>
+ * Each entry takes the bytes of its key, plus 8 bytes for its offset and
+ * hash code, plus 4 bytes for each slot of the hash table; the table is kept
+ * at most 3/4 full, so this is between 5.3 and 10.7 bytes per entry.  (The
+ * other arrays also grow by doubling, so they may be up to half empty.)  See
+ * {@link #getMemoryUsage}.
+ * </p>
+ */
+public class BytesHashTable {
+
+    /** The default number of keys the table can hold before it grows. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+
+    /**
+     * The slots of the hash table.  Each slot holds the ID of a key plus 1,
+     * or 0 if the slot is empty.  The length is always a power of 2.
+     */
+    private int[] slots;
+
+
+    /** The hash codes of the keys in the table, indexed by their IDs. */
+    private int[] hashes;
+
+
+    /**
+     * The offsets of the keys in {@link #data}, indexed by their IDs.  The
+     * key with ID <em>i</em> ends where the key with ID <em>i</em> + 1
+     * starts, so this array has one more entry than there are keys.
+     */
+    private int[] offsets;
+
+
+    /** The bytes of the keys in the table, stored back to back. */
+    private byte[] data;
+
+
+    /** The number of keys in the table. */
+    private int size;
+
+
+    /** The number of keys the table can hold before the slots must grow. */
+    private int threshold;
+
+
+    public BytesHashTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructs a hash table that can hold the specified number of keys
+     * before it must grow.
+     *
+     * @param capacity the number of keys the table can initially hold
+     */
+    public BytesHashTable(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        hashes = new int[capacity];
+        offsets = new int[capacity + 1];
+        data = new byte[8 * capacity];
+        allocateSlots(LongHashTable.slotsForCapacity(capacity));
+    }
+
+
+    /**
+     * Returns the number of keys in the table.
+     *
+     * @return the number of keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the array holding the bytes of the keys.  The array may be
+     * replaced when keys are added, so it shouldn't be held onto.
+     *
+     * @return the array holding the bytes of the keys
+     */
+    public byte[] getKeyData() {
+        return data;
+    }
+
+
+    /**
+     * Returns the offset in {@link #getKeyData} of the key with the
+     * specified ID.
+     *
+     * @param id the ID of the key, between 0 and {@link #size} - 1
+     * @return the offset of the key's bytes
+     */
+    public int getKeyOffset(int id) {
+        checkId(id);
+        return offsets[id];
+    }
+
+
+    /**
+     * Returns the length of the key with the specified ID.
+     *
+     * @param id the ID of the key, between 0 and {@link #size} - 1
+     * @return the number of bytes in the key
+     */
+    public int getKeyLength(int id) {
+        checkId(id);
+        return offsets[id + 1] - offsets[id];
+    }
+
+
+    private void checkId(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("id " + id + " is not in the table");
+    }
+
+
+    /**
+     * Returns the ID of the specified key.
+     *
+     * @param key the array holding the key's bytes
+     * @param off the offset of the key in the array
+     * @param len the number of bytes in the key
+     * @return the ID of the key, or -1 if the key is not in the table
+     */
+    public int find(byte[] key, int off, int len) {
+        return slots[probe(hash(key, off, len), key, off, len)] - 1;
+    }
+
+
+    /**
+     * Returns the ID of the specified key, adding the key to the table if it
+     * isn't already present.  A key that is added is given the ID
+     * {@link #size} had before the call, so callers can tell whether the key
+     * was added by comparing the result to the size.
+     *
+     * @param key the array holding the key's bytes
+     * @param off the offset of the key in the array
+     * @param len the number of bytes in the key
+     * @return the ID of the key
+     */
+    public int add(byte[] key, int off, int len) {
+        int h = hash(key, off, len);
+        int i = probe(h, key, off, len);
+        if (slots[i] != 0)
+            return slots[i] - 1;
+
+        int id = size;
+        if (id == hashes.length) {
+            int capacity = 2 * hashes.length;
+            hashes = Arrays.copyOf(hashes, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+
+        int start = offsets[id];
+        if (start + len > data.length) {
+            data = Arrays.copyOf(data,
+                Math.max(2 * data.length, start + len));
+        }
+        System.arraycopy(key, off, data, start, len);
+
+        hashes[id] = h;
+        offsets[id + 1] = start + len;
+        slots[i] = id + 1;
+        size++;
+
+        if (size > threshold)
+            rehash(2 * slots.length);
+
+        return id;
+    }
+
+
+    /**
+     * Returns the index of the slot holding the specified key, or of the
+     * empty slot where the key would be added if it isn't in the table.
+     */
+    private int probe(int h, byte[] key, int off, int len) {
+        int mask = slots.length - 1;
+        int i = h & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0)
+                return i;
+
+            int id = slot - 1;
+            if (hashes[id] == h && offsets[id + 1] - offsets[id] == len &&
+                Arrays.equals(data, offsets[id], offsets[id] + len,
+                              key, off, off + len)) {
+                return i;
+            }
+
+            i = (i + 1) & mask;
+        }
+    }
+
+
+    /** Removes all keys from the table, keeping its current capacity. */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+
+    /**
+     * Returns the number of bytes of memory used by the table's arrays.
+     *
+     * @return the number of bytes of memory used by the table's arrays
+     */
+    public long getMemoryUsage() {
+        return 4L * slots.length + 4L * hashes.length + 4L * offsets.length +
+            data.length;
+    }
+
+
+    private void allocateSlots(int numSlots) {
+        slots = new int[numSlots];
+        threshold = numSlots / 4 * 3;
+    }
+
+
+    private void rehash(int numSlots) {
+        allocateSlots(numSlots);
+
+        int mask = numSlots - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+
+            slots[i] = id + 1;
+        }
+    }
+
+
+    /**
+     * Computes the hash code of a sequence of bytes, using the FNV-1a
+     * algorithm followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    static int hash(byte[] key, int off, int len) {
+        int h = 0x811c9dc5;
+        for (int i = off; i < off + len; i++) {
+            h ^= key[i];
+            h *= 0x01000193;
+        }
+
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,376 @@
+package edu.caltech.nanodb.hashtables;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+
+
+/**
+ * <p>
+ * This class encodes a sequence of column values into a sequence of bytes,
+ * and decodes the bytes back into the values.  Two sequences of values are
+ * encoded into the same bytes exactly when the values are
+ * {@link Object#equals equal}, so encoded values can be used as hash-table
+ * keys in place of {@link TupleLiteral}s.
+ * </p>
+ * <p>
+ * Each value is encoded as a one-byte tag identifying its Java type,
+ * followed by a fixed-size encoding of the value (or, for strings and
+ * numerics, a length and then the value).  Values of types this class
+ * doesn't know how to encode are stored in a list of objects kept by the
+ * codec, and encoded as their index in the list, so a codec must be used to
+ * decode the values it encoded.
+ * </p>
+ */
+class KeyCodec {
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_BYTE = 3;
+    private static final byte TAG_SHORT = 4;
+    private static final byte TAG_INTEGER = 5;
+    private static final byte TAG_LONG = 6;
+    private static final byte TAG_FLOAT = 7;
+    private static final byte TAG_DOUBLE = 8;
+    private static final byte TAG_NUMERIC = 9;
+    private static final byte TAG_ASCII_STRING = 10;
+    private static final byte TAG_STRING = 11;
+    private static final byte TAG_DATE = 12;
+    private static final byte TAG_TIME = 13;
+    private static final byte TAG_DATETIME = 14;
+    private static final byte TAG_DURATION = 15;
+    private static final byte TAG_PERIOD = 16;
+    private static final byte TAG_OBJECT = 17;
+
+
+    /** The buffer that values are encoded into. */
+    private byte[] buffer = new byte[64];
+
+
+    /** The number of bytes of {@link #buffer} holding encoded values. */
+    private int length;
+
+
+    /** The objects of other types that have been encoded, by index. */
+    private ArrayList<Object> objects;
+
+
+    /** The index of each object in {@link #objects}. */
+    private HashMap<Object, Integer> objectIndexes;
+
+
+    /** The position in the bytes being decoded. */
+    private int readPos;
+
+
+    /** Clears the encoded values, so that a new key can be encoded. */
+    void reset() {
+        length = 0;
+    }
+
+
+    /**
+     * Returns the buffer holding the encoded values.
+     *
+     * @return the buffer holding the encoded values
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+
+    /**
+     * Returns the number of bytes of encoded values in the buffer.
+     *
+     * @return the number of bytes of encoded values in the buffer
+     */
+    int getLength() {
+        return length;
+    }
+
+
+    /**
+     * Returns true if the codec has encoded values of types that it stores
+     * in its list of objects.  Such encodings can only be decoded by this
+     * codec, not copied to another codec's keys.
+     *
+     * @return true if the codec has stored objects in its list
+     */
+    boolean hasObjects() {
+        return objects != null;
+    }
+
+
+    /**
+     * Returns the number of bytes of memory used by the codec's buffer.
+     * Objects stored by the codec are not counted.
+     *
+     * @return the number of bytes of memory used by the codec's buffer
+     */
+    long getMemoryUsage() {
+        return buffer.length;
+    }
+
+
+    /**
+     * Appends the encoding of a value to the buffer.
+     *
+     * @param value the value to encode, which may be {@code null}
+     */
+    void encode(Object value) {
+        if (value == null) {
+            writeByte(TAG_NULL);
+        } else if (value instanceof Integer) {
+            writeByte(TAG_INTEGER);
+            writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            writeByte(TAG_LONG);
+            writeLong((Long) value);
+        } else if (value instanceof String) {
+            encodeString((String) value);
+        } else if (value instanceof Double) {
+            // Double.equals() compares the bits of the values.
+            writeByte(TAG_DOUBLE);
+            writeLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof Float) {
+            writeByte(TAG_FLOAT);
+            writeInt(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Short) {
+            writeByte(TAG_SHORT);
+            writeInt((Short) value);
+        } else if (value instanceof Byte) {
+            writeByte(TAG_BYTE);
+            writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof BigDecimal) {
+            // BigDecimal.equals() compares the unscaled value and the scale.
+            BigDecimal d = (BigDecimal) value;
+            byte[] unscaled = d.unscaledValue().toByteArray();
+            writeByte(TAG_NUMERIC);
+            writeInt(d.scale());
+            writeInt(unscaled.length);
+            writeBytes(unscaled);
+        } else if (value instanceof LocalDate) {
+            writeByte(TAG_DATE);
+            writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalTime) {
+            writeByte(TAG_TIME);
+            writeLong(((LocalTime) value).toNanoOfDay());
+        } else if (value instanceof LocalDateTime) {
+            LocalDateTime dt = (LocalDateTime) value;
+            writeByte(TAG_DATETIME);
+            writeLong(dt.toLocalDate().toEpochDay());
+            writeLong(dt.toLocalTime().toNanoOfDay());
+        } else if (value instanceof Duration) {
+            Duration d = (Duration) value;
+            writeByte(TAG_DURATION);
+            writeLong(d.getSeconds());
+            writeInt(d.getNano());
+        } else if (value instanceof Period) {
+            Period p = (Period) value;
+            writeByte(TAG_PERIOD);
+            writeInt(p.getYears());
+            writeInt(p.getMonths());
+            writeInt(p.getDays());
+        } else {
+            if (objects == null) {
+                objects = new ArrayList<>();
+                objectIndexes = new HashMap<>();
+            }
+
+            Integer index = objectIndexes.get(value);
+            if (index == null) {
+                index = objects.size();
+                objects.add(value);
+                objectIndexes.put(value, index);
+            }
+
+            writeByte(TAG_OBJECT);
+            writeInt(index);
+        }
+    }
+
+
+    private void encodeString(String s) {
+        int len = s.length();
+
+        boolean ascii = true;
+        for (int i = 0; i < len && ascii; i++)
+            ascii = s.charAt(i) < 0x80;
+
+        writeByte(ascii ? TAG_ASCII_STRING : TAG_STRING);
+        writeInt(len);
+        ensureCapacity(ascii ? len : 2 * len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (!ascii)
+                buffer[length++] = (byte) (c >>> 8);
+
+            buffer[length++] = (byte) c;
+        }
+    }
+
+
+    /**
+     * Decodes a sequence of values encoded by this codec.
+     *
+     * @param data the array holding the encoded values
+     * @param off the offset of the encoded values in the array
+     * @param len the number of bytes of encoded values
+     * @return a tuple holding the decoded values
+     */
+    TupleLiteral decode(byte[] data, int off, int len) {
+        TupleLiteral tuple = new TupleLiteral();
+
+        readPos = off;
+        while (readPos < off + len)
+            tuple.addValue(decodeValue(data));
+
+        return tuple;
+    }
+
+
+    private Object decodeValue(byte[] data) {
+        byte tag = data[readPos++];
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+
+            case TAG_FALSE:
+                return Boolean.FALSE;
+
+            case TAG_TRUE:
+                return Boolean.TRUE;
+
+            case TAG_BYTE:
+                return data[readPos++];
+
+            case TAG_SHORT:
+                return (short) readInt(data);
+
+            case TAG_INTEGER:
+                return readInt(data);
+
+            case TAG_LONG:
+                return readLong(data);
+
+            case TAG_FLOAT:
+                return Float.intBitsToFloat(readInt(data));
+
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(readLong(data));
+
+            case TAG_NUMERIC: {
+                int scale = readInt(data);
+                int n = readInt(data);
+                byte[] unscaled = Arrays.copyOfRange(data, readPos, readPos + n);
+                readPos += n;
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            }
+
+            case TAG_ASCII_STRING:
+            case TAG_STRING: {
+                int n = readInt(data);
+                char[] chars = new char[n];
+                for (int i = 0; i < n; i++) {
+                    int c = data[readPos++] & 0xFF;
+                    if (tag == TAG_STRING)
+                        c = (c << 8) | (data[readPos++] & 0xFF);
+
+                    chars[i] = (char) c;
+                }
+                return new String(chars);
+            }
+
+            case TAG_DATE:
+                return LocalDate.ofEpochDay(readLong(data));
+
+            case TAG_TIME:
+                return LocalTime.ofNanoOfDay(readLong(data));
+
+            case TAG_DATETIME: {
+                LocalDate date = LocalDate.ofEpochDay(readLong(data));
+                return LocalDateTime.of(date, LocalTime.ofNanoOfDay(readLong(data)));
+            }
+
+            case TAG_DURATION: {
+                long seconds = readLong(data);
+                return Duration.ofSeconds(seconds, readInt(data));
+            }
+
+            case TAG_PERIOD: {
+                int years = readInt(data);
+                int months = readInt(data);
+                return Period.of(years, months, readInt(data));
+            }
+
+            case TAG_OBJECT:
+                return objects.get(readInt(data));
+
+            default:
+                throw new IllegalStateException("Unrecognized key tag " + tag);
+        }
+    }
+
+
+    private void ensureCapacity(int n) {
+        if (length + n > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + n));
+    }
+
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) b;
+    }
+
+
+    private void writeBytes(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buffer, length, b.length);
+        length += b.length;
+    }
+
+
+    private void writeInt(int v) {
+        ensureCapacity(4);
+        buffer[length++] = (byte) (v >>> 24);
+        buffer[length++] = (byte) (v >>> 16);
+        buffer[length++] = (byte) (v >>> 8);
+        buffer[length++] = (byte) v;
+    }
+
+
+    private void writeLong(long v) {
+        writeInt((int) (v >>> 32));
+        writeInt((int) v);
+    }
+
+
+    private int readInt(byte[] data) {
+        int v = ((data[readPos] & 0xFF) << 24) |
+                ((data[readPos + 1] & 0xFF) << 16) |
+                ((data[readPos + 2] & 0xFF) << 8) |
+                (data[readPos + 3] & 0xFF);
+        readPos += 4;
+        return v;
+    }
+
+
+    private long readLong(byte[] data) {
+        long high = readInt(data);
+        return (high << 32) | (readInt(data) & 0xFFFFFFFFL);
+    }
+}
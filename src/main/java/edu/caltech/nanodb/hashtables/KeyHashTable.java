@@ -0,0 +1,270 @@
+package edu.caltech.nanodb.hashtables;
+
+
+import java.util.List;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+
+
+/**
+ * <p>
+ * A hash table that maps keys made of one or more column values, such as
+ * the values of a query's grouping expressions, to dense integer IDs.  The
+ * first key added is given ID 0, the next key ID 1, and so forth, so callers
+ * can keep per-key state in an array or list indexed by the ID.  Two keys
+ * are the same if their values are {@link Object#equals equal}, just as if
+ * the keys were {@link TupleLiteral}s.
+ * </p>
+ * <p>
+ * Keys are not stored as objects.  If the key is a single integer column,
+ * the keys are stored in a {@link LongHashTable}, and values of the column
+ * are compared as <tt>long</tt>s; otherwise the values of each key are
+ * encoded into bytes and stored in a {@link BytesHashTable}.  Either way the
+ * table holds no per-key objects, and {@link #getMemoryUsage} reports the
+ * memory it uses.  The values of a key are only turned back into objects
+ * when {@link #getKey} is called.
+ * </p>
+ */
+public class KeyHashTable {
+
+    /**
+     * The type of the key column when the keys are stored in
+     * {@link #longTable}, or {@code null} otherwise.
+     */
+    private SQLDataType longKeyType;
+
+
+    /** The table holding single-integer keys, if that is the key type. */
+    private LongHashTable longTable;
+
+
+    /**
+     * The ID of the <tt>NULL</tt> key, when the keys are stored in
+     * {@link #longTable}, or -1 if there is no such key.
+     */
+    private int nullKeyId = -1;
+
+
+    /** The table holding encoded keys, if the keys aren't single integers. */
+    private BytesHashTable bytesTable;
+
+
+    /** The codec used to encode keys for {@link #bytesTable}. */
+    private KeyCodec codec;
+
+
+    /**
+     * Constructs a hash table for keys of the specified column types.
+     *
+     * @param keyTypes the types of the columns making up each key
+     */
+    public KeyHashTable(List<ColumnType> keyTypes) {
+        if (keyTypes == null)
+            throw new IllegalArgumentException("keyTypes cannot be null");
+
+        if (keyTypes.size() == 1 && isIntegerType(keyTypes.get(0))) {
+            longKeyType = keyTypes.get(0).getBaseType();
+            longTable = new LongHashTable();
+        } else {
+            bytesTable = new BytesHashTable();
+            codec = new KeyCodec();
+        }
+    }
+
+
+    private static boolean isIntegerType(ColumnType type) {
+        switch (type.getBaseType()) {
+            case TINYINT:
+            case SMALLINT:
+            case INTEGER:
+            case BIGINT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+
+    /**
+     * Returns the number of keys in the table.
+     *
+     * @return the number of keys in the table
+     */
+    public int size() {
+        if (longTable != null)
+            return longTable.size() + (nullKeyId != -1 ? 1 : 0);
+
+        return bytesTable.size();
+    }
+
+
+    /**
+     * Returns the ID of the specified key.
+     *
+     * @param key the values making up the key
+     * @return the ID of the key, or -1 if the key is not in the table
+     */
+    public int find(Object[] key) {
+        return lookup(key, false);
+    }
+
+
+    /**
+     * Returns the ID of the specified key, adding the key to the table if it
+     * isn't already present.  A key that is added is given the ID
+     * {@link #size} had before the call, so callers can tell whether the key
+     * was added by comparing the result to the size.
+     *
+     * @param key the values making up the key
+     * @return the ID of the key
+     */
+    public int add(Object[] key) {
+        return lookup(key, true);
+    }
+
+
+    private int lookup(Object[] key, boolean add) {
+        if (longTable != null) {
+            Object value = key[0];
+            if (value == null) {
+                if (nullKeyId == -1 && add)
+                    nullKeyId = size();
+
+                return nullKeyId;
+            }
+
+            return lookupLong(((Number) value).longValue(), add);
+        }
+
+        codec.reset();
+        for (Object value : key)
+            codec.encode(value);
+
+        byte[] buf = codec.getBuffer();
+        int len = codec.getLength();
+        return add ? bytesTable.add(buf, 0, len) : bytesTable.find(buf, 0, len);
+    }
+
+
+    /**
+     * Looks up a single-integer key.  The IDs of the {@link #longTable}
+     * don't count the <tt>NULL</tt> key, so they are adjusted to account for
+     * it.
+     */
+    private int lookupLong(long value, boolean add) {
+        int tableId;
+        if (add) {
+            int oldSize = longTable.size();
+            tableId = longTable.add(value);
+            if (tableId == oldSize)
+                return size() - 1;
+        } else {
+            tableId = longTable.find(value);
+            if (tableId == -1)
+                return -1;
+        }
+
+        return toKeyId(tableId);
+    }
+
+
+    /** Converts an ID of the {@link #longTable} to an ID of this table. */
+    private int toKeyId(int tableId) {
+        return (nullKeyId != -1 && tableId >= nullKeyId) ? tableId + 1 : tableId;
+    }
+
+
+    /** Converts an ID of this table to an ID of the {@link #longTable}. */
+    private int toTableId(int id) {
+        return (nullKeyId != -1 && id > nullKeyId) ? id - 1 : id;
+    }
+
+
+    /**
+     * Returns the ID of a key in another table, adding the key to this table
+     * if it isn't already present.  The other table must have been
+     * constructed with the same key types as this table.  This allows the
+     * tables built by several workers to be merged without turning their
+     * keys back into objects.
+     *
+     * @param other the table holding the key
+     * @param otherId the ID of the key in the other table
+     * @return the ID of the key in this table
+     */
+    public int add(KeyHashTable other, int otherId) {
+        if ((longTable == null) != (other.longTable == null))
+            throw new IllegalArgumentException("Tables have different key types");
+
+        if (longTable != null) {
+            if (otherId == other.nullKeyId)
+                return add(new Object[] {null});
+
+            return lookupLong(
+                other.longTable.getKey(other.toTableId(otherId)), true);
+        }
+
+        if (other.codec.hasObjects()) {
+            TupleLiteral key = other.getKey(otherId);
+            Object[] values = new Object[key.getColumnCount()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = key.getColumnValue(i);
+
+            return add(values);
+        }
+
+        return bytesTable.add(other.bytesTable.getKeyData(),
+            other.bytesTable.getKeyOffset(otherId),
+            other.bytesTable.getKeyLength(otherId));
+    }
+
+
+    /**
+     * Returns the values of the key with the specified ID.
+     *
+     * @param id the ID of the key, between 0 and {@link #size} - 1
+     * @return a tuple holding the values of the key
+     */
+    public TupleLiteral getKey(int id) {
+        if (longTable != null) {
+            if (id < 0 || id >= size())
+                throw new IndexOutOfBoundsException("id " + id + " is not in the table");
+
+            if (id == nullKeyId)
+                return new TupleLiteral((Object) null);
+
+            long value = longTable.getKey(toTableId(id));
+            switch (longKeyType) {
+                case TINYINT:
+                    return new TupleLiteral((byte) value);
+
+                case SMALLINT:
+                    return new TupleLiteral((short) value);
+
+                case INTEGER:
+                    return new TupleLiteral((int) value);
+
+                default:
+                    return new TupleLiteral(value);
+            }
+        }
+
+        return codec.decode(bytesTable.getKeyData(),
+            bytesTable.getKeyOffset(id), bytesTable.getKeyLength(id));
+    }
+
+
+    /**
+     * Returns the number of bytes of memory used by the table's arrays.
+     *
+     * @return the number of bytes of memory used by the table's arrays
+     */
+    public long getMemoryUsage() {
+        if (longTable != null)
+            return longTable.getMemoryUsage();
+
+        return bytesTable.getMemoryUsage() + codec.getMemoryUsage();
+    }
+}
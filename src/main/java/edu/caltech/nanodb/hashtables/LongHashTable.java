@@ -0,0 +1,214 @@
+package edu.caltech.nanodb.hashtables;
+
+
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * An open-addressing hash table that maps <tt>long</tt> keys to dense
+ * integer IDs.  The first key added is given ID 0, the next key ID 1, and so
+ * forth.  Keys are stored in a primitive array indexed by ID, and the hash
+ * table itself is an array of IDs that is searched with linear probing, so
+ * the table holds no per-entry objects at all.
+ * </p>
+ * <p>
+ * Each entry takes 8 bytes for its key, plus 4 bytes for each slot of the
+ * hash table; the table is kept at most 3/4 full, so this is between 5.3 and
+ * 10.7 bytes per entry.  (The key array also grows by doubling, so it may be
+ * up to half empty.)  See {@link #getMemoryUsage}.
+ * </p>
+ */
+public class LongHashTable {
+
+    /** The default number of keys the table can hold before it grows. */
+    public static final int DEFAULT_CAPACITY = 64;
+
+
+    /**
+     * The slots of the hash table.  Each slot holds the ID of a key plus 1,
+     * or 0 if the slot is empty.  The length is always a power of 2.
+     */
+    private int[] slots;
+
+
+    /** The keys in the table, indexed by their IDs. */
+    private long[] keys;
+
+
+    /** The number of keys in the table. */
+    private int size;
+
+
+    /** The number of keys the table can hold before the slots must grow. */
+    private int threshold;
+
+
+    public LongHashTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructs a hash table that can hold the specified number of keys
+     * before it must grow.
+     *
+     * @param capacity the number of keys the table can initially hold
+     */
+    public LongHashTable(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        keys = new long[capacity];
+        allocateSlots(slotsForCapacity(capacity));
+    }
+
+
+    /**
+     * Returns the number of keys in the table.
+     *
+     * @return the number of keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the key with the specified ID.
+     *
+     * @param id the ID of the key, between 0 and {@link #size} - 1
+     * @return the key with the specified ID
+     */
+    public long getKey(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("id " + id + " is not in the table");
+
+        return keys[id];
+    }
+
+
+    /**
+     * Returns the ID of the specified key.
+     *
+     * @param key the key to look up
+     * @return the ID of the key, or -1 if the key is not in the table
+     */
+    public int find(long key) {
+        int mask = slots.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0)
+                return -1;
+
+            if (keys[slot - 1] == key)
+                return slot - 1;
+
+            i = (i + 1) & mask;
+        }
+    }
+
+
+    /**
+     * Returns the ID of the specified key, adding the key to the table if it
+     * isn't already present.  A key that is added is given the ID
+     * {@link #size} had before the call, so callers can tell whether the key
+     * was added by comparing the result to the size.
+     *
+     * @param key the key to look up or add
+     * @return the ID of the key
+     */
+    public int add(long key) {
+        int mask = slots.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0)
+                break;
+
+            if (keys[slot - 1] == key)
+                return slot - 1;
+
+            i = (i + 1) & mask;
+        }
+
+        int id = size;
+        if (id == keys.length)
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+
+        keys[id] = key;
+        slots[i] = id + 1;
+        size++;
+
+        if (size > threshold)
+            rehash(2 * slots.length);
+
+        return id;
+    }
+
+
+    /** Removes all keys from the table, keeping its current capacity. */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+
+    /**
+     * Returns the number of bytes of memory used by the table's arrays.
+     *
+     * @return the number of bytes of memory used by the table's arrays
+     */
+    public long getMemoryUsage() {
+        return 4L * slots.length + 8L * keys.length;
+    }
+
+
+    private void allocateSlots(int numSlots) {
+        slots = new int[numSlots];
+        threshold = numSlots / 4 * 3;
+    }
+
+
+    private void rehash(int numSlots) {
+        allocateSlots(numSlots);
+
+        int mask = numSlots - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(keys[id]) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+
+            slots[i] = id + 1;
+        }
+    }
+
+
+    /**
+     * Returns the number of slots (a power of 2) needed to hold the
+     * specified number of keys at no more than 3/4 full.
+     */
+    static int slotsForCapacity(int capacity) {
+        int numSlots = 4;
+        while (numSlots / 4 * 3 < capacity)
+            numSlots *= 2;
+
+        return numSlots;
+    }
+
+
+    /**
+     * Mixes the bits of a key so that keys that differ only in their high
+     * bits still fall in different slots.  This is the finalizer of the
+     * MurmurHash3 algorithm.
+     */
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -15,14 +15,15 @@ import edu.caltech.nanodb.relations.KeyColumnRefs;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.TableConstraintType;
 import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Tuple;
 import edu.caltech.nanodb.server.properties.ServerProperties;
 import edu.caltech.nanodb.storage.DBFile;
 import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.FileManager;
-import edu.caltech.nanodb.storage.PageTuple;
 import edu.caltech.nanodb.storage.TupleFile;
 import edu.caltech.nanodb.storage.StorageManager;
 import edu.caltech.nanodb.storage.TupleFileManager;
+import edu.caltech.nanodb.storage.btreefile.BTreeTupleFile;
 
 
 public class BasicIndexManager implements IndexManager {
@@ -165,7 +166,7 @@ public class BasicIndexManager implements IndexManager {
         TupleFile indexTupleFile = newIndexInfo.getTupleFile();
 
         // Traverse the tuples in the table, so we can populate the index.
-        PageTuple curTuple = (PageTuple) tableTupleFile.getFirstTuple();
+        Tuple curTuple = tableTupleFile.getFirstTuple();
         while (curTuple != null) {
             TupleLiteral idxTup;
             if (unique) {
@@ -189,7 +190,7 @@ public class BasicIndexManager implements IndexManager {
             indexTupleFile.addTuple(idxTup);
 
             // Move on to the next tuple in the table file.
-            curTuple = (PageTuple) tableTupleFile.getNextTuple(curTuple);
+            curTuple = tableTupleFile.getNextTuple(curTuple);
         }
     }
 
@@ -220,9 +221,14 @@ public class BasicIndexManager implements IndexManager {
         DBFileType type = DBFileType.BTREE_TUPLE_FILE;
         TupleFileManager tupleFileManager = storageManager.getTupleFileManager(type);
 
+        // Indexes are compressed if their table is.
+        boolean compressed = indexInfo.getTableInfo().getTupleFile()
+            .getDBFile().isCompressed();
+
         // First, create a new DBFile that the tuple file will go into.
         FileManager fileManager = storageManager.getFileManager();
-        DBFile dbFile = fileManager.createDBFile(idxFileName, type, pageSize);
+        DBFile dbFile = fileManager.createDBFile(idxFileName, type, pageSize,
+            compressed);
         logger.debug("Created new DBFile for index " + indexName +
             " at path " + dbFile.getDataFile());
 
@@ -415,7 +421,24 @@ public class BasicIndexManager implements IndexManager {
 
     @Override
     public void optimizeIndex(IndexInfo idxFileInfo) {
-        throw new UnsupportedOperationException("NYI");
+        // Indexes aren't referenced by anything else, so their tuples can be
+        // moved around freely.
+        idxFileInfo.getTupleFile().optimize();
+    }
+
+    @Override
+    public void rebuildIndex(IndexInfo indexInfo) {
+        TupleFile indexTupleFile = indexInfo.getTupleFile();
+        if (!(indexTupleFile instanceof BTreeTupleFile)) {
+            throw new IndexException("Can't rebuild index " +
+                indexInfo.getIndexName() + ":  unsupported index file type");
+        }
+
+        logger.debug(String.format("Rebuilding index %s on table %s.",
+            indexInfo.getIndexName(), indexInfo.getTableName()));
+
+        ((BTreeTupleFile) indexTupleFile).clear();
+        populateIndex(indexInfo.getTableInfo(), indexInfo);
     }
 
     @Override
@@ -113,6 +113,17 @@ public interface IndexManager {
     void optimizeIndex(IndexInfo indexInfo);
 
 
+    /**
+     * This method discards all entries in the index and repopulates it from
+     * the current contents of the index's table.  It is used when the table's
+     * tuples have been moved around without the moves being reported to the
+     * index, so that the index's file-pointers can no longer be trusted.
+     *
+     * @param indexInfo the index to rebuild
+     */
+    void rebuildIndex(IndexInfo indexInfo);
+
+
     void closeIndex(IndexInfo indexInfo);
 
 
@@ -7,7 +7,6 @@ import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.TableInfo;
 import edu.caltech.nanodb.relations.Tuple;
 import edu.caltech.nanodb.server.RowEventListener;
-import edu.caltech.nanodb.storage.PageTuple;
 import edu.caltech.nanodb.storage.StorageManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -53,50 +52,50 @@ public class IndexUpdater implements RowEventListener {
     @Override
     public void afterRowInserted(TableInfo tblFileInfo, Tuple newTuple) {
 
-        if (!(newTuple instanceof PageTuple)) {
+        if (!newTuple.isDiskBacked()) {
             throw new IllegalArgumentException(
-                "newTuple must be castable to PageTuple");
+                "newTuple must be a disk-backed tuple");
         }
 
         // Add the new row to any indexes on the table.
-        addRowToIndexes(tblFileInfo, (PageTuple) newTuple);
+        addRowToIndexes(tblFileInfo, newTuple);
     }
 
     @Override
     public void beforeRowUpdated(TableInfo tblFileInfo, Tuple oldTuple,
                                  Tuple newValues) {
 
-        if (!(oldTuple instanceof PageTuple)) {
+        if (!oldTuple.isDiskBacked()) {
             throw new IllegalArgumentException(
-                "oldTuple must be castable to PageTuple");
+                "oldTuple must be a disk-backed tuple");
         }
 
         // Remove the old row from any indexes on the table.
-        removeRowFromIndexes(tblFileInfo, (PageTuple) oldTuple);
+        removeRowFromIndexes(tblFileInfo, oldTuple);
     }
 
     @Override
     public void afterRowUpdated(TableInfo tblFileInfo, Tuple oldValues,
                                 Tuple newTuple) {
 
-        if (!(newTuple instanceof PageTuple)) {
+        if (!newTuple.isDiskBacked()) {
             throw new IllegalArgumentException(
-                "newTuple must be castable to PageTuple");
+                "newTuple must be a disk-backed tuple");
         }
 
         // Add the new row to any indexes on the table.
-        addRowToIndexes(tblFileInfo, (PageTuple) newTuple);
+        addRowToIndexes(tblFileInfo, newTuple);
     }
 
     @Override
     public void beforeRowDeleted(TableInfo tblFileInfo, Tuple oldTuple) {
-        if (!(oldTuple instanceof PageTuple)) {
+        if (!oldTuple.isDiskBacked()) {
             throw new IllegalArgumentException(
-                "oldTuple must be castable to PageTuple");
+                "oldTuple must be a disk-backed tuple");
         }
 
         // Remove the old row from any indexes on the table.
-        removeRowFromIndexes(tblFileInfo, (PageTuple) oldTuple);
+        removeRowFromIndexes(tblFileInfo, oldTuple);
     }
 
     @Override
@@ -104,6 +103,26 @@ public class IndexUpdater implements RowEventListener {
         // Ignore.
     }
 
+    @Override
+    public void rowRelocated(TableInfo tblFileInfo, Tuple oldTuple,
+                             Tuple newTuple) {
+
+        if (!oldTuple.isDiskBacked()) {
+            throw new IllegalArgumentException(
+                "oldTuple must be a disk-backed tuple");
+        }
+
+        if (!newTuple.isDiskBacked()) {
+            throw new IllegalArgumentException(
+                "newTuple must be a disk-backed tuple");
+        }
+
+        // Index entries hold the tuple's file-pointer, so they must be
+        // replaced with entries that point to the new location.
+        removeRowFromIndexes(tblFileInfo, oldTuple);
+        addRowToIndexes(tblFileInfo, newTuple);
+    }
+
 
     /**
      * This helper method handles the case when a tuple is being added to the
@@ -113,7 +132,7 @@ public class IndexUpdater implements RowEventListener {
      * @param tblFileInfo details of the table being updated
      * @param ptup        the new tuple that was inserted into the table
      */
-    private void addRowToIndexes(TableInfo tblFileInfo, PageTuple ptup) {
+    private void addRowToIndexes(TableInfo tblFileInfo, Tuple ptup) {
         logger.debug("Adding tuple " + ptup + " to indexes for table " +
             tblFileInfo.getTableName());
 
@@ -137,7 +156,7 @@ public class IndexUpdater implements RowEventListener {
      * @param tableInfo details of the table being updated
      * @param ptup      the tuple about to be removed from the table
      */
-    private void removeRowFromIndexes(TableInfo tableInfo, PageTuple ptup) {
+    private void removeRowFromIndexes(TableInfo tableInfo, Tuple ptup) {
 
         logger.debug(String.format("Removing tuple %s from indexes for table %s",
             ptup, tableInfo.getTableName()));
@@ -0,0 +1,681 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.CompiledExpression;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionCompiler;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.PredicateUtils;
+import edu.caltech.nanodb.hashtables.KeyHashTable;
+import edu.caltech.nanodb.queryeval.PlanCost;
+import edu.caltech.nanodb.queryeval.SelectivityEstimator;
+import edu.caltech.nanodb.queryeval.StatisticsUpdater;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.JoinType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.RowBuffer;
+
+
+/**
+ * <p>
+ * This plan node implements an inner equijoin that chooses how to join its
+ * inputs once it has seen how large they really are, rather than relying on
+ * the planner's estimates.  The right child is the build side, and the left
+ * child is the probe side.
+ * </p>
+ * <p>
+ * When the node starts, it buffers the build rows in a {@link RowBuffer}.
+ * If there are no more than {@link #getThreshold} build rows, each probe row
+ * is compared against every buffered row, as a nested-loop join over a
+ * cached inner input would.  Otherwise the buffered rows are indexed in a
+ * {@link KeyHashTable} on the join keys, and each probe row is only compared
+ * against the rows with the same keys.  Either way, the full join predicate
+ * is checked for each candidate pair.
+ * </p>
+ * <p>
+ * If the build rows don't fit within the node's memory limit, they are
+ * hashed a memory-sized chunk at a time, and the probe side is scanned once
+ * per chunk.  The strategy that was chosen, and the number of build rows
+ * observed, are reported by {@link #getStrategy},
+ * {@link #getObservedBuildRows} and {@link #toString} after execution.
+ * </p>
+ */
+public class AdaptiveJoinNode extends ThetaJoinNode {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static final Logger logger = LogManager.getLogger(AdaptiveJoinNode.class);
+
+
+    /** The strategies the adaptive join can choose between. */
+    public enum Strategy {
+        /** Each probe row is compared against every build row. */
+        NESTED_LOOP,
+
+        /** Each probe row is only compared against build rows with equal keys. */
+        HASH
+    }
+
+
+    /**
+     * The largest number of build rows that are joined with the nested-loop
+     * strategy.
+     */
+    private int threshold = ServerProperties.DEFAULT_ADAPTIVE_JOIN_THRESHOLD;
+
+
+    /**
+     * The maximum number of bytes of memory the buffered build rows may use.
+     */
+    private long memoryLimit = ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT;
+
+
+    /** The indexes of the join-key columns in the left child's schema. */
+    private int[] leftKeys;
+
+
+    /** The indexes of the join-key columns in the right child's schema. */
+    private int[] rightKeys;
+
+
+    /** The buffered build rows of the current chunk. */
+    private RowBuffer buildRows;
+
+
+    /** True once the build side has been read to the end. */
+    private boolean buildExhausted;
+
+
+    /**
+     * The hash table mapping the join keys of the build rows to key IDs, when
+     * the hash strategy is used.
+     */
+    private KeyHashTable keyTable;
+
+
+    /** The first build row with each key ID, or -1 at the end of a chain. */
+    private int[] chainHeads;
+
+
+    /** The next build row with the same key as each build row, or -1. */
+    private int[] chainNext;
+
+
+    /** A reusable array holding the values of a join key. */
+    private Object[] keyValues;
+
+
+    /**
+     * The strategy used for the current chunk of build rows, or
+     * {@code null} if no build rows have been read yet.
+     */
+    private Strategy strategy;
+
+
+    /** The number of build rows read by the last execution of the node. */
+    private long observedBuildRows;
+
+
+    /** The number of chunks the build rows were split into. */
+    private int numChunks;
+
+
+    /** The current probe row, or {@code null} if a new one must be read. */
+    private Tuple probeTuple;
+
+
+    /**
+     * The next build row to consider for the current probe row, or -1 if
+     * there are no more.
+     */
+    private int nextCandidate;
+
+
+    /** Set to true when all results have been produced. */
+    private boolean done;
+
+
+    /**
+     * The compiled form of the join predicate, or {@code null} if the
+     * predicate hasn't been compiled.
+     */
+    private CompiledExpression compiledPredicate;
+
+
+    public AdaptiveJoinNode(PlanNode leftChild, PlanNode rightChild,
+                            Expression predicate) {
+        super(leftChild, rightChild, JoinType.INNER, predicate);
+    }
+
+
+    /**
+     * Returns the largest number of build rows that are joined with the
+     * nested-loop strategy.
+     *
+     * @return the largest number of build rows joined with nested loops
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+
+    /**
+     * Sets the largest number of build rows that are joined with the
+     * nested-loop strategy.
+     *
+     * @param threshold the largest number of build rows joined with nested
+     *        loops; 0 means the hash strategy is always used
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("threshold cannot be negative");
+
+        this.threshold = threshold;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes of memory the buffered build rows
+     * may use.
+     *
+     * @param memoryLimit the maximum number of bytes of memory to use
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+
+    /**
+     * Returns the strategy chosen by the last execution of the node, or
+     * {@code null} if the node hasn't been executed.  If the build rows were
+     * split into several chunks, this is the strategy of the last chunk.
+     *
+     * @return the strategy chosen by the last execution of the node
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+
+    /**
+     * Returns the number of build rows read by the last execution of the
+     * node.
+     *
+     * @return the number of build rows read by the last execution
+     */
+    public long getObservedBuildRows() {
+        return observedBuildRows;
+    }
+
+
+    /**
+     * Finds the equijoin conditions of a predicate that compare a column of
+     * one schema to a column of the same type in another schema.  The values
+     * of such columns can be hashed to find the rows that may join.
+     *
+     * @param predicate the join predicate
+     * @param leftSchema the schema of the left input of the join
+     * @param rightSchema the schema of the right input of the join
+     * @return an array of two arrays, holding the indexes of the key columns
+     *         in the left and right schemas, or {@code null} if the predicate
+     *         has no such conditions
+     */
+    public static int[][] findJoinKeys(Expression predicate, Schema leftSchema,
+                                       Schema rightSchema) {
+        ArrayList<Expression> conjuncts = new ArrayList<>();
+        PredicateUtils.collectConjuncts(predicate, conjuncts);
+
+        ArrayList<Integer> leftKeys = new ArrayList<>();
+        ArrayList<Integer> rightKeys = new ArrayList<>();
+        for (Expression conjunct : conjuncts) {
+            if (!(conjunct instanceof CompareOperator))
+                continue;
+
+            CompareOperator cmp = (CompareOperator) conjunct;
+            if (cmp.getType() != CompareOperator.Type.EQUALS ||
+                !(cmp.getLeftExpression() instanceof ColumnValue) ||
+                !(cmp.getRightExpression() instanceof ColumnValue)) {
+                continue;
+            }
+
+            ColumnValue lhs = (ColumnValue) cmp.getLeftExpression();
+            ColumnValue rhs = (ColumnValue) cmp.getRightExpression();
+
+            int iLeft = findColumn(leftSchema, lhs);
+            int iRight = findColumn(rightSchema, rhs);
+            if (iLeft == -1 || iRight == -1) {
+                // The columns may be written the other way around.
+                iLeft = findColumn(leftSchema, rhs);
+                iRight = findColumn(rightSchema, lhs);
+            }
+
+            if (iLeft == -1 || iRight == -1)
+                continue;
+
+            // The key values are hashed as they are, so the columns must
+            // produce values of the same Java type.
+            ColumnType leftType = leftSchema.getColumnInfo(iLeft).getType();
+            ColumnType rightType = rightSchema.getColumnInfo(iRight).getType();
+            if (leftType.getBaseType() != rightType.getBaseType())
+                continue;
+
+            leftKeys.add(iLeft);
+            rightKeys.add(iRight);
+        }
+
+        if (leftKeys.isEmpty())
+            return null;
+
+        return new int[][] {
+            leftKeys.stream().mapToInt(Integer::intValue).toArray(),
+            rightKeys.stream().mapToInt(Integer::intValue).toArray()
+        };
+    }
+
+
+    /**
+     * Returns the index of a column in a schema, or -1 if the schema
+     * doesn't have the column or the name is ambiguous.
+     */
+    private static int findColumn(Schema schema, ColumnValue colValue) {
+        try {
+            return schema.getColumnIndex(colValue.getColumnName());
+        } catch (SchemaNameException e) {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Checks if the argument is a plan node tree with the same structure, but not
+     * necessarily the same references.
+     *
+     * @param obj the object to which we are comparing
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof AdaptiveJoinNode) {
+            AdaptiveJoinNode other = (AdaptiveJoinNode) obj;
+
+            return predicate.equals(other.predicate) &&
+                leftChild.equals(other.leftChild) &&
+                rightChild.equals(other.rightChild);
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Computes the hash-code of the adaptive-join plan node.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 11;
+        hash = 31 * hash + predicate.hashCode();
+        hash = 31 * hash + leftChild.hashCode();
+        hash = 31 * hash + rightChild.hashCode();
+        return hash;
+    }
+
+
+    /**
+     * Returns a string representing this adaptive join's vital information,
+     * including the strategy it chose if it has been executed.
+     *
+     * @return a string representing this plan-node.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+
+        buf.append("AdaptiveJoin[pred:  ").append(predicate);
+
+        if (schemaSwapped)
+            buf.append(" (schema swapped)");
+
+        if (strategy != null) {
+            buf.append(", chose ").append(strategy.name().toLowerCase());
+            buf.append(" for ").append(observedBuildRows).append(" build rows");
+            if (numChunks > 1)
+                buf.append(" in ").append(numChunks).append(" chunks");
+        }
+
+        buf.append(']');
+
+        return buf.toString();
+    }
+
+
+    /**
+     * Creates a copy of this plan node and its subtrees.
+     */
+    @Override
+    protected PlanNode clone() throws CloneNotSupportedException {
+        AdaptiveJoinNode node = (AdaptiveJoinNode) super.clone();
+
+        node.predicate = predicate.duplicate();
+        node.compiledPredicate = null;
+
+        // The copy has its own build rows.
+        node.buildRows = null;
+        node.keyTable = null;
+        node.probeTuple = null;
+        node.strategy = null;
+
+        return node;
+    }
+
+
+    /**
+     * The join produces its results in no particular order.
+     */
+    @Override
+    public List<OrderByExpression> resultsOrderedBy() {
+        return null;
+    }
+
+
+    /**
+     * The node doesn't support position marking.
+     **/
+    public boolean supportsMarking() {
+        return false;
+    }
+
+
+    public boolean requiresLeftMarking() {
+        return false;
+    }
+
+
+    public boolean requiresRightMarking() {
+        return false;
+    }
+
+
+    @Override
+    public void prepare() {
+        leftChild.prepare();
+        rightChild.prepare();
+
+        prepareSchemaStats();
+
+        int[][] keys = findJoinKeys(predicate, leftSchema, rightSchema);
+        if (keys == null) {
+            throw new IllegalStateException(
+                "Adaptive joins require an equijoin condition; got " + predicate);
+        }
+
+        leftKeys = keys[0];
+        rightKeys = keys[1];
+
+        // The cost is computed for the hash strategy, which is what a large
+        // build side will use; the nested-loop strategy is only used when it
+        // is cheap anyway.
+        PlanCost lcost = leftChild.getCost();
+        PlanCost rcost = rightChild.getCost();
+
+        float numTuples = lcost.numTuples * rcost.numTuples *
+            SelectivityEstimator.estimateSelectivity(predicate, schema, stats);
+
+        // If the build rows don't fit in memory, the probe side is scanned
+        // once per chunk of build rows.
+        float numChunks = Math.max(1, (float) Math.ceil(
+            rcost.numTuples * rcost.tupleSize / memoryLimit));
+
+        float cpuCost = numChunks * lcost.cpuCost + rcost.cpuCost +
+            numChunks * lcost.numTuples + rcost.numTuples + numTuples;
+        long numBlockIOs = (long) (numChunks * lcost.numBlockIOs) +
+            rcost.numBlockIOs;
+        long numLargeSeeks = (long) (numChunks * lcost.numLargeSeeks) +
+            rcost.numLargeSeeks;
+
+        cost = new PlanCost(numTuples, lcost.tupleSize + rcost.tupleSize,
+            cpuCost, numBlockIOs, numLargeSeeks);
+
+        stats = StatisticsUpdater.updateStats(predicate, schema, stats);
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        clearBuildRows();
+        // Small chunks, so that a small memory limit still holds many.
+        int chunkSize = (int) Math.max(1024,
+            Math.min(RowBuffer.DEFAULT_CHUNK_SIZE, memoryLimit / 8));
+        buildRows = new RowBuffer(rightSchema, Long.MAX_VALUE, chunkSize);
+        buildExhausted = false;
+        strategy = null;
+        observedBuildRows = 0;
+        numChunks = 0;
+        releaseProbeTuple();
+        done = false;
+    }
+
+
+    /**
+     * Returns the next joined tuple that satisfies the join condition.
+     *
+     * @return the next joined tuple that satisfies the join condition.
+     */
+    @Override
+    public Tuple getNextTuple() {
+        if (done)
+            return null;
+
+        if (strategy == null) {
+            loadBuildChunk();
+            logger.debug(String.format("Adaptive join chose %s for %d " +
+                "build rows", strategy, buildRows.size()));
+        }
+
+        while (true) {
+            if (probeTuple == null) {
+                if (buildRows.isEmpty() && buildExhausted) {
+                    done = true;
+                    return null;
+                }
+
+                probeTuple = leftChild.getNextTuple();
+                if (probeTuple == null) {
+                    if (buildExhausted) {
+                        done = true;
+                        return null;
+                    }
+
+                    // Join the next chunk of build rows with all probe rows.
+                    loadBuildChunk();
+                    leftChild.initialize();
+                    continue;
+                }
+
+                nextCandidate = firstCandidate(probeTuple);
+            }
+
+            while (nextCandidate != -1) {
+                int iRow = nextCandidate;
+                nextCandidate = (strategy == Strategy.HASH) ?
+                    chainNext[iRow] :
+                    (iRow + 1 < buildRows.size() ? iRow + 1 : -1);
+
+                Tuple buildTuple = buildRows.get(iRow);
+                if (canJoinTuples(probeTuple, buildTuple))
+                    return joinTuples(probeTuple, buildTuple);
+            }
+
+            releaseProbeTuple();
+        }
+    }
+
+
+    /**
+     * Reads the next chunk of build rows, up to the memory limit, and
+     * chooses the strategy for joining them.
+     */
+    private void loadBuildChunk() {
+        buildRows.clear();
+        keyTable = null;
+
+        while (true) {
+            Tuple tup = rightChild.getNextTuple();
+            if (tup == null) {
+                buildExhausted = true;
+                break;
+            }
+
+            buildRows.add(tup);
+            if (tup.isDiskBacked())
+                tup.unpin();
+
+            if (buildRows.getMemoryUsage() > memoryLimit)
+                break;
+        }
+
+        observedBuildRows += buildRows.size();
+        numChunks++;
+
+        if (buildRows.size() <= threshold) {
+            strategy = Strategy.NESTED_LOOP;
+            return;
+        }
+
+        strategy = Strategy.HASH;
+
+        ArrayList<ColumnType> keyTypes = new ArrayList<>();
+        for (int iCol : rightKeys)
+            keyTypes.add(rightSchema.getColumnInfo(iCol).getType());
+
+        keyTable = new KeyHashTable(keyTypes);
+        keyValues = new Object[rightKeys.length];
+        chainHeads = new int[64];
+        chainNext = new int[buildRows.size()];
+
+        for (int iRow = 0; iRow < buildRows.size(); iRow++) {
+            chainNext[iRow] = -1;
+            if (!getKey(buildRows.get(iRow), rightKeys))
+                continue;
+
+            int size = keyTable.size();
+            int id = keyTable.add(keyValues);
+            if (id == size) {
+                if (id == chainHeads.length)
+                    chainHeads = Arrays.copyOf(chainHeads, id * 2);
+
+                chainHeads[id] = -1;
+            }
+
+            // Rows are pushed onto the front of their key's chain.
+            chainNext[iRow] = chainHeads[id];
+            chainHeads[id] = iRow;
+        }
+    }
+
+
+    /**
+     * Returns the first build row that might join with the probe row, or -1
+     * if there is none.
+     */
+    private int firstCandidate(Tuple probe) {
+        if (strategy == Strategy.NESTED_LOOP)
+            return buildRows.isEmpty() ? -1 : 0;
+
+        // NULL keys never satisfy an equijoin condition.
+        if (!getKey(probe, leftKeys))
+            return -1;
+
+        int id = keyTable.find(keyValues);
+        return (id == -1) ? -1 : chainHeads[id];
+    }
+
+
+    /**
+     * Stores the key values of a row into {@link #keyValues}.
+     *
+     * @return false if any of the key values is <tt>NULL</tt>
+     */
+    private boolean getKey(Tuple tup, int[] keyColumns) {
+        for (int i = 0; i < keyColumns.length; i++) {
+            Object value = tup.getColumnValue(keyColumns[i]);
+            if (value == null)
+                return false;
+
+            keyValues[i] = value;
+        }
+
+        return true;
+    }
+
+
+    /** Unpins the current probe row if necessary, and forgets it. */
+    private void releaseProbeTuple() {
+        if (probeTuple != null && probeTuple.isDiskBacked())
+            probeTuple.unpin();
+
+        probeTuple = null;
+    }
+
+
+    /** Releases the buffered build rows, if any. */
+    private void clearBuildRows() {
+        if (buildRows != null)
+            buildRows.clear();
+
+        keyTable = null;
+        chainHeads = null;
+        chainNext = null;
+    }
+
+
+    /**
+     * Binds the join predicate against the schemas of the left and right
+     * tuples, in the order that {@link #canJoinTuples} adds them to the
+     * environment.
+     */
+    @Override
+    public void bindExpressions() {
+        super.bindExpressions();
+
+        environment.bind(new Schema[] {leftSchema, rightSchema},
+            List.of(predicate));
+        compiledPredicate = ExpressionCompiler.compile(predicate,
+            new Schema(leftSchema, rightSchema));
+    }
+
+
+    private boolean canJoinTuples(Tuple leftTuple, Tuple rightTuple) {
+        environment.clear();
+        environment.addTuple(leftSchema, leftTuple);
+        environment.addTuple(rightSchema, rightTuple);
+
+        if (compiledPredicate != null)
+            return compiledPredicate.evaluatePredicate(environment);
+
+        return predicate.evaluatePredicate(environment);
+    }
+
+
+    @Override
+    public void cleanUp() {
+        releaseProbeTuple();
+        clearBuildRows();
+        buildRows = null;
+
+        leftChild.cleanUp();
+        rightChild.cleanUp();
+    }
+}
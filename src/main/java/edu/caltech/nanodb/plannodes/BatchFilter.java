@@ -0,0 +1,357 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.CompiledExpression;
+import edu.caltech.nanodb.expressions.Environment;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionCompiler;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.PredicateUtils;
+import edu.caltech.nanodb.relations.ColumnVector;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.TupleBatch;
+
+
+/**
+ * <p>
+ * This class applies a selection predicate to a {@link TupleBatch}, by
+ * setting the batch's selection vector to the rows that satisfy the
+ * predicate.  The predicate's conjuncts are applied one after another, each
+ * to the rows that passed the previous conjuncts.  Conjuncts that compare a
+ * column to a numeric literal are applied with a tight loop over the
+ * column's primitive values; all other conjuncts are evaluated row by row.
+ * </p>
+ * <p>
+ * The results are exactly the same as evaluating the predicate against each
+ * row:  the interpreter also treats a conjunction as false as soon as one of
+ * its terms is false or <tt>NULL</tt>, and evaluates its terms in order.
+ * </p>
+ */
+class BatchFilter {
+
+    /**
+     * A conjunct of the predicate, which removes rows from a list of
+     * physical row indexes.
+     */
+    private abstract static class Conjunct {
+        /**
+         * Removes the rows that don't satisfy this conjunct from the first
+         * {@code n} entries of {@code rows}, compacting the rows that remain
+         * at the start of the array.
+         *
+         * @return the number of rows that remain
+         */
+        abstract int apply(BatchFilter filter, TupleBatch batch, int[] rows,
+                           int n);
+    }
+
+
+    /** A conjunct that is evaluated against one row at a time. */
+    private static class RowConjunct extends Conjunct {
+        private final Expression expr;
+
+        private final CompiledExpression compiled;
+
+
+        RowConjunct(Expression expr, Schema schema) {
+            this.expr = expr;
+            compiled = ExpressionCompiler.compile(expr, schema);
+        }
+
+
+        @Override
+        int apply(BatchFilter filter, TupleBatch batch, int[] rows, int n) {
+            TupleBatch.Row row = filter.getRowView(batch);
+            Environment env = filter.environment;
+
+            int numKept = 0;
+            for (int i = 0; i < n; i++) {
+                row.setRow(rows[i]);
+                env.clear();
+                env.addTuple(filter.schema, row);
+
+                boolean selected = (compiled != null) ?
+                    compiled.evaluatePredicate(env) :
+                    expr.evaluatePredicate(env);
+
+                if (selected)
+                    rows[numKept++] = rows[i];
+            }
+            return numKept;
+        }
+    }
+
+
+    /**
+     * A conjunct that compares a column to a numeric literal.  Integer
+     * columns are compared to integer literals, and <tt>DOUBLE</tt> columns
+     * to any integer or floating-point literal, in exactly the way that the
+     * interpreter coerces the values.  Where a batch's column doesn't have a
+     * suitable representation, the conjunct is evaluated row by row.
+     */
+    private static class ColumnComparison extends Conjunct {
+        private final int colIndex;
+
+        /** True if the literal is integral. */
+        private final boolean integral;
+
+        private final long longValue;
+
+        private final double doubleValue;
+
+        /** Whether column values less than the literal are selected. */
+        private final boolean acceptLess;
+
+        /** Whether column values equal to the literal are selected. */
+        private final boolean acceptEqual;
+
+        /** Whether column values greater than the literal are selected. */
+        private final boolean acceptGreater;
+
+        private final RowConjunct fallback;
+
+
+        ColumnComparison(int colIndex, CompareOperator.Type type,
+                         boolean literalOnLeft, Number literal,
+                         RowConjunct fallback) {
+            this.colIndex = colIndex;
+            this.fallback = fallback;
+
+            integral = !(literal instanceof Double || literal instanceof Float);
+            longValue = literal.longValue();
+            doubleValue = literal.doubleValue();
+
+            boolean less, equal, greater;
+            switch (type) {
+                case EQUALS:
+                    less = false;
+                    equal = true;
+                    greater = false;
+                    break;
+
+                case NOT_EQUALS:
+                    less = true;
+                    equal = false;
+                    greater = true;
+                    break;
+
+                case LESS_THAN:
+                    less = true;
+                    equal = false;
+                    greater = false;
+                    break;
+
+                case LESS_OR_EQUAL:
+                    less = true;
+                    equal = true;
+                    greater = false;
+                    break;
+
+                case GREATER_THAN:
+                    less = false;
+                    equal = false;
+                    greater = true;
+                    break;
+
+                case GREATER_OR_EQUAL:
+                    less = false;
+                    equal = true;
+                    greater = true;
+                    break;
+
+                default:
+                    throw new IllegalArgumentException(
+                        "Unrecognized comparison type " + type);
+            }
+
+            // "literal < column" selects columns greater than the literal.
+            acceptLess = literalOnLeft ? greater : less;
+            acceptEqual = equal;
+            acceptGreater = literalOnLeft ? less : greater;
+        }
+
+
+        private boolean accept(int cmp) {
+            return (cmp < 0) ? acceptLess :
+                ((cmp == 0) ? acceptEqual : acceptGreater);
+        }
+
+
+        @Override
+        int apply(BatchFilter filter, TupleBatch batch, int[] rows, int n) {
+            ColumnVector column = batch.getColumn(colIndex);
+            int numKept = 0;
+
+            switch (column.getKind()) {
+                case INT:
+                    if (!integral)
+                        break;
+
+                    for (int i = 0; i < n; i++) {
+                        int row = rows[i];
+                        if (!column.isNull(row) &&
+                            accept(Long.compare(column.getInt(row), longValue))) {
+                            rows[numKept++] = row;
+                        }
+                    }
+                    return numKept;
+
+                case LONG:
+                    if (!integral)
+                        break;
+
+                    for (int i = 0; i < n; i++) {
+                        int row = rows[i];
+                        if (!column.isNull(row) &&
+                            accept(Long.compare(column.getLong(row), longValue))) {
+                            rows[numKept++] = row;
+                        }
+                    }
+                    return numKept;
+
+                case DOUBLE:
+                    for (int i = 0; i < n; i++) {
+                        int row = rows[i];
+                        if (!column.isNull(row) && accept(Double.compare(
+                            column.getDouble(row), doubleValue))) {
+                            rows[numKept++] = row;
+                        }
+                    }
+                    return numKept;
+
+                default:
+                    // Fall through to row-by-row evaluation.
+            }
+
+            return fallback.apply(filter, batch, rows, n);
+        }
+    }
+
+
+    /** The predicate this filter applies. */
+    private final Expression predicate;
+
+
+    /** The schema of the batches being filtered. */
+    private final Schema schema;
+
+
+    /**
+     * The environment to evaluate conjuncts in.  This is the plan node's
+     * environment, so that references to enclosing queries still work.
+     */
+    private final Environment environment;
+
+
+    /** The conjuncts of the predicate, in order. */
+    private final ArrayList<Conjunct> conjuncts = new ArrayList<>();
+
+
+    /** The batch that {@link #rowView} presents rows of. */
+    private TupleBatch rowViewBatch;
+
+
+    /** A tuple presenting rows of {@link #rowViewBatch}. */
+    private TupleBatch.Row rowView;
+
+
+    /** Scratch space for the physical indexes of the selected rows. */
+    private int[] rows = new int[TupleBatch.DEFAULT_CAPACITY];
+
+
+    BatchFilter(Expression predicate, Schema schema, Environment environment) {
+        this.predicate = predicate;
+        this.schema = schema;
+        this.environment = environment;
+
+        ArrayList<Expression> exprs = new ArrayList<>();
+        PredicateUtils.collectConjuncts(predicate, exprs);
+        for (Expression expr : exprs)
+            conjuncts.add(makeConjunct(expr));
+    }
+
+
+    private Conjunct makeConjunct(Expression expr) {
+        RowConjunct rowConjunct = new RowConjunct(expr, schema);
+        if (!(expr instanceof CompareOperator))
+            return rowConjunct;
+
+        CompareOperator cmp = (CompareOperator) expr;
+        Expression lhs = cmp.getLeftExpression();
+        Expression rhs = cmp.getRightExpression();
+
+        boolean literalOnLeft = (lhs instanceof LiteralValue);
+        Expression colExpr = literalOnLeft ? rhs : lhs;
+        Expression litExpr = literalOnLeft ? lhs : rhs;
+        if (!(colExpr instanceof ColumnValue && litExpr instanceof LiteralValue))
+            return rowConjunct;
+
+        ColumnValue colValue = (ColumnValue) colExpr;
+        if (colValue.getColumnName().isColumnWildcard())
+            return rowConjunct;
+
+        int colIndex = schema.getColumnIndex(colValue.getColumnName());
+        Object literal = litExpr.evaluate();
+        if (colIndex == -1 || !(literal instanceof Integer ||
+            literal instanceof Long || literal instanceof Short ||
+            literal instanceof Byte || literal instanceof Double ||
+            literal instanceof Float)) {
+            return rowConjunct;
+        }
+
+        return new ColumnComparison(colIndex, cmp.getType(), literalOnLeft,
+            (Number) literal, rowConjunct);
+    }
+
+
+    /**
+     * Returns the predicate this filter applies.
+     *
+     * @return the predicate this filter applies
+     */
+    Expression getPredicate() {
+        return predicate;
+    }
+
+
+    private TupleBatch.Row getRowView(TupleBatch batch) {
+        if (rowViewBatch != batch) {
+            rowView = batch.getRowView();
+            rowViewBatch = batch;
+        }
+        return rowView;
+    }
+
+
+    /**
+     * Sets the selection vector of the batch to the active rows that satisfy
+     * the predicate.
+     *
+     * @param batch the batch to filter
+     * @return the number of rows that remain active
+     */
+    int filter(TupleBatch batch) {
+        int n = batch.size();
+        if (rows.length < n)
+            rows = new int[n];
+
+        for (int i = 0; i < n; i++)
+            rows[i] = batch.getPhysicalRow(i);
+
+        for (Conjunct conjunct : conjuncts) {
+            if (n == 0)
+                break;
+
+            n = conjunct.apply(this, batch, rows, n);
+        }
+
+        if (n < batch.size())
+            batch.setSelection(rows, n);
+
+        return n;
+    }
+}
@@ -0,0 +1,87 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+
+import edu.caltech.nanodb.queryeval.ColumnStats;
+
+
+/**
+ * This is the abstract base class for plan-nodes that remove duplicate rows
+ * from their input, as required by <tt>SELECT DISTINCT</tt>.  The node
+ * produces the same schema as its child, and each distinct row is produced
+ * once.  Two rows are duplicates if all of their values are equal, so
+ * <tt>NULL</tt> values are considered equal to each other here, as in SQL's
+ * definition of <tt>DISTINCT</tt>.
+ */
+public abstract class DistinctNode extends PlanNode {
+
+    protected DistinctNode(PlanNode leftChild) {
+        super(leftChild);
+    }
+
+
+    /**
+     * The distinct plan-node produces the same schema as its child
+     * plan-node, so this method simply caches the subplan's schema and
+     * statistics.
+     */
+    protected void prepareSchemaStats() {
+        schema = leftChild.getSchema();
+
+        // Removing duplicate rows doesn't change the set of values in each
+        // column, so the child's statistics still apply.
+        stats = new ArrayList<>();
+        for (ColumnStats colStat : leftChild.getStats())
+            stats.add(new ColumnStats(colStat));
+    }
+
+
+    /**
+     * Estimates the number of distinct rows in the node's input, from the
+     * number of unique values in each column.
+     *
+     * @param numTuples the estimated number of rows in the node's input
+     *
+     * @return the estimated number of distinct rows
+     */
+    protected float estimateDistinctTuples(float numTuples) {
+        float numDistinct = 1;
+        for (ColumnStats colStat : stats) {
+            int numUnique = colStat.getNumUniqueValues();
+            if (numUnique < 0)
+                return numTuples;
+
+            // NULL is one more distinct value.
+            if (colStat.getNumNullValues() != 0)
+                numUnique++;
+
+            numDistinct *= numUnique;
+            if (numDistinct >= numTuples)
+                return numTuples;
+        }
+
+        return numDistinct;
+    }
+
+
+    /**
+     * The distinct plan-nodes don't support marking.
+     */
+    @Override
+    public boolean supportsMarking() {
+        return false;
+    }
+
+
+    @Override
+    public boolean requiresLeftMarking() {
+        return false;
+    }
+
+
+    @Override
+    public boolean requiresRightMarking() {
+        return false;
+    }
+}
@@ -6,11 +6,20 @@ import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.indexes.IndexInfo;
 import edu.caltech.nanodb.queryeval.*;
 import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
+import edu.caltech.nanodb.storage.ColumnRangeFilter;
 import edu.caltech.nanodb.storage.FilePointer;
+import edu.caltech.nanodb.storage.PageRangeTupleFile;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.RangeFilteredTupleFile;
 import edu.caltech.nanodb.storage.TupleFile;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.List;
 
 
@@ -66,6 +75,52 @@ public class FileScanNode extends SelectNode {
     private boolean jumpToMarkedTuple;
 
 
+    /**
+     * The indexes of the columns that the rest of the plan reads from this
+     * node's tuples, or {@code null} if every column may be read.  Columns
+     * outside of this set are not decoded from the tuple file's pages.
+     */
+    private BitSet projectedColumns;
+
+
+    /**
+     * If the tuple file can skip groups of tuples using per-column value
+     * ranges, this is the filter derived from the scan's predicate; otherwise
+     * it is {@code null}.  The predicate is still evaluated against every
+     * tuple that the file returns.
+     */
+    private ColumnRangeFilter rangeFilter;
+
+
+    /** The batch that tuples are copied into when producing batches. */
+    private TupleBatch scanBatch;
+
+
+    /**
+     * True once a batch scan has reached the end of the tuple file, since
+     * {@link #advanceCurrentTuple} would otherwise start over.
+     */
+    private boolean batchScanDone;
+
+
+    /**
+     * If this node is one of the workers of a parallel scan, this is the
+     * queue that the node claims morsels of the tuple file's pages from;
+     * otherwise it is {@code null}.  Such a node only scans the pages it
+     * claims.
+     *
+     * @see GatherNode
+     */
+    private MorselQueue morsels;
+
+
+    /**
+     * The page just past the end of the morsel currently being scanned, if
+     * this node claims morsels from {@link #morsels}.
+     */
+    private int morselEndPageNo;
+
+
     /**
      * Construct a file scan node that traverses a table file.
      *
@@ -102,6 +157,106 @@ public class FileScanNode extends SelectNode {
     }
 
 
+    /**
+     * Specifies the names of the columns that the rest of the plan will read
+     * from this node's tuples, so that the other columns of the table need
+     * not be decoded.  Column names are matched without regard to table
+     * names or case, so the specified collection may safely be a superset of
+     * the columns actually used.  This is only applied to table scans, since
+     * index scans are used by callers that need the whole index record.
+     *
+     * @param columnNames the names of all columns that may be read from this
+     *        node's tuples
+     */
+    public void setProjectedColumns(Collection<String> columnNames) {
+        if (columnNames == null)
+            throw new IllegalArgumentException("columnNames cannot be null");
+
+        if (tableInfo == null)
+            return;
+
+        Schema tableSchema = tupleFile.getSchema();
+        BitSet columns = new BitSet(tableSchema.numColumns());
+        for (int i = 0; i < tableSchema.numColumns(); i++) {
+            String name = tableSchema.getColumnInfo(i).getName();
+            for (String colName : columnNames) {
+                if (colName.equalsIgnoreCase(name)) {
+                    columns.set(i);
+                    break;
+                }
+            }
+        }
+
+        projectedColumns = columns;
+        logger.debug("Projected columns for " + this + ":  " + columns);
+    }
+
+
+    /**
+     * Returns the indexes of the columns that this node decodes from its
+     * tuples, or {@code null} if all columns are decoded.
+     *
+     * @return the indexes of the columns that this node decodes from its
+     *         tuples, or {@code null} if all columns are decoded.
+     */
+    public BitSet getProjectedColumns() {
+        return projectedColumns;
+    }
+
+
+    /**
+     * Returns true if this node scans a table whose tuple file can be
+     * scanned one range of pages at a time, so that the scan can be divided
+     * among the workers of a parallel scan.
+     *
+     * @return true if the scan can be divided among parallel workers
+     */
+    public boolean supportsParallelScan() {
+        return tableInfo != null && tupleFile instanceof PageRangeTupleFile;
+    }
+
+
+    /**
+     * Returns the tuple file that this node scans.
+     *
+     * @return the tuple file that this node scans
+     */
+    public TupleFile getTupleFile() {
+        return tupleFile;
+    }
+
+
+    /**
+     * Returns the name of the table that this node scans, or of the table
+     * that the scanned index is built on.
+     *
+     * @return the name of the table that this node scans
+     */
+    public String getTableName() {
+        if (tableInfo != null)
+            return tableInfo.getTableName();
+
+        return indexInfo.getTableName();
+    }
+
+
+    /**
+     * Makes this node scan only the morsels of pages that it claims from the
+     * specified queue.  This is used by {@link GatherNode} to set up the
+     * workers of a parallel scan, which all share the same queue.
+     *
+     * @param morsels the queue to claim morsels from
+     */
+    void setMorselQueue(MorselQueue morsels) {
+        if (!supportsParallelScan()) {
+            throw new IllegalStateException(
+                "This scan cannot be divided into morsels:  " + this);
+        }
+
+        this.morsels = morsels;
+    }
+
+
     /**
      * Returns true if the passed-in object is a <tt>FileScanNode</tt> with
      * the same predicate and table.
@@ -152,6 +307,8 @@ public class FileScanNode extends SelectNode {
 
         // The tuple file doesn't need to be copied since it's immutable.
         node.tupleFile = tupleFile;
+        node.scanBatch = null;
+        node.morsels = null;
 
         return node;
     }
@@ -200,6 +357,16 @@ public class FileScanNode extends SelectNode {
     }
 
 
+    /**
+     * This node produces batches by copying the values of the tuples it
+     * scans into column vectors.
+     */
+    @Override
+    public boolean supportsBatches() {
+        return true;
+    }
+
+
     /**
      * This node has no children so of course it doesn't require marking.
      */
@@ -232,7 +399,8 @@ public class FileScanNode extends SelectNode {
         var numTuples = tableStats.numTuples;
         var costCal = new ExpressionCostCalculator();
         if (predicate != null) {
-            numTuples *= SelectivityEstimator.estimateSelectivity(predicate, schema, tableStats.getAllColumnStats());
+            estimatedSelectivity = SelectivityEstimator.estimateSelectivity(predicate, schema, tableStats.getAllColumnStats());
+            numTuples *= estimatedSelectivity;
             predicate.traverse(costCal);
         }
         cost = new PlanCost(numTuples, tableStats.avgTupleSize,
@@ -254,6 +422,13 @@ public class FileScanNode extends SelectNode {
         // Reset our marking state.
         markedTuple = null;
         jumpToMarkedTuple = false;
+        batchScanDone = false;
+
+        rangeFilter = null;
+        if (predicate != null && tupleFile instanceof RangeFilteredTupleFile) {
+            rangeFilter = ColumnRangeFilter.fromPredicate(predicate,
+                tupleFile.getSchema());
+        }
     }
 
 
@@ -262,6 +437,24 @@ public class FileScanNode extends SelectNode {
     }
 
 
+    /**
+     * If the tuple file skipped tuples using the range filter, the predicate
+     * was only applied to some of the table's tuples, so the selectivity is
+     * relative to the whole table.  A worker of a parallel scan doesn't know
+     * how much of the table it skipped.
+     */
+    @Override
+    protected long getFeedbackInputRows() {
+        if (rangeFilter == null)
+            return super.getFeedbackInputRows();
+
+        if (morsels != null)
+            return -1;
+
+        return tupleFile.getStats().numTuples;
+    }
+
+
     /**
      * Advances the current tuple forward for a file scan. Grabs the first
      * tuple if current is null.  Otherwise gets the next tuple.
@@ -272,14 +465,83 @@ public class FileScanNode extends SelectNode {
             logger.debug("Resuming at previously marked tuple.");
             currentTuple = tupleFile.getTuple(markedTuple);
             jumpToMarkedTuple = false;
+        } else if (morsels != null) {
+            currentTuple = advanceInMorsels();
+        } else if (rangeFilter != null) {
+            // Let the tuple file skip over tuples that can't match.
+            RangeFilteredTupleFile rangeFile = (RangeFilteredTupleFile) tupleFile;
+            if (currentTuple == null)
+                currentTuple = rangeFile.getFirstTuple(rangeFilter);
+            else
+                currentTuple = rangeFile.getNextTuple(currentTuple, rangeFilter);
+        } else if (currentTuple == null) {
+            // Get the first tuple.
+            currentTuple = tupleFile.getFirstTuple();
+        } else {
+            // Get the next tuple.
+            currentTuple = tupleFile.getNextTuple(currentTuple);
+        }
 
-            return;
+        // Only decode the columns that the rest of the plan will read.
+        if (projectedColumns != null && currentTuple instanceof PageTuple)
+            ((PageTuple) currentTuple).setProjectedColumns(projectedColumns);
+    }
+
+
+    /**
+     * Returns the tuple after the current tuple within the current morsel,
+     * claiming more morsels as each one is exhausted.  Once every morsel has
+     * been claimed, this returns {@code null} every time it is called.
+     */
+    private Tuple advanceInMorsels() {
+        PageRangeTupleFile rangeFile = (PageRangeTupleFile) tupleFile;
+
+        Tuple tup = null;
+        if (currentTuple != null) {
+            tup = rangeFile.getNextTupleInRange(currentTuple, morselEndPageNo,
+                rangeFilter);
         }
 
-        if (currentTuple == null)   // Get the first tuple.
-            currentTuple = tupleFile.getFirstTuple();
-        else                        // Get the next tuple.
-            currentTuple = tupleFile.getNextTuple(currentTuple);
+        while (tup == null) {
+            int startPageNo = morsels.claim();
+            if (startPageNo == -1)
+                break;
+
+            morselEndPageNo = morsels.getMorselEnd(startPageNo);
+            tup = rangeFile.getFirstTupleInRange(startPageNo, morselEndPageNo,
+                rangeFilter);
+        }
+
+        return tup;
+    }
+
+
+    /**
+     * Fills a batch with the next tuples from the tuple file.  Each tuple's
+     * values are copied into the batch, so the tuple is unpinned right away.
+     */
+    @Override
+    protected TupleBatch advanceCurrentBatch() {
+        if (batchScanDone)
+            return null;
+
+        if (scanBatch == null || scanBatch.getSchema() != schema)
+            scanBatch = new TupleBatch(schema);
+        else
+            scanBatch.clear();
+
+        while (!scanBatch.isFull()) {
+            advanceCurrentTuple();
+            if (currentTuple == null) {
+                batchScanDone = true;
+                break;
+            }
+
+            scanBatch.addTuple(currentTuple);
+            currentTuple.unpin();
+        }
+
+        return (scanBatch.getNumPhysicalRows() > 0) ? scanBatch : null;
     }
 
 
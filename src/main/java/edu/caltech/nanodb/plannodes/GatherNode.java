@@ -0,0 +1,580 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.PlanCost;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.SessionCounters;
+import edu.caltech.nanodb.storage.PageRangeTupleFile;
+
+
+/**
+ * <p>
+ * This plan-node runs its child plan on several worker threads at once, and
+ * merges the workers' results into a single tuple-stream.  The child plan
+ * must be a table file-scan, optionally with a projection above it; each
+ * worker runs its own copy of the child plan, and the workers divide the
+ * table's pages among themselves by claiming "morsels" of consecutive pages
+ * from a shared {@link MorselQueue}.  Thus each worker applies the scan's
+ * predicate and the projection to the tuples it reads, and only the results
+ * are passed back to the thread consuming this node's output.
+ * </p>
+ * <p>
+ * Workers run on a thread pool shared by all queries.  Each worker copies
+ * its results into in-memory tuples, and passes them back in chunks through
+ * a bounded queue, so that workers can't run arbitrarily far ahead of the
+ * consumer.  The order of the results is not specified.  If a worker fails,
+ * the other workers are stopped, and the failure is reported by
+ * {@link #getNextTuple}.
+ * </p>
+ * <p>
+ * Workers always run on behalf of the session that initialized this node:
+ * each worker thread gets a {@linkplain SessionState#makeWorkerState worker
+ * state} of the caller's session for as long as it runs, so the pages it
+ * pins and any other session-scoped state are attributed to that session.
+ * The storage activity of each worker is counted in its worker state, and
+ * is added to the session's counters once every worker has stopped, so
+ * that it is also attributed to the command running the query.
+ * For the same reason a worker never outlives the execution that started
+ * it; when the node is cleaned up or reinitialized, it waits for any
+ * workers that are still running to stop.
+ * </p>
+ * <p>
+ * If the node's parallelism is 1, the child plan is simply run on the
+ * calling thread.
+ * </p>
+ */
+public class GatherNode extends PlanNode {
+
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = LogManager.getLogger(GatherNode.class);
+
+
+    /** The number of consecutive pages in each morsel claimed by a worker. */
+    public static final int PAGES_PER_MORSEL = 16;
+
+
+    /** The number of tuples a worker passes back to the consumer at once. */
+    private static final int TUPLES_PER_CHUNK = 256;
+
+
+    /** The number of chunks each worker may have waiting in the queue. */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+
+    /** The thread pool that the workers of all parallel scans run on. */
+    private static ExecutorService workerPool;
+
+
+    /**
+     * The state shared between the consumer and the workers of one
+     * execution of this node.  A new exchange is created every time the
+     * node is initialized, so that workers left over from a previous
+     * execution can't interfere with the current one.
+     */
+    private static class Exchange {
+        /**
+         * The chunk that each worker adds to the queue when it finishes.
+         * This is compared by identity.
+         */
+        static final List<Tuple> END_OF_STREAM = new ArrayList<>(0);
+
+
+        /** The chunks of results produced by the workers. */
+        final BlockingQueue<List<Tuple>> queue;
+
+
+        /** The number of workers producing results. */
+        final int numWorkers;
+
+
+        /** The number of workers that have finished.  Used by the consumer. */
+        int numFinished;
+
+
+        /** Set when the consumer no longer wants results. */
+        volatile boolean cancelled;
+
+
+        /** The first failure reported by a worker, if any. */
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+
+        /** Counted down by each worker when it has stopped running. */
+        final CountDownLatch stopped;
+
+
+        /** The session states that the workers run with. */
+        final List<SessionState> workerStates = new ArrayList<>();
+
+
+        /**
+         * Set when the workers' counters have been added to the consumer's
+         * session.  Used by the consumer.
+         */
+        boolean countersMerged;
+
+
+        Exchange(int numWorkers) {
+            this.numWorkers = numWorkers;
+            queue = new ArrayBlockingQueue<>(numWorkers * CHUNKS_PER_WORKER);
+            stopped = new CountDownLatch(numWorkers);
+        }
+
+
+        /**
+         * Adds the storage activity of the workers to the counters of the
+         * consumer's session.  This must only be called by the consumer,
+         * once every worker has stopped; only the first call has any effect.
+         */
+        void mergeWorkerCounters() {
+            if (countersMerged)
+                return;
+
+            countersMerged = true;
+            SessionCounters counters = SessionState.get().getCounters();
+            for (SessionState workerState : workerStates)
+                counters.add(workerState.getCounters());
+        }
+
+
+        /**
+         * Adds a chunk of results to the queue, waiting for space if the
+         * queue is full.
+         *
+         * @return true if the chunk was added, or false if the exchange was
+         *         cancelled first
+         */
+        boolean put(List<Tuple> chunk) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(chunk, 50, TimeUnit.MILLISECONDS))
+                        return true;
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+            }
+            return false;
+        }
+    }
+
+
+    /** The number of workers to run the child plan on. */
+    private int parallelism;
+
+
+    /** The current execution of this node, if it is running in parallel. */
+    private Exchange exchange;
+
+
+    /** The chunk of results that tuples are currently returned from. */
+    private List<Tuple> currentChunk;
+
+
+    /** The index of the next tuple to return from {@link #currentChunk}. */
+    private int chunkIndex;
+
+
+    /**
+     * Constructs a gather node that runs the specified plan on the specified
+     * number of workers.
+     *
+     * @param leftChild the plan to run on each worker, which must be a
+     *        table file-scan, optionally with a projection above it
+     * @param parallelism the number of workers to run the plan on
+     */
+    public GatherNode(PlanNode leftChild, int parallelism) {
+        super(leftChild);
+
+        FileScanNode scan = findScan(leftChild);
+        if (scan == null || !scan.supportsParallelScan()) {
+            throw new IllegalArgumentException(
+                "Only table file-scans can be run in parallel:  " + leftChild);
+        }
+
+        setParallelism(parallelism);
+    }
+
+
+    /**
+     * The workers run copies of this node's child plan, and the child must
+     * be a file-scan that they can divide between them, so the child can't
+     * be instrumented.
+     */
+    @Override
+    public boolean allowsInstrumentedChildren() {
+        return false;
+    }
+
+
+    /**
+     * Returns the file-scan at the bottom of a plan that a gather node can
+     * run, or {@code null} if the plan isn't of that form.
+     */
+    private static FileScanNode findScan(PlanNode plan) {
+        if (plan instanceof ProjectNode)
+            plan = plan.leftChild;
+
+        return (plan instanceof FileScanNode) ? (FileScanNode) plan : null;
+    }
+
+
+    /**
+     * Returns the number of workers this node runs its child plan on.
+     *
+     * @return the number of workers this node runs its child plan on
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+
+    /**
+     * Sets the number of workers this node runs its child plan on.  This
+     * takes effect the next time the node is initialized.
+     *
+     * @param parallelism the number of workers to run the child plan on;
+     *        if this is 1, the child plan is run on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * The workers produce their results in no particular order.
+     */
+    @Override
+    public List<OrderByExpression> resultsOrderedBy() {
+        return null;
+    }
+
+
+    /** This node does not support marking. */
+    @Override
+    public boolean supportsMarking() {
+        return false;
+    }
+
+
+    /** This node does not require marking on its input. */
+    @Override
+    public boolean requiresLeftMarking() {
+        return false;
+    }
+
+
+    /** This node does not require marking on its input. */
+    @Override
+    public boolean requiresRightMarking() {
+        return false;
+    }
+
+
+    @Override
+    public void prepare() {
+        leftChild.prepare();
+
+        schema = leftChild.getSchema();
+        stats = leftChild.getStats();
+
+        // The workers share the CPU cost of the child plan between them.
+        PlanCost childCost = leftChild.getCost();
+        if (childCost != null) {
+            cost = new PlanCost(childCost);
+            cost.cpuCost /= parallelism;
+        }
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        stopWorkers();
+        currentChunk = null;
+        chunkIndex = 0;
+
+        if (parallelism <= 1) {
+            leftChild.initialize();
+            return;
+        }
+
+        List<PlanNode> workers = makeWorkerPlans();
+
+        Exchange ex = new Exchange(workers.size());
+        exchange = ex;
+
+        SessionState session = SessionState.get();
+        ExecutorService pool = getWorkerPool();
+        for (PlanNode worker : workers) {
+            SessionState workerState = session.makeWorkerState();
+            ex.workerStates.add(workerState);
+            pool.execute(() -> runWorker(worker, workerState, ex));
+        }
+    }
+
+
+    /**
+     * Creates the copies of the child plan that the workers of one parallel
+     * execution run.  The copies share a new {@link MorselQueue} over the
+     * scanned table's pages, so that between them they produce every result
+     * of the child plan exactly once.  The copies are bound, but not
+     * initialized.  This is also used by plan-nodes above this one that
+     * do part of their own work on the workers, such as aggregation.
+     *
+     * @return the copies of the child plan for the workers to run
+     */
+    List<PlanNode> makeWorkerPlans() {
+        FileScanNode scan = findScan(leftChild);
+        PageRangeTupleFile tupleFile = (PageRangeTupleFile) scan.getTupleFile();
+        int startPageNo = tupleFile.getFirstDataPageNo();
+        int endPageNo = tupleFile.getDBFile().getNumPages();
+        MorselQueue morsels =
+            new MorselQueue(startPageNo, endPageNo, PAGES_PER_MORSEL);
+
+        // Don't start more workers than there are morsels to scan.
+        int numMorsels = Math.max(1,
+            (endPageNo - startPageNo + PAGES_PER_MORSEL - 1) / PAGES_PER_MORSEL);
+        int numWorkers = Math.min(parallelism, numMorsels);
+
+        logger.debug(String.format("Starting %d workers to scan pages " +
+            "[%d, %d) of %s", numWorkers, startPageNo, endPageNo, scan));
+
+        ArrayList<PlanNode> workers = new ArrayList<>(numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            PlanNode worker = leftChild.duplicate();
+            findScan(worker).setMorselQueue(morsels);
+            worker.bindExpressions();
+            workers.add(worker);
+        }
+
+        return workers;
+    }
+
+
+    /**
+     * Returns the thread pool that workers run on, creating it if necessary.
+     */
+    static synchronized ExecutorService getWorkerPool() {
+        if (workerPool == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            workerPool = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r,
+                    "nanodb-scan-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return workerPool;
+    }
+
+
+    /**
+     * Runs one worker's copy of the child plan, passing its results back
+     * through the exchange.  This is run on a worker thread, with the
+     * specified worker state of the consumer's session.
+     */
+    private static void runWorker(PlanNode worker, SessionState workerState,
+                                  Exchange ex) {
+        SessionState.set(workerState);
+        try {
+            worker.initialize();
+
+            ArrayList<Tuple> chunk = new ArrayList<>(TUPLES_PER_CHUNK);
+            if (worker.supportsBatches()) {
+                TupleBatch batch;
+                while (!ex.cancelled && (batch = worker.getNextBatch()) != null) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        chunk.add(batch.getTuple(i));
+                        if (chunk.size() == TUPLES_PER_CHUNK) {
+                            if (!ex.put(chunk))
+                                break;
+
+                            chunk = new ArrayList<>(TUPLES_PER_CHUNK);
+                        }
+                    }
+                }
+            } else {
+                Tuple tup;
+                while (!ex.cancelled && (tup = worker.getNextTuple()) != null) {
+                    if (tup.isDiskBacked()) {
+                        // The consumer runs on a different thread, so it
+                        // gets a copy of the tuple.
+                        Tuple copy = TupleLiteral.fromTuple(tup);
+                        tup.unpin();
+                        tup = copy;
+                    }
+
+                    chunk.add(tup);
+                    if (chunk.size() == TUPLES_PER_CHUNK) {
+                        if (!ex.put(chunk))
+                            break;
+
+                        chunk = new ArrayList<>(TUPLES_PER_CHUNK);
+                    }
+                }
+            }
+
+            if (!chunk.isEmpty())
+                ex.put(chunk);
+
+            worker.cleanUp();
+        } catch (Throwable t) {
+            logger.error("Parallel scan worker failed", t);
+            ex.failure.compareAndSet(null, t);
+        } finally {
+            SessionState.remove();
+            ex.stopped.countDown();
+            ex.put(Exchange.END_OF_STREAM);
+        }
+    }
+
+
+    @Override
+    public Tuple getNextTuple() {
+        if (exchange == null)
+            return leftChild.getNextTuple();
+
+        while (currentChunk == null || chunkIndex >= currentChunk.size()) {
+            if (exchange.numFinished == exchange.numWorkers) {
+                // Each worker counts down the latch before it reports the
+                // end of its results, so all of them have stopped.
+                exchange.mergeWorkerCounters();
+                return null;
+            }
+
+            List<Tuple> chunk;
+            try {
+                chunk = exchange.queue.take();
+            } catch (InterruptedException e) {
+                stopWorkers();
+                throw new IllegalStateException(
+                    "Interrupted while waiting for parallel scan workers", e);
+            }
+
+            if (chunk == Exchange.END_OF_STREAM) {
+                exchange.numFinished++;
+                checkForFailure();
+                currentChunk = null;
+            } else {
+                currentChunk = chunk;
+                chunkIndex = 0;
+            }
+        }
+
+        return currentChunk.get(chunkIndex++);
+    }
+
+
+    /**
+     * If a worker has failed, stops the other workers and reports the
+     * failure to the caller.
+     */
+    private void checkForFailure() {
+        Throwable t = exchange.failure.get();
+        if (t == null)
+            return;
+
+        stopWorkers();
+
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+
+        if (t instanceof Error)
+            throw (Error) t;
+
+        throw new IllegalStateException("Parallel scan worker failed", t);
+    }
+
+
+    /**
+     * Tells the workers of the current execution, if any, to stop, and waits
+     * for them to do so.  Workers stop at the next chunk of results they
+     * produce.
+     */
+    private void stopWorkers() {
+        if (exchange != null) {
+            Exchange ex = exchange;
+            exchange = null;
+
+            ex.cancelled = true;
+            ex.queue.clear();
+
+            try {
+                ex.stopped.await();
+                ex.mergeWorkerCounters();
+            } catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for parallel scan " +
+                    "workers to stop");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    @Override
+    public void cleanUp() {
+        if (exchange != null) {
+            stopWorkers();
+            currentChunk = null;
+        } else {
+            leftChild.cleanUp();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "Gather[workers:  " + parallelism + "]";
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof GatherNode) {
+            GatherNode other = (GatherNode) obj;
+            return parallelism == other.parallelism &&
+                leftChild.equals(other.leftChild);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * leftChild.hashCode() + parallelism;
+    }
+
+
+    @Override
+    protected PlanNode clone() throws CloneNotSupportedException {
+        GatherNode node = (GatherNode) super.clone();
+
+        node.exchange = null;
+        node.currentChunk = null;
+
+        return node;
+    }
+}
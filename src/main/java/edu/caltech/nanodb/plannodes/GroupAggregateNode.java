@@ -181,6 +181,22 @@ public abstract class GroupAggregateNode extends PlanNode {
     }
 
 
+    /**
+     * Binds the group-by expressions and the arguments of the aggregate
+     * functions against the schema of the node's input tuples.
+     */
+    @Override
+    public void bindExpressions() {
+        super.bindExpressions();
+
+        ArrayList<Expression> exprs = new ArrayList<>(groupByExprs);
+        for (FunctionCall call : aggregates.values())
+            exprs.addAll(call.getArguments());
+
+        environment.bind(new Schema[] {inputSchema}, exprs);
+    }
+
+
     /**
      * <p>
      * This helper method computes the value of each group-by expression and
@@ -0,0 +1,435 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.hashtables.KeyHashTable;
+import edu.caltech.nanodb.queryeval.PlanCost;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.RowBuffer;
+
+
+/**
+ * <p>
+ * Implements <tt>DISTINCT</tt> by hashing.  The rows seen so far are kept
+ * in a {@link KeyHashTable}, and each input row that isn't in the table yet
+ * is added to it and produced immediately, so the first rows are produced
+ * without waiting for the whole input to be read.
+ * </p>
+ * <p>
+ * If the hash table grows beyond the node's memory limit, no more rows are
+ * added to it.  Input rows that are already in the table are still dropped,
+ * but the other rows are added to one of several partitions, chosen by the
+ * hash of the row, so that all copies of a row go to the same partition.
+ * Each partition is a {@link RowBuffer} that only keeps the chunk being
+ * filled in memory, and writes its full chunks to a temporary file.  Once
+ * the input is exhausted, the table is discarded and each partition is
+ * processed in the same way, with its own table; a partition whose distinct
+ * rows still don't fit in memory is partitioned again, using different bits
+ * of the hash.  Spilling changes the order of the rows, so the node doesn't
+ * spill if its input is ordered, and simply lets the table grow.
+ * </p>
+ */
+public class HashDistinctNode extends DistinctNode {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(HashDistinctNode.class);
+
+
+    /** The number of bits of a row's hash used to pick its partition. */
+    private static final int PARTITION_BITS = 4;
+
+
+    /** The number of partitions that spilled rows are divided into. */
+    private static final int NUM_PARTITIONS = 1 << PARTITION_BITS;
+
+
+    /**
+     * The maximum number of times that rows may be partitioned.  Beyond
+     * this, the hash table is allowed to exceed the memory limit, since rows
+     * with the same hash can't be divided any further.
+     */
+    private static final int MAX_SPILL_DEPTH = 32 / PARTITION_BITS - 1;
+
+
+    /** A partition of the rows that didn't fit in the hash table. */
+    private static class Partition {
+        /** The rows of the partition, which are mostly kept on disk. */
+        RowBuffer rows;
+
+        /** How many times the rows in the partition have been partitioned. */
+        int depth;
+    }
+
+
+    /**
+     * The maximum number of bytes of memory the hash table may use before
+     * rows are spilled to temporary files.
+     */
+    private long memoryLimit;
+
+
+    /** The size of each chunk of the partitions' row buffers, in bytes. */
+    private int chunkSize;
+
+
+    /** True if the node's input is ordered, so rows may not be spilled. */
+    private boolean preserveOrder;
+
+
+    /** The types of the input's columns, which make up the hash keys. */
+    private List<ColumnType> keyTypes;
+
+
+    /** The rows that have been produced from the current input. */
+    private KeyHashTable seenRows;
+
+
+    /** An array that each row's values are copied into for lookups. */
+    private Object[] keyValues;
+
+
+    /**
+     * True once the hash table has reached the memory limit, so that unseen
+     * rows are spilled rather than added to the table.
+     */
+    private boolean spilling;
+
+
+    /**
+     * The partitions that rows from the current input are spilled to, or
+     * {@code null} if no rows have been spilled.
+     */
+    private Partition[] partitions;
+
+
+    /** The partitions that haven't been processed yet. */
+    private ArrayDeque<Partition> pendingPartitions;
+
+
+    /**
+     * The partition currently being read, or {@code null} if rows are being
+     * read from the child plan-node.
+     */
+    private Partition currentPartition;
+
+
+    /** The index of the next row of {@link #currentPartition} to read. */
+    private int nextRow;
+
+
+    /** True once all rows have been produced. */
+    private boolean done;
+
+
+    /**
+     * Constructs a hash-based distinct node.
+     *
+     * @param leftChild the plan-node producing the rows
+     * @param memoryLimit the maximum number of bytes of memory the node's
+     *        hash table may use before rows are spilled to disk
+     */
+    public HashDistinctNode(PlanNode leftChild, long memoryLimit) {
+        super(leftChild);
+
+        if (memoryLimit <= 0)
+            throw new IllegalArgumentException("memoryLimit must be positive");
+
+        this.memoryLimit = memoryLimit;
+    }
+
+
+    /**
+     * If the input is ordered, the rows are produced in the same order, since
+     * the node never spills in that case; otherwise the rows are unordered.
+     */
+    @Override
+    public List<OrderByExpression> resultsOrderedBy() {
+        return leftChild.resultsOrderedBy();
+    }
+
+
+    @Override
+    public void prepare() {
+        leftChild.prepare();
+
+        prepareSchemaStats();
+
+        keyTypes = new ArrayList<>();
+        for (int i = 0; i < schema.numColumns(); i++)
+            keyTypes.add(schema.getColumnInfo(i).getType());
+
+        preserveOrder = (leftChild.resultsOrderedBy() != null);
+
+        // Each partition keeps one chunk in memory while it is filled, so
+        // use small chunks when the memory limit is small.
+        chunkSize = (int) Math.max(1024, Math.min(RowBuffer.DEFAULT_CHUNK_SIZE,
+            memoryLimit / NUM_PARTITIONS));
+
+        PlanCost childCost = leftChild.getCost();
+        if (childCost != null) {
+            cost = new PlanCost(childCost);
+
+            // Hashing is a constant-time operation per row.
+            cost.cpuCost += childCost.numTuples;
+            cost.numTuples = estimateDistinctTuples(childCost.numTuples);
+
+            // If the distinct rows don't fit in memory, the fraction of the
+            // input that doesn't fit is written out and read back in, and
+            // hashed again.  Each row takes its bytes plus about 16 bytes of
+            // table overhead.
+            float tableSize = cost.numTuples * (childCost.tupleSize + 16);
+            if (!preserveOrder && tableSize > memoryLimit) {
+                float spilled = childCost.numTuples * (1 - memoryLimit / tableSize);
+                cost.cpuCost += spilled;
+                cost.numBlockIOs += 2 * (long) Math.ceil(
+                    spilled * childCost.tupleSize / chunkSize);
+            }
+        } else {
+            logger.info(
+                "Child's cost not available; not computing this node's cost.");
+        }
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        clearPartitions();
+
+        seenRows = new KeyHashTable(keyTypes);
+        keyValues = new Object[keyTypes.size()];
+        spilling = false;
+        pendingPartitions = new ArrayDeque<>();
+        done = false;
+
+        leftChild.initialize();
+    }
+
+
+    @Override
+    public Tuple getNextTuple() {
+        if (done)
+            return null;
+
+        while (true) {
+            Tuple tup = nextInputTuple();
+            if (tup == null) {
+                if (!startNextPartition()) {
+                    done = true;
+                    return null;
+                }
+
+                continue;
+            }
+
+            for (int i = 0; i < keyValues.length; i++)
+                keyValues[i] = tup.getColumnValue(i);
+
+            if (spilling) {
+                if (seenRows.find(keyValues) == -1)
+                    spillTuple(tup);
+                else
+                    tup.unpin();
+
+                continue;
+            }
+
+            int size = seenRows.size();
+            if (seenRows.add(keyValues) == size) {
+                int depth = (currentPartition != null ?
+                    currentPartition.depth : 0);
+                if (!preserveOrder && depth < MAX_SPILL_DEPTH &&
+                    seenRows.getMemoryUsage() > memoryLimit) {
+                    logger.debug(String.format("Hash table of %d distinct " +
+                        "rows uses %d bytes; spilling further rows",
+                        seenRows.size(), seenRows.getMemoryUsage()));
+                    spilling = true;
+                }
+
+                return tup;
+            }
+
+            tup.unpin();
+        }
+    }
+
+
+    /**
+     * Returns the next row of the current input, which is either the child
+     * plan-node or a partition of spilled rows.
+     */
+    private Tuple nextInputTuple() {
+        if (currentPartition == null)
+            return leftChild.getNextTuple();
+
+        if (nextRow == currentPartition.rows.size())
+            return null;
+
+        return currentPartition.rows.get(nextRow++);
+    }
+
+
+    /**
+     * Adds a row to its partition, creating the partition if necessary.  The
+     * row's values must be in {@link #keyValues}.
+     */
+    private void spillTuple(Tuple tup) {
+        int depth = (currentPartition != null ? currentPartition.depth : 0);
+
+        // Spread the bits of the hash with the MurmurHash3 finalizer, then
+        // use the bits for this depth.
+        int hash = Arrays.hashCode(keyValues);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        int index = (hash >>> (depth * PARTITION_BITS)) & (NUM_PARTITIONS - 1);
+
+        if (partitions == null)
+            partitions = new Partition[NUM_PARTITIONS];
+
+        Partition partition = partitions[index];
+        if (partition == null) {
+            // The partition doesn't keep its chunks in memory once they are
+            // full.
+            partition = new Partition();
+            partition.rows = new RowBuffer(schema, 0, chunkSize);
+            partition.depth = depth + 1;
+            partitions[index] = partition;
+        }
+
+        // The buffer stores a copy of the row.
+        partition.rows.add(tup);
+        tup.unpin();
+    }
+
+
+    /**
+     * Finishes the current input, and starts reading the next partition.
+     *
+     * @return true if there is another partition to read, or false if all
+     *         rows have been produced
+     */
+    private boolean startNextPartition() {
+        clearCurrentPartition();
+
+        if (partitions != null) {
+            for (Partition partition : partitions) {
+                if (partition != null)
+                    pendingPartitions.push(partition);
+            }
+            partitions = null;
+        }
+
+        if (pendingPartitions.isEmpty())
+            return false;
+
+        currentPartition = pendingPartitions.pop();
+        nextRow = 0;
+        logger.debug(String.format("Removing duplicates from %d spilled rows " +
+            "at depth %d", currentPartition.rows.size(), currentPartition.depth));
+
+        // The rows of different partitions are distinct, so each partition
+        // starts with an empty table.
+        seenRows = new KeyHashTable(keyTypes);
+        spilling = false;
+        return true;
+    }
+
+
+    /**
+     * Releases the rows of the partition being read, if there is one, and
+     * deletes its spill file.
+     */
+    private void clearCurrentPartition() {
+        if (currentPartition == null)
+            return;
+
+        currentPartition.rows.clear();
+        currentPartition = null;
+    }
+
+
+    /** Releases the rows of all of the node's partitions, if there are any. */
+    private void clearPartitions() {
+        clearCurrentPartition();
+
+        if (partitions != null) {
+            for (Partition partition : partitions) {
+                if (partition != null)
+                    partition.rows.clear();
+            }
+            partitions = null;
+        }
+
+        if (pendingPartitions != null) {
+            for (Partition partition : pendingPartitions)
+                partition.rows.clear();
+
+            pendingPartitions.clear();
+        }
+    }
+
+
+    @Override
+    public void cleanUp() {
+        clearPartitions();
+        seenRows = null;
+
+        leftChild.cleanUp();
+    }
+
+
+    @Override
+    public String toString() {
+        return "HashDistinct";
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof HashDistinctNode) {
+            HashDistinctNode other = (HashDistinctNode) obj;
+            return memoryLimit == other.memoryLimit &&
+                leftChild.equals(other.leftChild);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * leftChild.hashCode() + Long.hashCode(memoryLimit);
+    }
+
+
+    /**
+     * Creates a copy of this plan node and its subtree.  The copy has its own
+     * hash table and partitions.
+     */
+    @Override
+    protected PlanNode clone() throws CloneNotSupportedException {
+        HashDistinctNode node = (HashDistinctNode) super.clone();
+
+        node.seenRows = null;
+        node.partitions = null;
+        node.pendingPartitions = null;
+        node.currentPartition = null;
+
+        return node;
+    }
+}
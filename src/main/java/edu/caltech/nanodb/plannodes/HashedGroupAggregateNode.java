@@ -3,26 +3,48 @@ package edu.caltech.nanodb.plannodes;
 
 import java.io.IOException;
 
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionException;
 import edu.caltech.nanodb.expressions.FunctionCall;
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.functions.AggregateFunction;
+import edu.caltech.nanodb.hashtables.KeyHashTable;
 
 import edu.caltech.nanodb.queryeval.PlanCost;
+import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
+import edu.caltech.nanodb.server.SessionState;
 
 
 /**
+ * <p>
  * Implements grouping and aggregation by using hashing as a method to
- * identify groups.
+ * identify groups.  The groups are identified with a {@link KeyHashTable},
+ * which stores the values of each group's grouping expressions in primitive
+ * arrays rather than as objects, and each group's aggregate functions are
+ * kept in an array indexed by the group's ID.
+ * </p>
+ * <p>
+ * If the node's input is a {@link GatherNode} that runs in parallel, and
+ * every aggregate function supports merging partial results, the
+ * aggregation is done in two phases:  each worker of the parallel scan
+ * computes its own hash table of groups over the part of the table it
+ * scans, and then the workers' hash tables are merged into the final
+ * result on the calling thread.  Thus only one partial result per group and
+ * worker is passed between threads, rather than every input tuple.
+ * </p>
  */
 public class HashedGroupAggregateNode extends GroupAggregateNode {
 
@@ -32,9 +54,34 @@ public class HashedGroupAggregateNode extends GroupAggregateNode {
     private static Logger logger = LogManager.getLogger(HashedGroupAggregateNode.class);
 
 
-    private LinkedHashMap<TupleLiteral, Map<String, FunctionCall>> computedAggregates;
+    /**
+     * The hash table mapping the values of the grouping expressions to group
+     * IDs, or {@code null} if the groups haven't been computed yet.
+     */
+    private KeyHashTable groupTable;
+
+
+    /** The aggregate functions of each group, indexed by group ID. */
+    private ArrayList<AggregateFunction[]> groupAggregates;
+
+
+    /** The ID of the next group to output. */
+    private int nextGroupId;
+
+
+    /**
+     * The aggregate functions to compute, in the order of the node's output.
+     * These are copied for each group.
+     */
+    private AggregateFunction[] templateFunctions;
+
+
+    /** The argument of each aggregate function in {@link #templateFunctions}. */
+    private Expression[] aggregateArgs;
 
-    private Iterator<TupleLiteral> groupIterator;
+
+    /** Holds the values of the grouping expressions for the current tuple. */
+    private Object[] groupValues;
 
 
     private boolean done;
@@ -125,25 +172,28 @@ public class HashedGroupAggregateNode extends GroupAggregateNode {
         if (done)
             return null;
 
-        TupleLiteral result = null;
-
-        if (computedAggregates == null) {
+        if (groupTable == null) {
             computeAggregates();
-            groupIterator = computedAggregates.keySet().iterator();
+            nextGroupId = 0;
         }
 
-        if (groupIterator.hasNext()) {
-            // Construct the result tuple from the group, and from the
-            // computed aggregate values.
-
-            TupleLiteral group = groupIterator.next();
-            Map<String, FunctionCall> groupAggregates = computedAggregates.get(group);
-            result = generateOutputTuple(group, groupAggregates);
-        } else {
+        if (nextGroupId == groupAggregates.size()) {
             // No more groups.
             done = true;
+            return null;
         }
 
+        // Construct the result tuple from the group, and from the computed
+        // aggregate values.
+        int groupId = nextGroupId++;
+
+        TupleLiteral result = new TupleLiteral();
+        if (!groupByExprs.isEmpty())
+            result.appendTuple(groupTable.getKey(groupId));
+
+        for (AggregateFunction aggFn : groupAggregates.get(groupId))
+            result.addValue(aggFn.getResult());
+
         return result;
     }
 
@@ -156,47 +206,270 @@ public class HashedGroupAggregateNode extends GroupAggregateNode {
     private void computeAggregates() {
         Tuple inputTuple;
 
-        computedAggregates = new LinkedHashMap<>();
+        ArrayList<ColumnType> groupTypes = new ArrayList<>();
+        for (Expression expr : groupByExprs)
+            groupTypes.add(expr.getColumnInfo(inputSchema).getType());
+
+        groupTable = new KeyHashTable(groupTypes);
+        groupAggregates = new ArrayList<>();
+
+        if (canAggregateInParallel()) {
+            computeAggregatesInParallel();
+            return;
+        }
+
+        prepareTemplateFunctions();
+
+        if (leftChild.supportsBatches()) {
+            computeAggregatesFromBatches();
+        } else {
+            // Pull tuples from the left child until we run out.
+            while ((inputTuple = leftChild.getNextTuple()) != null) {
+                environment.clear();
+                environment.addTuple(inputSchema, inputTuple);
+                updateGroup();
+
+                // Now that we are done with the current tuple, unpin it.
+                inputTuple.unpin();
+            }
+        }
 
-        // Pull tuples from the left child until we run out.
-        while ((inputTuple = leftChild.getNextTuple()) != null) {
-            environment.clear();
-            environment.addTuple(inputSchema, inputTuple);
+        logger.debug(String.format("Computed %d groups; the group table " +
+            "uses %d bytes", groupAggregates.size(), groupTable.getMemoryUsage()));
+    }
 
-            // Get the group values for the current row.
-            TupleLiteral groupValues = evaluateGroupByExprs();
 
-            // logger.debug("Group values = " + groupValues);
+    /**
+     * This helper function collects the aggregate functions to compute and
+     * their arguments into arrays, so that they don't have to be looked up
+     * for every input tuple.
+     */
+    private void prepareTemplateFunctions() {
+        templateFunctions = new AggregateFunction[aggregates.size()];
+        aggregateArgs = new Expression[aggregates.size()];
+
+        int i = 0;
+        for (FunctionCall call : aggregates.values()) {
+            List<Expression> args = call.getArguments();
+            if (args.size() != 1) {
+                throw new ExpressionException("Aggregate functions " +
+                    "currently require exactly one argument.");
+            }
 
-            // Look up the collection of aggregate functions for this group,
-            // or create one if it doesn't already exist.
-            Map<String, FunctionCall> groupAggregates = computedAggregates.get(groupValues);
-            if (groupAggregates == null) {
-                groupAggregates = new LinkedHashMap<>();
+            templateFunctions[i] = (AggregateFunction) call.getFunction();
+            aggregateArgs[i] = args.get(0);
+            i++;
+        }
 
-                // logger.debug(" * Creating new computed aggregates for this group");
+        groupValues = new Object[groupByExprs.size()];
+    }
+
+
+    /**
+     * This helper function computes the grouping and aggregate results from
+     * batches of tuples generated by the subplan, which avoids a call
+     * through the entire subplan for every input tuple.
+     */
+    private void computeAggregatesFromBatches() {
+        TupleBatch batch;
+        while ((batch = leftChild.getNextBatch()) != null) {
+            TupleBatch.Row row = batch.getRowView();
+            for (int i = 0; i < batch.size(); i++) {
+                row.setRow(batch.getPhysicalRow(i));
+                environment.clear();
+                environment.addTuple(inputSchema, row);
+                updateGroup();
+            }
+        }
+    }
+
+
+    /**
+     * A gather node child can't be instrumented, since this node runs its
+     * workers itself when aggregating in parallel.
+     */
+    @Override
+    public boolean allowsInstrumentedChildren() {
+        return !(leftChild instanceof GatherNode);
+    }
+
+
+    /**
+     * Returns true if this node's input is a parallel scan, and every
+     * aggregate function can merge partial results, so that the workers of
+     * the scan can each compute partial aggregates.
+     */
+    private boolean canAggregateInParallel() {
+        if (!(leftChild instanceof GatherNode) ||
+            ((GatherNode) leftChild).getParallelism() <= 1) {
+            return false;
+        }
+
+        for (FunctionCall fnCall : aggregates.values()) {
+            AggregateFunction aggFn = (AggregateFunction) fnCall.getFunction();
+            if (!aggFn.supportsMerge())
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * This helper function computes the grouping and aggregate results in
+     * two phases.  Each worker of the parallel scan below this node runs a
+     * local grouping/aggregate node over its share of the input, and then
+     * the partial results of the workers are merged into this node's hash
+     * table.
+     */
+    private void computeAggregatesInParallel() {
+        List<PlanNode> workerPlans = ((GatherNode) leftChild).makeWorkerPlans();
+
+        SessionState session = SessionState.get();
+        ExecutorService pool = GatherNode.getWorkerPool();
+        ArrayList<Future<HashedGroupAggregateNode>> futures =
+            new ArrayList<>(workerPlans.size());
+        ArrayList<SessionState> workerStates =
+            new ArrayList<>(workerPlans.size());
+
+        for (PlanNode workerPlan : workerPlans) {
+            HashedGroupAggregateNode local =
+                new HashedGroupAggregateNode(workerPlan, groupByExprs, aggregates);
+            local.prepare();
+            local.bindExpressions();
+
+            SessionState workerState = session.makeWorkerState();
+            workerStates.add(workerState);
+            futures.add(pool.submit(
+                () -> local.computeLocalAggregates(workerState)));
+        }
+
+        logger.debug(String.format("Computing partial aggregates on %d workers",
+            futures.size()));
+
+        // Wait for every worker to finish, even if one fails, so that no
+        // worker is still using the table when the query completes.  Once
+        // a worker is done, its storage activity is added to the session's.
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            HashedGroupAggregateNode local;
+            try {
+                local = futures.get(i).get();
+            } catch (ExecutionException e) {
+                session.getCounters().add(workerStates.get(i).getCounters());
+                if (failure == null)
+                    failure = e.getCause();
+
+                continue;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(
+                    "Interrupted while waiting for aggregation workers", e);
+            }
+
+            session.getCounters().add(workerStates.get(i).getCounters());
+            if (failure == null)
+                mergeGroups(local);
+        }
+
+        if (failure != null) {
+            groupTable = null;
+            groupAggregates = null;
+
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+
+            if (failure instanceof Error)
+                throw (Error) failure;
+
+            throw new IllegalStateException("Aggregation worker failed", failure);
+        }
+    }
 
-                // Clone each aggregate function, since aggregates keep some
-                // internal scratch space for computation.
-                for (String name : aggregates.keySet()) {
-                    FunctionCall fnCall = aggregates.get(name);
-                    groupAggregates.put(name, (FunctionCall) fnCall.duplicate());
-                }
 
-                computedAggregates.put(groupValues, groupAggregates);
+    /**
+     * Computes this node's groups and aggregates over all of its input.
+     * This is run on a worker thread, for a local node created by
+     * {@link #computeAggregatesInParallel}.
+     *
+     * @param workerState the worker state of the session running the query,
+     *        which is made the worker thread's session state while the
+     *        aggregates are computed
+     *
+     * @return this node, holding the computed groups and aggregates
+     */
+    private HashedGroupAggregateNode computeLocalAggregates(
+        SessionState workerState) {
+        SessionState.set(workerState);
+        try {
+            initialize();
+            try {
+                computeAggregates();
+                return this;
+            } finally {
+                leftChild.cleanUp();
             }
+        } finally {
+            SessionState.remove();
+        }
+    }
 
-            // Now that we know the group, and we have aggregate functions to
-            // do the computation, update each aggregate with the tuple's
-            // current value.
-            updateAggregates(groupAggregates);
 
-            // Now that we are done with the current tuple, unpin it.
-            inputTuple.unpin();
+    /**
+     * This helper function merges the groups and partial aggregates computed
+     * by a worker's local node into this node's hash table.
+     */
+    private void mergeGroups(HashedGroupAggregateNode local) {
+        for (int localId = 0; localId < local.groupAggregates.size(); localId++) {
+            int groupId = groupTable.add(local.groupTable, localId);
+            AggregateFunction[] partial = local.groupAggregates.get(localId);
+
+            if (groupId == groupAggregates.size()) {
+                groupAggregates.add(partial);
+            } else {
+                AggregateFunction[] fns = groupAggregates.get(groupId);
+                for (int i = 0; i < fns.length; i++)
+                    fns[i].mergeResult(partial[i]);
+            }
         }
     }
 
 
+    /**
+     * This helper function finds the group of the input tuple in the plan
+     * node's environment, and updates that group's aggregates with the tuple.
+     */
+    private void updateGroup() {
+        // Get the group values for the current row, and look up the group.
+        for (int i = 0; i < groupValues.length; i++)
+            groupValues[i] = groupByExprs.get(i).evaluate(environment);
+
+        int groupId = groupTable.add(groupValues);
+
+        AggregateFunction[] fns;
+        if (groupId == groupAggregates.size()) {
+            // Copy each aggregate function for the new group, since
+            // aggregates keep some internal scratch space for computation.
+            fns = new AggregateFunction[templateFunctions.length];
+            for (int i = 0; i < fns.length; i++) {
+                try {
+                    fns[i] = (AggregateFunction) templateFunctions[i].clone();
+                } catch (CloneNotSupportedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            groupAggregates.add(fns);
+        } else {
+            fns = groupAggregates.get(groupId);
+        }
+
+        // Now that we know the group, update each aggregate with the tuple's
+        // current value.
+        for (int i = 0; i < fns.length; i++)
+            fns[i].addValue(aggregateArgs[i].evaluate(environment));
+    }
+
+
     public void prepare() {
         // Need to prepare the left child-node before we can do our own work.
         leftChild.prepare();
@@ -238,11 +511,14 @@ public class HashedGroupAggregateNode extends GroupAggregateNode {
         super.initialize();
 
         // Clear our state.
-        computedAggregates = null;
-        groupIterator = null;
+        groupTable = null;
+        groupAggregates = null;
         done = false;
 
-        leftChild.initialize();
+        // When aggregating in parallel, the workers run their own copies of
+        // the child plan, so the child itself isn't run.
+        if (!canAggregateInParallel())
+            leftChild.initialize();
     }
 
 
@@ -274,8 +550,8 @@ public class HashedGroupAggregateNode extends GroupAggregateNode {
      */
     public void cleanUp() {
         // Clear our state.
-        computedAggregates = null;
-        groupIterator = null;
+        groupTable = null;
+        groupAggregates = null;
         leftChild.cleanUp();
     }
 }
@@ -159,6 +159,16 @@ public class IndexScanNode extends PlanNode {
     }
 
 
+    /**
+     * Returns the name of the table that the index is built on.
+     *
+     * @return the name of the table that the index is built on
+     */
+    public String getTableName() {
+        return indexInfo.getTableName();
+    }
+
+
     /**
      * Returns true if the passed-in object is a <tt>FileScanNode</tt> with
      * the same predicate and table.
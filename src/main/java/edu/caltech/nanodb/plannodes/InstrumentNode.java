@@ -0,0 +1,322 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.io.PrintStream;
+import java.util.List;
+
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.SessionCounters;
+
+
+/**
+ * <p>
+ * This plan-node measures the execution of its child node, for
+ * <tt>EXPLAIN ANALYZE</tt>.  It passes every call through to its child
+ * unchanged, and records the number of rows the child produces, the number
+ * of times the child is initialized (i.e. scanned again), and the time and
+ * buffer-manager activity spent in the child.  The time and buffer activity
+ * include the child's own children, since they are measured around each
+ * call to the child.
+ * </p>
+ * <p>
+ * Buffer activity is counted by the {@link SessionCounters} of the calling
+ * thread's session, so pages read by the workers of a parallel scan are not
+ * included.  An instrument node is transparent when the plan is printed:
+ * the child is printed with its measurements next to its estimated cost.
+ * </p>
+ */
+public class InstrumentNode extends PlanNode {
+
+    /** The counters of the session whose buffer activity is measured. */
+    private SessionCounters counters;
+
+
+    /** The total number of rows produced by the child. */
+    private long rowsProduced;
+
+
+    /** The number of times the child has been initialized. */
+    private int loops;
+
+
+    /** The total time spent in the child, in nanoseconds. */
+    private long elapsedTimeNanos;
+
+
+    /** The number of cached pages the child requested. */
+    private long bufferHits;
+
+
+    /** The number of uncached pages the child requested. */
+    private long bufferMisses;
+
+
+    /** The number of pages the child read from disk. */
+    private long pagesRead;
+
+
+    /**
+     * Wraps a prepared plan node to measure it.
+     *
+     * @param subplan the plan node to measure
+     */
+    public InstrumentNode(PlanNode subplan) {
+        super(subplan);
+        counters = SessionState.get().getCounters();
+
+        // The child is already prepared, so use its results.
+        schema = subplan.getSchema();
+        cost = subplan.getCost();
+        stats = subplan.getStats();
+    }
+
+
+    /**
+     * Wraps every node of a prepared plan that may be measured in an
+     * {@code InstrumentNode}.  The children of nodes that don't
+     * {@linkplain PlanNode#allowsInstrumentedChildren allow it} are not
+     * wrapped.
+     *
+     * @param plan the plan to instrument
+     * @return the root of the instrumented plan
+     */
+    public static InstrumentNode instrumentPlan(PlanNode plan) {
+        if (plan.allowsInstrumentedChildren()) {
+            if (plan.leftChild != null)
+                plan.leftChild = instrumentPlan(plan.leftChild);
+
+            if (plan.rightChild != null)
+                plan.rightChild = instrumentPlan(plan.rightChild);
+        }
+
+        return new InstrumentNode(plan);
+    }
+
+
+    /**
+     * Returns the plan node being measured.
+     *
+     * @return the plan node being measured
+     */
+    public PlanNode getSubplan() {
+        return leftChild;
+    }
+
+
+    public long getRowsProduced() {
+        return rowsProduced;
+    }
+
+
+    public int getLoops() {
+        return loops;
+    }
+
+
+    public long getElapsedTimeNanos() {
+        return elapsedTimeNanos;
+    }
+
+
+    public long getBufferHits() {
+        return bufferHits;
+    }
+
+
+    public long getBufferMisses() {
+        return bufferMisses;
+    }
+
+
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+
+    @Override
+    public List<OrderByExpression> resultsOrderedBy() {
+        return leftChild.resultsOrderedBy();
+    }
+
+
+    @Override
+    public boolean supportsMarking() {
+        return leftChild.supportsMarking();
+    }
+
+
+    @Override
+    public boolean requiresLeftMarking() {
+        return leftChild.requiresLeftMarking();
+    }
+
+
+    @Override
+    public boolean requiresRightMarking() {
+        return leftChild.requiresRightMarking();
+    }
+
+
+    @Override
+    public void prepare() {
+        leftChild.prepare();
+
+        schema = leftChild.getSchema();
+        cost = leftChild.getCost();
+        stats = leftChild.getStats();
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        long start = startMeasurement();
+        leftChild.initialize();
+        endMeasurement(start);
+
+        loops++;
+    }
+
+
+    @Override
+    public Tuple getNextTuple() {
+        long start = startMeasurement();
+        Tuple tuple = leftChild.getNextTuple();
+        endMeasurement(start);
+
+        if (tuple != null)
+            rowsProduced++;
+
+        return tuple;
+    }
+
+
+    @Override
+    public boolean supportsBatches() {
+        return leftChild.supportsBatches();
+    }
+
+
+    @Override
+    public TupleBatch getNextBatch() {
+        long start = startMeasurement();
+        TupleBatch batch = leftChild.getNextBatch();
+        endMeasurement(start);
+
+        if (batch != null)
+            rowsProduced += batch.size();
+
+        return batch;
+    }
+
+
+    @Override
+    public void markCurrentPosition() {
+        leftChild.markCurrentPosition();
+    }
+
+
+    @Override
+    public void resetToLastMark() {
+        long start = startMeasurement();
+        leftChild.resetToLastMark();
+        endMeasurement(start);
+    }
+
+
+    @Override
+    public void cleanUp() {
+        leftChild.cleanUp();
+    }
+
+
+    /**
+     * Subtracts the session's current buffer counts from this node's, so
+     * that {@link #endMeasurement} can add the counts after a call to the
+     * child, and returns the current time.
+     */
+    private long startMeasurement() {
+        bufferHits -= counters.getBufferHits();
+        bufferMisses -= counters.getBufferMisses();
+        pagesRead -= counters.getPagesRead();
+        return System.nanoTime();
+    }
+
+
+    /**
+     * Adds the time and buffer activity since {@link #startMeasurement} to
+     * this node's totals.
+     */
+    private void endMeasurement(long start) {
+        elapsedTimeNanos += System.nanoTime() - start;
+        bufferHits += counters.getBufferHits();
+        bufferMisses += counters.getBufferMisses();
+        pagesRead += counters.getPagesRead();
+    }
+
+
+    /**
+     * Returns a description of the child's measured execution.
+     *
+     * @return a description of the child's measured execution
+     */
+    public String getActualsString() {
+        return String.format("[rows=%d, loops=%d, time=%.3fms, " +
+            "bufHits=%d, bufMisses=%d, pagesRead=%d]", rowsProduced, loops,
+            elapsedTimeNanos / 1e6, bufferHits, bufferMisses, pagesRead);
+    }
+
+
+    /**
+     * Prints the child node as it would print itself, with its measurements
+     * following its cost, then prints the child's children.
+     */
+    @Override
+    public void printNodeTree(PrintStream out, boolean includeCosts, String indent) {
+        StringBuilder buf = new StringBuilder();
+        buf.append(indent);
+        buf.append(leftChild.toString());
+        if (includeCosts) {
+            if (cost != null)
+                buf.append(" cost=").append(cost);
+            else
+                buf.append(" cost is unknown");
+        }
+        buf.append(" actual=").append(getActualsString());
+
+        out.println(buf.toString());
+
+        if (leftChild.leftChild != null)
+            leftChild.leftChild.printNodeTree(out, includeCosts, indent + "    ");
+
+        if (leftChild.rightChild != null)
+            leftChild.rightChild.printNodeTree(out, includeCosts, indent + "    ");
+    }
+
+
+    @Override
+    public String toString() {
+        return "Instrument[" + leftChild + "]";
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof InstrumentNode) {
+            InstrumentNode other = (InstrumentNode) obj;
+            return leftChild.equals(other.leftChild);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return leftChild.hashCode();
+    }
+}
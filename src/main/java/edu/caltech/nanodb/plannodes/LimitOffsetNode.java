@@ -3,6 +3,7 @@ package edu.caltech.nanodb.plannodes;
 
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -98,6 +99,48 @@ public class LimitOffsetNode extends PlanNode {
         return leftChild.getNextTuple();
     }
 
+    @Override
+    public boolean supportsBatches() {
+        return leftChild.supportsBatches();
+    }
+
+    /**
+     * Skips and limits the rows of the subplan's batches by restricting
+     * their active rows, following the same rules as {@link #getNextTuple}.
+     */
+    @Override
+    public TupleBatch getNextBatch() {
+        if (!supportsBatches())
+            return super.getNextBatch();
+
+        while (limit != 0) {
+            TupleBatch batch = leftChild.getNextBatch();
+            if (batch == null)
+                return null;
+
+            int size = batch.size();
+            int skip = Math.min(offset, size);
+            offset -= skip;
+
+            // A negative limit means there is no limit.
+            int take = size - skip;
+            if (limit > 0) {
+                take = Math.min(take, limit);
+                limit -= take;
+            }
+
+            if (take == 0)
+                continue;
+
+            if (take < size)
+                batch.restrict(skip, take);
+
+            return batch;
+        }
+
+        return null;
+    }
+
     @Override
     public void markCurrentPosition() throws UnsupportedOperationException {
         leftChild.markCurrentPosition();
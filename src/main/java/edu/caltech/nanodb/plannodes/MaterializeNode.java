@@ -1,12 +1,12 @@
 package edu.caltech.nanodb.plannodes;
 
 
-import java.util.ArrayList;
 import java.util.List;
 
 import edu.caltech.nanodb.expressions.OrderByExpression;
-import edu.caltech.nanodb.expressions.TupleLiteral;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.RowBuffer;
 
 
 /**
@@ -14,25 +14,29 @@ import edu.caltech.nanodb.relations.Tuple;
  * This plan-node materializes the results of a child plan-node in memory.
  * The tuples of the child plan-node are fetched on-demand (not all at once
  * at the start of plan-node execution), and are cached within this plan-node.
- * If the child plan produces disk-backed tuples, this plan-node caches a copy
- * of the tuple so that the disk-backed tuple can be unpinned.
  * </p>
  * <p>
- * Note that a more typical implementation of a "materialize" node would have
- * a maximum in-memory footprint, and would store tuples to a temporary disk
- * file when this maximum memory size is reached.  However, the memory
- * allocation for in-memory tuples is not managed by the Buffer Manager, so it
- * really isn't possible for the materialize node to provide this kind of
- * functionality.
+ * The tuples are cached in a {@link RowBuffer}, which packs them in the
+ * same format as table pages, so disk-backed tuples from the child can be
+ * unpinned once they have been copied.  If the cached tuples use more than
+ * the node's memory limit, the row buffer spills the oldest of them to a
+ * temporary file.
  * </p>
  */
 public class MaterializeNode extends PlanNode {
 
     /**
-     * This collection holds the tuples that have been generated by the child
+     * This buffer holds the tuples that have been generated by the child
      * plan so far.
      */
-    private ArrayList<Tuple> tuples;
+    private RowBuffer tuples;
+
+
+    /**
+     * The maximum number of bytes of memory the cached tuples may use before
+     * they are spilled to disk.
+     */
+    private long memoryLimit;
 
 
     /**
@@ -56,7 +60,20 @@ public class MaterializeNode extends PlanNode {
 
 
     public MaterializeNode(PlanNode leftChild) {
+        this(leftChild, ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
+    }
+
+
+    /**
+     * Creates a materialize node with the specified memory limit.
+     *
+     * @param leftChild the plan-node whose results are materialized
+     * @param memoryLimit the maximum number of bytes of memory the cached
+     *        tuples may use before they are spilled to disk
+     */
+    public MaterializeNode(PlanNode leftChild, long memoryLimit) {
         super(leftChild);
+        this.memoryLimit = memoryLimit;
     }
 
 
@@ -80,7 +97,10 @@ public class MaterializeNode extends PlanNode {
         stats = leftChild.getStats();
         cost = leftChild.getCost();
 
-        tuples = new ArrayList<>();
+        if (tuples != null)
+            tuples.clear();
+
+        tuples = new RowBuffer(schema, memoryLimit);
         currentTupleIndex = -1;
         markedTupleIndex = -1;
         childNodeFinished = false;
@@ -109,15 +129,15 @@ public class MaterializeNode extends PlanNode {
                 // there is one.
                 tup = leftChild.getNextTuple();
                 if (tup != null) {
+                    tuples.add(tup);
+                    currentTupleIndex++;
+
                     if (tup.isDiskBacked()) {
-                        // Make an in-memory version of the tuple we can cache.
-                        Tuple copy = TupleLiteral.fromTuple(tup);
+                        // Hand out the cached copy, so the child's tuple can
+                        // be unpinned.
                         tup.unpin();
-                        tup = copy;
+                        tup = tuples.get(currentTupleIndex);
                     }
-
-                    tuples.add(tup);
-                    currentTupleIndex++;
                 } else {
                     // The child has no more tuples.
                     childNodeFinished = true;
@@ -145,6 +165,9 @@ public class MaterializeNode extends PlanNode {
     public void cleanUp() {
         leftChild.cleanUp();
 
+        if (tuples != null)
+            tuples.clear();
+
         tuples = null;
         currentTupleIndex = -1;
     }
@@ -0,0 +1,69 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class divides a range of a tuple file's pages into fixed-size
+ * "morsels" that are claimed by the workers of a parallel scan.  Workers
+ * claim morsels one at a time as they finish the previous one, so faster
+ * workers simply scan more morsels, and the work stays balanced even when
+ * some pages are much cheaper to scan than others (e.g. because a zone map
+ * lets them be skipped).  This class is thread-safe.
+ */
+class MorselQueue {
+
+    /** The page just past the end of the range being divided up. */
+    private final int endPageNo;
+
+
+    /** The number of pages in each morsel. */
+    private final int pagesPerMorsel;
+
+
+    /** The first page of the next morsel to be claimed. */
+    private final AtomicInteger nextPageNo;
+
+
+    /**
+     * Constructs a morsel queue for the specified range of pages.
+     *
+     * @param startPageNo the first page of the range
+     * @param endPageNo the page just past the end of the range
+     * @param pagesPerMorsel the number of pages in each morsel
+     */
+    MorselQueue(int startPageNo, int endPageNo, int pagesPerMorsel) {
+        if (pagesPerMorsel <= 0)
+            throw new IllegalArgumentException("pagesPerMorsel must be positive");
+
+        this.endPageNo = endPageNo;
+        this.pagesPerMorsel = pagesPerMorsel;
+        nextPageNo = new AtomicInteger(startPageNo);
+    }
+
+
+    /**
+     * Claims the next morsel of pages.
+     *
+     * @return the first page of the claimed morsel, or -1 if every morsel
+     *         has already been claimed
+     */
+    int claim() {
+        int pageNo = nextPageNo.getAndAdd(pagesPerMorsel);
+        return (pageNo < endPageNo) ? pageNo : -1;
+    }
+
+
+    /**
+     * Returns the page just past the end of the morsel that starts at the
+     * specified page.
+     *
+     * @param startPageNo the first page of a morsel returned by
+     *        {@link #claim}
+     * @return the page just past the end of the morsel
+     */
+    int getMorselEnd(int startPageNo) {
+        return Math.min(startPageNo + pagesPerMorsel, endPageNo);
+    }
+}
@@ -1,23 +1,47 @@
 package edu.caltech.nanodb.plannodes;
 
 
+import edu.caltech.nanodb.expressions.CompiledExpression;
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionCompiler;
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
 import edu.caltech.nanodb.queryeval.PlanCost;
 import edu.caltech.nanodb.queryeval.SelectivityEstimator;
 import edu.caltech.nanodb.queryeval.StatisticsUpdater;
 import edu.caltech.nanodb.relations.JoinType;
+import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
+import edu.caltech.nanodb.server.properties.ServerProperties;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 
 /**
+ * <p>
  * This plan node implements a nested-loop join operation, which can support
  * arbitrary join conditions but is also the slowest join implementation.
+ * </p>
+ * <p>
+ * The join is evaluated a block at a time:  up to {@link #getBlockSize}
+ * rows of the outer (left) input are buffered, and then each row of the
+ * inner (right) input is joined against every buffered row, so the inner
+ * input is scanned once per block rather than once per outer row.  A block
+ * size of 1 gives a classic tuple-at-a-time nested-loop join.
+ * </p>
+ * <p>
+ * If the outer input needs more than one block, the inner rows read on the
+ * first pass are also copied into column-wise {@link TupleBatch}es, as long
+ * as they fit within {@link #getInnerCacheLimit} bytes.  If the whole inner
+ * input fits, later passes read the cached batches instead of rescanning
+ * (and re-decoding) the inner input.
+ * </p>
  */
 public class NestedLoopJoinNode extends ThetaJoinNode {
     /**
@@ -26,15 +50,71 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
     private static final Logger logger = LogManager.getLogger(NestedLoopJoinNode.class);
 
 
+    /** The number of outer rows buffered in each block. */
+    private int blockSize = ServerProperties.DEFAULT_JOIN_BLOCK_SIZE;
+
+
     /**
-     * Most recently retrieved tuple of the left relation.
+     * The maximum number of bytes of memory the cached inner rows may use,
+     * or 0 if the inner rows are never cached.
      */
-    private Tuple leftTuple;
+    private long innerCacheLimit = ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT;
+
+
+    /** The block of outer rows currently being joined. */
+    private ArrayList<Tuple> outerBlock;
+
+
+    /**
+     * The position in {@link #outerBlock} of the next outer row to join with
+     * the current inner row.
+     */
+    private int outerIndex;
+
+
+    /**
+     * The current inner row, or {@code null} if the next inner row must be
+     * fetched.
+     */
+    private Tuple innerTuple;
+
+
+    /**
+     * True while the current inner row came from the inner child, rather
+     * than from the cache, so it must be unpinned when we are done with it.
+     */
+    private boolean innerFromChild;
+
+
+    /** True once the first pass over the inner input has been started. */
+    private boolean innerStarted;
+
 
     /**
-     * Most recently retrieved tuple of the right relation.
+     * The inner rows cached so far, or {@code null} if the inner rows aren't
+     * being cached.
      */
-    private Tuple rightTuple;
+    private ArrayList<TupleBatch> innerCache;
+
+
+    /** The estimated number of bytes used by the full batches of the cache. */
+    private long innerCacheBytes;
+
+
+    /** True once every inner row is in {@link #innerCache}. */
+    private boolean innerCacheComplete;
+
+
+    /** The index of the cached batch being read. */
+    private int cacheBatchIndex;
+
+
+    /** The position of the next row to read from the cached batch. */
+    private int cacheRowIndex;
+
+
+    /** A view presenting the rows of the cached batch being read. */
+    private TupleBatch.Row cacheRow;
 
 
     /**
@@ -42,6 +122,21 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
      */
     private boolean done;
 
+
+    /** The number of pairs of rows that the predicate has been applied to. */
+    private long pairsTested;
+
+
+    /** The number of pairs of rows that have satisfied the predicate. */
+    private long pairsMatched;
+
+
+    /**
+     * The selectivity of the predicate that the node's cost was estimated
+     * with, or -1 if it hasn't been estimated.
+     */
+    private float estimatedSelectivity = -1;
+
     /**
      * For outer join, if two tuples do not match, return the corresponding
      * tuple with nullTuple. For LEFT OUTER, FULL OUTER, CROSS.
@@ -55,6 +150,13 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
     private Tuple rightNullTuple;
 
 
+    /**
+     * The compiled form of the join predicate, or {@code null} if the
+     * predicate hasn't been compiled.
+     */
+    private CompiledExpression compiledPredicate;
+
+
     public NestedLoopJoinNode(PlanNode leftChild, PlanNode rightChild,
                               JoinType joinType, Expression predicate) {
 
@@ -62,6 +164,56 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
     }
 
 
+    /**
+     * Returns the number of outer rows that are buffered in each block.
+     *
+     * @return the number of outer rows that are buffered in each block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Sets the number of outer rows that are buffered in each block.
+     *
+     * @param blockSize the number of outer rows to buffer, at least 1
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("blockSize must be at least 1");
+
+        this.blockSize = blockSize;
+    }
+
+
+    /**
+     * Returns the maximum number of bytes of memory that cached inner rows
+     * may use.
+     *
+     * @return the maximum number of bytes that cached inner rows may use, or
+     *         0 if inner rows are never cached
+     */
+    public long getInnerCacheLimit() {
+        return innerCacheLimit;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes of memory that cached inner rows may
+     * use.
+     *
+     * @param innerCacheLimit the maximum number of bytes, or 0 to never cache
+     *        inner rows
+     */
+    public void setInnerCacheLimit(long innerCacheLimit) {
+        if (innerCacheLimit < 0)
+            throw new IllegalArgumentException("innerCacheLimit cannot be negative");
+
+        this.innerCacheLimit = innerCacheLimit;
+    }
+
+
     /**
      * Checks if the argument is a plan node tree with the same structure, but not
      * necessarily the same references.
@@ -134,6 +286,14 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
         else
             node.predicate = null;
 
+        node.compiledPredicate = null;
+
+        // The copy has its own buffered and cached rows.
+        node.outerBlock = null;
+        node.innerTuple = null;
+        node.innerCache = null;
+        node.cacheRow = null;
+
         return node;
     }
 
@@ -150,10 +310,11 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
 
 
     /**
-     * True if the node supports position marking.
+     * The node doesn't support position marking, since it buffers blocks of
+     * outer rows.
      **/
     public boolean supportsMarking() {
-        return leftChild.supportsMarking() && rightChild.supportsMarking();
+        return false;
     }
 
 
@@ -194,13 +355,29 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
         var rcost = rightChild.getCost();
         // Inherit both left and right cost (Inner Join)
         var tupleSize = lcost.tupleSize + rcost.tupleSize;
-        var numBlockIOs = lcost.numBlockIOs + rcost.numBlockIOs;
-        var numLargeSeeks = lcost.numLargeSeeks + rcost.numLargeSeeks;
         var numTuples = lcost.numTuples * rcost.numTuples;
-        var cpuCost = lcost.cpuCost + rcost.cpuCost +
-            lcost.numTuples + lcost.numTuples * rcost.numTuples;
+
+        // The inner input is read once per block of outer rows.  If it fits
+        // in the cache, only the first pass reads the inner child; the other
+        // passes just step through the cached rows.
+        float numPasses = Math.max(1, (float) Math.ceil(lcost.numTuples / blockSize));
+        var cpuCost = lcost.cpuCost + lcost.numTuples +
+            lcost.numTuples * rcost.numTuples;
+        var numBlockIOs = lcost.numBlockIOs;
+        var numLargeSeeks = lcost.numLargeSeeks;
+        if (numPasses > 1 && rcost.numTuples * rcost.tupleSize <= innerCacheLimit) {
+            cpuCost += rcost.cpuCost + (numPasses - 1) * rcost.numTuples;
+            numBlockIOs += rcost.numBlockIOs;
+            numLargeSeeks += rcost.numLargeSeeks;
+        } else {
+            cpuCost += numPasses * rcost.cpuCost;
+            numBlockIOs += (long) (numPasses * rcost.numBlockIOs);
+            numLargeSeeks += (long) (numPasses * rcost.numLargeSeeks);
+        }
+
         if (predicate != null) {
-            numTuples *= SelectivityEstimator.estimateSelectivity(predicate, schema, stats);
+            estimatedSelectivity = SelectivityEstimator.estimateSelectivity(predicate, schema, stats);
+            numTuples *= estimatedSelectivity;
         }
         switch (joinType) {
             // upper bound
@@ -214,7 +391,7 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
                 numTuples += lcost.numTuples + rcost.numTuples;
                 break;
         }
-        cost = new PlanCost(numTuples, tupleSize, cpuCost, numBlockIOs, numBlockIOs);
+        cost = new PlanCost(numTuples, tupleSize, cpuCost, numBlockIOs, numLargeSeeks);
 
         // Update the statistics based on the predicate.
         if (predicate != null) {
@@ -226,9 +403,19 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
     public void initialize() {
         super.initialize();
 
+        // The inner rows may depend on an enclosing query's current row, so
+        // nothing cached by a previous run can be reused.
+        releaseInnerTuple();
+        outerBlock = new ArrayList<>();
+        outerIndex = 0;
+        innerStarted = false;
+        innerCache = null;
+        innerCacheBytes = 0;
+        innerCacheComplete = false;
+        cacheRow = null;
         done = false;
-        leftTuple = leftChild.getNextTuple();
-        rightTuple = null;
+        pairsTested = 0;
+        pairsMatched = 0;
     }
 
 
@@ -241,45 +428,212 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
         if (done)
             return null;
 
-        while (getTuplesToJoin()) {
-            if (canJoinTuples())
-                return joinTuples(leftTuple, rightTuple);
+        while (true) {
+            if (innerTuple == null) {
+                if (outerBlock.isEmpty() || !nextInnerTuple()) {
+                    // The block has been joined with every inner row.
+                    if (!nextOuterBlock()) {
+                        done = true;
+                        recordFeedback();
+                        return null;
+                    }
 
-            else if (joinType == JoinType.LEFT_OUTER ||
-                (joinType == JoinType.FULL_OUTER && leftTuple == null))
-                return joinTuples(leftTuple, rightNullTuple);
+                    continue;
+                }
+
+                outerIndex = 0;
+            }
+
+            while (outerIndex < outerBlock.size()) {
+                Tuple leftTuple = outerBlock.get(outerIndex++);
+                Tuple result = joinPair(leftTuple, innerTuple);
+                if (result != null)
+                    return result;
+            }
 
-            else if (joinType == JoinType.RIGHT_OUTER ||
-                (joinType == JoinType.FULL_OUTER && rightTuple == null))
-                return joinTuples(leftNullTuple, rightTuple);
+            releaseInnerTuple();
         }
+    }
+
+
+    /**
+     * Computes the result of joining one outer row with one inner row.
+     *
+     * @return the joined tuple, or {@code null} if the pair produces no
+     *         result
+     */
+    private Tuple joinPair(Tuple leftTuple, Tuple rightTuple) {
+        if (canJoinTuples(leftTuple, rightTuple))
+            return joinTuples(leftTuple, rightTuple);
+
+        if (joinType == JoinType.LEFT_OUTER)
+            return joinTuples(leftTuple, rightNullTuple);
+
+        if (joinType == JoinType.RIGHT_OUTER)
+            return joinTuples(leftNullTuple, rightTuple);
 
         return null;
     }
 
 
     /**
-     * This helper function implements the logic that sets {@link #leftTuple}
-     * and {@link #rightTuple} based on the nested-loops logic, return every
-     * <b>possible</b> pair.
+     * Replaces the block of outer rows with the next block, and starts a
+     * new pass over the inner rows.
      *
-     * @return {@code true} if another pair of tuples was found to join, or
-     * {@code false} if no more pairs of tuples are available to join.
+     * @return {@code true} if there is another block of outer rows, or
+     *         {@code false} if the outer input is exhausted
      */
-    private boolean getTuplesToJoin() {
-        if (leftTuple != null) {
-            while ((rightTuple = rightChild.getNextTuple()) == null && leftTuple != null) {
-                leftTuple = leftChild.getNextTuple();
-                rightChild.initialize();
+    private boolean nextOuterBlock() {
+        outerBlock.clear();
+        while (outerBlock.size() < blockSize) {
+            Tuple tup = leftChild.getNextTuple();
+            if (tup == null)
+                break;
+
+            if (tup.isDiskBacked()) {
+                Tuple copy = TupleLiteral.fromTuple(tup);
+                tup.unpin();
+                tup = copy;
             }
-            return leftTuple != null;
+
+            outerBlock.add(tup);
         }
-        done = true;
-        return false;
+
+        if (outerBlock.isEmpty())
+            return false;
+
+        if (!innerStarted) {
+            // The inner child was initialized along with this node.  Only
+            // cache its rows if there will be another pass over them.
+            innerStarted = true;
+            if (outerBlock.size() == blockSize && innerCacheLimit > 0)
+                innerCache = new ArrayList<>();
+        } else if (innerCacheComplete) {
+            cacheBatchIndex = 0;
+            cacheRowIndex = 0;
+        } else {
+            rightChild.initialize();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Sets {@link #innerTuple} to the next inner row of the current pass,
+     * reading from the cache if it holds every inner row.
+     *
+     * @return {@code true} if there is another inner row, or {@code false}
+     *         if the pass is finished
+     */
+    private boolean nextInnerTuple() {
+        if (innerCacheComplete) {
+            while (cacheBatchIndex < innerCache.size()) {
+                TupleBatch batch = innerCache.get(cacheBatchIndex);
+                if (cacheRowIndex == 0)
+                    cacheRow = batch.getRowView();
+
+                if (cacheRowIndex < batch.size()) {
+                    cacheRow.setRow(cacheRowIndex++);
+                    innerTuple = cacheRow;
+                    innerFromChild = false;
+                    return true;
+                }
+
+                cacheBatchIndex++;
+                cacheRowIndex = 0;
+            }
+
+            return false;
+        }
+
+        Tuple tup = rightChild.getNextTuple();
+        if (tup == null) {
+            if (innerCache != null) {
+                // The first pass is done, and every inner row was cached.
+                if (!innerCache.isEmpty()) {
+                    TupleBatch last = innerCache.get(innerCache.size() - 1);
+                    innerCacheBytes += last.getMemoryUsage();
+                }
+
+                if (innerCacheBytes <= innerCacheLimit) {
+                    innerCacheComplete = true;
+                    logger.debug(String.format("Cached %d batches of inner " +
+                        "rows using about %d bytes", innerCache.size(),
+                        innerCacheBytes));
+                } else {
+                    innerCache = null;
+                }
+            }
+
+            return false;
+        }
+
+        if (innerCache != null)
+            cacheInnerTuple(tup);
+
+        innerTuple = tup;
+        innerFromChild = true;
+        return true;
+    }
+
+
+    /**
+     * Copies an inner row into the cache, or gives up on caching if the
+     * cache would use too much memory.
+     */
+    private void cacheInnerTuple(Tuple tup) {
+        TupleBatch batch = innerCache.isEmpty() ? null :
+            innerCache.get(innerCache.size() - 1);
+
+        if (batch == null || batch.isFull()) {
+            if (batch != null) {
+                innerCacheBytes += batch.getMemoryUsage();
+                if (innerCacheBytes > innerCacheLimit) {
+                    logger.debug("Inner rows don't fit in " + innerCacheLimit +
+                        " bytes; rescanning the inner input instead");
+                    innerCache = null;
+                    return;
+                }
+            }
+
+            batch = new TupleBatch(rightSchema);
+            innerCache.add(batch);
+        }
+
+        batch.addTuple(tup);
+    }
+
+
+    /** Unpins the current inner row if necessary, and forgets it. */
+    private void releaseInnerTuple() {
+        if (innerTuple != null && innerFromChild)
+            innerTuple.unpin();
+
+        innerTuple = null;
     }
 
 
-    private boolean canJoinTuples() {
+    /**
+     * Binds the join predicate against the schemas of the left and right
+     * tuples, in the order that {@link #canJoinTuples} adds them to the
+     * environment.
+     */
+    @Override
+    public void bindExpressions() {
+        super.bindExpressions();
+
+        compiledPredicate = null;
+        if (predicate != null) {
+            environment.bind(new Schema[] {leftSchema, rightSchema},
+                List.of(predicate));
+            compiledPredicate = ExpressionCompiler.compile(predicate,
+                new Schema(leftSchema, rightSchema));
+        }
+    }
+
+
+    private boolean canJoinTuples(Tuple leftTuple, Tuple rightTuple) {
         // If the predicate was not set, we can always join them!
         if (predicate == null)
             return true;
@@ -288,26 +642,45 @@ public class NestedLoopJoinNode extends ThetaJoinNode {
         environment.addTuple(leftSchema, leftTuple);
         environment.addTuple(rightSchema, rightTuple);
 
-        return predicate.evaluatePredicate(environment);
-    }
+        boolean matched;
+        if (compiledPredicate != null)
+            matched = compiledPredicate.evaluatePredicate(environment);
+        else
+            matched = predicate.evaluatePredicate(environment);
 
+        pairsTested++;
+        if (matched)
+            pairsMatched++;
 
-    public void markCurrentPosition() {
-        leftChild.markCurrentPosition();
-        rightChild.markCurrentPosition();
+        return matched;
     }
 
 
-    public void resetToLastMark() throws IllegalStateException {
-        leftChild.resetToLastMark();
-        rightChild.resetToLastMark();
+    /**
+     * Records the selectivity of the join predicate once every pair of rows
+     * has been tested, so that later plans joining the same tables on the
+     * same predicate can use it.  Every pair of rows is tested, so the
+     * selectivity is the fraction of the pairs that matched.
+     */
+    private void recordFeedback() {
+        if (predicate == null)
+            return;
+
+        HashSet<String> tables = new HashSet<>();
+        if (!PlanUtils.collectBaseTables(this, tables))
+            return;
 
-        // TODO:  Prepare to reevaluate the join operation for the tuples.
-        //        (Just haven't gotten around to implementing this.)
+        CardinalityFeedback.record(predicate, schema, tables, pairsMatched,
+            pairsTested, estimatedSelectivity);
     }
 
 
     public void cleanUp() {
+        releaseInnerTuple();
+        outerBlock = null;
+        innerCache = null;
+        cacheRow = null;
+
         leftChild.cleanUp();
         rightChild.cleanUp();
     }
@@ -16,6 +16,7 @@ import edu.caltech.nanodb.queryeval.PlanCost;
 
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
 
 
 /**
@@ -55,6 +56,20 @@ import edu.caltech.nanodb.relations.Tuple;
  *     this mark should cause the next call to {@link #getNextTuple} to return
  *     {@code null}.</li>
  * </ul>
+ *
+ * <h2>Batches</h2>
+ * <p>
+ * Besides producing one tuple at a time with {@link #getNextTuple}, plan
+ * nodes can produce a {@link TupleBatch} of many tuples at a time with
+ * {@link #getNextBatch}, which lets operators process the values of a column
+ * in tight loops, and avoids a chain of calls through the plan for every
+ * tuple.  Every plan node can produce batches, since the default
+ * implementation of {@link #getNextBatch} simply collects tuples from
+ * {@link #getNextTuple}; plan nodes that report {@link #supportsBatches}
+ * implement batches directly, usually by processing batches from their
+ * children.  A given execution of a plan must use either tuples or batches
+ * from a plan node, not both, and marking is not supported for batches.
+ * </p>
  */
 public abstract class PlanNode implements Cloneable {
 
@@ -108,6 +123,13 @@ public abstract class PlanNode implements Cloneable {
     protected Environment environment = new Environment();
 
 
+    /**
+     * The batch that the default implementation of {@link #getNextBatch}
+     * collects tuples into, reused across calls.
+     */
+    private TupleBatch rowBatch;
+
+
     /**
      * Constructs a PlanNode with no child nodes.
      */
@@ -307,6 +329,26 @@ public abstract class PlanNode implements Cloneable {
     }
 
 
+    /**
+     * Binds the column references in the expressions of the entire plan tree
+     * rooted at this node to slots in the nodes' environments, so that they
+     * can be evaluated without resolving column names for every tuple.  This
+     * must be called after {@link #prepare}, since binding uses the schemas
+     * that are computed when the plan is prepared.  Plan nodes that evaluate
+     * expressions should extend this method to bind them, and must be sure to
+     * call their parent class' implementation as well.
+     *
+     * @see Environment#bind
+     */
+    public void bindExpressions() {
+        if (leftChild != null)
+            leftChild.bindExpressions();
+
+        if (rightChild != null)
+            rightChild.bindExpressions();
+    }
+
+
     /**
      * Does any initialization the node might need, including setting up the
      * node's execution environment.  Subclasses of {@code PlanNode} can
@@ -332,6 +374,57 @@ public abstract class PlanNode implements Cloneable {
         throws IllegalStateException;
 
 
+    /**
+     * Reports whether this plan node produces batches of tuples natively,
+     * rather than by collecting the tuples produced by {@link #getNextTuple}.
+     * Plan nodes that process batches from their children generally only
+     * report this if their children do as well, so a plan that reports this
+     * can be evaluated one batch at a time from its leaves.
+     *
+     * @return true if the node produces batches natively, false otherwise
+     */
+    public boolean supportsBatches() {
+        return false;
+    }
+
+
+    /**
+     * Gets the next batch of tuples produced by this plan node.  The default
+     * implementation collects up to {@link TupleBatch#DEFAULT_CAPACITY} tuples
+     * from {@link #getNextTuple}, copying them into the batch so that they
+     * can be unpinned.  Batches are never empty.  The batch returned is only
+     * valid until the next call to this method.
+     *
+     * @return the next batch of tuples, or {@code null} if the plan has
+     *         finished generating tuples
+     * @throws IllegalStateException if a plan node is not properly initialized
+     */
+    public TupleBatch getNextBatch() {
+        Tuple tuple = getNextTuple();
+        if (tuple == null)
+            return null;
+
+        if (rowBatch == null)
+            rowBatch = new TupleBatch(schema);
+        else
+            rowBatch.clear();
+
+        while (true) {
+            rowBatch.addTuple(tuple);
+            tuple.unpin();
+
+            if (rowBatch.isFull())
+                break;
+
+            tuple = getNextTuple();
+            if (tuple == null)
+                break;
+        }
+
+        return rowBatch;
+    }
+
+
     /**
      * Marks the current tuple in the tuple-stream produced by this node.  The
      * {@link #resetToLastMark} method can be used to return to this tuple.
@@ -362,6 +455,19 @@ public abstract class PlanNode implements Cloneable {
     }
 
 
+    /**
+     * Reports whether this node's children may be wrapped in
+     * {@link InstrumentNode}s to measure them.  Nodes that depend on the
+     * concrete types of their children, or that run copies of their children
+     * on other threads, should override this to return false.
+     *
+     * @return true if this node's children may be instrumented
+     */
+    public boolean allowsInstrumentedChildren() {
+        return true;
+    }
+
+
     /**
      * Perform any necessary clean up tasks. This should probably be called
      * when we are done with this plan node.
@@ -507,6 +613,7 @@ public abstract class PlanNode implements Cloneable {
 
         // Environment is used for execution.
         node.environment = new Environment();
+        node.rowBatch = null;
 
         // Copy the children if applicable.
         if (this.leftChild != null)
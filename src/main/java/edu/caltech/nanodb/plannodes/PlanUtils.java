@@ -3,13 +3,17 @@ package edu.caltech.nanodb.plannodes;
 
 import edu.caltech.nanodb.expressions.BooleanOperator;
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionProcessor;
 import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.SubqueryOperator;
 import edu.caltech.nanodb.functions.AggregateFunction;
 import edu.caltech.nanodb.queryast.FromClause;
+import edu.caltech.nanodb.queryast.SelectValue;
 import edu.caltech.nanodb.queryeval.InvalidSQLException;
 import edu.caltech.nanodb.queryeval.SimplePlanner;
 import edu.caltech.nanodb.storage.StorageManager;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -92,4 +96,164 @@ public class PlanUtils {
 
         return plan;
     }
+
+
+    /**
+     * This helper function specifies the columns that may be read from every
+     * table file-scan in a query plan, so that the scans don't decode columns
+     * that the query never uses.  The caller must ensure that every file-scan
+     * in the plan belongs to the query that the column names were computed
+     * from.
+     *
+     * @param plan        the plan whose file-scans should be restricted
+     * @param columnNames the names of all columns that the query may read
+     *
+     * @see FileScanNode#setProjectedColumns
+     */
+    public static void projectFileScans(PlanNode plan,
+                                        Collection<String> columnNames) {
+        if (plan == null)
+            return;
+
+        if (plan instanceof FileScanNode)
+            ((FileScanNode) plan).setProjectedColumns(columnNames);
+
+        projectFileScans(plan.leftChild, columnNames);
+        projectFileScans(plan.rightChild, columnNames);
+    }
+
+
+    /**
+     * This helper function runs the table file-scans that are evaluated only
+     * once per execution of a plan in parallel, by putting a
+     * {@link GatherNode} above each of them.  These are the scans reached
+     * from the top of the plan by following the outer (left) inputs of
+     * nested-loop joins; the inner inputs of joins are rescanned many times,
+     * so starting workers for them would cost more than it saves.  A scan is
+     * only run in parallel if its table has at least the specified number of
+     * pages, and if its predicate doesn't contain subqueries (which are
+     * evaluated against the environment of the plan that contains them).
+     *
+     * @param plan        the plan whose file-scans should be run in parallel
+     * @param parallelism the number of workers to run each scan on
+     * @param minPages    the minimum number of pages in a table for scans of
+     *                    the table to be run in parallel
+     * @return the (possibly new) top plan-node for the plan
+     */
+    public static PlanNode addGatherNodes(PlanNode plan, int parallelism,
+                                          int minPages) {
+        if (plan == null || parallelism <= 1)
+            return plan;
+
+        if (plan instanceof FileScanNode) {
+            FileScanNode scan = (FileScanNode) plan;
+            if (scan.supportsParallelScan() &&
+                scan.getTupleFile().getDBFile().getNumPages() >= minPages &&
+                !containsSubquery(scan.predicate)) {
+                plan = new GatherNode(scan, parallelism);
+            }
+        } else if (plan instanceof NestedLoopJoinNode ||
+                   plan instanceof AdaptiveJoinNode ||
+                   plan instanceof RenameNode) {
+            plan.leftChild = addGatherNodes(plan.leftChild, parallelism,
+                minPages);
+        }
+
+        return plan;
+    }
+
+
+    /**
+     * This helper function adds a projection to a plan.  If the plan is a
+     * {@link GatherNode}, the projection is evaluated by the gather node's
+     * workers; otherwise a new {@link ProjectNode} is added above the plan.
+     * The projection must not contain subqueries.
+     *
+     * @param plan         the plan to add the projection to
+     * @param selectValues the values to project
+     * @return the (possibly new) top plan-node for the plan with the
+     *         projection applied
+     */
+    public static PlanNode addProjectToPlan(PlanNode plan,
+                                            List<SelectValue> selectValues) {
+        if (plan instanceof GatherNode) {
+            plan.leftChild = new ProjectNode(plan.leftChild, selectValues);
+            return plan;
+        }
+
+        return new ProjectNode(plan, selectValues);
+    }
+
+
+    /**
+     * This helper function makes every {@link GatherNode} in a plan run its
+     * child plan on the calling thread.  This is necessary when the tuples
+     * produced by the plan are used to modify tables, since workers must not
+     * read pages while they are being modified.
+     *
+     * @param plan the plan whose gather nodes should run serially
+     */
+    public static void disableParallelism(PlanNode plan) {
+        if (plan == null)
+            return;
+
+        if (plan instanceof GatherNode)
+            ((GatherNode) plan).setParallelism(1);
+
+        disableParallelism(plan.leftChild);
+        disableParallelism(plan.rightChild);
+    }
+
+
+    /**
+     * This helper function adds the names of the tables that a plan reads to
+     * a collection, so that the plan's results can be related to changes in
+     * the tables.
+     *
+     * @param plan   the plan whose tables should be collected
+     * @param tables the collection to add the table names to
+     * @return true if all of the plan's rows come from tables, or false if
+     *         some come from elsewhere, e.g. from a table function
+     */
+    public static boolean collectBaseTables(PlanNode plan,
+                                            Collection<String> tables) {
+        if (plan == null)
+            return true;
+
+        if (plan instanceof FileScanNode) {
+            tables.add(((FileScanNode) plan).getTableName());
+            return true;
+        } else if (plan instanceof IndexScanNode) {
+            tables.add(((IndexScanNode) plan).getTableName());
+            return true;
+        } else if (plan instanceof TableFunctionScanNode ||
+                   plan instanceof TupleBagNode) {
+            return false;
+        }
+
+        return collectBaseTables(plan.leftChild, tables) &&
+            collectBaseTables(plan.rightChild, tables);
+    }
+
+
+    /**
+     * Returns true if the specified expression contains a subquery.
+     */
+    private static boolean containsSubquery(Expression expr) {
+        if (expr == null)
+            return false;
+
+        boolean[] found = {false};
+        expr.traverse(new ExpressionProcessor() {
+            public void enter(Expression node) {
+                if (node instanceof SubqueryOperator)
+                    found[0] = true;
+            }
+
+            public Expression leave(Expression node) {
+                return node;
+            }
+        });
+        return found[0];
+    }
 }
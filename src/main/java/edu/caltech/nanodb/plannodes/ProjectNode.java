@@ -7,8 +7,11 @@ import edu.caltech.nanodb.queryeval.ColumnStats;
 import edu.caltech.nanodb.queryeval.ExpressionCostCalculator;
 import edu.caltech.nanodb.queryeval.PlanCost;
 import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnVector;
 import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -70,6 +73,39 @@ public class ProjectNode extends PlanNode {
     private List<ColumnInfo> nonWildcardColumnInfos;
 
 
+    /**
+     * The compiled forms of the projection's expressions, parallel to
+     * {@link #projectionSpec}, or {@code null} if they haven't been compiled.
+     * Entries for wildcards and for expressions the compiler can't speed up
+     * are {@code null}.
+     */
+    private CompiledExpression[] compiledValues;
+
+
+    /**
+     * When producing batches, the index of the input column that each output
+     * column is taken from, or -1 if the output column is computed from an
+     * expression.  This is {@code null} until the first batch is projected.
+     */
+    private int[] batchSourceColumns;
+
+
+    /**
+     * When producing batches, the index into {@link #projectionSpec} of the
+     * expression that computes each output column, or -1 if the output column
+     * is taken from an input column.
+     */
+    private int[] batchExpressions;
+
+
+    /**
+     * When producing batches, the vectors that computed output columns are
+     * stored in; entries for output columns taken from input columns are
+     * {@code null}.
+     */
+    private ColumnVector[] batchVectors;
+
+
     /**
      * Current tuple the node is projecting (in NON-projected form).
      */
@@ -145,6 +181,11 @@ public class ProjectNode extends PlanNode {
 
 
     public void prepare() {
+        // The schemas may change, so work out batch projections again.
+        batchSourceColumns = null;
+        batchExpressions = null;
+        batchVectors = null;
+
         if (leftChild != null) {
             // Need to prepare the left child-node before we can do our own
             // work.
@@ -291,12 +332,91 @@ public class ProjectNode extends PlanNode {
 
 
     /**
-     * Determines whether the results of the node are sorted.
+     * Determines whether the results of the node are sorted.  If the subplan
+     * is ordered, the results are ordered by the longest prefix of the
+     * subplan's ordering whose expressions are all projected, expressed in
+     * terms of this node's output columns.
      */
     public List<OrderByExpression> resultsOrderedBy() {
-        // TODO:  if subplan is ordered and projected results include the same
-        //        columns, then this node's results are also ordered.
-        return null;
+        if (leftChild == null || schema == null)
+            return null;
+
+        List<OrderByExpression> childOrder = leftChild.resultsOrderedBy();
+        if (childOrder == null)
+            return null;
+
+        ArrayList<OrderByExpression> order = new ArrayList<>();
+        for (OrderByExpression orderExpr : childOrder) {
+            int colIndex = findProjectedColumn(orderExpr.getExpression());
+            if (colIndex == -1)
+                break;
+
+            ColumnInfo colInfo = schema.getColumnInfo(colIndex);
+            ColumnValue colValue = new ColumnValue(
+                new ColumnName(colInfo.getTableName(), colInfo.getName()));
+            order.add(new OrderByExpression(colValue, orderExpr.isAscending()));
+        }
+
+        return order.isEmpty() ? null : order;
+    }
+
+
+    /**
+     * Finds the output column that holds the value of an expression over
+     * the input schema, either because the expression is projected as-is,
+     * or because it is a column reference and the column is projected.
+     *
+     * @param expr the expression to look for
+     * @return the index of the output column holding the expression's value,
+     *         or -1 if the expression isn't projected
+     */
+    private int findProjectedColumn(Expression expr) {
+        int inputIndex = -1;
+        if (expr instanceof ColumnValue) {
+            try {
+                inputIndex = inputSchema.getColumnIndex(
+                    ((ColumnValue) expr).getColumnName());
+            } catch (SchemaNameException e) {
+                return -1;
+            }
+        }
+
+        int outputIndex = 0;
+        for (SelectValue selVal : projectionSpec) {
+            if (selVal.isWildcard()) {
+                ColumnName wildcard = selVal.getWildcard();
+                if (wildcard.isTableSpecified()) {
+                    SortedMap<Integer, ColumnInfo> found =
+                        inputSchema.findColumns(wildcard);
+
+                    for (Integer idx : found.keySet()) {
+                        if (idx == inputIndex)
+                            return outputIndex;
+
+                        outputIndex++;
+                    }
+                } else {
+                    if (inputIndex != -1)
+                        return outputIndex + inputIndex;
+
+                    outputIndex += inputSchema.numColumns();
+                }
+            } else if (selVal.isExpression()) {
+                Expression selExpr = selVal.getExpression();
+                if (selExpr.equals(expr))
+                    return outputIndex;
+
+                if (inputIndex != -1 && selExpr instanceof ColumnValue) {
+                    ColumnName colName = ((ColumnValue) selExpr).getColumnName();
+                    if (inputSchema.getColumnIndex(colName) == inputIndex)
+                        return outputIndex;
+                }
+
+                outputIndex++;
+            }
+        }
+
+        return -1;
     }
 
 
@@ -354,6 +474,175 @@ public class ProjectNode extends PlanNode {
     }
 
 
+    /**
+     * This node produces batches if its subplan does.  Projections without a
+     * subplan produce a single tuple, so they don't use batches.
+     */
+    @Override
+    public boolean supportsBatches() {
+        return leftChild != null && leftChild.supportsBatches();
+    }
+
+
+    /**
+     * Projects the next batch from the subplan.  Output columns that are
+     * simply input columns share the input batch's column vectors, so only
+     * computed columns are evaluated, and only for the input batch's active
+     * rows.
+     */
+    @Override
+    public TupleBatch getNextBatch() {
+        if (!supportsBatches())
+            return super.getNextBatch();
+
+        TupleBatch input = leftChild.getNextBatch();
+        if (input == null || isTrivial())
+            return input;
+
+        if (batchSourceColumns == null)
+            prepareBatchProjection();
+
+        int numRows = input.getNumPhysicalRows();
+        ColumnVector[] columns = new ColumnVector[batchSourceColumns.length];
+        boolean anyComputed = false;
+        for (int i = 0; i < columns.length; i++) {
+            if (batchSourceColumns[i] != -1) {
+                columns[i] = input.getColumn(batchSourceColumns[i]);
+            } else {
+                if (batchVectors[i] == null ||
+                    batchVectors[i].getCapacity() < numRows) {
+                    batchVectors[i] = new ColumnVector(
+                        schema.getColumnInfo(i).getType(),
+                        Math.max(numRows, TupleBatch.DEFAULT_CAPACITY));
+                } else {
+                    batchVectors[i].clear();
+                }
+                columns[i] = batchVectors[i];
+                anyComputed = true;
+            }
+        }
+
+        if (anyComputed) {
+            TupleBatch.Row row = input.getRowView();
+            for (int iRow = 0; iRow < input.size(); iRow++) {
+                int physRow = input.getPhysicalRow(iRow);
+                row.setRow(physRow);
+                environment.clear();
+                environment.addTuple(inputSchema, row);
+
+                for (int i = 0; i < columns.length; i++) {
+                    if (batchExpressions[i] == -1)
+                        continue;
+
+                    int iSelVal = batchExpressions[i];
+                    CompiledExpression compiled = (compiledValues != null) ?
+                        compiledValues[iSelVal] : null;
+                    Object value = (compiled != null) ?
+                        compiled.evaluate(environment) :
+                        projectionSpec.get(iSelVal).getExpression()
+                            .evaluate(environment);
+
+                    columns[i].set(physRow, value);
+                }
+            }
+        }
+
+        return new TupleBatch(schema, columns, numRows, input.getSelection(),
+            input.size());
+    }
+
+
+    /**
+     * Works out which output columns can be taken directly from input
+     * columns when producing batches, and which must be computed.  This
+     * follows the same logic as {@link #projectTuple}.
+     */
+    private void prepareBatchProjection() {
+        ArrayList<Integer> sources = new ArrayList<>();
+        ArrayList<Integer> exprIndexes = new ArrayList<>();
+
+        for (int iSelVal = 0; iSelVal < projectionSpec.size(); iSelVal++) {
+            SelectValue selVal = projectionSpec.get(iSelVal);
+            if (selVal.isWildcard()) {
+                ColumnName wildcard = selVal.getWildcard();
+                if (wildcard.isTableSpecified()) {
+                    for (int iCol : inputSchema.findColumns(wildcard).keySet()) {
+                        sources.add(iCol);
+                        exprIndexes.add(-1);
+                    }
+                } else {
+                    for (int iCol = 0; iCol < inputSchema.numColumns(); iCol++) {
+                        sources.add(iCol);
+                        exprIndexes.add(-1);
+                    }
+                }
+            } else if (selVal.isExpression()) {
+                Expression expr = selVal.getExpression();
+                int colIndex = -1;
+                if (expr instanceof ColumnValue) {
+                    ColumnName colName = ((ColumnValue) expr).getColumnName();
+                    try {
+                        if (!colName.isColumnWildcard())
+                            colIndex = inputSchema.getColumnIndex(colName);
+                    } catch (SchemaNameException e) {
+                        // Let the expression report the problem.
+                    }
+                }
+
+                sources.add(colIndex);
+                exprIndexes.add(colIndex == -1 ? iSelVal : -1);
+            } else {
+                throw new UnsupportedOperationException(
+                    "Batches only support wildcards and expressions");
+            }
+        }
+
+        if (sources.size() != schema.numColumns()) {
+            throw new IllegalStateException(String.format("Projection " +
+                "produces %d columns, but schema has %d columns",
+                sources.size(), schema.numColumns()));
+        }
+
+        batchSourceColumns = new int[sources.size()];
+        batchExpressions = new int[sources.size()];
+        for (int i = 0; i < batchSourceColumns.length; i++) {
+            batchSourceColumns[i] = sources.get(i);
+            batchExpressions[i] = exprIndexes.get(i);
+        }
+        batchVectors = new ColumnVector[batchSourceColumns.length];
+    }
+
+
+    /**
+     * Binds the projection's expressions against the schema of the node's
+     * input tuples.
+     */
+    @Override
+    public void bindExpressions() {
+        super.bindExpressions();
+
+        if (inputSchema == null)
+            return;
+
+        ArrayList<Expression> exprs = new ArrayList<>();
+        for (SelectValue selVal : projectionSpec) {
+            if (selVal.isExpression())
+                exprs.add(selVal.getExpression());
+        }
+
+        environment.bind(new Schema[] {inputSchema}, exprs);
+
+        compiledValues = new CompiledExpression[projectionSpec.size()];
+        for (int i = 0; i < compiledValues.length; i++) {
+            SelectValue selVal = projectionSpec.get(i);
+            if (selVal.isExpression()) {
+                compiledValues[i] = ExpressionCompiler.compile(
+                    selVal.getExpression(), inputSchema);
+            }
+        }
+    }
+
+
     /**
      * This helper method takes an input tuple and projects it to a result tuple
      * based on the project
@@ -381,7 +670,8 @@ public class ProjectNode extends PlanNode {
         Iterator<ColumnInfo> iterNonWildcardCols =
             nonWildcardColumnInfos.iterator();
 
-        for (SelectValue selVal : projectionSpec) {
+        for (int iSelVal = 0; iSelVal < projectionSpec.size(); iSelVal++) {
+            SelectValue selVal = projectionSpec.get(iSelVal);
             if (selVal.isWildcard()) {
                 // This value is a wildcard.  Find the columns that match the
                 // wildcard, then add their values one by one.
@@ -410,7 +700,11 @@ public class ProjectNode extends PlanNode {
 
                 // Get the result of the projection for this value.
 
-                Object result = expr.evaluate(environment);
+                CompiledExpression compiled = (compiledValues != null) ?
+                    compiledValues[iSelVal] : null;
+
+                Object result = (compiled != null) ?
+                    compiled.evaluate(environment) : expr.evaluate(environment);
                 ColumnInfo colInfo = iterNonWildcardCols.next();
 
                 logger.debug(String.format(
@@ -535,6 +829,10 @@ public class ProjectNode extends PlanNode {
             newList.add(newSel);
         }
         node.projectionSpec = newList;
+        node.compiledValues = null;
+        node.batchSourceColumns = null;
+        node.batchExpressions = null;
+        node.batchVectors = null;
 
         return node;
     }
@@ -44,21 +44,30 @@ public class RenameNode extends PlanNode {
 
     @Override
     public List<OrderByExpression> resultsOrderedBy() {
+        List<OrderByExpression> childOrder = leftChild.resultsOrderedBy();
+        if (childOrder == null)
+            return null;
+
         List<OrderByExpression> resultsOrderedBy = new ArrayList<>();
 
         logger.debug("Renaming table name in ORDER BY expression");
 
-        for (OrderByExpression orderByExpr : leftChild.resultsOrderedBy()) {
+        for (OrderByExpression orderByExpr : childOrder) {
+            // Only column references can be renamed.
+            if (!(orderByExpr.getExpression() instanceof ColumnValue))
+                break;
+
             Expression expr = orderByExpr.getExpression().duplicate();
 
             ((ColumnValue) expr).setColumnName(new ColumnName(
                 resultTableName,
                 expr.getColumnInfo(leftChild.getSchema()).getName()));
 
-            resultsOrderedBy.add(new OrderByExpression(expr));
+            resultsOrderedBy.add(
+                new OrderByExpression(expr, orderByExpr.isAscending()));
         }
 
-        return resultsOrderedBy;
+        return resultsOrderedBy.isEmpty() ? null : resultsOrderedBy;
     }
 
     @Override
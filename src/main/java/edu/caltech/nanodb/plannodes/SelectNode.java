@@ -1,9 +1,17 @@
 package edu.caltech.nanodb.plannodes;
 
 
+import java.util.HashSet;
+import java.util.List;
+
+import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
 
+import edu.caltech.nanodb.expressions.CompiledExpression;
 import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionCompiler;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
 
 
 /**
@@ -18,6 +26,28 @@ public abstract class SelectNode extends PlanNode {
     public Expression predicate;
 
 
+    /**
+     * The compiled form of the predicate, or {@code null} if the predicate
+     * hasn't been compiled.
+     */
+    private CompiledExpression compiledPredicate;
+
+
+    /**
+     * The predicate that {@link #compiledPredicate} was compiled from.  Since
+     * {@link #predicate} may be replaced at any time, the compiled predicate
+     * is only used while the two are the same object.
+     */
+    private Expression compiledFrom;
+
+
+    /**
+     * The filter that applies the predicate to batches of tuples, or
+     * {@code null} if it hasn't been created yet.
+     */
+    private BatchFilter batchFilter;
+
+
     /**
      * The current tuple that the node is selecting.
      */
@@ -30,6 +60,22 @@ public abstract class SelectNode extends PlanNode {
     private boolean done;
 
 
+    /** The number of rows that the predicate has been applied to. */
+    private long rowsExamined;
+
+
+    /** The number of rows that have satisfied the predicate. */
+    private long rowsSelected;
+
+
+    /**
+     * The selectivity of the predicate that the node's cost was estimated
+     * with, or -1 if it hasn't been estimated.  This is set by subclasses
+     * when they are prepared.
+     */
+    protected float estimatedSelectivity = -1;
+
+
     /**
      * Constructs a SelectNode that scans a file for tuples.
      *
@@ -61,10 +107,32 @@ public abstract class SelectNode extends PlanNode {
         else
             node.predicate = null;
 
+        node.compiledPredicate = null;
+        node.compiledFrom = null;
+        node.batchFilter = null;
+
         return node;
     }
 
 
+    /**
+     * Binds the predicate against the schema of the tuples being selected,
+     * and compiles it.
+     */
+    @Override
+    public void bindExpressions() {
+        super.bindExpressions();
+
+        compiledPredicate = null;
+        compiledFrom = null;
+        if (predicate != null && schema != null) {
+            environment.bind(new Schema[] {schema}, List.of(predicate));
+            compiledPredicate = ExpressionCompiler.compile(predicate, schema);
+            compiledFrom = predicate;
+        }
+    }
+
+
     /**
      * Do initialization for the select operation. Resets state variables.
      */
@@ -74,6 +142,8 @@ public abstract class SelectNode extends PlanNode {
 
         currentTuple = null;
         done = false;
+        rowsExamined = 0;
+        rowsSelected = 0;
     }
 
 
@@ -108,13 +178,17 @@ public abstract class SelectNode extends PlanNode {
             // so set the done flag and break out of the loop.
             if (currentTuple == null) {
                 done = true;
+                recordFeedback();
                 break;
             }
 
             // If we found a tuple that satisfies the predicate, break out of
-            // the loop!
-            if (isTupleSelected(currentTuple))
+            // the loop!  Count the rows examined and selected as we go.
+            rowsExamined++;
+            if (isTupleSelected(currentTuple)) {
+                rowsSelected++;
                 break;
+            }
         }
 
         // The current tuple now satisfies the predicate, so return it.
@@ -128,6 +202,90 @@ public abstract class SelectNode extends PlanNode {
     protected abstract void advanceCurrentTuple();
 
 
+    /**
+     * Gets the next batch of tuples selected by the predicate.  If this node
+     * doesn't support batches natively, the batch is collected from
+     * {@link #getNextTuple}.
+     *
+     * @return the next batch of selected tuples, or {@code null} if there
+     *         are no more tuples
+     */
+    @Override
+    public TupleBatch getNextBatch() {
+        if (!supportsBatches())
+            return super.getNextBatch();
+
+        if (done)
+            return null;
+
+        while (true) {
+            TupleBatch batch = advanceCurrentBatch();
+            if (batch == null) {
+                done = true;
+                recordFeedback();
+                return null;
+            }
+
+            if (predicate == null)
+                return batch;
+
+            if (batchFilter == null || batchFilter.getPredicate() != predicate)
+                batchFilter = new BatchFilter(predicate, schema, environment);
+
+            rowsExamined += batch.size();
+            int numSelected = batchFilter.filter(batch);
+            rowsSelected += numSelected;
+
+            // Skip batches in which no tuples are selected.
+            if (numSelected > 0)
+                return batch;
+        }
+    }
+
+
+    /**
+     * Helper function that gets the next batch of tuples to apply the
+     * predicate to.  Subclasses that support batches must override this.
+     *
+     * @return the next batch of tuples, or {@code null} if there are no
+     *         more tuples
+     */
+    protected TupleBatch advanceCurrentBatch() {
+        throw new UnsupportedOperationException(
+            "This node doesn't support batches");
+    }
+
+
+    /**
+     * Returns the number of rows that the predicate's observed selectivity
+     * is relative to, or -1 if it shouldn't be recorded.  This is the number
+     * of rows the predicate was applied to, unless the node skipped some
+     * rows without applying the predicate to them.
+     *
+     * @return the number of rows the predicate was applied to, or -1
+     */
+    protected long getFeedbackInputRows() {
+        return rowsExamined;
+    }
+
+
+    /**
+     * Records the selectivity of the predicate once every row has been
+     * examined, so that later plans with the same predicate can use it.
+     */
+    private void recordFeedback() {
+        if (predicate == null)
+            return;
+
+        HashSet<String> tables = new HashSet<>();
+        if (!PlanUtils.collectBaseTables(this, tables))
+            return;
+
+        CardinalityFeedback.record(predicate, schema, tables, rowsSelected,
+            getFeedbackInputRows(), estimatedSelectivity);
+    }
+
+
     protected boolean isTupleSelected(Tuple tuple) {
         // If the predicate was not set, return true.
         if (predicate == null)
@@ -137,6 +295,9 @@ public abstract class SelectNode extends PlanNode {
 
         environment.clear();
         environment.addTuple(schema, tuple);
+        if (compiledPredicate != null && compiledFrom == predicate)
+            return compiledPredicate.evaluatePredicate(environment);
+
         return predicate.evaluatePredicate(environment);
     }
 }
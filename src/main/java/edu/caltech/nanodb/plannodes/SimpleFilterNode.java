@@ -4,6 +4,7 @@ package edu.caltech.nanodb.plannodes;
 import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.queryeval.*;
+import edu.caltech.nanodb.relations.TupleBatch;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -89,6 +90,15 @@ public class SimpleFilterNode extends SelectNode {
     }
 
 
+    /**
+     * This node filters batches if its subplan produces batches.
+     */
+    @Override
+    public boolean supportsBatches() {
+        return leftChild.supportsBatches();
+    }
+
+
     /**
      * The simple filter node doesn't require any marking from either child.
      */
@@ -115,7 +125,7 @@ public class SimpleFilterNode extends SelectNode {
         ArrayList<ColumnStats> childStats = leftChild.getStats();
 
         // Compute the cost of the plan node!
-        var selectivity = SelectivityEstimator.estimateSelectivity(predicate, schema, childStats);
+        estimatedSelectivity = SelectivityEstimator.estimateSelectivity(predicate, schema, childStats);
         cost = new PlanCost(leftChild.getCost());
         // For each row, need to evaluate the predicate once.
         var costCalc = new ExpressionCostCalculator();
@@ -123,7 +133,7 @@ public class SimpleFilterNode extends SelectNode {
         assert costCalc.getCost().cpuCost > 0;
         cost.cpuCost += cost.numTuples * costCalc.getCost().cpuCost; // a filter must walk through all the tuples
 
-        cost.numTuples *= selectivity;
+        cost.numTuples *= estimatedSelectivity;
 
         // Update the statistics based on the predicate.
         stats = StatisticsUpdater.updateStats(predicate, schema, childStats);
@@ -147,6 +157,12 @@ public class SimpleFilterNode extends SelectNode {
     }
 
 
+    @Override
+    protected TupleBatch advanceCurrentBatch() {
+        return leftChild.getNextBatch();
+    }
+
+
     /**
      * The simple filter node relies on marking/reset support in its subplan.
      */
@@ -2,24 +2,36 @@ package edu.caltech.nanodb.plannodes;
 
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.expressions.TupleComparator;
-import edu.caltech.nanodb.expressions.TupleLiteral;
 
 import edu.caltech.nanodb.queryeval.PlanCost;
 
 import edu.caltech.nanodb.relations.Tuple;
 
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+import edu.caltech.nanodb.storage.RowBuffer;
+
 
 /**
- * This plan node provides a simple in-memory sort operation for use in
- * ORDER BY clauses.
+ * <p>
+ * This plan node provides a sort operation for use in ORDER BY clauses.
+ * </p>
+ * <p>
+ * The child's tuples are packed into a {@link RowBuffer}.  If they all fit
+ * within the node's memory limit, they are sorted in memory.  Otherwise,
+ * each time the buffer reaches the limit, its contents are sorted and
+ * written out as a sorted run, and the runs are merged as the results are
+ * produced.  Tuples that compare equal are produced in the order the child
+ * produced them.
+ * </p>
  */
 public class SortNode extends PlanNode {
     /**
@@ -33,10 +45,52 @@ public class SortNode extends PlanNode {
     private List<OrderByExpression> orderByExprs;
 
     /**
-     * This array receives all tuples from the child plan node, and then they
-     * are sorted and passed along to the parent from this array.
+     * A sorted run being merged, and the position of its next tuple.
      */
-    private ArrayList<Tuple> sortedResults;
+    private static class Run {
+        /** The index of the run, used to keep equal tuples in order. */
+        int index;
+
+        /** The sorted tuples of the run. */
+        RowBuffer rows;
+
+        /** The position of {@link #current} in the run. */
+        int position;
+
+        /** The next tuple from the run. */
+        Tuple current;
+    }
+
+
+    /**
+     * The maximum number of bytes of memory the buffered tuples may use
+     * before a sorted run is written to disk.
+     */
+    private long memoryLimit;
+
+    /**
+     * The size of the chunks of the buffered tuples and sorted runs, in
+     * bytes.
+     */
+    private int chunkSize;
+
+    /**
+     * This buffer receives tuples from the child plan node, and then they
+     * are sorted and passed along to the parent from this buffer.
+     */
+    private RowBuffer sortedResults;
+
+    /**
+     * The sorted runs written to disk, or {@code null} if the tuples fit in
+     * memory.
+     */
+    private ArrayList<RowBuffer> runs;
+
+    /**
+     * The runs being merged, ordered by their next tuple, when the tuples
+     * didn't fit in memory.
+     */
+    private PriorityQueue<Run> mergeQueue;
 
     /**
      * The comparator that imposes the ordering specification of the sort node.
@@ -62,6 +116,21 @@ public class SortNode extends PlanNode {
      * @param orderByExprs a specification of how the results should be ordered
      */
     public SortNode(PlanNode subplan, List<OrderByExpression> orderByExprs) {
+        this(subplan, orderByExprs, ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
+    }
+
+
+    /**
+     * Constructs a sort node that sorts its input within the specified
+     * amount of memory, using sorted runs on disk if necessary.
+     *
+     * @param subplan      the subplan that produces the results to sort
+     * @param orderByExprs a specification of how the results should be ordered
+     * @param memoryLimit  the maximum number of bytes of memory the buffered
+     *                     tuples may use
+     */
+    public SortNode(PlanNode subplan, List<OrderByExpression> orderByExprs,
+                    long memoryLimit) {
         super(subplan);
 
         if (orderByExprs == null)
@@ -73,6 +142,7 @@ public class SortNode extends PlanNode {
         }
 
         this.orderByExprs = orderByExprs;
+        this.memoryLimit = memoryLimit;
     }
 
 
@@ -126,6 +196,14 @@ public class SortNode extends PlanNode {
 
             // Sorting in memory is an N*log(N) operation.
             cost.cpuCost += cost.numTuples * (float) Math.log(cost.numTuples);
+
+            // If the tuples don't fit in memory, each is written to a sorted
+            // run and read back once.
+            float size = cost.numTuples * cost.tupleSize;
+            if (size > memoryLimit) {
+                cost.numBlockIOs +=
+                    (long) (2 * size / RowBuffer.DEFAULT_CHUNK_SIZE);
+            }
         } else {
             logger.info(
                 "Child's cost not available; not computing this node's cost.");
@@ -144,7 +222,7 @@ public class SortNode extends PlanNode {
     public void initialize() {
         super.initialize();
 
-        sortedResults = null;
+        clearResults();
         done = false;
 
         leftChild.initialize();
@@ -169,50 +247,122 @@ public class SortNode extends PlanNode {
             prepareSortedResults();
 
         Tuple tup = null;
-        if (currentTupleIndex < sortedResults.size()) {
+        if (mergeQueue != null) {
+            Run run = mergeQueue.poll();
+            if (run != null) {
+                tup = run.current;
+
+                run.position++;
+                if (run.position < run.rows.size()) {
+                    run.current = run.rows.get(run.position);
+                    mergeQueue.add(run);
+                }
+            }
+        } else if (currentTupleIndex < sortedResults.size()) {
             tup = sortedResults.get(currentTupleIndex);
             currentTupleIndex++;
-        } else {
-            done = true;
         }
 
+        if (tup == null)
+            done = true;
+
         return tup;
     }
 
 
     private void prepareSortedResults() {
-        sortedResults = new ArrayList<>();
+        // Small chunks, so that a small memory limit still holds many.
+        chunkSize = (int) Math.max(1024,
+            Math.min(RowBuffer.DEFAULT_CHUNK_SIZE, memoryLimit / 8));
+
+        sortedResults = new RowBuffer(schema, Long.MAX_VALUE, chunkSize);
         while (true) {
-            // Get the next tuple.  If it's not cacheable then make a copy
-            // of it before storing it away.  (This is cheating; we are
-            // allowing the backing data buffers to be reclaimed by storing
-            // the tuple data outside of the Buffer Manager's buffers.)
+            // Get the next tuple.  The buffer stores a copy of it, so a
+            // disk-backed tuple can be unpinned right away.
 
             Tuple tup = leftChild.getNextTuple();
             if (tup == null)
                 break;
 
-            if (tup.isDiskBacked()) {
-                Tuple copy = TupleLiteral.fromTuple(tup);
+            sortedResults.add(tup);
+            if (tup.isDiskBacked())
                 tup.unpin();
-                tup = copy;
-            }
 
-            sortedResults.add(tup);
+            if (sortedResults.getMemoryUsage() > memoryLimit &&
+                sortedResults.size() > 1) {
+                writeSortedRun();
+            }
         }
 
-        Collections.sort(sortedResults, comparator);
+        if (runs != null) {
+            if (!sortedResults.isEmpty())
+                writeSortedRun();
+
+            logger.debug("Merging " + runs.size() + " sorted runs");
+
+            mergeQueue = new PriorityQueue<>(runs.size(), (a, b) -> {
+                int cmp = comparator.compare(a.current, b.current);
+                return (cmp != 0) ? cmp : Integer.compare(a.index, b.index);
+            });
+
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run();
+                run.index = i;
+                run.rows = runs.get(i);
+                run.current = run.rows.get(0);
+                mergeQueue.add(run);
+            }
+        } else {
+            sortedResults.sort(comparator);
+        }
 
         currentTupleIndex = 0;
     }
 
 
+    /**
+     * Sorts the buffered tuples, and moves them into a new sorted run that
+     * is kept on disk.
+     */
+    private void writeSortedRun() {
+        sortedResults.sort(comparator);
+
+        // The run doesn't keep its chunks in memory once they are full.
+        RowBuffer run = new RowBuffer(schema, 0, chunkSize);
+        for (int i = 0; i < sortedResults.size(); i++)
+            run.add(sortedResults.get(i));
+
+        if (runs == null)
+            runs = new ArrayList<>();
+
+        runs.add(run);
+        sortedResults.clear();
+    }
+
+
+    /** Releases the buffered tuples and sorted runs, if any. */
+    private void clearResults() {
+        if (sortedResults != null)
+            sortedResults.clear();
+
+        if (runs != null) {
+            for (RowBuffer run : runs)
+                run.clear();
+        }
+
+        sortedResults = null;
+        runs = null;
+        mergeQueue = null;
+    }
+
+
     /**
      * Clean up after evaluation of the sort plan-node.
      */
     public void cleanUp() {
-        // Allow this collection to be garbage-collected.
-        sortedResults = null;
+        // Allow the buffered tuples to be garbage-collected, and delete any
+        // sorted runs.
+        clearResults();
 
         leftChild.cleanUp();
     }
@@ -0,0 +1,147 @@
+package edu.caltech.nanodb.plannodes;
+
+
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.PlanCost;
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * Implements <tt>DISTINCT</tt> over an input whose duplicate rows are
+ * adjacent to each other, as they are when the input is sorted on all of its
+ * columns.  Each row is compared to the last row produced, and is only
+ * produced if it differs, so the node needs to remember only one row.  The
+ * planner only uses this node when the input's
+ * {@link PlanNode#resultsOrderedBy ordering} covers every column.
+ */
+public class SortedDistinctNode extends DistinctNode {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(SortedDistinctNode.class);
+
+
+    /** The last row produced by the node, or {@code null} if none yet. */
+    private TupleLiteral lastTuple;
+
+
+    /** True once the child has produced all of its rows. */
+    private boolean done;
+
+
+    public SortedDistinctNode(PlanNode leftChild) {
+        super(leftChild);
+    }
+
+
+    /**
+     * The rows are produced in the same order as the child produces them.
+     */
+    @Override
+    public List<OrderByExpression> resultsOrderedBy() {
+        return leftChild.resultsOrderedBy();
+    }
+
+
+    @Override
+    public void prepare() {
+        leftChild.prepare();
+
+        prepareSchemaStats();
+
+        PlanCost childCost = leftChild.getCost();
+        if (childCost != null) {
+            cost = new PlanCost(childCost);
+
+            // Each row is compared to the previous row.
+            cost.cpuCost += childCost.numTuples;
+            cost.numTuples = estimateDistinctTuples(childCost.numTuples);
+        } else {
+            logger.info(
+                "Child's cost not available; not computing this node's cost.");
+        }
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        lastTuple = null;
+        done = false;
+
+        leftChild.initialize();
+    }
+
+
+    @Override
+    public Tuple getNextTuple() {
+        if (done)
+            return null;
+
+        while (true) {
+            Tuple tup = leftChild.getNextTuple();
+            if (tup == null) {
+                done = true;
+                return null;
+            }
+
+            if (lastTuple == null || !sameValues(tup, lastTuple)) {
+                lastTuple = TupleLiteral.fromTuple(tup);
+                return tup;
+            }
+
+            tup.unpin();
+        }
+    }
+
+
+    /** Returns true if the two tuples have equal values in every column. */
+    private static boolean sameValues(Tuple tup, TupleLiteral other) {
+        for (int i = 0; i < other.getColumnCount(); i++) {
+            if (!Objects.equals(tup.getColumnValue(i), other.getColumnValue(i)))
+                return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public void cleanUp() {
+        lastTuple = null;
+
+        leftChild.cleanUp();
+    }
+
+
+    @Override
+    public String toString() {
+        return "SortedDistinct";
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof SortedDistinctNode) {
+            SortedDistinctNode other = (SortedDistinctNode) obj;
+            return leftChild.equals(other.leftChild);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * leftChild.hashCode() + 1;
+    }
+}
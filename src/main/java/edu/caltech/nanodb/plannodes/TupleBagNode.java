@@ -6,15 +6,20 @@ import java.util.List;
 
 import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.ColumnStats;
 import edu.caltech.nanodb.queryeval.PlanCost;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.RowBuffer;
 
 
 /**
  * This plan-node returns tuples from a collection specified on the node
  * before it is prepared.  This can be used to inject a set of tuples into
- * an execution plan.
+ * an execution plan.  The tuples are stored in a {@link RowBuffer}, so the
+ * node produces views of the stored tuples rather than the tuples that were
+ * added.
  */
 public class TupleBagNode extends PlanNode {
     private boolean prepared = false;
@@ -22,7 +27,7 @@ public class TupleBagNode extends PlanNode {
     /**
      * The collection of tuples that are returned by this plan node.
      */
-    private ArrayList<Tuple> tuples = new ArrayList<>();
+    private RowBuffer tuples;
 
 
     private int currentTupleIndex;
@@ -36,12 +41,14 @@ public class TupleBagNode extends PlanNode {
             throw new IllegalArgumentException("schema cannot be null");
 
         this.schema = schema;
+        tuples = new RowBuffer(schema,
+            ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
     }
 
 
     /**
-     * Adds a tuple to the bag of tuples.  If the tuple is disk-backed, a
-     * copy of the tuple is stored into this node.
+     * Adds a tuple to the bag of tuples.  A copy of the tuple is stored into
+     * this node, so a disk-backed tuple may be unpinned afterward.
      *
      * @param tup a tuple to add to the bag of tuples
      */
@@ -52,7 +59,7 @@ public class TupleBagNode extends PlanNode {
         if (prepared)
             throw new IllegalStateException("Node was already prepared");
 
-        tuples.add(tup.isDiskBacked() ? TupleLiteral.fromTuple(tup) : tup);
+        tuples.add(tup);
     }
 
 
@@ -77,7 +84,23 @@ public class TupleBagNode extends PlanNode {
             /* tupleSize */ 0f, /* cpuCost */ 0f, /* numBlockIOs */ 0,
             /* numLargeSeeks */ 0);
 
+        // Nothing is known about the values, but nodes above this one
+        // expect statistics for every column.
         stats = new ArrayList<>();
+        for (int i = 0; i < schema.numColumns(); i++)
+            stats.add(new ColumnStats());
+    }
+
+    /**
+     * Starts producing the tuples from the beginning again, so that the
+     * node can be executed more than once.
+     */
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        currentTupleIndex = -1;
+        markedTupleIndex = -1;
     }
 
     @Override
@@ -120,7 +143,17 @@ public class TupleBagNode extends PlanNode {
     public boolean equals(Object obj) {
         if (obj instanceof TupleBagNode) {
             TupleBagNode other = (TupleBagNode) obj;
-            return tuples.equals(other.tuples);
+            if (tuples.size() != other.tuples.size())
+                return false;
+
+            for (int i = 0; i < tuples.size(); i++) {
+                if (!TupleLiteral.fromTuple(tuples.get(i)).equals(
+                    TupleLiteral.fromTuple(other.tuples.get(i)))) {
+                    return false;
+                }
+            }
+
+            return true;
         }
 
         return false;
@@ -128,6 +161,6 @@ public class TupleBagNode extends PlanNode {
 
     @Override
     public int hashCode() {
-        return tuples.hashCode();
+        return tuples.size();
     }
 }
@@ -1,17 +1,31 @@
 package edu.caltech.nanodb.queryeval;
 
 import edu.caltech.nanodb.expressions.AggregationProcessor;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
 import edu.caltech.nanodb.expressions.Expression;
 import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.OrderByExpression;
 import edu.caltech.nanodb.functions.AggregateFunction;
 import edu.caltech.nanodb.plannodes.*;
+import edu.caltech.nanodb.queryast.FromClause;
 import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.queryast.SelectValue;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.JoinType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
 import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
 import edu.caltech.nanodb.storage.StorageManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * This abstract class is used for reuse code easily. It contains some same
@@ -72,6 +86,93 @@ public abstract class AbstractPlannerImpl implements Planner {
         }
     }
 
+    /**
+     * Finds the names of all columns that the specified query may read from
+     * its base tables, so that the file-scans in the query's plan only need
+     * to decode those columns.  This must be called before
+     * {@link #handleGroupAggregate} rewrites the query's aggregates.  Column
+     * names referenced by correlated subqueries are included.
+     * <p>
+     * If the columns cannot be determined safely, {@code null} is returned;
+     * this occurs when the query has a wildcard or a scalar subquery in its
+     * select-list, or a derived table or table function in its
+     * <tt>FROM</tt> clause (since the scans for a derived table belong to a
+     * different query).
+     *
+     * @param selClause the query to examine
+     * @return the names of all columns that the query may read, or
+     * {@code null} if every column may be read
+     */
+    protected static Set<String> findReferencedColumns(SelectClause selClause) {
+        var exprs = new ArrayList<Expression>();
+
+        for (SelectValue sv : selClause.getSelectValues()) {
+            if (sv.isWildcard() || sv.isScalarSubquery())
+                return null;
+
+            if (sv.isExpression())
+                exprs.add(sv.getExpression());
+        }
+
+        if (selClause.getFromClause() != null &&
+            !collectJoinExpressions(selClause.getFromClause(), exprs)) {
+            return null;
+        }
+
+        if (selClause.getWhereExpr() != null)
+            exprs.add(selClause.getWhereExpr());
+
+        exprs.addAll(selClause.getGroupByExprs());
+
+        if (selClause.getHavingExpr() != null)
+            exprs.add(selClause.getHavingExpr());
+
+        for (var orderBy : selClause.getOrderByExprs())
+            exprs.add(orderBy.getExpression());
+
+        var symbols = new HashSet<ColumnName>();
+        for (Expression e : exprs)
+            e.getAllSymbols(symbols);
+
+        var columnNames = new HashSet<String>();
+        for (ColumnName colName : symbols)
+            columnNames.add(colName.getColumnName());
+
+        return columnNames;
+    }
+
+
+    /**
+     * Collects the join conditions and computed select-values of a
+     * <tt>FROM</tt> clause into the specified collection.
+     *
+     * @param fromClause the from-clause to examine
+     * @param exprs      the collection to add the expressions to
+     * @return {@code false} if the from-clause contains a derived table or
+     * a table function, or {@code true} otherwise
+     */
+    private static boolean collectJoinExpressions(FromClause fromClause,
+                                                  List<Expression> exprs) {
+        if (fromClause.isBaseTable())
+            return true;
+
+        if (!fromClause.isJoinExpr())
+            return false;
+
+        if (fromClause.getComputedJoinExpr() != null)
+            exprs.add(fromClause.getComputedJoinExpr());
+
+        if (fromClause.getComputedSelectValues() != null) {
+            for (SelectValue sv : fromClause.getComputedSelectValues()) {
+                if (sv.isExpression())
+                    exprs.add(sv.getExpression());
+            }
+        }
+
+        return collectJoinExpressions(fromClause.getLeftChild(), exprs) &&
+            collectJoinExpressions(fromClause.getRightChild(), exprs);
+    }
+
     /**
      * Process on <tt>GROUP BY</tt>, <tt>HAVING</tt> and {@code Aggregation}.
      * <p>
@@ -154,4 +255,250 @@ public abstract class AbstractPlannerImpl implements Planner {
         // predicate.
         return new FileScanNode(tableInfo, predicate);
     }
+
+
+    /**
+     * Creates a sort node that may use up to
+     * {@link ServerProperties#PROP_OPERATOR_MEMORY_LIMIT} bytes of memory
+     * before writing sorted runs to disk.
+     *
+     * @param plan the plan producing the rows to sort
+     * @param orderByExprs the ordering to impose on the rows
+     * @return the new sort node
+     */
+    protected SortNode makeSortNode(PlanNode plan,
+                                    List<OrderByExpression> orderByExprs) {
+        PropertyRegistry props = storageManager.getServer().getPropertyRegistry();
+        return new SortNode(plan, orderByExprs,
+            props.getIntProperty(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT));
+    }
+
+
+    /**
+     * Creates a nested-loop join node, configured with the block size in
+     * {@link ServerProperties#PROP_JOIN_BLOCK_SIZE}, and allowed to cache
+     * up to {@link ServerProperties#PROP_OPERATOR_MEMORY_LIMIT} bytes of
+     * inner rows.
+     *
+     * @param left the outer child of the join
+     * @param right the inner child of the join
+     * @param joinType the type of join to perform
+     * @param predicate the join predicate, or {@code null} if none
+     * @return the new nested-loop join node
+     */
+    protected NestedLoopJoinNode makeNestedLoopJoin(PlanNode left,
+        PlanNode right, JoinType joinType, Expression predicate) {
+
+        PropertyRegistry props = storageManager.getServer().getPropertyRegistry();
+
+        NestedLoopJoinNode node =
+            new NestedLoopJoinNode(left, right, joinType, predicate);
+        node.setBlockSize(
+            props.getIntProperty(ServerProperties.PROP_JOIN_BLOCK_SIZE));
+        node.setInnerCacheLimit(
+            props.getIntProperty(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT));
+
+        return node;
+    }
+
+
+    /**
+     * Creates an inner join node for the specified inputs.  If the predicate
+     * has an equijoin condition between the two inputs, an
+     * {@link AdaptiveJoinNode} is used, so that the join strategy can be
+     * chosen once the size of the right input is known; otherwise a
+     * nested-loop join is used.  The inputs' schemas must be available.
+     *
+     * @param left the left (probe) child of the join
+     * @param right the right (build) child of the join
+     * @param predicate the join predicate, or {@code null} if none
+     * @return the new join node
+     */
+    protected ThetaJoinNode makeInnerJoin(PlanNode left, PlanNode right,
+                                          Expression predicate) {
+        if (predicate == null || AdaptiveJoinNode.findJoinKeys(predicate,
+                left.getSchema(), right.getSchema()) == null) {
+            return makeNestedLoopJoin(left, right, JoinType.INNER, predicate);
+        }
+
+        PropertyRegistry props = storageManager.getServer().getPropertyRegistry();
+
+        AdaptiveJoinNode node = new AdaptiveJoinNode(left, right, predicate);
+        node.setThreshold(
+            props.getIntProperty(ServerProperties.PROP_ADAPTIVE_JOIN_THRESHOLD));
+        node.setMemoryLimit(
+            props.getIntProperty(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT));
+
+        return node;
+    }
+
+
+    /**
+     * Adds a plan-node that removes duplicate rows to the top of a plan, for
+     * a <tt>SELECT DISTINCT</tt> query.  If the plan's results are already
+     * ordered on all of their columns, a {@link SortedDistinctNode} is used.
+     * Otherwise, a {@link HashDistinctNode} limited to
+     * {@link ServerProperties#PROP_OPERATOR_MEMORY_LIMIT} bytes of memory is
+     * costed against sorting the results and using a
+     * {@link SortedDistinctNode}, and the cheaper plan is used.
+     *
+     * @param plan the plan producing the rows to remove duplicates from
+     * @return the new top plan-node for the plan
+     */
+    protected PlanNode addDistinctToPlan(PlanNode plan) {
+        plan.prepare();
+
+        PropertyRegistry props = storageManager.getServer().getPropertyRegistry();
+        int memoryLimit =
+            props.getIntProperty(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT);
+
+        // Earlier candidates win when the costs are equal, since
+        // sorted-distinct needs no memory, and hashing needs no sort.
+        // Float.compare() treats NaN costs (from sorting an estimated 0 rows)
+        // as the most expensive.
+        var candidates = new ArrayList<PlanNode>();
+        boolean ordered = isOrderedOnAllColumns(plan);
+        if (ordered)
+            candidates.add(new SortedDistinctNode(plan));
+
+        candidates.add(new HashDistinctNode(plan, memoryLimit));
+
+        if (!ordered) {
+            List<OrderByExpression> allColumns = orderByAllColumns(plan);
+            if (allColumns != null)
+                candidates.add(new SortedDistinctNode(makeSortNode(plan, allColumns)));
+        }
+
+        PlanNode best = null;
+        for (PlanNode candidate : candidates) {
+            candidate.prepare();
+            logger.debug("DISTINCT candidate " + candidate + " has cost " +
+                candidate.getCost());
+
+            if (best == null || (candidate.getCost() != null &&
+                (best.getCost() == null || Float.compare(
+                    candidate.getCost().cpuCost, best.getCost().cpuCost) < 0))) {
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+
+    /**
+     * Returns true if the results of a prepared plan are ordered so that
+     * equal rows are adjacent; that is, if a prefix of the plan's ordering
+     * consists of references to all of the plan's columns.
+     */
+    private static boolean isOrderedOnAllColumns(PlanNode plan) {
+        List<OrderByExpression> order = plan.resultsOrderedBy();
+        if (order == null)
+            return false;
+
+        Schema schema = plan.getSchema();
+        boolean[] covered = new boolean[schema.numColumns()];
+        int numCovered = 0;
+        for (OrderByExpression orderExpr : order) {
+            if (numCovered == covered.length)
+                break;
+
+            if (!(orderExpr.getExpression() instanceof ColumnValue))
+                return false;
+
+            int index;
+            try {
+                index = schema.getColumnIndex(
+                    ((ColumnValue) orderExpr.getExpression()).getColumnName());
+            } catch (SchemaNameException e) {
+                return false;
+            }
+
+            if (index == -1)
+                return false;
+
+            if (!covered[index]) {
+                covered[index] = true;
+                numCovered++;
+            }
+        }
+
+        return numCovered == covered.length;
+    }
+
+
+    /**
+     * Returns an ordering on all of the columns of a prepared plan, which
+     * extends the plan's current ordering if it has one, so that sorting by
+     * it keeps the rows in the order the query asked for.  {@code null} is
+     * returned if this isn't possible, as when two columns have the same
+     * name, or the plan is ordered by an expression that isn't a column.
+     */
+    private static List<OrderByExpression> orderByAllColumns(PlanNode plan) {
+        Schema schema = plan.getSchema();
+        boolean[] covered = new boolean[schema.numColumns()];
+        var order = new ArrayList<OrderByExpression>();
+
+        List<OrderByExpression> currentOrder = plan.resultsOrderedBy();
+        if (currentOrder != null) {
+            for (OrderByExpression orderExpr : currentOrder) {
+                if (!(orderExpr.getExpression() instanceof ColumnValue))
+                    return null;
+
+                int index;
+                try {
+                    index = schema.getColumnIndex(
+                        ((ColumnValue) orderExpr.getExpression()).getColumnName());
+                } catch (SchemaNameException e) {
+                    return null;
+                }
+
+                if (index == -1)
+                    return null;
+
+                covered[index] = true;
+                order.add(orderExpr);
+            }
+        }
+
+        for (int i = 0; i < schema.numColumns(); i++) {
+            if (covered[i])
+                continue;
+
+            ColumnInfo colInfo = schema.getColumnInfo(i);
+            ColumnName colName =
+                new ColumnName(colInfo.getTableName(), colInfo.getName());
+
+            try {
+                if (colInfo.getName() == null || schema.getColumnIndex(colName) != i)
+                    return null;
+            } catch (SchemaNameException e) {
+                return null;
+            }
+
+            order.add(new OrderByExpression(new ColumnValue(colName)));
+        }
+
+        return order.isEmpty() ? null : order;
+    }
+
+
+    /**
+     * Runs the suitable table file-scans of a plan in parallel, as
+     * specified by the {@link ServerProperties#PROP_PARALLELISM} and
+     * {@link ServerProperties#PROP_PARALLEL_SCAN_MIN_PAGES} properties.
+     *
+     * @param plan the plan whose file-scans should be run in parallel
+     * @return the (possibly new) top plan-node for the plan
+     *
+     * @see PlanUtils#addGatherNodes
+     */
+    protected PlanNode addParallelScans(PlanNode plan) {
+        PropertyRegistry props = storageManager.getServer().getPropertyRegistry();
+        int parallelism = props.getIntProperty(ServerProperties.PROP_PARALLELISM);
+        int minPages =
+            props.getIntProperty(ServerProperties.PROP_PARALLEL_SCAN_MIN_PAGES);
+
+        return PlanUtils.addGatherNodes(plan, parallelism, minPages);
+    }
 }
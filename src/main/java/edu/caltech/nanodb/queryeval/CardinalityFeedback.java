@@ -0,0 +1,358 @@
+package edu.caltech.nanodb.queryeval;
+
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionProcessor;
+import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.ParameterValue;
+import edu.caltech.nanodb.expressions.SubqueryOperator;
+import edu.caltech.nanodb.functions.Function;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.SchemaNameException;
+
+
+/**
+ * <p>
+ * This class records the selectivities of predicates that were observed
+ * when plans were executed, so that the {@link SelectivityEstimator} can use
+ * them instead of estimating the selectivities again from the tables'
+ * statistics.  A query that is issued repeatedly is thus planned with the
+ * actual selectivities of its predicates after its first execution, even if
+ * its predicates are too complicated to estimate well.
+ * </p>
+ * <p>
+ * A predicate is identified by its text and by the names of the tables in
+ * the schema it is evaluated against, since that is all that the estimator
+ * is given.  Each observation also records how many times the base tables
+ * that the predicate's input came from had been modified.  Once any of the
+ * tables has been modified by more than {@link #STALE_FRACTION} of the rows
+ * that the predicate was applied to, the observation is discarded, and the
+ * selectivity is estimated from statistics again.
+ * </p>
+ * <p>
+ * Plans that are cached and reused are made before their predicates are
+ * observed, so the feedback has a version number, which is incremented
+ * whenever an observed selectivity is far from the one that the plan was
+ * made with.  The {@link edu.caltech.nanodb.server.PlanCache plan cache}
+ * discards its plans when the version changes, so that they are made again
+ * with the observed selectivities.
+ * </p>
+ * <p>
+ * Like the {@link edu.caltech.nanodb.server.performance.PerformanceCounters
+ * performance counters}, the feedback is shared by the whole process.  The
+ * number of observations kept is bounded, and the least recently used
+ * observations are discarded first.
+ * </p>
+ */
+public class CardinalityFeedback {
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = LogManager.getLogger(CardinalityFeedback.class);
+
+
+    /** The maximum number of observations that are kept. */
+    public static final int MAX_ENTRIES = 1000;
+
+
+    /**
+     * The fraction of the rows that a predicate was applied to that its
+     * tables may be modified by before its observed selectivity is
+     * discarded.
+     */
+    public static final float STALE_FRACTION = 0.1f;
+
+
+    /**
+     * The factor by which the number of rows selected by a predicate must
+     * differ from the estimate that its plan was made with for plans to be
+     * made again.
+     */
+    public static final float MISESTIMATE_FACTOR = 2.0f;
+
+
+    /** An observed selectivity of a predicate. */
+    private static class Observation {
+        float selectivity;
+
+        /** The number of rows that the predicate was applied to. */
+        long inputRows;
+
+        /** The modification counts of the input's base tables. */
+        Map<String, Long> modCounts;
+
+        Observation(float selectivity, long inputRows,
+                    Map<String, Long> modCounts) {
+            this.selectivity = selectivity;
+            this.inputRows = inputRows;
+            this.modCounts = modCounts;
+        }
+    }
+
+
+    /**
+     * The observations, keyed on the predicate's signature, in order from
+     * least to most recently used.
+     */
+    private static final LinkedHashMap<String, Observation> observations =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+
+    /**
+     * The number of rows of each table that have been modified, keyed on
+     * the table's name in lowercase.
+     */
+    private static final ConcurrentHashMap<String, Long> modCounts =
+        new ConcurrentHashMap<>();
+
+
+    /**
+     * The version of the feedback, which is incremented whenever a
+     * predicate's selectivity is observed to be far from its estimate.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+
+    /**
+     * This class should not be instantiated.
+     */
+    private CardinalityFeedback() {
+        throw new IllegalArgumentException("This class should not be instantiated.");
+    }
+
+
+    /**
+     * Records the selectivity of a predicate that was observed when a plan
+     * was executed.  Nothing is recorded for predicates whose selectivity
+     * could change without any table changing, e.g. predicates with
+     * subqueries or parameters, or predicates that refer to the current row
+     * of an enclosing query.
+     *
+     * @param predicate the predicate that was evaluated
+     * @param schema the schema that the predicate was evaluated against
+     * @param baseTables the names of the tables that the predicate's input
+     *        was read from
+     * @param rowsSelected the number of rows that satisfied the predicate
+     * @param inputRows the number of rows that the predicate was applied to
+     * @param estimatedSelectivity the selectivity that the plan was made
+     *        with, or -1 if it isn't known
+     */
+    public static void record(Expression predicate, Schema schema,
+                              Collection<String> baseTables, long rowsSelected,
+                              long inputRows, float estimatedSelectivity) {
+        if (inputRows <= 0 || !isRecordable(predicate, schema))
+            return;
+
+        HashMap<String, Long> tableModCounts = new HashMap<>();
+        for (String table : baseTables) {
+            String name = table.toLowerCase();
+            tableModCounts.put(name, modCounts.getOrDefault(name, 0L));
+        }
+
+        float selectivity = (float) rowsSelected / (float) inputRows;
+        String signature = getSignature(predicate, schema);
+
+        synchronized (observations) {
+            observations.put(signature,
+                new Observation(selectivity, inputRows, tableModCounts));
+
+            Iterator<Observation> iter = observations.values().iterator();
+            while (observations.size() > MAX_ENTRIES && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+            }
+        }
+
+        logger.debug(String.format("Observed selectivity %f of %s (%d of %d rows)",
+            selectivity, signature, rowsSelected, inputRows));
+
+        if (estimatedSelectivity >= 0 &&
+            isMisestimate(rowsSelected, estimatedSelectivity * inputRows)) {
+            logger.debug(String.format("Estimated selectivity %f of %s was " +
+                "far off; plans should be made again", estimatedSelectivity,
+                signature));
+            version.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Returns the version of the feedback, which changes whenever a
+     * predicate's observed selectivity is far from the one that its plan was
+     * made with.  Plans made with an earlier version could be improved.
+     *
+     * @return the version of the feedback
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
+
+    /**
+     * Returns the observed selectivity of a predicate, if it has been
+     * observed since its tables were last changed significantly.
+     *
+     * @param predicate the predicate to look up
+     * @param schema the schema that the predicate is evaluated against
+     * @return the observed selectivity, or {@code null} if there is no
+     *         current observation of the predicate
+     */
+    public static Float lookup(Expression predicate, Schema schema) {
+        synchronized (observations) {
+            if (observations.isEmpty())
+                return null;
+
+            String signature = getSignature(predicate, schema);
+            Observation obs = observations.get(signature);
+            if (obs == null)
+                return null;
+
+            if (isStale(obs)) {
+                logger.debug("Discarding stale selectivity of " + signature);
+                observations.remove(signature);
+                return null;
+            }
+
+            return obs.selectivity;
+        }
+    }
+
+
+    /**
+     * Records that a row of a table has been inserted, updated or deleted.
+     *
+     * @param tableName the name of the table that was modified
+     */
+    public static void tableModified(String tableName) {
+        modCounts.merge(tableName.toLowerCase(), 1L, Long::sum);
+    }
+
+
+    /**
+     * Discards the observations involving a table, because the table has
+     * been dropped.
+     *
+     * @param tableName the name of the table that was dropped
+     */
+    public static void tableDropped(String tableName) {
+        String name = tableName.toLowerCase();
+        synchronized (observations) {
+            observations.values().removeIf(
+                obs -> obs.modCounts.containsKey(name));
+        }
+        modCounts.remove(name);
+    }
+
+
+    /**
+     * Discards all observations, e.g. when the server starts up with a
+     * different database.
+     */
+    public static void clear() {
+        synchronized (observations) {
+            observations.clear();
+        }
+        modCounts.clear();
+    }
+
+
+    /**
+     * Returns the number of observations that are kept.
+     *
+     * @return the number of observations that are kept
+     */
+    public static int size() {
+        synchronized (observations) {
+            return observations.size();
+        }
+    }
+
+
+    /**
+     * Returns true if the number of rows a predicate selected differs from
+     * the estimated number by more than {@link #MISESTIMATE_FACTOR}.  One is
+     * added to both numbers, so that small numbers of rows don't count as
+     * large differences.
+     */
+    private static boolean isMisestimate(long rowsSelected, float estimatedRows) {
+        float high = Math.max(rowsSelected, estimatedRows) + 1;
+        float low = Math.min(rowsSelected, estimatedRows) + 1;
+        return high > MISESTIMATE_FACTOR * low;
+    }
+
+
+    /**
+     * Returns true if any table of an observation has been modified by more
+     * than {@link #STALE_FRACTION} of the rows the predicate was applied to.
+     */
+    private static boolean isStale(Observation obs) {
+        long allowed = (long) (obs.inputRows * STALE_FRACTION);
+        for (Map.Entry<String, Long> entry : obs.modCounts.entrySet()) {
+            long changes = modCounts.getOrDefault(entry.getKey(), 0L) -
+                entry.getValue();
+            if (changes > allowed)
+                return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns the signature of a predicate:  the names of the tables in the
+     * schema it is evaluated against, and its text.
+     */
+    private static String getSignature(Expression predicate, Schema schema) {
+        TreeSet<String> tables = new TreeSet<>();
+        for (String table : schema.getTableNames()) {
+            if (table != null)
+                tables.add(table.toLowerCase());
+        }
+        return String.join(",", tables) + ":" + predicate;
+    }
+
+
+    /**
+     * Returns true if a predicate's selectivity depends only on the rows it
+     * is applied to.
+     */
+    private static boolean isRecordable(Expression predicate, Schema schema) {
+        boolean[] recordable = {true};
+        predicate.traverse(new ExpressionProcessor() {
+            public void enter(Expression node) {
+                if (node instanceof SubqueryOperator ||
+                    node instanceof ParameterValue) {
+                    recordable[0] = false;
+                } else if (node instanceof ColumnValue) {
+                    // Columns of an enclosing query aren't in the schema.
+                    try {
+                        ColumnValue colValue = (ColumnValue) node;
+                        if (schema.getColumnIndex(colValue.getColumnName()) < 0)
+                            recordable[0] = false;
+                    } catch (SchemaNameException e) {
+                        recordable[0] = false;
+                    }
+                } else if (node instanceof FunctionCall) {
+                    Function f = ((FunctionCall) node).getFunction();
+                    if (f == null || !f.isDeterministic())
+                        recordable[0] = false;
+                }
+            }
+
+            public Expression leave(Expression node) {
+                return node;
+            }
+        });
+        return recordable[0];
+    }
+}
@@ -1,6 +1,11 @@
 package edu.caltech.nanodb.queryeval;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
 /**
  * This class holds some useful statistics for a specific column.  At present
  * this consists of the following:
@@ -10,9 +15,23 @@ package edu.caltech.nanodb.queryeval;
  *   <li>the number of <tt>NULL</tt> values in the column</li>
  *   <li>the minimum value for the column</li>
  *   <li>the maximum value for the column</li>
+ *   <li>optionally, the column's distribution:  a list of its most common
+ *       values (MCVs) and their frequencies, and an equi-depth histogram of
+ *       its other non-<tt>NULL</tt> values</li>
  * </ul>
  * The {@link ColumnStatsCollector} class can be used to easily collect these
  * statistics for a particular column of a table.
+ * <p>
+ * Frequencies in the distribution are fractions of all of the table's rows,
+ * including those where the column is <tt>NULL</tt>, so that they can be
+ * used directly as selectivities.  The histogram's bounds split the values
+ * that aren't MCVs into buckets that each hold the same fraction of rows;
+ * the first and last bounds are the smallest and largest of those values.
+ * A column may have a distribution without a histogram, for example when
+ * every value is an MCV, or when the values aren't comparable.
+ * <p>
+ * A column's stats also refer to the {@link MultiColumnStats} of the groups
+ * of columns that the column belongs to, if any.
  */
 public class ColumnStats {
     /**
@@ -43,6 +62,40 @@ public class ColumnStats {
     private Object maxValue;
 
 
+    /** The most common values of the column, or <tt>null</tt> if unknown. */
+    private Object[] mcvValues;
+
+
+    /**
+     * The fraction of the table's rows holding each of the most common
+     * values, or <tt>null</tt> if unknown.
+     */
+    private float[] mcvFrequencies;
+
+
+    /**
+     * The fraction of the table's rows whose value is neither <tt>NULL</tt>
+     * nor one of the most common values, or -1 if the column's distribution
+     * is unknown.
+     */
+    private float otherFraction = -1;
+
+
+    /**
+     * The bounds of the equi-depth histogram of the values that aren't most
+     * common values, in increasing order, or <tt>null</tt> if there is no
+     * histogram.
+     */
+    private Object[] histogramBounds;
+
+
+    /**
+     * The statistics of the groups of columns this column belongs to, or
+     * <tt>null</tt> if it doesn't belong to any.
+     */
+    private ArrayList<MultiColumnStats> multiColumnStats;
+
+
     /**
      * Initializes a column-stats object with the specified values.
      *
@@ -78,6 +131,15 @@ public class ColumnStats {
     public ColumnStats(ColumnStats stats) {
         this(stats.numUniqueValues, stats.numNullValues,
             stats.minValue, stats.maxValue);
+
+        // The distribution's arrays are never modified, so they are shared.
+        mcvValues = stats.mcvValues;
+        mcvFrequencies = stats.mcvFrequencies;
+        otherFraction = stats.otherFraction;
+        histogramBounds = stats.histogramBounds;
+
+        // The groups describe the table, not this copy, so they are shared.
+        multiColumnStats = stats.multiColumnStats;
     }
 
 
@@ -199,4 +261,182 @@ public class ColumnStats {
     public boolean hasDifferentMinMaxValues() {
         return hasMinMaxValues() && (!minValue.equals(maxValue));
     }
+
+
+    /**
+     * Returns <tt>true</tt> if this column-stats object describes the
+     * column's distribution, with a list of most common values and the
+     * fraction of rows holding other values.
+     *
+     * @return <tt>true</tt> if the column's distribution is known
+     */
+    public boolean hasDistribution() {
+        return otherFraction >= 0;
+    }
+
+
+    /**
+     * Sets the column's distribution.  The arrays must not be modified after
+     * they are passed to this method.
+     *
+     * @param mcvValues the most common values of the column
+     * @param mcvFrequencies the fraction of the table's rows holding each of
+     *        the most common values
+     * @param otherFraction the fraction of the table's rows whose value is
+     *        neither <tt>NULL</tt> nor one of the most common values
+     * @param histogramBounds the bounds of an equi-depth histogram of the
+     *        other values, or <tt>null</tt> if there is no histogram
+     */
+    public void setDistribution(Object[] mcvValues, float[] mcvFrequencies,
+                                float otherFraction, Object[] histogramBounds) {
+        if (mcvValues == null || mcvFrequencies == null ||
+            mcvValues.length != mcvFrequencies.length) {
+            throw new IllegalArgumentException(
+                "mcvValues and mcvFrequencies must have the same length");
+        }
+
+        if (histogramBounds != null && histogramBounds.length < 2) {
+            throw new IllegalArgumentException(
+                "A histogram must have at least two bounds");
+        }
+
+        this.mcvValues = mcvValues;
+        this.mcvFrequencies = mcvFrequencies;
+        this.otherFraction = Math.max(0, otherFraction);
+        this.histogramBounds = histogramBounds;
+    }
+
+
+    /**
+     * Discards the column's distribution, if it has one.
+     */
+    public void clearDistribution() {
+        mcvValues = null;
+        mcvFrequencies = null;
+        otherFraction = -1;
+        histogramBounds = null;
+    }
+
+
+    /**
+     * Returns the column's most common values, or <tt>null</tt> if the
+     * column's distribution is unknown.
+     *
+     * @return the column's most common values
+     */
+    public Object[] getMCVValues() {
+        return mcvValues;
+    }
+
+
+    /**
+     * Returns the fraction of the table's rows holding each of the column's
+     * most common values, or <tt>null</tt> if the column's distribution is
+     * unknown.
+     *
+     * @return the frequencies of the column's most common values
+     */
+    public float[] getMCVFrequencies() {
+        return mcvFrequencies;
+    }
+
+
+    /**
+     * Returns the fraction of the table's rows whose value is neither
+     * <tt>NULL</tt> nor one of the most common values, or -1 if the column's
+     * distribution is unknown.
+     *
+     * @return the fraction of rows holding other values
+     */
+    public float getOtherFraction() {
+        return otherFraction;
+    }
+
+
+    /**
+     * Returns the bounds of the equi-depth histogram of the values that
+     * aren't most common values, or <tt>null</tt> if there is no histogram.
+     *
+     * @return the bounds of the column's histogram
+     */
+    public Object[] getHistogramBounds() {
+        return histogramBounds;
+    }
+
+
+    /**
+     * Returns the fraction of the table's rows holding the specified value
+     * if it is one of the most common values, or -1 if it isn't.
+     *
+     * @param value the value to look up
+     * @return the fraction of rows holding the value, or -1 if it isn't one
+     *         of the most common values
+     */
+    public float getMCVFrequency(Object value) {
+        if (mcvValues != null) {
+            for (int i = 0; i < mcvValues.length; i++) {
+                if (mcvValues[i].equals(value))
+                    return mcvFrequencies[i];
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Returns the fraction of the table's rows whose value is not
+     * <tt>NULL</tt>, or -1 if the column's distribution is unknown.
+     *
+     * @return the fraction of rows with a non-<tt>NULL</tt> value
+     */
+    public float getNonNullFraction() {
+        if (!hasDistribution())
+            return -1;
+
+        float total = otherFraction;
+        for (float f : mcvFrequencies)
+            total += f;
+
+        return total;
+    }
+
+
+    /**
+     * Returns the statistics of the groups of columns this column belongs
+     * to, which may be empty.
+     *
+     * @return the statistics of the column's groups of columns
+     */
+    public List<MultiColumnStats> getMultiColumnStats() {
+        if (multiColumnStats == null)
+            return Collections.emptyList();
+
+        return Collections.unmodifiableList(multiColumnStats);
+    }
+
+
+    /**
+     * Records that this column belongs to a group of columns.
+     *
+     * @param stats the statistics of the group of columns
+     */
+    public void addMultiColumnStats(MultiColumnStats stats) {
+        // Copies of this object share the list, so it is replaced rather
+        // than modified.
+        ArrayList<MultiColumnStats> groups = new ArrayList<>();
+        if (multiColumnStats != null)
+            groups.addAll(multiColumnStats);
+
+        groups.add(stats);
+        multiColumnStats = groups;
+    }
+
+
+    /**
+     * Forgets the groups of columns this column belongs to.
+     */
+    public void clearMultiColumnStats() {
+        multiColumnStats = null;
+    }
 }
@@ -4,7 +4,10 @@ package edu.caltech.nanodb.queryeval;
 import edu.caltech.nanodb.relations.SQLDataType;
 import edu.caltech.nanodb.storage.TableManager;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 
 
 /**
@@ -17,13 +20,50 @@ import java.util.HashSet;
  * The class also makes it very easy to construct a {@link ColumnStats} object
  * from the result of the analysis.
  *
- * @design (Donnie) This class is limited in its ability to efficiently compute
- * the number of unique values for very large tables.  An
- * external-memory approach would have to be used to support extremely
- * large tables.
+ * <p>
+ * Distinct values are counted exactly until the column has more than
+ * {@link #MAX_EXACT_VALUES} of them; after that, they are counted with a
+ * {@link HyperLogLog} sketch, so that the memory used by the collector
+ * stays bounded no matter how large the table is.
+ * </p>
+ * <p>
+ * The collector also describes the column's distribution, with a list of
+ * its most common values and an equi-depth histogram of its other values
+ * (see {@link ColumnStats}).  While values are counted exactly, the
+ * distribution is computed from the exact counts; after that, it is
+ * computed from a uniform random sample of {@link #SAMPLE_SIZE} values kept
+ * by reservoir sampling.
+ * </p>
+ * <p>
+ * When only a sample of the table's rows is analyzed, the
+ * {@link #getColumnStats(int)} method scales the sample's statistics up to
+ * the whole table.
+ * </p>
  */
 public class ColumnStatsCollector {
 
+    /**
+     * The largest number of distinct values that are counted exactly, before
+     * the collector switches to a sketch.
+     */
+    public static final int MAX_EXACT_VALUES = 2048;
+
+
+    /**
+     * The number of values sampled to compute the column's distribution,
+     * once there are too many distinct values to count exactly.
+     */
+    public static final int SAMPLE_SIZE = 2048;
+
+
+    /** The largest number of most common values kept for a column. */
+    public static final int MAX_MCVS = 10;
+
+
+    /** The number of buckets in a column's histogram. */
+    public static final int NUM_HISTOGRAM_BUCKETS = 10;
+
+
     /**
      * The SQL data-type for the column that stats are being collected for.
      */
@@ -31,10 +71,35 @@ public class ColumnStatsCollector {
 
 
     /**
-     * The set of all values seen in this column.  This set could obviously
-     * occupy a large amount of memory for large tables.
+     * The number of times each distinct value has been seen in this column,
+     * or <tt>null</tt> once there are too many distinct values to count
+     * exactly.
+     */
+    private HashMap<Object, Integer> valueCounts;
+
+
+    /**
+     * The sketch that counts the distinct values once there are too many to
+     * count exactly, or <tt>null</tt> while they are still counted exactly.
+     */
+    private HyperLogLog sketch;
+
+
+    /** A count of the number of non-<tt>NULL</tt> values seen. */
+    private int numNonNullValues;
+
+
+    /**
+     * A uniform random sample of the non-<tt>NULL</tt> values seen, used to
+     * compute the column's distribution once the values aren't counted
+     * exactly.
      */
-    private HashSet<Object> uniqueValues;
+    private ArrayList<Object> sample;
+
+
+    /** The source of randomness for {@link #sample}. */
+    private Random random;
+
 
     /**
      * A count of the number of <tt>NULL</tt> values seen in the column-values.
@@ -64,7 +129,11 @@ public class ColumnStatsCollector {
      */
     public ColumnStatsCollector(SQLDataType sqlType) {
         this.sqlType = sqlType;
-        uniqueValues = new HashSet<Object>();
+        valueCounts = new HashMap<>();
+        sketch = null;
+        sample = new ArrayList<>();
+        random = new Random();
+        numNonNullValues = 0;
         numNullValues = 0;
         minValue = null;
         maxValue = null;
@@ -100,8 +169,30 @@ public class ColumnStatsCollector {
                     maxValue = comp;
             }
 
-            // Update the set of unique values.
-            uniqueValues.add(value);
+            // Keep a uniform sample of the values, replacing a random entry
+            // with probability SAMPLE_SIZE / n once the sample is full.
+            numNonNullValues++;
+            if (sample.size() < SAMPLE_SIZE) {
+                sample.add(value);
+            } else {
+                int i = random.nextInt(numNonNullValues);
+                if (i < SAMPLE_SIZE)
+                    sample.set(i, value);
+            }
+
+            // Update the count of unique values.
+            if (sketch != null) {
+                sketch.add(value);
+            } else {
+                valueCounts.merge(value, 1, Integer::sum);
+                if (valueCounts.size() > MAX_EXACT_VALUES) {
+                    sketch = new HyperLogLog();
+                    for (Object v : valueCounts.keySet())
+                        sketch.add(v);
+
+                    valueCounts = null;
+                }
+            }
         }
     }
 
@@ -116,15 +207,30 @@ public class ColumnStatsCollector {
     }
 
 
+    /**
+     * Returns true if the collector is still counting distinct values
+     * exactly, or false if it has switched to a sketch.
+     *
+     * @return true if distinct values are counted exactly
+     */
+    public boolean isExact() {
+        return sketch == null;
+    }
+
+
     /**
      * Returns the number of unique (and non-<tt>NULL</tt>) values seen for the
-     * column.
+     * column.  This number is an estimate if {@link #isExact} is false.
      *
      * @return the number of unique (and non-<tt>NULL</tt>) values seen for the
      * column
      */
     public int getNumUniqueValues() {
-        return uniqueValues.size();
+        if (sketch == null)
+            return valueCounts.size();
+
+        // The estimate can't exceed the number of values seen.
+        return (int) Math.min(sketch.estimate(), numNonNullValues);
     }
 
 
@@ -160,7 +266,172 @@ public class ColumnStatsCollector {
      * collected by this object
      */
     public ColumnStats getColumnStats() {
-        return new ColumnStats(getNumUniqueValues(), numNullValues,
-            minValue, maxValue);
+        ColumnStats stats = new ColumnStats(getNumUniqueValues(),
+            numNullValues, minValue, maxValue);
+        addDistribution(stats);
+        return stats;
+    }
+
+
+    /**
+     * <p>
+     * Constructs and returns a new column-statistics object for a whole
+     * table, when the values given to this collector were a sample of the
+     * table's rows.  The number of <tt>NULL</tt> values is scaled in
+     * proportion to the table's size.  The number of distinct values is
+     * scaled with the "Duj1" estimator of Haas and Stokes, which grows the
+     * sample's count according to how many of its values were seen only
+     * once:  a column where every sampled value is unique is assumed to be
+     * unique across the table, and one where every sampled value repeats is
+     * assumed to have no values that the sample missed.
+     * </p>
+     * <p>
+     * Once the collector has switched to a sketch, it no longer knows how
+     * many values were seen once, so it assumes that each repeated value was
+     * seen exactly twice.  The minimum and maximum values are those of the
+     * sample, and are not scaled.
+     * </p>
+     *
+     * @param totalRows the number of rows in the whole table
+     * @return a new column-stats object estimating the stats of the table
+     */
+    public ColumnStats getColumnStats(int totalRows) {
+        int sampleRows = numNonNullValues + numNullValues;
+        if (sampleRows == 0 || totalRows <= sampleRows)
+            return getColumnStats();
+
+        double scale = (double) totalRows / sampleRows;
+        int numNulls = (int) Math.round(numNullValues * scale);
+
+        int n = numNonNullValues;
+        int d = getNumUniqueValues();
+        int numUnique = d;
+        if (n > 0) {
+            double bigN = (double) (totalRows - numNulls);
+
+            double f1;
+            if (sketch == null) {
+                f1 = 0;
+                for (int count : valueCounts.values()) {
+                    if (count == 1)
+                        f1++;
+                }
+            } else {
+                f1 = Math.max(0, Math.min(d, 2.0 * d - n));
+            }
+
+            numUnique = scaleNumUniqueValues(n, d, f1, bigN);
+        }
+
+        ColumnStats stats =
+            new ColumnStats(numUnique, numNulls, minValue, maxValue);
+        addDistribution(stats);
+        return stats;
+    }
+
+
+    /**
+     * Scales the number of distinct values seen in a sample up to the whole
+     * table, using the "Duj1" estimator.  The result is at least the number
+     * of distinct values seen, and at most the number of values in the
+     * table.
+     *
+     * @param n the number of non-<tt>NULL</tt> values in the sample
+     * @param d the number of distinct values in the sample
+     * @param f1 the number of values seen exactly once in the sample
+     * @param bigN the number of non-<tt>NULL</tt> values in the table
+     * @return the estimated number of distinct values in the table
+     */
+    static int scaleNumUniqueValues(int n, int d, double f1, double bigN) {
+        double estimate = n * d / (n - f1 + f1 * n / bigN);
+        return (int) Math.round(Math.max(d, Math.min(estimate, bigN)));
+    }
+
+
+    /**
+     * Computes the column's most common values and histogram, and stores
+     * them into the specified column-stats object.  Nothing is stored if no
+     * values have been seen.
+     *
+     * @param stats the column-stats object to store the distribution into
+     */
+    @SuppressWarnings("unchecked")
+    private void addDistribution(ColumnStats stats) {
+        int numRows = numNonNullValues + numNullValues;
+        if (numNonNullValues == 0)
+            return;
+
+        // Count the values, exactly if possible, or else from the sample.
+        Map<Object, Integer> counts = valueCounts;
+        int numCounted = numNonNullValues;
+        if (counts == null) {
+            counts = new HashMap<>();
+            for (Object value : sample)
+                counts.merge(value, 1, Integer::sum);
+
+            numCounted = sample.size();
+        }
+
+        // Each counted value stands for this fraction of the table's rows.
+        float rowFraction = (float) numNonNullValues / numRows / numCounted;
+
+        // A value is common if it appears noticeably more often than the
+        // average value does.  If every value fits in the list, and the
+        // counts are exact, then every value is listed.
+        ArrayList<Map.Entry<Object, Integer>> entries =
+            new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> b.getValue() - a.getValue());
+
+        boolean listAll = (valueCounts != null && entries.size() <= MAX_MCVS);
+        double minCount = Math.max(2, 1.25 * numCounted / counts.size());
+
+        ArrayList<Object> mcvs = new ArrayList<>();
+        ArrayList<Float> freqs = new ArrayList<>();
+        int mcvCount = 0;
+        for (Map.Entry<Object, Integer> entry : entries) {
+            if (mcvs.size() == MAX_MCVS ||
+                (!listAll && entry.getValue() < minCount)) {
+                break;
+            }
+
+            mcvs.add(entry.getKey());
+            freqs.add(entry.getValue() * rowFraction);
+            mcvCount += entry.getValue();
+        }
+
+        float[] mcvFrequencies = new float[freqs.size()];
+        for (int i = 0; i < mcvFrequencies.length; i++)
+            mcvFrequencies[i] = freqs.get(i);
+
+        // Build an equi-depth histogram of the remaining values, if they can
+        // be ordered.
+        Object[] bounds = null;
+        ArrayList<Object> others = new ArrayList<>();
+        for (int i = mcvs.size(); i < entries.size(); i++)
+            others.add(entries.get(i).getKey());
+
+        if (others.size() >= 2 && others.get(0) instanceof Comparable) {
+            others.sort((a, b) -> ((Comparable) a).compareTo(b));
+
+            int numOthers = numCounted - mcvCount;
+            bounds = new Object[NUM_HISTOGRAM_BUCKETS + 1];
+            int iBound = 0;
+            int seen = 0;
+            for (Object value : others) {
+                seen += counts.get(value);
+
+                // Bound i is the value at position i * (numOthers - 1) / B
+                // of the sorted values.
+                while (iBound <= NUM_HISTOGRAM_BUCKETS &&
+                       (long) iBound * (numOthers - 1) <
+                       (long) seen * NUM_HISTOGRAM_BUCKETS) {
+                    bounds[iBound++] = value;
+                }
+            }
+        }
+
+        stats.setDistribution(mcvs.toArray(), mcvFrequencies,
+            (float) (numNonNullValues - (double) mcvCount * numNonNullValues /
+                numCounted) / numRows, bounds);
     }
 }
@@ -6,7 +6,6 @@ import edu.caltech.nanodb.expressions.PredicateUtils;
 import edu.caltech.nanodb.plannodes.*;
 import edu.caltech.nanodb.queryast.FromClause;
 import edu.caltech.nanodb.queryast.SelectClause;
-import edu.caltech.nanodb.relations.JoinType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -115,6 +114,9 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
 
         var subqueryPlanner = new ExpressionPlanner(selClause, this, enclosingSelects);
 
+        // Find the columns the query reads, before aggregates are rewritten.
+        var scanColumns = findReferencedColumns(selClause);
+
         // 1. Pull out the top-level conjuncts from WHERE & FROM
         var conjuncts = new HashSet<Expression>();
         if (whereClause != null) {
@@ -133,6 +135,10 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
             var joinComp = makeJoinPlan(fromClause, conjuncts);
             plan = joinComp.joinPlan;
             conjuncts.removeAll(joinComp.conjunctsUsed); // to get the rest conjuncts
+
+            // Only decode the columns the query reads from its tables.
+            if (scanColumns != null)
+                PlanUtils.projectFileScans(plan, scanColumns);
         }
 
         // 3. Add unused conjuncts
@@ -143,6 +149,10 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
         if (subqueryPlanner.scanWhere())
             plan.setEnvironment(subqueryPlanner.getEnvironment()); // set an environment for subquery to look for
 
+        // Subquery plans are rerun too often for parallel scans to pay off.
+        if (enclosingSelects == null)
+            plan = addParallelScans(plan);
+
         /*=== Exactly the same with SimplePlanner ===*/
         // 4. Grouping & Aggregation: handle_grouping and aggregation
         plan = handleGroupAggregate(plan, selClause);
@@ -151,20 +161,29 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
 
         // 5. Order By: add order-by clause
         if (!selClause.getOrderByExprs().isEmpty())
-            plan = new SortNode(plan, selClause.getOrderByExprs());
+            plan = makeSortNode(plan, selClause.getOrderByExprs());
 
         // 6. Project: add a filter for columns
         if (!selClause.isTrivialProject()) {
-            plan = new ProjectNode(plan, selClause.getSelectValues());
-            if (subqueryPlanner.scanSelVals())
+            if (subqueryPlanner.scanSelVals()) {
+                plan = new ProjectNode(plan, selClause.getSelectValues());
                 plan.setEnvironment(subqueryPlanner.getEnvironment());
+            } else {
+                // Parallel scans can evaluate the projection in their workers.
+                plan = PlanUtils.addProjectToPlan(plan, selClause.getSelectValues());
+            }
         }
 
-        // 7. Limit & Offset: add a limiter for results
+        // 7. Distinct: remove duplicate rows
+        if (selClause.isDistinct())
+            plan = addDistinctToPlan(plan);
+
+        // 8. Limit & Offset: add a limiter for results
         if (selClause.getLimit() != 0 || selClause.getOffset() != 0)
             plan = new LimitOffsetNode(plan, selClause.getLimit(), selClause.getOffset());
 
         plan.prepare();
+        plan.bindExpressions();
         return plan;
     }
 
@@ -348,7 +367,7 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
                     fromClause.hasOuterJoinOnLeft() ? null : conjuncts);
                 leafConjuncts.addAll(lcomp.conjunctsUsed);
                 leafConjuncts.addAll(rcomp.conjunctsUsed);
-                node = new NestedLoopJoinNode(lcomp.joinPlan, rcomp.joinPlan,
+                node = makeNestedLoopJoin(lcomp.joinPlan, rcomp.joinPlan,
                     fromClause.getJoinType(), fromClause.getComputedJoinExpr());
                 break;
             default:
@@ -450,7 +469,7 @@ public class CostBasedJoinPlanner extends AbstractPlannerImpl {
 
                     /* Generate inner join node with predicate */
                     var pred = PredicateUtils.makePredicate(usableConjuncts);
-                    var newPlan = new NestedLoopJoinNode(joinNode, leaf, JoinType.INNER, pred);
+                    var newPlan = makeInnerJoin(joinNode, leaf, pred);
 
                     newPlan.prepare(); // update statistics
                     var newConjuncts = new HashSet<>(subplanConjuncts);
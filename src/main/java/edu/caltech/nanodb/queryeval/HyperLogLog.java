@@ -0,0 +1,224 @@
+package edu.caltech.nanodb.queryeval;
+
+
+/**
+ * <p>
+ * A HyperLogLog sketch, which estimates the number of distinct values added
+ * to it in a fixed amount of memory.  A sketch with precision <em>p</em>
+ * keeps 2<sup><em>p</em></sup> one-byte registers, and its estimates have a
+ * standard error of about 1.04 / &radic;2<sup><em>p</em></sup>; the default
+ * precision of 14 uses 16KB and is accurate to within about 1%.
+ * </p>
+ * <p>
+ * Each value is hashed to 64 bits.  The first <em>p</em> bits of the hash
+ * pick a register, and the register records the longest run of leading zero
+ * bits seen in the rest of the hash.  Small cardinalities, where many
+ * registers are still zero, are estimated by linear counting instead.
+ * Since the hashes are 64 bits wide, no correction is needed for very large
+ * cardinalities.
+ * </p>
+ * <p>
+ * Values are hashed with {@link Object#hashCode}, so values that are
+ * {@link Object#equals equal} are counted once.  Strings are hashed over all
+ * of their characters to 64 bits, so that distinct strings rarely collide.
+ * </p>
+ */
+public class HyperLogLog {
+
+    /** The default precision of a sketch. */
+    public static final int DEFAULT_PRECISION = 14;
+
+
+    /** The smallest precision a sketch may have. */
+    public static final int MIN_PRECISION = 4;
+
+
+    /** The largest precision a sketch may have. */
+    public static final int MAX_PRECISION = 18;
+
+
+    /** The number of bits of each hash used to choose a register. */
+    private int precision;
+
+
+    /**
+     * The registers of the sketch.  Each register holds the largest position
+     * of the first 1-bit seen in the hashes that mapped to it.
+     */
+    private byte[] registers;
+
+
+    /**
+     * Creates a new, empty sketch with the default precision.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+
+    /**
+     * Creates a new, empty sketch with the specified precision.
+     *
+     * @param precision the number of bits of each hash used to choose a
+     *        register, from {@link #MIN_PRECISION} to {@link #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(String.format(
+                "precision must be in range [%d, %d]; got %d",
+                MIN_PRECISION, MAX_PRECISION, precision));
+        }
+
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+
+    /**
+     * Returns the precision of this sketch.
+     *
+     * @return the precision of this sketch
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+
+    /**
+     * Adds a value to the sketch.  <tt>NULL</tt> values are ignored.
+     *
+     * @param value the value to add
+     */
+    public void add(Object value) {
+        if (value != null)
+            addHash(hash(value));
+    }
+
+
+    /**
+     * Adds a value to the sketch, given the value's 64-bit hash.  The hash's
+     * bits must be well mixed.
+     *
+     * @param hash the hash of the value to add
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+
+        // The position of the first 1-bit in the remaining bits, counting
+        // from 1.  A sentinel bit bounds the position when they are all 0.
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+
+        if (rank > registers[index])
+            registers[index] = rank;
+    }
+
+
+    /**
+     * Adds all the values counted by another sketch of the same precision
+     * to this sketch.
+     *
+     * @param other the sketch to merge into this one
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(
+                "Cannot merge sketches with different precisions");
+        }
+
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+        }
+    }
+
+
+    /**
+     * Returns the estimated number of distinct values added to the sketch.
+     *
+     * @return the estimated number of distinct values added to the sketch
+     */
+    public long estimate() {
+        int m = registers.length;
+
+        double sum = 0;
+        int numZero = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                numZero++;
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && numZero > 0) {
+            // Linear counting is more accurate for small cardinalities.
+            estimate = m * Math.log((double) m / numZero);
+        }
+
+        return Math.round(estimate);
+    }
+
+
+    /**
+     * Returns the number of bytes of memory used by the sketch's registers.
+     *
+     * @return the number of bytes used by the sketch's registers
+     */
+    public int getMemoryUsage() {
+        return registers.length;
+    }
+
+
+    /**
+     * Returns the bias-correction constant for a sketch with the specified
+     * number of registers.
+     */
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+
+    /**
+     * Returns a well-mixed 64-bit hash of a value.  Values that are equal
+     * have equal hashes.
+     *
+     * @param value the value to hash, which must not be <tt>null</tt>
+     * @return a 64-bit hash of the value
+     */
+    public static long hash(Object value) {
+        long h;
+        if (value instanceof String) {
+            String s = (String) value;
+            h = s.length();
+            for (int i = 0; i < s.length(); i++)
+                h = 31 * h + s.charAt(i);
+        } else {
+            h = value.hashCode();
+        }
+
+        return mix(h);
+    }
+
+
+    /**
+     * Spreads the bits of a hash across all 64 bits of the result, using
+     * the finalization step of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87c3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
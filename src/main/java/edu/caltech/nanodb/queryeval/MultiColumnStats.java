@@ -0,0 +1,227 @@
+package edu.caltech.nanodb.queryeval;
+
+
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * This class holds statistics about a group of columns of a table, declared
+ * with the <tt>CREATE STATISTICS</tt> command and collected by
+ * <tt>ANALYZE</tt>.  The statistics of individual columns can't describe
+ * columns whose values are correlated, such as a city and its postal code,
+ * so the selectivity of a conjunction of predicates on such columns is
+ * badly underestimated when each predicate is assumed to be independent.
+ * The statistics kept for a group are:
+ * </p>
+ * <ul>
+ *   <li>the number of distinct combinations of the columns' values, among
+ *       the rows where none of the columns is <tt>NULL</tt></li>
+ *   <li>for each ordered pair of columns <em>(a, b)</em>, the degree to
+ *       which <em>a</em> functionally determines <em>b</em>:  the fraction
+ *       of rows whose <em>a</em> value always occurs with the same
+ *       <em>b</em> value</li>
+ * </ul>
+ * <p>
+ * Each of these is unknown until the table is analyzed.  The columns are
+ * identified by their indexes in the table's schema, and their names are
+ * kept so that the columns can be found in the schemas of plan nodes.
+ * </p>
+ * <p>
+ * The {@link TableStats} holding a group links it to the {@link ColumnStats}
+ * of each of the group's columns, so that the group follows those columns
+ * through a plan, and the {@link SelectivityEstimator} can find it.
+ * </p>
+ */
+public class MultiColumnStats {
+
+    /** The smallest number of columns in a group. */
+    public static final int MIN_COLUMNS = 2;
+
+
+    /** The largest number of columns in a group. */
+    public static final int MAX_COLUMNS = 8;
+
+
+    /** The name of the statistics object. */
+    private String name;
+
+
+    /** The indexes of the group's columns in the table's schema. */
+    private int[] columnIndexes;
+
+
+    /** The names of the group's columns. */
+    private String[] columnNames;
+
+
+    /**
+     * The number of distinct combinations of the columns' values, or -1 if
+     * unknown.
+     */
+    private int numUniqueValues = -1;
+
+
+    /**
+     * The functional-dependency degree of each ordered pair of columns,
+     * where the degree of <em>a</em> &rarr; <em>b</em> is stored at
+     * <tt>a * n + b</tt>, or <tt>null</tt> if unknown.
+     */
+    private float[] dependencies;
+
+
+    /**
+     * Creates a new group of columns, with all statistics unknown.
+     *
+     * @param name the name of the statistics object
+     * @param columnIndexes the indexes of the columns in the table's schema
+     * @param columnNames the names of the columns
+     */
+    public MultiColumnStats(String name, int[] columnIndexes,
+                            String[] columnNames) {
+        if (name == null)
+            throw new IllegalArgumentException("name cannot be null");
+
+        if (columnIndexes.length != columnNames.length) {
+            throw new IllegalArgumentException(
+                "columnIndexes and columnNames must be the same length");
+        }
+
+        if (columnIndexes.length < MIN_COLUMNS ||
+            columnIndexes.length > MAX_COLUMNS) {
+            throw new IllegalArgumentException(String.format(
+                "A statistics object must have %d to %d columns; got %d",
+                MIN_COLUMNS, MAX_COLUMNS, columnIndexes.length));
+        }
+
+        this.name = name;
+        this.columnIndexes = columnIndexes;
+        this.columnNames = columnNames;
+    }
+
+
+    /**
+     * Creates a copy of a group's declaration, with all statistics unknown.
+     * This is used to start collecting the group's statistics again.
+     *
+     * @param other the group to copy
+     */
+    public MultiColumnStats(MultiColumnStats other) {
+        this(other.name, other.columnIndexes, other.columnNames);
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Returns the number of columns in the group.
+     *
+     * @return the number of columns in the group
+     */
+    public int getNumColumns() {
+        return columnIndexes.length;
+    }
+
+
+    public int[] getColumnIndexes() {
+        return columnIndexes;
+    }
+
+
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+
+    /**
+     * Returns the position of a column within the group, given its name.
+     *
+     * @param columnName the name of the column
+     * @return the position of the column in the group, or -1 if it isn't in
+     *         the group
+     */
+    public int getColumnPosition(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(columnName))
+                return i;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Returns the number of distinct combinations of the columns' values, or
+     * -1 if unknown.
+     *
+     * @return the number of distinct combinations of the columns' values
+     */
+    public int getNumUniqueValues() {
+        return numUniqueValues;
+    }
+
+
+    public void setNumUniqueValues(int numUniqueValues) {
+        if (numUniqueValues < -1) {
+            throw new IllegalArgumentException(
+                "numUniqueValues must be >= -1; got " + numUniqueValues);
+        }
+
+        this.numUniqueValues = numUniqueValues;
+    }
+
+
+    /**
+     * Returns true if the columns' functional-dependency degrees are known.
+     *
+     * @return true if the functional-dependency degrees are known
+     */
+    public boolean hasDependencies() {
+        return dependencies != null;
+    }
+
+
+    /**
+     * Returns the degree to which one column of the group functionally
+     * determines another.
+     *
+     * @param from the position in the group of the determining column
+     * @param to the position in the group of the determined column
+     * @return the dependency's degree in the range [0, 1], or -1 if unknown
+     */
+    public float getDependencyDegree(int from, int to) {
+        if (dependencies == null)
+            return -1;
+
+        return dependencies[from * columnIndexes.length + to];
+    }
+
+
+    /**
+     * Sets the functional-dependency degrees of the group's columns, or
+     * clears them if <tt>null</tt> is specified.
+     *
+     * @param dependencies the degree of each ordered pair of columns
+     *        <em>(a, b)</em>, stored at <tt>a * n + b</tt>
+     */
+    public void setDependencies(float[] dependencies) {
+        int n = columnIndexes.length;
+        if (dependencies != null && dependencies.length != n * n) {
+            throw new IllegalArgumentException(String.format(
+                "Expected %d dependency degrees; got %d", n * n,
+                dependencies.length));
+        }
+
+        this.dependencies = dependencies;
+    }
+
+
+    @Override
+    public String toString() {
+        return "MultiColumnStats[" + name + " " + Arrays.toString(columnNames) +
+            ", numUniqueValues=" + numUniqueValues + ", dependencies=" +
+            Arrays.toString(dependencies) + "]";
+    }
+}
@@ -0,0 +1,233 @@
+package edu.caltech.nanodb.queryeval;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * <p>
+ * This class collects the statistics of a group of columns of a table being
+ * analyzed (see {@link MultiColumnStats}).  Rows where any of the group's
+ * columns is <tt>NULL</tt> are skipped, since they can't satisfy equality
+ * predicates on the columns.
+ * </p>
+ * <p>
+ * As in {@link ColumnStatsCollector}, distinct combinations of values are
+ * counted exactly until there are more than
+ * {@link ColumnStatsCollector#MAX_EXACT_VALUES} of them, and with a
+ * {@link HyperLogLog} sketch after that.  Functional dependencies are
+ * computed from a uniform random sample of
+ * {@link ColumnStatsCollector#SAMPLE_SIZE} rows, kept by reservoir sampling.
+ * </p>
+ */
+public class MultiColumnStatsCollector {
+
+    /** The group of columns whose statistics are being collected. */
+    private MultiColumnStats declaration;
+
+
+    /**
+     * The number of times each distinct combination of values has been
+     * seen, or <tt>null</tt> once there are too many to count exactly.
+     */
+    private HashMap<List<Object>, Integer> valueCounts;
+
+
+    /**
+     * The sketch that counts distinct combinations of values once there are
+     * too many to count exactly, or <tt>null</tt> while they are still
+     * counted exactly.
+     */
+    private HyperLogLog sketch;
+
+
+    /** The number of rows seen, including those with <tt>NULL</tt>s. */
+    private int numRows;
+
+
+    /** The number of rows seen without any <tt>NULL</tt>s. */
+    private int numNonNullRows;
+
+
+    /** A uniform random sample of the rows without any <tt>NULL</tt>s. */
+    private ArrayList<Object[]> sample;
+
+
+    /** The source of randomness for {@link #sample}. */
+    private Random random;
+
+
+    /**
+     * Initializes a new collector for a group of columns.
+     *
+     * @param declaration the group of columns to collect statistics for;
+     *        only its name and columns are used
+     */
+    public MultiColumnStatsCollector(MultiColumnStats declaration) {
+        this.declaration = declaration;
+        valueCounts = new HashMap<>();
+        sketch = null;
+        sample = new ArrayList<>();
+        random = new Random();
+    }
+
+
+    /**
+     * Adds a row of the table to this collector.
+     *
+     * @param tuple the row of the table being analyzed
+     */
+    public void addTuple(Tuple tuple) {
+        numRows++;
+
+        int[] indexes = declaration.getColumnIndexes();
+        Object[] values = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = tuple.getColumnValue(indexes[i]);
+            if (values[i] == null)
+                return;
+        }
+
+        numNonNullRows++;
+        if (sample.size() < ColumnStatsCollector.SAMPLE_SIZE) {
+            sample.add(values);
+        } else {
+            int i = random.nextInt(numNonNullRows);
+            if (i < ColumnStatsCollector.SAMPLE_SIZE)
+                sample.set(i, values);
+        }
+
+        List<Object> key = Arrays.asList(values);
+        if (sketch != null) {
+            sketch.add(key);
+        } else {
+            valueCounts.merge(key, 1, Integer::sum);
+            if (valueCounts.size() > ColumnStatsCollector.MAX_EXACT_VALUES) {
+                sketch = new HyperLogLog();
+                for (List<Object> k : valueCounts.keySet())
+                    sketch.add(k);
+
+                valueCounts = null;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of distinct combinations of values seen.  This
+     * number is an estimate once there are too many to count exactly.
+     *
+     * @return the number of distinct combinations of values seen
+     */
+    public int getNumUniqueValues() {
+        if (sketch == null)
+            return valueCounts.size();
+
+        return (int) Math.min(sketch.estimate(), numNonNullRows);
+    }
+
+
+    /**
+     * Constructs and returns the statistics of the group of columns, from
+     * all of the table's rows.
+     *
+     * @return the statistics of the group of columns
+     */
+    public MultiColumnStats getMultiColumnStats() {
+        MultiColumnStats stats = new MultiColumnStats(declaration);
+        stats.setNumUniqueValues(getNumUniqueValues());
+        stats.setDependencies(computeDependencies());
+        return stats;
+    }
+
+
+    /**
+     * Constructs and returns the statistics of the group of columns for a
+     * whole table, when the rows given to this collector were a sample of
+     * the table's rows.  The number of distinct combinations is scaled as in
+     * {@link ColumnStatsCollector#getColumnStats(int)}; the dependency
+     * degrees are fractions, so they aren't scaled.
+     *
+     * @param totalRows the number of rows in the whole table
+     * @return the statistics of the group of columns
+     */
+    public MultiColumnStats getMultiColumnStats(int totalRows) {
+        MultiColumnStats stats = getMultiColumnStats();
+        if (numNonNullRows == 0 || totalRows <= numRows)
+            return stats;
+
+        int n = numNonNullRows;
+        int d = stats.getNumUniqueValues();
+        double f1;
+        if (sketch == null) {
+            f1 = 0;
+            for (int count : valueCounts.values()) {
+                if (count == 1)
+                    f1++;
+            }
+        } else {
+            f1 = Math.max(0, Math.min(d, 2.0 * d - n));
+        }
+
+        double bigN = (double) n * totalRows / numRows;
+        stats.setNumUniqueValues(
+            ColumnStatsCollector.scaleNumUniqueValues(n, d, f1, bigN));
+        return stats;
+    }
+
+
+    /**
+     * Computes the degree of each functional dependency between two of the
+     * group's columns from the sample of rows.  The degree of
+     * <em>a</em> &rarr; <em>b</em> is the fraction of sampled rows whose
+     * <em>a</em> value only occurs with one <em>b</em> value.
+     *
+     * @return the dependency degrees, as stored by {@link MultiColumnStats},
+     *         or <tt>null</tt> if no rows were sampled
+     */
+    private float[] computeDependencies() {
+        if (sample.isEmpty())
+            return null;
+
+        int n = declaration.getNumColumns();
+        float[] degrees = new float[n * n];
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                if (a == b) {
+                    degrees[a * n + b] = 1;
+                    continue;
+                }
+
+                // For each a value, the single b value it occurs with, or
+                // null if it occurs with several; and its number of rows.
+                HashMap<Object, Object> determined = new HashMap<>();
+                HashMap<Object, Integer> counts = new HashMap<>();
+                ArrayList<Object> inconsistent = new ArrayList<>();
+                for (Object[] row : sample) {
+                    Object prev = determined.putIfAbsent(row[a], row[b]);
+                    if (prev != null && !prev.equals(row[b]))
+                        inconsistent.add(row[a]);
+
+                    counts.merge(row[a], 1, Integer::sum);
+                }
+
+                for (Object value : inconsistent)
+                    counts.remove(value);
+
+                int supporting = 0;
+                for (int count : counts.values())
+                    supporting += count;
+
+                degrees[a * n + b] = (float) supporting / sample.size();
+            }
+        }
+
+        return degrees;
+    }
+}
@@ -5,6 +5,7 @@ import edu.caltech.nanodb.plannodes.PlanNode;
 
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.relations.TupleBatch;
 
 
 public class QueryEvaluator {
@@ -18,6 +19,26 @@ public class QueryEvaluator {
      * @return An object containing statistics about the plan evaluation.
      */
     public static EvalStats executePlan(PlanNode plan, TupleProcessor processor) {
+        return executePlan(plan, processor, false);
+    }
+
+
+    /**
+     * Executes the specified query plan, and feeds the results to the specified
+     * tuple processor.  If batches are allowed and the plan
+     * {@linkplain PlanNode#supportsBatches supports them}, the plan's results
+     * are retrieved in batches, and each row is copied out of its batch to be
+     * processed.  Batches should only be used when the processor doesn't
+     * need the plan's original tuples, e.g. to update them.
+     *
+     * @param plan      the query plan to execute
+     * @param processor the tuple-processor to receive the results
+     * @param allowBatches true if the plan's results may be retrieved in
+     *        batches
+     * @return An object containing statistics about the plan evaluation.
+     */
+    public static EvalStats executePlan(PlanNode plan, TupleProcessor processor,
+                                        boolean allowBatches) {
 
         // Execute the plan, and record some basic statistics as we go.
 
@@ -30,19 +51,31 @@ public class QueryEvaluator {
 
         int rowsProduced = 0;
         try {
-            Tuple tuple;
-            while (true) {
-                // Get the next tuple.  If there aren't anymore, we're done!
-                tuple = plan.getNextTuple();
-                if (tuple == null)
-                    break;
-
-                rowsProduced++;
-
-                // Do whatever we're supposed to do with the tuple
-                processor.process(tuple);
-
-                tuple.unpin();
+            if (allowBatches && plan.supportsBatches()) {
+                TupleBatch batch;
+                while ((batch = plan.getNextBatch()) != null) {
+                    // Copy each row out of the batch, since the batch is
+                    // reused, but the processor may hold onto the tuple.
+                    for (int i = 0; i < batch.size(); i++) {
+                        processor.process(batch.getTuple(i));
+                        rowsProduced++;
+                    }
+                }
+            } else {
+                Tuple tuple;
+                while (true) {
+                    // Get the next tuple.  If there aren't anymore, we're done!
+                    tuple = plan.getNextTuple();
+                    if (tuple == null)
+                        break;
+
+                    rowsProduced++;
+
+                    // Do whatever we're supposed to do with the tuple
+                    processor.process(tuple);
+
+                    tuple.unpin();
+                }
             }
         } finally {
             plan.cleanUp();
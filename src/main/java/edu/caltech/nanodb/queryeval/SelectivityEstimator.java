@@ -9,7 +9,10 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static edu.caltech.nanodb.expressions.CompareOperator.Type.*;
 
@@ -95,6 +98,11 @@ public class SelectivityEstimator {
      * table statistics and other estimates to make an educated guess.  The
      * result is between 0.0 and 1.0, with 1.0 meaning that all rows will be
      * selected by the predicate.
+     * <p>
+     * If the selectivity of the expression was observed when a plan was
+     * executed, and the tables it was evaluated over haven't changed much
+     * since, the observed selectivity is used instead of an estimate; see
+     * {@link CardinalityFeedback}.
      *
      * @param expr       the expression whose selectivity we are estimating
      * @param exprSchema a schema describing the environment that the expression
@@ -104,6 +112,12 @@ public class SelectivityEstimator {
      */
     public static float estimateSelectivity(Expression expr, Schema exprSchema,
                                             ArrayList<ColumnStats> stats) {
+        Float observed = CardinalityFeedback.lookup(expr, exprSchema);
+        if (observed != null) {
+            logger.debug("Using observed selectivity " + observed + " of " + expr);
+            return observed;
+        }
+
         float selectivity = DEFAULT_SELECTIVITY;
 
         if (expr instanceof BooleanOperator) {
@@ -129,6 +143,10 @@ public class SelectivityEstimator {
      * operation.  As one might expect, this method delegates to
      * {@link #estimateSelectivity} to compute the selectivity of individual
      * terms.
+     * <p>
+     * The terms of an <tt>AND</tt> are not treated as independent when they
+     * compare columns that have statistics as a group; see
+     * {@link #estimateConjunctionSelectivity}.
      *
      * @param bool       the compound Boolean expression
      * @param exprSchema a schema specifying the environment that the expression
@@ -145,10 +163,7 @@ public class SelectivityEstimator {
         switch (bool.getType()) {
             case AND_EXPR:
                 // a AND b AND c
-                for (int i = 0; i < bool.getNumTerms(); i++) {
-                    var term = bool.getTerm(i);
-                    selectivity *= estimateSelectivity(term, exprSchema, stats);
-                }
+                selectivity = estimateConjunctionSelectivity(bool, exprSchema, stats);
                 break;
 
             case OR_EXPR:
@@ -177,6 +192,419 @@ public class SelectivityEstimator {
     }
 
 
+    /**
+     * <p>
+     * Computes a selectivity estimate for the conjunction of the terms of an
+     * <tt>AND</tt> expression.  Terms are assumed to be independent, except
+     * for terms whose columns have statistics as a group (see
+     * {@link MultiColumnStats}):
+     * </p>
+     * <ul>
+     *   <li>Equalities between two or more of a group's columns and values
+     *       are estimated from the group's functional dependencies, or from
+     *       its number of distinct combinations if they cover the whole
+     *       group.</li>
+     *   <li>Equalities joining all of a group's columns to columns of
+     *       another table are estimated as 1 / max(<em>V</em><sub>1</sub>,
+     *       <em>V</em><sub>2</sub>), where each <em>V</em> is the number of
+     *       distinct combinations of one side's columns.  The other side's
+     *       combinations are counted by its own group if it has one, or else
+     *       by multiplying its columns' distinct counts.</li>
+     * </ul>
+     * <p>
+     * An estimate for a group of terms is kept between the product of the
+     * terms' selectivities, which is the independent estimate, and the
+     * smallest of their selectivities.
+     * </p>
+     *
+     * @param bool the <tt>AND</tt> expression
+     * @param exprSchema a schema specifying the environment that the
+     *        expression will be evaluated within
+     * @param stats a collection of column-statistics to use in making
+     *        selectivity estimates
+     * @return a selectivity estimate in the range [0, 1]
+     */
+    private static float estimateConjunctionSelectivity(BooleanOperator bool,
+        Schema exprSchema, ArrayList<ColumnStats> stats) {
+
+        int numTerms = bool.getNumTerms();
+        float[] termSelectivities = new float[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            termSelectivities[i] =
+                estimateSelectivity(bool.getTerm(i), exprSchema, stats);
+        }
+
+        // Estimating the terms normalized the comparisons, so columns are
+        // on the left of comparisons with values.
+        boolean[] used = new boolean[numTerms];
+        float selectivity =
+            estimateGroupEqualities(bool, exprSchema, stats, termSelectivities, used);
+        selectivity *=
+            estimateGroupJoins(bool, exprSchema, stats, termSelectivities, used);
+
+        for (int i = 0; i < numTerms; i++) {
+            if (!used[i])
+                selectivity *= termSelectivities[i];
+        }
+
+        return selectivity;
+    }
+
+
+    /**
+     * If the term is an equality comparison whose left side is a column of
+     * the schema, returns the column's index; otherwise returns -1.
+     */
+    private static int getEqualityColumn(Expression term, Schema exprSchema) {
+        if (!(term instanceof CompareOperator))
+            return -1;
+
+        CompareOperator comp = (CompareOperator) term;
+        if (comp.getType() != EQUALS ||
+            !(comp.getLeftExpression() instanceof ColumnValue)) {
+            return -1;
+        }
+
+        ColumnValue colValue = (ColumnValue) comp.getLeftExpression();
+        return exprSchema.getColumnIndex(colValue.getColumnName());
+    }
+
+
+    /**
+     * Records that a term compares the column at the specified index of the
+     * schema, for each group of columns that the column belongs to.  Groups
+     * are keyed by their statistics and by the name of the table the
+     * columns have in the schema, since a table can appear in a query more
+     * than once.  Each group maps to the term comparing each of its
+     * columns, or -1 where there is no such term.
+     */
+    private static void addGroupTerm(
+        Map<MultiColumnStats, Map<String, int[]>> groupTerms,
+        int colIndex, int term, Schema exprSchema, ArrayList<ColumnStats> stats) {
+
+        ColumnInfo colInfo = exprSchema.getColumnInfo(colIndex);
+        for (MultiColumnStats group : stats.get(colIndex).getMultiColumnStats()) {
+            int pos = group.getColumnPosition(colInfo.getName());
+            if (pos == -1)
+                continue;
+
+            int[] terms = groupTerms
+                .computeIfAbsent(group, g -> new LinkedHashMap<>())
+                .computeIfAbsent(colInfo.getTableName(), t -> {
+                    int[] a = new int[group.getNumColumns()];
+                    Arrays.fill(a, -1);
+                    return a;
+                });
+
+            if (terms[pos] == -1)
+                terms[pos] = term;
+        }
+    }
+
+
+    /**
+     * Estimates the combined selectivity of the terms that compare two or
+     * more columns of a group to values, and marks those terms as used.
+     * Groups covering the most terms are considered first.
+     *
+     * @return the combined selectivity of the terms that were used
+     */
+    private static float estimateGroupEqualities(BooleanOperator bool,
+        Schema exprSchema, ArrayList<ColumnStats> stats,
+        float[] termSelectivities, boolean[] used) {
+
+        Map<MultiColumnStats, Map<String, int[]>> groupTerms =
+            new LinkedHashMap<>();
+        for (int i = 0; i < bool.getNumTerms(); i++) {
+            Expression term = bool.getTerm(i);
+            int colIndex = getEqualityColumn(term, exprSchema);
+            if (colIndex != -1 && ((CompareOperator) term).getRightExpression()
+                                  instanceof LiteralValue) {
+                addGroupTerm(groupTerms, colIndex, i, exprSchema, stats);
+            }
+        }
+
+        ArrayList<Map.Entry<MultiColumnStats, int[]>> candidates =
+            new ArrayList<>();
+        for (Map.Entry<MultiColumnStats, Map<String, int[]>> entry :
+             groupTerms.entrySet()) {
+            for (int[] terms : entry.getValue().values())
+                candidates.add(Map.entry(entry.getKey(), terms));
+        }
+        candidates.sort((a, b) ->
+            countTerms(b.getValue(), used) - countTerms(a.getValue(), used));
+
+        float selectivity = 1.0f;
+        for (Map.Entry<MultiColumnStats, int[]> candidate : candidates) {
+            int[] terms = candidate.getValue();
+            if (countTerms(terms, used) < MultiColumnStats.MIN_COLUMNS)
+                continue;
+
+            // Terms that another group already used aren't available.
+            int[] available = terms.clone();
+            for (int pos = 0; pos < available.length; pos++) {
+                if (available[pos] != -1 && used[available[pos]])
+                    available[pos] = -1;
+            }
+
+            float groupSelectivity = estimateGroupEquality(candidate.getKey(),
+                available, termSelectivities);
+            if (groupSelectivity < 0)
+                continue;
+
+            selectivity *= groupSelectivity;
+            for (int term : available) {
+                if (term != -1)
+                    used[term] = true;
+            }
+
+            logger.debug(String.format("Estimated selectivity of equalities " +
+                "on statistics %s as %f", candidate.getKey().getName(),
+                groupSelectivity));
+        }
+
+        return selectivity;
+    }
+
+
+    /** Counts the terms of a group that haven't been used yet. */
+    private static int countTerms(int[] terms, boolean[] used) {
+        int count = 0;
+        for (int term : terms) {
+            if (term != -1 && !used[term])
+                count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Estimates the selectivity of equalities between some of a group's
+     * columns and values.  With functional dependencies, the column that
+     * best determines the others is taken first; then each remaining column
+     * <em>b</em> is added in turn, as the one most strongly determined by a
+     * column <em>a</em> already taken, using
+     * <em>P</em>(<em>a</em>, <em>b</em>) = <em>P</em>(<em>a</em>)
+     * (<em>d</em> + (1 - <em>d</em>) <em>P</em>(<em>b</em>)), where
+     * <em>d</em> is the degree of <em>a</em> &rarr; <em>b</em>.
+     *
+     * @param group the statistics of the group of columns
+     * @param terms the term comparing each of the group's columns, or -1
+     * @param termSelectivities the selectivity of each term on its own
+     * @return a selectivity estimate in the range [0, 1], or -1 if the
+     *         group's statistics can't be used for the terms
+     */
+    private static float estimateGroupEquality(MultiColumnStats group,
+        int[] terms, float[] termSelectivities) {
+
+        int n = terms.length;
+        float product = 1.0f;
+        float minimum = 1.0f;
+        int numCovered = 0;
+        for (int term : terms) {
+            if (term != -1) {
+                product *= termSelectivities[term];
+                minimum = Math.min(minimum, termSelectivities[term]);
+                numCovered++;
+            }
+        }
+
+        float selectivity;
+        if (group.hasDependencies()) {
+            int first = -1;
+            float bestTotal = -1;
+            for (int a = 0; a < n; a++) {
+                if (terms[a] == -1)
+                    continue;
+
+                float total = 0;
+                for (int b = 0; b < n; b++) {
+                    if (b != a && terms[b] != -1)
+                        total += group.getDependencyDegree(a, b);
+                }
+
+                if (total > bestTotal) {
+                    first = a;
+                    bestTotal = total;
+                }
+            }
+
+            boolean[] taken = new boolean[n];
+            taken[first] = true;
+            selectivity = termSelectivities[terms[first]];
+            for (int k = 1; k < numCovered; k++) {
+                int next = -1;
+                float degree = -1;
+                for (int b = 0; b < n; b++) {
+                    if (terms[b] == -1 || taken[b])
+                        continue;
+
+                    for (int a = 0; a < n; a++) {
+                        if (taken[a] && group.getDependencyDegree(a, b) > degree) {
+                            next = b;
+                            degree = group.getDependencyDegree(a, b);
+                        }
+                    }
+                }
+
+                taken[next] = true;
+                selectivity *= degree + (1 - degree) *
+                    termSelectivities[terms[next]];
+            }
+        } else if (numCovered == n && group.getNumUniqueValues() > 0) {
+            selectivity = 1.0f / group.getNumUniqueValues();
+        } else {
+            return -1;
+        }
+
+        return Math.max(product, Math.min(selectivity, minimum));
+    }
+
+
+    /**
+     * Estimates the combined selectivity of equijoin terms that compare all
+     * of a group's columns to columns of another table, and marks those
+     * terms as used.
+     *
+     * @return the combined selectivity of the terms that were used
+     */
+    private static float estimateGroupJoins(BooleanOperator bool,
+        Schema exprSchema, ArrayList<ColumnStats> stats,
+        float[] termSelectivities, boolean[] used) {
+
+        // The column on each side of each join term, or -1 for other terms.
+        int numTerms = bool.getNumTerms();
+        int[][] sides = new int[numTerms][];
+        Map<MultiColumnStats, Map<String, int[]>> groupTerms =
+            new LinkedHashMap<>();
+        for (int i = 0; i < numTerms; i++) {
+            Expression term = bool.getTerm(i);
+            int leftIndex = getEqualityColumn(term, exprSchema);
+            if (leftIndex == -1 || used[i] || !(((CompareOperator) term)
+                .getRightExpression() instanceof ColumnValue)) {
+                continue;
+            }
+
+            ColumnValue right =
+                (ColumnValue) ((CompareOperator) term).getRightExpression();
+            int rightIndex = exprSchema.getColumnIndex(right.getColumnName());
+            if (rightIndex == -1)
+                continue;
+
+            String leftTable = exprSchema.getColumnInfo(leftIndex).getTableName();
+            String rightTable = exprSchema.getColumnInfo(rightIndex).getTableName();
+            if (leftTable == null || rightTable == null ||
+                leftTable.equals(rightTable)) {
+                continue;
+            }
+
+            sides[i] = new int[] {leftIndex, rightIndex};
+            addGroupTerm(groupTerms, leftIndex, i, exprSchema, stats);
+            addGroupTerm(groupTerms, rightIndex, i, exprSchema, stats);
+        }
+
+        float selectivity = 1.0f;
+        for (Map.Entry<MultiColumnStats, Map<String, int[]>> entry :
+             groupTerms.entrySet()) {
+            MultiColumnStats group = entry.getKey();
+            for (Map.Entry<String, int[]> tableTerms : entry.getValue().entrySet()) {
+                int[] terms = tableTerms.getValue();
+                if (countTerms(terms, used) < terms.length ||
+                    group.getNumUniqueValues() <= 0) {
+                    continue;
+                }
+
+                float joinSelectivity = estimateGroupJoin(group,
+                    tableTerms.getKey(), terms, sides, exprSchema, stats,
+                    termSelectivities);
+                if (joinSelectivity < 0)
+                    continue;
+
+                selectivity *= joinSelectivity;
+                for (int term : terms)
+                    used[term] = true;
+
+                logger.debug(String.format("Estimated selectivity of join " +
+                    "on statistics %s as %f", group.getName(), joinSelectivity));
+            }
+        }
+
+        return selectivity;
+    }
+
+
+    /**
+     * Estimates the selectivity of equijoin terms that compare all of a
+     * group's columns to columns of another table.
+     *
+     * @return a selectivity estimate in the range [0, 1], or -1 if the other
+     *         side's number of distinct combinations is unknown
+     */
+    private static float estimateGroupJoin(MultiColumnStats group,
+        String tableName, int[] terms, int[][] sides, Schema exprSchema,
+        ArrayList<ColumnStats> stats, float[] termSelectivities) {
+
+        // Find the column on the other side of each term.
+        int[] others = new int[terms.length];
+        for (int pos = 0; pos < terms.length; pos++) {
+            int[] side = sides[terms[pos]];
+            others[pos] = tableName.equals(
+                exprSchema.getColumnInfo(side[0]).getTableName()) ?
+                side[1] : side[0];
+        }
+
+        String otherTable = exprSchema.getColumnInfo(others[0]).getTableName();
+
+        // The other side's number of distinct combinations, from its own
+        // group if one covers exactly its columns.
+        long otherUnique = -1;
+        for (MultiColumnStats otherGroup :
+             stats.get(others[0]).getMultiColumnStats()) {
+            if (otherGroup == group ||
+                otherGroup.getNumColumns() != others.length ||
+                otherGroup.getNumUniqueValues() <= 0) {
+                continue;
+            }
+
+            boolean covers = true;
+            for (int other : others) {
+                ColumnInfo otherInfo = exprSchema.getColumnInfo(other);
+                if (!otherInfo.getTableName().equals(otherTable) ||
+                    otherGroup.getColumnPosition(otherInfo.getName()) == -1) {
+                    covers = false;
+                }
+            }
+
+            if (covers) {
+                otherUnique = otherGroup.getNumUniqueValues();
+                break;
+            }
+        }
+
+        if (otherUnique == -1) {
+            otherUnique = 1;
+            for (int other : others) {
+                int unique = stats.get(other).getNumUniqueValues();
+                if (unique <= 0)
+                    return -1;
+
+                otherUnique = Math.min(Integer.MAX_VALUE, otherUnique * unique);
+            }
+        }
+
+        float product = 1.0f;
+        float minimum = 1.0f;
+        for (int term : terms) {
+            product *= termSelectivities[term];
+            minimum = Math.min(minimum, termSelectivities[term]);
+        }
+
+        float selectivity =
+            1.0f / Math.max(group.getNumUniqueValues(), otherUnique);
+        return Math.max(product, Math.min(selectivity, minimum));
+    }
+
+
     /**
      * This function computes a selectivity estimate for a general comparison
      * operation.  The method examines the types of the arguments in the
@@ -271,6 +699,21 @@ public class SelectivityEstimator {
         if (uniqueNum == 0 || value == null)
             return 0;
 
+        // If the column's distribution is known, use it instead of assuming
+        // that values are uniformly distributed.
+        if (colStats.hasDistribution()) {
+            try {
+                float distSelectivity = estimateFromDistribution(compType,
+                    TypeConverter.coerceTo(value, colInfo.getType()), sqlType,
+                    colStats);
+                if (distSelectivity >= 0)
+                    return distSelectivity;
+            } catch (TypeCastException e) {
+                // The value can't be compared to the column's values, so
+                // fall back to the simpler estimates.
+            }
+        }
+
         switch (compType) {
             case EQUALS:
             case NOT_EQUALS:
@@ -313,6 +756,230 @@ public class SelectivityEstimator {
     }
 
 
+    /**
+     * Estimates the selectivity of a comparison between a column and a value
+     * from the column's distribution.  Equality uses the value's frequency
+     * if it is one of the most common values, and otherwise assumes that the
+     * other values are equally common.  Inequalities add up the frequencies
+     * of the most common values in the range, and the fraction of the
+     * histogram's buckets in the range.
+     *
+     * @param compType the type of the comparison
+     * @param value the value the column is compared to, coerced to the
+     *        column's type
+     * @param sqlType the column's base SQL type
+     * @param colStats the column's statistics, which must include its
+     *        distribution
+     * @return a selectivity estimate in the range [0, 1], or -1 if the
+     *         distribution can't be used for the comparison
+     */
+    private static float estimateFromDistribution(CompareOperator.Type compType,
+        Object value, SQLDataType sqlType, ColumnStats colStats) {
+
+        float nonNull = colStats.getNonNullFraction();
+        float selectivity;
+
+        switch (compType) {
+            case EQUALS:
+                selectivity = estimateEqualsFraction(value, colStats);
+                break;
+
+            case NOT_EQUALS:
+                selectivity = nonNull - estimateEqualsFraction(value, colStats);
+                break;
+
+            case LESS_THAN:
+            case LESS_OR_EQUAL:
+                selectivity = estimateBelowFraction(value,
+                    compType == LESS_OR_EQUAL, sqlType, colStats);
+                if (selectivity < 0)
+                    return -1;
+                break;
+
+            case GREATER_THAN:
+            case GREATER_OR_EQUAL:
+                // The rows that aren't below the value, or NULL.
+                selectivity = estimateBelowFraction(value,
+                    compType == GREATER_THAN, sqlType, colStats);
+                if (selectivity < 0)
+                    return -1;
+                selectivity = nonNull - selectivity;
+                break;
+
+            default:
+                return -1;
+        }
+
+        // Rounding can push the estimate slightly outside of [0, 1].
+        if (selectivity < 0)
+            return 0;
+
+        return Math.min(selectivity, 1.0f);
+    }
+
+
+    /**
+     * Estimates the fraction of a table's rows where a column equals the
+     * specified value, from the column's distribution.
+     *
+     * @param value the value, coerced to the column's type
+     * @param colStats the column's statistics, including its distribution
+     * @return the fraction of the table's rows holding the value
+     */
+    static float estimateEqualsFraction(Object value, ColumnStats colStats) {
+        float freq = colStats.getMCVFrequency(value);
+        if (freq >= 0)
+            return freq;
+
+        int numOthers = colStats.getNumUniqueValues() -
+            colStats.getMCVValues().length;
+        if (numOthers <= 0)
+            return 0;
+
+        return colStats.getOtherFraction() / numOthers;
+    }
+
+
+    /**
+     * Estimates the fraction of a table's rows where a column is less than
+     * (or equal to) the specified value, from the column's distribution.
+     *
+     * @param value the value, coerced to the column's type
+     * @param inclusive true if rows equal to the value are included
+     * @param sqlType the column's base SQL type
+     * @param colStats the column's statistics, including its distribution
+     * @return the fraction of the table's rows below the value, or -1 if
+     *         the column's values can't be ordered
+     */
+    @SuppressWarnings("unchecked")
+    static float estimateBelowFraction(Object value, boolean inclusive,
+                                       SQLDataType sqlType, ColumnStats colStats) {
+        if (!(value instanceof Comparable))
+            return -1;
+
+        Comparable comp = (Comparable) value;
+
+        float fraction = 0;
+        Object[] mcvs = colStats.getMCVValues();
+        float[] freqs = colStats.getMCVFrequencies();
+        for (int i = 0; i < mcvs.length; i++) {
+            if (!(mcvs[i] instanceof Comparable))
+                return -1;
+
+            int cmp = comp.compareTo(mcvs[i]);
+            if (cmp > 0 || (inclusive && cmp == 0))
+                fraction += freqs[i];
+        }
+
+        float otherFraction = colStats.getOtherFraction();
+        if (otherFraction > 0) {
+            float ratio = estimateHistogramRatio(comp, sqlType, colStats);
+            if (ratio < 0)
+                return -1;
+
+            fraction += otherFraction * ratio;
+        }
+
+        return fraction;
+    }
+
+
+    /**
+     * Estimates the fraction of the column's values other than the most
+     * common values that are less than the specified value.  The column's
+     * histogram is used if it has one, interpolating within the bucket
+     * holding the value; otherwise the values are assumed to be uniformly
+     * distributed between the column's minimum and maximum values.
+     *
+     * @return the estimated fraction in the range [0, 1], or -1 if there is
+     *         no way to estimate it
+     */
+    @SuppressWarnings("unchecked")
+    private static float estimateHistogramRatio(Comparable value,
+        SQLDataType sqlType, ColumnStats colStats) {
+
+        Object[] bounds = colStats.getHistogramBounds();
+        boolean canInterpolate = typeSupportsCompareEstimates(sqlType);
+
+        if (bounds == null) {
+            if (canInterpolate && colStats.hasDifferentMinMaxValues()) {
+                return computeRatio(colStats.getMinValue(), value,
+                    colStats.getMinValue(), colStats.getMaxValue());
+            }
+
+            return -1;
+        }
+
+        int numBuckets = bounds.length - 1;
+        if (value.compareTo(bounds[0]) <= 0)
+            return 0;
+
+        if (value.compareTo(bounds[numBuckets]) > 0)
+            return 1;
+
+        // Find the bucket holding the value:  the last one whose lower bound
+        // is below the value.
+        int lo = 0;
+        int hi = numBuckets - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) / 2;
+            if (value.compareTo(bounds[mid]) > 0)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+
+        float within = 0.5f;
+        if (canInterpolate && !bounds[lo].equals(bounds[lo + 1]))
+            within = computeRatio(bounds[lo], value, bounds[lo], bounds[lo + 1]);
+
+        return (lo + within) / numBuckets;
+    }
+
+
+    /**
+     * Estimates the selectivity of an equijoin between two columns from
+     * their distributions.  Values that are most common in both columns
+     * contribute the product of their frequencies; the remaining rows of
+     * each column are assumed to match the other column's remaining values
+     * uniformly, as in the usual 1 / max(V(R,a), V(S,b)) estimate.
+     *
+     * @param stats1 the statistics of the first column
+     * @param stats2 the statistics of the second column
+     * @return a selectivity estimate in the range [0, 1]
+     */
+    private static float estimateEquiJoinFromDistribution(ColumnStats stats1,
+                                                          ColumnStats stats2) {
+        float nonNull1 = stats1.hasDistribution() ? stats1.getNonNullFraction() : 1;
+        float nonNull2 = stats2.hasDistribution() ? stats2.getNonNullFraction() : 1;
+
+        float matched = 0;
+        float matched1 = 0;
+        float matched2 = 0;
+        int numMatched = 0;
+        if (stats1.hasDistribution() && stats2.hasDistribution()) {
+            Object[] mcvs1 = stats1.getMCVValues();
+            float[] freqs1 = stats1.getMCVFrequencies();
+            for (int i = 0; i < mcvs1.length; i++) {
+                float freq2 = stats2.getMCVFrequency(mcvs1[i]);
+                if (freq2 >= 0) {
+                    matched += freqs1[i] * freq2;
+                    matched1 += freqs1[i];
+                    matched2 += freq2;
+                    numMatched++;
+                }
+            }
+        }
+
+        int others1 = stats1.getNumUniqueValues() - numMatched;
+        int others2 = stats2.getNumUniqueValues() - numMatched;
+        float rest = Math.max(0, nonNull1 - matched1) *
+            Math.max(0, nonNull2 - matched2) / Math.max(1, Math.max(others1, others2));
+
+        return Math.min(1.0f, matched + rest);
+    }
+
+
     /**
      * This helper function computes a selectivity estimate for a comparison
      * between two columns.  Examples would be <tt>T1.A = T2.A</tt>.
@@ -361,7 +1028,10 @@ public class SelectivityEstimator {
             case NOT_EQUALS:
                 // assume: 1/V(R,a) tuples satisfy; take the minimum one
                 // NOTE: to support all types, cannot use (max1-min1)∩(max2-min2)/(max-min)
-                selectivity = 1 / Float.max(uniqueNumOne, uniqueNumTwo);
+                if (colOneStats.hasDistribution() || colTwoStats.hasDistribution())
+                    selectivity = estimateEquiJoinFromDistribution(colOneStats, colTwoStats);
+                else
+                    selectivity = 1 / Float.max(uniqueNumOne, uniqueNumTwo);
                 if (compType == NOT_EQUALS) {
                     selectivity = 1 - selectivity;
                 }
@@ -44,6 +44,9 @@ public class SimplePlanner extends AbstractPlannerImpl {
         var fromClause = selClause.getFromClause();
         var whereClause = selClause.getWhereExpr();
 
+        // Find the columns the query reads, before aggregates are rewritten.
+        var scanColumns = findReferencedColumns(selClause);
+
         // 1. FromClause: generate plan node
         if (fromClause == null) {
             logger.debug("From: 0 table");
@@ -53,6 +56,10 @@ public class SimplePlanner extends AbstractPlannerImpl {
             // non-Join: no predicate
             // Join: ON or USING is defined in fromClause
             plan = makeSelect(fromClause);
+
+            // Only decode the columns the query reads from its tables.
+            if (scanColumns != null)
+                PlanUtils.projectFileScans(plan, scanColumns);
         }
 
         // 2. WhereClause: add where clause
@@ -68,7 +75,7 @@ public class SimplePlanner extends AbstractPlannerImpl {
         // 4. Order By: add order-by clause
         if (!selClause.getOrderByExprs().isEmpty()) {
             logger.debug("Order By: " + selClause.getOrderByExprs());
-            plan = new SortNode(plan, selClause.getOrderByExprs());
+            plan = makeSortNode(plan, selClause.getOrderByExprs());
         }
 
         // 5. Project: add a filter for columns
@@ -76,11 +83,16 @@ public class SimplePlanner extends AbstractPlannerImpl {
             plan = new ProjectNode(plan, selClause.getSelectValues());
         }
 
-        // 6. Limit & Offset: add a limiter for results
+        // 6. Distinct: remove duplicate rows
+        if (selClause.isDistinct())
+            plan = addDistinctToPlan(plan);
+
+        // 7. Limit & Offset: add a limiter for results
         if (selClause.getLimit() != 0 || selClause.getOffset() != 0)
             plan = new LimitOffsetNode(plan, selClause.getLimit(), selClause.getOffset());
 
         plan.prepare();
+        plan.bindExpressions();
         return plan;
     }
 
@@ -104,7 +116,7 @@ public class SimplePlanner extends AbstractPlannerImpl {
                 var r_node = makeSelect(fromClause.getRightChild());
 
                 validateExpression(fromClause.getComputedJoinExpr(), "ON");
-                node = new NestedLoopJoinNode(l_node, r_node, fromClause.getJoinType(), fromClause.getComputedJoinExpr());
+                node = makeNestedLoopJoin(l_node, r_node, fromClause.getJoinType(), fromClause.getComputedJoinExpr());
                 break;
             case SELECT_SUBQUERY:
                 node = makePlan(fromClause.getSelectClause(), null);
@@ -125,6 +125,7 @@ public class SimplestPlanner implements Planner {
         // predicate.
         SelectNode selectNode = new FileScanNode(tableInfo, predicate);
         selectNode.prepare();
+        selectNode.bindExpressions();
         return selectNode;
     }
 }
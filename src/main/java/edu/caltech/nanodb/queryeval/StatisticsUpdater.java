@@ -3,6 +3,7 @@ package edu.caltech.nanodb.queryeval;
 
 import edu.caltech.nanodb.expressions.*;
 import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.SQLDataType;
 import edu.caltech.nanodb.relations.Schema;
 
 import java.util.ArrayList;
@@ -123,12 +124,25 @@ public class StatisticsUpdater {
             ColumnStats stat = stats.get(colIdx);
 
             var selectivity = SelectivityEstimator.estimateSelectivity(comp, schema, (ArrayList<ColumnStats>) stats);
+
+            // The distribution is updated first, since it is updated from the
+            // column's statistics before the comparison.
+            boolean hadDistribution = stat.hasDistribution();
+            if (hadDistribution)
+                updateDistribution(comp.getType(), value, colInfo, stat, selectivity);
+
             switch (comp.getType()) {
                 case EQUALS:
-                    stat.setNumUniqueValues((int) (stat.getNumUniqueValues() * selectivity));
+                    // At most one value remains.
+                    stat.setNumUniqueValues(Math.min(stat.getNumUniqueValues(), 1));
                     break;
                 case NOT_EQUALS:
-                    stat.setNumUniqueValues((int) (stat.getNumUniqueValues() * selectivity));
+                    // The selectivity is a fraction of rows, not of values,
+                    // when the distribution is known.
+                    if (hadDistribution)
+                        stat.setNumUniqueValues(Math.max(0, stat.getNumUniqueValues() - 1));
+                    else
+                        stat.setNumUniqueValues((int) (stat.getNumUniqueValues() * selectivity));
                     break;
                 case GREATER_OR_EQUAL:
                 case GREATER_THAN:
@@ -143,4 +157,139 @@ public class StatisticsUpdater {
             }
         }
     }
+
+
+    /**
+     * Updates a column's distribution to describe the rows that satisfy a
+     * comparison between the column and a value.  Only the most common values
+     * that satisfy the comparison are kept, and the frequencies are scaled up
+     * so that they are fractions of the rows that satisfy it.  The histogram
+     * is dropped after an inequality, since its buckets would no longer hold
+     * equal fractions of the rows; the remaining values are then assumed to
+     * be uniform between the column's new minimum and maximum values.
+     *
+     * @param compType   the type of the comparison
+     * @param value      the value the column is compared to, coerced to the
+     *                   column's type
+     * @param colInfo    the column's information
+     * @param stat       the column's statistics, including its distribution
+     * @param selectivity the selectivity of the comparison
+     */
+    @SuppressWarnings("unchecked")
+    private static void updateDistribution(CompareOperator.Type compType,
+        Object value, ColumnInfo colInfo, ColumnStats stat, float selectivity) {
+
+        if (selectivity <= 0 || value == null) {
+            stat.clearDistribution();
+            return;
+        }
+
+        if (compType == CompareOperator.Type.EQUALS) {
+            // Every remaining row holds the value.
+            stat.setDistribution(new Object[] {value}, new float[] {1.0f}, 0, null);
+            return;
+        }
+
+        if (!(value instanceof Comparable) &&
+            compType != CompareOperator.Type.NOT_EQUALS) {
+            stat.clearDistribution();
+            return;
+        }
+
+        SQLDataType sqlType = colInfo.getType().getBaseType();
+        float otherFraction = stat.getOtherFraction();
+        Object[] bounds = stat.getHistogramBounds();
+
+        switch (compType) {
+            case NOT_EQUALS:
+                if (stat.getMCVFrequency(value) < 0) {
+                    otherFraction -=
+                        SelectivityEstimator.estimateEqualsFraction(value, stat);
+                }
+                break;
+
+            case LESS_THAN:
+            case LESS_OR_EQUAL:
+            case GREATER_THAN:
+            case GREATER_OR_EQUAL: {
+                // Work out the fraction of the other values in the range from
+                // the fraction of all values below the value.
+                float mcvBelow = 0;
+                for (int i = 0; i < stat.getMCVValues().length; i++) {
+                    if (keepValue(CompareOperator.Type.LESS_THAN, value,
+                                  stat.getMCVValues()[i])) {
+                        mcvBelow += stat.getMCVFrequencies()[i];
+                    }
+                }
+
+                float below = SelectivityEstimator.estimateBelowFraction(
+                    value, false, sqlType, stat);
+                if (below < 0) {
+                    stat.clearDistribution();
+                    return;
+                }
+
+                float otherBelow = below - mcvBelow;
+                if (compType == CompareOperator.Type.LESS_THAN ||
+                    compType == CompareOperator.Type.LESS_OR_EQUAL) {
+                    otherFraction = otherBelow;
+                } else {
+                    otherFraction -= otherBelow;
+                }
+
+                bounds = null;
+                break;
+            }
+
+            default:
+                stat.clearDistribution();
+                return;
+        }
+
+        ArrayList<Object> mcvs = new ArrayList<>();
+        ArrayList<Float> freqs = new ArrayList<>();
+        for (int i = 0; i < stat.getMCVValues().length; i++) {
+            Object mcv = stat.getMCVValues()[i];
+            if (keepValue(compType, value, mcv)) {
+                mcvs.add(mcv);
+                freqs.add(Math.min(1.0f, stat.getMCVFrequencies()[i] / selectivity));
+            }
+        }
+
+        float[] mcvFrequencies = new float[freqs.size()];
+        for (int i = 0; i < mcvFrequencies.length; i++)
+            mcvFrequencies[i] = freqs.get(i);
+
+        stat.setDistribution(mcvs.toArray(), mcvFrequencies,
+            Math.min(1.0f, Math.max(0, otherFraction) / selectivity), bounds);
+    }
+
+
+    /**
+     * Returns true if a column-value satisfies "<tt>colValue</tt> op
+     * <tt>value</tt>" for the specified comparison.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean keepValue(CompareOperator.Type compType,
+                                     Object value, Object colValue) {
+        if (compType == CompareOperator.Type.NOT_EQUALS)
+            return !colValue.equals(value);
+
+        if (!(colValue instanceof Comparable))
+            return false;
+
+        int cmp = ((Comparable) colValue).compareTo(value);
+        switch (compType) {
+            case LESS_THAN:
+                return cmp < 0;
+            case LESS_OR_EQUAL:
+                return cmp <= 0;
+            case GREATER_THAN:
+                return cmp > 0;
+            case GREATER_OR_EQUAL:
+                return cmp >= 0;
+            default:
+                return cmp == 0;
+        }
+    }
 }
@@ -2,10 +2,15 @@ package edu.caltech.nanodb.queryeval;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
- * This class is a simple wrapper for table-file statistics.
+ * This class is a simple wrapper for table-file statistics.  Besides the
+ * statistics of each column, a table may have statistics about groups of
+ * its columns, declared with <tt>CREATE STATISTICS</tt>; each group is
+ * linked to the stats of its columns (see {@link MultiColumnStats}).
  */
 public class TableStats {
 
@@ -36,6 +41,10 @@ public class TableStats {
     private ArrayList<ColumnStats> columnStats;
 
 
+    /** The statistics of groups of the table's columns. */
+    private ArrayList<MultiColumnStats> multiColumnStats = new ArrayList<>();
+
+
     /**
      * Create a new table-statistics object with the stats set to the specified
      * values.  The array of column-statistics objects must have the same number
@@ -97,6 +106,60 @@ public class TableStats {
     }
 
 
+    /**
+     * Returns the statistics of the groups of columns declared on this table.
+     *
+     * @return the statistics of the table's groups of columns
+     */
+    public List<MultiColumnStats> getMultiColumnStats() {
+        return Collections.unmodifiableList(multiColumnStats);
+    }
+
+
+    /**
+     * Returns the statistics of the group of columns with the specified
+     * name, or <tt>null</tt> if there is no such group.
+     *
+     * @param name the name of the statistics object
+     * @return the statistics of the group, or <tt>null</tt>
+     */
+    public MultiColumnStats getMultiColumnStats(String name) {
+        for (MultiColumnStats stats : multiColumnStats) {
+            if (stats.getName().equals(name))
+                return stats;
+        }
+        return null;
+    }
+
+
+    /**
+     * Adds the statistics of a group of columns to this table's statistics,
+     * and links them to the stats of each of the group's columns.
+     *
+     * @param stats the statistics of the group of columns
+     */
+    public void addMultiColumnStats(MultiColumnStats stats) {
+        multiColumnStats.add(stats);
+        for (int index : stats.getColumnIndexes())
+            columnStats.get(index).addMultiColumnStats(stats);
+    }
+
+
+    /**
+     * Replaces the statistics of all groups of columns of this table.
+     *
+     * @param stats the statistics of the table's groups of columns
+     */
+    public void setMultiColumnStats(List<MultiColumnStats> stats) {
+        multiColumnStats.clear();
+        for (ColumnStats colStats : columnStats)
+            colStats.clearMultiColumnStats();
+
+        for (MultiColumnStats s : stats)
+            addMultiColumnStats(s);
+    }
+
+
     @Override
     public String toString() {
         return "TableStats[numDataPages=" + numDataPages + ", numTuples=" +
@@ -0,0 +1,419 @@
+package edu.caltech.nanodb.relations;
+
+
+import java.util.Arrays;
+
+import edu.caltech.nanodb.storage.PageTuple;
+
+
+/**
+ * <p>
+ * This class holds the values of one column of a {@link TupleBatch}.
+ * Values of <tt>INTEGER</tt>, <tt>BIGINT</tt>, <tt>FLOAT</tt> and
+ * <tt>DOUBLE</tt> columns are stored in arrays of the corresponding
+ * primitive type, so that operators can process them without boxing each
+ * value; values of all other types are stored as objects.  <tt>NULL</tt>s
+ * are recorded in a bitmap.
+ * </p>
+ * <p>
+ * A vector has a fixed capacity, and its values are accessed by row index.
+ * Values can be appended, or set at a specific row index; rows that are
+ * never set are <tt>NULL</tt>.  If a value is stored that doesn't have the
+ * Java type the vector's kind expects, the vector switches to storing
+ * objects, so that values always come back out of the vector exactly as
+ * they were put in.
+ * </p>
+ */
+public class ColumnVector {
+
+    /** The different representations that a column vector can use. */
+    public enum Kind {
+        /** Values are {@code Integer}s, stored in an {@code int[]} array. */
+        INT,
+
+        /** Values are {@code Long}s, stored in a {@code long[]} array. */
+        LONG,
+
+        /** Values are {@code Float}s, stored in a {@code float[]} array. */
+        FLOAT,
+
+        /** Values are {@code Double}s, stored in a {@code double[]} array. */
+        DOUBLE,
+
+        /** Values are arbitrary objects, stored in an {@code Object[]} array. */
+        OBJECT
+    }
+
+
+    /** The representation this vector currently uses for its values. */
+    private Kind kind;
+
+
+    /** The maximum number of rows the vector can hold. */
+    private int capacity;
+
+
+    private int[] ints;
+
+    private long[] longs;
+
+    private float[] floats;
+
+    private double[] doubles;
+
+    private Object[] objects;
+
+
+    /** A bitmap with a 1-bit for each row whose value is <tt>NULL</tt>. */
+    private long[] nulls;
+
+
+    /** The number of rows in the vector. */
+    private int size;
+
+
+    /**
+     * Constructs an empty column vector for values of the specified type.
+     *
+     * @param colType the type of the column's values
+     * @param capacity the maximum number of rows the vector can hold
+     */
+    public ColumnVector(ColumnType colType, int capacity) {
+        if (colType == null)
+            throw new IllegalArgumentException("colType cannot be null");
+
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        this.capacity = capacity;
+        switch (colType.getBaseType()) {
+            case INTEGER:
+                kind = Kind.INT;
+                ints = new int[capacity];
+                break;
+
+            case BIGINT:
+                kind = Kind.LONG;
+                longs = new long[capacity];
+                break;
+
+            case FLOAT:
+                kind = Kind.FLOAT;
+                floats = new float[capacity];
+                break;
+
+            case DOUBLE:
+                kind = Kind.DOUBLE;
+                doubles = new double[capacity];
+                break;
+
+            default:
+                kind = Kind.OBJECT;
+                objects = new Object[capacity];
+        }
+
+        nulls = new long[(capacity + 63) / 64];
+    }
+
+
+    /**
+     * Returns the representation this vector uses for its values.
+     *
+     * @return the representation this vector uses for its values
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+
+    /**
+     * Returns the number of rows in the vector.
+     *
+     * @return the number of rows in the vector
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the maximum number of rows the vector can hold.
+     *
+     * @return the maximum number of rows the vector can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Returns an estimate of the number of bytes of memory used by the
+     * vector.  Arrays of primitive values are counted exactly; values stored
+     * as objects are estimated from their type, with strings counted by
+     * their length.
+     *
+     * @return an estimate of the number of bytes of memory used by the vector
+     */
+    public long getMemoryUsage() {
+        long bytes = 8L * nulls.length;
+        switch (kind) {
+            case INT:
+            case FLOAT:
+                return bytes + 4L * capacity;
+
+            case LONG:
+            case DOUBLE:
+                return bytes + 8L * capacity;
+
+            default:
+                bytes += 8L * capacity;
+                for (int i = 0; i < size; i++) {
+                    Object value = objects[i];
+                    if (value instanceof String)
+                        bytes += 40 + ((String) value).length();
+                    else if (value != null)
+                        bytes += 24;
+                }
+                return bytes;
+        }
+    }
+
+
+    /**
+     * Removes all rows from the vector.
+     */
+    public void clear() {
+        Arrays.fill(nulls, 0, (size + 63) / 64, 0L);
+        if (objects != null)
+            Arrays.fill(objects, 0, size, null);
+
+        size = 0;
+    }
+
+
+    /**
+     * Returns true if the value in the specified row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return true if the value in the specified row is <tt>NULL</tt>
+     */
+    public boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+
+    /**
+     * Returns the value in the specified row of an {@link Kind#INT} vector.
+     * The value is unspecified if the row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return the value in the row
+     */
+    public int getInt(int row) {
+        return ints[row];
+    }
+
+
+    /**
+     * Returns the value in the specified row of a {@link Kind#LONG} vector.
+     * The value is unspecified if the row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return the value in the row
+     */
+    public long getLong(int row) {
+        return longs[row];
+    }
+
+
+    /**
+     * Returns the value in the specified row of a {@link Kind#FLOAT} vector.
+     * The value is unspecified if the row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return the value in the row
+     */
+    public float getFloat(int row) {
+        return floats[row];
+    }
+
+
+    /**
+     * Returns the value in the specified row of a {@link Kind#DOUBLE} vector.
+     * The value is unspecified if the row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return the value in the row
+     */
+    public double getDouble(int row) {
+        return doubles[row];
+    }
+
+
+    /**
+     * Returns the value in the specified row as an object, or {@code null}
+     * if the row is <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @return the value in the row
+     */
+    public Object getObject(int row) {
+        if (isNull(row))
+            return null;
+
+        switch (kind) {
+            case INT:
+                return ints[row];
+
+            case LONG:
+                return longs[row];
+
+            case FLOAT:
+                return floats[row];
+
+            case DOUBLE:
+                return doubles[row];
+
+            default:
+                return objects[row];
+        }
+    }
+
+
+    /**
+     * Sets the value in the specified row.  If the row is past the end of
+     * the vector, the vector is extended, and any rows skipped over are
+     * <tt>NULL</tt>.
+     *
+     * @param row the index of the row
+     * @param value the value to store, or {@code null} for <tt>NULL</tt>
+     */
+    public void set(int row, Object value) {
+        if (row >= size) {
+            // Rows that are skipped over must be NULL.
+            for (int i = size; i < row; i++)
+                setNullFlag(i, true);
+
+            size = row + 1;
+        }
+
+        if (value == null) {
+            setNullFlag(row, true);
+            if (objects != null)
+                objects[row] = null;
+
+            return;
+        }
+
+        setNullFlag(row, false);
+        switch (kind) {
+            case INT:
+                if (value instanceof Integer) {
+                    ints[row] = (Integer) value;
+                    return;
+                }
+                break;
+
+            case LONG:
+                if (value instanceof Long) {
+                    longs[row] = (Long) value;
+                    return;
+                }
+                break;
+
+            case FLOAT:
+                if (value instanceof Float) {
+                    floats[row] = (Float) value;
+                    return;
+                }
+                break;
+
+            case DOUBLE:
+                if (value instanceof Double) {
+                    doubles[row] = (Double) value;
+                    return;
+                }
+                break;
+
+            default:
+                objects[row] = value;
+                return;
+        }
+
+        // The value isn't of the type the vector expects.
+        convertToObjects();
+        objects[row] = value;
+    }
+
+
+    /**
+     * Appends a value to the end of the vector.
+     *
+     * @param value the value to append, or {@code null} for <tt>NULL</tt>
+     */
+    public void append(Object value) {
+        set(size, value);
+    }
+
+
+    /**
+     * Appends the value of a page tuple's column to the end of the vector.
+     * Values of primitive types are copied directly out of the page, to
+     * avoid boxing them.  The column must have the type that the vector was
+     * constructed for.
+     *
+     * @param tuple the tuple to retrieve the value from
+     * @param colIndex the index of the column in the tuple
+     */
+    public void appendFrom(PageTuple tuple, int colIndex) {
+        if (kind != Kind.OBJECT && !tuple.isNullValue(colIndex)) {
+            int row = size;
+            switch (kind) {
+                case INT:
+                    ints[row] = tuple.getIntColumnValue(colIndex);
+                    break;
+
+                case LONG:
+                    longs[row] = tuple.getLongColumnValue(colIndex);
+                    break;
+
+                case FLOAT:
+                    floats[row] = tuple.getFloatColumnValue(colIndex);
+                    break;
+
+                default:
+                    doubles[row] = tuple.getDoubleColumnValue(colIndex);
+            }
+            setNullFlag(row, false);
+            size++;
+        } else {
+            append(tuple.getColumnValue(colIndex));
+        }
+    }
+
+
+    private void setNullFlag(int row, boolean isNull) {
+        if (isNull)
+            nulls[row >>> 6] |= (1L << row);
+        else
+            nulls[row >>> 6] &= ~(1L << row);
+    }
+
+
+    /**
+     * Switches the vector to storing objects, boxing the values that have
+     * been stored so far.
+     */
+    private void convertToObjects() {
+        Object[] values = new Object[capacity];
+        for (int i = 0; i < size; i++)
+            values[i] = getObject(i);
+
+        kind = Kind.OBJECT;
+        objects = values;
+        ints = null;
+        longs = null;
+        floats = null;
+        doubles = null;
+    }
+}
@@ -266,6 +266,21 @@ public class DatabaseConstraintEnforcer implements RowEventListener {
     }
 
 
+    /**
+     * Perform processing when a row is moved within a table.  Since the
+     * row's values don't change, no constraints can be affected.
+     *
+     * @param tableInfo the table that the tuple is being moved within.
+     * @param oldTuple  the tuple at its old location in the table.
+     * @param newTuple  the tuple at its new location in the table.
+     */
+    @Override
+    public void rowRelocated(TableInfo tableInfo, Tuple oldTuple,
+                             Tuple newTuple) {
+        // Do nothing!
+    }
+
+
     /**
      * This helper function verifies that a tuple being added to a table
      * satisfies all the NOT NULL constraints on the table.
@@ -93,6 +93,22 @@ public interface Tuple extends Pinnable {
     void setColumnValue(int colIndex, Object value);
 
 
+    /**
+     * Returns <tt>true</tt> if the specified column is outside of the set of
+     * columns that this tuple decodes, so that its value can't be read.  Code
+     * that copies whole tuples uses this to copy such columns as
+     * <tt>NULL</tt>.  The default implementation returns <tt>false</tt>.
+     *
+     * @param colIndex the index of the column to check
+     * @return <tt>true</tt> if the column's value can't be read
+     *
+     * @see edu.caltech.nanodb.storage.PageTuple#setProjectedColumns
+     */
+    default boolean isColumnProjectedOut(int colIndex) {
+        return false;
+    }
+
+
     /**
      * This method returns an external reference to the tuple, which can be
      * stored and used to look up this tuple.  The external reference is
@@ -0,0 +1,415 @@
+package edu.caltech.nanodb.relations;
+
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.storage.FilePointer;
+import edu.caltech.nanodb.storage.PageTuple;
+
+
+/**
+ * <p>
+ * A batch of tuples stored column by column, which plan nodes can pass to
+ * each other instead of passing individual tuples.  Each column of the batch
+ * is held in a {@link ColumnVector}.
+ * </p>
+ * <p>
+ * A batch holds some number of <em>physical</em> rows, but operators such as
+ * filters can mark a subset of these rows as the batch's <em>active</em>
+ * rows, using a selection vector of physical row indexes, rather than
+ * copying the rows that remain.  The {@link #size} of a batch is the number
+ * of active rows, and {@link #getPhysicalRow} maps an active row's position
+ * to its physical row index, which is what column vectors are indexed by.
+ * </p>
+ * <p>
+ * A batch returned by a plan node is only valid until the next call to that
+ * plan node, since plan nodes reuse their batches.
+ * </p>
+ */
+public class TupleBatch {
+
+    /** The default number of rows in a batch. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+
+    /** The schema of the tuples in the batch. */
+    private Schema schema;
+
+
+    /** The columns of the batch. */
+    private ColumnVector[] columns;
+
+
+    /** The maximum number of physical rows in the batch. */
+    private int capacity;
+
+
+    /** The number of physical rows in the batch. */
+    private int numRows;
+
+
+    /**
+     * The physical indexes of the active rows, in increasing order, or
+     * {@code null} if all physical rows are active.
+     */
+    private int[] selection;
+
+
+    /** The number of active rows, if {@link #selection} is not null. */
+    private int numSelected;
+
+
+    /**
+     * Constructs an empty batch for tuples of the specified schema, with the
+     * default capacity.
+     *
+     * @param schema the schema of the tuples in the batch
+     */
+    public TupleBatch(Schema schema) {
+        this(schema, DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructs an empty batch for tuples of the specified schema.
+     *
+     * @param schema the schema of the tuples in the batch
+     * @param capacity the maximum number of rows in the batch
+     */
+    public TupleBatch(Schema schema, int capacity) {
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        this.schema = schema;
+        this.capacity = capacity;
+
+        columns = new ColumnVector[schema.numColumns()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnVector(schema.getColumnInfo(i).getType(),
+                capacity);
+        }
+    }
+
+
+    /**
+     * Constructs a batch over existing column vectors, which are typically
+     * shared with another batch.  The batch has the specified physical rows
+     * and active rows.
+     *
+     * @param schema the schema of the tuples in the batch
+     * @param columns the column vectors of the batch
+     * @param numRows the number of physical rows in the batch
+     * @param selection the physical indexes of the active rows, or
+     *        {@code null} if all rows are active
+     * @param numSelected the number of active rows, if {@code selection} is
+     *        not {@code null}
+     */
+    public TupleBatch(Schema schema, ColumnVector[] columns, int numRows,
+                      int[] selection, int numSelected) {
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        if (columns == null)
+            throw new IllegalArgumentException("columns cannot be null");
+
+        this.schema = schema;
+        this.columns = columns;
+        this.capacity = numRows;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+
+    /**
+     * Returns the schema of the tuples in the batch.
+     *
+     * @return the schema of the tuples in the batch
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+
+    /**
+     * Returns the number of columns in the batch.
+     *
+     * @return the number of columns in the batch
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+
+    /**
+     * Returns the vector holding the specified column's values.
+     *
+     * @param colIndex the index of the column
+     * @return the vector holding the column's values
+     */
+    public ColumnVector getColumn(int colIndex) {
+        return columns[colIndex];
+    }
+
+
+    /**
+     * Returns the number of physical rows in the batch.
+     *
+     * @return the number of physical rows in the batch
+     */
+    public int getNumPhysicalRows() {
+        return numRows;
+    }
+
+
+    /**
+     * Returns true if no more rows can be added to the batch.
+     *
+     * @return true if no more rows can be added to the batch
+     */
+    public boolean isFull() {
+        return numRows >= capacity;
+    }
+
+
+    /**
+     * Returns the number of active rows in the batch.
+     *
+     * @return the number of active rows in the batch
+     */
+    public int size() {
+        return (selection != null) ? numSelected : numRows;
+    }
+
+
+    /**
+     * Returns the physical row index of the specified active row.
+     *
+     * @param i the position of the active row, from 0 to {@link #size} - 1
+     * @return the physical row index of the active row
+     */
+    public int getPhysicalRow(int i) {
+        return (selection != null) ? selection[i] : i;
+    }
+
+
+    /**
+     * Returns the selection vector of the batch, or {@code null} if all
+     * physical rows are active.
+     *
+     * @return the selection vector of the batch, or {@code null}
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+
+    /**
+     * Sets the active rows of the batch.  The array is used directly, not
+     * copied.
+     *
+     * @param selection the physical indexes of the active rows, in increasing
+     *        order, or {@code null} if all rows are active
+     * @param numSelected the number of active rows
+     */
+    public void setSelection(int[] selection, int numSelected) {
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+
+    /**
+     * Limits the active rows of the batch to a range of the current active
+     * rows.
+     *
+     * @param start the position of the first active row to keep
+     * @param count the number of active rows to keep
+     */
+    public void restrict(int start, int count) {
+        if (start < 0 || count < 0 || start + count > size()) {
+            throw new IllegalArgumentException(String.format(
+                "Range [%d, %d) is outside of the batch's %d active rows",
+                start, start + count, size()));
+        }
+
+        int[] newSelection = new int[count];
+        for (int i = 0; i < count; i++)
+            newSelection[i] = getPhysicalRow(start + i);
+
+        setSelection(newSelection, count);
+    }
+
+
+    /**
+     * Returns an estimate of the number of bytes of memory used by the
+     * batch's column vectors.
+     *
+     * @return an estimate of the number of bytes of memory used by the batch
+     *
+     * @see ColumnVector#getMemoryUsage
+     */
+    public long getMemoryUsage() {
+        long bytes = 0;
+        for (ColumnVector column : columns)
+            bytes += column.getMemoryUsage();
+
+        return bytes;
+    }
+
+
+    /**
+     * Removes all rows from the batch, so that it can be refilled.
+     */
+    public void clear() {
+        for (ColumnVector column : columns)
+            column.clear();
+
+        numRows = 0;
+        selection = null;
+        numSelected = 0;
+    }
+
+
+    /**
+     * Copies a tuple into the next physical row of the batch.  The tuple is
+     * not retained, so it may be unpinned as soon as this method returns.
+     * Columns that were projected out of the tuple are copied as
+     * <tt>NULL</tt>.
+     *
+     * @param tuple the tuple to add to the batch
+     * @throws IllegalStateException if the batch is full
+     */
+    public void addTuple(Tuple tuple) {
+        if (isFull())
+            throw new IllegalStateException("Batch is full");
+
+        if (tuple instanceof PageTuple &&
+            ((PageTuple) tuple).getSchema() == schema) {
+            // The columns' types match the vectors' types, so the values can
+            // be copied without boxing them.
+            PageTuple pageTuple = (PageTuple) tuple;
+            for (int i = 0; i < columns.length; i++) {
+                if (pageTuple.isColumnProjectedOut(i))
+                    columns[i].append(null);
+                else
+                    columns[i].appendFrom(pageTuple, i);
+            }
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].append(tuple.isColumnProjectedOut(i) ? null :
+                    tuple.getColumnValue(i));
+            }
+        }
+
+        numRows++;
+    }
+
+
+    /**
+     * Returns a copy of the specified active row, as a tuple-literal.
+     *
+     * @param i the position of the active row, from 0 to {@link #size} - 1
+     * @return a copy of the row
+     */
+    public TupleLiteral getTuple(int i) {
+        int row = getPhysicalRow(i);
+        TupleLiteral tuple = new TupleLiteral();
+        for (ColumnVector column : columns)
+            tuple.addValue(column.getObject(row));
+
+        return tuple;
+    }
+
+
+    /**
+     * Returns a tuple that presents one physical row of the batch at a time,
+     * without copying it.  The returned object can be repositioned with
+     * {@link Row#setRow}, so a single object can be used to process every
+     * row of the batch.
+     *
+     * @return a tuple that presents rows of this batch
+     */
+    public Row getRowView() {
+        return new Row();
+    }
+
+
+    /**
+     * A {@link Tuple} that presents one physical row of a batch, without
+     * copying it.  The tuple is read-only.
+     */
+    public class Row implements Tuple {
+        /** The physical row index currently presented. */
+        private int row;
+
+
+        /**
+         * Presents the specified physical row of the batch.
+         *
+         * @param row the physical row index
+         */
+        public void setRow(int row) {
+            this.row = row;
+        }
+
+
+        @Override
+        public boolean isDiskBacked() {
+            return false;
+        }
+
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+
+        @Override
+        public boolean isNullValue(int colIndex) {
+            return columns[colIndex].isNull(row);
+        }
+
+
+        @Override
+        public Object getColumnValue(int colIndex) {
+            return columns[colIndex].getObject(row);
+        }
+
+
+        @Override
+        public void setColumnValue(int colIndex, Object value) {
+            throw new UnsupportedOperationException(
+                "Rows of tuple batches are read-only");
+        }
+
+
+        @Override
+        public FilePointer getExternalReference() {
+            throw new UnsupportedOperationException();
+        }
+
+
+        @Override
+        public void pin() {
+            // No-op.
+        }
+
+
+        @Override
+        public void unpin() {
+            // No-op.
+        }
+
+
+        @Override
+        public int getPinCount() {
+            return 0;
+        }
+
+
+        @Override
+        public boolean isPinned() {
+            return false;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package edu.caltech.nanodb.server;
 
 
+import edu.caltech.nanodb.commands.ExecuteCommand;
 import edu.caltech.nanodb.commands.SelectCommand;
 import edu.caltech.nanodb.expressions.TupleLiteral;
 import edu.caltech.nanodb.queryeval.TupleProcessor;
@@ -101,6 +102,16 @@ public class CommandResult implements Serializable {
     }
 
 
+    /**
+     * Collects the results of a prepared statement, if it is a
+     * <tt>SELECT</tt>.
+     */
+    public void collectSelectResults(ExecuteCommand command) {
+        tuples = new ArrayList<TupleLiteral>();
+        command.setTupleProcessor(new ResultCollector());
+    }
+
+
     public void recordFailure(Exception e) {
         if (e == null)
             throw new IllegalArgumentException("t cannot be null");
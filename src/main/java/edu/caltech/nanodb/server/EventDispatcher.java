@@ -127,4 +127,12 @@ public class EventDispatcher {
         for (RowEventListener rel : rowEventListeners)
             rel.afterRowDeleted(tblFileInfo, oldValues);
     }
+
+
+    public void fireRowRelocated(TableInfo tblFileInfo, Tuple oldTuple,
+                                 Tuple newTuple) {
+        logger.debug("Firing rowRelocated");
+        for (RowEventListener rel : rowEventListeners)
+            rel.rowRelocated(tblFileInfo, oldTuple, newTuple);
+    }
 }
@@ -10,9 +10,13 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import edu.caltech.nanodb.commands.AnalyzeCommand;
+import edu.caltech.nanodb.commands.ExecuteCommand;
 import edu.caltech.nanodb.commands.ExitCommand;
 import edu.caltech.nanodb.functions.FunctionDirectory;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
 import edu.caltech.nanodb.queryeval.Planner;
+import edu.caltech.nanodb.server.performance.SessionCounters;
 import edu.caltech.nanodb.server.properties.BooleanFlagValidator;
 import edu.caltech.nanodb.server.properties.IntegerValueValidator;
 import edu.caltech.nanodb.server.properties.PlannerClassValidator;
@@ -75,6 +79,18 @@ public class NanoDBServer implements ServerProperties {
     private StorageManager storageManager;
 
 
+    /**
+     * The cache of parsed and planned commands for this database server.
+     */
+    private PlanCache planCache;
+
+
+    /**
+     * The cache of query results for this database server.
+     */
+    private ResultCache resultCache;
+
+
     /**
      * A read-write lock to force DDL operations to occur serially, and
      * without any overlap from DML operations.
@@ -125,6 +141,13 @@ public class NanoDBServer implements ServerProperties {
         // Components for query evaluation, index updating, etc.
         functionDirectory = new FunctionDirectory();
         eventDispatcher = new EventDispatcher();
+        planCache = new PlanCache(propertyRegistry);
+        resultCache = new ResultCache(propertyRegistry);
+        eventDispatcher.addRowEventListener(resultCache);
+
+        // Selectivities observed by an earlier server in this process may
+        // have been observed on a different database.
+        CardinalityFeedback.clear();
 
         // The storage manager is a big one!
 
@@ -174,6 +197,26 @@ public class NanoDBServer implements ServerProperties {
     }
 
 
+    /**
+     * Returns the plan cache for this database server.
+     *
+     * @return the plan cache for this database server.
+     */
+    public PlanCache getPlanCache() {
+        return planCache;
+    }
+
+
+    /**
+     * Returns the result cache for this database server.
+     *
+     * @return the result cache for this database server.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+
     public Command parseCommand(String command) {
         return ParseUtil.parseCommand(command, functionDirectory);
     }
@@ -219,8 +262,45 @@ public class NanoDBServer implements ServerProperties {
     public CommandResult doCommand(String command, boolean includeTuples) {
 
         try {
-            Command commandObject = parseCommand(command);
-            return doCommand(commandObject, includeTuples);
+            String key = PlanCache.normalize(command);
+            long version = planCache.getVersion();
+
+            Command commandObject = planCache.checkOut(key);
+            if (commandObject != null) {
+                // Hold the schema lock while the cached plan is checked and
+                // used, so that DDL can't invalidate it in the meantime.
+                // (The lock is reentrant, so executing the command can
+                // acquire it again.)
+                Lock lock = schemaLock.readLock();
+                lock.lock();
+                try {
+                    if (planCache.getVersion() == version) {
+                        logger.debug("Reusing cached plan for command:  " + key);
+                        commandObject.reset();
+                        CommandResult result =
+                            doCommand(commandObject, includeTuples);
+                        if (!result.failed())
+                            planCache.checkIn(key, commandObject, version);
+
+                        return result;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                // The cached plan became invalid before we could use it.
+                version = planCache.getVersion();
+            }
+
+            commandObject = parseCommand(command);
+            if (commandObject instanceof SelectCommand)
+                ((SelectCommand) commandObject).setResultCacheKey(key);
+
+            CommandResult result = doCommand(commandObject, includeTuples);
+            if (!result.failed())
+                planCache.checkIn(key, commandObject, version);
+
+            return result;
         } catch (Exception e) {
             // If a parsing error or some other exception occurs, we won't
             // have a CommandResult to return.  So, make sure to return one
@@ -297,6 +377,11 @@ public class NanoDBServer implements ServerProperties {
 
             if (includeTuples && command instanceof SelectCommand)
                 result.collectSelectResults((SelectCommand) command);
+            else if (includeTuples && command instanceof ExecuteCommand)
+                result.collectSelectResults((ExecuteCommand) command);
+
+            SessionState session = SessionState.get();
+            session.startCommand();
 
             result.startExecution();
             try {
@@ -320,6 +405,22 @@ public class NanoDBServer implements ServerProperties {
             }
             result.endExecution();
 
+            // Plans that were made against the old schema or statistics are
+            // no longer valid.  DDL commands hold the schema lock, so no
+            // other command can be using such a plan.
+            if (command.getCommandType() == Command.Type.DDL ||
+                command instanceof AnalyzeCommand) {
+                planCache.invalidate();
+            }
+
+            // The command may have observed that a plan's selectivity
+            // estimates were far off.
+            planCache.checkFeedback();
+
+            // DDL can change tables' contents without any row events.
+            if (command.getCommandType() == Command.Type.DDL)
+                resultCache.invalidateAll();
+
             // Post-command cleanup:
             storageManager.getBufferManager().unpinAllSessionPages();
 
@@ -333,6 +434,9 @@ public class NanoDBServer implements ServerProperties {
                 }
             }
 
+            SessionCounters counters = session.endCommand();
+            logger.debug("Command storage activity:  " + counters);
+
             return result;
         } finally {
             lock.unlock();
@@ -0,0 +1,260 @@
+package edu.caltech.nanodb.server;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.commands.Command;
+import edu.caltech.nanodb.commands.QueryCommand;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.server.properties.PropertyObserver;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * <p>
+ * This class caches parsed and planned commands, keyed on their normalized
+ * SQL text, so that a command issued again doesn't have to be parsed and
+ * planned again.  The cache is bounded, and discards the least recently used
+ * commands when it is full.
+ * </p>
+ * <p>
+ * A command object can only be executed by one session at a time, so
+ * commands are checked out of the cache to be executed, and checked back in
+ * when they have executed successfully.  If two sessions issue the same
+ * command at once, the second one simply parses and plans its own copy.
+ * </p>
+ * <p>
+ * Cached plans depend on the schema, on the statistics of the tables, on
+ * the server's properties (e.g. the planner class or the degree of
+ * parallelism), and on the observed selectivities of predicates (see
+ * {@link CardinalityFeedback}).  The cache has a version number which is
+ * incremented whenever any of these change, and which discards all cached
+ * commands.
+ * Commands are only checked in if the version hasn't changed since they were
+ * parsed; {@link edu.caltech.nanodb.commands.PreparedStatement prepared
+ * statements} also use the version to tell when they must be planned again.
+ * </p>
+ */
+public class PlanCache implements PropertyObserver {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(PlanCache.class);
+
+
+    /**
+     * A cached command, and the version of the cache when it was parsed.
+     */
+    private static class CachedCommand {
+        Command command;
+
+        long version;
+
+        CachedCommand(Command command, long version) {
+            this.command = command;
+            this.version = version;
+        }
+    }
+
+
+    /**
+     * The cached commands, keyed on their normalized text, in order from
+     * least to most recently used.
+     */
+    private LinkedHashMap<String, CachedCommand> commands =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+
+    /** The maximum number of commands to cache. */
+    private int maxSize;
+
+
+    /**
+     * The version of the cache, which is incremented whenever cached plans
+     * become invalid.
+     */
+    private volatile long version;
+
+
+    /** The version of the cardinality feedback that plans were made with. */
+    private long feedbackVersion = CardinalityFeedback.getVersion();
+
+
+    public PlanCache(PropertyRegistry propertyRegistry) {
+        maxSize = propertyRegistry.getIntProperty(
+            ServerProperties.PROP_PLAN_CACHE_SIZE);
+        propertyRegistry.addObserver(this);
+    }
+
+
+    /**
+     * Normalizes the text of a SQL command, so that commands which differ
+     * only in whitespace share a cache entry.  Runs of whitespace outside of
+     * string literals are collapsed to a single space, or to a single newline
+     * if they include one (since a newline ends a comment), and leading and
+     * trailing whitespace and semicolons are removed.
+     *
+     * @param command the text of a SQL command
+     * @return the normalized text of the command
+     */
+    public static String normalize(String command) {
+        StringBuilder buf = new StringBuilder(command.length());
+        boolean inString = false;
+        char pendingSpace = 0;
+
+        for (int i = 0; i < command.length(); i++) {
+            char ch = command.charAt(i);
+            if (!inString && Character.isWhitespace(ch)) {
+                if (ch == '\n' || pendingSpace == 0)
+                    pendingSpace = (ch == '\n') ? '\n' : ' ';
+                continue;
+            }
+
+            if (pendingSpace != 0 && buf.length() > 0)
+                buf.append(pendingSpace);
+            pendingSpace = 0;
+
+            if (ch == '\'')
+                inString = !inString;
+
+            buf.append(ch);
+        }
+
+        int end = buf.length();
+        while (end > 0 && (buf.charAt(end - 1) == ';' ||
+                           Character.isWhitespace(buf.charAt(end - 1)))) {
+            end--;
+        }
+        buf.setLength(end);
+
+        return buf.toString();
+    }
+
+
+    /**
+     * Returns the version of the cache.  Plans made with an earlier version
+     * are no longer valid.
+     *
+     * @return the version of the cache
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Removes the cached command with the specified text from the cache, so
+     * that it can be executed.
+     *
+     * @param key the normalized text of the command
+     * @return the cached command, or {@code null} if there is no valid
+     *         cached command with that text
+     */
+    public synchronized Command checkOut(String key) {
+        CachedCommand cached = commands.remove(key);
+        if (cached == null || cached.version != version) {
+            PerformanceCounters.inc(PerformanceCounters.PLAN_CACHE_MISSES);
+            return null;
+        }
+
+        PerformanceCounters.inc(PerformanceCounters.PLAN_CACHE_HITS);
+        return cached.command;
+    }
+
+
+    /**
+     * Adds an executed command to the cache, if it can be reused.  Only
+     * query commands are cached, since other commands are cheap to parse
+     * and have no plan.
+     *
+     * @param key the normalized text of the command
+     * @param command the command that was executed
+     * @param parseVersion the version of the cache when the command was
+     *        parsed
+     */
+    public synchronized void checkIn(String key, Command command,
+                                     long parseVersion) {
+        if (maxSize == 0 || parseVersion != version ||
+            !(command instanceof QueryCommand)) {
+            return;
+        }
+
+        commands.put(key, new CachedCommand(command, parseVersion));
+        evictExcess();
+    }
+
+
+    /**
+     * Records that cached plans are no longer valid, e.g. because the schema
+     * or a table's statistics have changed, and discards them.
+     */
+    public synchronized void invalidate() {
+        version++;
+        commands.clear();
+        PerformanceCounters.inc(PerformanceCounters.PLAN_CACHE_INVALIDATIONS);
+    }
+
+
+    /**
+     * Invalidates cached plans if a predicate's selectivity has been
+     * observed to be far from the estimate that its plan was made with,
+     * since the plans can now be made with the observed selectivity.
+     */
+    public synchronized void checkFeedback() {
+        long currentVersion = CardinalityFeedback.getVersion();
+        if (currentVersion != feedbackVersion) {
+            logger.debug("Selectivities were misestimated; invalidating " +
+                "cached plans");
+            feedbackVersion = currentVersion;
+            invalidate();
+        }
+    }
+
+
+    /**
+     * Returns the number of commands in the cache.
+     *
+     * @return the number of commands in the cache
+     */
+    public synchronized int size() {
+        return commands.size();
+    }
+
+
+    /**
+     * Discards the least recently used commands until the cache holds no
+     * more than its maximum size.
+     */
+    private void evictExcess() {
+        Iterator<CachedCommand> iter = commands.values().iterator();
+        while (commands.size() > maxSize && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+
+    /**
+     * Any property can affect the plans chosen, so changing a property
+     * invalidates cached plans, aside from the size of the cache itself.
+     */
+    @Override
+    public void propertyChanged(String propertyName, Object newValue) {
+        if (ServerProperties.PROP_PLAN_CACHE_SIZE.equals(propertyName)) {
+            synchronized (this) {
+                maxSize = (Integer) newValue;
+                evictExcess();
+            }
+        } else {
+            logger.debug("Property " + propertyName +
+                " changed; invalidating cached plans");
+            invalidate();
+        }
+    }
+}
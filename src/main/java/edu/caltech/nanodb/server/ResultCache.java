@@ -0,0 +1,569 @@
+package edu.caltech.nanodb.server;
+
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionProcessor;
+import edu.caltech.nanodb.expressions.FunctionCall;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.SubqueryOperator;
+import edu.caltech.nanodb.functions.Function;
+import edu.caltech.nanodb.queryast.FromClause;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.queryast.SelectValue;
+import edu.caltech.nanodb.queryeval.TupleProcessor;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.server.properties.PropertyObserver;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.RowBuffer;
+
+
+/**
+ * <p>
+ * This class caches the results of <tt>SELECT</tt> queries, keyed on their
+ * normalized SQL text, so that a query issued again before the tables it
+ * reads have changed can be answered without being executed.  The results
+ * are stored in {@link RowBuffer}s, which pack the rows with the same
+ * encoding as table pages.  The cache is bounded by the number of bytes its
+ * results use, and discards the least recently used results when it is full.
+ * The cache is disabled when its size is 0, which is the default.
+ * </p>
+ * <p>
+ * Each table has a version number, which is incremented whenever a row of
+ * the table is inserted, updated or deleted; as a {@link RowEventListener},
+ * the cache sees every such change.  A cached result records the versions of
+ * the tables its query read, and is only used if none of them has changed
+ * since.  Changes that don't produce row events, namely DDL commands and
+ * transaction rollbacks, discard the entire cache through
+ * {@link #invalidateAll}.
+ * </p>
+ * <p>
+ * Only queries whose results depend on nothing but the contents of tables
+ * are cached, so queries that call table functions or non-deterministic
+ * functions are always executed.
+ * </p>
+ */
+public class ResultCache implements RowEventListener, PropertyObserver {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(ResultCache.class);
+
+
+    /**
+     * The size of the chunks that cached rows are packed into.  This is
+     * smaller than the row buffer's default, since most cached results are
+     * small.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+
+    /** A cached result, and the versions of the tables it was read from. */
+    private static class CachedResult {
+        RowBuffer rows;
+
+        Map<String, Long> tableVersions;
+
+        long size;
+
+        CachedResult(RowBuffer rows, Map<String, Long> tableVersions,
+                     long size) {
+            this.rows = rows;
+            this.tableVersions = tableVersions;
+            this.size = size;
+        }
+    }
+
+
+    /**
+     * This tuple-processor passes a query's results on to another processor,
+     * and also copies them into a row buffer.  If the query completes, its
+     * results are added to the cache.
+     */
+    private class ResultCapture implements TupleProcessor {
+        /** The normalized text of the query. */
+        private String key;
+
+        /** The processor that the query's results are passed on to. */
+        private TupleProcessor processor;
+
+        /**
+         * The versions of the query's tables, taken before the query was
+         * executed.
+         */
+        private Map<String, Long> tableVersions;
+
+        /** The cache generation, taken before the query was executed. */
+        private long startGeneration;
+
+        /**
+         * The copy of the query's results, or {@code null} if the results
+         * won't be cached.
+         */
+        private RowBuffer rows;
+
+        ResultCapture(String key, Set<String> tables, TupleProcessor processor) {
+            this.key = key;
+            this.processor = processor;
+
+            startGeneration = generation;
+            tableVersions = new HashMap<>();
+            for (String table : tables)
+                tableVersions.put(table, getTableVersion(table));
+        }
+
+        @Override
+        public void setSchema(Schema schema) {
+            processor.setSchema(schema);
+            rows = new RowBuffer(schema, Long.MAX_VALUE, CHUNK_SIZE);
+        }
+
+        @Override
+        public void process(Tuple tuple) {
+            processor.process(tuple);
+
+            if (rows == null)
+                return;
+
+            try {
+                rows.add(tuple);
+            } catch (RuntimeException e) {
+                // The cache is only an optimization, so the query doesn't
+                // fail if its results can't be encoded.
+                logger.debug("Couldn't cache results of query:  " + key, e);
+                rows = null;
+                return;
+            }
+
+            if (rows.getMemoryUsage() > maxBytes) {
+                logger.debug("Results of query are too large to cache:  " + key);
+                rows = null;
+            }
+        }
+
+        @Override
+        public void finish() {
+            processor.finish();
+
+            if (rows != null)
+                store(key, rows, tableVersions, startGeneration);
+        }
+    }
+
+
+    /**
+     * The version of each table that has been modified, keyed on the table's
+     * name in lowercase.  Tables that haven't been modified are at version 0.
+     */
+    private ConcurrentHashMap<String, Long> tableVersions =
+        new ConcurrentHashMap<>();
+
+
+    /**
+     * The cached results, keyed on their query's normalized text, in order
+     * from least to most recently used.
+     */
+    private LinkedHashMap<String, CachedResult> results =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+
+    /**
+     * The maximum number of bytes the cached results may use, or 0 if the
+     * cache is disabled.
+     */
+    private volatile long maxBytes;
+
+
+    /** The number of bytes the cached results use. */
+    private long usedBytes;
+
+
+    /**
+     * The number of times the entire cache has been invalidated.  Results
+     * of queries that started before an invalidation aren't cached.
+     */
+    private volatile long generation;
+
+
+    public ResultCache(PropertyRegistry propertyRegistry) {
+        maxBytes = propertyRegistry.getIntProperty(
+            ServerProperties.PROP_RESULT_CACHE_SIZE);
+        propertyRegistry.addObserver(this);
+    }
+
+
+    /**
+     * Returns true if the cache is enabled, i.e. its size is not 0.
+     *
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+
+    /**
+     * Returns the set of tables that a query reads, including the tables
+     * read by its subqueries, or {@code null} if the query's results can't
+     * be cached.
+     *
+     * @param selClause the query
+     * @return the lowercase names of the tables read by the query, or
+     *         {@code null} if the query's results can't be cached
+     */
+    public static Set<String> getCacheableTables(SelectClause selClause) {
+        Set<String> tables = new HashSet<>();
+        if (!collectTables(selClause, tables))
+            return null;
+
+        return tables;
+    }
+
+
+    /**
+     * Adds the tables read by a query to a set, and returns true if the
+     * query's results can be cached.
+     */
+    private static boolean collectTables(SelectClause selClause,
+                                         Set<String> tables) {
+        if (selClause.getFromClause() != null &&
+            !collectTables(selClause.getFromClause(), tables)) {
+            return false;
+        }
+
+        TableCollector collector = new TableCollector(tables);
+        for (SelectValue selVal : selClause.getSelectValues()) {
+            if (selVal.isScalarSubquery() &&
+                !collectTables(selVal.getScalarSubquery(), tables)) {
+                return false;
+            }
+
+            if (selVal.isExpression())
+                selVal.getExpression().traverse(collector);
+        }
+
+        if (selClause.getWhereExpr() != null)
+            selClause.getWhereExpr().traverse(collector);
+
+        for (Expression expr : selClause.getGroupByExprs())
+            expr.traverse(collector);
+
+        if (selClause.getHavingExpr() != null)
+            selClause.getHavingExpr().traverse(collector);
+
+        for (OrderByExpression expr : selClause.getOrderByExprs())
+            expr.getExpression().traverse(collector);
+
+        return collector.cacheable;
+    }
+
+
+    /**
+     * Adds the tables read by a <tt>FROM</tt> clause to a set, and returns
+     * true if the clause's results can be cached.
+     */
+    private static boolean collectTables(FromClause fromClause,
+                                         Set<String> tables) {
+        switch (fromClause.getClauseType()) {
+            case BASE_TABLE:
+                tables.add(fromClause.getTableName().toLowerCase());
+                return true;
+
+            case SELECT_SUBQUERY:
+                return collectTables(fromClause.getSelectClause(), tables);
+
+            case JOIN_EXPR:
+                if (!collectTables(fromClause.getLeftChild(), tables) ||
+                    !collectTables(fromClause.getRightChild(), tables)) {
+                    return false;
+                }
+
+                if (fromClause.getOnExpression() != null) {
+                    TableCollector collector = new TableCollector(tables);
+                    fromClause.getOnExpression().traverse(collector);
+                    return collector.cacheable;
+                }
+                return true;
+
+            default:
+                // Table functions can produce anything.
+                return false;
+        }
+    }
+
+
+    /**
+     * This expression-processor adds the tables read by subqueries to a set,
+     * and notes any functions that keep the expression's results from being
+     * cached.
+     */
+    private static class TableCollector implements ExpressionProcessor {
+        private Set<String> tables;
+
+        boolean cacheable = true;
+
+        TableCollector(Set<String> tables) {
+            this.tables = tables;
+        }
+
+        @Override
+        public void enter(Expression e) {
+            if (e instanceof FunctionCall) {
+                Function f = ((FunctionCall) e).getFunction();
+                if (f == null || !f.isDeterministic())
+                    cacheable = false;
+            } else if (e instanceof SubqueryOperator) {
+                SelectClause subquery = ((SubqueryOperator) e).getSubquery();
+                if (!collectTables(subquery, tables))
+                    cacheable = false;
+            }
+        }
+
+        @Override
+        public Expression leave(Expression e) {
+            return e;
+        }
+    }
+
+
+    /**
+     * Returns the cached results of a query, if the tables the query read
+     * haven't changed since.
+     *
+     * @param key the normalized text of the query
+     * @return the query's results, or {@code null} if there is no valid
+     *         cached result
+     */
+    public synchronized RowBuffer lookup(String key) {
+        CachedResult cached = results.get(key);
+        if (cached != null && !isCurrent(cached.tableVersions)) {
+            results.remove(key);
+            usedBytes -= cached.size;
+            cached = null;
+        }
+
+        if (cached == null) {
+            PerformanceCounters.inc(PerformanceCounters.RESULT_CACHE_MISSES);
+            return null;
+        }
+
+        PerformanceCounters.inc(PerformanceCounters.RESULT_CACHE_HITS);
+        return cached.rows;
+    }
+
+
+    /**
+     * Passes the cached results of a query to a tuple-processor, if the
+     * tables the query read haven't changed since the results were cached.
+     *
+     * @param key the normalized text of the query
+     * @param processor the processor to pass the results to
+     * @return true if cached results were passed to the processor, or false
+     *         if the query must be executed
+     */
+    public boolean replay(String key, TupleProcessor processor) {
+        RowBuffer rows = lookup(key);
+        if (rows == null)
+            return false;
+
+        // The cached rows are never modified, and evicting them just drops
+        // them from the cache, so they can be read without holding the lock.
+        processor.setSchema(rows.getSchema());
+        for (int i = 0; i < rows.size(); i++) {
+            Tuple tuple = rows.get(i);
+            processor.process(tuple);
+            tuple.unpin();
+        }
+        processor.finish();
+
+        return true;
+    }
+
+
+    /**
+     * Returns a tuple-processor that passes the results of a query on to
+     * another processor, and adds them to the cache if the query completes
+     * and the tables it read haven't changed in the meantime.  This must be
+     * called before the query is executed.
+     *
+     * @param key the normalized text of the query
+     * @param tables the tables the query reads, from
+     *        {@link #getCacheableTables}
+     * @param processor the processor to pass the query's results to
+     * @return a processor that also caches the query's results
+     */
+    public TupleProcessor capture(String key, Set<String> tables,
+                                  TupleProcessor processor) {
+        return new ResultCapture(key, tables, processor);
+    }
+
+
+    /**
+     * Adds the results of a query to the cache, if the tables the query read
+     * haven't changed since it started.
+     */
+    private synchronized void store(String key, RowBuffer rows,
+                                    Map<String, Long> versions,
+                                    long startGeneration) {
+        if (startGeneration != generation || !isCurrent(versions))
+            return;
+
+        long size = rows.getMemoryUsage() + 2L * key.length();
+        if (size > maxBytes)
+            return;
+
+        CachedResult old = results.put(key,
+            new CachedResult(rows, versions, size));
+        if (old != null)
+            usedBytes -= old.size;
+
+        usedBytes += size;
+        evictExcess();
+    }
+
+
+    /**
+     * Returns true if no table has changed from the specified version.
+     */
+    private boolean isCurrent(Map<String, Long> versions) {
+        for (Map.Entry<String, Long> entry : versions.entrySet()) {
+            if (getTableVersion(entry.getKey()) != entry.getValue())
+                return false;
+        }
+        return true;
+    }
+
+
+    private long getTableVersion(String table) {
+        return tableVersions.getOrDefault(table, 0L);
+    }
+
+
+    /**
+     * Discards the least recently used results until the cache uses no more
+     * than its maximum size.
+     */
+    private void evictExcess() {
+        Iterator<CachedResult> iter = results.values().iterator();
+        while (usedBytes > maxBytes && iter.hasNext()) {
+            usedBytes -= iter.next().size;
+            iter.remove();
+            PerformanceCounters.inc(PerformanceCounters.RESULT_CACHE_EVICTIONS);
+        }
+    }
+
+
+    /**
+     * Discards all cached results, e.g. because the schema has changed or a
+     * transaction has rolled back its changes.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        results.clear();
+        usedBytes = 0;
+    }
+
+
+    /**
+     * Returns the number of results in the cache.
+     *
+     * @return the number of results in the cache
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+
+    /**
+     * Returns the number of bytes used by the results in the cache.
+     *
+     * @return the number of bytes used by the results in the cache
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+
+    /**
+     * Records that a table has changed, so that cached results read from it
+     * are no longer used.
+     */
+    private void tableChanged(TableInfo tableInfo) {
+        if (isEnabled())
+            tableVersions.merge(tableInfo.getTableName().toLowerCase(), 1L, Long::sum);
+    }
+
+
+    @Override
+    public void beforeRowInserted(TableInfo tblFileInfo, Tuple newValues) {
+        // Do nothing.
+    }
+
+
+    @Override
+    public void afterRowInserted(TableInfo tblFileInfo, Tuple newTuple) {
+        tableChanged(tblFileInfo);
+    }
+
+
+    @Override
+    public void beforeRowUpdated(TableInfo tblFileInfo, Tuple oldTuple,
+                                 Tuple newValues) {
+        // Do nothing.
+    }
+
+
+    @Override
+    public void afterRowUpdated(TableInfo tblFileInfo, Tuple oldValues,
+                                Tuple newTuple) {
+        tableChanged(tblFileInfo);
+    }
+
+
+    @Override
+    public void beforeRowDeleted(TableInfo tblFileInfo, Tuple oldTuple) {
+        // Do nothing.
+    }
+
+
+    @Override
+    public void afterRowDeleted(TableInfo tblFileInfo, Tuple oldValues) {
+        tableChanged(tblFileInfo);
+    }
+
+
+    @Override
+    public void rowRelocated(TableInfo tblFileInfo, Tuple oldTuple,
+                             Tuple newTuple) {
+        // Moving a row doesn't change the table's contents.
+    }
+
+
+    /**
+     * Changing the size of the cache discards the cached results, since
+     * table changes aren't tracked while the cache is disabled.
+     */
+    @Override
+    public void propertyChanged(String propertyName, Object newValue) {
+        if (ServerProperties.PROP_RESULT_CACHE_SIZE.equals(propertyName)) {
+            synchronized (this) {
+                maxBytes = (Integer) newValue;
+                invalidateAll();
+            }
+        }
+    }
+}
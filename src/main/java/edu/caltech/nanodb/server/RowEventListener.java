@@ -92,4 +92,18 @@ public interface RowEventListener {
      *                    deleted.
      */
     void afterRowDeleted(TableInfo tblFileInfo, Tuple oldValues);
+
+
+    /**
+     * Perform processing when a row is moved to a new location within a
+     * table, e.g. when the table's file is compacted.  The row's values are
+     * unchanged; only its location in the table file differs.  Both tuples
+     * are in the table when this method is invoked; the old tuple is removed
+     * immediately afterward.
+     *
+     * @param tblFileInfo the table that the tuple is being moved within.
+     * @param oldTuple    the tuple at its old location in the table.
+     * @param newTuple    the tuple at its new location in the table.
+     */
+    void rowRelocated(TableInfo tblFileInfo, Tuple oldTuple, Tuple newTuple);
 }
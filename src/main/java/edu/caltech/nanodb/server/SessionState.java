@@ -2,8 +2,11 @@ package edu.caltech.nanodb.server;
 
 
 import java.io.PrintStream;
+import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import edu.caltech.nanodb.commands.PreparedStatement;
+import edu.caltech.nanodb.server.performance.SessionCounters;
 import edu.caltech.nanodb.transactions.TransactionState;
 
 
@@ -52,6 +55,22 @@ public class SessionState {
     }
 
 
+    /**
+     * Makes the specified session-state the current session of this thread.
+     * This is used by worker threads that do part of a session's work, with
+     * a state from {@link #makeWorkerState}; the worker should call
+     * {@link #remove} when it is done.
+     *
+     * @param state the session-state for this local thread
+     */
+    public static void set(SessionState state) {
+        if (state == null)
+            throw new IllegalArgumentException("state cannot be null");
+
+        threadLocalState.set(state);
+    }
+
+
     /*========================================================================
      * NON-STATIC FIELDS AND METHODS
      */
@@ -83,6 +102,29 @@ public class SessionState {
     private CommandState cmdState;
 
 
+    /** The storage activity of this session. */
+    private SessionCounters counters = new SessionCounters();
+
+
+    /**
+     * A copy of {@link #counters} taken when the current command started,
+     * or {@code null} if no command has started.
+     */
+    private SessionCounters commandStartCounters;
+
+
+    /**
+     * The storage activity of the last command that this session completed,
+     * or {@code null} if no command has completed.
+     */
+    private SessionCounters lastCommandCounters;
+
+
+    /** The statements prepared in this session, by name. */
+    private HashMap<String, PreparedStatement> preparedStatements =
+        new HashMap<>();
+
+
     private SessionState(int sessionID) {
         this.sessionID = sessionID;
         txnState = new TransactionState();
@@ -94,6 +136,27 @@ public class SessionState {
     }
 
 
+    /**
+     * Creates a worker state, for a worker thread that does part of this
+     * session's work (e.g. one worker of a parallel scan).  The worker state
+     * has this session's ID, transaction state and output stream, so that
+     * e.g. the pages the worker pins are attributed to this session.  The
+     * worker's storage activity is counted in the worker state's own
+     * counters, since counters may only be updated by one thread; this
+     * session's thread adds them to this session's counters once the worker
+     * is done.
+     *
+     * @return a new worker state for this session
+     */
+    public SessionState makeWorkerState() {
+        SessionState worker = new SessionState(sessionID);
+        worker.outputStream = outputStream;
+        worker.txnState = txnState;
+        worker.cmdState = cmdState;
+        return worker;
+    }
+
+
     /**
      * Returns the unique session ID for this client.
      *
@@ -127,6 +190,96 @@ public class SessionState {
     }
 
 
+    /**
+     * Returns the counters of this session's storage activity.  These are
+     * only updated by the session's own thread.
+     *
+     * @return the counters of this session's storage activity
+     */
+    public SessionCounters getCounters() {
+        return counters;
+    }
+
+
+    /**
+     * Records that this session is starting a command, so that the
+     * command's storage activity can be reported.
+     */
+    public void startCommand() {
+        commandStartCounters = new SessionCounters(counters);
+    }
+
+
+    /**
+     * Records that this session has completed its current command.
+     *
+     * @return the storage activity of the command
+     */
+    public SessionCounters endCommand() {
+        lastCommandCounters = getCommandCounters();
+        commandStartCounters = null;
+        return lastCommandCounters;
+    }
+
+
+    /**
+     * Returns the storage activity of the command that this session is
+     * currently executing.
+     *
+     * @return the storage activity of the current command, or {@code null}
+     *         if no command is being executed
+     */
+    public SessionCounters getCommandCounters() {
+        if (commandStartCounters == null)
+            return null;
+
+        return counters.since(commandStartCounters);
+    }
+
+
+    /**
+     * Returns the storage activity of the last command that this session
+     * completed.
+     *
+     * @return the storage activity of the last command, or {@code null} if
+     *         no command has completed
+     */
+    public SessionCounters getLastCommandCounters() {
+        return lastCommandCounters;
+    }
+
+
+    /**
+     * Returns the statement prepared in this session with the specified
+     * name.
+     *
+     * @param name the name of the prepared statement
+     * @return the prepared statement, or {@code null} if there is no
+     *         statement with that name
+     */
+    public PreparedStatement getPreparedStatement(String name) {
+        return preparedStatements.get(name);
+    }
+
+
+    public void addPreparedStatement(PreparedStatement statement) {
+        preparedStatements.put(statement.getName(), statement);
+    }
+
+
+    /**
+     * Discards the statement prepared in this session with the specified
+     * name.
+     *
+     * @param name the name of the prepared statement
+     * @return the prepared statement, or {@code null} if there is no
+     *         statement with that name
+     */
+    public PreparedStatement removePreparedStatement(String name) {
+        return preparedStatements.remove(name);
+    }
+
+
     @Override
     public int hashCode() {
         return sessionID;
@@ -0,0 +1,166 @@
+package edu.caltech.nanodb.server.performance;
+
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * This class records the distribution of the latencies of some operation,
+ * such as loading a page or syncing a file, and can be updated concurrently
+ * from many threads.  Latencies are counted in buckets whose bounds are
+ * powers of two microseconds, so percentiles are only accurate to within a
+ * factor of two, but recording a latency never blocks and only touches
+ * striped counters.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The number of buckets.  The last bucket holds every latency of
+     * 2<sup>NUM_BUCKETS - 2</sup> microseconds or more.
+     */
+    public static final int NUM_BUCKETS = 32;
+
+
+    /**
+     * The number of latencies in each bucket.  Bucket 0 holds latencies under
+     * 1 microsecond, and bucket <em>i</em> holds latencies of at least
+     * 2<sup>i-1</sup> and under 2<sup>i</sup> microseconds.
+     */
+    private final LongAdder[] buckets;
+
+
+    /** The number of latencies recorded. */
+    private final LongAdder count = new LongAdder();
+
+
+    /** The sum of the latencies recorded, in nanoseconds. */
+    private final LongAdder totalNanos = new LongAdder();
+
+
+    /** The largest latency recorded, in nanoseconds. */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+
+    public LatencyHistogram() {
+        buckets = new LongAdder[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+
+    /**
+     * Returns the bucket that a latency is counted in.
+     *
+     * @param nanos the latency in nanoseconds
+     * @return the index of the bucket the latency is counted in
+     */
+    static int getBucket(long nanos) {
+        long micros = Math.max(0, nanos) / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        buckets[getBucket(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+
+    public long getCount() {
+        return count.sum();
+    }
+
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+
+    /**
+     * Returns the average latency recorded, or 0 if none have been recorded.
+     *
+     * @return the average latency in nanoseconds
+     */
+    public long getMeanNanos() {
+        long n = getCount();
+        return (n == 0) ? 0 : getTotalNanos() / n;
+    }
+
+
+    /**
+     * Returns an upper bound on the specified percentile of the latencies
+     * recorded:  the upper bound of the bucket holding that percentile, but
+     * no more than the largest latency recorded.
+     *
+     * @param percentile the percentile, in the range (0, 100]
+     * @return an upper bound on the percentile's latency in nanoseconds, or
+     *         0 if no latencies have been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                "percentile must be in the range (0, 100]; got " + percentile);
+        }
+
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        int i = 0;
+        for (; i < NUM_BUCKETS - 1; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                break;
+        }
+
+        long upperNanos = (i == NUM_BUCKETS - 1) ? Long.MAX_VALUE :
+            (1L << i) * 1000;
+        return Math.min(upperNanos, getMaxNanos());
+    }
+
+
+    /**
+     * Clears all latencies recorded.  Latencies recorded concurrently with
+     * clearing may be partly kept.
+     */
+    public void clear() {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.3fms, p50=%.3fms, " +
+            "p95=%.3fms, p99=%.3fms, max=%.3fms", getCount(),
+            getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6,
+            getPercentileNanos(95) / 1e6, getPercentileNanos(99) / 1e6,
+            getMaxNanos() / 1e6);
+    }
+}
@@ -5,7 +5,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -15,7 +15,14 @@ import org.apache.logging.log4j.LogManager;
  * This class provides a basic performance-counter mechanism that can be used
  * concurrently from many different threads.  It allows us to record
  * performance statistics from the database, and ultimately to expose them
- * through SQL queries as well.
+ * through SQL queries as well.  Counters are {@link LongAdder}s, which are
+ * striped across threads so that frequent increments don't contend with
+ * each other; reading a counter sums its stripes.  The latencies of some
+ * operations are also recorded, in {@link LatencyHistogram}s.
+ * <p>
+ * These counters are for the whole server.  The activity of each session,
+ * and of the command it is executing, is also counted in its
+ * {@link SessionCounters}.
  *
  * @review (Donnie) I really don't like that this is a static class, because
  * it prevents us from having multiple sets of performance counters.
@@ -49,29 +56,103 @@ public class PerformanceCounters {
     public static final String STORAGE_BYTES_WRITTEN = "storage.bytesWritten";
 
 
-    private static ConcurrentHashMap<String, AtomicLong> counters =
+    public static final String STORAGE_FILE_SYNCS = "storage.fileSyncs";
+
+
+    public static final String BUFFER_HITS = "buffer.hits";
+
+
+    public static final String BUFFER_MISSES = "buffer.misses";
+
+
+    public static final String BUFFER_EVICTIONS = "buffer.evictions";
+
+
+    public static final String BUFFER_DIRTY_EVICTIONS = "buffer.dirtyEvictions";
+
+
+    public static final String WAL_FORCES = "wal.forces";
+
+
+    public static final String TXN_COMMITS = "txn.commits";
+
+
+    public static final String PLAN_CACHE_HITS = "plancache.hits";
+
+
+    public static final String PLAN_CACHE_MISSES = "plancache.misses";
+
+
+    public static final String PLAN_CACHE_INVALIDATIONS = "plancache.invalidations";
+
+
+    public static final String RESULT_CACHE_HITS = "resultcache.hits";
+
+
+    public static final String RESULT_CACHE_MISSES = "resultcache.misses";
+
+
+    public static final String RESULT_CACHE_EVICTIONS = "resultcache.evictions";
+
+
+    /** The latency of reading a page from its file. */
+    public static final String STORAGE_PAGE_LOAD_LATENCY =
+        "storage.pageLoadLatency";
+
+
+    /** The latency of syncing a file to disk. */
+    public static final String STORAGE_FILE_SYNC_LATENCY =
+        "storage.fileSyncLatency";
+
+
+    /** The latency of committing a transaction, including forcing the WAL. */
+    public static final String TXN_COMMIT_LATENCY = "txn.commitLatency";
+
+
+    private static ConcurrentHashMap<String, LongAdder> counters =
+        new ConcurrentHashMap<>();
+
+
+    private static ConcurrentHashMap<String, LatencyHistogram> histograms =
         new ConcurrentHashMap<>();
 
 
-    private static AtomicLong getCounter(String counterName) {
+    private static LongAdder getCounter(String counterName) {
         // Retrieve the requested counter, or allocate it if it hasn't been
         // used yet.
-        return counters.computeIfAbsent(counterName, k -> new AtomicLong());
+        return counters.computeIfAbsent(counterName, k -> new LongAdder());
     }
 
 
+    /**
+     * Increments the specified counter.
+     *
+     * @param counterName the name of the counter
+     * @return the counter's value after the increment.  Concurrent updates
+     *         by other threads may also be reflected in this value.
+     */
     public static long inc(String counterName) {
-        return getCounter(counterName).incrementAndGet();
+        return add(counterName, 1);
     }
 
 
+    /**
+     * Adds a value to the specified counter.
+     *
+     * @param counterName the name of the counter
+     * @param value the value to add to the counter
+     * @return the counter's value after the addition.  Concurrent updates
+     *         by other threads may also be reflected in this value.
+     */
     public static long add(String counterName, long value) {
-        return getCounter(counterName).addAndGet(value);
+        LongAdder counter = getCounter(counterName);
+        counter.add(value);
+        return counter.sum();
     }
 
 
     public static long dec(String counterName) {
-        return getCounter(counterName).decrementAndGet();
+        return add(counterName, -1);
     }
 
 
@@ -81,21 +162,64 @@ public class PerformanceCounters {
 
 
     public static long get(String counterName) {
-        return getCounter(counterName).get();
+        return getCounter(counterName).sum();
     }
 
 
+    /**
+     * Resets the specified counter to zero, and returns its previous value.
+     * The reset is not atomic:  an update made concurrently with it may be
+     * lost, or may be left in the counter after the reset instead of being
+     * included in the returned value.
+     *
+     * @param counterName the name of the counter
+     * @return the counter's value before the reset
+     */
     public static long clear(String counterName) {
-        return getCounter(counterName).getAndSet(0);
+        return getCounter(counterName).sumThenReset();
+    }
+
+
+    /**
+     * Returns the histogram of the specified operation's latencies,
+     * allocating it if it hasn't been used yet.
+     *
+     * @param histogramName the name of the histogram
+     * @return the histogram
+     */
+    public static LatencyHistogram getHistogram(String histogramName) {
+        return histograms.computeIfAbsent(histogramName,
+            k -> new LatencyHistogram());
+    }
+
+
+    /**
+     * Records one latency of the specified operation.
+     *
+     * @param histogramName the name of the operation's histogram
+     * @param nanos the latency in nanoseconds
+     */
+    public static void recordLatency(String histogramName, long nanos) {
+        getHistogram(histogramName).record(nanos);
     }
 
 
+    /**
+     * Discards all counters and histograms.  Like {@link #clear}, this is
+     * not atomic with respect to concurrent updates.
+     */
     public static void clearAll() {
         counters.clear();
+        histograms.clear();
     }
 
 
     public static Set<String> getCounterNames() {
         return new HashSet<String>(counters.keySet());
     }
+
+
+    public static Set<String> getHistogramNames() {
+        return new HashSet<String>(histograms.keySet());
+    }
 }
@@ -0,0 +1,229 @@
+package edu.caltech.nanodb.server.performance;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * This class counts the storage activity of one client session, so that it
+ * can be attributed to the session and to the commands it executes.  Each
+ * session only updates its own counters, from its own thread, so unlike
+ * {@link PerformanceCounters} no synchronization is needed; worker threads
+ * that do part of a session's work count into their own counters, which the
+ * session's thread {@linkplain #add adds} to its counters when the workers
+ * are done.  The activity of one command is the difference between the
+ * session's counters after the command and a copy taken before it.
+ */
+public class SessionCounters {
+
+    /** The number of requested pages that were already cached. */
+    private long bufferHits;
+
+
+    /** The number of requested pages that weren't cached. */
+    private long bufferMisses;
+
+
+    /** The number of pages read from disk. */
+    private long pagesRead;
+
+
+    /** The number of pages written to disk. */
+    private long pagesWritten;
+
+
+    /** The total time spent reading pages from disk, in nanoseconds. */
+    private long pageLoadNanos;
+
+
+    /** The number of times a file was synced to disk. */
+    private long fileSyncs;
+
+
+    /** The total time spent syncing files to disk, in nanoseconds. */
+    private long fileSyncNanos;
+
+
+    /** The number of transactions committed. */
+    private long commits;
+
+
+    public SessionCounters() {
+        // All counters start at zero.
+    }
+
+
+    /**
+     * Creates a copy of another set of counters.
+     *
+     * @param other the counters to copy
+     */
+    public SessionCounters(SessionCounters other) {
+        bufferHits = other.bufferHits;
+        bufferMisses = other.bufferMisses;
+        pagesRead = other.pagesRead;
+        pagesWritten = other.pagesWritten;
+        pageLoadNanos = other.pageLoadNanos;
+        fileSyncs = other.fileSyncs;
+        fileSyncNanos = other.fileSyncNanos;
+        commits = other.commits;
+    }
+
+
+    /**
+     * Returns the activity counted since a copy of these counters was
+     * taken.
+     *
+     * @param since an earlier copy of these counters
+     * @return the difference between these counters and the earlier copy
+     */
+    public SessionCounters since(SessionCounters since) {
+        SessionCounters diff = new SessionCounters(this);
+        diff.bufferHits -= since.bufferHits;
+        diff.bufferMisses -= since.bufferMisses;
+        diff.pagesRead -= since.pagesRead;
+        diff.pagesWritten -= since.pagesWritten;
+        diff.pageLoadNanos -= since.pageLoadNanos;
+        diff.fileSyncs -= since.fileSyncs;
+        diff.fileSyncNanos -= since.fileSyncNanos;
+        diff.commits -= since.commits;
+        return diff;
+    }
+
+
+    /**
+     * Adds another set of counters to these counters.
+     *
+     * @param other the counters to add
+     */
+    public void add(SessionCounters other) {
+        bufferHits += other.bufferHits;
+        bufferMisses += other.bufferMisses;
+        pagesRead += other.pagesRead;
+        pagesWritten += other.pagesWritten;
+        pageLoadNanos += other.pageLoadNanos;
+        fileSyncs += other.fileSyncs;
+        fileSyncNanos += other.fileSyncNanos;
+        commits += other.commits;
+    }
+
+
+    /**
+     * Records that a requested page was found in the buffer manager's cache.
+     */
+    public void recordBufferHit() {
+        bufferHits++;
+    }
+
+
+    /**
+     * Records that a requested page wasn't in the buffer manager's cache.
+     *
+     * @param read true if the page was then read from disk, or false if it
+     *        doesn't exist in its file
+     */
+    public void recordBufferMiss(boolean read) {
+        bufferMisses++;
+        if (read)
+            pagesRead++;
+    }
+
+
+    /**
+     * Records the time spent reading a page from disk.
+     *
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordPageLoad(long nanos) {
+        pageLoadNanos += nanos;
+    }
+
+
+    /** Records that a page was written to disk. */
+    public void recordPageWrite() {
+        pagesWritten++;
+    }
+
+
+    /**
+     * Records that a file was synced to disk.
+     *
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void recordFileSync(long nanos) {
+        fileSyncs++;
+        fileSyncNanos += nanos;
+    }
+
+
+    /** Records that a transaction was committed. */
+    public void recordCommit() {
+        commits++;
+    }
+
+
+    public long getBufferHits() {
+        return bufferHits;
+    }
+
+
+    public long getBufferMisses() {
+        return bufferMisses;
+    }
+
+
+    public long getPagesRead() {
+        return pagesRead;
+    }
+
+
+    public long getPagesWritten() {
+        return pagesWritten;
+    }
+
+
+    public long getPageLoadNanos() {
+        return pageLoadNanos;
+    }
+
+
+    public long getFileSyncs() {
+        return fileSyncs;
+    }
+
+
+    public long getFileSyncNanos() {
+        return fileSyncNanos;
+    }
+
+
+    public long getCommits() {
+        return commits;
+    }
+
+
+    /**
+     * Returns the counters' values by name, in a consistent order.
+     *
+     * @return a map from each counter's name to its value
+     */
+    public Map<String, Long> getValues() {
+        LinkedHashMap<String, Long> values = new LinkedHashMap<>();
+        values.put("bufferHits", bufferHits);
+        values.put("bufferMisses", bufferMisses);
+        values.put("pagesRead", pagesRead);
+        values.put("pagesWritten", pagesWritten);
+        values.put("pageLoadNanos", pageLoadNanos);
+        values.put("fileSyncs", fileSyncs);
+        values.put("fileSyncNanos", fileSyncNanos);
+        values.put("commits", commits);
+        return values;
+    }
+
+
+    @Override
+    public String toString() {
+        return "SessionCounters" + getValues();
+    }
+}
@@ -126,6 +126,59 @@ public class PropertyRegistry implements ServerProperties {
             new IntegerValueValidator(DBFile::isValidPageSize,
                 "Specified page-size %d is invalid."), DEFAULT_PAGE_SIZE);
 
+        addProperty(PROP_OPTIMIZE_BATCH_PAGES,
+            new IntegerValueValidator(1, Integer.MAX_VALUE),
+            DEFAULT_OPTIMIZE_BATCH_PAGES);
+
+        addProperty(PROP_ANALYZE_SAMPLE_PERCENT,
+            new IntegerValueValidator(1, 100),
+            DEFAULT_ANALYZE_SAMPLE_PERCENT);
+
+        addProperty(PROP_AUTO_ANALYZE,
+            new BooleanFlagValidator(), DEFAULT_AUTO_ANALYZE);
+
+        addProperty(PROP_AUTO_ANALYZE_CHANGE_PERCENT,
+            new IntegerValueValidator(0, Integer.MAX_VALUE),
+            DEFAULT_AUTO_ANALYZE_CHANGE_PERCENT);
+
+        addProperty(PROP_AUTO_ANALYZE_SAMPLE_PERCENT,
+            new IntegerValueValidator(1, 100),
+            DEFAULT_AUTO_ANALYZE_SAMPLE_PERCENT);
+
+        addProperty(PROP_ZONEMAP_PAGES_PER_ZONE,
+            new IntegerValueValidator(1, 65535),
+            DEFAULT_ZONEMAP_PAGES_PER_ZONE);
+
+        addProperty(PROP_ENABLE_BATCH_EXECUTION,
+            new BooleanFlagValidator(), DEFAULT_ENABLE_BATCH_EXECUTION);
+
+        addProperty(PROP_PARALLELISM,
+            new IntegerValueValidator(1, 1024), DEFAULT_PARALLELISM);
+
+        addProperty(PROP_PARALLEL_SCAN_MIN_PAGES,
+            new IntegerValueValidator(1, Integer.MAX_VALUE),
+            DEFAULT_PARALLEL_SCAN_MIN_PAGES);
+
+        addProperty(PROP_OPERATOR_MEMORY_LIMIT,
+            new IntegerValueValidator(1024, Integer.MAX_VALUE),
+            DEFAULT_OPERATOR_MEMORY_LIMIT);
+
+        addProperty(PROP_JOIN_BLOCK_SIZE,
+            new IntegerValueValidator(1, Integer.MAX_VALUE),
+            DEFAULT_JOIN_BLOCK_SIZE);
+
+        addProperty(PROP_ADAPTIVE_JOIN_THRESHOLD,
+            new IntegerValueValidator(0, Integer.MAX_VALUE),
+            DEFAULT_ADAPTIVE_JOIN_THRESHOLD);
+
+        addProperty(PROP_PLAN_CACHE_SIZE,
+            new IntegerValueValidator(0, Integer.MAX_VALUE),
+            DEFAULT_PLAN_CACHE_SIZE);
+
+        addProperty(PROP_RESULT_CACHE_SIZE,
+            new IntegerValueValidator(0, Integer.MAX_VALUE),
+            DEFAULT_RESULT_CACHE_SIZE);
+
         addProperty(PROP_ENABLE_TRANSACTIONS,
             new BooleanFlagValidator(), true, /* readonly */ true);
 
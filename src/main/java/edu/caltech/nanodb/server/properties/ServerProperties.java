@@ -59,6 +59,190 @@ public interface ServerProperties {
 
     int DEFAULT_PAGE_SIZE = 8192;
 
+    // --- OPTIMIZE PROPERTIES -----------------------------------------------
+
+    /**
+     * The system property that specifies the maximum number of pages that
+     * <tt>OPTIMIZE</tt> will free from a table file in each compaction batch.
+     * Smaller batches bound the number of pages touched (and written to the
+     * log) between batches, at the cost of more passes over the free list.
+     */
+    String PROP_OPTIMIZE_BATCH_PAGES = "nanodb.optimize.batchPages";
+
+    /**
+     * The default number of pages freed in each compaction batch.
+     */
+    int DEFAULT_OPTIMIZE_BATCH_PAGES = 64;
+
+    // --- ANALYZE PROPERTIES ------------------------------------------------
+
+    /**
+     * The system property that specifies the percentage of a table's data
+     * pages that <tt>ANALYZE</tt> reads.  At 100, every page is read; below
+     * that, a random sample of the pages is read, and the statistics are
+     * scaled up to the whole table.
+     */
+    String PROP_ANALYZE_SAMPLE_PERCENT = "nanodb.analyze.samplePercent";
+
+    /**
+     * The default percentage of data pages read by <tt>ANALYZE</tt>.
+     */
+    int DEFAULT_ANALYZE_SAMPLE_PERCENT = 100;
+
+    /**
+     * The system property that can be used to turn on or off automatic
+     * analysis of tables, once enough of a table's rows have changed since
+     * it was last analyzed.
+     */
+    String PROP_AUTO_ANALYZE = "nanodb.autoAnalyze";
+
+    /**
+     * By default, tables are analyzed automatically.
+     */
+    boolean DEFAULT_AUTO_ANALYZE = true;
+
+    /**
+     * The system property that specifies the percentage of a table's rows
+     * that must change, in addition to a small fixed number of rows, before
+     * the table is analyzed automatically.
+     */
+    String PROP_AUTO_ANALYZE_CHANGE_PERCENT = "nanodb.autoAnalyze.changePercent";
+
+    /**
+     * The default percentage of rows that must change before a table is
+     * analyzed automatically.
+     */
+    int DEFAULT_AUTO_ANALYZE_CHANGE_PERCENT = 10;
+
+    /**
+     * The system property that specifies the percentage of a table's data
+     * pages that are read when the table is analyzed automatically.
+     */
+    String PROP_AUTO_ANALYZE_SAMPLE_PERCENT = "nanodb.autoAnalyze.samplePercent";
+
+    /**
+     * The default percentage of data pages read by automatic analysis.
+     */
+    int DEFAULT_AUTO_ANALYZE_SAMPLE_PERCENT = 10;
+
+    // --- ZONE MAP PROPERTIES -----------------------------------------------
+
+    /**
+     * The system property that specifies how many consecutive data pages of
+     * a heap file are summarized by each entry of the file's zone map.  The
+     * value is fixed when a table is created.  Larger zones make the zone map
+     * smaller, but let scans skip data in coarser steps.
+     */
+    String PROP_ZONEMAP_PAGES_PER_ZONE = "nanodb.zonemap.pagesPerZone";
+
+    /**
+     * The default number of data pages summarized by each zone map entry.
+     */
+    int DEFAULT_ZONEMAP_PAGES_PER_ZONE = 1;
+
+    // --- EXECUTION PROPERTIES ----------------------------------------------
+
+    /**
+     * The system property that can be used to turn on or off batch
+     * execution of <tt>SELECT</tt> queries, where plan nodes that support it
+     * pass batches of tuples to each other instead of individual tuples.
+     */
+    String PROP_ENABLE_BATCH_EXECUTION = "nanodb.enableBatchExecution";
+
+    /**
+     * By default, queries are evaluated in batches where possible.
+     */
+    boolean DEFAULT_ENABLE_BATCH_EXECUTION = true;
+
+    /**
+     * The system property that specifies how many worker threads may scan a
+     * single table in parallel.  A value of 1 means that scans are always
+     * run on the session's own thread.
+     */
+    String PROP_PARALLELISM = "nanodb.parallelism";
+
+    /**
+     * By default, tables are scanned on the session's own thread.
+     */
+    int DEFAULT_PARALLELISM = 1;
+
+    /**
+     * The system property that specifies the minimum number of pages that a
+     * table must have for scans of it to be run in parallel.  Smaller tables
+     * are cheaper to scan than it is to start the workers.
+     */
+    String PROP_PARALLEL_SCAN_MIN_PAGES = "nanodb.parallelScanMinPages";
+
+    /**
+     * The default minimum number of pages for a parallel table scan.
+     */
+    int DEFAULT_PARALLEL_SCAN_MIN_PAGES = 64;
+
+    /**
+     * The system property that specifies how many bytes of memory a single
+     * memory-hungry operator, such as the hash table of a <tt>SELECT
+     * DISTINCT</tt> or the rows buffered by a sort, may use before it spills
+     * rows to temporary files, and how large the inner input of a
+     * nested-loop join may be for it to be cached in memory rather than
+     * rescanned.
+     */
+    String PROP_OPERATOR_MEMORY_LIMIT = "nanodb.operatorMemoryLimit";
+
+    /**
+     * By default, operators may use 32MB of memory before spilling.
+     */
+    int DEFAULT_OPERATOR_MEMORY_LIMIT = 32 * 1024 * 1024;
+
+    /**
+     * The system property that specifies how many rows of a nested-loop
+     * join's outer input are buffered at a time, so that the inner input is
+     * scanned once per block of rows rather than once per row.  A value of 1
+     * gives a tuple-at-a-time nested-loop join.
+     */
+    String PROP_JOIN_BLOCK_SIZE = "nanodb.joinBlockSize";
+
+    /**
+     * By default, nested-loop joins buffer 1024 outer rows at a time.
+     */
+    int DEFAULT_JOIN_BLOCK_SIZE = 1024;
+
+    /**
+     * The system property that specifies the largest number of build-side
+     * rows for which an adaptive join compares every probe row against every
+     * build row.  Adaptive joins with more build rows than this build a hash
+     * table on the join keys instead.
+     */
+    String PROP_ADAPTIVE_JOIN_THRESHOLD = "nanodb.adaptiveJoinThreshold";
+
+    /**
+     * By default, adaptive joins use nested loops for up to 64 build rows.
+     */
+    int DEFAULT_ADAPTIVE_JOIN_THRESHOLD = 64;
+
+    /**
+     * The system property that specifies how many parsed and planned
+     * commands the server's plan cache holds.  A value of 0 disables the
+     * cache.
+     */
+    String PROP_PLAN_CACHE_SIZE = "nanodb.planCacheSize";
+
+    /**
+     * By default, the plan cache holds 100 commands.
+     */
+    int DEFAULT_PLAN_CACHE_SIZE = 100;
+
+    /**
+     * The system property that specifies how many bytes of query results
+     * the server's result cache may hold.  A value of 0 disables the cache.
+     */
+    String PROP_RESULT_CACHE_SIZE = "nanodb.resultCacheSize";
+
+    /**
+     * By default, the result cache is disabled, since cached results use
+     * memory that the buffer manager could otherwise use.
+     */
+    int DEFAULT_RESULT_CACHE_SIZE = 0;
+
     // --- CONSTRAINT PROPERTIES ---------------------------------------------
 
     String PROP_ENFORCE_KEY_CONSTRAINTS = "nanodb.enforceKeyConstraints";
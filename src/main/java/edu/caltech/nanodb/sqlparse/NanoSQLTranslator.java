@@ -4,6 +4,7 @@ package edu.caltech.nanodb.sqlparse;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.List;
 
 import edu.caltech.nanodb.commands.ShowSystemStatsCommand;
 import edu.caltech.nanodb.expressions.ArithmeticOperator;
@@ -18,10 +19,13 @@ import edu.caltech.nanodb.expressions.InValuesOperator;
 import edu.caltech.nanodb.expressions.IsNullOperator;
 import edu.caltech.nanodb.expressions.LiteralValue;
 import edu.caltech.nanodb.expressions.NegateOperator;
+import edu.caltech.nanodb.expressions.ParameterValue;
 import edu.caltech.nanodb.expressions.ScalarSubquery;
 import edu.caltech.nanodb.expressions.StringMatchOperator;
 import edu.caltech.nanodb.functions.FunctionDirectory;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import edu.caltech.nanodb.commands.AnalyzeCommand;
@@ -32,17 +36,22 @@ import edu.caltech.nanodb.commands.CommitTransactionCommand;
 import edu.caltech.nanodb.commands.ConstraintDecl;
 import edu.caltech.nanodb.commands.CrashCommand;
 import edu.caltech.nanodb.commands.CreateIndexCommand;
+import edu.caltech.nanodb.commands.CreateStatisticsCommand;
 import edu.caltech.nanodb.commands.CreateTableCommand;
+import edu.caltech.nanodb.commands.DeallocateCommand;
 import edu.caltech.nanodb.commands.DeleteCommand;
 import edu.caltech.nanodb.commands.DropIndexCommand;
 import edu.caltech.nanodb.commands.DropTableCommand;
 import edu.caltech.nanodb.commands.DumpIndexCommand;
 import edu.caltech.nanodb.commands.DumpTableCommand;
+import edu.caltech.nanodb.commands.ExecuteCommand;
 import edu.caltech.nanodb.commands.ExitCommand;
 import edu.caltech.nanodb.commands.ExplainCommand;
 import edu.caltech.nanodb.commands.FlushCommand;
 import edu.caltech.nanodb.commands.InsertCommand;
 import edu.caltech.nanodb.commands.OptimizeCommand;
+import edu.caltech.nanodb.commands.PrepareCommand;
+import edu.caltech.nanodb.commands.QueryCommand;
 import edu.caltech.nanodb.commands.RollbackTransactionCommand;
 import edu.caltech.nanodb.commands.SelectCommand;
 import edu.caltech.nanodb.commands.SetPropertyCommand;
@@ -79,6 +88,17 @@ public class NanoSQLTranslator extends NanoSQLBaseVisitor<Object> {
     private FunctionDirectory functionDirectory;
 
 
+    /**
+     * The values bound to the parameters of the statement being prepared, or
+     * {@code null} if a statement isn't being prepared.
+     */
+    private ArrayList<Object> parameterValues;
+
+
+    /** The highest-numbered parameter of the statement being prepared. */
+    private int numParameters;
+
+
     public NanoSQLTranslator(FunctionDirectory functionDirectory) {
         this.functionDirectory = functionDirectory;
     }
@@ -176,7 +196,23 @@ public class NanoSQLTranslator extends NanoSQLBaseVisitor<Object> {
         // Remove the quotes from around the subsystem name
         systemName = systemName.substring(1, systemName.length() - 1);
 
-        return new ShowSystemStatsCommand(systemName);
+        String filename = null;
+        if (ctx.fileName != null) {
+            filename = ctx.fileName.getText();
+
+            // Remove the quotes from around the filename
+            filename = filename.substring(1, filename.length() - 1);
+        }
+
+        String format = null;
+        if (ctx.format != null) {
+            format = ctx.format.getText().toLowerCase();
+
+            // Remove the quotes from around the format
+            format = format.substring(1, format.length() - 1);
+        }
+
+        return new ShowSystemStatsCommand(systemName, filename, format);
     }
 
     //=== TABLE/INDEX UTILITY COMMANDS =======================================
@@ -521,6 +557,20 @@ public class NanoSQLTranslator extends NanoSQLBaseVisitor<Object> {
         return cmd;
     }
 
+    @Override
+    public Object visitCreateStatsStmt(NanoSQLParser.CreateStatsStmtContext ctx) {
+        String statsName = ctx.statsName.getText().toLowerCase();
+        String tableName = ctx.tableName.getText().toLowerCase();
+
+        CreateStatisticsCommand cmd = new CreateStatisticsCommand(statsName, tableName);
+        cmd.setIfNotExists(ctx.EXISTS() != null);
+
+        for (Token n : ctx.columnName)
+            cmd.addColumn(n.getText().toLowerCase());
+
+        return cmd;
+    }
+
     @Override
     public Object visitDropIndexStmt(NanoSQLParser.DropIndexStmtContext ctx) {
         String indexName = ctx.indexName.getText().toLowerCase();
@@ -754,25 +804,67 @@ public class NanoSQLTranslator extends NanoSQLBaseVisitor<Object> {
     @Override
     public Object visitExplainSelect(NanoSQLParser.ExplainSelectContext ctx) {
         SelectCommand cmdToExplain = (SelectCommand) visit(ctx.selectStmt());
-        return new ExplainCommand(cmdToExplain);
+        return new ExplainCommand(cmdToExplain, ctx.ANALYZE() != null);
     }
 
     @Override
     public Object visitExplainInsert(NanoSQLParser.ExplainInsertContext ctx) {
         InsertCommand cmdToExplain = (InsertCommand) visit(ctx.insertStmt());
-        return new ExplainCommand(cmdToExplain);
+        return new ExplainCommand(cmdToExplain, ctx.ANALYZE() != null);
     }
 
     @Override
     public Object visitExplainUpdate(NanoSQLParser.ExplainUpdateContext ctx) {
         UpdateCommand cmdToExplain = (UpdateCommand) visit(ctx.updateStmt());
-        return new ExplainCommand(cmdToExplain);
+        return new ExplainCommand(cmdToExplain, ctx.ANALYZE() != null);
     }
 
     @Override
     public Object visitExplainDelete(NanoSQLParser.ExplainDeleteContext ctx) {
         DeleteCommand cmdToExplain = (DeleteCommand) visit(ctx.deleteStmt());
-        return new ExplainCommand(cmdToExplain);
+        return new ExplainCommand(cmdToExplain, ctx.ANALYZE() != null);
+    }
+
+
+    //=== PREPARED STATEMENTS ================================================
+
+    @Override
+    public Object visitPrepareStmt(NanoSQLParser.PrepareStmtContext ctx) {
+        String name = ctx.name.getText().toLowerCase();
+
+        // The statement is the last child of the rule.  Its text is kept so
+        // that it can be parsed again if the schema changes.
+        ParserRuleContext stmtCtx =
+            (ParserRuleContext) ctx.getChild(ctx.getChildCount() - 1);
+        String stmtText = stmtCtx.start.getInputStream().getText(
+            Interval.of(stmtCtx.start.getStartIndex(),
+                        stmtCtx.stop.getStopIndex()));
+
+        parameterValues = new ArrayList<>();
+        numParameters = 0;
+        try {
+            QueryCommand stmt = (QueryCommand) visit(stmtCtx);
+            return new PrepareCommand(name, stmt, stmtText, parameterValues,
+                numParameters);
+        } finally {
+            parameterValues = null;
+        }
+    }
+
+    @Override
+    public Object visitExecuteStmt(NanoSQLParser.ExecuteStmtContext ctx) {
+        String name = ctx.name.getText().toLowerCase();
+
+        List<Expression> args = new ArrayList<>();
+        for (NanoSQLParser.ExpressionContext ectx : ctx.expression())
+            args.add((Expression) visit(ectx));
+
+        return new ExecuteCommand(name, args);
+    }
+
+    @Override
+    public Object visitDeallocateStmt(NanoSQLParser.DeallocateStmtContext ctx) {
+        return new DeallocateCommand(ctx.name.getText().toLowerCase());
     }
 
 
@@ -912,6 +1004,22 @@ public class NanoSQLTranslator extends NanoSQLBaseVisitor<Object> {
         return new LiteralValue(visit(ctx.literalValue()));
     }
 
+    @Override
+    public Object visitExprParameter(NanoSQLParser.ExprParameterContext ctx) {
+        String text = ctx.PARAMETER().getText();
+        if (parameterValues == null) {
+            throw new IllegalArgumentException("Parameter " + text +
+                " can only be used in a prepared statement");
+        }
+
+        int index = Integer.parseInt(text.substring(1));
+        if (index < 1)
+            throw new IllegalArgumentException("Parameters are numbered from $1");
+
+        numParameters = Math.max(numParameters, index);
+        return new ParameterValue(index, parameterValues);
+    }
+
     @Override
     public Object visitExprColumnRef(NanoSQLParser.ExprColumnRefContext ctx) {
         return new ColumnValue((ColumnName) visit(ctx.columnRef()));
@@ -14,6 +14,8 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.server.performance.SessionCounters;
 import edu.caltech.nanodb.server.properties.PropertyObserver;
 import edu.caltech.nanodb.server.properties.PropertyRegistry;
 import edu.caltech.nanodb.server.properties.ServerProperties;
@@ -139,6 +141,16 @@ public class BufferManager {
     private int totalBytesCached;
 
 
+    /**
+     * This field records how many of the cached bytes belong to dirty pages
+     * that have been evicted, but that are still being written out.  These
+     * bytes are released as soon as the pages are written, so allocations
+     * made while they are written (e.g. by the transaction manager forcing
+     * the write-ahead log) treat them as available.
+     */
+    private int bytesBeingEvicted;
+
+
     /**
      * This field records the maximum allowed cache size.
      */
@@ -256,7 +268,7 @@ public class BufferManager {
 
             ensureSpaceAvailable(size);
 
-            if (totalBytesCached + size > maxCacheSize) {
+            if (totalBytesCached - bytesBeingEvicted + size > maxCacheSize) {
                 throw new IllegalStateException(
                     "Not enough room to allocate a buffer of " + size + " bytes!");
             }
@@ -514,6 +526,8 @@ public class BufferManager {
             if (dbPage != null) {
                 // Page is already in cache.  Pin it, then we're done.
                 dbPage.pin();
+                SessionState.get().getCounters().recordBufferHit();
+                PerformanceCounters.inc(PerformanceCounters.BUFFER_HITS);
             } else {
                 // Need to load the page from disk!
 
@@ -521,8 +535,19 @@ public class BufferManager {
 
                 // File Manager returns true if the page was actually loaded,
                 // or false if the page doesn't exist in the file.
+                long loadStart = System.nanoTime();
                 boolean loaded = fileManager.loadPage(dbFile, pageNo,
                     dbPage.getPageData(), create);
+                long loadNanos = System.nanoTime() - loadStart;
+
+                SessionCounters counters = SessionState.get().getCounters();
+                counters.recordBufferMiss(loaded);
+                PerformanceCounters.inc(PerformanceCounters.BUFFER_MISSES);
+                if (loaded) {
+                    counters.recordPageLoad(loadNanos);
+                    PerformanceCounters.recordLatency(
+                        PerformanceCounters.STORAGE_PAGE_LOAD_LATENCY, loadNanos);
+                }
 
                 if (loaded) {
                     CachedPageInfo cpi = new CachedPageInfo(dbFile, pageNo);
@@ -572,8 +597,10 @@ public class BufferManager {
     private void ensureSpaceAvailable(int bytesRequired) {
         synchronized (guard) {
             // If we already have enough space, return without doing anything.
-            if (bytesRequired + totalBytesCached <= maxCacheSize)
+            if (bytesRequired + totalBytesCached - bytesBeingEvicted <=
+                maxCacheSize) {
                 return;
+            }
 
             // We don't currently have enough space in the cache.  Try to
             // solve this problem by evicting pages.  We collect together the
@@ -588,8 +615,8 @@ public class BufferManager {
                 Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
                     cachedPages.entrySet().iterator();
 
-                while (entries.hasNext() &&
-                    bytesRequired + totalBytesCached > maxCacheSize) {
+                while (entries.hasNext() && bytesRequired + totalBytesCached -
+                    bytesBeingEvicted > maxCacheSize) {
                     Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
 
                     DBPage oldPage = entry.getValue();
@@ -602,12 +629,15 @@ public class BufferManager {
                         oldPage.getDBFile(), oldPage.getPageNo()));
 
                     entries.remove();
+                    PerformanceCounters.inc(PerformanceCounters.BUFFER_EVICTIONS);
 
                     // If the page is dirty, we need to write its data to disk before
                     // invalidating it.  Otherwise, just invalidate it.
                     if (oldPage.isDirty()) {
                         logger.debug("    Evicted page is dirty; must save to disk.");
                         dirtyPages.add(oldPage);
+                        PerformanceCounters.inc(
+                            PerformanceCounters.BUFFER_DIRTY_EVICTIONS);
                     } else {
                         oldPage.invalidate();
                     }
@@ -615,7 +645,22 @@ public class BufferManager {
             }
 
             // If we have any dirty data pages, they need to be flushed to disk.
-            writeDirtyPages(dirtyPages, /* invalidate */ true);
+            // Writing them may require loading other pages, e.g. when the
+            // write-ahead log is forced, and there may be nothing left to
+            // evict for those pages; so count the dirty pages as released.
+            int evictedBytes = 0;
+            for (DBPage dbPage : dirtyPages) {
+                evictedBytes += dbPage.getPageData().length;
+                if (dbPage.getOldPageData() != null)
+                    evictedBytes += dbPage.getOldPageData().length;
+            }
+
+            bytesBeingEvicted += evictedBytes;
+            try {
+                writeDirtyPages(dirtyPages, /* invalidate */ true);
+            } finally {
+                bytesBeingEvicted -= evictedBytes;
+            }
 
             if (bytesRequired + totalBytesCached > maxCacheSize)
                 logger.warn("Buffer manager is currently using too much space.");
@@ -835,6 +880,54 @@ public class BufferManager {
     }
 
 
+    /**
+     * This method removes all cached pages in the specified file whose
+     * page-number is at or past {@code minPageNo}, writing out any dirty
+     * pages in the process.  It is used when a file is being truncated.
+     * Dirty pages are still written, even though they are about to be
+     * truncated, so that the write-ahead logging rule is enforced for them
+     * like any other page; changes to a page are never discarded.
+     *
+     * @param dbFile the file whose trailing pages should be flushed
+     * @param minPageNo cached pages with a page-number greater than or equal
+     *                  to this value are flushed
+     */
+    public void flushDBFilePages(DBFile dbFile, int minPageNo) {
+        logger.info(String.format("Flushing pages %d and beyond for " +
+            "file %s from the Buffer Manager.", minPageNo, dbFile));
+
+        synchronized (guard) {
+            Iterator<Map.Entry<CachedPageInfo, DBPage>> entries =
+                cachedPages.entrySet().iterator();
+
+            ArrayList<DBPage> dirtyPages = new ArrayList<>();
+
+            while (entries.hasNext()) {
+                Map.Entry<CachedPageInfo, DBPage> entry = entries.next();
+
+                CachedPageInfo info = entry.getKey();
+                if (dbFile.equals(info.dbFile) && info.pageNo >= minPageNo) {
+                    DBPage oldPage = entry.getValue();
+
+                    logger.debug(String.format(
+                        "    Evicting page [%s,%d] from page-cache.",
+                        oldPage.getDBFile(), oldPage.getPageNo()));
+
+                    // As in flushDBFile(), totalBytesCached is updated when
+                    // the page's buffers are released by invalidate().
+                    entries.remove();
+                    if (oldPage.isDirty())
+                        dirtyPages.add(oldPage);
+                    else
+                        oldPage.invalidate();
+                }
+            }
+
+            writeDirtyPages(dirtyPages, /* invalidate */ true);
+        }
+    }
+
+
     /**
      * This method removes all cached pages from the buffer manager, writing
      * out any dirty pages in the process.  This method is not generally
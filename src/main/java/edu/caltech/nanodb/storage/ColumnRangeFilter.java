@@ -0,0 +1,380 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.IsNullOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.ParameterValue;
+import edu.caltech.nanodb.expressions.PredicateUtils;
+import edu.caltech.nanodb.expressions.TypeCastException;
+import edu.caltech.nanodb.expressions.TypeConverter;
+import edu.caltech.nanodb.relations.SchemaNameException;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.util.Pair;
+
+
+/**
+ * <p>
+ * This class holds the simple per-column constraints that can be pulled out
+ * of a selection predicate, so that tuple files which keep summaries of
+ * their contents (e.g. the minimum and maximum value of each column on each
+ * page) can skip over entire ranges of tuples that cannot possibly satisfy
+ * the predicate.
+ * </p>
+ * <p>
+ * Only top-level conjuncts of these forms are used:
+ * </p>
+ * <ul>
+ *   <li><tt>column <em>op</em> literal</tt> or <tt>literal <em>op</em>
+ *       column</tt>, where <em>op</em> is one of <tt>=</tt>, <tt>&lt;</tt>,
+ *       <tt>&lt;=</tt>, <tt>&gt;</tt> or <tt>&gt;=</tt>, and the literal may
+ *       also be a parameter of a prepared statement</li>
+ *   <li><tt>column IS NULL</tt> and <tt>column IS NOT NULL</tt></li>
+ * </ul>
+ * <p>
+ * All other conjuncts are ignored, which is always safe since the filter is
+ * only used to rule out tuples; the predicate itself must still be evaluated
+ * against every tuple that is not skipped.
+ * </p>
+ */
+public class ColumnRangeFilter {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(ColumnRangeFilter.class);
+
+
+    /**
+     * The constraints on a single column of the tuple file.  A {@code null}
+     * bound means the column is unbounded in that direction.
+     */
+    private static class ColumnRange {
+        /** The lower bound of the column's values, or {@code null}. */
+        Object low;
+
+        /** True if the lower bound is inclusive. */
+        boolean lowInclusive;
+
+        /** The upper bound of the column's values, or {@code null}. */
+        Object high;
+
+        /** True if the upper bound is inclusive. */
+        boolean highInclusive;
+
+        /** True if the column must be <tt>NULL</tt>. */
+        boolean mustBeNull;
+
+        /**
+         * True if the column must be non-<tt>NULL</tt>.  This is implied by
+         * any comparison against the column.
+         */
+        boolean mustBeNonNull;
+    }
+
+
+    /** The constraints on each column, keyed by the column's index. */
+    private TreeMap<Integer, ColumnRange> ranges = new TreeMap<>();
+
+
+    /**
+     * Constructs a filter from the simple conjuncts of the specified
+     * predicate.
+     *
+     * @param predicate the selection predicate to analyze, or {@code null}
+     * @param schema    the schema of the tuple file that will be filtered
+     * @return a filter holding the constraints found in the predicate, or
+     * {@code null} if the predicate has no usable conjuncts
+     */
+    public static ColumnRangeFilter fromPredicate(Expression predicate,
+                                                  Schema schema) {
+        if (predicate == null)
+            return null;
+
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        ArrayList<Expression> conjuncts = new ArrayList<>();
+        PredicateUtils.collectConjuncts(predicate, conjuncts);
+
+        ColumnRangeFilter filter = new ColumnRangeFilter();
+        for (Expression conjunct : conjuncts) {
+            try {
+                filter.addConjunct(conjunct, schema);
+            } catch (SchemaNameException | TypeCastException e) {
+                // Ambiguous column names or incomparable types simply mean
+                // that the conjunct can't be used for skipping tuples.
+                logger.debug("Ignoring conjunct " + conjunct + ":  " + e);
+            }
+        }
+
+        if (filter.ranges.isEmpty())
+            return null;
+
+        logger.debug("Column-range filter for predicate " + predicate +
+            ":  " + filter);
+        return filter;
+    }
+
+
+    /**
+     * Returns the index of the column that the expression refers to, or -1
+     * if the expression is not a column reference in the schema.
+     */
+    private static int findColumn(Expression expr, Schema schema) {
+        if (!(expr instanceof ColumnValue))
+            return -1;
+
+        return schema.getColumnIndex(((ColumnValue) expr).getColumnName());
+    }
+
+
+    /**
+     * Returns true if the expression is a literal, or a parameter of a
+     * prepared statement.  Filters are built each time a scan is
+     * initialized, so a parameter's current value may be used.
+     */
+    private static boolean isValue(Expression expr) {
+        return expr instanceof LiteralValue || expr instanceof ParameterValue;
+    }
+
+
+    /**
+     * Adds the constraint expressed by a single conjunct to this filter, if
+     * the conjunct is of a form that the filter understands.
+     */
+    private void addConjunct(Expression conjunct, Schema schema) {
+        if (conjunct instanceof IsNullOperator) {
+            IsNullOperator isNull = (IsNullOperator) conjunct;
+            int colIndex = findColumn(isNull.getExpression(), schema);
+            if (colIndex == -1)
+                return;
+
+            ColumnRange range = getRange(colIndex);
+            if (isNull.isInverted())
+                range.mustBeNonNull = true;
+            else
+                range.mustBeNull = true;
+        } else if (conjunct instanceof CompareOperator) {
+            CompareOperator cmp = (CompareOperator) conjunct;
+            CompareOperator.Type type = cmp.getType();
+            Expression lhs = cmp.getLeftExpression();
+            Expression rhs = cmp.getRightExpression();
+
+            // Put the column on the left-hand side.
+            if (isValue(lhs) && rhs instanceof ColumnValue) {
+                Expression tmp = lhs;
+                lhs = rhs;
+                rhs = tmp;
+                type = flip(type);
+            }
+
+            int colIndex = findColumn(lhs, schema);
+            if (colIndex == -1 || !isValue(rhs))
+                return;
+
+            Object value = rhs.evaluate();
+            if (value == null)
+                return;
+
+            switch (type) {
+                case EQUALS:
+                    addLowerBound(colIndex, value, true);
+                    addUpperBound(colIndex, value, true);
+                    break;
+
+                case LESS_THAN:
+                    addUpperBound(colIndex, value, false);
+                    break;
+
+                case LESS_OR_EQUAL:
+                    addUpperBound(colIndex, value, true);
+                    break;
+
+                case GREATER_THAN:
+                    addLowerBound(colIndex, value, false);
+                    break;
+
+                case GREATER_OR_EQUAL:
+                    addLowerBound(colIndex, value, true);
+                    break;
+
+                default:
+                    // NOT_EQUALS can't be used to rule out a range of values.
+            }
+        }
+    }
+
+
+    /**
+     * Returns the comparison that results from swapping the operands of the
+     * specified comparison.
+     */
+    private static CompareOperator.Type flip(CompareOperator.Type type) {
+        switch (type) {
+            case LESS_THAN:
+                return CompareOperator.Type.GREATER_THAN;
+
+            case LESS_OR_EQUAL:
+                return CompareOperator.Type.GREATER_OR_EQUAL;
+
+            case GREATER_THAN:
+                return CompareOperator.Type.LESS_THAN;
+
+            case GREATER_OR_EQUAL:
+                return CompareOperator.Type.LESS_OR_EQUAL;
+
+            default:
+                return type;
+        }
+    }
+
+
+    private ColumnRange getRange(int colIndex) {
+        return ranges.computeIfAbsent(colIndex, i -> new ColumnRange());
+    }
+
+
+    private void addLowerBound(int colIndex, Object value, boolean inclusive) {
+        ColumnRange range = getRange(colIndex);
+        range.mustBeNonNull = true;
+
+        int cmp = (range.low == null) ? 1 : compare(value, range.low);
+        if (cmp > 0 || (cmp == 0 && !inclusive)) {
+            range.low = value;
+            range.lowInclusive = inclusive;
+        }
+    }
+
+
+    private void addUpperBound(int colIndex, Object value, boolean inclusive) {
+        ColumnRange range = getRange(colIndex);
+        range.mustBeNonNull = true;
+
+        int cmp = (range.high == null) ? -1 : compare(value, range.high);
+        if (cmp < 0 || (cmp == 0 && !inclusive)) {
+            range.high = value;
+            range.highInclusive = inclusive;
+        }
+    }
+
+
+    /**
+     * Compares two non-<tt>NULL</tt> values, coercing them to the same type
+     * in the same way that {@link CompareOperator} does.
+     *
+     * @throws TypeCastException if the values cannot be compared
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object obj1, Object obj2) {
+        Pair coerced = TypeConverter.coerceComparison(obj1, obj2);
+        return ((Comparable) coerced.value1).compareTo(coerced.value2);
+    }
+
+
+    /**
+     * Returns the indexes of the columns that this filter constrains.
+     *
+     * @return the indexes of the columns that this filter constrains
+     */
+    public Set<Integer> getColumns() {
+        return ranges.keySet();
+    }
+
+
+    /**
+     * Returns true if a group of tuples with the specified summary of a
+     * column's values may contain a tuple that satisfies this filter's
+     * constraints on that column.  A return value of {@code false} means the
+     * whole group of tuples may be skipped.  Summaries are allowed to be
+     * conservative, i.e. the minimum and maximum may be outside of the actual
+     * range of values, as long as every value is within them.
+     *
+     * @param colIndex  the index of the column being summarized
+     * @param min       the minimum non-<tt>NULL</tt> value of the column in
+     *                  the group, or {@code null} if the column has no
+     *                  non-<tt>NULL</tt> values
+     * @param max       the maximum non-<tt>NULL</tt> value of the column in
+     *                  the group, or {@code null} if the column has no
+     *                  non-<tt>NULL</tt> values
+     * @param nullCount the number of tuples in the group whose value for the
+     *                  column is <tt>NULL</tt>
+     * @param numTuples the total number of tuples in the group
+     * @return false if no tuple in the group can satisfy the filter
+     */
+    public boolean mayMatch(int colIndex, Object min, Object max,
+                            int nullCount, int numTuples) {
+        ColumnRange range = ranges.get(colIndex);
+        if (range == null)
+            return numTuples > 0;
+
+        if (range.mustBeNull) {
+            if (range.mustBeNonNull || nullCount == 0)
+                return false;
+
+            return true;
+        }
+
+        if (range.mustBeNonNull && (nullCount >= numTuples || min == null))
+            return false;
+
+        try {
+            if (range.low != null && max != null) {
+                int cmp = compare(max, range.low);
+                if (cmp < 0 || (cmp == 0 && !range.lowInclusive))
+                    return false;
+            }
+
+            if (range.high != null && min != null) {
+                int cmp = compare(min, range.high);
+                if (cmp > 0 || (cmp == 0 && !range.highInclusive))
+                    return false;
+            }
+        } catch (TypeCastException e) {
+            // Can't compare the values, so the group can't be skipped.
+            return true;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("ColumnRangeFilter[");
+        boolean first = true;
+        for (var entry : ranges.entrySet()) {
+            if (first)
+                first = false;
+            else
+                buf.append(", ");
+
+            ColumnRange range = entry.getValue();
+            buf.append('#').append(entry.getKey()).append(':');
+            if (range.mustBeNull)
+                buf.append("NULL");
+            else if (range.low == null && range.high == null)
+                buf.append("NOT NULL");
+
+            if (range.low != null)
+                buf.append(range.lowInclusive ? '[' : '(').append(range.low);
+            else if (range.high != null)
+                buf.append("(-inf");
+
+            if (range.high != null)
+                buf.append(',').append(range.high).append(range.highInclusive ? ']' : ')');
+            else if (range.low != null)
+                buf.append(",+inf)");
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package edu.caltech.nanodb.storage;
+
+
+/**
+ * This interface extends the {@link TupleFile} interface, adding an operation
+ * to incrementally compact a tuple file.  Unlike {@link TupleFile#optimize},
+ * which reorganizes the entire file in one shot, compaction is performed in
+ * bounded batches so that the work can be spread out over time, and tuples
+ * may be relocated while other structures still refer to them.
+ */
+public interface CompactableTupleFile extends TupleFile {
+
+    /**
+     * Performs one batch of compaction on the tuple file, freeing at most
+     * {@code maxPages} pages from the end of the file.  Tuples may be moved to
+     * new locations in the process; the specified listener is informed of
+     * every tuple that is relocated, so that structures referring to the
+     * tuple can be updated.
+     *
+     * @param maxPages the maximum number of pages to free in this batch
+     * @param listener an optional listener to inform of relocated tuples, or
+     *                 {@code null} if no other structures refer to the tuples
+     *                 in this file
+     * @return {@code true} if there may be more compaction work to perform,
+     *         or {@code false} if the file cannot be compacted any further
+     */
+    boolean compact(int maxPages, TupleRelocationListener listener);
+}
@@ -0,0 +1,516 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * <p>
+ * This class manages the on-disk layout of a compressed {@link DBFile}.
+ * Page 0 of a compressed file is stored uncompressed at the start of the
+ * file, so that the file's type and page size (and the compression flag
+ * stored alongside the page size) can be read as usual.  Every other page is
+ * compressed with the {@link PageCompressor}, and stored in a variable-size
+ * record somewhere after page 0.  Each record has this layout:
+ * </p>
+ * <ul>
+ *   <li>The page number stored in the record (int), or -1 if the record is
+ *       free.</li>
+ *   <li>The number of bytes reserved for the page's data (int).  Capacity is
+ *       rounded up so that a page can usually be rewritten in place even if
+ *       it compresses slightly worse.</li>
+ *   <li>The number of bytes of data actually stored (int).  If this is the
+ *       page size, the page is stored uncompressed, since it didn't compress
+ *       well enough.</li>
+ *   <li>A sequence number (long) that increases with every record that is
+ *       written.</li>
+ *   <li>The page's data.</li>
+ * </ul>
+ * <p>
+ * An in-memory indirection map records the file offset of each page's
+ * record.  The map is rebuilt by scanning the record headers when the file
+ * is opened, so it doesn't need to be stored separately.  When a page grows
+ * too large for its record, it is written to a new record before the old
+ * record is marked free; if a crash occurs in between, the record with the
+ * higher sequence number wins when the file is next opened.
+ * </p>
+ * <p>
+ * A crash while a record is being appended can also leave a torn record at
+ * the end of the file.  The page's old record is only freed after the new
+ * record is written, and the write-ahead log is forced before any page is
+ * written, so the torn record is cut off when the file is opened and
+ * recovery can rewrite the page.  A damaged record anywhere else in the
+ * file is reported as corruption.
+ * </p>
+ *
+ * @design All operations are synchronized, since they share the file's seek
+ *         position and the indirection map.
+ */
+class CompressedPageStore {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(CompressedPageStore.class);
+
+
+    /** The size of each record's header. */
+    private static final int RECORD_HEADER_SIZE = 20;
+
+
+    /** Record capacities are rounded up to a multiple of this size. */
+    private static final int ALLOC_UNIT = 64;
+
+
+    /** The page number stored in free records. */
+    private static final int FREE_RECORD = -1;
+
+
+    /** The file holding the compressed data. */
+    private RandomAccessFile fileContents;
+
+
+    /** The size of the file's (uncompressed) pages. */
+    private int pageSize;
+
+
+    /**
+     * The indirection map:  the offset of each page's record, indexed by
+     * page number.  The entry for page 0 is unused.
+     */
+    private long[] recordOffsets;
+
+
+    /** The data capacity of each page's record, indexed by page number. */
+    private int[] recordCapacities;
+
+
+    /** The number of (logical) pages in the file. */
+    private int numPages;
+
+
+    /** Free records, keyed by their capacity. */
+    private TreeMap<Integer, ArrayDeque<Long>> freeRecords;
+
+
+    /** The sequence number to give to the next record that is written. */
+    private long nextSeqNo;
+
+
+    /** The offset at which the next new record will be appended. */
+    private long fileEnd;
+
+
+    /** A buffer for reading and writing records. */
+    private byte[] recordBuffer;
+
+
+    /** A buffer for compressing pages into. */
+    private byte[] compressBuffer;
+
+
+    /**
+     * Opens the compressed page store of the specified file, scanning its
+     * records to rebuild the indirection map.
+     *
+     * @param fileContents the file holding the compressed data
+     * @param pageSize the size of the file's pages
+     * @throws IOException if an IO error occurs while scanning the file
+     * @throws DataFormatException if a record header before the last record
+     *         in the file is corrupt
+     */
+    CompressedPageStore(RandomAccessFile fileContents, int pageSize)
+        throws IOException {
+
+        this.fileContents = fileContents;
+        this.pageSize = pageSize;
+
+        recordOffsets = new long[16];
+        recordCapacities = new int[16];
+        freeRecords = new TreeMap<>();
+
+        compressBuffer = new byte[PageCompressor.maxCompressedLength(pageSize)];
+        recordBuffer = new byte[RECORD_HEADER_SIZE +
+            roundUpCapacity(compressBuffer.length)];
+
+        long fileLength = fileContents.length();
+        numPages = (fileLength >= pageSize) ? 1 : 0;
+        fileEnd = Math.max(fileLength, pageSize);
+
+        // The sequence numbers of the records currently in the map, so that
+        // duplicate records left by a crash can be resolved.
+        long[] seqNos = new long[recordOffsets.length];
+
+        // No record can be larger than a page that didn't compress.
+        int maxCapacity = roundUpCapacity(pageSize);
+
+        long offset = pageSize;
+        byte[] header = new byte[RECORD_HEADER_SIZE];
+        while (offset < fileLength) {
+            if (offset + RECORD_HEADER_SIZE > fileLength) {
+                // Only part of the last record's header was written.
+                truncateTornRecord(offset, fileLength);
+                break;
+            }
+
+            fileContents.seek(offset);
+            fileContents.readFully(header);
+            int pageNo = readInt(header, 0);
+            int capacity = readInt(header, 4);
+            int dataLength = readInt(header, 8);
+            long seqNo = readLong(header, 12);
+
+            boolean validHeader = pageNo >= FREE_RECORD && pageNo != 0 &&
+                capacity > 0 && capacity <= maxCapacity &&
+                dataLength >= 0 && dataLength <= capacity;
+
+            if (validHeader &&
+                offset + RECORD_HEADER_SIZE + capacity > fileLength) {
+                // The last record's header was written, but the file wasn't
+                // extended to cover its data.
+                truncateTornRecord(offset, fileLength);
+                break;
+            }
+
+            if (!validHeader) {
+                // The file may have been extended without the record being
+                // written, which leaves zeros at the end of the file.
+                if (isZeroFilled(offset, fileLength)) {
+                    truncateTornRecord(offset, fileLength);
+                    break;
+                }
+
+                throw new DataFormatException(String.format(
+                    "Corrupt record header at offset %d", offset));
+            }
+
+            nextSeqNo = Math.max(nextSeqNo, seqNo + 1);
+
+            if (pageNo == FREE_RECORD) {
+                addFreeRecord(offset, capacity);
+            } else {
+                ensureMapCapacity(pageNo);
+                if (seqNos.length < recordOffsets.length)
+                    seqNos = Arrays.copyOf(seqNos, recordOffsets.length);
+
+                if (recordOffsets[pageNo] != 0 && seqNos[pageNo] > seqNo) {
+                    // This record is a stale copy of the page.
+                    addFreeRecord(offset, capacity);
+                } else {
+                    if (recordOffsets[pageNo] != 0)
+                        addFreeRecord(recordOffsets[pageNo], recordCapacities[pageNo]);
+
+                    recordOffsets[pageNo] = offset;
+                    recordCapacities[pageNo] = capacity;
+                    seqNos[pageNo] = seqNo;
+                    numPages = Math.max(numPages, pageNo + 1);
+                }
+            }
+
+            offset += RECORD_HEADER_SIZE + capacity;
+        }
+
+        logger.debug(String.format("Opened compressed page store with %d " +
+            "pages in %d bytes", numPages, fileLength));
+    }
+
+
+    /**
+     * Returns the number of pages in the file.
+     *
+     * @return the number of pages in the file
+     */
+    synchronized int getNumPages() {
+        return numPages;
+    }
+
+
+    /**
+     * Reads the specified page into the buffer, decompressing it if
+     * necessary.
+     *
+     * @param pageNo the number of the page to read
+     * @param buffer the buffer to read the page into
+     * @return the number of bytes read from the file, or -1 if the page
+     *         doesn't exist
+     * @throws IOException if an IO error occurs
+     */
+    synchronized int readPage(int pageNo, byte[] buffer) throws IOException {
+        if (pageNo >= numPages)
+            return -1;
+
+        if (pageNo == 0) {
+            fileContents.seek(0);
+            fileContents.readFully(buffer);
+            return pageSize;
+        }
+
+        // Records always have room for their whole capacity in the file, so
+        // the header and the data can be read together.
+        fileContents.seek(recordOffsets[pageNo]);
+        int numRead = RECORD_HEADER_SIZE + recordCapacities[pageNo];
+        fileContents.readFully(recordBuffer, 0, numRead);
+
+        int dataLength = readInt(recordBuffer, 8);
+        if (dataLength == pageSize) {
+            System.arraycopy(recordBuffer, RECORD_HEADER_SIZE, buffer, 0,
+                pageSize);
+        } else {
+            PageCompressor.decompress(recordBuffer, RECORD_HEADER_SIZE,
+                dataLength, buffer, pageSize);
+        }
+
+        return numRead;
+    }
+
+
+    /**
+     * Writes the specified page from the buffer, compressing it if that
+     * saves space.
+     *
+     * @param pageNo the number of the page to write
+     * @param buffer the buffer holding the page's contents
+     * @return the number of bytes written to the file
+     * @throws IOException if an IO error occurs
+     */
+    synchronized int writePage(int pageNo, byte[] buffer) throws IOException {
+        if (pageNo == 0) {
+            fileContents.seek(0);
+            fileContents.write(buffer);
+            numPages = Math.max(numPages, 1);
+            return pageSize;
+        }
+
+        // Writing past the end of the file fills in any gap with empty
+        // pages, as would happen with an uncompressed file.
+        if (pageNo > numPages)
+            extendTo(pageNo - 1);
+
+        byte[] data = compressBuffer;
+        int dataLength = PageCompressor.compress(buffer, pageSize, compressBuffer);
+        if (dataLength >= pageSize) {
+            // Not worth compressing; store the page as-is.
+            data = buffer;
+            dataLength = pageSize;
+        }
+
+        ensureMapCapacity(pageNo);
+        long oldOffset = recordOffsets[pageNo];
+        int oldCapacity = recordCapacities[pageNo];
+
+        if (oldOffset != 0 && dataLength <= oldCapacity) {
+            // The page still fits in its record, so rewrite it in place.
+            writeRecord(oldOffset, pageNo, oldCapacity, data, dataLength);
+            return RECORD_HEADER_SIZE + dataLength;
+        }
+
+        // Move the page to the smallest free record that can hold it, or
+        // else to a new record at the end of the file.
+        long offset;
+        int capacity;
+        Map.Entry<Integer, ArrayDeque<Long>> free =
+            freeRecords.ceilingEntry(dataLength);
+        if (free != null) {
+            offset = free.getValue().removeFirst();
+            capacity = free.getKey();
+            if (free.getValue().isEmpty())
+                freeRecords.remove(capacity);
+        } else {
+            offset = fileEnd;
+            capacity = roundUpCapacity(dataLength);
+            fileEnd += RECORD_HEADER_SIZE + capacity;
+        }
+
+        writeRecord(offset, pageNo, capacity, data, dataLength);
+
+        // Only free the old record once the new one has been written.
+        if (oldOffset != 0)
+            freeRecord(oldOffset, oldCapacity);
+
+        recordOffsets[pageNo] = offset;
+        recordCapacities[pageNo] = capacity;
+        numPages = Math.max(numPages, pageNo + 1);
+
+        return RECORD_HEADER_SIZE + dataLength;
+    }
+
+
+    /**
+     * Adds empty pages to the end of the file, until the specified page
+     * exists.
+     *
+     * @param pageNo the number of the last page that should exist
+     * @throws IOException if an IO error occurs
+     */
+    synchronized void extendTo(int pageNo) throws IOException {
+        byte[] emptyPage = new byte[pageSize];
+        while (numPages <= pageNo)
+            writePage(numPages, emptyPage);
+    }
+
+
+    /**
+     * Truncates the file to the specified number of pages, freeing the
+     * records of all later pages, and shortening the file if the records at
+     * its end are free.
+     *
+     * @param newNumPages the number of pages to keep
+     * @throws IOException if an IO error occurs
+     */
+    synchronized void truncate(int newNumPages) throws IOException {
+        for (int pageNo = Math.max(newNumPages, 1); pageNo < numPages; pageNo++) {
+            freeRecord(recordOffsets[pageNo], recordCapacities[pageNo]);
+            recordOffsets[pageNo] = 0;
+            recordCapacities[pageNo] = 0;
+        }
+        numPages = newNumPages;
+
+        // Find the end of the last record still in use, and cut off the
+        // free records after it.
+        long liveEnd = pageSize;
+        for (int pageNo = 1; pageNo < numPages; pageNo++) {
+            liveEnd = Math.max(liveEnd, recordOffsets[pageNo] +
+                RECORD_HEADER_SIZE + recordCapacities[pageNo]);
+        }
+
+        final long end = liveEnd;
+        for (ArrayDeque<Long> offsets : freeRecords.values())
+            offsets.removeIf(offset -> offset >= end);
+        freeRecords.values().removeIf(ArrayDeque::isEmpty);
+
+        fileContents.setLength(liveEnd);
+        fileEnd = liveEnd;
+    }
+
+
+    /**
+     * Cuts off a torn record at the end of the file, left by a crash while
+     * the record was being appended.
+     *
+     * @param offset the offset of the torn record
+     * @param fileLength the length of the file
+     * @throws IOException if an IO error occurs
+     */
+    private void truncateTornRecord(long offset, long fileLength)
+        throws IOException {
+        logger.warn(String.format("Discarding torn record at offset %d; " +
+            "the last %d bytes of the file are lost", offset,
+            fileLength - offset));
+
+        fileContents.setLength(offset);
+        fileEnd = offset;
+    }
+
+
+    /**
+     * Returns true if every byte of the file from the specified offset to
+     * the end of the file is zero.
+     */
+    private boolean isZeroFilled(long offset, long fileLength)
+        throws IOException {
+        byte[] buf = new byte[4096];
+        fileContents.seek(offset);
+        while (offset < fileLength) {
+            int len = (int) Math.min(buf.length, fileLength - offset);
+            fileContents.readFully(buf, 0, len);
+            for (int i = 0; i < len; i++) {
+                if (buf[i] != 0)
+                    return false;
+            }
+            offset += len;
+        }
+        return true;
+    }
+
+
+    private static int roundUpCapacity(int dataLength) {
+        int capacity = (dataLength + ALLOC_UNIT - 1) / ALLOC_UNIT * ALLOC_UNIT;
+        return Math.max(capacity, ALLOC_UNIT);
+    }
+
+
+    private void addFreeRecord(long offset, int capacity) {
+        freeRecords.computeIfAbsent(capacity, k -> new ArrayDeque<>()).add(offset);
+    }
+
+
+    /**
+     * Marks the record at the specified offset as free, both on disk and in
+     * the free-record map.
+     */
+    private void freeRecord(long offset, int capacity) throws IOException {
+        byte[] pageNoBytes = new byte[4];
+        writeInt(pageNoBytes, 0, FREE_RECORD);
+        fileContents.seek(offset);
+        fileContents.write(pageNoBytes);
+
+        addFreeRecord(offset, capacity);
+    }
+
+
+    private void ensureMapCapacity(int pageNo) {
+        if (pageNo >= recordOffsets.length) {
+            int newLength = Math.max(pageNo + 1, recordOffsets.length * 2);
+            recordOffsets = Arrays.copyOf(recordOffsets, newLength);
+            recordCapacities = Arrays.copyOf(recordCapacities, newLength);
+        }
+    }
+
+
+    /**
+     * Writes a record holding the specified page data, giving it the next
+     * sequence number.
+     */
+    private void writeRecord(long offset, int pageNo, int capacity,
+                             byte[] data, int dataLength) throws IOException {
+
+        writeInt(recordBuffer, 0, pageNo);
+        writeInt(recordBuffer, 4, capacity);
+        writeInt(recordBuffer, 8, dataLength);
+        writeLong(recordBuffer, 12, nextSeqNo++);
+        System.arraycopy(data, 0, recordBuffer, RECORD_HEADER_SIZE, dataLength);
+
+        fileContents.seek(offset);
+        fileContents.write(recordBuffer, 0, RECORD_HEADER_SIZE + dataLength);
+
+        // Make sure the file covers the record's entire capacity, so that
+        // the next record is found at the right offset when scanning.
+        long recordEnd = offset + RECORD_HEADER_SIZE + capacity;
+        if (fileContents.length() < recordEnd)
+            fileContents.setLength(recordEnd);
+    }
+
+
+    private static int readInt(byte[] buf, int pos) {
+        return ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) |
+            ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+    }
+
+
+    private static long readLong(byte[] buf, int pos) {
+        return ((long) readInt(buf, pos) << 32) |
+            (readInt(buf, pos + 4) & 0xFFFFFFFFL);
+    }
+
+
+    private static void writeInt(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) (value >>> 24);
+        buf[pos + 1] = (byte) (value >>> 16);
+        buf[pos + 2] = (byte) (value >>> 8);
+        buf[pos + 3] = (byte) value;
+    }
+
+
+    private static void writeLong(byte[] buf, int pos, long value) {
+        writeInt(buf, pos, (int) (value >>> 32));
+        writeInt(buf, pos + 4, (int) value);
+    }
+}
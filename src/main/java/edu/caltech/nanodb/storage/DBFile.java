@@ -35,8 +35,16 @@ import java.io.RandomAccessFile;
  *   <li><u>Byte 0:</u>  file type (unsigned byte) - value taken from
  *       {@link DBFileType}</li>
  *   <li><u>Byte 1:</u>  page size  <i>p</i> (unsigned byte) - file's page
- *       size is <i>P</i> = 2<sup>p</sup></li>
+ *       size is <i>P</i> = 2<sup>p</sup>.  The high bit of this byte
+ *       ({@link #COMPRESSED_FLAG}) is set if the file's pages are stored
+ *       compressed.</li>
  * </ul>
+ * <p>
+ * The pages of a compressed file are not stored one-to-one with the file's
+ * contents; instead, a {@link CompressedPageStore} maps each page to the
+ * variable-size record that holds its compressed data.  This is invisible
+ * above the {@link FileManager}, except that such files use less space.
+ * </p>
  *
  * @see RandomAccessFile
  */
@@ -56,6 +64,12 @@ public class DBFile {
      */
     public static final int DEFAULT_PAGESIZE = 8192;
 
+    /**
+     * This flag is set in the encoded page-size byte of a file's header if
+     * the file's pages are stored compressed.
+     */
+    public static final int COMPRESSED_FLAG = 0x80;
+
 
     /**
      * The actual data file on disk.
@@ -83,6 +97,14 @@ public class DBFile {
     private RandomAccessFile fileContents;
 
 
+    /**
+     * If the file's pages are stored compressed, this object manages the
+     * mapping from pages to their compressed records; otherwise it is
+     * {@code null}.
+     */
+    private CompressedPageStore pageStore;
+
+
     /**
      * This static helper method returns true if the specified page size is
      * valid; i.e. it must be within the minimum and maximum page sizes, and
@@ -176,6 +198,24 @@ public class DBFile {
     }
 
 
+    /**
+     * Constructs a new object from the specified information, and opens the
+     * backing data-file as well.
+     *
+     * @param dataFile   the actual file containing the data
+     * @param type       the type of the data file
+     * @param pageSize   the page-size of the data file
+     * @param compressed true if the file's pages are stored compressed
+     * @throws IllegalArgumentException if the page size is not valid.
+     * @throws IOException              if some other IO error occurs
+     */
+    public DBFile(File dataFile, DBFileType type, int pageSize,
+                  boolean compressed) throws IOException {
+        this(dataFile, type, pageSize, new RandomAccessFile(dataFile, "rw"),
+            compressed);
+    }
+
+
     /**
      * Constructs a new object from the specified information and the previously
      * opened data-file.
@@ -189,6 +229,27 @@ public class DBFile {
      */
     public DBFile(File dataFile, DBFileType type, int pageSize,
                   RandomAccessFile fileContents) {
+        this(dataFile, type, pageSize, fileContents, false);
+    }
+
+
+    /**
+     * Constructs a new object from the specified information and the previously
+     * opened data-file.  If the file is compressed, its records are scanned
+     * to build the mapping from pages to records.
+     *
+     * @param dataFile     the actual file containing the data
+     * @param type         the type of the data file
+     * @param pageSize     the page-size of the data file
+     * @param fileContents an already opened {@link RandomAccessFile} to use for
+     *                     accessing the data file's contents
+     * @param compressed   true if the file's pages are stored compressed
+     * @throws IllegalArgumentException if the page size is not valid.
+     * @throws FileSystemException if an IO error occurs while scanning a
+     *         compressed file
+     */
+    public DBFile(File dataFile, DBFileType type, int pageSize,
+                  RandomAccessFile fileContents, boolean compressed) {
 
         if (dataFile == null || type == null || fileContents == null)
             throw new NullPointerException();
@@ -200,8 +261,15 @@ public class DBFile {
         this.pageSize = pageSize;
         this.fileContents = fileContents;
 
-        // Check to make sure the file contains a whole number of pages.
-        if (getFileSize() % (long) pageSize != 0) {
+        if (compressed) {
+            try {
+                pageStore = new CompressedPageStore(fileContents, pageSize);
+            } catch (IOException e) {
+                throw new FileSystemException("IO error while reading " +
+                    "compressed file " + dataFile, e);
+            }
+        } else if (getFileSize() % (long) pageSize != 0) {
+            // Check to make sure the file contains a whole number of pages.
             // Maybe handle this someday by extending the file to have a whole
             // page at the end, but this is definitely the more conservative
             // approach.
@@ -305,6 +373,9 @@ public class DBFile {
      * @return the number of pages currently in this database file.
      */
     public int getNumPages() {
+        if (pageStore != null)
+            return pageStore.getNumPages();
+
         long numPages = getFileSize() / (long) pageSize;
         return (int) numPages;
     }
@@ -320,4 +391,25 @@ public class DBFile {
     public RandomAccessFile getFileContents() {
         return fileContents;
     }
+
+
+    /**
+     * Returns true if this file's pages are stored compressed.
+     *
+     * @return true if this file's pages are stored compressed
+     */
+    public boolean isCompressed() {
+        return pageStore != null;
+    }
+
+
+    /**
+     * Returns the object that maps this file's pages to their compressed
+     * records, or {@code null} if the file is not compressed.
+     *
+     * @return the compressed page store of this file, or {@code null}
+     */
+    CompressedPageStore getPageStore() {
+        return pageStore;
+    }
 }
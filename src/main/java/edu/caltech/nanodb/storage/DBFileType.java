@@ -24,6 +24,21 @@ public enum DBFileType {
     BTREE_TUPLE_FILE(10),
 
 
+    /**
+     * Represents a PAX (Partition Attributes Across) tuple file, which
+     * stores each page's values column by column so that scans can read
+     * only the columns they need, and skip pages using per-page summaries.
+     */
+    PAX_TUPLE_FILE(20),
+
+
+    /**
+     * Represents a zone map, which holds per-zone summaries of the values in
+     * a heap tuple file so that scans can skip zones that can't match.
+     */
+    ZONE_MAP_FILE(21),
+
+
     /**
      * Represents a transaction-state file used for write-ahead logging and
      * recovery.
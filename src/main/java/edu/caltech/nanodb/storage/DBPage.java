@@ -147,6 +147,37 @@ public class DBPage implements Pinnable, AutoCloseable {
     }
 
 
+    /**
+     * Constructs a detached page over the specified byte-array.  A detached
+     * page doesn't belong to any database file, and isn't managed by the
+     * Buffer Manager, so it is never written to disk or to the write-ahead
+     * log.  Detached pages allow in-memory row storage to use the same
+     * encoding as table pages, e.g. via
+     * {@link PageTuple#storeTuple PageTuple.storeTuple()}.
+     *
+     * @param pageData the byte-array holding the page's data
+     */
+    public DBPage(byte[] pageData) {
+        if (pageData == null)
+            throw new IllegalArgumentException("pageData cannot be null");
+
+        this.pageData = pageData;
+        pageNo = -1;
+        pinCount = new AtomicInteger();
+    }
+
+
+    /**
+     * Returns true if this page is a detached in-memory page, not managed by
+     * the Buffer Manager.
+     *
+     * @return true if this page is a detached in-memory page
+     */
+    public boolean isDetached() {
+        return bufferManager == null;
+    }
+
+
     /**
      * Returns the database file that this page is contained within.
      *
@@ -165,7 +196,7 @@ public class DBPage implements Pinnable, AutoCloseable {
      * @return true if the specified database file is the same as this DB file.
      */
     public boolean isFromDBFile(DBFile databaseFile) {
-        return dbFile.equals(databaseFile);
+        return dbFile != null && dbFile.equals(databaseFile);
     }
 
 
@@ -194,7 +225,8 @@ public class DBPage implements Pinnable, AutoCloseable {
         pinCount.incrementAndGet();
 
         // To facilitate debugging of pinned-page leaks!
-        bufferManager.recordPagePinned(this);
+        if (bufferManager != null)
+            bufferManager.recordPagePinned(this);
     }
 
 
@@ -207,7 +239,8 @@ public class DBPage implements Pinnable, AutoCloseable {
         }
 
         // To facilitate debugging of pinned-page leaks!
-        bufferManager.recordPageUnpinned(this);
+        if (bufferManager != null)
+            bufferManager.recordPageUnpinned(this);
 
         pinCount.decrementAndGet();
 
@@ -287,6 +320,10 @@ public class DBPage implements Pinnable, AutoCloseable {
      *              otherwise
      */
     public void setDirty(boolean dirty) {
+        // Detached pages are never written back, so they are never dirty.
+        if (bufferManager == null)
+            return;
+
         if (!this.dirty && dirty) {
             // Page is being changed from clean to dirty.  Duplicate the current
             // data so that we have it when updating the write-ahead log.
@@ -323,6 +360,11 @@ public class DBPage implements Pinnable, AutoCloseable {
      * try to use the page.
      */
     public void invalidate() {
+        if (bufferManager == null) {
+            pageData = null;
+            return;
+        }
+
         bufferManager.recordPageInvalidated(this);
 
         dbFile = null;
@@ -1213,7 +1255,7 @@ public class DBPage implements Pinnable, AutoCloseable {
     public String toString() {
         return String.format(
             "DBPage[file=%s, pageNo=%d, pageSize=%d, dirty=%s, pageLSN=%s]",
-            dbFile, pageNo, dbFile.getPageSize(), dirty, pageLSN);
+            dbFile, pageNo, getPageSize(), dirty, pageLSN);
     }
 
 
@@ -38,6 +38,23 @@ public interface FileManager {
      */
     DBFile createDBFile(String filename, DBFileType type, int pageSize);
 
+    /**
+     * This method creates a new database file in the directory used by the
+     * storage manager, optionally storing the file's pages compressed.  An
+     * exception is thrown if the file already exists.
+     *
+     * @param filename   the name of the file to open to create the database file
+     * @param type       the type of database file being created
+     * @param pageSize   the page size to use when reading and writing the file
+     * @param compressed true if the file's pages should be stored compressed
+     * @return a new database file object for the newly created file
+     * @throws FileSystemException      if the specified file already exists, or if
+     *                                  the file can't be created for some reason
+     * @throws IllegalArgumentException if the page size is not valid
+     */
+    DBFile createDBFile(String filename, DBFileType type, int pageSize,
+                        boolean compressed);
+
     /**
      * Attempts to rename the specified {@link DBFile} to a new filename.
      * If successful, the {@code DBFile} object itself is updated with a new
@@ -135,6 +152,22 @@ public interface FileManager {
      */
     void syncDBFile(DBFile dbFile);
 
+    /**
+     * Truncates the specified database file so that it holds exactly the
+     * specified number of pages.  Any pages past the new end of the file are
+     * discarded.  The caller is responsible for making sure that no cached
+     * copies of the discarded pages remain in the Buffer Manager.
+     *
+     * @param dbFile   the database file to truncate
+     * @param numPages the number of pages the file should hold after the
+     *                 truncation; must be at least 1 (the header page), and
+     *                 no more than the file's current number of pages
+     * @throws IllegalArgumentException if {@code numPages} is out of range
+     * @throws FileSystemException if the file cannot be truncated for some
+     *                             reason
+     */
+    void truncateDBFile(DBFile dbFile, int numPages);
+
     /**
      * Closes the underlying data file.  Obviously, subsequent read or write
      * attempts will fail after this method is called.
@@ -5,10 +5,12 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import edu.caltech.nanodb.server.SessionState;
 import edu.caltech.nanodb.server.performance.PerformanceCounters;
 
 
@@ -104,6 +106,9 @@ public class FileManagerImpl implements FileManager {
                 PerformanceCounters.STORAGE_PAGES_READ :
                 PerformanceCounters.STORAGE_PAGES_WRITTEN);
 
+            if (!read)
+                SessionState.get().getCounters().recordPageWrite();
+
             PerformanceCounters.add(read ?
                 PerformanceCounters.STORAGE_BYTES_READ :
                 PerformanceCounters.STORAGE_BYTES_WRITTEN, bufSize);
@@ -144,6 +149,13 @@ public class FileManagerImpl implements FileManager {
 
     @Override
     public DBFile createDBFile(String filename, DBFileType type, int pageSize) {
+        return createDBFile(filename, type, pageSize, false);
+    }
+
+
+    @Override
+    public DBFile createDBFile(String filename, DBFileType type, int pageSize,
+                               boolean compressed) {
 
         File f = new File(baseDir, filename);
         logger.debug("Creating new database file " + f + ".");
@@ -156,7 +168,7 @@ public class FileManagerImpl implements FileManager {
 
         DBFile dbFile;
         try {
-            dbFile = new DBFile(f, type, pageSize);
+            dbFile = new DBFile(f, type, pageSize, compressed);
         } catch (IOException e) {
             throw new FileSystemException("Couldn't create DB file " + f, e);
         }
@@ -164,6 +176,8 @@ public class FileManagerImpl implements FileManager {
         byte[] buffer = new byte[pageSize];
         buffer[0] = (byte) type.getID();
         buffer[1] = (byte) DBFile.encodePageSize(pageSize);
+        if (compressed)
+            buffer[1] |= (byte) DBFile.COMPRESSED_FLAG;
 
         savePage(dbFile, 0, buffer);
 
@@ -196,7 +210,10 @@ public class FileManagerImpl implements FileManager {
             RandomAccessFile fileContents = new RandomAccessFile(f, "rw");
 
             int typeID = fileContents.readUnsignedByte();
-            int pageSize = DBFile.decodePageSize(fileContents.readUnsignedByte());
+            int encodedPageSize = fileContents.readUnsignedByte();
+            boolean compressed = (encodedPageSize & DBFile.COMPRESSED_FLAG) != 0;
+            int pageSize = DBFile.decodePageSize(
+                encodedPageSize & ~DBFile.COMPRESSED_FLAG);
 
             DBFileType type = DBFileType.valueOf(typeID);
             if (type == null)
@@ -204,7 +221,7 @@ public class FileManagerImpl implements FileManager {
 
             DBFile dbFile;
             try {
-                dbFile = new DBFile(f, type, pageSize, fileContents);
+                dbFile = new DBFile(f, type, pageSize, fileContents, compressed);
             } catch (IllegalArgumentException iae) {
                 // This would be highly unlikely to occur, given that we store
                 // the page-size P encoded as 2^p, and we load it above.
@@ -213,7 +230,8 @@ public class FileManagerImpl implements FileManager {
             }
 
             logger.debug(String.format("Opened existing database file %s; " +
-                "type is %s, page size is %d.", f, type, pageSize));
+                "type is %s, page size is %d%s.", f, type, pageSize,
+                compressed ? ", compressed" : ""));
 
             return dbFile;
         } catch (IOException e) {
@@ -236,6 +254,9 @@ public class FileManagerImpl implements FileManager {
                 " from the specified DBFile page-size");
         }
 
+        if (dbFile.isCompressed())
+            return loadCompressedPage(dbFile, pageNo, buffer, create);
+
         // Update our file-IO performance counters
         updateFileIOPerfStats(dbFile, pageNo, /* read */ true, buffer.length);
 
@@ -297,6 +318,40 @@ public class FileManagerImpl implements FileManager {
     }
 
 
+    /**
+     * Loads a page from a compressed file, decompressing it into the
+     * buffer.  The performance counters record the number of bytes actually
+     * read from the file.
+     */
+    private boolean loadCompressedPage(DBFile dbFile, int pageNo,
+                                       byte[] buffer, boolean create) {
+        CompressedPageStore pageStore = dbFile.getPageStore();
+        try {
+            int numRead = pageStore.readPage(pageNo, buffer);
+            if (numRead < 0) {
+                if (!create)
+                    return false;
+
+                logger.debug(String.format(
+                    "Requested page %d doesn't yet exist in file %s; creating.",
+                    pageNo, dbFile));
+
+                pageStore.extendTo(pageNo);
+                Arrays.fill(buffer, (byte) 0);
+                numRead = 0;
+            }
+
+            updateFileIOPerfStats(dbFile, pageNo, /* read */ true, numRead);
+        } catch (IOException e) {
+            throw new FileSystemException(String.format(
+                "Unexpected IO error while loading page %d from file %s",
+                pageNo, dbFile), e);
+        }
+
+        return true;
+    }
+
+
     @Override
     public boolean loadPage(DBFile dbFile, int pageNo, byte[] buffer) {
         return loadPage(dbFile, pageNo, buffer, false);
@@ -316,6 +371,18 @@ public class FileManagerImpl implements FileManager {
                 " from the specified DBFile page-size");
         }
 
+        if (dbFile.isCompressed()) {
+            try {
+                int numWritten = dbFile.getPageStore().writePage(pageNo, buffer);
+                updateFileIOPerfStats(dbFile, pageNo, /* read */ false,
+                    numWritten);
+            } catch (IOException e) {
+                throw new FileSystemException(
+                    "Unexpected IO error while saving page", e);
+            }
+            return;
+        }
+
         // Update our file-IO performance counters
         updateFileIOPerfStats(dbFile, pageNo, /* read */ false, buffer.length);
 
@@ -334,12 +401,47 @@ public class FileManagerImpl implements FileManager {
     @Override
     public void syncDBFile(DBFile dbFile) {
         logger.info("Synchronizing database file to disk:  " + dbFile);
+        long start = System.nanoTime();
         try {
             dbFile.getFileContents().getFD().sync();
         } catch (IOException e) {
             throw new FileSystemException(
                 "Unexpected IO error while synchronizing file " + dbFile, e);
         }
+
+        long nanos = System.nanoTime() - start;
+        PerformanceCounters.inc(PerformanceCounters.STORAGE_FILE_SYNCS);
+        PerformanceCounters.recordLatency(
+            PerformanceCounters.STORAGE_FILE_SYNC_LATENCY, nanos);
+        SessionState.get().getCounters().recordFileSync(nanos);
+    }
+
+
+    @Override
+    public void truncateDBFile(DBFile dbFile, int numPages) {
+        int oldNumPages = dbFile.getNumPages();
+        if (numPages < 1 || numPages > oldNumPages) {
+            throw new IllegalArgumentException(String.format(
+                "numPages must be in range [1, %d], got %d", oldNumPages,
+                numPages));
+        }
+
+        if (numPages == oldNumPages)
+            return;
+
+        long newLength = (long) numPages * (long) dbFile.getPageSize();
+        logger.info(String.format("Truncating database file %s from %d " +
+            "to %d pages", dbFile, oldNumPages, numPages));
+
+        try {
+            if (dbFile.isCompressed())
+                dbFile.getPageStore().truncate(numPages);
+            else
+                dbFile.getFileContents().setLength(newLength);
+        } catch (IOException e) {
+            throw new FileSystemException(
+                "Unexpected IO error while truncating file " + dbFile, e);
+        }
     }
 
 
@@ -10,11 +10,16 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.commands.CommandProperties;
+import edu.caltech.nanodb.indexes.IndexInfo;
 import edu.caltech.nanodb.indexes.IndexManager;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
 import edu.caltech.nanodb.relations.ForeignKeyColumnRefs;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.EventDispatcher;
+import edu.caltech.nanodb.server.NanoDBServer;
 import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.heapfile.HeapTupleFile;
 
 
 /**
@@ -56,8 +61,11 @@ public class IndexedTableManager implements TableManager {
         FileManager fileManager = storageManager.getFileManager();
         for (File dbFile : fileManager.getDBFiles()) {
             // Note that in getTableFileName all we do is add a .tbl at the end,
-            // so that's all we have to account for.
-            tableNames.add(dbFile.getName().replaceAll("\\.tbl$", ""));
+            // so that's all we have to account for.  Other files, such as
+            // zone maps, are not tables.
+            String name = dbFile.getName();
+            if (name.endsWith(".tbl"))
+                tableNames.add(name.replaceAll("\\.tbl$", ""));
         }
         return tableNames;
     }
@@ -80,16 +88,19 @@ public class IndexedTableManager implements TableManager {
 
         int pageSize = storageManager.getServer().getPropertyRegistry().getIntProperty(ServerProperties.PROP_PAGE_SIZE);
         String storageType = "heap";
+        String compression = "none";
 
         if (properties != null) {
             logger.info("Using command properties " + properties);
 
             pageSize = properties.getInt("pagesize", pageSize);
             storageType = properties.getString("storage", storageType);
+            compression = properties.getString("compression", compression);
 
             HashSet<String> names = new HashSet<>(properties.getNames());
             names.remove("pagesize");
             names.remove("storage");
+            names.remove("compression");
             if (!names.isEmpty()) {
                 throw new IllegalArgumentException("Unrecognized property " +
                     "name(s) specified:  " + names);
@@ -103,15 +114,28 @@ public class IndexedTableManager implements TableManager {
             type = DBFileType.HEAP_TUPLE_FILE;
         } else if ("btree".equals(storageType)) {
             type = DBFileType.BTREE_TUPLE_FILE;
+        } else if ("columnar".equals(storageType) || "pax".equals(storageType)) {
+            type = DBFileType.PAX_TUPLE_FILE;
         } else {
             throw new IllegalArgumentException("Unrecognized table file " +
                 "type:  " + storageType);
         }
+        boolean compressed;
+        if ("none".equals(compression)) {
+            compressed = false;
+        } else if ("lz4".equals(compression)) {
+            compressed = true;
+        } else {
+            throw new IllegalArgumentException("Unrecognized table file " +
+                "compression:  " + compression);
+        }
+
         TupleFileManager tupleFileManager = storageManager.getTupleFileManager(type);
 
         // First, create a new DBFile that the tuple file will go into.
         FileManager fileManager = storageManager.getFileManager();
-        DBFile dbFile = fileManager.createDBFile(tblFileName, type, pageSize);
+        DBFile dbFile = fileManager.createDBFile(tblFileName, type, pageSize,
+            compressed);
         logger.debug("Created new DBFile for table " + tableName +
             " at path " + dbFile.getDataFile());
 
@@ -162,25 +186,90 @@ public class IndexedTableManager implements TableManager {
     // Inherit interface docs.
     @Override
     public void analyzeTable(TableInfo tableInfo) {
-        // Analyze the table's tuple-file.
-        tableInfo.getTupleFile().analyze();
+        // Analyze the table's tuple-file, or a sample of its pages.
+        int samplePercent = storageManager.getServer().getPropertyRegistry()
+            .getIntProperty(ServerProperties.PROP_ANALYZE_SAMPLE_PERCENT);
+        tableInfo.getTupleFile().analyze(samplePercent);
 
         // TODO:  Probably want to analyze all the indexes associated with
         //        the table as well...
     }
 
 
+    // Inherit interface docs.
+    @Override
+    public void optimizeTable(TableInfo tableInfo) {
+        NanoDBServer server = storageManager.getServer();
+        TupleFile tupleFile = tableInfo.getTupleFile();
+
+        boolean rebuildIndexes = false;
+        if (tupleFile instanceof CompactableTupleFile) {
+            // Compact the table in bounded batches.  Every relocated tuple is
+            // reported through the event dispatcher so that the table's
+            // indexes are updated to refer to the tuple's new location.
+            //
+            // NOTE:  The batches run back to back within this one OPTIMIZE
+            //        command, which is a DDL command and so holds the
+            //        server's schema lock exclusively; no other command can
+            //        see the table between batches.  Batching only bounds
+            //        the number of dirty pages that accumulate along the way.
+            CompactableTupleFile compactable = (CompactableTupleFile) tupleFile;
+            EventDispatcher eventDispatcher = server.getEventDispatcher();
+            BufferManager bufferManager = storageManager.getBufferManager();
+            int batchPages = server.getPropertyRegistry().getIntProperty(
+                ServerProperties.PROP_OPTIMIZE_BATCH_PAGES);
+
+            boolean moreWork = true;
+            while (moreWork) {
+                moreWork = compactable.compact(batchPages,
+                    (oldTup, newTup) -> eventDispatcher.fireRowRelocated(
+                        tableInfo, oldTup, newTup));
+
+                // Write out each batch's changes so that dirty pages don't
+                // accumulate in the Buffer Manager over the whole operation.
+                bufferManager.writeDBFile(tupleFile.getDBFile(), false);
+            }
+        } else {
+            // Other file formats (e.g. B+ tree files) move tuples around
+            // without reporting the moves, so the indexes must be rebuilt.
+            tupleFile.optimize();
+            rebuildIndexes = true;
+        }
+
+        if (server.getPropertyRegistry().getBooleanProperty(
+            ServerProperties.PROP_ENABLE_INDEXES)) {
+            IndexManager indexManager = storageManager.getIndexManager();
+            for (String indexName : tableInfo.getSchema().getIndexNames()) {
+                IndexInfo indexInfo =
+                    indexManager.openIndex(tableInfo, indexName);
+                if (rebuildIndexes)
+                    indexManager.rebuildIndex(indexInfo);
+
+                indexManager.optimizeIndex(indexInfo);
+            }
+        }
+    }
+
+
     // Inherit interface docs.
     @Override
     public void closeTable(TableInfo tableInfo) {
         // Remove this table from the cache since it's about to be closed.
         openTables.remove(tableInfo.getTableName());
 
-        DBFile dbFile = tableInfo.getTupleFile().getDBFile();
+        TupleFile tupleFile = tableInfo.getTupleFile();
+        DBFile dbFile = tupleFile.getDBFile();
 
         // Flush all open pages for the table.
         storageManager.getBufferManager().flushDBFile(dbFile);
         storageManager.getFileManager().closeDBFile(dbFile);
+
+        // Heap files also have a zone map that must be closed.
+        if (tupleFile instanceof HeapTupleFile) {
+            DBFile zmFile = ((HeapTupleFile) tupleFile).getZoneMap().getDBFile();
+            storageManager.getBufferManager().flushDBFile(zmFile);
+            storageManager.getFileManager().closeDBFile(zmFile);
+        }
     }
 
 
@@ -224,7 +313,19 @@ public class IndexedTableManager implements TableManager {
         // as well.
         closeTable(tableInfo);
 
+        TupleFile tupleFile = tableInfo.getTupleFile();
+        if (tupleFile instanceof HeapTupleFile) {
+            storageManager.getFileManager().deleteDBFile(
+                ((HeapTupleFile) tupleFile).getZoneMap().getDBFile());
+        }
+
         String tblFileName = getTableFileName(tableName);
         storageManager.getFileManager().deleteDBFile(tblFileName);
+
+        // Selectivities observed on the old table, and the counts of its
+        // modified rows, don't apply to a new table of the same name.
+        CardinalityFeedback.tableDropped(tableName);
+        storageManager.getStatsMaintainer().tableDropped(
+            tableInfo.getTableName());
     }
 }
@@ -0,0 +1,288 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.Arrays;
+
+
+/**
+ * <p>
+ * This class implements a fast, pure-Java page compressor that produces the
+ * LZ4 block format.  Each compressed block is a sequence of "sequences," each
+ * of which is a run of literal bytes followed by a back-reference to an
+ * earlier match of at least {@link #MIN_MATCH} bytes; the final sequence
+ * holds only literals.  Each sequence is laid out as follows:
+ * </p>
+ * <ul>
+ *   <li>A token byte, whose high nibble is the number of literals and whose
+ *       low nibble is the match length minus {@link #MIN_MATCH}.  A nibble
+ *       value of 15 means that the length continues in the following bytes,
+ *       each of which is added to the length until a byte other than 255 is
+ *       seen.</li>
+ *   <li>The literal bytes.</li>
+ *   <li>The match offset, as a little-endian unsigned short.</li>
+ *   <li>Any continuation bytes of the match length.</li>
+ * </ul>
+ * <p>
+ * The compressor favors speed over compression ratio:  it only remembers the
+ * most recent position of each hashed 4-byte sequence, and it skips ahead
+ * faster through data that isn't compressing well.
+ * </p>
+ */
+public class PageCompressor {
+
+    /** The minimum length of a match. */
+    public static final int MIN_MATCH = 4;
+
+
+    /**
+     * The number of bytes at the end of the input that are always emitted as
+     * literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+
+    /** Matches must start at least this many bytes before the input's end. */
+    private static final int MF_LIMIT = 12;
+
+
+    /** The largest offset a match may have. */
+    private static final int MAX_OFFSET = 65535;
+
+
+    /** The base-2 logarithm of the size of the compressor's hash table. */
+    private static final int HASH_LOG = 12;
+
+
+    /** A nibble value indicating that a length continues in further bytes. */
+    private static final int RUN_MASK = 15;
+
+
+    /**
+     * This class should not be instantiated.
+     */
+    private PageCompressor() {
+        throw new UnsupportedOperationException();
+    }
+
+
+    /**
+     * Returns the largest number of bytes that compressing the specified
+     * number of bytes could produce.
+     *
+     * @param srcLen the number of bytes to compress
+     * @return the largest possible size of the compressed data
+     */
+    public static int maxCompressedLength(int srcLen) {
+        return srcLen + srcLen / 255 + 16;
+    }
+
+
+    /**
+     * Compresses the first {@code srcLen} bytes of {@code src} into
+     * {@code dst}, which must be at least {@link #maxCompressedLength} bytes
+     * long.
+     *
+     * @param src    the data to compress
+     * @param srcLen the number of bytes of {@code src} to compress
+     * @param dst    the array to store the compressed data into
+     * @return the number of bytes of compressed data written to {@code dst}
+     */
+    public static int compress(byte[] src, int srcLen, byte[] dst) {
+        if (dst.length < maxCompressedLength(srcLen)) {
+            throw new IllegalArgumentException(
+                "dst is too small to hold the compressed data");
+        }
+
+        int anchor = 0;
+        int op = 0;
+
+        if (srcLen > MF_LIMIT) {
+            int[] hashTable = new int[1 << HASH_LOG];
+            Arrays.fill(hashTable, -1);
+
+            int mfLimit = srcLen - MF_LIMIT;
+            int matchLimit = srcLen - LAST_LITERALS;
+
+            int ip = 0;
+            while (ip < mfLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                    // Skip ahead faster the longer we go without a match.
+                    ip += 1 + ((ip - anchor) >>> 6);
+                    continue;
+                }
+
+                // Extend the match backwards over any pending literals.
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit &&
+                       src[ref + matchLen] == src[ip + matchLen]) {
+                    matchLen++;
+                }
+
+                op = writeSequence(dst, op, src, anchor, ip - anchor,
+                    ip - ref, matchLen);
+
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+
+        // The remaining bytes are emitted as literals.
+        int litLen = srcLen - anchor;
+        int tokenPos = op++;
+        op = writeLength(dst, op, litLen);
+        dst[tokenPos] = (byte) (Math.min(litLen, RUN_MASK) << 4);
+        System.arraycopy(src, anchor, dst, op, litLen);
+        op += litLen;
+
+        return op;
+    }
+
+
+    /**
+     * Decompresses a block of compressed data into {@code dst}.  The block
+     * must decompress to exactly {@code dstLen} bytes.
+     *
+     * @param src    the array holding the compressed data
+     * @param srcOff the offset of the compressed data in {@code src}
+     * @param srcLen the number of bytes of compressed data
+     * @param dst    the array to store the decompressed data into
+     * @param dstLen the number of bytes the data decompresses to
+     * @throws DataFormatException if the compressed data is malformed
+     */
+    public static void decompress(byte[] src, int srcOff, int srcLen,
+                                  byte[] dst, int dstLen) {
+        int ip = srcOff;
+        int end = srcOff + srcLen;
+        int op = 0;
+
+        try {
+            while (true) {
+                if (ip >= end)
+                    throw new DataFormatException("Compressed data is truncated");
+
+                int token = src[ip++] & 0xFF;
+
+                int litLen = token >>> 4;
+                if (litLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        litLen += b;
+                    } while (b == 255);
+                }
+
+                if (ip + litLen > end || op + litLen > dstLen)
+                    throw new DataFormatException("Literals overrun block");
+
+                System.arraycopy(src, ip, dst, op, litLen);
+                ip += litLen;
+                op += litLen;
+
+                if (ip == end)
+                    break;  // The last sequence has no match.
+
+                if (ip + 2 > end)
+                    throw new DataFormatException("Compressed data is truncated");
+
+                int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+                ip += 2;
+                if (offset == 0 || offset > op)
+                    throw new DataFormatException("Invalid match offset " + offset);
+
+                int matchLen = token & RUN_MASK;
+                if (matchLen == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLen += b;
+                    } while (b == 255);
+                }
+                matchLen += MIN_MATCH;
+
+                if (op + matchLen > dstLen)
+                    throw new DataFormatException("Match overruns output");
+
+                // Matches may overlap the bytes they produce, so copy one
+                // byte at a time unless the regions are disjoint.
+                int ref = op - offset;
+                if (offset >= matchLen) {
+                    System.arraycopy(dst, ref, dst, op, matchLen);
+                    op += matchLen;
+                } else {
+                    for (int i = 0; i < matchLen; i++)
+                        dst[op++] = dst[ref++];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new DataFormatException("Compressed data is truncated", e);
+        }
+
+        if (op != dstLen) {
+            throw new DataFormatException(String.format("Compressed data " +
+                "produced %d bytes; expected %d", op, dstLen));
+        }
+    }
+
+
+    /**
+     * Writes one sequence of literals followed by a match, returning the new
+     * output position.
+     */
+    private static int writeSequence(byte[] dst, int op, byte[] src,
+                                     int litStart, int litLen, int offset,
+                                     int matchLen) {
+        int tokenPos = op++;
+        op = writeLength(dst, op, litLen);
+        System.arraycopy(src, litStart, dst, op, litLen);
+        op += litLen;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+
+        int ml = matchLen - MIN_MATCH;
+        op = writeLength(dst, op, ml);
+
+        dst[tokenPos] = (byte) ((Math.min(litLen, RUN_MASK) << 4) |
+            Math.min(ml, RUN_MASK));
+
+        return op;
+    }
+
+
+    /**
+     * Writes the continuation bytes of a length that doesn't fit into its
+     * token nibble, returning the new output position.
+     */
+    private static int writeLength(byte[] dst, int op, int len) {
+        if (len >= RUN_MASK) {
+            len -= RUN_MASK;
+            while (len >= 255) {
+                dst[op++] = (byte) 255;
+                len -= 255;
+            }
+            dst[op++] = (byte) len;
+        }
+        return op;
+    }
+
+
+    private static int readInt(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) |
+            ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+    }
+
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,55 @@
+package edu.caltech.nanodb.storage;
+
+
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * This interface extends the {@link TupleFile} interface, adding scan
+ * operations that are confined to a range of the file's pages.  This allows
+ * a file to be scanned by several threads at once, each thread scanning
+ * different ranges of pages; every tuple in the file is in exactly one
+ * page, so scanning a set of disjoint page ranges that covers the file
+ * produces every tuple exactly once.
+ */
+public interface PageRangeTupleFile extends TupleFile {
+
+    /**
+     * Returns the page number of the first page of the file that may hold
+     * tuples.  Pages before this page hold only file metadata.
+     *
+     * @return the page number of the first page that may hold tuples
+     */
+    int getFirstDataPageNo();
+
+
+    /**
+     * Returns the first tuple in the specified range of pages that is not in
+     * a group of tuples ruled out by the filter, or {@code null} if there
+     * are no such tuples.
+     *
+     * @param startPageNo the first page of the range
+     * @param endPageNo   the page just past the end of the range
+     * @param filter      the filter to apply, or {@code null} to return the
+     *                    first tuple in the range
+     * @return the first tuple in the range that may satisfy the filter
+     */
+    Tuple getFirstTupleInRange(int startPageNo, int endPageNo,
+                               ColumnRangeFilter filter);
+
+
+    /**
+     * Returns the tuple following the specified tuple, within the range of
+     * pages ending at the specified page, that is not in a group of tuples
+     * ruled out by the filter, or {@code null} if there are no such tuples.
+     *
+     * @param tuple     the "previous tuple" that specifies where to start
+     *                  looking for the next tuple
+     * @param endPageNo the page just past the end of the range
+     * @param filter    the filter to apply, or {@code null} to return the
+     *                  next tuple in the range
+     * @return the next tuple in the range that may satisfy the filter
+     */
+    Tuple getNextTupleInRange(Tuple tuple, int endPageNo,
+                              ColumnRangeFilter filter);
+}
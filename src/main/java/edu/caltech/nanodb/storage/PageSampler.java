@@ -0,0 +1,93 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * <p>
+ * This class chooses the data pages of a tuple file that <tt>ANALYZE</tt>
+ * reads when it only samples the file.  Whole pages are sampled rather
+ * than individual rows, since reading one row of a page costs as much I/O
+ * as reading all of them.
+ * </p>
+ * <p>
+ * Pages are chosen by reservoir sampling, so every set of pages of the
+ * requested size is equally likely.  The chosen pages are returned in
+ * increasing order, so that they can be read in a single forward pass over
+ * the file.
+ * </p>
+ */
+public class PageSampler {
+    /**
+     * The smallest number of pages that are sampled, when the range has that
+     * many.  Sampling fewer pages than this saves little time, and gives
+     * unreliable statistics.
+     */
+    public static final int MIN_SAMPLE_PAGES = 32;
+
+
+    /**
+     * This class should not be instantiated.
+     */
+    private PageSampler() {
+        throw new IllegalArgumentException("This class should not be instantiated.");
+    }
+
+
+    /**
+     * Returns the number of pages to sample from a range of pages.  At least
+     * {@link #MIN_SAMPLE_PAGES} pages are sampled, or all of them if the
+     * range is smaller than that.
+     *
+     * @param numPages the number of pages in the range
+     * @param samplePercent the percentage of pages to sample, from 1 to 100
+     * @return the number of pages to sample
+     */
+    public static int getSampleSize(int numPages, int samplePercent) {
+        if (samplePercent < 1 || samplePercent > 100) {
+            throw new IllegalArgumentException(
+                "samplePercent must be in range [1, 100]; got " + samplePercent);
+        }
+
+        if (numPages <= 0)
+            return 0;
+
+        int sampleSize = (int) (((long) numPages * samplePercent + 99) / 100);
+        return Math.min(numPages, Math.max(MIN_SAMPLE_PAGES, sampleSize));
+    }
+
+
+    /**
+     * Chooses a random sample of the pages in the range
+     * [<tt>firstPage</tt>, <tt>endPage</tt>).
+     *
+     * @param firstPage the first page number in the range
+     * @param endPage one past the last page number in the range
+     * @param samplePercent the percentage of pages to sample, from 1 to 100
+     * @param random the source of randomness for the sample
+     * @return the page numbers of the sample, in increasing order
+     */
+    public static int[] choosePages(int firstPage, int endPage,
+                                    int samplePercent, Random random) {
+        int numPages = Math.max(0, endPage - firstPage);
+        int sampleSize = getSampleSize(numPages, samplePercent);
+
+        // Algorithm R:  the first pages fill the reservoir, and each later
+        // page replaces a random entry with probability sampleSize / i.
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < numPages; i++) {
+            if (i < sampleSize) {
+                sample[i] = firstPage + i;
+            } else {
+                int j = random.nextInt(i + 1);
+                if (j < sampleSize)
+                    sample[j] = firstPage + i;
+            }
+        }
+
+        Arrays.sort(sample);
+        return sample;
+    }
+}
@@ -1,6 +1,8 @@
 package edu.caltech.nanodb.storage;
 
 
+import java.util.BitSet;
+
 import edu.caltech.nanodb.expressions.TypeConverter;
 import edu.caltech.nanodb.relations.*;
 
@@ -72,8 +74,10 @@ public abstract class PageTuple implements Tuple {
 
     /**
      * This array contains the cached offsets of each value in this tuple.
-     * The array is populated when a tuple is constructed.  For columns with
-     * a value of <tt>NULL</tt>, the offset will be 0.
+     * The array is populated lazily, from the first column up to the highest
+     * column that has been requested so far; only the first
+     * {@link #numOffsetsComputed} entries are valid.  For columns with a
+     * value of <tt>NULL</tt>, the offset will be 0.
      *
      * @see #NULL_OFFSET
      */
@@ -81,14 +85,33 @@ public abstract class PageTuple implements Tuple {
 
 
     /**
-     * The offset in the page where the tuple's data ends.  Note that this value
-     * is <u>one byte past</u> the end of the tuple's data; as with most Java
+     * The number of leading entries in {@link #valueOffsets} that have been
+     * computed so far.  When this equals the number of columns in the schema,
+     * {@link #nextValueOffset} is the end of the tuple's data.
+     */
+    private int numOffsetsComputed;
+
+
+    /**
+     * The offset in the page just past the data of the last column whose
+     * offset has been computed.  Once all column offsets have been computed,
+     * this is the offset where the tuple's data ends.  Note that this value
+     * is <u>one byte past</u> the end of the data; as with most Java
      * sequences, the starting offset is inclusive and the ending offset is
      * exclusive.  Also, as a consequence, this value could be past the end of
      * the byte-array that the tuple resides in, if the tuple is at the end of
      * the byte-array.
      */
-    private int endOffset;
+    private int nextValueOffset;
+
+
+    /**
+     * An optional set of the column indexes that the consumer of this tuple
+     * will actually read, or {@code null} if all columns may be read.
+     * Columns outside of the projection are never decoded, and reading them
+     * is an error.
+     */
+    private BitSet projectedColumns;
 
 
     /**
@@ -123,6 +146,37 @@ public abstract class PageTuple implements Tuple {
     }
 
 
+    /**
+     * Restricts the columns of this tuple that will be decoded to the
+     * specified set of column indexes.  This is purely an optimization for
+     * scans that only read some of a table's columns.  Reading a column
+     * outside of the projection with {@link #getColumnValue} or
+     * {@link #isNullValue} throws an {@link IllegalStateException}, so a
+     * projection must only be specified when the consumer of the tuple is
+     * known never to look at those columns.  Code that copies whole tuples
+     * checks {@link #isColumnProjectedOut} and copies such columns as
+     * <tt>NULL</tt>.  The tuple's storage is unaffected.
+     *
+     * @param projectedColumns the indexes of the columns that will be read,
+     *        or {@code null} if all columns may be read
+     */
+    public void setProjectedColumns(BitSet projectedColumns) {
+        this.projectedColumns = projectedColumns;
+    }
+
+
+    /**
+     * Returns the set of column indexes that this tuple will decode, or
+     * {@code null} if all columns will be decoded.
+     *
+     * @return the set of column indexes that this tuple will decode, or
+     *         {@code null} if all columns will be decoded.
+     */
+    public BitSet getProjectedColumns() {
+        return projectedColumns;
+    }
+
+
     /**
      * Page tuples are backed by data pages managed by the Buffer Manager, so
      * this method always returns true.
@@ -195,7 +249,8 @@ public abstract class PageTuple implements Tuple {
 
 
     public int getEndOffset() {
-        return endOffset;
+        ensureValueOffsets(valueOffsets.length - 1);
+        return nextValueOffset;
     }
 
 
@@ -205,7 +260,7 @@ public abstract class PageTuple implements Tuple {
      * @return the storage-size of the tuple in bytes.
      */
     public int getSize() {
-        return endOffset - pageOffset;
+        return getEndOffset() - pageOffset;
     }
 
 
@@ -309,16 +364,29 @@ public abstract class PageTuple implements Tuple {
 
 
     /**
-     * This helper function computes and caches the offset of each column
-     * value in the tuple.  If a column has a <tt>NULL</tt> value then
-     * {@link #NULL_OFFSET} is used for the offset.
+     * This helper function discards any cached column offsets, so that they
+     * will be recomputed from the tuple's current data the next time they
+     * are needed.  It must be called whenever the tuple's start offset or
+     * layout changes.
      */
     private void computeValueOffsets() {
-        int numCols = schema.numColumns();
+        numOffsetsComputed = 0;
+        nextValueOffset = getDataStartOffset();
+    }
 
-        int valOffset = getDataStartOffset();
 
-        for (int iCol = 0; iCol < numCols; iCol++) {
+    /**
+     * This helper function computes and caches the offset of each column
+     * value in the tuple, up to and including the specified column.  Offsets
+     * that have already been computed are not recomputed.  If a column has a
+     * <tt>NULL</tt> value then {@link #NULL_OFFSET} is used for the offset.
+     *
+     * @param colIndex the highest column index whose offset is required
+     */
+    private void ensureValueOffsets(int colIndex) {
+        int valOffset = nextValueOffset;
+
+        for (int iCol = numOffsetsComputed; iCol <= colIndex; iCol++) {
             if (getNullFlag(iCol)) {
                 // This column is marked as being NULL.
                 valueOffsets[iCol] = NULL_OFFSET;
@@ -332,7 +400,47 @@ public abstract class PageTuple implements Tuple {
             }
         }
 
-        endOffset = valOffset;
+        if (colIndex >= numOffsetsComputed) {
+            numOffsetsComputed = colIndex + 1;
+            nextValueOffset = valOffset;
+        }
+    }
+
+
+    /**
+     * Returns the offset of the specified column's value in the page,
+     * computing it if necessary, or {@link #NULL_OFFSET} if the column is
+     * <tt>NULL</tt>.  The tuple's projection is not considered.
+     *
+     * @param colIndex the index of the column to retrieve the offset for
+     * @return the offset of the column's value in the page
+     */
+    private int getValueOffset(int colIndex) {
+        ensureValueOffsets(colIndex);
+        return valueOffsets[colIndex];
+    }
+
+
+    // Let javadoc copy the comments.
+    @Override
+    public boolean isColumnProjectedOut(int colIndex) {
+        checkColumnIndex(colIndex);
+        return projectedColumns != null && !projectedColumns.get(colIndex);
+    }
+
+
+    /**
+     * Throws an {@link IllegalStateException} if the specified column is
+     * outside of this tuple's projection, and therefore can't be read.
+     *
+     * @param colIndex the index of the column to check
+     */
+    private void checkColumnProjected(int colIndex) {
+        if (isColumnProjectedOut(colIndex)) {
+            throw new IllegalStateException("Column " + colIndex + " (" +
+                schema.getColumnInfo(colIndex).getName() +
+                ") was projected out of the tuple, and can't be read");
+        }
     }
 
 
@@ -364,10 +472,14 @@ public abstract class PageTuple implements Tuple {
      *
      * @return <tt>true</tt> if the specified column is currently set to
      * <tt>NULL</tt>, or <tt>false</tt> otherwise.
+     * @throws IllegalStateException if the column is outside of the tuple's
+     *         projection
      */
     public boolean isNullValue(int colIndex) {
         checkColumnIndex(colIndex);
-        return (valueOffsets[colIndex] == NULL_OFFSET);
+        checkColumnProjected(colIndex);
+
+        return (getValueOffset(colIndex) == NULL_OFFSET);
     }
 
 
@@ -386,6 +498,9 @@ public abstract class PageTuple implements Tuple {
      *   <li><tt>VARCHAR(<em>n</em>)</tt> produces {@link java.lang.String}</li>
      *   <li><tt>FILE_POINTER</tt> (internal) produces {@link FilePointer}</li>
      * </ul>
+     *
+     * @throws IllegalStateException if the column is outside of the tuple's
+     *         projection
      */
     public Object getColumnValue(int colIndex) {
         checkColumnIndex(colIndex);
@@ -461,6 +576,74 @@ public abstract class PageTuple implements Tuple {
     }
 
 
+    /**
+     * Returns the value of an <tt>INTEGER</tt> column without boxing it.
+     * The caller must first check that the value is not <tt>NULL</tt>.
+     *
+     * @param colIndex the index of the column to retrieve the value for
+     * @return the value of the column
+     */
+    public int getIntColumnValue(int colIndex) {
+        checkColumnIndex(colIndex);
+        assert schema.getColumnInfo(colIndex).getType().getBaseType() ==
+            SQLDataType.INTEGER;
+        assert !isNullValue(colIndex);
+
+        return dbPage.readInt(getValueOffset(colIndex));
+    }
+
+
+    /**
+     * Returns the value of a <tt>BIGINT</tt> column without boxing it.  The
+     * caller must first check that the value is not <tt>NULL</tt>.
+     *
+     * @param colIndex the index of the column to retrieve the value for
+     * @return the value of the column
+     */
+    public long getLongColumnValue(int colIndex) {
+        checkColumnIndex(colIndex);
+        assert schema.getColumnInfo(colIndex).getType().getBaseType() ==
+            SQLDataType.BIGINT;
+        assert !isNullValue(colIndex);
+
+        return dbPage.readLong(getValueOffset(colIndex));
+    }
+
+
+    /**
+     * Returns the value of a <tt>FLOAT</tt> column without boxing it.  The
+     * caller must first check that the value is not <tt>NULL</tt>.
+     *
+     * @param colIndex the index of the column to retrieve the value for
+     * @return the value of the column
+     */
+    public float getFloatColumnValue(int colIndex) {
+        checkColumnIndex(colIndex);
+        assert schema.getColumnInfo(colIndex).getType().getBaseType() ==
+            SQLDataType.FLOAT;
+        assert !isNullValue(colIndex);
+
+        return dbPage.readFloat(getValueOffset(colIndex));
+    }
+
+
+    /**
+     * Returns the value of a <tt>DOUBLE</tt> column without boxing it.  The
+     * caller must first check that the value is not <tt>NULL</tt>.
+     *
+     * @param colIndex the index of the column to retrieve the value for
+     * @return the value of the column
+     */
+    public double getDoubleColumnValue(int colIndex) {
+        checkColumnIndex(colIndex);
+        assert schema.getColumnInfo(colIndex).getType().getBaseType() ==
+            SQLDataType.DOUBLE;
+        assert !isNullValue(colIndex);
+
+        return dbPage.readDouble(getValueOffset(colIndex));
+    }
+
+
     /**
      * Sets the column to the specified value, or <tt>NULL</tt> if the value is
      * the Java <tt>null</tt> value.
@@ -514,7 +697,7 @@ public abstract class PageTuple implements Tuple {
         checkColumnIndex(iCol);
 
         /* 1. set null-bitmap to true */
-        if (isNullValue(iCol)) {
+        if (getValueOffset(iCol) == NULL_OFFSET) {
             // nothing to do here, it's already NULL
             return;
         }
@@ -573,7 +756,7 @@ public abstract class PageTuple implements Tuple {
         checkColumnIndex(iCol);
 
         /* 1. set null-bitmap to false */
-        if (isNullValue(iCol)) {
+        if (getValueOffset(iCol) == NULL_OFFSET) {
             setNullFlag(iCol, false);
         }
 
@@ -602,7 +785,7 @@ public abstract class PageTuple implements Tuple {
             offset = getEndOffset();
             for (int i = iCol + 1; i < valueOffsets.length; i++) {
                 if (!getNullFlag(iCol)) {
-                    offset = valueOffsets[i];
+                    offset = getValueOffset(i);
                     break;
                 }
             }
@@ -752,7 +935,8 @@ public abstract class PageTuple implements Tuple {
         for (ColumnInfo colInfo : schema.getColumnInfos()) {
 
             ColumnType colType = colInfo.getType();
-            Object value = tuple.getColumnValue(iCol);
+            Object value = tuple.isColumnProjectedOut(iCol) ? null :
+                tuple.getColumnValue(iCol);
 
             // If the value is NULL (represented by Java's null here...) then
             // it takes no space.  Otherwise, compute the space taken by this
@@ -789,7 +973,8 @@ public abstract class PageTuple implements Tuple {
         int iCol = 0;
         for (ColumnInfo colInfo : schema.getColumnInfos()) {
             ColumnType colType = colInfo.getType();
-            Object value = tuple.getColumnValue(iCol);
+            Object value = tuple.isColumnProjectedOut(iCol) ? null :
+                tuple.getColumnValue(iCol);
             int dataSize = 0;
 
             // If the value is NULL (represented by Java's null here) then set
@@ -880,6 +1065,11 @@ public abstract class PageTuple implements Tuple {
             else
                 buf.append(',');
 
+            if (isColumnProjectedOut(i)) {
+                buf.append('?');
+                continue;
+            }
+
             Object obj = getColumnValue(i);
             if (obj == null)
                 buf.append("NULL");
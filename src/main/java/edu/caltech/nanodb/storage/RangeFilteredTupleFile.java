@@ -0,0 +1,40 @@
+package edu.caltech.nanodb.storage;
+
+
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * This interface extends the {@link TupleFile} interface, adding scan
+ * operations that can skip over whole groups of tuples (e.g. entire pages)
+ * whose summaries show that they cannot satisfy a {@link ColumnRangeFilter}.
+ * The filter is only a hint:  tuples that are returned may still fail to
+ * satisfy the predicate the filter was built from, so the caller must
+ * evaluate the predicate against every tuple as usual.
+ */
+public interface RangeFilteredTupleFile extends TupleFile {
+
+    /**
+     * Returns the first tuple in the file that is not in a group of tuples
+     * ruled out by the filter, or {@code null} if there are no such tuples.
+     *
+     * @param filter the filter to apply, or {@code null} to return the first
+     *               tuple in the file
+     * @return the first tuple in the file that may satisfy the filter
+     */
+    Tuple getFirstTuple(ColumnRangeFilter filter);
+
+
+    /**
+     * Returns the tuple following the specified tuple that is not in a group
+     * of tuples ruled out by the filter, or {@code null} if there are no
+     * such tuples.
+     *
+     * @param tuple  the "previous tuple" that specifies where to start
+     *               looking for the next tuple
+     * @param filter the filter to apply, or {@code null} to return the next
+     *               tuple in the file
+     * @return the next tuple in the file that may satisfy the filter
+     */
+    Tuple getNextTuple(Tuple tuple, ColumnRangeFilter filter);
+}
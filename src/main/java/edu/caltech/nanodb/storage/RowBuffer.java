@@ -0,0 +1,414 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * <p>
+ * A buffer of rows that stores the rows packed into large byte-array
+ * chunks, using the same encoding as table pages (see
+ * {@link PageTuple#storeTuple}), rather than as {@code TupleLiteral}s of
+ * boxed values.  Plan-nodes that must hold on to their input, such as
+ * sorting and materializing nodes, use a row buffer to fit several times
+ * more rows into the same amount of memory.
+ * </p>
+ * <p>
+ * Rows are appended with {@link #add}, and are read back by position with
+ * {@link #get}, which returns a read-only {@link Tuple} view of the packed
+ * bytes rather than a copy.  The views report themselves as disk-backed, so
+ * consumers that need to keep a row beyond the next call copy it, as they
+ * would with a table tuple.
+ * </p>
+ * <p>
+ * The buffer tracks the memory used by its chunks.  When a chunk fills up
+ * and the buffer is over its memory limit, the oldest full chunks are
+ * written to a temporary file and dropped from memory; they are read back
+ * one at a time when their rows are requested.  Reading the rows in order
+ * therefore reads each spilled chunk once.
+ * </p>
+ */
+public class RowBuffer {
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger = LogManager.getLogger(RowBuffer.class);
+
+
+    /** The default size of each chunk of packed rows, in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+
+    /** A chunk of packed rows. */
+    private static class Chunk {
+        /**
+         * A detached page holding the chunk's bytes, or {@code null} if the
+         * chunk has been spilled and isn't loaded.
+         */
+        DBPage page;
+
+        /** The number of bytes of the chunk that hold rows. */
+        int used;
+
+        /** The offset of the chunk in the spill file, or -1 if not spilled. */
+        long fileOffset = -1;
+    }
+
+
+    /**
+     * A read-only view of a row stored in a row buffer.  Only the values the
+     * consumer asks for are decoded.
+     */
+    private static class RowView extends PageTuple {
+        /** The index of the chunk holding the row. */
+        final int chunk;
+
+        RowView(DBPage dbPage, int chunk, int offset, Schema schema) {
+            super(dbPage, offset, schema);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public FilePointer getExternalReference() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setColumnValue(int colIndex, Object value) {
+            throw new UnsupportedOperationException(
+                "Rows in a row buffer are read-only");
+        }
+
+        @Override
+        protected void insertTupleDataRange(int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void deleteTupleDataRange(int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+    /** The schema of the rows in the buffer. */
+    private Schema schema;
+
+
+    /**
+     * The maximum number of bytes of memory the buffer's chunks may use
+     * before full chunks are spilled to disk.
+     */
+    private long memoryLimit;
+
+
+    /** The size of each newly allocated chunk, in bytes. */
+    private int chunkSize;
+
+
+    /** The chunks of the buffer, in the order they were filled. */
+    private ArrayList<Chunk> chunks = new ArrayList<>();
+
+
+    /** The index of the chunk each row is stored in. */
+    private int[] rowChunks = new int[256];
+
+
+    /** The offset of each row within its chunk. */
+    private int[] rowOffsets = new int[256];
+
+
+    /** The number of rows in the buffer. */
+    private int numRows;
+
+
+    /** The number of bytes used by the chunks that are in memory. */
+    private long chunkBytes;
+
+
+    /**
+     * The index of the first chunk that hasn't been spilled.  Chunks are
+     * spilled oldest-first, so every chunk before this one is on disk.
+     */
+    private int firstUnspilled;
+
+
+    /** The spilled chunk that was most recently loaded, or -1 if none. */
+    private int loadedChunk = -1;
+
+
+    /** The bytes of {@link #loadedChunk}. */
+    private DBPage loadedPage;
+
+
+    /** The temporary file holding spilled chunks, or {@code null}. */
+    private File spillFile;
+
+
+    /** The open spill file, or {@code null} if nothing has been spilled. */
+    private RandomAccessFile spillData;
+
+
+    /**
+     * Creates a new, empty row buffer.
+     *
+     * @param schema the schema of the rows to be stored
+     * @param memoryLimit the maximum number of bytes the rows may use before
+     *        they are spilled to disk
+     */
+    public RowBuffer(Schema schema, long memoryLimit) {
+        this(schema, memoryLimit, DEFAULT_CHUNK_SIZE);
+    }
+
+
+    /**
+     * Creates a new, empty row buffer.
+     *
+     * @param schema the schema of the rows to be stored
+     * @param memoryLimit the maximum number of bytes the rows may use before
+     *        they are spilled to disk
+     * @param chunkSize the number of bytes in each chunk of rows
+     */
+    public RowBuffer(Schema schema, long memoryLimit, int chunkSize) {
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        this.schema = schema;
+        this.memoryLimit = memoryLimit;
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * Returns the schema of the rows in the buffer.
+     *
+     * @return the schema of the rows in the buffer
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+
+    /**
+     * Returns the number of rows in the buffer.
+     *
+     * @return the number of rows in the buffer
+     */
+    public int size() {
+        return numRows;
+    }
+
+
+    /**
+     * Returns true if the buffer holds no rows.
+     *
+     * @return true if the buffer holds no rows
+     */
+    public boolean isEmpty() {
+        return numRows == 0;
+    }
+
+
+    /**
+     * Returns true if any of the buffer's rows have been spilled to disk.
+     *
+     * @return true if any rows have been spilled to disk
+     */
+    public boolean isSpilled() {
+        return firstUnspilled > 0;
+    }
+
+
+    /**
+     * Returns the approximate number of bytes of memory used by the rows in
+     * the buffer, including the row index but not including spilled chunks.
+     *
+     * @return the approximate number of bytes of memory used by the buffer
+     */
+    public long getMemoryUsage() {
+        return chunkBytes + 4L * (rowChunks.length + rowOffsets.length);
+    }
+
+
+    /**
+     * Appends a copy of a row to the buffer.  The row isn't unpinned.
+     *
+     * @param tup the row to append, with the buffer's schema
+     */
+    public void add(Tuple tup) {
+        int size = PageTuple.getTupleStorageSize(schema, tup);
+
+        Chunk chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.used + size >= chunk.page.getPageSize()) {
+            if (chunk != null)
+                spillIfOverLimit();
+
+            chunk = new Chunk();
+            chunk.page = new DBPage(new byte[Math.max(chunkSize, size + 1)]);
+            chunks.add(chunk);
+            chunkBytes += chunk.page.getPageSize();
+        }
+
+        if (numRows == rowChunks.length) {
+            rowChunks = Arrays.copyOf(rowChunks, numRows * 2);
+            rowOffsets = Arrays.copyOf(rowOffsets, numRows * 2);
+        }
+
+        rowChunks[numRows] = chunks.size() - 1;
+        rowOffsets[numRows] = chunk.used;
+        numRows++;
+
+        chunk.used = PageTuple.storeTuple(chunk.page, chunk.used, schema, tup);
+    }
+
+
+    /**
+     * Returns a read-only view of a row in the buffer.  The view remains
+     * valid until the buffer is cleared, even if the row's chunk is spilled.
+     *
+     * @param index the position of the row, from 0 to {@link #size} - 1
+     * @return a view of the row
+     */
+    public Tuple get(int index) {
+        if (index < 0 || index >= numRows) {
+            throw new IndexOutOfBoundsException("index must be in range [0, " +
+                numRows + "); got " + index);
+        }
+
+        int iChunk = rowChunks[index];
+        return new RowView(getChunkPage(iChunk), iChunk, rowOffsets[index],
+            schema);
+    }
+
+
+    /**
+     * Reorders the rows of the buffer with the specified comparator.  The
+     * buffer must not have spilled any rows.
+     *
+     * @param comparator the ordering to impose on the rows
+     * @throws IllegalStateException if the buffer has spilled rows to disk
+     */
+    public void sort(Comparator<? super Tuple> comparator) {
+        if (isSpilled())
+            throw new IllegalStateException("Cannot sort a spilled row buffer");
+
+        RowView[] views = new RowView[numRows];
+        for (int i = 0; i < numRows; i++)
+            views[i] = (RowView) get(i);
+
+        Arrays.sort(views, comparator);
+
+        // Only the index changes; the rows stay where they are.
+        for (int i = 0; i < numRows; i++) {
+            rowChunks[i] = views[i].chunk;
+            rowOffsets[i] = views[i].getOffset();
+        }
+    }
+
+
+    /**
+     * Removes all rows from the buffer, and deletes its spill file.
+     */
+    public void clear() {
+        chunks.clear();
+        rowChunks = new int[256];
+        rowOffsets = new int[256];
+        numRows = 0;
+        chunkBytes = 0;
+        firstUnspilled = 0;
+        loadedChunk = -1;
+        loadedPage = null;
+
+        if (spillData != null) {
+            try {
+                spillData.close();
+            } catch (IOException e) {
+                logger.warn("Couldn't close spill file " + spillFile, e);
+            }
+
+            spillData = null;
+        }
+
+        if (spillFile != null) {
+            if (!spillFile.delete())
+                logger.warn("Couldn't delete spill file " + spillFile);
+
+            spillFile = null;
+        }
+    }
+
+
+    /**
+     * Returns the page holding the specified chunk, reading it from the
+     * spill file if necessary.
+     */
+    private DBPage getChunkPage(int iChunk) {
+        Chunk chunk = chunks.get(iChunk);
+        if (chunk.page != null)
+            return chunk.page;
+
+        if (iChunk != loadedChunk) {
+            // Read into a new array, so that views of the previously loaded
+            // chunk remain valid.
+            byte[] data = new byte[chunk.used + 1];
+            try {
+                spillData.seek(chunk.fileOffset);
+                spillData.readFully(data, 0, chunk.used);
+            } catch (IOException e) {
+                throw new StorageException("Couldn't read spilled rows from " +
+                    spillFile, e);
+            }
+
+            loadedChunk = iChunk;
+            loadedPage = new DBPage(data);
+        }
+
+        return loadedPage;
+    }
+
+
+    /**
+     * Writes the oldest chunks to the spill file until the buffer is within
+     * its memory limit.  This is only called when the last chunk is full, so
+     * every chunk in memory can be spilled.
+     */
+    private void spillIfOverLimit() {
+        if (getMemoryUsage() <= memoryLimit)
+            return;
+
+        try {
+            if (spillData == null) {
+                spillFile = File.createTempFile("rows", ".tmp");
+                spillData = new RandomAccessFile(spillFile, "rw");
+                logger.debug(String.format("Row buffer uses %d bytes; " +
+                    "spilling rows to %s", getMemoryUsage(), spillFile));
+            }
+
+            while (getMemoryUsage() > memoryLimit &&
+                   firstUnspilled < chunks.size()) {
+                Chunk chunk = chunks.get(firstUnspilled);
+                chunk.fileOffset = spillData.length();
+                spillData.seek(chunk.fileOffset);
+                spillData.write(chunk.page.getPageData(), 0, chunk.used);
+
+                chunkBytes -= chunk.page.getPageSize();
+                chunk.page = null;
+                firstUnspilled++;
+            }
+        } catch (IOException e) {
+            throw new StorageException("Couldn't spill rows to a temporary file", e);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
 import edu.caltech.nanodb.queryeval.TableStats;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.Schema;
@@ -15,6 +16,19 @@ import edu.caltech.nanodb.relations.Schema;
 /**
  * This class encapsulates the operations of reading and writing
  * table-statistics to a data file.
+ * <p>
+ * The statistics for each column start with a NULL-mask recording which of
+ * the column's values are present.  Column distributions (most common
+ * values and histograms) are written after the statistics of all columns,
+ * in column order, and only while they fit in the page; a bit in each
+ * column's NULL-mask records whether its distribution was written.  Files
+ * written before distributions existed therefore read back unchanged.
+ * <p>
+ * If the table has statistics on groups of columns, they are written
+ * between the column statistics and the distributions, and a bit in the
+ * first column's NULL-mask records that they are present.  A group's
+ * declaration is always written, but its functional dependencies are
+ * only written if they fit in the page.
  */
 public class StatsWriter {
     /**
@@ -51,6 +65,22 @@ public class StatsWriter {
     private static final int COLSTAT_NULLMASK_MAX_VALUE = 0x01;
 
 
+    /**
+     * A bit-mask used for storing column-stats, to record whether or not the
+     * column's distribution is stored after the column-stats.  Unlike the
+     * other bits, this bit is set when the value <em>is</em> present.
+     */
+    private static final int COLSTAT_HAS_DISTRIBUTION = 0x10;
+
+
+    /**
+     * A bit-mask used in the first column's NULL-mask, to record whether or
+     * not statistics on groups of columns are stored after the column-stats.
+     * This bit is set when the value <em>is</em> present.
+     */
+    private static final int COLSTAT_HAS_MULTI_COLUMN_STATS = 0x20;
+
+
     private StatsWriter() {
         throw new UnsupportedOperationException(
             "This class should not be instantiated");
@@ -76,6 +106,7 @@ public class StatsWriter {
         pgWriter.writeFloat(stats.avgTupleSize);
 
         ArrayList<ColumnStats> colStats = stats.getAllColumnStats();
+        int[] maskPositions = new int[colStats.size()];
         for (int i = 0; i < colStats.size(); i++) {
             ColumnStats c = colStats.get(i);
             ColumnInfo colInfo = schema.getColumnInfo(i);
@@ -109,6 +140,7 @@ public class StatsWriter {
                     "nullmask=0x%X, unique=%d, null=%d, min=%s, max=%s",
                 nullMask, numUnique, numNull, minVal, maxVal));
 
+            maskPositions[i] = pgWriter.getPosition();
             pgWriter.writeByte(nullMask);
 
             if (numUnique != -1)
@@ -124,6 +156,15 @@ public class StatsWriter {
                 pgWriter.writeObject(colInfo.getType(), maxVal);
         }
 
+        if (!stats.getMultiColumnStats().isEmpty()) {
+            writeMultiColumnStats(stats, pgWriter);
+            DBPage dbPage = pgWriter.getDBPage();
+            dbPage.writeByte(maskPositions[0], dbPage.readByte(maskPositions[0]) |
+                COLSTAT_HAS_MULTI_COLUMN_STATS);
+        }
+
+        writeDistributions(schema, colStats, maskPositions, pgWriter);
+
         if (logger.isDebugEnabled()) {
             int size = pgWriter.getPosition() - startPosition;
             logger.debug("Table statistics occupy " + size + " bytes.");
@@ -131,6 +172,186 @@ public class StatsWriter {
     }
 
 
+    /**
+     * Writes the statistics of the table's groups of columns:  the number of
+     * groups, then each group's name, the number of columns and their
+     * indexes, the number of distinct combinations of values, and a flag
+     * byte followed by the functional-dependency degrees of each ordered
+     * pair of distinct columns.  The degrees are left out if they don't fit
+     * in the page.
+     */
+    private static void writeMultiColumnStats(TableStats stats,
+                                              PageWriter pgWriter) {
+        int pageSize = pgWriter.getDBPage().getPageSize();
+
+        pgWriter.writeByte(stats.getMultiColumnStats().size());
+        for (MultiColumnStats group : stats.getMultiColumnStats()) {
+            pgWriter.writeVarString255(group.getName());
+
+            int n = group.getNumColumns();
+            pgWriter.writeByte(n);
+            for (int index : group.getColumnIndexes())
+                pgWriter.writeByte(index);
+
+            pgWriter.writeInt(group.getNumUniqueValues());
+
+            boolean writeDependencies = group.hasDependencies() &&
+                pgWriter.getPosition() + 1 + 4 * n * (n - 1) <= pageSize;
+            if (group.hasDependencies() && !writeDependencies) {
+                logger.debug("Not enough space to store the dependencies " +
+                    "of statistics " + group.getName());
+            }
+
+            pgWriter.writeByte(writeDependencies ? 1 : 0);
+            if (writeDependencies) {
+                for (int a = 0; a < n; a++) {
+                    for (int b = 0; b < n; b++) {
+                        if (a != b)
+                            pgWriter.writeFloat(group.getDependencyDegree(a, b));
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Reads the statistics of a table's groups of columns, as written by
+     * {@link #writeMultiColumnStats}.
+     */
+    private static ArrayList<MultiColumnStats> readMultiColumnStats(
+        PageReader pgReader, Schema schema) {
+
+        ArrayList<MultiColumnStats> groups = new ArrayList<>();
+        int numGroups = pgReader.readUnsignedByte();
+        for (int i = 0; i < numGroups; i++) {
+            String name = pgReader.readVarString255();
+
+            int n = pgReader.readUnsignedByte();
+            int[] indexes = new int[n];
+            String[] names = new String[n];
+            for (int j = 0; j < n; j++) {
+                indexes[j] = pgReader.readUnsignedByte();
+                names[j] = schema.getColumnInfo(indexes[j]).getName();
+            }
+
+            MultiColumnStats group = new MultiColumnStats(name, indexes, names);
+            group.setNumUniqueValues(pgReader.readInt());
+
+            if (pgReader.readUnsignedByte() != 0) {
+                float[] degrees = new float[n * n];
+                for (int a = 0; a < n; a++) {
+                    for (int b = 0; b < n; b++)
+                        degrees[a * n + b] = (a == b) ? 1 : pgReader.readFloat();
+                }
+                group.setDependencies(degrees);
+            }
+
+            groups.add(group);
+        }
+
+        return groups;
+    }
+
+
+    /**
+     * Writes the distributions of the columns that have them, for as long as
+     * they fit in the page, and marks each column whose distribution was
+     * written.  Each distribution is first written to a scratch page, to
+     * find out how large it is.
+     */
+    private static void writeDistributions(Schema schema,
+        ArrayList<ColumnStats> colStats, int[] maskPositions,
+        PageWriter pgWriter) {
+
+        DBPage dbPage = pgWriter.getDBPage();
+        DBPage scratch = new DBPage(new byte[dbPage.getPageSize()]);
+
+        for (int i = 0; i < colStats.size(); i++) {
+            ColumnStats c = colStats.get(i);
+            if (!c.hasDistribution())
+                continue;
+
+            PageWriter scratchWriter = new PageWriter(scratch);
+            try {
+                writeDistribution(schema.getColumnInfo(i), c, scratchWriter);
+            } catch (IndexOutOfBoundsException e) {
+                // The distribution doesn't even fit in an empty page.
+                continue;
+            }
+
+            int size = scratchWriter.getPosition();
+            if (pgWriter.getPosition() + size > dbPage.getPageSize()) {
+                logger.debug(String.format("Not enough space to store the " +
+                    "distribution of column %s (%d bytes)",
+                    schema.getColumnInfo(i).getName(), size));
+                continue;
+            }
+
+            pgWriter.write(scratch.getPageData(), 0, size);
+            dbPage.writeByte(maskPositions[i],
+                dbPage.readByte(maskPositions[i]) | COLSTAT_HAS_DISTRIBUTION);
+        }
+    }
+
+
+    /**
+     * Writes a column's distribution:  the number of most common values,
+     * followed by each value and its frequency, the fraction of rows holding
+     * other values, and the number of histogram bounds followed by the
+     * bounds themselves.
+     */
+    private static void writeDistribution(ColumnInfo colInfo, ColumnStats c,
+                                          PageWriter pgWriter) {
+        Object[] mcvs = c.getMCVValues();
+        float[] freqs = c.getMCVFrequencies();
+        pgWriter.writeByte(mcvs.length);
+        for (int i = 0; i < mcvs.length; i++) {
+            pgWriter.writeObject(colInfo.getType(), mcvs[i]);
+            pgWriter.writeFloat(freqs[i]);
+        }
+
+        pgWriter.writeFloat(c.getOtherFraction());
+
+        Object[] bounds = c.getHistogramBounds();
+        if (bounds == null) {
+            pgWriter.writeByte(0);
+        } else {
+            pgWriter.writeByte(bounds.length);
+            for (Object bound : bounds)
+                pgWriter.writeObject(colInfo.getType(), bound);
+        }
+    }
+
+
+    /**
+     * Reads a column's distribution, as written by {@link #writeDistribution},
+     * into the specified column-stats object.
+     */
+    private static void readDistribution(ColumnInfo colInfo, ColumnStats c,
+                                         PageReader pgReader) {
+        int numMCVs = pgReader.readUnsignedByte();
+        Object[] mcvs = new Object[numMCVs];
+        float[] freqs = new float[numMCVs];
+        for (int i = 0; i < numMCVs; i++) {
+            mcvs[i] = pgReader.readObject(colInfo.getType());
+            freqs[i] = pgReader.readFloat();
+        }
+
+        float otherFraction = pgReader.readFloat();
+
+        int numBounds = pgReader.readUnsignedByte();
+        Object[] bounds = null;
+        if (numBounds > 0) {
+            bounds = new Object[numBounds];
+            for (int i = 0; i < numBounds; i++)
+                bounds[i] = pgReader.readObject(colInfo.getType());
+        }
+
+        c.setDistribution(mcvs, freqs, otherFraction, bounds);
+    }
+
+
     /**
      * Reads the table-statistics from the specified data file.
      *
@@ -148,6 +369,7 @@ public class StatsWriter {
         float avgTupleSize = pgReader.readFloat();
 
         ArrayList<ColumnStats> colStats = new ArrayList<ColumnStats>();
+        byte[] nullMasks = new byte[schema.numColumns()];
         for (int i = 0; i < schema.numColumns(); i++) {
             // The column-statistics object is initialized to all NULL values.
             ColumnStats c = new ColumnStats();
@@ -175,8 +397,25 @@ public class StatsWriter {
                 c.getMinValue(), c.getMaxValue()));
 
             colStats.add(c);
+            nullMasks[i] = nullMask;
+        }
+
+        ArrayList<MultiColumnStats> groups = null;
+        if (schema.numColumns() > 0 &&
+            (nullMasks[0] & COLSTAT_HAS_MULTI_COLUMN_STATS) != 0) {
+            groups = readMultiColumnStats(pgReader, schema);
         }
 
-        return new TableStats(numDataPages, numTuples, avgTupleSize, colStats);
+        for (int i = 0; i < schema.numColumns(); i++) {
+            if ((nullMasks[i] & COLSTAT_HAS_DISTRIBUTION) != 0)
+                readDistribution(schema.getColumnInfo(i), colStats.get(i), pgReader);
+        }
+
+        TableStats stats =
+            new TableStats(numDataPages, numTuples, avgTupleSize, colStats);
+        if (groups != null)
+            stats.setMultiColumnStats(groups);
+
+        return stats;
     }
 }
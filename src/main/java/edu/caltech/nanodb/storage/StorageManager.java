@@ -14,12 +14,15 @@ import edu.caltech.nanodb.indexes.IndexUpdater;
 import edu.caltech.nanodb.relations.DatabaseConstraintEnforcer;
 import edu.caltech.nanodb.server.EventDispatcher;
 import edu.caltech.nanodb.server.NanoDBServer;
+import edu.caltech.nanodb.server.SessionState;
 import edu.caltech.nanodb.server.properties.PropertyRegistry;
 import edu.caltech.nanodb.server.properties.ServerProperties;
 
 import edu.caltech.nanodb.storage.btreefile.BTreeTupleFileManager;
 import edu.caltech.nanodb.storage.heapfile.HeapTupleFileManager;
+import edu.caltech.nanodb.storage.paxfile.PaxTupleFileManager;
 import edu.caltech.nanodb.transactions.TransactionManager;
+import edu.caltech.nanodb.transactions.TransactionState;
 
 
 /**
@@ -88,6 +91,10 @@ public class StorageManager {
     private IndexManager indexManager;
 
 
+    /** The event-handler that keeps table statistics current. */
+    private TableStatsMaintainer statsMaintainer;
+
+
     /**
      * This mapping is used to keep track of the tuple-file managers for all
      * the kinds of tuple-files we support.
@@ -149,6 +156,18 @@ public class StorageManager {
         tupleFileManagers.put(DBFileType.BTREE_TUPLE_FILE,
             new BTreeTupleFileManager(this));
 
+        tupleFileManagers.put(DBFileType.PAX_TUPLE_FILE,
+            new PaxTupleFileManager(this));
+
+        // Register the event-handler that keeps table statistics current.
+        // This is done before the transaction manager registers its own
+        // handlers, so that statistics saved at the end of a command are
+        // saved in the command's transaction.
+        statsMaintainer = new TableStatsMaintainer(this);
+        EventDispatcher eventDispatcher = server.getEventDispatcher();
+        eventDispatcher.addRowEventListener(statsMaintainer);
+        eventDispatcher.addCommandEventListener(statsMaintainer);
+
         if (enableTransactions) {
             logger.info("Initializing transaction manager.");
             transactionManager = new TransactionManager(server);
@@ -163,8 +182,6 @@ public class StorageManager {
         tableManager = new IndexedTableManager(this);
         indexManager = new BasicIndexManager(this);
 
-        EventDispatcher eventDispatcher = server.getEventDispatcher();
-
         // Register the event-handler that enforces database constraints!
         eventDispatcher.addRowEventListener(new DatabaseConstraintEnforcer(server));
 
@@ -296,6 +313,17 @@ public class StorageManager {
     }
 
 
+    /**
+     * Returns the component that keeps table statistics current as tables
+     * are modified.
+     *
+     * @return the table-statistics maintainer
+     */
+    public TableStatsMaintainer getStatsMaintainer() {
+        return statsMaintainer;
+    }
+
+
     /**
      * Returns the tuple-file manager for the specified file type.
      *
@@ -385,6 +413,84 @@ public class StorageManager {
     }
 
 
+    /**
+     * <p>
+     * This method truncates a database file to the specified number of
+     * pages.  The caller must ensure that the truncated pages no longer hold
+     * any live data, and that they are not referenced from any of the pages
+     * that remain in the file.
+     * </p>
+     * <p>
+     * If a transaction is in progress, the file is not truncated until the
+     * transaction commits, since rolling the transaction back would need the
+     * truncated pages.  The truncation is then recorded in the write-ahead
+     * log, after the transaction's commit record.  Until then, the truncated
+     * pages remain in the file; {@link #getNumPages} reports the number of
+     * pages that will remain.
+     * </p>
+     *
+     * @param dbFile   the database file to truncate
+     * @param numPages the number of pages that should remain in the file
+     */
+    public void truncateDBFile(DBFile dbFile, int numPages) {
+        TransactionState txnState = SessionState.get().getTransactionState();
+        if (transactionManager != null && txnState.isTxnInProgress()) {
+            logger.debug(String.format("Truncating file %s to %d pages " +
+                "when the current transaction commits", dbFile, numPages));
+            txnState.addTruncation(dbFile, numPages);
+            return;
+        }
+
+        applyTruncation(dbFile, numPages);
+    }
+
+
+    /**
+     * This method immediately truncates a database file to the specified
+     * number of pages, if it has more pages than that.  The cached copies of
+     * the truncated pages are removed from the Buffer Manager first; dirty
+     * pages are written out rather than discarded, so that no logged change
+     * to a page is lost before the truncation itself takes effect.  This is
+     * used by the transaction manager when a transaction commits, and when
+     * truncations are redone during recovery; other callers should use
+     * {@link #truncateDBFile}.
+     *
+     * @param dbFile   the database file to truncate
+     * @param numPages the number of pages that should remain in the file
+     */
+    public void applyTruncation(DBFile dbFile, int numPages) {
+        if (numPages >= dbFile.getNumPages())
+            return;
+
+        bufferManager.flushDBFilePages(dbFile, numPages);
+        fileManager.truncateDBFile(dbFile, numPages);
+    }
+
+
+    /**
+     * Returns the number of pages in a database file, not counting any
+     * trailing pages that the current transaction has truncated, but that
+     * won't be removed from the file until the transaction commits.
+     *
+     * @param dbFile the database file to report on
+     * @return the number of pages in the file, after any truncation the
+     *         current transaction has requested
+     */
+    public int getNumPages(DBFile dbFile) {
+        int numPages = dbFile.getNumPages();
+
+        TransactionState.FileTruncation truncation =
+            SessionState.get().getTransactionState().getTruncation(dbFile);
+
+        // If the file has grown since the truncation was requested, the
+        // truncation won't be applied.
+        if (truncation != null && truncation.getOldNumPages() == numPages)
+            numPages = truncation.getNumPages();
+
+        return numPages;
+    }
+
+
     /**
      * This method allows all data to be flushed from the Buffer Manager.  It
      * should not be used in practice, but it is useful to remove buffering to
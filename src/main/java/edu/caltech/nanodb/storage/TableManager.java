@@ -81,6 +81,16 @@ public interface TableManager {
     void analyzeTable(TableInfo tableInfo);
 
 
+    /**
+     * This function optimizes the storage of the specified table, along with
+     * any indexes on the table.  For example, free space in the table file
+     * may be reclaimed so that scans read fewer pages.
+     *
+     * @param tableInfo the opened table to optimize.
+     */
+    void optimizeTable(TableInfo tableInfo);
+
+
     /**
      * This method closes a table file that is currently open, flushing any
      * dirty pages to the table's storage in the process.
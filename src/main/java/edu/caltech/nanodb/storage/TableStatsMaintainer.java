@@ -0,0 +1,364 @@
+package edu.caltech.nanodb.storage;
+
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.commands.AnalyzeCommand;
+import edu.caltech.nanodb.commands.Command;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandEventListener;
+import edu.caltech.nanodb.server.RowEventListener;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * <p>
+ * This class keeps tables' statistics approximately current between runs of
+ * <tt>ANALYZE</tt>.  As a {@link RowEventListener}, it adjusts each table's
+ * tuple count as rows are inserted and deleted, widens the minimum and
+ * maximum values of its columns to cover inserted values, and counts the
+ * rows that have been modified.  As a {@link CommandEventListener}, at the
+ * end of each command it refreshes the page counts of the tables the
+ * command modified.  The tables modified by each session's current command
+ * are tracked separately, so that concurrent sessions don't interfere.
+ * </p>
+ * <p>
+ * When the number of rows modified since a table was last analyzed exceeds
+ * {@link #AUTO_ANALYZE_MIN_CHANGES} plus a configurable percentage of the
+ * table's rows, the table is analyzed again from a sample of its pages.
+ * This is done synchronously, at the end of the command that crossed the
+ * threshold and within that command's transaction, so that command takes
+ * longer to complete; NanoDB has no background workers that could analyze
+ * the table in a transaction of their own.  Sampling only a percentage of
+ * the table's pages keeps the delay small.
+ * </p>
+ * <p>
+ * The maintained statistics are used from memory, so they are only saved
+ * when the same number of rows has changed since they were last saved (or
+ * when the table is analyzed), rather than after every command.  Until
+ * then, the saved statistics are slightly out of date, which only matters
+ * if the server is restarted.
+ * </p>
+ * <p>
+ * This handler is installed by the {@link StorageManager#initialize} setup
+ * method, ahead of the transaction manager's handler, so that the changes it
+ * makes at the end of a command are part of the command's transaction.
+ * </p>
+ */
+public class TableStatsMaintainer implements RowEventListener,
+    CommandEventListener {
+
+    /** A logging object for reporting anything interesting that happens. */
+    private static Logger logger =
+        LogManager.getLogger(TableStatsMaintainer.class);
+
+
+    /**
+     * The number of rows that must change, on top of the configured
+     * percentage of the table, before a table is analyzed automatically.
+     * This keeps small tables from being analyzed after every few rows.
+     */
+    public static final int AUTO_ANALYZE_MIN_CHANGES = 50;
+
+
+    /** The modification counts of a table. */
+    private static class TableChanges {
+        /** The number of rows modified since the table was last analyzed. */
+        int changesSinceAnalyze;
+
+        /**
+         * The number of rows modified since the table's statistics were
+         * last saved.
+         */
+        int changesSinceSave;
+
+        /** The number of rows in the table when it was last analyzed. */
+        int rowsAtAnalyze;
+
+        /** True if the table can't be analyzed, so shouldn't be tried. */
+        boolean cannotAnalyze;
+
+        /**
+         * True if the table's statistics can't be saved, so are only kept
+         * in memory.
+         */
+        boolean cannotSave;
+    }
+
+
+    /** The storage manager of the tables being maintained. */
+    private StorageManager storageManager;
+
+
+    /** The modification counts of each table, keyed by table name. */
+    private HashMap<String, TableChanges> tableChanges = new HashMap<>();
+
+
+    /**
+     * The tables that have been modified by each session's current command,
+     * keyed by session ID, and then by table name.
+     */
+    private HashMap<Integer, LinkedHashMap<String, TableInfo>> modifiedTables =
+        new HashMap<>();
+
+
+    public TableStatsMaintainer(StorageManager storageManager) {
+        if (storageManager == null)
+            throw new IllegalArgumentException("storageManager cannot be null");
+
+        this.storageManager = storageManager;
+    }
+
+
+    /**
+     * Returns the number of rows of the specified table that have been
+     * modified since the table was last analyzed, or since the server
+     * started.
+     *
+     * @param tableInfo the table to report on
+     * @return the number of modified rows
+     */
+    public synchronized int getChangesSinceAnalyze(TableInfo tableInfo) {
+        TableChanges changes = tableChanges.get(tableInfo.getTableName());
+        return (changes == null) ? 0 : changes.changesSinceAnalyze;
+    }
+
+
+    /**
+     * Records that a row of a table was modified, returning the table's
+     * statistics.
+     */
+    private TableStats rowModified(TableInfo tableInfo) {
+        String tableName = tableInfo.getTableName();
+        TableStats stats = tableInfo.getTupleFile().getStats();
+
+        TableChanges changes = tableChanges.get(tableName);
+        if (changes == null) {
+            changes = new TableChanges();
+            changes.rowsAtAnalyze = stats.numTuples;
+            tableChanges.put(tableName, changes);
+        }
+
+        changes.changesSinceAnalyze++;
+        changes.changesSinceSave++;
+
+        int sessionID = SessionState.get().getSessionID();
+        modifiedTables.computeIfAbsent(sessionID, id -> new LinkedHashMap<>())
+            .put(tableName, tableInfo);
+
+        // Observed selectivities become stale as the table changes.
+        CardinalityFeedback.tableModified(tableName);
+        return stats;
+    }
+
+
+    @Override
+    public void beforeRowInserted(TableInfo tblFileInfo, Tuple newValues) {
+        // Ignore.
+    }
+
+
+    @Override
+    public synchronized void afterRowInserted(TableInfo tblFileInfo,
+                                              Tuple newTuple) {
+        TableStats stats = rowModified(tblFileInfo);
+        stats.numTuples++;
+        widenMinMaxValues(stats, newTuple);
+    }
+
+
+    @Override
+    public void beforeRowUpdated(TableInfo tblFileInfo, Tuple oldTuple,
+                                 Tuple newValues) {
+        // Ignore.
+    }
+
+
+    @Override
+    public synchronized void afterRowUpdated(TableInfo tblFileInfo,
+                                             Tuple oldValues, Tuple newTuple) {
+        TableStats stats = rowModified(tblFileInfo);
+        widenMinMaxValues(stats, newTuple);
+    }
+
+
+    @Override
+    public void beforeRowDeleted(TableInfo tblFileInfo, Tuple oldTuple) {
+        // Ignore.
+    }
+
+
+    @Override
+    public synchronized void afterRowDeleted(TableInfo tblFileInfo,
+                                             Tuple oldValues) {
+        TableStats stats = rowModified(tblFileInfo);
+        if (stats.numTuples > 0)
+            stats.numTuples--;
+    }
+
+
+    @Override
+    public void rowRelocated(TableInfo tblFileInfo, Tuple oldTuple,
+                             Tuple newTuple) {
+        // Ignore; relocating a row doesn't change the table's contents.
+    }
+
+
+    /**
+     * Widens the minimum and maximum values of each column that has them,
+     * so that they include the values of a new or updated row.  Otherwise,
+     * rows added past the end of a column's range, such as new timestamps,
+     * would be estimated to match nothing until the table is analyzed.
+     */
+    @SuppressWarnings("unchecked")
+    private void widenMinMaxValues(TableStats stats, Tuple tup) {
+        int numCols = Math.min(tup.getColumnCount(),
+            stats.getAllColumnStats().size());
+        for (int i = 0; i < numCols; i++) {
+            ColumnStats colStats = stats.getColumnStats(i);
+            if (!colStats.hasMinMaxValues())
+                continue;
+
+            Object value = tup.getColumnValue(i);
+            if (!(value instanceof Comparable) ||
+                value.getClass() != colStats.getMinValue().getClass()) {
+                continue;
+            }
+
+            Comparable comp = (Comparable) value;
+            if (comp.compareTo(colStats.getMinValue()) < 0)
+                colStats.setMinValue(value);
+            else if (comp.compareTo(colStats.getMaxValue()) > 0)
+                colStats.setMaxValue(value);
+        }
+    }
+
+
+    @Override
+    public synchronized void beforeCommandExecuted(Command cmd) {
+        // A command that failed doesn't report that it finished, so forget
+        // any tables that this session's last command left behind.
+        modifiedTables.remove(SessionState.get().getSessionID());
+    }
+
+
+    @Override
+    public synchronized void afterCommandExecuted(Command cmd) {
+        LinkedHashMap<String, TableInfo> sessionTables =
+            modifiedTables.remove(SessionState.get().getSessionID());
+
+        if (cmd instanceof AnalyzeCommand) {
+            // The tables were just analyzed, so their changes start over.
+            TableManager tableManager = storageManager.getTableManager();
+            for (String tableName : ((AnalyzeCommand) cmd).getTableNames()) {
+                TableInfo tableInfo = tableManager.openTable(tableName);
+                if (tableInfo != null) {
+                    tableAnalyzed(tableInfo);
+                    if (sessionTables != null)
+                        sessionTables.remove(tableInfo.getTableName());
+                }
+            }
+        }
+
+        if (sessionTables == null || sessionTables.isEmpty())
+            return;
+
+        PropertyRegistry props =
+            storageManager.getServer().getPropertyRegistry();
+        boolean autoAnalyze =
+            props.getBooleanProperty(ServerProperties.PROP_AUTO_ANALYZE);
+        int changePercent = props.getIntProperty(
+            ServerProperties.PROP_AUTO_ANALYZE_CHANGE_PERCENT);
+        int samplePercent = props.getIntProperty(
+            ServerProperties.PROP_AUTO_ANALYZE_SAMPLE_PERCENT);
+
+        for (TableInfo tableInfo : sessionTables.values()) {
+            TupleFile tupleFile = tableInfo.getTupleFile();
+            TableChanges changes = tableChanges.get(tableInfo.getTableName());
+
+            long threshold = AUTO_ANALYZE_MIN_CHANGES +
+                (long) changes.rowsAtAnalyze * changePercent / 100;
+            if (autoAnalyze && !changes.cannotAnalyze &&
+                changes.changesSinceAnalyze > threshold) {
+                logger.info(String.format("%d rows of table %s have changed " +
+                    "since it was analyzed; analyzing it again",
+                    changes.changesSinceAnalyze, tableInfo.getTableName()));
+
+                try {
+                    // Analyzing the table also saves its statistics.
+                    tupleFile.analyze(samplePercent);
+                    tableAnalyzed(tableInfo);
+
+                    // Plans made with the old statistics may now be poor.
+                    storageManager.getServer().getPlanCache().invalidate();
+                    continue;
+                } catch (UnsupportedOperationException e) {
+                    logger.info("Table " + tableInfo.getTableName() +
+                        " can't be analyzed automatically", e);
+                    changes.cannotAnalyze = true;
+                }
+            }
+
+            // Keep the page count current, and save the statistics once
+            // enough rows have changed since they were last saved.
+            TableStats stats = tupleFile.getStats();
+            stats.numDataPages =
+                Math.max(0, tupleFile.getDBFile().getNumPages() - 1);
+
+            if (changes.cannotSave || changes.changesSinceSave <= threshold)
+                continue;
+
+            try {
+                tupleFile.getManager().saveMetadata(tupleFile);
+                changes.changesSinceSave = 0;
+            } catch (UnsupportedOperationException e) {
+                logger.info("Statistics of table " + tableInfo.getTableName() +
+                    " can't be saved; keeping them in memory only", e);
+                changes.cannotSave = true;
+            }
+        }
+    }
+
+
+    /**
+     * Forgets everything recorded about a table that has been dropped, so
+     * that a new table with the same name starts over.
+     *
+     * @param tableName the name of the dropped table
+     */
+    public synchronized void tableDropped(String tableName) {
+        tableChanges.remove(tableName);
+        for (LinkedHashMap<String, TableInfo> sessionTables :
+             modifiedTables.values()) {
+            sessionTables.remove(tableName);
+        }
+    }
+
+
+    /**
+     * Records that a table was just analyzed, so that its modification count
+     * starts over.
+     */
+    private void tableAnalyzed(TableInfo tableInfo) {
+        TableChanges changes = tableChanges.get(tableInfo.getTableName());
+        if (changes == null) {
+            changes = new TableChanges();
+            tableChanges.put(tableInfo.getTableName(), changes);
+        }
+
+        // Analyzing a table also saves its statistics.
+        changes.changesSinceAnalyze = 0;
+        changes.changesSinceSave = 0;
+        changes.rowsAtAnalyze = tableInfo.getTupleFile().getStats().numTuples;
+    }
+}
@@ -107,6 +107,19 @@ public interface TupleFile {
     Tuple addTuple(Tuple tuple);
 
 
+    /**
+     * Returns true if rows can only be appended to this tuple file, in which
+     * case {@link #updateTuple} and {@link #deleteTuple} are not supported.
+     * Commands check this before they touch any rows, so that a table and
+     * its indexes are never left partially modified.
+     *
+     * @return true if the file's rows can't be updated or deleted
+     */
+    default boolean isAppendOnly() {
+        return false;
+    }
+
+
     /**
      * Modifies the values in the specified tuple.
      *
@@ -127,10 +140,25 @@ public interface TupleFile {
     void deleteTuple(Tuple tuple);
 
 
+    /**
+     * Analyzes all the tuple data in the file, updating the file's
+     * statistics.
+     */
+    default void analyze() {
+        analyze(100);
+    }
+
+
     /**
      * Analyzes the tuple data in the file, updating the file's statistics.
+     * If <tt>samplePercent</tt> is less than 100, only that percentage of
+     * the file's data pages are read, and the statistics gathered from them
+     * are scaled up to the whole file.
+     *
+     * @param samplePercent the percentage of the file's data pages to read,
+     *        from 1 to 100
      */
-    void analyze();
+    void analyze(int samplePercent);
 
 
     /**
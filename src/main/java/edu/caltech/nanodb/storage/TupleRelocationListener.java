@@ -0,0 +1,26 @@
+package edu.caltech.nanodb.storage;
+
+
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * This interface is implemented by components that need to know when a
+ * tuple-file moves a tuple from one location to another, for example while
+ * compacting the file.  Since other structures (most notably indexes) refer
+ * to tuples by their {@link FilePointer}, they must be updated whenever a
+ * tuple is relocated.
+ */
+public interface TupleRelocationListener {
+    /**
+     * This method is invoked after a tuple has been copied to its new
+     * location, but before the tuple at the old location has been removed.
+     * Thus, both tuples are valid and in the tuple file when this method is
+     * called.
+     *
+     * @param oldTuple the tuple at its old location, which is about to be
+     *                 removed from the file
+     * @param newTuple the tuple at its new location
+     */
+    void tupleRelocated(Tuple oldTuple, Tuple newTuple);
+}
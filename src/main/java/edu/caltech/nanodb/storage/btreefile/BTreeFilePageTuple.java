@@ -139,6 +139,11 @@ public class BTreeFilePageTuple extends PageTuple {
                 else
                     buf.append(',');
 
+                if (isColumnProjectedOut(i)) {
+                    buf.append('?');
+                    continue;
+                }
+
                 Object obj = getColumnValue(i);
                 if (obj == null)
                     buf.append("NULL");
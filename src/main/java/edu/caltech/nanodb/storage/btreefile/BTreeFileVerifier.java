@@ -180,8 +180,11 @@ public class BTreeFileVerifier {
     private void pass1ScanThruAllPages() {
         logger.debug("Pass 1:  Linear scan through pages to collect info");
 
+        // Pages that the current transaction truncated are no longer part
+        // of the tree, even though they remain until it commits.
         pages = new HashMap<>();
-        for (int pageNo = 1; pageNo < dbFile.getNumPages(); pageNo++) {
+        int numPages = storageManager.getNumPages(dbFile);
+        for (int pageNo = 1; pageNo < numPages; pageNo++) {
             DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
 
             int pageType = dbPage.readUnsignedByte(0);
@@ -191,7 +191,9 @@ public class BTreeTupleFile implements SequentialTupleFile {
         if (leaf != null && leaf.getNumTuples() > 0)
             tup = leaf.getTuple(0);
 
-        tup.pin();
+        if (tup != null)
+            tup.pin();
+
         return tup;
     }
 
@@ -539,7 +541,7 @@ public class BTreeTupleFile implements SequentialTupleFile {
 
 
     @Override
-    public void analyze() {
+    public void analyze(int samplePercent) {
         throw new UnsupportedOperationException("NYI");
     }
 
@@ -552,8 +554,247 @@ public class BTreeTupleFile implements SequentialTupleFile {
     }
 
 
+    /**
+     * <p>
+     * Optimizes the B<sup>+</sup> tree file by merging underfull leaves, and
+     * then rebuilding the inner levels of the tree from the remaining leaves.
+     * Any empty pages left at the end of the file are then truncated.
+     * </p>
+     * <p>
+     * Adjacent leaves are merged whenever the right leaf's tuples fit in the
+     * left leaf's free space, so after optimization no two adjacent leaves
+     * could be combined into one.  The inner pages are filled as full as
+     * possible, since the old inner structure is discarded anyway.
+     * </p>
+     * <p>
+     * Since tuples move between leaves without being reported to anyone, any
+     * other structures that refer to the tuples in this file by location
+     * (e.g. the table's indexes) must be rebuilt after this operation.
+     * </p>
+     */
     @Override
     public void optimize() {
-        throw new UnsupportedOperationException("NYI");
+        DBPage dbpHeader = storageManager.loadDBPage(dbFile, 0);
+        int rootPageNo = HeaderPage.getRootPageNo(dbpHeader);
+        if (rootPageNo == 0) {
+            // The file is completely empty; nothing to do.
+            dbpHeader.unpin();
+            return;
+        }
+
+        // Find all inner pages before anything is changed, since they will be
+        // discarded and rebuilt from the leaves.  Traversing the tree also
+        // finds the leftmost leaf, which is where the leaf chain starts.
+        ArrayList<Integer> innerPageNos = new ArrayList<>();
+        int firstLeafPageNo = findInnerPages(rootPageNo, innerPageNos);
+
+        // Merge underfull leaves, recording each remaining leaf along with its
+        // smallest tuple; the latter becomes the leaf's key in its parent.
+        ArrayList<Integer> leafPageNos = new ArrayList<>();
+        ArrayList<TupleLiteral> leafKeys = new ArrayList<>();
+
+        LeafPage leaf = new LeafPage(
+            storageManager.loadDBPage(dbFile, firstLeafPageNo), schema);
+        int numMerged = 0;
+        while (true) {
+            int nextPageNo = leaf.getNextPageNo();
+            LeafPage next = null;
+            if (nextPageNo != 0) {
+                next = new LeafPage(
+                    storageManager.loadDBPage(dbFile, nextPageNo), schema);
+            }
+
+            if (next != null &&
+                next.getSpaceUsedByTuples() <= leaf.getFreeSpace()) {
+                // Fold the next leaf into this one, and drop it from the
+                // chain of leaves.
+                if (next.getNumTuples() > 0)
+                    next.moveTuplesLeft(leaf, next.getNumTuples());
+
+                leaf.setNextPageNo(next.getNextPageNo());
+                fileOps.releaseDataPage(next.getDBPage());
+                next.getDBPage().unpin();
+                numMerged++;
+                continue;
+            }
+
+            leafPageNos.add(leaf.getPageNo());
+            if (leafKeys.isEmpty())
+                leafKeys.add(null);  // The leftmost child has no key.
+            else
+                leafKeys.add(TupleLiteral.fromTuple(leaf.getTuple(0)));
+
+            leaf.getDBPage().unpin();
+
+            if (next == null)
+                break;
+
+            leaf = next;
+        }
+
+        logger.debug(String.format("Merged %d leaves in BTree file %s; " +
+            "%d leaves remain.", numMerged, dbFile, leafPageNos.size()));
+
+        // Discard the old inner pages, then build new inner levels from the
+        // bottom up until only the root remains.
+        for (int pageNo : innerPageNos) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            fileOps.releaseDataPage(dbPage);
+            dbPage.unpin();
+        }
+
+        List<Integer> levelPageNos = leafPageNos;
+        List<TupleLiteral> levelKeys = leafKeys;
+        while (levelPageNos.size() > 1) {
+            ArrayList<Integer> parentPageNos = new ArrayList<>();
+            ArrayList<TupleLiteral> parentKeys = new ArrayList<>();
+            buildInnerLevel(levelPageNos, levelKeys, parentPageNos, parentKeys);
+
+            levelPageNos = parentPageNos;
+            levelKeys = parentKeys;
+        }
+
+        HeaderPage.setRootPageNo(dbpHeader, levelPageNos.get(0));
+        HeaderPage.setFirstLeafPageNo(dbpHeader, leafPageNos.get(0));
+        dbpHeader.unpin();
+
+        fileOps.truncateEmptyPages();
+    }
+
+
+    /**
+     * Removes all tuples from the B<sup>+</sup> tree file, leaving an empty
+     * tree.  Every data page is put on the list of empty pages, rather than
+     * being truncated, since a truncation doesn't take effect until the
+     * transaction commits, and the tree is usually filled again right away
+     * (e.g. when an index is rebuilt).  The pages are released from the end
+     * of the file backward, so that the earliest pages are reused first;
+     * {@link #optimize} truncates any that remain unused.
+     */
+    public void clear() {
+        DBPage dbpHeader = storageManager.loadDBPage(dbFile, 0);
+        HeaderPage.setRootPageNo(dbpHeader, 0);
+        HeaderPage.setFirstLeafPageNo(dbpHeader, 0);
+        HeaderPage.setFirstEmptyPageNo(dbpHeader, 0);
+
+        int numPages = storageManager.getNumPages(dbFile);
+        for (int pageNo = numPages - 1; pageNo > 0; pageNo--) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            fileOps.releaseDataPage(dbPage);
+            dbPage.unpin();
+        }
+
+        dbpHeader.unpin();
+    }
+
+
+    /**
+     * This helper method records the page numbers of all inner pages in the
+     * subtree rooted at the specified page.
+     *
+     * @param pageNo the root page of the subtree to traverse
+     * @param innerPageNos the collection to add inner page numbers to
+     * @return the page number of the leftmost leaf in the subtree
+     */
+    private int findInnerPages(int pageNo, List<Integer> innerPageNos) {
+        int leftmostLeafPageNo = pageNo;
+
+        DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+        if (dbPage.readByte(0) == BTREE_INNER_PAGE) {
+            innerPageNos.add(pageNo);
+
+            InnerPage inner = new InnerPage(dbPage, schema);
+            for (int i = 0; i < inner.getNumPointers(); i++) {
+                int leafPageNo =
+                    findInnerPages(inner.getPointer(i), innerPageNos);
+                if (i == 0)
+                    leftmostLeafPageNo = leafPageNo;
+            }
+        }
+        dbPage.unpin();
+
+        return leftmostLeafPageNo;
+    }
+
+
+    /**
+     * This helper method builds one level of inner pages over the specified
+     * sequence of child pages, packing each inner page as full as possible.
+     *
+     * @param childPageNos the page numbers of the children, in key order
+     * @param childKeys the smallest key in each child's subtree; the first
+     *                  entry is ignored, since the leftmost child of the level
+     *                  doesn't need a key
+     * @param parentPageNos receives the page numbers of the new inner pages
+     * @param parentKeys receives the smallest key in each new inner page's
+     *                   subtree
+     */
+    private void buildInnerLevel(List<Integer> childPageNos,
+        List<TupleLiteral> childKeys, List<Integer> parentPageNos,
+        List<TupleLiteral> parentKeys) {
+
+        InnerPage inner = null;
+        int i = 0;
+        while (i < childPageNos.size()) {
+            if (inner == null) {
+                DBPage dbPage = fileOps.getNewDataPage();
+
+                if (i + 1 < childPageNos.size()) {
+                    // Start a new inner page with the next two children.
+                    inner = InnerPage.init(dbPage, schema,
+                        childPageNos.get(i), childKeys.get(i + 1),
+                        childPageNos.get(i + 1));
+
+                    parentPageNos.add(inner.getPageNo());
+                    parentKeys.add(childKeys.get(i));
+                    i += 2;
+                } else {
+                    // Only one child is left, but an inner page needs at
+                    // least two pointers; borrow the previous page's last
+                    // child.  (The level must already have a page, since the
+                    // level has at least two children.)
+                    InnerPage prev = new InnerPage(storageManager.loadDBPage(
+                        dbFile, parentPageNos.get(parentPageNos.size() - 1)),
+                        schema);
+
+                    if (prev.getNumPointers() <= 2) {
+                        throw new BTreeTupleFileException(
+                            "Keys are too large to rebuild inner page " +
+                            prev.getPageNo());
+                    }
+
+                    int lastIndex = prev.getNumPointers() - 1;
+                    int borrowedPageNo = prev.getPointer(lastIndex);
+                    TupleLiteral borrowedKey =
+                        TupleLiteral.fromTuple(prev.getKey(lastIndex - 1));
+                    prev.deletePointer(borrowedPageNo, false);
+                    prev.getDBPage().unpin();
+
+                    inner = InnerPage.init(dbPage, schema, borrowedPageNo,
+                        childKeys.get(i), childPageNos.get(i));
+
+                    parentPageNos.add(inner.getPageNo());
+                    parentKeys.add(borrowedKey);
+                    i++;
+                }
+
+                continue;
+            }
+
+            TupleLiteral key = childKeys.get(i);
+            int entrySize = PageTuple.getTupleStorageSize(schema, key) + 2;
+            if (entrySize <= inner.getFreeSpace()) {
+                inner.addEntry(inner.getPointer(inner.getNumPointers() - 1),
+                    key, childPageNos.get(i));
+                i++;
+            } else {
+                // This inner page is full; the child goes into a new page.
+                inner.getDBPage().unpin();
+                inner = null;
+            }
+        }
+
+        if (inner != null)
+            inner.getDBPage().unpin();
     }
 }
@@ -105,4 +105,71 @@ class FileOperations {
         // Store the new "first empty page" value into the header.
         HeaderPage.setFirstEmptyPageNo(dbpHeader, dbPage.getPageNo());
     }
+
+
+    /**
+     * This helper function truncates any run of empty pages from the end of
+     * the B<sup>+</sup> tree file, removing them from the list of empty pages
+     * in the process.
+     *
+     * @return the number of pages truncated from the file
+     */
+    public int truncateEmptyPages() {
+        // Pages that this transaction already truncated are still in the file
+        // until it commits, so start from the page count it will leave.
+        int oldNumPages = storageManager.getNumPages(dbFile);
+        int numPages = oldNumPages;
+
+        while (numPages > 1) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, numPages - 1);
+            boolean empty =
+                (dbPage.readByte(0) == BTreePageTypes.BTREE_EMPTY_PAGE);
+            dbPage.unpin();
+
+            if (!empty)
+                break;
+
+            numPages--;
+        }
+
+        if (numPages == oldNumPages)
+            return 0;
+
+        logger.debug(String.format("Truncating %d empty pages from the end " +
+            "of BTree file %s", oldNumPages - numPages, dbFile));
+
+        // Unlink the truncated pages from the list of empty pages.
+        DBPage dbpHeader = storageManager.loadDBPage(dbFile, 0);
+        DBPage prevPage = null;
+
+        int pageNo = HeaderPage.getFirstEmptyPageNo(dbpHeader);
+        while (pageNo != 0) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            int nextPageNo = dbPage.readUnsignedShort(1);
+
+            if (pageNo >= numPages) {
+                if (prevPage == null)
+                    HeaderPage.setFirstEmptyPageNo(dbpHeader, nextPageNo);
+                else
+                    prevPage.writeShort(1, nextPageNo);
+
+                dbPage.unpin();
+            } else {
+                if (prevPage != null)
+                    prevPage.unpin();
+
+                prevPage = dbPage;
+            }
+
+            pageNo = nextPageNo;
+        }
+
+        if (prevPage != null)
+            prevPage.unpin();
+
+        dbpHeader.unpin();
+
+        storageManager.truncateDBFile(dbFile, numPages);
+        return oldNumPages - numPages;
+    }
 }
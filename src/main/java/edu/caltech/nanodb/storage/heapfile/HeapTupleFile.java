@@ -3,6 +3,8 @@ package edu.caltech.nanodb.storage.heapfile;
 
 import edu.caltech.nanodb.queryeval.ColumnStats;
 import edu.caltech.nanodb.queryeval.ColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
+import edu.caltech.nanodb.queryeval.MultiColumnStatsCollector;
 import edu.caltech.nanodb.queryeval.TableStats;
 import edu.caltech.nanodb.relations.Schema;
 import edu.caltech.nanodb.relations.Tuple;
@@ -13,12 +15,19 @@ import org.apache.logging.log4j.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 
 /**
- * This class implements the TupleFile interface for heap files.
+ * This class implements the TupleFile interface for heap files.  Each heap
+ * file has a {@link ZoneMap} that summarizes the values in runs of its data
+ * pages, which is kept up to date as tuples are added, updated and deleted,
+ * and which allows filtered scans to skip pages.
  */
-public class HeapTupleFile implements TupleFile {
+public class HeapTupleFile
+    implements CompactableTupleFile, RangeFilteredTupleFile,
+               PageRangeTupleFile {
 
     /**
      * A logging object for reporting anything interesting that happens.
@@ -59,9 +68,15 @@ public class HeapTupleFile implements TupleFile {
     private DBFile dbFile;
 
 
+    /**
+     * The zone map summarizing the contents of this tuple file.
+     */
+    private ZoneMap zoneMap;
+
+
     HeapTupleFile(StorageManager storageManager,
                   HeapTupleFileManager heapFileManager, DBFile dbFile,
-                  Schema schema, TableStats stats) {
+                  ZoneMap zoneMap, Schema schema, TableStats stats) {
         if (storageManager == null)
             throw new IllegalArgumentException("storageManager cannot be null");
 
@@ -71,6 +86,9 @@ public class HeapTupleFile implements TupleFile {
         if (dbFile == null)
             throw new IllegalArgumentException("dbFile cannot be null");
 
+        if (zoneMap == null)
+            throw new IllegalArgumentException("zoneMap cannot be null");
+
         if (schema == null)
             throw new IllegalArgumentException("schema cannot be null");
 
@@ -80,6 +98,7 @@ public class HeapTupleFile implements TupleFile {
         this.storageManager = storageManager;
         this.heapFileManager = heapFileManager;
         this.dbFile = dbFile;
+        this.zoneMap = zoneMap;
         this.schema = schema;
         this.stats = stats;
     }
@@ -107,12 +126,72 @@ public class HeapTupleFile implements TupleFile {
     }
 
 
+    /**
+     * Returns the zone map summarizing the contents of this tuple file.
+     *
+     * @return the zone map summarizing the contents of this tuple file
+     */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
+
+    /**
+     * Returns the page that a scan should move to when it reaches the
+     * specified page.  If the page starts a new zone, zones whose summaries
+     * show that they hold no tuples satisfying the filter are skipped.
+     *
+     * @param pageNo the page that the scan would move to next
+     * @param filter the filter that tuples must satisfy, or {@code null}
+     * @return the page that the scan should move to
+     */
+    private int getNextScanPage(int pageNo, ColumnRangeFilter filter) {
+        if (filter == null || (pageNo - 1) % zoneMap.getPagesPerZone() != 0)
+            return pageNo;
+
+        int scanPageNo = zoneMap.findCandidatePage(pageNo,
+            dbFile.getNumPages(), filter);
+        if (scanPageNo != pageNo) {
+            logger.debug(String.format("Zone map allows skipping pages " +
+                "[%d, %d) of heap file %s", pageNo, scanPageNo, dbFile));
+        }
+        return scanPageNo;
+    }
+
+
     /**
      * Returns the first tuple in this table file, or <tt>null</tt> if
      * there are no tuples in the file.
      */
     @Override
     public Tuple getFirstTuple() {
+        return getFirstTuple(null);
+    }
+
+
+    @Override
+    public Tuple getFirstTuple(ColumnRangeFilter filter) {
+        return getFirstTupleInRange(1, Integer.MAX_VALUE, filter);
+    }
+
+
+    /**
+     * Heap files store tuples in every page after the header page.
+     */
+    @Override
+    public int getFirstDataPageNo() {
+        return 1;
+    }
+
+
+    @Override
+    public Tuple getFirstTupleInRange(int startPageNo, int endPageNo,
+                                      ColumnRangeFilter filter) {
+        if (startPageNo < 1) {
+            throw new IllegalArgumentException(
+                "startPageNo must be at least 1; got " + startPageNo);
+        }
+
         HeapFilePageTuple first = null;
 
         // Scan through the data pages until we hit the end of the table file.
@@ -122,7 +201,9 @@ public class HeapTupleFile implements TupleFile {
         // Header page is page 0, so first data page is page 1.
         page_scan:
         // So we can break out of the outer loop from inside the inner one
-        for (int iPage = 1; /* nothing */ ; iPage++) {
+        for (int iPage = getNextScanPage(startPageNo, filter);
+             iPage < endPageNo;
+             iPage = getNextScanPage(iPage + 1, filter)) {
             // Try to load the page.  If it doesn't exist, exit the loop.
             // implicitly: dbPage.pin()
             DBPage dbPage = storageManager.loadDBPage(dbFile, iPage);
@@ -213,6 +294,19 @@ public class HeapTupleFile implements TupleFile {
      */
     @Override
     public Tuple getNextTuple(Tuple tup) {
+        return getNextTuple(tup, null);
+    }
+
+
+    @Override
+    public Tuple getNextTuple(Tuple tup, ColumnRangeFilter filter) {
+        return getNextTupleInRange(tup, Integer.MAX_VALUE, filter);
+    }
+
+
+    @Override
+    public Tuple getNextTupleInRange(Tuple tup, int endPageNo,
+                                     ColumnRangeFilter filter) {
 
         /* Procedure:
          *   1)  Get slot index of current tuple.
@@ -280,7 +374,11 @@ public class HeapTupleFile implements TupleFile {
             // move on to the next page.
             dbPage.unpin();
 
-            dbPage = storageManager.loadDBPage(dbFile, dbPage.getPageNo() + 1);
+            int nextPageNo = getNextScanPage(dbPage.getPageNo() + 1, filter);
+            if (nextPageNo >= endPageNo)
+                break;  // Hit the end of the range.  Done scanning.
+
+            dbPage = storageManager.loadDBPage(dbFile, nextPageNo);
             if (dbPage == null)
                 break;  // Hit EOF with no more tuples.  Done scanning.
 
@@ -384,6 +482,8 @@ public class HeapTupleFile implements TupleFile {
 
         DataPage.sanityCheck(dbPage);
 
+        zoneMap.tupleAdded(pageNo, pageTup);
+
         // Unpin dbPage since storeNewTuple implicitly pin both tuple and dbPage
         dbPage.unpin();
         headerPage.unpin();
@@ -410,16 +510,21 @@ public class HeapTupleFile implements TupleFile {
             throw new IllegalArgumentException("Tuple must be of type HeapFilePageTuple; got " + tup.getClass());
         }
         HeapFilePageTuple ptup = (HeapFilePageTuple) tup;
+        DBPage dbPage = ptup.getDBPage();
 
         for (Map.Entry<String, Object> entry : newValues.entrySet()) {
             String colName = entry.getKey();
             Object value = entry.getValue();
 
             int colIndex = schema.getColumnIndex(colName);
+            Object oldValue = ptup.getColumnValue(colIndex);
             ptup.setColumnValue(colIndex, value);
+
+            // Record the value as stored, since it may have been coerced.
+            zoneMap.valueUpdated(dbPage.getPageNo(), colIndex, oldValue,
+                ptup.getColumnValue(colIndex));
         }
 
-        DBPage dbPage = ptup.getDBPage();
         DataPage.sanityCheck(dbPage);
 
         storageManager.logDBPageWrite(dbPage);
@@ -436,11 +541,14 @@ public class HeapTupleFile implements TupleFile {
         HeapFilePageTuple ptup = (HeapFilePageTuple) tup;
 
         DBPage dbPage = ptup.getDBPage();
+        zoneMap.tupleRemoved(dbPage.getPageNo(), ptup);
         DataPage.deleteTuple(dbPage, ptup.getSlot());
         DataPage.sanityCheck(dbPage);
 
         if (DataPage.getFreeNext(dbPage) != DataPage.INVALID_PGNO) {
-            // already in free list
+            // already in free list.  The deletion must still be logged, or a
+            // later update record's undo data would bring the tuple back.
+            storageManager.logDBPageWrite(dbPage);
             return;
         }
 
@@ -474,26 +582,45 @@ public class HeapTupleFile implements TupleFile {
      * 2. N(R,c): number of null values of column c in R <br>
      * 3. MAX(R,c): maximum value of column c in R (do not collect for string) <br>
      * 4. MIN(R,c): minimum value of column c in R <br>
+     *
+     * <p>
+     * If only a sample of the data pages is read, the number of tuples is
+     * scaled up from the sampled pages, and each column's statistics are
+     * scaled as described in {@link ColumnStatsCollector#getColumnStats(int)}.
+     * Otherwise, the zone map is also rebuilt, so that its minimum and maximum
+     * values are exact again.
      */
     @Override
-    public void analyze() {
+    public void analyze(int samplePercent) {
         var numCols = schema.numColumns();
 
+        // Page 0 is the header page; every other page is a data page.
+        var numPages = Math.max(0, dbFile.getNumPages() - 1);
+        var fullScan = (samplePercent >= 100);
+        int[] pageNos = fullScan ? null :
+            PageSampler.choosePages(1, numPages + 1, samplePercent, new Random());
+        var numSampled = fullScan ? numPages : pageNos.length;
+
         var numTuples = 0;
-        var numPages = 0;
-        var totalSize = 0;
+        var totalSize = 0L;
         var collectors = new ArrayList<ColumnStatsCollector>();
         for (int i = 0; i < numCols; i++) {
             collectors.add(new ColumnStatsCollector(schema.getColumnInfo(i).getType().getBaseType()));
         }
+        var groupCollectors = new ArrayList<MultiColumnStatsCollector>();
+        for (var group : stats.getMultiColumnStats())
+            groupCollectors.add(new MultiColumnStatsCollector(group));
+
+        if (fullScan)
+            zoneMap.clear();
 
         // For each page
-        for (int iPage = 1; /* dbPage is not null */ ; iPage++) {
+        for (int s = 0; s < numSampled; s++) {
+            var iPage = fullScan ? s + 1 : pageNos[s];
             var page = storageManager.loadDBPage(dbFile, iPage);
             if (page == null)
                 break; // no more page
 
-            numPages++;
             totalSize += DataPage.getTupleDataEnd(page) - DataPage.getTupleDataStart(page);
             // For each tuple in the page
             for (int i = 0; i < DataPage.getNumSlots(page); i++) {
@@ -507,33 +634,331 @@ public class HeapTupleFile implements TupleFile {
                 for (int k = 0; k < numCols; k++) {
                     collectors.get(k).addValue(tup.getColumnValue(k));
                 }
+                for (var groupCollector : groupCollectors)
+                    groupCollector.addTuple(tup);
+                if (fullScan)
+                    zoneMap.tupleAdded(iPage, tup);
                 tup.unpin();
             }
             page.unpin();
         }
 
+        var avgTupleSize = (float) totalSize / numTuples;
+        if (!fullScan && numSampled > 0) {
+            // Scale the sample's tuple count up to the whole file.
+            numTuples = (int) Math.min(Integer.MAX_VALUE - 1,
+                Math.round((double) numTuples * numPages / numSampled));
+        }
+
         // Maintain stats in data structures
         var cols = new ArrayList<ColumnStats>();
         for (int i = 0; i < numCols; i++) {
-            cols.add(collectors.get(i).getColumnStats());
+            cols.add(fullScan ? collectors.get(i).getColumnStats() :
+                collectors.get(i).getColumnStats(numTuples));
         }
-        stats = new TableStats(numPages, numTuples, (float) totalSize / numTuples, cols);
+        var groups = new ArrayList<MultiColumnStats>();
+        for (var groupCollector : groupCollectors) {
+            groups.add(fullScan ? groupCollector.getMultiColumnStats() :
+                groupCollector.getMultiColumnStats(numTuples));
+        }
+        stats = new TableStats(numPages, numTuples, avgTupleSize, cols);
+        stats.setMultiColumnStats(groups);
         // Serialize them
         heapFileManager.saveMetadata(this);
     }
 
 
+    /**
+     * Verifies that the zone map is consistent with the contents of the heap
+     * file.  The heap file's pages are not otherwise checked.
+     */
     @Override
     public List<String> verify() {
-        // TODO!
-        // Right now we will just report that everything is fine.
-        return new ArrayList<>();
+        return zoneMap.verify(this);
     }
 
 
+    /**
+     * Rebuilds the zone map from the contents of the heap file.  This is
+     * used when a heap file is opened that doesn't have a zone map yet.
+     */
+    void rebuildZoneMap() {
+        zoneMap.clear();
+
+        Tuple tup = getFirstTuple();
+        while (tup != null) {
+            zoneMap.tupleAdded(
+                ((HeapFilePageTuple) tup).getDBPage().getPageNo(), tup);
+
+            Tuple next = getNextTuple(tup);
+            tup.unpin();
+            tup = next;
+        }
+    }
+
+
+    /**
+     * Compacts the entire heap file in one shot.  Since no relocation
+     * listener is specified, this operation is only safe when no other
+     * structures (e.g. indexes) refer to the tuples in this file; callers
+     * that must keep indexes up to date should use {@link #compact} instead.
+     */
     @Override
     public void optimize() {
-        // TODO!
-        throw new UnsupportedOperationException("Not yet implemented!");
+        // With an unbounded batch size, a single call does all the work.
+        compact(Integer.MAX_VALUE, null);
+    }
+
+
+    /**
+     * <p>
+     * Compacts the heap file by relocating the tuples in the file's trailing
+     * pages into free space in earlier pages, and then truncating the emptied
+     * pages off the end of the file.  Pages are processed from the end of the
+     * file backward; processing stops when a page's tuples cannot all be
+     * relocated, or when {@code maxPages} pages have been freed.
+     * </p>
+     * <p>
+     * Free space is found by traversing the file's free-page list, so pages
+     * that have fallen off the list will not receive relocated tuples.  A
+     * trailing page is only emptied if <em>all</em> of its tuples have a new
+     * home, so a batch never leaves a page partially relocated.
+     * </p>
+     */
+    @Override
+    public boolean compact(int maxPages, TupleRelocationListener listener) {
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException(
+                "maxPages must be positive; got " + maxPages);
+        }
+
+        // implicitly: headerPage.pin()
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+
+        // Pages that this transaction already emptied are still in the file
+        // until it commits, so start from the page count it will leave.
+        int oldNumPages = storageManager.getNumPages(dbFile);
+        int numPages = oldNumPages;
+
+        // The free space available in each page of the free list, ordered by
+        // page number so that tuples are packed toward the start of the file.
+        TreeMap<Integer, Integer> freeSpace =
+            getFreeSpaceMap(headerPage, numPages);
+
+        boolean moreWork = true;
+        int pagesFreed = 0;
+        while (pagesFreed < maxPages) {
+            // Page 0 is the header page; always leave at least one data page.
+            int tailPageNo = numPages - 1;
+            if (tailPageNo <= 1) {
+                moreWork = false;
+                break;
+            }
+
+            // The tail page can't receive its own tuples.
+            freeSpace.remove(tailPageNo);
+
+            // implicitly: tailPage.pin()
+            DBPage tailPage = storageManager.loadDBPage(dbFile, tailPageNo);
+            boolean emptied = relocateTuples(tailPage, freeSpace, listener);
+            tailPage.unpin();
+
+            if (!emptied) {
+                moreWork = false;
+                break;
+            }
+
+            numPages--;
+            pagesFreed++;
+        }
+
+        if (numPages < oldNumPages) {
+            logger.debug(String.format("Compaction freed %d pages from " +
+                "heap file %s; truncating from %d to %d pages.", pagesFreed,
+                dbFile, oldNumPages, numPages));
+
+            // The free list must not refer to any of the truncated pages.
+            removeFreePagesFrom(headerPage, numPages);
+            storageManager.logDBPageWrite(headerPage);
+
+            storageManager.truncateDBFile(dbFile, numPages);
+
+            // Keep the page-count statistic current; the other statistics are
+            // not affected by moving tuples around.
+            stats.numDataPages = numPages - 1;
+            heapFileManager.saveMetadata(this);
+        }
+
+        headerPage.unpin();
+        return moreWork;
+    }
+
+
+    /**
+     * This helper traverses the heap file's free-page list, recording the
+     * amount of free space in each listed page that is before the specified
+     * page number.
+     *
+     * @param headerPage the header page of the heap file
+     * @param numPages only pages before this page number are recorded
+     * @return a map from page numbers to free space, ordered by page number
+     */
+    private TreeMap<Integer, Integer> getFreeSpaceMap(DBPage headerPage,
+                                                      int numPages) {
+        TreeMap<Integer, Integer> freeSpace = new TreeMap<>();
+
+        int pageNo = HeaderPage.getFreeHead(headerPage);
+        while (pageNo > 0) {
+            // implicitly: dbPage.pin()
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            if (pageNo < numPages)
+                freeSpace.put(pageNo, DataPage.getFreeSpaceInPage(dbPage));
+
+            pageNo = DataPage.getFreeNext(dbPage);
+            dbPage.unpin();
+        }
+
+        return freeSpace;
+    }
+
+
+    /**
+     * This helper moves every tuple in the specified page into other pages
+     * with enough free space, as recorded in the {@code freeSpace} map.  Homes
+     * are found for all tuples before any tuples are moved; if some tuple
+     * won't fit anywhere, the page is left untouched.
+     *
+     * @param dbPage the page to empty out
+     * @param freeSpace the free space available in candidate pages; this is
+     *                  updated to reflect the tuples that are moved
+     * @param listener an optional listener to inform of relocated tuples
+     * @return {@code true} if the page was emptied, or {@code false} if it
+     *         was left untouched
+     */
+    private boolean relocateTuples(DBPage dbPage,
+        TreeMap<Integer, Integer> freeSpace, TupleRelocationListener listener) {
+
+        // Plan where each tuple will go, using first-fit.  The "+ 2" is for
+        // the new slot entry, as in addTuple().
+        int numSlots = DataPage.getNumSlots(dbPage);
+        ArrayList<Integer> slots = new ArrayList<>();
+        ArrayList<Integer> targets = new ArrayList<>();
+        TreeMap<Integer, Integer> plannedSpace = new TreeMap<>(freeSpace);
+
+        for (int iSlot = 0; iSlot < numSlots; iSlot++) {
+            if (DataPage.getSlotValue(dbPage, iSlot) == DataPage.EMPTY_SLOT)
+                continue;
+
+            int required = DataPage.getTupleLength(dbPage, iSlot) + 2;
+
+            int target = 0;
+            for (Map.Entry<Integer, Integer> entry : plannedSpace.entrySet()) {
+                if (entry.getValue() >= required) {
+                    target = entry.getKey();
+                    entry.setValue(entry.getValue() - required);
+                    break;
+                }
+            }
+
+            if (target == 0) {
+                logger.debug(String.format("Can't relocate tuple in slot " +
+                    "%d of page %d; stopping compaction.", iSlot,
+                    dbPage.getPageNo()));
+                return false;
+            }
+
+            slots.add(iSlot);
+            targets.add(target);
+        }
+
+        // Now move the tuples.  The tuple data is copied directly, since the
+        // tuple's format doesn't depend on where it is stored.
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+
+            // Deleting earlier tuples shifts later tuples' data, so the offset
+            // and length must be retrieved just before the move.
+            int offset = DataPage.getSlotValue(dbPage, slot);
+            int length = DataPage.getTupleLength(dbPage, slot);
+            byte[] data = new byte[length];
+            dbPage.read(offset, data);
+
+            // implicitly: targetPage.pin()
+            DBPage targetPage = storageManager.loadDBPage(dbFile, targets.get(i));
+            int newSlot = DataPage.allocNewTuple(targetPage, length);
+            int newOffset = DataPage.getSlotValue(targetPage, newSlot);
+            targetPage.write(newOffset, data);
+            DataPage.sanityCheck(targetPage);
+
+            HeapFilePageTuple oldTup =
+                new HeapFilePageTuple(schema, dbPage, slot, offset);
+            HeapFilePageTuple newTup =
+                new HeapFilePageTuple(schema, targetPage, newSlot, newOffset);
+
+            zoneMap.tupleAdded(targetPage.getPageNo(), newTup);
+            zoneMap.tupleRemoved(dbPage.getPageNo(), oldTup);
+
+            if (listener != null)
+                listener.tupleRelocated(oldTup, newTup);
+
+            oldTup.unpin();
+            newTup.unpin();
+
+            DataPage.deleteTuple(dbPage, slot);
+
+            freeSpace.put(targetPage.getPageNo(),
+                DataPage.getFreeSpaceInPage(targetPage));
+
+            storageManager.logDBPageWrite(targetPage);
+            targetPage.unpin();
+        }
+
+        DataPage.sanityCheck(dbPage);
+        storageManager.logDBPageWrite(dbPage);
+
+        return true;
+    }
+
+
+    /**
+     * This helper removes all pages at or past the specified page number from
+     * the heap file's free-page list, so that the pages can be truncated from
+     * the file.
+     *
+     * @param headerPage the header page of the heap file
+     * @param numPages pages at or past this page number are removed
+     */
+    private void removeFreePagesFrom(DBPage headerPage, int numPages) {
+        DBPage prevPage = null;
+
+        int pageNo = HeaderPage.getFreeHead(headerPage);
+        while (pageNo > 0) {
+            // implicitly: dbPage.pin()
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            int nextPageNo = DataPage.getFreeNext(dbPage);
+
+            if (pageNo >= numPages) {
+                // Unlink this page from the list.
+                if (prevPage == null)
+                    HeaderPage.setFreeHead(headerPage, nextPageNo);
+                else
+                    DataPage.setFreeNext(prevPage, nextPageNo);
+
+                dbPage.unpin();
+            } else {
+                if (prevPage != null) {
+                    storageManager.logDBPageWrite(prevPage);
+                    prevPage.unpin();
+                }
+                prevPage = dbPage;
+            }
+
+            pageNo = nextPageNo;
+        }
+
+        if (prevPage != null) {
+            storageManager.logDBPageWrite(prevPage);
+            prevPage.unpin();
+        }
     }
 }
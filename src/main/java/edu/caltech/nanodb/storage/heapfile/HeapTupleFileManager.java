@@ -6,9 +6,11 @@ import org.apache.logging.log4j.Logger;
 
 import edu.caltech.nanodb.queryeval.TableStats;
 import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.server.properties.ServerProperties;
 import edu.caltech.nanodb.storage.DBFile;
 import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileManager;
 import edu.caltech.nanodb.storage.PageReader;
 import edu.caltech.nanodb.storage.PageWriter;
 import edu.caltech.nanodb.storage.SchemaWriter;
@@ -62,13 +64,50 @@ public class HeapTupleFileManager implements TupleFileManager {
             dbFile, schema.numColumns()));
 
         TableStats stats = new TableStats(schema.numColumns());
+        ZoneMap zoneMap = createZoneMap(dbFile, schema);
         HeapTupleFile tupleFile = new HeapTupleFile(storageManager, this,
-            dbFile, schema, stats);
+            dbFile, zoneMap, schema, stats);
         saveMetadata(tupleFile);
         return tupleFile;
     }
 
 
+    /**
+     * Returns the name of the file holding the zone map of the specified
+     * heap file.
+     *
+     * @param dbFile the heap file
+     * @return the name of the file holding the heap file's zone map
+     */
+    public static String getZoneMapFileName(DBFile dbFile) {
+        String name = dbFile.getDataFile().getName();
+        return name.replaceAll("\\.tbl$", "") + ".zmap";
+    }
+
+
+    /**
+     * Creates a new, empty zone map for the specified heap file.  The zone
+     * map file uses the same page size and compression as the heap file.
+     * Any zone map file left over from a previous table of the same name is
+     * replaced.
+     */
+    private ZoneMap createZoneMap(DBFile dbFile, Schema schema) {
+        FileManager fileManager = storageManager.getFileManager();
+        String zmFileName = getZoneMapFileName(dbFile);
+        if (fileManager.fileExists(zmFileName))
+            fileManager.deleteDBFile(zmFileName);
+
+        DBFile zmFile = fileManager.createDBFile(zmFileName,
+            DBFileType.ZONE_MAP_FILE, dbFile.getPageSize(),
+            dbFile.isCompressed());
+
+        int pagesPerZone = storageManager.getServer().getPropertyRegistry()
+            .getIntProperty(ServerProperties.PROP_ZONEMAP_PAGES_PER_ZONE);
+
+        return ZoneMap.create(storageManager, zmFile, schema, pagesPerZone);
+    }
+
+
     @Override
     public TupleFile openTupleFile(DBFile dbFile) {
 
@@ -92,7 +131,23 @@ public class HeapTupleFileManager implements TupleFileManager {
         // Unpin header since no need for header
         headerPage.unpin();
 
-        return new HeapTupleFile(storageManager, this, dbFile, schema, stats);
+        // Open the zone map.  Heap files created before zone maps existed
+        // don't have one, so build one for them.
+        FileManager fileManager = storageManager.getFileManager();
+        String zmFileName = getZoneMapFileName(dbFile);
+        if (fileManager.fileExists(zmFileName)) {
+            DBFile zmFile = fileManager.openDBFile(zmFileName);
+            ZoneMap zoneMap = ZoneMap.open(storageManager, zmFile, schema);
+            return new HeapTupleFile(storageManager, this, dbFile, zoneMap,
+                schema, stats);
+        }
+
+        logger.info("Heap tuple file " + dbFile + " has no zone map; " +
+            "building one now");
+        HeapTupleFile tupleFile = new HeapTupleFile(storageManager, this,
+            dbFile, createZoneMap(dbFile, schema), schema, stats);
+        tupleFile.rebuildZoneMap();
+        return tupleFile;
     }
 
 
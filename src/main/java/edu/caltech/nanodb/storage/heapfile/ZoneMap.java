@@ -0,0 +1,600 @@
+package edu.caltech.nanodb.storage.heapfile;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.ColumnRangeFilter;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.StorageManager;
+
+
+/**
+ * <p>
+ * A zone map is a compact side file that summarizes the contents of a heap
+ * file, so that scans can skip over runs of pages that cannot contain any
+ * tuple satisfying the scan's predicate.  The heap file's data pages are
+ * grouped into <em>zones</em> of a fixed number of consecutive pages, and for
+ * each zone the zone map records the number of tuples in the zone, and for
+ * each summarized column, the number of <tt>NULL</tt> values and the
+ * minimum and maximum non-<tt>NULL</tt> values.
+ * </p>
+ * <p>
+ * Only columns with small, fixed-size types are summarized; in particular,
+ * <tt>VARCHAR</tt> columns are not.  The tuple and <tt>NULL</tt> counts are
+ * kept exact, but the minimum and maximum are only ever widened as tuples are
+ * added or updated, so they always bound the zone's values but may become
+ * loose.  {@link HeapTupleFile#analyze} rebuilds the zone map, which makes
+ * the bounds tight again.
+ * </p>
+ * <p>
+ * The zone map is stored in its own {@link DBFile}, and its pages are
+ * modified and logged along with the heap file's pages, so that it remains
+ * consistent with the heap file across rollbacks and recovery.  Page 0 of
+ * the file holds the number of heap pages in each zone, and the indexes of
+ * the summarized columns.  The remaining pages hold an array of fixed-size
+ * zone entries.
+ * </p>
+ */
+public class ZoneMap {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(ZoneMap.class);
+
+
+    /**
+     * The offset in the header page where the number of heap pages in each
+     * zone is stored.  This value is an unsigned short.
+     */
+    public static final int OFFSET_PAGES_PER_ZONE = 2;
+
+
+    /**
+     * The offset in the header page where the number of summarized columns
+     * is stored.  This value is an unsigned short.
+     */
+    public static final int OFFSET_NUM_COLUMNS = 4;
+
+
+    /**
+     * The offset in the header page where the indexes of the summarized
+     * columns start.  Each index is an unsigned short.
+     */
+    public static final int OFFSET_COLUMNS = 6;
+
+
+    /** Columns whose values are wider than this are not summarized. */
+    private static final int MAX_SUMMARY_WIDTH = 16;
+
+
+    /** The storage manager used to access the zone map's pages. */
+    private StorageManager storageManager;
+
+
+    /** The file holding the zone map. */
+    private DBFile dbFile;
+
+
+    /** The schema of the heap file being summarized. */
+    private Schema schema;
+
+
+    /** The number of heap data pages in each zone. */
+    private int pagesPerZone;
+
+
+    /**
+     * The summary slot of each column of the schema, or -1 if the column is
+     * not summarized.
+     */
+    private int[] slotOfColumn;
+
+
+    /** The index of the column summarized in each slot. */
+    private int[] columnOfSlot;
+
+
+    /** The offset of each slot's summary within a zone entry. */
+    private int[] slotOffsets;
+
+
+    /** The storage width of the values in each slot. */
+    private int[] slotWidths;
+
+
+    /** The size of each zone entry. */
+    private int entrySize;
+
+
+    /** The number of zone entries in each page of the zone map. */
+    private int entriesPerPage;
+
+
+    private ZoneMap(StorageManager storageManager, DBFile dbFile,
+                    Schema schema, int pagesPerZone, int[] columns) {
+        this.storageManager = storageManager;
+        this.dbFile = dbFile;
+        this.schema = schema;
+        this.pagesPerZone = pagesPerZone;
+
+        slotOfColumn = new int[schema.numColumns()];
+        Arrays.fill(slotOfColumn, -1);
+
+        columnOfSlot = columns;
+        slotOffsets = new int[columns.length];
+        slotWidths = new int[columns.length];
+
+        // Each entry starts with the number of tuples in the zone.
+        int offset = 4;
+        for (int slot = 0; slot < columns.length; slot++) {
+            slotOfColumn[columns[slot]] = slot;
+            slotOffsets[slot] = offset;
+            slotWidths[slot] = getSummaryWidth(
+                schema.getColumnInfo(columns[slot]).getType());
+
+            // NULL-count, min/max flag, minimum, maximum
+            offset += 5 + 2 * slotWidths[slot];
+        }
+        entrySize = offset;
+        entriesPerPage = dbFile.getPageSize() / entrySize;
+    }
+
+
+    /**
+     * Returns the width of the specified column type's values in a zone
+     * entry, or -1 if columns of the type are not summarized.
+     */
+    private static int getSummaryWidth(ColumnType colType) {
+        if (colType.getBaseType() == SQLDataType.VARCHAR)
+            return -1;
+
+        int width = PageTuple.getStorageSize(colType, 0);
+        return (width <= MAX_SUMMARY_WIDTH) ? width : -1;
+    }
+
+
+    /**
+     * Initializes a new zone map in the specified (newly created) file.
+     * Columns are chosen for summarizing in schema order, as long as each
+     * zone entry stays small enough that many entries fit into a page.
+     *
+     * @param storageManager the storage manager to access pages through
+     * @param dbFile the newly created zone map file
+     * @param schema the schema of the heap file being summarized
+     * @param pagesPerZone the number of heap data pages in each zone
+     * @return the new zone map
+     */
+    public static ZoneMap create(StorageManager storageManager, DBFile dbFile,
+                                 Schema schema, int pagesPerZone) {
+        if (pagesPerZone < 1 || pagesPerZone > 65535) {
+            throw new IllegalArgumentException(
+                "pagesPerZone must be in the range [1, 65535]; got " +
+                pagesPerZone);
+        }
+
+        // Keep at least eight entries in each page, and make sure the
+        // column list fits in the header page.
+        int maxEntrySize = dbFile.getPageSize() / 8;
+        int maxColumns = (dbFile.getPageSize() - OFFSET_COLUMNS) / 2;
+
+        ArrayList<Integer> columns = new ArrayList<>();
+        int entrySize = 4;
+        for (int i = 0; i < schema.numColumns() && columns.size() < maxColumns; i++) {
+            int width = getSummaryWidth(schema.getColumnInfo(i).getType());
+            if (width < 0 || entrySize + 5 + 2 * width > maxEntrySize)
+                continue;
+
+            columns.add(i);
+            entrySize += 5 + 2 * width;
+        }
+
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        headerPage.writeShort(OFFSET_PAGES_PER_ZONE, pagesPerZone);
+        headerPage.writeShort(OFFSET_NUM_COLUMNS, columns.size());
+        for (int i = 0; i < columns.size(); i++)
+            headerPage.writeShort(OFFSET_COLUMNS + 2 * i, columns.get(i));
+        headerPage.unpin();
+        storageManager.logDBPageWrite(headerPage);
+
+        logger.debug(String.format("Created zone map %s with %d pages per " +
+            "zone, summarizing columns %s", dbFile, pagesPerZone, columns));
+
+        return new ZoneMap(storageManager, dbFile, schema, pagesPerZone,
+            columns.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+
+    /**
+     * Opens an existing zone map from the specified file.
+     *
+     * @param storageManager the storage manager to access pages through
+     * @param dbFile the zone map file
+     * @param schema the schema of the heap file being summarized
+     * @return the zone map
+     */
+    public static ZoneMap open(StorageManager storageManager, DBFile dbFile,
+                               Schema schema) {
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        int pagesPerZone = headerPage.readUnsignedShort(OFFSET_PAGES_PER_ZONE);
+        int[] columns = new int[headerPage.readUnsignedShort(OFFSET_NUM_COLUMNS)];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = headerPage.readUnsignedShort(OFFSET_COLUMNS + 2 * i);
+        headerPage.unpin();
+
+        return new ZoneMap(storageManager, dbFile, schema, pagesPerZone,
+            columns);
+    }
+
+
+    /**
+     * Returns the file holding the zone map.
+     *
+     * @return the file holding the zone map
+     */
+    public DBFile getDBFile() {
+        return dbFile;
+    }
+
+
+    /**
+     * Returns the number of heap data pages in each zone.
+     *
+     * @return the number of heap data pages in each zone
+     */
+    public int getPagesPerZone() {
+        return pagesPerZone;
+    }
+
+
+    /**
+     * Returns true if the specified column of the heap file is summarized.
+     *
+     * @param colIndex the index of the column in the heap file's schema
+     * @return true if the column is summarized
+     */
+    public boolean isSummarized(int colIndex) {
+        return slotOfColumn[colIndex] >= 0;
+    }
+
+
+    private int getZone(int heapPageNo) {
+        // Heap page 0 is the header page, so zone 0 starts at data page 1.
+        return (heapPageNo - 1) / pagesPerZone;
+    }
+
+
+    private int getFirstPageOfZone(int zone) {
+        return 1 + zone * pagesPerZone;
+    }
+
+
+    private int getEntryOffset(int zone) {
+        return (zone % entriesPerPage) * entrySize;
+    }
+
+
+    /**
+     * Loads the zone map page holding the specified zone's entry, creating
+     * the page if requested and necessary.
+     */
+    private DBPage loadEntryPage(int zone, boolean create) {
+        return storageManager.loadDBPage(dbFile, 1 + zone / entriesPerPage,
+            create);
+    }
+
+
+    private Object readValue(DBPage dbPage, int offset, int slot) {
+        ColumnType colType = schema.getColumnInfo(columnOfSlot[slot]).getType();
+        return dbPage.readObject(offset, colType);
+    }
+
+
+    private void writeValue(DBPage dbPage, int offset, int slot, Object value) {
+        ColumnType colType = schema.getColumnInfo(columnOfSlot[slot]).getType();
+        dbPage.writeObject(offset, colType, value);
+    }
+
+
+    /**
+     * Widens a slot's minimum and maximum to include the specified
+     * non-<tt>NULL</tt> value.
+     */
+    @SuppressWarnings("unchecked")
+    private void widen(DBPage dbPage, int entryOffset, int slot, Object value) {
+        int flagOffset = entryOffset + slotOffsets[slot] + 4;
+        int minOffset = flagOffset + 1;
+        int maxOffset = minOffset + slotWidths[slot];
+
+        if (dbPage.readByte(flagOffset) == 0) {
+            writeValue(dbPage, minOffset, slot, value);
+            writeValue(dbPage, maxOffset, slot, value);
+            dbPage.writeByte(flagOffset, 1);
+            return;
+        }
+
+        Comparable cmpValue = (Comparable) value;
+        if (cmpValue.compareTo(readValue(dbPage, minOffset, slot)) < 0)
+            writeValue(dbPage, minOffset, slot, value);
+        else if (cmpValue.compareTo(readValue(dbPage, maxOffset, slot)) > 0)
+            writeValue(dbPage, maxOffset, slot, value);
+    }
+
+
+    private void addToNullCount(DBPage dbPage, int entryOffset, int slot,
+                                int delta) {
+        int offset = entryOffset + slotOffsets[slot];
+        dbPage.writeInt(offset, dbPage.readInt(offset) + delta);
+    }
+
+
+    /**
+     * Records that a tuple has been added to the specified heap page.
+     *
+     * @param heapPageNo the heap page that the tuple was added to
+     * @param tup the tuple that was added
+     */
+    public void tupleAdded(int heapPageNo, Tuple tup) {
+        int zone = getZone(heapPageNo);
+        DBPage dbPage = loadEntryPage(zone, true);
+        int entryOffset = getEntryOffset(zone);
+
+        dbPage.writeInt(entryOffset, dbPage.readInt(entryOffset) + 1);
+        for (int slot = 0; slot < columnOfSlot.length; slot++) {
+            Object value = tup.getColumnValue(columnOfSlot[slot]);
+            if (value == null)
+                addToNullCount(dbPage, entryOffset, slot, 1);
+            else
+                widen(dbPage, entryOffset, slot, value);
+        }
+
+        dbPage.unpin();
+        storageManager.logDBPageWrite(dbPage);
+    }
+
+
+    /**
+     * Records that a tuple is about to be removed from the specified heap
+     * page.  The tuple's values must still be readable.
+     *
+     * @param heapPageNo the heap page that the tuple is being removed from
+     * @param tup the tuple being removed
+     */
+    public void tupleRemoved(int heapPageNo, Tuple tup) {
+        int zone = getZone(heapPageNo);
+        DBPage dbPage = loadEntryPage(zone, true);
+        int entryOffset = getEntryOffset(zone);
+
+        dbPage.writeInt(entryOffset, dbPage.readInt(entryOffset) - 1);
+        for (int slot = 0; slot < columnOfSlot.length; slot++) {
+            if (tup.isNullValue(columnOfSlot[slot]))
+                addToNullCount(dbPage, entryOffset, slot, -1);
+        }
+
+        dbPage.unpin();
+        storageManager.logDBPageWrite(dbPage);
+    }
+
+
+    /**
+     * Records that a column value of a tuple on the specified heap page has
+     * been changed.
+     *
+     * @param heapPageNo the heap page holding the tuple
+     * @param colIndex the index of the column that was changed
+     * @param oldValue the column's previous value
+     * @param newValue the column's new value, as stored in the tuple
+     */
+    public void valueUpdated(int heapPageNo, int colIndex, Object oldValue,
+                             Object newValue) {
+        int slot = slotOfColumn[colIndex];
+        if (slot < 0)
+            return;
+
+        int zone = getZone(heapPageNo);
+        DBPage dbPage = loadEntryPage(zone, true);
+        int entryOffset = getEntryOffset(zone);
+
+        if (oldValue == null)
+            addToNullCount(dbPage, entryOffset, slot, -1);
+
+        if (newValue == null)
+            addToNullCount(dbPage, entryOffset, slot, 1);
+        else
+            widen(dbPage, entryOffset, slot, newValue);
+
+        dbPage.unpin();
+        storageManager.logDBPageWrite(dbPage);
+    }
+
+
+    /**
+     * Resets every zone of the zone map to be empty, so that the zone map
+     * can be rebuilt from the heap file's contents.
+     */
+    public void clear() {
+        for (int pageNo = 1; ; pageNo++) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            if (dbPage == null)
+                break;
+
+            dbPage.setDataRange(0, dbFile.getPageSize(), (byte) 0);
+            dbPage.unpin();
+            storageManager.logDBPageWrite(dbPage);
+        }
+    }
+
+
+    /**
+     * Returns true if some tuple in the specified zone may satisfy the
+     * filter, based on the zone's entry in the specified zone map page.
+     */
+    private boolean zoneMayMatch(DBPage dbPage, int zone,
+                                 ColumnRangeFilter filter) {
+        int entryOffset = getEntryOffset(zone);
+        int numTuples = dbPage.readInt(entryOffset);
+        if (numTuples <= 0)
+            return false;
+
+        for (int colIndex : filter.getColumns()) {
+            int slot = slotOfColumn[colIndex];
+            if (slot < 0)
+                continue;
+
+            int offset = entryOffset + slotOffsets[slot];
+            int nullCount = dbPage.readInt(offset);
+            Object min = null;
+            Object max = null;
+            if (dbPage.readByte(offset + 4) != 0) {
+                min = readValue(dbPage, offset + 5, slot);
+                max = readValue(dbPage, offset + 5 + slotWidths[slot], slot);
+            }
+
+            if (!filter.mayMatch(colIndex, min, max, nullCount, numTuples))
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns the first heap page at or after the specified page whose zone
+     * may contain a tuple satisfying the filter.  Zones without an entry in
+     * the zone map are never skipped.  The returned page number is only a
+     * lower bound on where matching tuples may be, and may be past the end of
+     * the heap file.
+     *
+     * @param heapPageNo the heap page where the scan would continue
+     * @param numHeapPages the number of pages in the heap file
+     * @param filter the filter that tuples must satisfy
+     * @return the first heap page whose zone may contain a matching tuple,
+     *         or a page number at or past {@code numHeapPages} if there is
+     *         no such page
+     */
+    public int findCandidatePage(int heapPageNo, int numHeapPages,
+                                 ColumnRangeFilter filter) {
+        int zone = getZone(heapPageNo);
+        DBPage dbPage = null;
+        try {
+            while (getFirstPageOfZone(zone) < numHeapPages) {
+                int zmPageNo = 1 + zone / entriesPerPage;
+                if (dbPage == null || dbPage.getPageNo() != zmPageNo) {
+                    if (dbPage != null)
+                        dbPage.unpin();
+
+                    dbPage = storageManager.loadDBPage(dbFile, zmPageNo);
+                    if (dbPage == null)
+                        break;  // No summaries for this zone.
+                }
+
+                if (zoneMayMatch(dbPage, zone, filter))
+                    break;
+
+                zone++;
+            }
+        } finally {
+            if (dbPage != null)
+                dbPage.unpin();
+        }
+
+        return Math.max(heapPageNo, getFirstPageOfZone(zone));
+    }
+
+
+    /**
+     * Checks that the zone map agrees with the contents of the heap file:
+     * each zone's tuple and <tt>NULL</tt> counts must be exact, and every
+     * summarized value must lie within its zone's minimum and maximum.
+     *
+     * @param tupleFile the heap file that this zone map summarizes
+     * @return a list of the inconsistencies found
+     */
+    @SuppressWarnings("unchecked")
+    List<String> verify(HeapTupleFile tupleFile) {
+        ArrayList<String> errors = new ArrayList<>();
+
+        int numHeapPages = tupleFile.getDBFile().getNumPages();
+        int numZones = (numHeapPages > 1) ? getZone(numHeapPages - 1) + 1 : 0;
+        int[] counts = new int[numZones];
+        int[][] nullCounts = new int[numZones][columnOfSlot.length];
+
+        Tuple tup = tupleFile.getFirstTuple();
+        while (tup != null) {
+            int heapPageNo = ((HeapFilePageTuple) tup).getDBPage().getPageNo();
+            int zone = getZone(heapPageNo);
+            counts[zone]++;
+
+            DBPage dbPage = loadEntryPage(zone, false);
+            for (int slot = 0; slot < columnOfSlot.length; slot++) {
+                Object value = tup.getColumnValue(columnOfSlot[slot]);
+                if (value == null) {
+                    nullCounts[zone][slot]++;
+                    continue;
+                }
+
+                if (dbPage == null)
+                    continue;  // Reported below.
+
+                int offset = getEntryOffset(zone) + slotOffsets[slot];
+                Comparable cmpValue = (Comparable) value;
+                if (dbPage.readByte(offset + 4) == 0 ||
+                    cmpValue.compareTo(readValue(dbPage, offset + 5, slot)) < 0 ||
+                    cmpValue.compareTo(readValue(dbPage,
+                        offset + 5 + slotWidths[slot], slot)) > 0) {
+                    errors.add(String.format("Value %s of column %d on " +
+                        "page %d is outside of zone %d's range", value,
+                        columnOfSlot[slot], heapPageNo, zone));
+                }
+            }
+            if (dbPage != null)
+                dbPage.unpin();
+
+            Tuple next = tupleFile.getNextTuple(tup);
+            tup.unpin();
+            tup = next;
+        }
+
+        for (int zone = 0; zone < numZones; zone++) {
+            DBPage dbPage = loadEntryPage(zone, false);
+            if (dbPage == null) {
+                if (counts[zone] != 0) {
+                    errors.add(String.format("Zone %d holds %d tuples but " +
+                        "has no zone map entry", zone, counts[zone]));
+                }
+                continue;
+            }
+
+            int entryOffset = getEntryOffset(zone);
+            int numTuples = dbPage.readInt(entryOffset);
+            if (numTuples != counts[zone]) {
+                errors.add(String.format("Zone %d records %d tuples; " +
+                    "found %d", zone, numTuples, counts[zone]));
+            }
+
+            for (int slot = 0; slot < columnOfSlot.length; slot++) {
+                int nullCount = dbPage.readInt(entryOffset + slotOffsets[slot]);
+                if (nullCount != nullCounts[zone][slot]) {
+                    errors.add(String.format("Zone %d records %d NULLs in " +
+                        "column %d; found %d", zone, nullCount,
+                        columnOfSlot[slot], nullCounts[zone][slot]));
+                }
+            }
+
+            dbPage.unpin();
+        }
+
+        return errors;
+    }
+}
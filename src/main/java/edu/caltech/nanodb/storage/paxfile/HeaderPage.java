@@ -0,0 +1,128 @@
+package edu.caltech.nanodb.storage.paxfile;
+
+
+import edu.caltech.nanodb.storage.DBPage;
+
+
+/**
+ * <p>
+ * This class contains constants and basic functionality for accessing and
+ * manipulating the contents of the header page of a PAX tuple file.  As with
+ * all <tt>DBFile</tt>s, the first two bytes of the header page are the file
+ * type and page size.  The header page is laid out as follows:
+ * </p>
+ * <ul>
+ *   <li>The size of the table's schema, and the size of the table's
+ *       statistics.</li>
+ *   <li>The table's schema, as written by
+ *       {@link edu.caltech.nanodb.storage.SchemaWriter}.</li>
+ *   <li>The table's statistics, as written by
+ *       {@link edu.caltech.nanodb.storage.StatsWriter}.</li>
+ * </ul>
+ */
+public class HeaderPage {
+
+    /**
+     * The offset in the header page where the size of the table schema is
+     * stored.  This value is an unsigned short.
+     */
+    public static final int OFFSET_SCHEMA_SIZE = 2;
+
+
+    /**
+     * The offset in the header page where the size of the table statistics
+     * are stored.  This value is an unsigned short.
+     */
+    public static final int OFFSET_STATS_SIZE = 4;
+
+
+    /**
+     * The offset in the header page where the table schema starts.
+     */
+    public static final int OFFSET_SCHEMA_START = 6;
+
+
+    /**
+     * This helper method simply verifies that the data page provided to the
+     * <tt>HeaderPage</tt> class is in fact a header-page (i.e. page 0 in the
+     * data file).
+     *
+     * @param dbPage the page to check
+     * @throws IllegalArgumentException if <tt>dbPage</tt> is <tt>null</tt>, or
+     *         if it's not actually page 0 in the table file
+     */
+    private static void verifyIsHeaderPage(DBPage dbPage) {
+        if (dbPage == null)
+            throw new IllegalArgumentException("dbPage cannot be null");
+
+        if (dbPage.getPageNo() != 0) {
+            throw new IllegalArgumentException(
+                "Page 0 is the header page in this storage format; was given page " +
+                    dbPage.getPageNo());
+        }
+    }
+
+
+    /**
+     * Returns the number of bytes that the table's schema occupies for storage
+     * in the header page.
+     *
+     * @param dbPage the header page of the PAX tuple file
+     * @return the number of bytes that the table's schema occupies
+     */
+    public static int getSchemaSize(DBPage dbPage) {
+        verifyIsHeaderPage(dbPage);
+        return dbPage.readUnsignedShort(OFFSET_SCHEMA_SIZE);
+    }
+
+
+    /**
+     * Sets the number of bytes that the table's schema occupies for storage
+     * in the header page.
+     *
+     * @param dbPage   the header page of the PAX tuple file
+     * @param numBytes the number of bytes that the table's schema occupies
+     */
+    public static void setSchemaSize(DBPage dbPage, int numBytes) {
+        verifyIsHeaderPage(dbPage);
+
+        if (numBytes < 0) {
+            throw new IllegalArgumentException(
+                "numBytes must be >= 0; got " + numBytes);
+        }
+
+        dbPage.writeShort(OFFSET_SCHEMA_SIZE, numBytes);
+    }
+
+
+    /**
+     * Returns the number of bytes that the table's statistics occupy for
+     * storage in the header page.
+     *
+     * @param dbPage the header page of the PAX tuple file
+     * @return the number of bytes that the table's statistics occupy
+     */
+    public static int getStatsSize(DBPage dbPage) {
+        verifyIsHeaderPage(dbPage);
+        return dbPage.readUnsignedShort(OFFSET_STATS_SIZE);
+    }
+
+
+    /**
+     * Sets the number of bytes that the table's statistics occupy for storage
+     * in the header page.
+     *
+     * @param dbPage   the header page of the PAX tuple file
+     * @param numBytes the number of bytes that the table's statistics occupy
+     */
+    public static void setStatsSize(DBPage dbPage, int numBytes) {
+        verifyIsHeaderPage(dbPage);
+
+        if (numBytes < 0) {
+            throw new IllegalArgumentException(
+                "numBytes must be >= 0; got " + numBytes);
+        }
+
+        dbPage.writeShort(OFFSET_STATS_SIZE, numBytes);
+    }
+}
@@ -0,0 +1,160 @@
+package edu.caltech.nanodb.storage.paxfile;
+
+
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FilePointer;
+
+
+/**
+ * This class implements the {@link Tuple} interface for rows stored in the
+ * data pages of a PAX tuple file.  Values are read straight out of each
+ * column's minipage when they are requested, so only the columns that are
+ * actually used are ever decoded.
+ */
+public class PaxFilePageTuple implements Tuple {
+
+    /** The layout of the data page holding the row. */
+    private PaxPageLayout layout;
+
+
+    /** The data page holding the row. */
+    private DBPage dbPage;
+
+
+    /** The index of the row within the data page. */
+    private int row;
+
+
+    /** The pin-count of this tuple. */
+    private int pinCount;
+
+
+    /**
+     * Construct a new tuple object that is backed by a row in a PAX data
+     * page.  The tuple pins the page, and the page is expected to already be
+     * pinned by the caller.
+     *
+     * @param layout the layout of the data page holding the row
+     * @param dbPage the data page holding the row
+     * @param row    the index of the row within the data page
+     */
+    public PaxFilePageTuple(PaxPageLayout layout, DBPage dbPage, int row) {
+        if (layout == null)
+            throw new IllegalArgumentException("layout cannot be null");
+
+        if (dbPage == null)
+            throw new IllegalArgumentException("dbPage cannot be null");
+
+        this.layout = layout;
+        this.dbPage = dbPage;
+        this.row = row;
+
+        pin();
+    }
+
+
+    public DBPage getDBPage() {
+        return dbPage;
+    }
+
+
+    public int getRow() {
+        return row;
+    }
+
+
+    @Override
+    public boolean isDiskBacked() {
+        return true;
+    }
+
+
+    @Override
+    public int getColumnCount() {
+        return layout.getNumColumns();
+    }
+
+
+    @Override
+    public boolean isNullValue(int colIndex) {
+        return layout.isNull(dbPage, row, colIndex);
+    }
+
+
+    @Override
+    public Object getColumnValue(int colIndex) {
+        return layout.readValue(dbPage, row, colIndex);
+    }
+
+
+    /**
+     * PAX tuple files are append-only, so the values of a stored row can't
+     * be changed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setColumnValue(int colIndex, Object value) {
+        throw new UnsupportedOperationException(
+            "Rows in PAX tuple files can't be modified");
+    }
+
+
+    /**
+     * Returns an external reference to the tuple, consisting of the data
+     * page's number and the row's index within the page.
+     *
+     * @return a file-pointer that can be used to look up this tuple
+     */
+    @Override
+    public FilePointer getExternalReference() {
+        return new FilePointer(dbPage.getPageNo(), row);
+    }
+
+
+    @Override
+    public void pin() {
+        dbPage.pin();
+        pinCount++;
+    }
+
+
+    @Override
+    public void unpin() {
+        if (pinCount <= 0) {
+            throw new IllegalStateException(
+                "pinCount is not positive (value is " + pinCount + ")");
+        }
+
+        pinCount--;
+        dbPage.unpin();
+    }
+
+
+    @Override
+    public int getPinCount() {
+        return pinCount;
+    }
+
+
+    @Override
+    public boolean isPinned() {
+        return pinCount > 0;
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("PAX[");
+        for (int i = 0; i < getColumnCount(); i++) {
+            if (i > 0)
+                buf.append(',');
+
+            Object obj = getColumnValue(i);
+            buf.append(obj == null ? "NULL" : obj);
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+}
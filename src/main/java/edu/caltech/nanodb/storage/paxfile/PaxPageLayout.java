@@ -0,0 +1,454 @@
+package edu.caltech.nanodb.storage.paxfile;
+
+
+import edu.caltech.nanodb.expressions.TypeConverter;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.TupleFileException;
+
+
+/**
+ * <p>
+ * This class computes and provides access to the layout of the data pages
+ * in a PAX tuple file.  Every data page holds up to a fixed number of rows
+ * (the page's <em>capacity</em>), and stores each column's values together
+ * in a "minipage," so that reading one column of many rows touches a small,
+ * contiguous part of the page.  Data pages are laid out as follows:
+ * </p>
+ * <ul>
+ *   <li>The number of rows that have been allocated in the page (unsigned
+ *       short), followed by the number of those rows that have not been
+ *       deleted (unsigned short).</li>
+ *   <li>A bitmap with one bit per row, set when the row has been deleted.
+ *       Since PAX tuple files are append-only, no bits are currently set,
+ *       but scans and verification still honor the bitmap.</li>
+ *   <li>For each column, a summary of the column's values in the page:  the
+ *       number of live rows whose value is <tt>NULL</tt> (unsigned short), a
+ *       flag byte that is nonzero when the minimum and maximum are valid, and
+ *       the minimum and maximum values themselves, each stored in a slot of
+ *       the column's width.</li>
+ *   <li>For each column, the column's minipage:  a bitmap with one bit per
+ *       row, set when the row's value is <tt>NULL</tt>, followed by one slot
+ *       of the column's width for each row.</li>
+ * </ul>
+ * <p>
+ * The minimum and maximum are widened as values are written, so they always
+ * bound the values in the page.  The null-counts are kept exact.
+ * </p>
+ *
+ * @design Unlike the other page classes, this class is instantiated, since
+ *         the offsets of everything but the first few values depend on the
+ *         table's schema.  They are computed once per tuple file.
+ *
+ * @design Every value occupies a fixed-width slot so that a row's value can
+ *         be found without examining any other rows.  <tt>VARCHAR</tt>
+ *         columns are therefore stored at their maximum length, so this
+ *         format is a poor choice for tables with long, sparsely-filled
+ *         strings.
+ */
+public class PaxPageLayout {
+
+    /**
+     * The offset in a data page where the number of allocated rows is
+     * stored.  This value is an unsigned short.
+     */
+    public static final int OFFSET_NUM_ROWS = 0;
+
+
+    /**
+     * The offset in a data page where the number of live rows is stored.
+     * This value is an unsigned short.
+     */
+    public static final int OFFSET_NUM_LIVE_ROWS = 2;
+
+
+    /** The offset in a data page where the deleted-row bitmap starts. */
+    public static final int OFFSET_DELETED_BITMAP = 4;
+
+
+    /** The schema of the tuples stored in the pages. */
+    private Schema schema;
+
+
+    /** The maximum number of rows in each data page. */
+    private int capacity;
+
+
+    /** The storage width of each column's values. */
+    private int[] widths;
+
+
+    /** The offset of each column's summary in a data page. */
+    private int[] summaryOffsets;
+
+
+    /** The offset of each column's minipage in a data page. */
+    private int[] minipageOffsets;
+
+
+    /**
+     * Computes the layout of data pages for the specified schema and page
+     * size.
+     *
+     * @param schema   the schema of the tuples to store
+     * @param pageSize the size of the file's pages
+     * @throws TupleFileException if not even one row fits in a page
+     */
+    public PaxPageLayout(Schema schema, int pageSize) {
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        this.schema = schema;
+
+        int numCols = schema.numColumns();
+        widths = new int[numCols];
+        summaryOffsets = new int[numCols];
+        minipageOffsets = new int[numCols];
+
+        int rowWidth = 0;
+        int summariesSize = 0;
+        for (int i = 0; i < numCols; i++) {
+            widths[i] = getColumnWidth(schema.getColumnInfo(i).getType());
+            rowWidth += widths[i];
+            summariesSize += 3 + 2 * widths[i];
+        }
+
+        // Each row needs its values, plus one bit in the deleted-row bitmap
+        // and in each column's NULL bitmap.  Start from an estimate that
+        // ignores the rounding of the bitmaps, and back off until it fits.
+        int fixedSize = OFFSET_DELETED_BITMAP + summariesSize;
+        int cap = (int) (8L * (pageSize - fixedSize) / (8L * rowWidth + numCols + 1));
+        cap = Math.min(cap, 65535);
+        while (cap > 0 && fixedSize + getBitmapSize(cap) * (numCols + 1) +
+            cap * rowWidth > pageSize) {
+            cap--;
+        }
+
+        if (cap <= 0) {
+            throw new TupleFileException(String.format("Rows of %d bytes " +
+                "are too wide to store in %d-byte PAX pages.", rowWidth,
+                pageSize));
+        }
+        capacity = cap;
+
+        int offset = OFFSET_DELETED_BITMAP + getBitmapSize(capacity);
+        for (int i = 0; i < numCols; i++) {
+            summaryOffsets[i] = offset;
+            offset += 3 + 2 * widths[i];
+        }
+        for (int i = 0; i < numCols; i++) {
+            minipageOffsets[i] = offset;
+            offset += getBitmapSize(capacity) + capacity * widths[i];
+        }
+        assert offset <= pageSize;
+    }
+
+
+    /**
+     * Returns the number of bytes each value of the specified column type
+     * occupies in a PAX page.
+     */
+    private static int getColumnWidth(ColumnType colType) {
+        int dataLength = 0;
+        if (colType.getBaseType() == SQLDataType.VARCHAR)
+            dataLength = colType.getLength();
+
+        return PageTuple.getStorageSize(colType, dataLength);
+    }
+
+
+    private static int getBitmapSize(int numBits) {
+        return (numBits + 7) / 8;
+    }
+
+
+    /**
+     * Returns the maximum number of rows stored in each data page.
+     *
+     * @return the maximum number of rows stored in each data page
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Returns the number of columns in each row.
+     *
+     * @return the number of columns in each row
+     */
+    public int getNumColumns() {
+        return widths.length;
+    }
+
+
+    /**
+     * Returns the sum of the widths of all columns, i.e. the number of bytes
+     * of values that each row occupies.
+     *
+     * @return the number of bytes of values that each row occupies
+     */
+    public int getRowWidth() {
+        int rowWidth = 0;
+        for (int w : widths)
+            rowWidth += w;
+
+        return rowWidth;
+    }
+
+
+    /**
+     * Initializes a newly allocated data page to hold no rows.
+     *
+     * @param dbPage the data page to initialize
+     */
+    public void initNewPage(DBPage dbPage) {
+        // Clear the row counts, the deleted-row bitmap and the summaries.
+        dbPage.setDataRange(0, minipageOffsets.length > 0 ? minipageOffsets[0] :
+            OFFSET_DELETED_BITMAP + getBitmapSize(capacity), (byte) 0);
+
+        // Clear the NULL bitmaps of the minipages; the values themselves
+        // don't need to be cleared.
+        for (int offset : minipageOffsets)
+            dbPage.setDataRange(offset, getBitmapSize(capacity), (byte) 0);
+    }
+
+
+    public int getNumRows(DBPage dbPage) {
+        return dbPage.readUnsignedShort(OFFSET_NUM_ROWS);
+    }
+
+
+    public int getNumLiveRows(DBPage dbPage) {
+        return dbPage.readUnsignedShort(OFFSET_NUM_LIVE_ROWS);
+    }
+
+
+    private static boolean getBit(DBPage dbPage, int bitmapOffset, int index) {
+        int b = dbPage.readUnsignedByte(bitmapOffset + index / 8);
+        return (b & (1 << (index % 8))) != 0;
+    }
+
+
+    private static void setBit(DBPage dbPage, int bitmapOffset, int index,
+                               boolean value) {
+        int offset = bitmapOffset + index / 8;
+        int b = dbPage.readUnsignedByte(offset);
+        int mask = 1 << (index % 8);
+        dbPage.writeByte(offset, value ? (b | mask) : (b & ~mask));
+    }
+
+
+    /**
+     * Returns true if the specified row of the page has been deleted.
+     *
+     * @param dbPage the data page
+     * @param row    the index of the row in the page
+     * @return true if the row has been deleted
+     */
+    public boolean isDeleted(DBPage dbPage, int row) {
+        return getBit(dbPage, OFFSET_DELETED_BITMAP, row);
+    }
+
+
+    /**
+     * Returns true if the specified row of the page exists and has not been
+     * deleted.
+     *
+     * @param dbPage the data page
+     * @param row    the index of the row in the page
+     * @return true if the row is live
+     */
+    public boolean isLive(DBPage dbPage, int row) {
+        return row >= 0 && row < getNumRows(dbPage) && !isDeleted(dbPage, row);
+    }
+
+
+    /**
+     * Allocates a new row at the end of the page, with all of its values set
+     * to <tt>NULL</tt>.  The caller must ensure that the page has room.
+     *
+     * @param dbPage the data page to allocate the row in
+     * @return the index of the new row in the page
+     */
+    public int allocRow(DBPage dbPage) {
+        int row = getNumRows(dbPage);
+        if (row >= capacity) {
+            throw new IllegalStateException("Page " + dbPage.getPageNo() +
+                " has no room for another row");
+        }
+
+        dbPage.writeShort(OFFSET_NUM_ROWS, row + 1);
+        dbPage.writeShort(OFFSET_NUM_LIVE_ROWS, getNumLiveRows(dbPage) + 1);
+
+        // The new row starts out with every column NULL.
+        for (int i = 0; i < widths.length; i++) {
+            setBit(dbPage, minipageOffsets[i], row, true);
+            setNullCount(dbPage, i, getNullCount(dbPage, i) + 1);
+        }
+
+        return row;
+    }
+
+
+    private int getValueOffset(int row, int colIndex) {
+        return minipageOffsets[colIndex] + getBitmapSize(capacity) +
+            row * widths[colIndex];
+    }
+
+
+    /**
+     * Returns true if the specified column of the specified row is
+     * <tt>NULL</tt>.
+     *
+     * @param dbPage   the data page holding the row
+     * @param row      the index of the row in the page
+     * @param colIndex the index of the column
+     * @return true if the value is <tt>NULL</tt>
+     */
+    public boolean isNull(DBPage dbPage, int row, int colIndex) {
+        return getBit(dbPage, minipageOffsets[colIndex], row);
+    }
+
+
+    /**
+     * Reads the value of the specified column of the specified row.  Only
+     * that column's minipage is accessed.
+     *
+     * @param dbPage   the data page holding the row
+     * @param row      the index of the row in the page
+     * @param colIndex the index of the column
+     * @return the value, or {@code null} if the value is <tt>NULL</tt>
+     */
+    public Object readValue(DBPage dbPage, int row, int colIndex) {
+        if (isNull(dbPage, row, colIndex))
+            return null;
+
+        ColumnType colType = schema.getColumnInfo(colIndex).getType();
+        return dbPage.readObject(getValueOffset(row, colIndex), colType);
+    }
+
+
+    /**
+     * Writes the value of the specified column of the specified row, and
+     * updates the column's summary for the page.
+     *
+     * @param dbPage   the data page holding the row
+     * @param row      the index of the row in the page
+     * @param colIndex the index of the column
+     * @param value    the value to store, or {@code null} for <tt>NULL</tt>
+     */
+    public void writeValue(DBPage dbPage, int row, int colIndex, Object value) {
+        boolean wasNull = isNull(dbPage, row, colIndex);
+
+        if (value == null) {
+            if (!wasNull) {
+                setBit(dbPage, minipageOffsets[colIndex], row, true);
+                setNullCount(dbPage, colIndex, getNullCount(dbPage, colIndex) + 1);
+            }
+            return;
+        }
+
+        // Coercing the value also truncates strings to the column's length,
+        // so that the value always fits in the column's slot.
+        ColumnType colType = schema.getColumnInfo(colIndex).getType();
+        value = TypeConverter.coerceTo(value, colType);
+
+        dbPage.writeObject(getValueOffset(row, colIndex), colType, value);
+        if (wasNull) {
+            setBit(dbPage, minipageOffsets[colIndex], row, false);
+            setNullCount(dbPage, colIndex, getNullCount(dbPage, colIndex) - 1);
+        }
+
+        widenSummary(dbPage, colIndex, dbPage.readObject(
+            getValueOffset(row, colIndex), colType));
+    }
+
+
+    /**
+     * Returns the number of live rows in the page whose value for the
+     * specified column is <tt>NULL</tt>.
+     *
+     * @param dbPage   the data page
+     * @param colIndex the index of the column
+     * @return the number of live rows whose value is <tt>NULL</tt>
+     */
+    public int getNullCount(DBPage dbPage, int colIndex) {
+        return dbPage.readUnsignedShort(summaryOffsets[colIndex]);
+    }
+
+
+    private void setNullCount(DBPage dbPage, int colIndex, int count) {
+        dbPage.writeShort(summaryOffsets[colIndex], count);
+    }
+
+
+    private boolean hasMinMax(DBPage dbPage, int colIndex) {
+        return dbPage.readByte(summaryOffsets[colIndex] + 2) != 0;
+    }
+
+
+    /**
+     * Returns a lower bound on the non-<tt>NULL</tt> values of the specified
+     * column in the page, or {@code null} if no non-<tt>NULL</tt> value has
+     * been stored in the column.
+     *
+     * @param dbPage   the data page
+     * @param colIndex the index of the column
+     * @return a lower bound on the column's values in the page
+     */
+    public Object getMinValue(DBPage dbPage, int colIndex) {
+        if (!hasMinMax(dbPage, colIndex))
+            return null;
+
+        ColumnType colType = schema.getColumnInfo(colIndex).getType();
+        return dbPage.readObject(summaryOffsets[colIndex] + 3, colType);
+    }
+
+
+    /**
+     * Returns an upper bound on the non-<tt>NULL</tt> values of the
+     * specified column in the page, or {@code null} if no non-<tt>NULL</tt>
+     * value has been stored in the column.
+     *
+     * @param dbPage   the data page
+     * @param colIndex the index of the column
+     * @return an upper bound on the column's values in the page
+     */
+    public Object getMaxValue(DBPage dbPage, int colIndex) {
+        if (!hasMinMax(dbPage, colIndex))
+            return null;
+
+        ColumnType colType = schema.getColumnInfo(colIndex).getType();
+        return dbPage.readObject(
+            summaryOffsets[colIndex] + 3 + widths[colIndex], colType);
+    }
+
+
+    /**
+     * Widens the minimum and maximum of a column's summary to include the
+     * specified value.  The value must already have the column's type.
+     */
+    @SuppressWarnings("unchecked")
+    private void widenSummary(DBPage dbPage, int colIndex, Object value) {
+        ColumnType colType = schema.getColumnInfo(colIndex).getType();
+        int minOffset = summaryOffsets[colIndex] + 3;
+        int maxOffset = minOffset + widths[colIndex];
+
+        if (!hasMinMax(dbPage, colIndex)) {
+            dbPage.writeObject(minOffset, colType, value);
+            dbPage.writeObject(maxOffset, colType, value);
+            dbPage.writeByte(summaryOffsets[colIndex] + 2, 1);
+            return;
+        }
+
+        Comparable cmpValue = (Comparable) value;
+        if (cmpValue.compareTo(getMinValue(dbPage, colIndex)) < 0)
+            dbPage.writeObject(minOffset, colType, value);
+        else if (cmpValue.compareTo(getMaxValue(dbPage, colIndex)) > 0)
+            dbPage.writeObject(maxOffset, colType, value);
+    }
+}
@@ -0,0 +1,476 @@
+package edu.caltech.nanodb.storage.paxfile;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.ColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
+import edu.caltech.nanodb.queryeval.MultiColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.ColumnRangeFilter;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.DataFormatException;
+import edu.caltech.nanodb.storage.FilePointer;
+import edu.caltech.nanodb.storage.InvalidFilePointerException;
+import edu.caltech.nanodb.storage.PageSampler;
+import edu.caltech.nanodb.storage.RangeFilteredTupleFile;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TupleFileManager;
+
+
+/**
+ * <p>
+ * This class implements the TupleFile interface for PAX (Partition
+ * Attributes Across) files, which store each page's rows column by column.
+ * See {@link PaxPageLayout} for the layout of the data pages.
+ * </p>
+ * <p>
+ * New rows are always appended to the last page of the file.  The format
+ * is append-only:  rows can't be updated or deleted, since it has no way to
+ * reuse the space of deleted rows, and the <tt>UPDATE</tt> and
+ * <tt>DELETE</tt> commands reject columnar tables (see
+ * {@link #isAppendOnly}).  This suits the load-once, scan-many tables that
+ * this format is intended for.  Each page keeps a summary of every column's
+ * values, so scans given a {@link ColumnRangeFilter} skip pages that cannot
+ * hold a matching row.
+ * </p>
+ */
+public class PaxTupleFile implements RangeFilteredTupleFile {
+
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(PaxTupleFile.class);
+
+
+    /**
+     * The storage manager to use for reading and writing file pages, pinning
+     * and unpinning pages, write-ahead logging, and so forth.
+     */
+    private StorageManager storageManager;
+
+
+    /**
+     * The manager for PAX tuple files provides some higher-level operations
+     * such as saving the metadata of a PAX tuple file, so it's useful to
+     * have a reference to it.
+     */
+    private PaxTupleFileManager paxFileManager;
+
+
+    /** The schema of tuples in this tuple file. */
+    private Schema schema;
+
+
+    /** Statistics for this tuple file. */
+    private TableStats stats;
+
+
+    /** The file that stores the tuples. */
+    private DBFile dbFile;
+
+
+    /** The layout of this file's data pages. */
+    private PaxPageLayout layout;
+
+
+    PaxTupleFile(StorageManager storageManager,
+                 PaxTupleFileManager paxFileManager, DBFile dbFile,
+                 Schema schema, TableStats stats) {
+        if (storageManager == null)
+            throw new IllegalArgumentException("storageManager cannot be null");
+
+        if (paxFileManager == null)
+            throw new IllegalArgumentException("paxFileManager cannot be null");
+
+        if (dbFile == null)
+            throw new IllegalArgumentException("dbFile cannot be null");
+
+        if (schema == null)
+            throw new IllegalArgumentException("schema cannot be null");
+
+        if (stats == null)
+            throw new IllegalArgumentException("stats cannot be null");
+
+        this.storageManager = storageManager;
+        this.paxFileManager = paxFileManager;
+        this.dbFile = dbFile;
+        this.schema = schema;
+        this.stats = stats;
+
+        layout = new PaxPageLayout(schema, dbFile.getPageSize());
+    }
+
+
+    @Override
+    public TupleFileManager getManager() {
+        return paxFileManager;
+    }
+
+
+    @Override
+    public DBFile getDBFile() {
+        return dbFile;
+    }
+
+
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+
+    @Override
+    public TableStats getStats() {
+        return stats;
+    }
+
+
+    /**
+     * Returns the layout of this file's data pages.
+     *
+     * @return the layout of this file's data pages
+     */
+    public PaxPageLayout getLayout() {
+        return layout;
+    }
+
+
+    @Override
+    public Tuple getFirstTuple() {
+        return getFirstTuple(null);
+    }
+
+
+    @Override
+    public Tuple getNextTuple(Tuple tuple) {
+        return getNextTuple(tuple, null);
+    }
+
+
+    @Override
+    public Tuple getFirstTuple(ColumnRangeFilter filter) {
+        // Header page is page 0, so first data page is page 1.
+        return findLiveRow(1, 0, filter);
+    }
+
+
+    @Override
+    public Tuple getNextTuple(Tuple tuple, ColumnRangeFilter filter) {
+        if (!(tuple instanceof PaxFilePageTuple)) {
+            throw new IllegalArgumentException(
+                "Tuple must be of type PaxFilePageTuple; got " + tuple.getClass());
+        }
+        PaxFilePageTuple ptup = (PaxFilePageTuple) tuple;
+
+        // Only the location of the previous tuple is used, since the tuple
+        // (and its backing page) may no longer be pinned.
+        return findLiveRow(ptup.getDBPage().getPageNo(), ptup.getRow() + 1,
+            filter);
+    }
+
+
+    /**
+     * Returns true if the filter allows that some row on the page may
+     * satisfy it, based on the page's per-column summaries.
+     */
+    private boolean pageMayMatch(DBPage dbPage, ColumnRangeFilter filter) {
+        int numLive = layout.getNumLiveRows(dbPage);
+        if (numLive == 0)
+            return false;
+
+        for (int colIndex : filter.getColumns()) {
+            if (!filter.mayMatch(colIndex, layout.getMinValue(dbPage, colIndex),
+                layout.getMaxValue(dbPage, colIndex),
+                layout.getNullCount(dbPage, colIndex), numLive)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Finds the first live row at or after the specified position, skipping
+     * pages that the filter rules out.  The page holding the starting row is
+     * not checked against the filter if {@code startRow} is past its first
+     * row, since the scan has already decided to visit that page.
+     */
+    private Tuple findLiveRow(int pageNo, int startRow, ColumnRangeFilter filter) {
+        int row = startRow;
+        while (true) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, pageNo);
+            if (dbPage == null)
+                return null;  // Hit EOF with no more tuples.
+
+            if (row > 0 || filter == null || pageMayMatch(dbPage, filter)) {
+                int numRows = layout.getNumRows(dbPage);
+                for (; row < numRows; row++) {
+                    if (!layout.isDeleted(dbPage, row)) {
+                        // Creating the tuple pins the page a second time.
+                        Tuple tup = new PaxFilePageTuple(layout, dbPage, row);
+                        dbPage.unpin();
+                        return tup;
+                    }
+                }
+            } else {
+                logger.trace("Skipping page " + pageNo + " using " + filter);
+            }
+
+            dbPage.unpin();
+            pageNo++;
+            row = 0;
+        }
+    }
+
+
+    @Override
+    public Tuple getTuple(FilePointer fptr) throws InvalidFilePointerException {
+        DBPage dbPage = storageManager.loadDBPage(dbFile, fptr.getPageNo());
+        if (dbPage == null) {
+            throw new InvalidFilePointerException(String.format(
+                "Specified page %d doesn't exist in file %s",
+                fptr.getPageNo(), dbFile.getDataFile().getName()));
+        }
+
+        int row = fptr.getOffset();
+        if (fptr.getPageNo() == 0 || !layout.isLive(dbPage, row)) {
+            dbPage.unpin();
+            throw new InvalidFilePointerException("Row " + row +
+                " on page " + fptr.getPageNo() + " is not a live row.");
+        }
+
+        Tuple tup = new PaxFilePageTuple(layout, dbPage, row);
+        dbPage.unpin();
+        return tup;
+    }
+
+
+    @Override
+    public Tuple addTuple(Tuple tup) {
+        // Rows are always appended to the last page of the file, if it has
+        // room; otherwise a new page is added.
+        DBPage dbPage = null;
+        int numPages = dbFile.getNumPages();
+        if (numPages > 1) {
+            dbPage = storageManager.loadDBPage(dbFile, numPages - 1);
+            if (layout.getNumRows(dbPage) >= layout.getCapacity()) {
+                dbPage.unpin();
+                dbPage = null;
+            }
+        }
+
+        if (dbPage == null) {
+            logger.debug("Creating new page " + numPages + " to store new tuple.");
+            dbPage = storageManager.loadDBPage(dbFile, numPages, true);
+            layout.initNewPage(dbPage);
+        }
+
+        int row = layout.allocRow(dbPage);
+        for (int i = 0; i < schema.numColumns(); i++)
+            layout.writeValue(dbPage, row, i, tup.getColumnValue(i));
+
+        logger.debug(String.format("New tuple resides on page %d, row %d.",
+            dbPage.getPageNo(), row));
+
+        PaxFilePageTuple pageTup = new PaxFilePageTuple(layout, dbPage, row);
+        dbPage.unpin();
+
+        storageManager.logDBPageWrite(dbPage);
+        return pageTup;
+    }
+
+
+    /**
+     * PAX files are append-only, since the space of deleted rows would never
+     * be reused, and every value is stored in a fixed-width slot.
+     *
+     * @return true, always
+     */
+    @Override
+    public boolean isAppendOnly() {
+        return true;
+    }
+
+
+    @Override
+    public void updateTuple(Tuple tup, Map<String, Object> newValues) {
+        throw new UnsupportedOperationException(
+            "Rows in PAX tuple files can't be updated");
+    }
+
+
+    @Override
+    public void deleteTuple(Tuple tup) {
+        throw new UnsupportedOperationException(
+            "Rows in PAX tuple files can't be deleted");
+    }
+
+
+    /**
+     * Computes the table statistics and each column's statistics by scanning
+     * the file, or a sample of its pages, in the same way that heap files do.
+     * The average tuple size is based on the fixed width of each row's
+     * values.
+     */
+    @Override
+    public void analyze(int samplePercent) {
+        int numCols = schema.numColumns();
+
+        // Page 0 is the header page; every other page is a data page.
+        int numPages = Math.max(0, dbFile.getNumPages() - 1);
+        boolean fullScan = (samplePercent >= 100);
+        int[] pageNos = fullScan ? null :
+            PageSampler.choosePages(1, numPages + 1, samplePercent, new Random());
+        int numSampled = fullScan ? numPages : pageNos.length;
+
+        int numTuples = 0;
+        var collectors = new ArrayList<ColumnStatsCollector>();
+        for (int i = 0; i < numCols; i++) {
+            collectors.add(new ColumnStatsCollector(
+                schema.getColumnInfo(i).getType().getBaseType()));
+        }
+        var groupCollectors = new ArrayList<MultiColumnStatsCollector>();
+        for (MultiColumnStats group : stats.getMultiColumnStats())
+            groupCollectors.add(new MultiColumnStatsCollector(group));
+
+        for (int s = 0; s < numSampled; s++) {
+            int iPage = fullScan ? s + 1 : pageNos[s];
+            DBPage dbPage = storageManager.loadDBPage(dbFile, iPage);
+            if (dbPage == null)
+                break;
+
+            int numRows = layout.getNumRows(dbPage);
+            for (int row = 0; row < numRows; row++) {
+                if (layout.isDeleted(dbPage, row))
+                    continue;
+
+                numTuples++;
+                Object[] values = new Object[numCols];
+                for (int k = 0; k < numCols; k++) {
+                    values[k] = layout.readValue(dbPage, row, k);
+                    collectors.get(k).addValue(values[k]);
+                }
+
+                if (!groupCollectors.isEmpty()) {
+                    TupleLiteral tup = new TupleLiteral(values);
+                    for (MultiColumnStatsCollector groupCollector : groupCollectors)
+                        groupCollector.addTuple(tup);
+                }
+            }
+            dbPage.unpin();
+        }
+
+        if (!fullScan && numSampled > 0) {
+            numTuples = (int) Math.min(Integer.MAX_VALUE - 1,
+                Math.round((double) numTuples * numPages / numSampled));
+        }
+
+        var cols = new ArrayList<ColumnStats>();
+        for (int i = 0; i < numCols; i++) {
+            cols.add(fullScan ? collectors.get(i).getColumnStats() :
+                collectors.get(i).getColumnStats(numTuples));
+        }
+
+        var groups = new ArrayList<MultiColumnStats>();
+        for (MultiColumnStatsCollector groupCollector : groupCollectors) {
+            groups.add(fullScan ? groupCollector.getMultiColumnStats() :
+                groupCollector.getMultiColumnStats(numTuples));
+        }
+
+        stats = new TableStats(numPages, numTuples, layout.getRowWidth(), cols);
+        stats.setMultiColumnStats(groups);
+        paxFileManager.saveMetadata(this);
+    }
+
+
+    /**
+     * Checks that every data page's row counts and null-counts agree with
+     * the page's bitmaps, and that every value lies within its page's
+     * minimum and maximum.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> verify() {
+        ArrayList<String> errors = new ArrayList<>();
+
+        for (int iPage = 1; ; iPage++) {
+            DBPage dbPage = storageManager.loadDBPage(dbFile, iPage);
+            if (dbPage == null)
+                break;
+
+            int numRows = layout.getNumRows(dbPage);
+            if (numRows > layout.getCapacity()) {
+                errors.add(String.format("Page %d has %d rows, but capacity " +
+                    "is %d", iPage, numRows, layout.getCapacity()));
+                dbPage.unpin();
+                continue;
+            }
+
+            int numLive = 0;
+            int[] nullCounts = new int[schema.numColumns()];
+            for (int row = 0; row < numRows; row++) {
+                if (layout.isDeleted(dbPage, row))
+                    continue;
+
+                numLive++;
+                for (int k = 0; k < schema.numColumns(); k++) {
+                    Object value = layout.readValue(dbPage, row, k);
+                    if (value == null) {
+                        nullCounts[k]++;
+                        continue;
+                    }
+
+                    Comparable min = (Comparable) layout.getMinValue(dbPage, k);
+                    Comparable max = (Comparable) layout.getMaxValue(dbPage, k);
+                    if (min == null || min.compareTo(value) > 0 ||
+                        max.compareTo(value) < 0) {
+                        errors.add(String.format("Page %d row %d column %d " +
+                            "value %s is outside of page range [%s, %s]",
+                            iPage, row, k, value, min, max));
+                    }
+                }
+            }
+
+            if (numLive != layout.getNumLiveRows(dbPage)) {
+                errors.add(String.format("Page %d records %d live rows, " +
+                    "but has %d", iPage, layout.getNumLiveRows(dbPage), numLive));
+            }
+
+            for (int k = 0; k < schema.numColumns(); k++) {
+                if (nullCounts[k] != layout.getNullCount(dbPage, k)) {
+                    errors.add(String.format("Page %d records %d NULLs in " +
+                        "column %d, but has %d", iPage,
+                        layout.getNullCount(dbPage, k), k, nullCounts[k]));
+                }
+            }
+
+            dbPage.unpin();
+        }
+
+        return errors;
+    }
+
+
+    /**
+     * PAX files are append-only, so every page is already full except for
+     * the last, and there is no space to reclaim.
+     */
+    @Override
+    public void optimize() {
+        logger.info("PAX tuple files are append-only and have no space " +
+            "to reclaim; leaving " + dbFile + " unchanged.");
+    }
+}
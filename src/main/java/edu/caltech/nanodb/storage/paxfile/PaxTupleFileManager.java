@@ -0,0 +1,165 @@
+package edu.caltech.nanodb.storage.paxfile;
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.FileManager;
+import edu.caltech.nanodb.storage.PageReader;
+import edu.caltech.nanodb.storage.PageWriter;
+import edu.caltech.nanodb.storage.SchemaWriter;
+import edu.caltech.nanodb.storage.StatsWriter;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TupleFile;
+import edu.caltech.nanodb.storage.TupleFileManager;
+
+
+/**
+ * This class provides high-level operations on PAX (columnar) tuple files.
+ */
+public class PaxTupleFileManager implements TupleFileManager {
+    /**
+     * A logging object for reporting anything interesting that happens.
+     */
+    private static Logger logger = LogManager.getLogger(PaxTupleFileManager.class);
+
+
+    /**
+     * A reference to the storage manager.
+     */
+    private StorageManager storageManager;
+
+
+    public PaxTupleFileManager(StorageManager storageManager) {
+        if (storageManager == null)
+            throw new IllegalArgumentException("storageManager cannot be null");
+
+        this.storageManager = storageManager;
+    }
+
+
+    @Override
+    public DBFileType getDBFileType() {
+        return DBFileType.PAX_TUPLE_FILE;
+    }
+
+
+    @Override
+    public String getShortName() {
+        return "pax";
+    }
+
+
+    @Override
+    public TupleFile createTupleFile(DBFile dbFile, Schema schema) {
+
+        logger.info(String.format(
+            "Initializing new PAX tuple file %s with %d columns",
+            dbFile, schema.numColumns()));
+
+        TableStats stats = new TableStats(schema.numColumns());
+        PaxTupleFile tupleFile = new PaxTupleFile(storageManager, this,
+            dbFile, schema, stats);
+        saveMetadata(tupleFile);
+        return tupleFile;
+    }
+
+
+    @Override
+    public TupleFile openTupleFile(DBFile dbFile) {
+
+        logger.info("Opening existing PAX tuple file " + dbFile);
+
+        // Table schema is stored into the header page, so get it and prepare
+        // to write out the schema information.
+        // implicitly: headerPage.pin()
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        PageReader hpReader = new PageReader(headerPage);
+        // Skip past the page-size value.
+        hpReader.setPosition(HeaderPage.OFFSET_SCHEMA_START);
+
+        // Read in the schema details.
+        SchemaWriter schemaWriter = new SchemaWriter();
+        Schema schema = schemaWriter.readSchema(hpReader);
+
+        // Read in the statistics.
+        TableStats stats = StatsWriter.readTableStats(hpReader, schema);
+
+        // Unpin header since no need for header
+        headerPage.unpin();
+
+        return new PaxTupleFile(storageManager, this, dbFile, schema, stats);
+    }
+
+
+    @Override
+    public void saveMetadata(TupleFile tupleFile) {
+
+        if (tupleFile == null)
+            throw new IllegalArgumentException("tupleFile cannot be null");
+
+        // Curiously, we never cast the tupleFile reference to PaxTupleFile,
+        // but still, it would be very awkward if we tried to update the
+        // metadata of some different kind of tuple file...
+        if (!(tupleFile instanceof PaxTupleFile)) {
+            throw new IllegalArgumentException(
+                "tupleFile must be an instance of PaxTupleFile");
+        }
+
+        DBFile dbFile = tupleFile.getDBFile();
+
+        Schema schema = tupleFile.getSchema();
+        TableStats stats = tupleFile.getStats();
+
+        // Table schema is stored into the header page, so get it and prepare
+        // to write out the schema information.
+        // implicitly: headerPage.pin()
+        DBPage headerPage = storageManager.loadDBPage(dbFile, 0);
+        PageWriter hpWriter = new PageWriter(headerPage);
+        // Skip past the page-size value.
+        hpWriter.setPosition(HeaderPage.OFFSET_SCHEMA_START);
+
+        // Write out the schema details now.
+        SchemaWriter schemaWriter = new SchemaWriter();
+        schemaWriter.writeSchema(schema, hpWriter);
+
+        // Compute and store the schema's size.
+        int schemaEndPos = hpWriter.getPosition();
+        int schemaSize = schemaEndPos - HeaderPage.OFFSET_SCHEMA_START;
+        HeaderPage.setSchemaSize(headerPage, schemaSize);
+
+        // Write in empty statistics, so that the values are at least
+        // initialized to something.
+        StatsWriter.writeTableStats(schema, stats, hpWriter);
+        int statsSize = hpWriter.getPosition() - schemaEndPos;
+        HeaderPage.setStatsSize(headerPage, statsSize);
+
+        // Unpin header since no need for header
+        headerPage.unpin();
+
+        storageManager.logDBPageWrite(headerPage);
+    }
+
+
+    @Override
+    public void deleteTupleFile(TupleFile tupleFile) {
+        if (tupleFile == null)
+            throw new IllegalArgumentException("tupleFile cannot be null");
+
+        DBFile dbFile = tupleFile.getDBFile();
+        logger.info("Deleting PAX tuple file " + dbFile);
+
+        // Remove the file's pages from the Buffer Manager, then close the
+        // file and delete it.
+        storageManager.getBufferManager().removeDBFile(dbFile);
+
+        FileManager fileManager = storageManager.getFileManager();
+        fileManager.closeDBFile(dbFile);
+        fileManager.deleteDBFile(dbFile);
+    }
+}
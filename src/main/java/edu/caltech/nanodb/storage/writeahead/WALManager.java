@@ -321,8 +321,12 @@ public class WALManager {
                     var pageNo = walReader.readUnsignedShort();
                     var numSegments = walReader.readUnsignedShort();
 
+                    // If the file was truncated later on, the page may no
+                    // longer exist; it is recreated, and a later
+                    // TRUNCATE_FILE record will remove it again.
                     var file = storageManager.openDBFile(filename);
-                    var page = storageManager.loadDBPage(file, pageNo);
+                    var page = storageManager.loadDBPage(file, pageNo,
+                        /* create */ true);
 
                     applyRedo(type, walReader, page, numSegments);
                     recoveryInfo.updateInfo(transactionID, currLSN);
@@ -345,6 +349,23 @@ public class WALManager {
                     walReader.readByte();
                     break;
 
+                case TRUNCATE_FILE:
+                    // These records follow the transaction's commit record,
+                    // so the transaction is already complete.
+                    walReader.readUnsignedShort();
+                    walReader.readInt();
+                    var truncFilename = walReader.readVarString255();
+                    var truncNumPages = walReader.readUnsignedShort();
+
+                    var truncFile = storageManager.openDBFile(truncFilename);
+                    if (truncFile != null)
+                        storageManager.applyTruncation(truncFile, truncNumPages);
+
+                    // For next LSN
+                    walReader.readInt();
+                    walReader.readByte();
+                    break;
+
                 default:
                     try {
                         throw new WALFileException("Encountered unrecognized WAL record type " + type +
@@ -462,6 +483,7 @@ public class WALManager {
 
                 case UPDATE_PAGE:
                 case UPDATE_PAGE_REDO_ONLY:
+                case TRUNCATE_FILE:
                     // For these records, the WAL record's start offset is stored
                     // immediately before the last type-byte.  We go back 5 bytes
                     // because reading the type ID moves the position forward by
@@ -529,6 +551,7 @@ public class WALManager {
                     recoveryInfo.updateInfo(transactionID, redoOnlyLSN);
                     break;
                 case UPDATE_PAGE_REDO_ONLY:
+                case TRUNCATE_FILE:
                     break;
                 default:
                     try {
@@ -935,6 +958,63 @@ public class WALManager {
     }
 
 
+    /**
+     * This method writes a truncate-file record to the write-ahead log.  The
+     * record is written once the current transaction has committed, just
+     * before the file is actually truncated, so that redo processing
+     * truncates the file at the same point in the history of its pages.
+     *
+     * @param dbFile   the file being truncated
+     * @param numPages the number of pages that remain in the file
+     * @throws IllegalArgumentException if <tt>dbFile</tt> is <tt>null</tt>
+     */
+    public void writeTruncateFileRecord(DBFile dbFile, int numPages) {
+
+        if (dbFile == null)
+            throw new IllegalArgumentException("dbFile must be specified");
+
+        // Retrieve and verify the transaction state.
+        TransactionState txnState = SessionState.get().getTransactionState();
+        if (!txnState.isTxnInProgress()) {
+            throw new IllegalStateException(
+                "No transaction is currently in progress!");
+        }
+
+        synchronized (guard) {
+            LogSequenceNumber lsn = nextLSN;
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("Writing a %s record for transaction %d at LSN %s",
+                    WALRecordType.TRUNCATE_FILE, txnState.getTransactionID(), lsn);
+            }
+
+            DBFileWriter walWriter = getWALFileWriter(lsn);
+
+            walWriter.writeByte(WALRecordType.TRUNCATE_FILE.getID());
+            walWriter.writeInt(txnState.getTransactionID());
+
+            LogSequenceNumber prevLSN = txnState.getLastLSN();
+            walWriter.writeShort(prevLSN.getLogFileNo());
+            walWriter.writeInt(prevLSN.getFileOffset());
+
+            walWriter.writeVarString255(dbFile.getDataFile().getName());
+            walWriter.writeShort(numPages);
+
+            // As with update records, write the start of the record at the
+            // end so that we can get back to it when scanning backwards.
+            walWriter.writeInt(lsn.getFileOffset());
+            walWriter.writeByte(WALRecordType.TRUNCATE_FILE.getID());
+
+            lsn = new LogSequenceNumber(lsn, walWriter.getPosition() - lsn.getFileOffset());
+            txnState.setLastLSN(lsn);
+
+            nextLSN = computeNextLSN(nextLSN.getLogFileNo(), walWriter.getPosition());
+
+            walWriter.close();
+        }
+    }
+
+
     /**
      * This helper function writes a sequence of redo-segments from an
      * {@link WALRecordType#UPDATE_PAGE} or
@@ -25,6 +25,13 @@ public enum WALRecordType {
      */
     UPDATE_PAGE_REDO_ONLY(3),
 
+    /**
+     * The record represents a "&lt;<i>T<sub>i</sub></i>:  truncate <i>F</i>
+     * to <i>N</i> pages&gt;" record.  These records are redo-only, and are
+     * written after the transaction's commit record.
+     */
+    TRUNCATE_FILE(4),
+
     /**
      * The record represents a "&lt;<i>T<sub>i</sub></i>:  commit
      * transaction&gt;" record.
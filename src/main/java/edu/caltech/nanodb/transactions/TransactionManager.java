@@ -3,11 +3,13 @@ package edu.caltech.nanodb.transactions;
 
 import edu.caltech.nanodb.server.NanoDBServer;
 import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
 import edu.caltech.nanodb.storage.*;
 import edu.caltech.nanodb.storage.writeahead.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -255,8 +257,15 @@ public class TransactionManager implements BufferManagerObserver {
             txnState.setLoggedTxnStart(true);
         }
 
-        walManager.writeUpdatePageRecord(dbPage);
-        dbPage.syncOldPageData();
+        // Writing the record may evict pages to make room in the WAL, so keep
+        // this page from being evicted (and written) while it is logged.
+        dbPage.pin();
+        try {
+            walManager.writeUpdatePageRecord(dbPage);
+            dbPage.syncOldPageData();
+        } finally {
+            dbPage.unpin();
+        }
     }
 
 
@@ -274,21 +283,86 @@ public class TransactionManager implements BufferManagerObserver {
         }
 
         int txnID = txnState.getTransactionID();
+        long start = System.nanoTime();
+
+        ArrayList<TransactionState.FileTruncation> truncations =
+            getTruncationsToApply(txnState);
+        if (!truncations.isEmpty() && !txnState.hasLoggedTxnStart()) {
+            // The truncations must be logged, so the transaction must be too.
+            walManager.writeTxnRecord(WALRecordType.START_TXN);
+            txnState.setLoggedTxnStart(true);
+        }
 
         if (txnState.hasLoggedTxnStart()) {
             // Must record the transaction as committed to the write-ahead log.
             // Then, we must force the WAL to include this commit record.
             walManager.writeTxnRecord(WALRecordType.COMMIT_TXN);
+
+            // Truncations are logged after the commit record, so that they
+            // are only redone for committed transactions.
+            for (TransactionState.FileTruncation truncation : truncations) {
+                walManager.writeTruncateFileRecord(truncation.getDBFile(),
+                    truncation.getNumPages());
+            }
+
             forceWAL(walManager.getNextLSN());
         } else {
             logger.debug("Transaction " + txnID + " has made no changes; not " +
                 "recording transaction-commit to WAL.");
         }
 
+        // The transaction is committed, so the files it truncated can now
+        // actually be truncated.
+        for (TransactionState.FileTruncation truncation : truncations) {
+            storageManager.applyTruncation(truncation.getDBFile(),
+                truncation.getNumPages());
+        }
+
         // Now that the transaction is successfully committed, clear the current
         // transaction state.
         logger.debug("Transaction completed, resetting transaction state.");
         txnState.clear();
+
+        PerformanceCounters.inc(PerformanceCounters.TXN_COMMITS);
+        PerformanceCounters.recordLatency(PerformanceCounters.TXN_COMMIT_LATENCY,
+            System.nanoTime() - start);
+        state.getCounters().recordCommit();
+    }
+
+
+    /**
+     * Returns the file truncations that a committing transaction requested,
+     * and that can still be applied.  A truncation is skipped if the file has
+     * since grown, since the pages past the new end of the file may no longer
+     * be empty, or if the file has since been closed or deleted.  Skipping a
+     * truncation only leaves unused pages in the file.
+     *
+     * @param txnState the state of the committing transaction
+     * @return the file truncations to log and apply
+     */
+    private ArrayList<TransactionState.FileTruncation> getTruncationsToApply(
+        TransactionState txnState) {
+
+        ArrayList<TransactionState.FileTruncation> truncations =
+            new ArrayList<>();
+
+        for (TransactionState.FileTruncation truncation :
+             txnState.getTruncations()) {
+            DBFile dbFile = truncation.getDBFile();
+            try {
+                if (dbFile.getNumPages() == truncation.getOldNumPages()) {
+                    truncations.add(truncation);
+                    continue;
+                }
+            } catch (FileSystemException e) {
+                // The file was closed or deleted.
+            }
+
+            logger.info("File " + dbFile + " has changed since it was " +
+                "truncated; leaving its unused pages in place.");
+        }
+
+        return truncations;
     }
 
 
@@ -310,6 +384,10 @@ public class TransactionManager implements BufferManagerObserver {
         if (txnState.hasLoggedTxnStart()) {
             // Must rollback the transaction using the write-ahead log.
             walManager.rollbackTransaction();
+
+            // Undoing the changes doesn't produce row events, so results
+            // that were cached since the changes were made are now wrong.
+            server.getResultCache().invalidateAll();
         } else {
             logger.debug("Transaction " + txnID + " has made no changes; not " +
                 "recording transaction-rollback to WAL.");
@@ -340,8 +418,12 @@ public class TransactionManager implements BufferManagerObserver {
             if (dbType != DBFileType.WRITE_AHEAD_LOG_FILE && dbType != DBFileType.TXNSTATE_FILE) {
                 // Get page's LSN
                 var lsn = pg.getPageLSN();
-                if (lsn == null)
+                if (lsn == null) {
+                    // No log record describes the page, so there is nothing
+                    // to force for it.
                     logger.debug("Page[" + pg.getPageNo() + "] has no lsn");
+                    continue;
+                }
 
                 maxLSN = maxLSN == null || maxLSN.compareTo(lsn) < 0 ? lsn : maxLSN;
             }
@@ -370,6 +452,8 @@ public class TransactionManager implements BufferManagerObserver {
             return;
         }
 
+        PerformanceCounters.inc(PerformanceCounters.WAL_FORCES);
+
         // 2. write part of buffered-logs to files
         DBFile file;
         int fileNo;
@@ -400,10 +484,13 @@ public class TransactionManager implements BufferManagerObserver {
                 writePages(fileNo, 0, file.getNumPages() - 1);
             }
 
-            // write end page
+            // write end page (the next LSN may be at the start of a log file
+            // that hasn't been created yet, in which case there is nothing
+            // to write)
             fileNo = newNext.getLogFileNo();
             file = bpm.getFile(WALManager.getWALFileName(fileNo));
-            writePages(fileNo, 0, (newNext.getFileOffset() - 1) / file.getPageSize());
+            if (file != null)
+                writePages(fileNo, 0, (newNext.getFileOffset() - 1) / file.getPageSize());
         }
 
         txnStateNextLSN = newNext;
@@ -1,6 +1,10 @@
 package edu.caltech.nanodb.transactions;
 
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import edu.caltech.nanodb.storage.DBFile;
 import edu.caltech.nanodb.storage.writeahead.LogSequenceNumber;
 
 
@@ -19,6 +23,48 @@ import edu.caltech.nanodb.storage.writeahead.LogSequenceNumber;
  */
 public class TransactionState {
 
+    /**
+     * A truncation of a database file that the transaction has requested.
+     * Truncations are only applied once the transaction commits, since
+     * rolling the transaction back would need the truncated pages.
+     */
+    public static class FileTruncation {
+        /** The file to truncate. */
+        private DBFile dbFile;
+
+        /**
+         * The number of pages in the file when the transaction first asked
+         * for it to be truncated.
+         */
+        private int oldNumPages;
+
+        /** The number of pages that should remain in the file. */
+        private int numPages;
+
+
+        private FileTruncation(DBFile dbFile, int oldNumPages, int numPages) {
+            this.dbFile = dbFile;
+            this.oldNumPages = oldNumPages;
+            this.numPages = numPages;
+        }
+
+
+        public DBFile getDBFile() {
+            return dbFile;
+        }
+
+
+        public int getOldNumPages() {
+            return oldNumPages;
+        }
+
+
+        public int getNumPages() {
+            return numPages;
+        }
+    }
+
+
     public static final int NO_TRANSACTION = -1;
 
 
@@ -42,6 +88,11 @@ public class TransactionState {
     private LogSequenceNumber lastLSN = null;
 
 
+    /** The file truncations to apply when the transaction commits. */
+    private LinkedHashMap<DBFile, FileTruncation> truncations =
+        new LinkedHashMap<>();
+
+
     public int getTransactionID() {
         return transactionID;
     }
@@ -92,12 +143,57 @@ public class TransactionState {
     }
 
 
+    /**
+     * Records that the specified file should be truncated to the specified
+     * number of pages when the transaction commits.  If the transaction has
+     * already asked for the file to be truncated, the file is truncated to
+     * the smaller of the two sizes.
+     *
+     * @param dbFile   the file to truncate
+     * @param numPages the number of pages that should remain in the file
+     */
+    public void addTruncation(DBFile dbFile, int numPages) {
+        FileTruncation truncation = truncations.get(dbFile);
+        if (truncation == null) {
+            truncations.put(dbFile,
+                new FileTruncation(dbFile, dbFile.getNumPages(), numPages));
+        } else {
+            truncation.numPages = Math.min(truncation.numPages, numPages);
+        }
+    }
+
+
+    /**
+     * Returns the truncation of the specified file that the transaction has
+     * requested, if any.
+     *
+     * @param dbFile the file to look up
+     * @return the requested truncation of the file, or {@code null} if the
+     *         transaction hasn't asked for the file to be truncated
+     */
+    public FileTruncation getTruncation(DBFile dbFile) {
+        return truncations.get(dbFile);
+    }
+
+
+    /**
+     * Returns the file truncations to apply when the transaction commits, in
+     * the order they were first requested.
+     *
+     * @return the file truncations to apply when the transaction commits
+     */
+    public Collection<FileTruncation> getTruncations() {
+        return truncations.values();
+    }
+
+
     public void clear() {
         transactionID = NO_TRANSACTION;
         lastLSN = null;
         userStartedTxn = false;
         performedWrites = false;
         loggedTxnStart = false;
+        truncations.clear();
     }
 
 
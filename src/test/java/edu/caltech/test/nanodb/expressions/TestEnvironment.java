@@ -0,0 +1,147 @@
+package edu.caltech.test.nanodb.expressions;
+
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ArithmeticOperator;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.Environment;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionException;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * This class exercises the evaluation of column references against an
+ * {@link Environment}, both by name and after binding the references to
+ * slots of the environment's tuples.
+ */
+@Test(groups = {"framework"})
+public class TestEnvironment {
+
+    private static final ColumnType INT = new ColumnType(SQLDataType.INTEGER);
+
+
+    private static Schema makeSchema(String tableName, String... colNames) {
+        Schema schema = new Schema();
+        for (String colName : colNames)
+            schema.addColumnInfo(new ColumnInfo(colName, tableName, INT));
+        return schema;
+    }
+
+
+    private static ColumnValue col(String tableName, String colName) {
+        return new ColumnValue(new ColumnName(tableName, colName));
+    }
+
+
+    public void testBoundEvaluation() {
+        Schema left = makeSchema("t1", "a", "b");
+        Schema right = makeSchema("t2", "c", "b");
+
+        ColumnValue a = col(null, "a");
+        ColumnValue c = col(null, "c");
+        ColumnValue t2b = col("t2", "b");
+        Expression sum = new ArithmeticOperator(
+            ArithmeticOperator.Type.ADD, a, t2b);
+
+        Environment env = new Environment();
+        env.bind(new Schema[] {left, right}, List.of(sum, c));
+
+        for (int i = 0; i < 3; i++) {
+            env.clear();
+            env.addTuple(left, new TupleLiteral(i, 10 * i));
+            env.addTuple(right, new TupleLiteral(100 + i, 1000 + i));
+
+            assert a.evaluate(env).equals(i);
+            assert c.evaluate(env).equals(100 + i);
+            assert t2b.evaluate(env).equals(1000 + i);
+            assert sum.evaluate(env).equals(1000 + 2 * i);
+        }
+    }
+
+
+    public void testAmbiguousColumnNotBound() {
+        Schema left = makeSchema("t1", "a", "b");
+        Schema right = makeSchema("t2", "c", "b");
+
+        ColumnValue b = col(null, "b");
+        Environment env = new Environment();
+        env.bind(new Schema[] {left, right}, List.of(b));
+
+        env.addTuple(left, new TupleLiteral(1, 2));
+        env.addTuple(right, new TupleLiteral(3, 4));
+        try {
+            b.evaluate(env);
+            assert false : "Expected an ambiguous column-name error";
+        } catch (ExpressionException e) {
+            // Pass!
+        }
+    }
+
+
+    /**
+     * Bound references must fall back to name lookup when the environment
+     * holds tuples of different schemas than they were bound against.
+     */
+    public void testFallBackWhenSchemasDiffer() {
+        Schema bound = makeSchema("t", "a", "b");
+        Schema other = makeSchema("t", "b", "a");
+
+        ColumnValue a = col(null, "a");
+        Environment env = new Environment();
+        env.bind(new Schema[] {bound}, List.of(a));
+
+        env.addTuple(bound, new TupleLiteral(1, 2));
+        assert a.evaluate(env).equals(1);
+
+        env.clear();
+        env.addTuple(other, new TupleLiteral(1, 2));
+        assert a.evaluate(env).equals(2);
+
+        // A different environment never uses the binding.
+        Environment env2 = new Environment();
+        env2.addTuple(other, new TupleLiteral(5, 6));
+        assert a.evaluate(env2).equals(6);
+
+        // Rebinding against new schemas invalidates the old bindings.
+        ColumnValue b = col(null, "b");
+        env.bind(new Schema[] {other}, List.of(b));
+        env.clear();
+        env.addTuple(bound, new TupleLiteral(7, 8));
+        assert a.evaluate(env).equals(7);
+        assert b.evaluate(env).equals(8);
+    }
+
+
+    /**
+     * Columns that aren't in the bound schemas, such as references to an
+     * enclosing query's columns, are still resolved through the parent
+     * environment.
+     */
+    public void testUnboundParentReference() {
+        Schema inner = makeSchema("t", "a");
+        Schema outer = makeSchema("u", "x");
+
+        Environment parent = new Environment();
+        parent.addTuple(outer, new TupleLiteral(42));
+
+        ColumnValue a = col(null, "a");
+        ColumnValue x = col("u", "x");
+
+        Environment env = new Environment();
+        env.addParentEnvironment(parent);
+        env.bind(new Schema[] {inner}, List.of(a, x));
+        env.addTuple(inner, new TupleLiteral(1));
+
+        assert a.evaluate(env).equals(1);
+        assert x.evaluate(env).equals(42);
+    }
+}
@@ -0,0 +1,347 @@
+package edu.caltech.test.nanodb.expressions;
+
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ArithmeticOperator;
+import edu.caltech.nanodb.expressions.BooleanOperator;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.CompiledExpression;
+import edu.caltech.nanodb.expressions.DivideByZeroException;
+import edu.caltech.nanodb.expressions.Environment;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.ExpressionCompiler;
+import edu.caltech.nanodb.expressions.IsNullOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * This class verifies that compiled expressions produce exactly the same
+ * results as the interpreter, over many combinations of operand types and
+ * values, including <tt>NULL</tt>s.
+ */
+@Test(groups = {"framework"})
+public class TestExpressionCompiler {
+
+    /** The names of the columns in the test schema, one per type. */
+    private static final String[] COLUMNS = {"s", "i", "l", "f", "d", "v"};
+
+
+    private static final ArithmeticOperator.Type[] ARITH_TYPES = {
+        ArithmeticOperator.Type.ADD, ArithmeticOperator.Type.SUBTRACT,
+        ArithmeticOperator.Type.MULTIPLY, ArithmeticOperator.Type.DIVIDE,
+        ArithmeticOperator.Type.REMAINDER
+    };
+
+
+    private static Schema makeSchema() {
+        Schema schema = new Schema();
+        schema.addColumnInfo(new ColumnInfo("s", "t",
+            new ColumnType(SQLDataType.SMALLINT)));
+        schema.addColumnInfo(new ColumnInfo("i", "t",
+            new ColumnType(SQLDataType.INTEGER)));
+        schema.addColumnInfo(new ColumnInfo("l", "t",
+            new ColumnType(SQLDataType.BIGINT)));
+        schema.addColumnInfo(new ColumnInfo("f", "t",
+            new ColumnType(SQLDataType.FLOAT)));
+        schema.addColumnInfo(new ColumnInfo("d", "t",
+            new ColumnType(SQLDataType.DOUBLE)));
+
+        ColumnType varchar = new ColumnType(SQLDataType.VARCHAR);
+        varchar.setLength(10);
+        schema.addColumnInfo(new ColumnInfo("v", "t", varchar));
+        return schema;
+    }
+
+
+    /**
+     * Generates a random row for the test schema.  Values are drawn from
+     * small ranges so that equal values come up often, with occasional
+     * extreme values and <tt>NULL</tt>s.
+     */
+    private static TupleLiteral makeRow(Random rand) {
+        TupleLiteral row = new TupleLiteral();
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            (short) (rand.nextInt(11) - 5));
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            (rand.nextInt(10) == 0 ? Integer.MAX_VALUE : rand.nextInt(11) - 5));
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            (rand.nextInt(10) == 0 ? Long.MIN_VALUE : rand.nextInt(11) - 5L));
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            (rand.nextInt(5) - 2) / 2.0f + (rand.nextBoolean() ? 0.1f : 0f));
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            (rand.nextInt(5) - 2) / 2.0 + (rand.nextBoolean() ? 0.1 : 0));
+        row.addValue(rand.nextInt(8) == 0 ? null :
+            "" + (char) ('a' + rand.nextInt(3)));
+        return row;
+    }
+
+
+    private static ColumnValue col(String name) {
+        return new ColumnValue(new ColumnName(name));
+    }
+
+
+    private static final Object[] NUMERIC_LITERALS = {
+        0, 2, -3L, 1.5f, -0.25, new BigDecimal("0.1"), new BigDecimal("-2"),
+        new BigDecimal("1e30"), null
+    };
+
+
+    /**
+     * Generates a random numeric expression, of at most the specified depth.
+     */
+    private static Expression makeNumeric(Random rand, int depth) {
+        int choice = rand.nextInt(depth > 0 ? 4 : 2);
+        if (choice == 0) {
+            Object value = NUMERIC_LITERALS[rand.nextInt(
+                NUMERIC_LITERALS.length)];
+
+            // Arithmetic on decimals is left to the interpreter, so only
+            // mix in the simple literals.
+            if (value instanceof BigDecimal)
+                value = 3;
+
+            return new LiteralValue(value);
+        } else if (choice == 1) {
+            return col(COLUMNS[rand.nextInt(5)]);
+        }
+
+        return new ArithmeticOperator(
+            ARITH_TYPES[rand.nextInt(ARITH_TYPES.length)],
+            makeNumeric(rand, depth - 1), makeNumeric(rand, depth - 1));
+    }
+
+
+    private static CompareOperator.Type randomCompare(Random rand) {
+        CompareOperator.Type[] types = {
+            CompareOperator.Type.EQUALS, CompareOperator.Type.NOT_EQUALS,
+            CompareOperator.Type.LESS_THAN, CompareOperator.Type.LESS_OR_EQUAL,
+            CompareOperator.Type.GREATER_THAN,
+            CompareOperator.Type.GREATER_OR_EQUAL
+        };
+        return types[rand.nextInt(types.length)];
+    }
+
+
+    /**
+     * Generates a random predicate, of at most the specified depth.
+     */
+    private static Expression makePredicate(Random rand, int depth) {
+        int choice = rand.nextInt(depth > 0 ? 6 : 4);
+        switch (choice) {
+            case 0:
+                return new CompareOperator(randomCompare(rand),
+                    makeNumeric(rand, 1), makeNumeric(rand, 1));
+
+            case 1: {
+                Expression decimal = new LiteralValue(NUMERIC_LITERALS[5 +
+                    rand.nextInt(3)]);
+                Expression column = col(COLUMNS[rand.nextInt(5)]);
+                return rand.nextBoolean() ?
+                    new CompareOperator(randomCompare(rand), column, decimal) :
+                    new CompareOperator(randomCompare(rand), decimal, column);
+            }
+
+            case 2:
+                return new CompareOperator(randomCompare(rand), col("v"),
+                    rand.nextBoolean() ? new LiteralValue("b") : col("v"));
+
+            case 3:
+                return new IsNullOperator(makeNumeric(rand, 1),
+                    rand.nextBoolean());
+
+            case 4:
+                return new BooleanOperator(BooleanOperator.Type.NOT_EXPR,
+                    List.of(makePredicate(rand, depth - 1)));
+
+            default: {
+                ArrayList<Expression> terms = new ArrayList<>();
+                for (int i = 0; i < 2 + rand.nextInt(2); i++)
+                    terms.add(makePredicate(rand, depth - 1));
+
+                return new BooleanOperator(rand.nextBoolean() ?
+                    BooleanOperator.Type.AND_EXPR :
+                    BooleanOperator.Type.OR_EXPR, terms);
+            }
+        }
+    }
+
+
+    /**
+     * Evaluates an expression both ways, and requires the two results to be
+     * of the same type and value, or to both fail with division by zero.
+     */
+    private static void checkSame(Expression expr, CompiledExpression compiled,
+                                  Environment env, boolean predicate) {
+        Object expected;
+        try {
+            expected = predicate ? expr.evaluatePredicate(env) :
+                expr.evaluate(env);
+        } catch (DivideByZeroException e) {
+            expected = e.getClass();
+        }
+
+        Object actual;
+        try {
+            actual = predicate ? compiled.evaluatePredicate(env) :
+                compiled.evaluate(env);
+        } catch (DivideByZeroException e) {
+            actual = e.getClass();
+        }
+
+        assert (expected == null) ? actual == null : expected.equals(actual) :
+            String.format("%s on %s:  expected %s, got %s", expr,
+                env.getCurrentTuples(), expected, actual);
+    }
+
+
+    /**
+     * Compares the results of many random arithmetic expressions.
+     */
+    public void testArithmetic() {
+        Random rand = new Random(32);
+        Schema schema = makeSchema();
+        Environment env = new Environment();
+
+        int numCompiled = 0;
+        for (int i = 0; i < 500; i++) {
+            Expression expr = makeNumeric(rand, 3);
+            env.bind(new Schema[] {schema}, List.of(expr));
+            CompiledExpression compiled =
+                ExpressionCompiler.compile(expr, schema);
+            if (compiled == null)
+                continue;
+
+            numCompiled++;
+            for (int j = 0; j < 20; j++) {
+                env.clear();
+                env.addTuple(schema, makeRow(rand));
+                checkSame(expr, compiled, env, false);
+            }
+        }
+        assert numCompiled > 100 : "only " + numCompiled + " compiled";
+    }
+
+
+    /**
+     * Compares the results of many random predicates, both as predicates
+     * and as (possibly <tt>NULL</tt>) Boolean values.
+     */
+    public void testPredicates() {
+        Random rand = new Random(33);
+        Schema schema = makeSchema();
+        Environment env = new Environment();
+
+        int numCompiled = 0;
+        for (int i = 0; i < 500; i++) {
+            Expression expr = makePredicate(rand, 2);
+            env.bind(new Schema[] {schema}, List.of(expr));
+            CompiledExpression compiled =
+                ExpressionCompiler.compile(expr, schema);
+            if (compiled == null)
+                continue;
+
+            numCompiled++;
+            for (int j = 0; j < 20; j++) {
+                env.clear();
+                env.addTuple(schema, makeRow(rand));
+                checkSame(expr, compiled, env, false);
+                checkSame(expr, compiled, env, true);
+            }
+        }
+        assert numCompiled > 200 : "only " + numCompiled + " compiled";
+    }
+
+
+    /**
+     * Comparisons against decimal literals must be exact, even where a value
+     * is very close to the literal.
+     */
+    public void testDecimalComparisons() {
+        Schema schema = makeSchema();
+        Environment env = new Environment();
+
+        Expression lessThan = new CompareOperator(
+            CompareOperator.Type.LESS_THAN, col("d"),
+            new LiteralValue(new BigDecimal("0.1")));
+        Expression equals = new CompareOperator(CompareOperator.Type.EQUALS,
+            new LiteralValue(new BigDecimal("9007199254740993")), col("l"));
+        env.bind(new Schema[] {schema}, List.of(lessThan, equals));
+
+        CompiledExpression compiledLess =
+            ExpressionCompiler.compile(lessThan, schema);
+        CompiledExpression compiledEquals =
+            ExpressionCompiler.compile(equals, schema);
+        assert compiledLess != null && compiledEquals != null;
+
+        // The double nearest 0.1 is slightly more than 0.1.
+        double[] doubles = {0.1, Math.nextDown(0.1), Math.nextUp(0.1)};
+        long[] longs = {9007199254740992L, 9007199254740993L,
+            9007199254740994L};
+        for (int i = 0; i < doubles.length; i++) {
+            env.clear();
+            env.addTuple(schema, new TupleLiteral(null, null, longs[i], null,
+                doubles[i], null));
+            checkSame(lessThan, compiledLess, env, false);
+            checkSame(equals, compiledEquals, env, false);
+        }
+    }
+
+
+    /**
+     * If values don't have the types that the schema declares, the compiled
+     * expression falls back to the interpreter rather than producing a
+     * different result.
+     */
+    public void testTypeMismatchFallsBack() {
+        Schema schema = makeSchema();
+        Environment env = new Environment();
+
+        Expression expr = new ArithmeticOperator(ArithmeticOperator.Type.ADD,
+            col("i"), new LiteralValue(1));
+        env.bind(new Schema[] {schema}, List.of(expr));
+        CompiledExpression compiled = ExpressionCompiler.compile(expr, schema);
+        assert compiled != null;
+
+        env.addTuple(schema, new TupleLiteral(null, 5, null, null, null, null));
+        assert compiled.evaluate(env).equals(6);
+
+        // A BIGINT value in an INTEGER column.
+        env.clear();
+        env.addTuple(schema, new TupleLiteral(null, 5L, null, null, null, null));
+        assert compiled.evaluate(env).equals(6L);
+
+        env.clear();
+        env.addTuple(schema, new TupleLiteral(null, 7, null, null, null, null));
+        assert compiled.evaluate(env).equals(8);
+    }
+
+
+    /**
+     * Expressions that the compiler can't speed up aren't compiled.
+     */
+    public void testNotCompiled() {
+        Schema schema = makeSchema();
+
+        Expression power = new ArithmeticOperator(
+            ArithmeticOperator.Type.POWER, col("i"), new LiteralValue(2));
+        assert ExpressionCompiler.compile(power, schema) == null;
+
+        Expression unknown = new CompareOperator(CompareOperator.Type.EQUALS,
+            new ColumnValue(new ColumnName("u", "x")), new LiteralValue(1));
+        assert ExpressionCompiler.compile(unknown, schema) == null;
+    }
+}
@@ -0,0 +1,137 @@
+package edu.caltech.test.nanodb.functions;
+
+
+import java.util.function.Supplier;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.functions.AggregateFunction;
+import edu.caltech.nanodb.functions.CountAggregate;
+import edu.caltech.nanodb.functions.CountStar;
+import edu.caltech.nanodb.functions.MinMaxAggregate;
+import edu.caltech.nanodb.functions.StdDevVarAggregate;
+import edu.caltech.nanodb.functions.SumAvgAggregate;
+
+
+/**
+ * This class verifies that aggregate functions computed over several parts
+ * of their input, and then merged, produce the same results as computing
+ * them over all of the input at once.
+ */
+@Test(groups = {"framework"})
+public class TestAggregateMerge {
+
+    /** Input values, including repeated values and <tt>NULL</tt>s. */
+    private static final Integer[] VALUES = {
+        5, 3, null, 8, 3, 12, -4, 5, null, 7, 7, 21, 0, 3, 9, -11, 6
+    };
+
+
+    /**
+     * Computes the aggregate over all of the values with one function, and
+     * over several parts of the values with several functions that are then
+     * merged, and returns both results.
+     */
+    private Object[] computeBothWays(Supplier<AggregateFunction> factory,
+                                     Object[] values, int... splits) {
+        AggregateFunction whole = factory.get();
+        whole.clearResult();
+        for (Object value : values)
+            whole.addValue(value);
+
+        AggregateFunction merged = factory.get();
+        merged.clearResult();
+        assert merged.supportsMerge();
+
+        int start = 0;
+        for (int i = 0; i <= splits.length; i++) {
+            int end = (i < splits.length) ? splits[i] : values.length;
+
+            AggregateFunction part = factory.get();
+            part.clearResult();
+            for (int j = start; j < end; j++)
+                part.addValue(values[j]);
+
+            merged.mergeResult(part);
+            start = end;
+        }
+
+        return new Object[] { whole.getResult(), merged.getResult() };
+    }
+
+
+    private void checkMerge(Supplier<AggregateFunction> factory) {
+        int[][] splitsToTry = { {6, 11}, {0, 17}, {2} };
+
+        for (int[] splits : splitsToTry) {
+            Object[] results = computeBothWays(factory, VALUES, splits);
+            assert results[0].equals(results[1]) :
+                "Expected " + results[0] + ", got " + results[1];
+        }
+    }
+
+
+    public void testCountMerge() {
+        checkMerge(() -> new CountAggregate(false, false));
+        checkMerge(() -> new CountAggregate(true, false));
+        checkMerge(CountStar::new);
+
+        Object[] results = computeBothWays(
+            () -> new CountAggregate(true, false), VALUES, 8);
+        assert results[1].equals(11);
+    }
+
+
+    public void testSumAvgMerge() {
+        checkMerge(() -> new SumAvgAggregate(false, false));
+        checkMerge(() -> new SumAvgAggregate(false, true));
+        checkMerge(() -> new SumAvgAggregate(true, false));
+        checkMerge(() -> new SumAvgAggregate(true, true));
+    }
+
+
+    public void testMinMaxMerge() {
+        checkMerge(() -> new MinMaxAggregate(true));
+        checkMerge(() -> new MinMaxAggregate(false));
+    }
+
+
+    public void testStdDevVarMerge() {
+        for (boolean stdDev : new boolean[] {false, true}) {
+            Object[] results = computeBothWays(
+                () -> new StdDevVarAggregate(stdDev), VALUES, 4, 9, 13);
+
+            double whole = (Double) results[0];
+            double merged = (Double) results[1];
+            assert Math.abs(whole - merged) < 1e-9 * Math.abs(whole);
+        }
+
+        // The population variance of 2, 4, 4, 4, 5, 5, 7, 9 is 4.
+        Object[] results = computeBothWays(() -> new StdDevVarAggregate(false),
+            new Object[] {2, 4, 4, 4, 5, 5, 7, 9}, 3);
+        assert Math.abs((Double) results[1] - 4.0) < 1e-12;
+    }
+
+
+    public void testMergeEmptyParts() {
+        Object[] results = computeBothWays(
+            () -> new SumAvgAggregate(false, false), new Object[] {null, null}, 1);
+        assert results[0] == null && results[1] == null;
+
+        results = computeBothWays(() -> new StdDevVarAggregate(true),
+            new Object[] {null}, 0);
+        assert results[0] == null && results[1] == null;
+
+        results = computeBothWays(
+            () -> new CountAggregate(false, false), new Object[] {null, 4}, 1);
+        assert results[1].equals(1);
+    }
+
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testSortedCountDistinctDoesNotMerge() {
+        AggregateFunction fn = new CountAggregate(true, true);
+        assert !fn.supportsMerge();
+        fn.mergeResult(new CountAggregate(true, true));
+    }
+}
@@ -0,0 +1,202 @@
+package edu.caltech.test.nanodb.hashtables;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.hashtables.BytesHashTable;
+import edu.caltech.nanodb.hashtables.KeyHashTable;
+import edu.caltech.nanodb.hashtables.LongHashTable;
+import edu.caltech.nanodb.relations.ColumnType;
+
+
+/**
+ * These tests exercise the open-addressing hash tables used by hash-based
+ * query operators.
+ */
+@Test(groups = {"framework"})
+public class TestHashTables {
+
+    public void testLongHashTable() {
+        LongHashTable table = new LongHashTable(4);
+
+        // Keys that differ only in their high bits, so they must be mixed.
+        for (int i = 0; i < 100000; i++)
+            assert table.add((long) i << 32) == i;
+
+        assert table.size() == 100000;
+        for (int i = 0; i < 100000; i++) {
+            assert table.find((long) i << 32) == i;
+            assert table.add((long) i << 32) == i;
+            assert table.getKey(i) == (long) i << 32;
+        }
+        assert table.find(1) == -1;
+        assert table.size() == 100000;
+
+        // At most 16 bytes per key once the arrays have grown.
+        assert table.getMemoryUsage() <= 16L * 131072;
+
+        table.clear();
+        assert table.size() == 0;
+        assert table.find(0) == -1;
+        assert table.add(42) == 0;
+    }
+
+
+    public void testBytesHashTable() {
+        BytesHashTable table = new BytesHashTable(2);
+
+        byte[] buf = new byte[20];
+        for (int i = 0; i < 1000; i++) {
+            // Keys of varying lengths, stored at varying offsets.
+            int len = i % 10;
+            Arrays.fill(buf, (byte) 0);
+            buf[5] = (byte) i;
+            buf[6] = (byte) (i >> 8);
+            assert table.add(buf, 5, len + 2) == i;
+        }
+
+        assert table.size() == 1000;
+        for (int i = 0; i < 1000; i++) {
+            int len = i % 10;
+            byte[] key = new byte[len + 2];
+            key[0] = (byte) i;
+            key[1] = (byte) (i >> 8);
+            assert table.find(key, 0, key.length) == i;
+            assert table.getKeyLength(i) == key.length;
+            assert Arrays.equals(table.getKeyData(), table.getKeyOffset(i),
+                table.getKeyOffset(i) + key.length, key, 0, key.length);
+        }
+
+        assert table.find(new byte[] {1}, 0, 1) == -1;
+    }
+
+
+    public void testSingleIntegerKeys() {
+        KeyHashTable table = new KeyHashTable(
+            List.of(ColumnType.INTEGER));
+
+        assert table.add(new Object[] {5}) == 0;
+        assert table.add(new Object[] {null}) == 1;
+        assert table.add(new Object[] {-7}) == 2;
+        assert table.add(new Object[] {5}) == 0;
+        assert table.add(new Object[] {null}) == 1;
+        assert table.size() == 3;
+
+        assert table.find(new Object[] {-7}) == 2;
+        assert table.find(new Object[] {8}) == -1;
+
+        assert table.getKey(0).equals(new TupleLiteral(5));
+        assert table.getKey(1).equals(new TupleLiteral((Object) null));
+        assert table.getKey(2).equals(new TupleLiteral(-7));
+    }
+
+
+    public void testCompositeKeys() {
+        List<ColumnType> types = List.of(ColumnType.INTEGER,
+            ColumnType.VARCHAR(20), ColumnType.DOUBLE);
+        KeyHashTable table = new KeyHashTable(types);
+
+        Object[][] keys = {
+            {1, "a", 1.5},
+            {1, "a", null},
+            {null, null, null},
+            {1, "bé", 1.5},
+            {2L, new BigDecimal("1.50"), LocalDate.of(2020, 2, 29)},
+            {LocalDateTime.of(2021, 3, 4, 5, 6, 7), Boolean.TRUE, ""},
+            {1, "", "a"},
+            {1, "a", ""},
+        };
+
+        for (int i = 0; i < keys.length; i++)
+            assert table.add(keys[i]) == i;
+
+        for (int i = 0; i < keys.length; i++) {
+            assert table.add(keys[i].clone()) == i;
+            assert table.getKey(i).equals(new TupleLiteral(keys[i])) :
+                "Got " + table.getKey(i);
+        }
+
+        // Values that are equal but have different types are different keys,
+        // just as for TupleLiterals.
+        assert table.find(new Object[] {1L, "a", 1.5}) == -1;
+        assert table.find(new Object[] {2L, new BigDecimal("1.5"),
+            LocalDate.of(2020, 2, 29)}) == -1;
+    }
+
+
+    /**
+     * Adds many keys to several tables, merges them, and verifies that the
+     * merged table holds each key once.
+     */
+    public void testMergeTables() {
+        for (List<ColumnType> types : List.of(List.of(ColumnType.BIGINT),
+            List.of(ColumnType.BIGINT, ColumnType.VARCHAR(10)))) {
+
+            ArrayList<KeyHashTable> parts = new ArrayList<>();
+            for (int p = 0; p < 3; p++) {
+                KeyHashTable part = new KeyHashTable(types);
+                for (long i = p; i < 5000; i += 2)
+                    part.add(makeKey(types, i));
+
+                part.add(makeKey(types, null));
+                parts.add(part);
+            }
+
+            KeyHashTable merged = new KeyHashTable(types);
+            HashMap<TupleLiteral, Integer> ids = new HashMap<>();
+            for (KeyHashTable part : parts) {
+                for (int id = 0; id < part.size(); id++) {
+                    int mergedId = merged.add(part, id);
+                    Integer oldId = ids.putIfAbsent(part.getKey(id), mergedId);
+                    assert oldId == null || oldId == mergedId;
+                }
+            }
+
+            assert merged.size() == 5001;
+            for (TupleLiteral key : ids.keySet())
+                assert merged.getKey(ids.get(key)).equals(key);
+        }
+    }
+
+
+    private Object[] makeKey(List<ColumnType> types, Long value) {
+        if (types.size() == 1)
+            return new Object[] {value};
+
+        return new Object[] {value, value == null ? null : "k" + value % 7};
+    }
+
+
+    /**
+     * Verifies that the memory used per key is bounded and small.
+     */
+    public void testMemoryPerKey() {
+        int numKeys = 200000;
+
+        KeyHashTable intTable = new KeyHashTable(List.of(ColumnType.INTEGER));
+        KeyHashTable pairTable = new KeyHashTable(
+            List.of(ColumnType.INTEGER, ColumnType.INTEGER));
+
+        for (int i = 0; i < numKeys; i++) {
+            intTable.add(new Object[] {i});
+            pairTable.add(new Object[] {i, -i});
+        }
+
+        // 8 bytes per key plus at most 8 bytes of slots, with the key array
+        // up to half empty.
+        assert intTable.getMemoryUsage() / numKeys <= 24;
+
+        // Each key encodes to 10 bytes, plus 8 bytes of offset and hash, and
+        // up to 8 bytes of slots, with the arrays up to half empty.
+        assert pairTable.getMemoryUsage() / numKeys <= 48;
+    }
+}
@@ -0,0 +1,117 @@
+package edu.caltech.test.nanodb.plannodes;
+
+
+import java.util.HashSet;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.HashDistinctNode;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.plannodes.SortedDistinctNode;
+import edu.caltech.nanodb.plannodes.TupleBagNode;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+
+
+/**
+ * These tests exercise the plan-nodes that remove duplicate rows.
+ */
+@Test(groups = {"framework"})
+public class TestDistinctNodes extends PlanNodeTestCase {
+
+    private TupleBagNode makeBag() {
+        return new TupleBagNode(new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(10))
+        ));
+    }
+
+
+    /**
+     * Verifies that the hash-based node produces each row the first time it
+     * is seen, in the order of its input.
+     */
+    public void testHashDistinct() {
+        TupleBagNode bag = makeBag();
+        bag.addTuple(new TupleLiteral(1, "a"));
+        bag.addTuple(new TupleLiteral(2, "a"));
+        bag.addTuple(new TupleLiteral(1, "a"));
+        bag.addTuple(new TupleLiteral(null, "a"));
+        bag.addTuple(new TupleLiteral(1, "b"));
+        bag.addTuple(new TupleLiteral(null, "a"));
+        bag.addTuple(new TupleLiteral(2, "a"));
+
+        TupleLiteral[] expected = {
+            new TupleLiteral(1, "a"),
+            new TupleLiteral(2, "a"),
+            new TupleLiteral(null, "a"),
+            new TupleLiteral(1, "b")
+        };
+
+        checkOrderedResults(expected, new HashDistinctNode(bag, 1 << 20));
+    }
+
+
+    /**
+     * Verifies that the hash-based node produces each row exactly once when
+     * its hash table is too small for the distinct rows, and that it can be
+     * run again.
+     */
+    public void testHashDistinctSpills() {
+        TupleBagNode bag = makeBag();
+
+        // 5000 and 3 are coprime, so there are 15000 distinct rows.
+        HashSet<TupleLiteral> expected = new HashSet<>();
+        for (int i = 0; i < 20000; i++) {
+            TupleLiteral tup = new TupleLiteral(
+                (i % 5000 == 7) ? null : i % 5000, "v" + i % 3);
+            bag.addTuple(tup);
+            expected.add(tup);
+        }
+
+        PlanNode plan = new HashDistinctNode(bag, 16 * 1024);
+        for (int run = 0; run < 2; run++) {
+            plan.prepare();
+            plan.initialize();
+
+            HashSet<TupleLiteral> seen = new HashSet<>();
+            Tuple tup;
+            while ((tup = plan.getNextTuple()) != null) {
+                boolean added = seen.add(TupleLiteral.fromTuple(tup));
+                assert added : "Duplicate row " + tup;
+            }
+
+            assert seen.equals(expected) :
+                "Got " + seen.size() + " rows, expected " + expected.size();
+        }
+
+        plan.cleanUp();
+    }
+
+
+    /**
+     * Verifies that the sort-based node removes adjacent duplicate rows.
+     */
+    public void testSortedDistinct() {
+        TupleBagNode bag = makeBag();
+        bag.addTuple(new TupleLiteral(null, "a"));
+        bag.addTuple(new TupleLiteral(null, "a"));
+        bag.addTuple(new TupleLiteral(1, "a"));
+        bag.addTuple(new TupleLiteral(1, "a"));
+        bag.addTuple(new TupleLiteral(1, "b"));
+        bag.addTuple(new TupleLiteral(2, "b"));
+        bag.addTuple(new TupleLiteral(2, "b"));
+
+        TupleLiteral[] expected = {
+            new TupleLiteral(null, "a"),
+            new TupleLiteral(1, "a"),
+            new TupleLiteral(1, "b"),
+            new TupleLiteral(2, "b")
+        };
+
+        checkOrderedResults(expected, new SortedDistinctNode(bag));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.caltech.test.nanodb.plannodes;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleComparator;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.plannodes.SortNode;
+import edu.caltech.nanodb.plannodes.TupleBagNode;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+
+
+/**
+ * These tests exercise the sort plan-node, both in memory and with sorted
+ * runs on disk.
+ */
+@Test(groups = {"framework"})
+public class TestSortNode extends PlanNodeTestCase {
+
+    /** The number of rows to sort. */
+    private static final int NUM_ROWS = 20000;
+
+
+    /**
+     * Returns the rows to sort, in the order the child produces them.  The
+     * second column is the row's position, so the order of rows with equal
+     * sort keys can be checked.
+     */
+    private List<TupleLiteral> makeRows() {
+        List<TupleLiteral> rows = new ArrayList<>();
+        for (int i = 0; i < NUM_ROWS; i++) {
+            Integer key = (i % 101 == 3) ? null : (i * 7919) % 1000;
+            rows.add(new TupleLiteral(key, i, "v" + i % 13));
+        }
+
+        return rows;
+    }
+
+
+    /**
+     * Sorts the rows on descending keys with the specified memory limit, and
+     * checks that the results are sorted stably.
+     */
+    private void checkSort(long memoryLimit) {
+        Schema schema = new Schema(
+            new ColumnInfo("K", ColumnType.INTEGER),
+            new ColumnInfo("POS", ColumnType.INTEGER),
+            new ColumnInfo("V", ColumnType.VARCHAR(10))
+        );
+
+        TupleBagNode bag = new TupleBagNode(schema);
+        List<TupleLiteral> expected = makeRows();
+        for (TupleLiteral row : expected)
+            bag.addTuple(row);
+
+        List<OrderByExpression> orderBy = new ArrayList<>();
+        orderBy.add(new OrderByExpression(
+            new ColumnValue(new ColumnName("K")), false));
+
+        // List.sort() is stable.
+        expected.sort(new TupleComparator(schema, orderBy));
+
+        PlanNode plan = new SortNode(bag, orderBy, memoryLimit);
+        checkOrderedResults(expected.toArray(new TupleLiteral[0]), plan);
+        plan.cleanUp();
+    }
+
+
+    public void testSortInMemory() {
+        checkSort(Long.MAX_VALUE);
+    }
+
+
+    public void testSortWithRuns() {
+        checkSort(16 * 1024);
+    }
+}
@@ -1,13 +1,18 @@
 package edu.caltech.test.nanodb.plannodes;
 
 
+import java.util.ArrayList;
+
 import org.testng.annotations.Test;
 
+import edu.caltech.nanodb.expressions.TupleComparator;
 import edu.caltech.nanodb.expressions.TupleLiteral;
 import edu.caltech.nanodb.plannodes.TupleBagNode;
+import edu.caltech.nanodb.queryeval.ColumnStats;
 import edu.caltech.nanodb.relations.ColumnInfo;
 import edu.caltech.nanodb.relations.ColumnType;
 import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
 
 
 @Test(groups = {"framework"})
@@ -92,4 +97,75 @@ public class TestTupleBagNode extends PlanNodeTestCase {
         // tuple sequence.
         assert node.getNextTuple() == null;
     }
+
+
+    /**
+     * Verifies that initializing a prepared Tuple Bag plan node again starts
+     * producing its tuples from the beginning, without preparing it again.
+     */
+    public void testTupleBagReinitialize() {
+        Schema s = new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(10))
+        );
+
+        TupleBagNode node = new TupleBagNode(s);
+
+        node.addTuple(new TupleLiteral(10, "apple"));
+        node.addTuple(new TupleLiteral(20, "banana"));
+        node.addTuple(new TupleLiteral(30, "cherry"));
+
+        TupleLiteral[] expected = {
+            new TupleLiteral(10, "apple"),
+            new TupleLiteral(20, "banana"),
+            new TupleLiteral(30, "cherry")
+        };
+
+        node.prepare();
+        for (int run = 0; run < 3; run++) {
+            node.initialize();
+
+            // Stop partway through one of the runs, to make sure the next
+            // run doesn't pick up where this one left off.
+            int limit = (run == 1) ? 1 : expected.length;
+
+            ArrayList<Tuple> results = new ArrayList<>();
+            while (results.size() < limit) {
+                Tuple tup = node.getNextTuple();
+                if (tup == null)
+                    break;
+
+                results.add(tup);
+            }
+
+            assert results.size() == limit :
+                "Run " + run + " produced " + results.size() + " tuples";
+
+            for (int i = 0; i < limit; i++) {
+                assert TupleComparator.areTuplesEqual(expected[i],
+                    results.get(i)) : "Run " + run + ", tuple " + i;
+            }
+        }
+    }
+
+
+    /**
+     * Verifies that a prepared Tuple Bag plan node reports (empty) column
+     * statistics for every column in its schema.
+     */
+    public void testTupleBagStats() {
+        Schema s = new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(10))
+        );
+
+        TupleBagNode node = new TupleBagNode(s);
+        node.addTuple(new TupleLiteral(10, "apple"));
+        node.prepare();
+
+        assert node.getStats() != null;
+        assert node.getStats().size() == s.numColumns();
+        for (ColumnStats stats : node.getStats())
+            assert stats.getNumUniqueValues() == -1;
+    }
 }
@@ -0,0 +1,272 @@
+package edu.caltech.test.nanodb.queryeval;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.ColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.SelectivityEstimator;
+import edu.caltech.nanodb.queryeval.StatisticsUpdater;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageReader;
+import edu.caltech.nanodb.storage.PageWriter;
+import edu.caltech.nanodb.storage.StatsWriter;
+
+
+/**
+ * This test class exercises the most-common-values lists and histograms
+ * of column statistics, and the selectivity estimates made from them.
+ */
+@Test(groups = {"framework"})
+public class TestColumnDistribution {
+
+    /** The number of rows in the test column. */
+    private static final int NUM_ROWS = 10000;
+
+
+    /**
+     * Returns a skewed value:  half of the rows hold 0, a tenth hold 1, and
+     * the rest are spread evenly over the range [100, 1100).  Every
+     * twentieth row is <tt>NULL</tt>.
+     */
+    private static Integer skewedValue(int i) {
+        if (i % 20 == 19)
+            return null;
+        if (i % 2 == 0)
+            return 0;
+        if (i % 10 == 1)
+            return 1;
+        return 100 + (i * 7) % 1000;
+    }
+
+
+    private static int countRows(CompareOperator.Type type, int value) {
+        int count = 0;
+        for (int i = 0; i < NUM_ROWS; i++) {
+            Integer v = skewedValue(i);
+            if (v == null)
+                continue;
+
+            int cmp = Integer.compare(v, value);
+            switch (type) {
+                case EQUALS:           if (cmp == 0) count++; break;
+                case NOT_EQUALS:       if (cmp != 0) count++; break;
+                case LESS_THAN:        if (cmp < 0) count++; break;
+                case LESS_OR_EQUAL:    if (cmp <= 0) count++; break;
+                case GREATER_THAN:     if (cmp > 0) count++; break;
+                case GREATER_OR_EQUAL: if (cmp >= 0) count++; break;
+            }
+        }
+        return count;
+    }
+
+
+    private static ColumnStats collectStats() {
+        ColumnStatsCollector collector =
+            new ColumnStatsCollector(SQLDataType.INTEGER);
+        for (int i = 0; i < NUM_ROWS; i++)
+            collector.addValue(skewedValue(i));
+
+        assert collector.isExact();
+        return collector.getColumnStats();
+    }
+
+
+    private static Schema makeSchema() {
+        return new Schema(new ColumnInfo("A", "T", ColumnType.INTEGER));
+    }
+
+
+    private static float estimate(CompareOperator.Type type, int value,
+                                  ColumnStats stats) {
+        ArrayList<ColumnStats> list = new ArrayList<>();
+        list.add(stats);
+        CompareOperator comp = new CompareOperator(type,
+            new ColumnValue(new ColumnName("T", "A")), new LiteralValue(value));
+        return SelectivityEstimator.estimateSelectivity(comp, makeSchema(), list);
+    }
+
+
+    private static void checkEstimate(CompareOperator.Type type, int value,
+                                      ColumnStats stats, float tolerance) {
+        float expected = (float) countRows(type, value) / NUM_ROWS;
+        float actual = estimate(type, value, stats);
+        assert Math.abs(actual - expected) <= tolerance :
+            String.format("A %s %d:  estimated %f, actually %f", type, value,
+                actual, expected);
+    }
+
+
+    /**
+     * Verifies that the most common values and histogram are found.
+     */
+    public void testDistribution() {
+        ColumnStats stats = collectStats();
+        assert stats.hasDistribution();
+
+        Object[] mcvs = stats.getMCVValues();
+        float[] freqs = stats.getMCVFrequencies();
+        assert mcvs.length == 2 : mcvs.length;
+        assert mcvs[0].equals(0) && Math.abs(freqs[0] - 0.5f) < 0.001f;
+        assert mcvs[1].equals(1) && Math.abs(freqs[1] - 0.1f) < 0.001f;
+        assert Math.abs(stats.getNonNullFraction() - 0.95f) < 0.001f;
+
+        Object[] bounds = stats.getHistogramBounds();
+        assert bounds.length == ColumnStatsCollector.NUM_HISTOGRAM_BUCKETS + 1;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < NUM_ROWS; i++) {
+            Integer v = skewedValue(i);
+            if (v != null && v >= 100) {
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+        }
+        assert bounds[0].equals(min) && bounds[bounds.length - 1].equals(max);
+    }
+
+
+    /**
+     * Verifies that the most common values are found from a sample once
+     * there are too many values to count exactly.
+     */
+    public void testSampledDistribution() {
+        ColumnStatsCollector collector =
+            new ColumnStatsCollector(SQLDataType.INTEGER);
+        for (int i = 0; i < 100000; i++)
+            collector.addValue(i % 2 == 0 ? -1 : i);
+
+        assert !collector.isExact();
+        ColumnStats stats = collector.getColumnStats();
+        assert stats.getMCVValues().length == 1;
+        assert Math.abs(stats.getMCVFrequency(-1) - 0.5f) < 0.05f;
+        assert Math.abs(stats.getOtherFraction() - 0.5f) < 0.05f;
+        assert stats.getHistogramBounds() != null;
+    }
+
+
+    /**
+     * Verifies that equality and range estimates follow the skew.
+     */
+    public void testEstimates() {
+        ColumnStats stats = collectStats();
+
+        checkEstimate(CompareOperator.Type.EQUALS, 0, stats, 0.001f);
+        checkEstimate(CompareOperator.Type.EQUALS, 1, stats, 0.001f);
+        checkEstimate(CompareOperator.Type.EQUALS, 500, stats, 0.001f);
+        checkEstimate(CompareOperator.Type.NOT_EQUALS, 0, stats, 0.001f);
+
+        for (int value : new int[] {-5, 0, 1, 50, 150, 600, 1098, 2000}) {
+            checkEstimate(CompareOperator.Type.LESS_THAN, value, stats, 0.02f);
+            checkEstimate(CompareOperator.Type.LESS_OR_EQUAL, value, stats, 0.02f);
+            checkEstimate(CompareOperator.Type.GREATER_THAN, value, stats, 0.02f);
+            checkEstimate(CompareOperator.Type.GREATER_OR_EQUAL, value, stats, 0.02f);
+        }
+    }
+
+
+    /**
+     * Verifies that an equijoin between skewed columns accounts for their
+     * common values.
+     */
+    public void testJoinEstimate() {
+        ColumnStats stats = collectStats();
+        Schema schema = new Schema(
+            new ColumnInfo("A", "T", ColumnType.INTEGER),
+            new ColumnInfo("A", "U", ColumnType.INTEGER));
+        ArrayList<ColumnStats> list = new ArrayList<>();
+        list.add(stats);
+        list.add(stats);
+
+        CompareOperator comp = new CompareOperator(CompareOperator.Type.EQUALS,
+            new ColumnValue(new ColumnName("T", "A")),
+            new ColumnValue(new ColumnName("U", "A")));
+        float estimate = SelectivityEstimator.estimateSelectivity(comp, schema, list);
+
+        // 0.5^2 + 0.1^2 + 0.35^2 / 1000
+        float expected = 0.25f + 0.01f + 0.35f * 0.35f / 1000;
+        assert Math.abs(estimate - expected) < 0.001f : estimate;
+    }
+
+
+    /**
+     * Verifies that filtering on a range keeps the common values in the
+     * range, rescaled to the filtered rows.
+     */
+    public void testUpdateStats() {
+        ColumnStats stats = collectStats();
+        ArrayList<ColumnStats> list = new ArrayList<>();
+        list.add(stats);
+
+        CompareOperator comp = new CompareOperator(CompareOperator.Type.LESS_THAN,
+            new ColumnValue(new ColumnName("T", "A")), new LiteralValue(100));
+        ColumnStats updated =
+            StatisticsUpdater.updateStats(comp, makeSchema(), list).get(0);
+
+        // Only 0 and 1 remain, in proportion 5:1.
+        assert updated.getMCVValues().length == 2;
+        assert Math.abs(updated.getMCVFrequency(0) - 5.0f / 6) < 0.01f;
+        assert Math.abs(updated.getMCVFrequency(1) - 1.0f / 6) < 0.01f;
+        assert updated.getOtherFraction() < 0.01f;
+
+        comp = new CompareOperator(CompareOperator.Type.EQUALS,
+            new ColumnValue(new ColumnName("T", "A")), new LiteralValue(0));
+        updated = StatisticsUpdater.updateStats(comp, makeSchema(), list).get(0);
+        assert updated.getNumUniqueValues() == 1;
+        assert updated.getMCVFrequency(0) == 1.0f;
+    }
+
+
+    /**
+     * Verifies that distributions are written to and read back from a page.
+     */
+    public void testStatsRoundTrip() {
+        Schema schema = new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(20)));
+
+        ColumnStatsCollector strings =
+            new ColumnStatsCollector(SQLDataType.VARCHAR);
+        for (int i = 0; i < 500; i++)
+            strings.addValue(i % 3 == 0 ? "common" : "value" + i);
+
+        ArrayList<ColumnStats> colStats = new ArrayList<>();
+        colStats.add(collectStats());
+        colStats.add(strings.getColumnStats());
+        TableStats stats = new TableStats(10, NUM_ROWS, 12.0f, colStats);
+
+        DBPage page = new DBPage(new byte[8192]);
+        StatsWriter.writeTableStats(schema, stats, new PageWriter(page));
+        TableStats read = StatsWriter.readTableStats(new PageReader(page), schema);
+
+        for (int i = 0; i < 2; i++) {
+            ColumnStats expected = colStats.get(i);
+            ColumnStats actual = read.getColumnStats(i);
+            assert actual.hasDistribution();
+            assert Arrays.equals(expected.getMCVValues(), actual.getMCVValues());
+            assert Arrays.equals(expected.getMCVFrequencies(), actual.getMCVFrequencies());
+            assert Arrays.equals(expected.getHistogramBounds(), actual.getHistogramBounds());
+            assert expected.getOtherFraction() == actual.getOtherFraction();
+        }
+
+        // In a small page, only the distributions that fit are kept.
+        DBPage small = new DBPage(new byte[128]);
+        StatsWriter.writeTableStats(schema, stats, new PageWriter(small));
+        read = StatsWriter.readTableStats(new PageReader(small), schema);
+        assert read.getColumnStats(0).getNumUniqueValues() ==
+            colStats.get(0).getNumUniqueValues();
+        assert !read.getColumnStats(1).hasDistribution();
+    }
+}
@@ -0,0 +1,118 @@
+package edu.caltech.test.nanodb.queryeval;
+
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.ColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.HyperLogLog;
+import edu.caltech.nanodb.relations.SQLDataType;
+
+
+/**
+ * This test class exercises the {@link HyperLogLog} sketch, and the column
+ * statistics collector that uses it.
+ */
+@Test(groups = {"framework"})
+public class TestHyperLogLog {
+
+    private static void checkEstimate(long estimate, long expected,
+                                      double tolerance) {
+        assert Math.abs(estimate - expected) <= expected * tolerance :
+            "Estimated " + estimate + " distinct values; expected " + expected;
+    }
+
+
+    /**
+     * Verifies that small and large numbers of distinct values, of several
+     * types, are estimated accurately, and that repeats aren't counted.
+     */
+    public void testEstimates() {
+        HyperLogLog ints = new HyperLogLog();
+        HyperLogLog strings = new HyperLogLog();
+        assert ints.estimate() == 0;
+
+        for (int i = 0; i < 200000; i++) {
+            ints.add(i % 100000);
+            strings.add("value-" + (i % 50000));
+            if (i == 999)
+                checkEstimate(ints.estimate(), 1000, 0.02);
+        }
+
+        checkEstimate(ints.estimate(), 100000, 0.03);
+        checkEstimate(strings.estimate(), 50000, 0.03);
+
+        ints.add(null);
+        checkEstimate(ints.estimate(), 100000, 0.03);
+    }
+
+
+    /**
+     * Verifies that merging two sketches estimates their union.
+     */
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        for (long i = 0; i < 30000; i++) {
+            a.add(i);
+            b.add(i + 20000);
+        }
+
+        a.merge(b);
+        checkEstimate(a.estimate(), 50000, 0.06);
+    }
+
+
+    /**
+     * Verifies that the collector counts exactly until it has seen many
+     * distinct values, and then switches to a sketch.
+     */
+    public void testCollectorSwitchesToSketch() {
+        ColumnStatsCollector collector =
+            new ColumnStatsCollector(SQLDataType.INTEGER);
+        for (int i = 0; i < ColumnStatsCollector.MAX_EXACT_VALUES; i++) {
+            collector.addValue(i);
+            collector.addValue(null);
+        }
+
+        assert collector.isExact();
+        assert collector.getNumUniqueValues() ==
+            ColumnStatsCollector.MAX_EXACT_VALUES;
+
+        for (int i = 0; i < 100000; i++)
+            collector.addValue(i);
+
+        assert !collector.isExact();
+        checkEstimate(collector.getNumUniqueValues(), 100000, 0.03);
+
+        ColumnStats stats = collector.getColumnStats();
+        assert stats.getNumNullValues() == ColumnStatsCollector.MAX_EXACT_VALUES;
+        assert stats.getMinValue().equals(0);
+        assert stats.getMaxValue().equals(99999);
+    }
+
+
+    /**
+     * Verifies that a sample's statistics are scaled up to a whole table.
+     */
+    public void testScaledStats() {
+        ColumnStatsCollector unique =
+            new ColumnStatsCollector(SQLDataType.INTEGER);
+        ColumnStatsCollector repeated =
+            new ColumnStatsCollector(SQLDataType.INTEGER);
+        for (int i = 0; i < 1000; i++) {
+            unique.addValue(i % 10 == 0 ? null : i);
+            repeated.addValue(i % 7);
+        }
+
+        // Every sampled value was unique, so the column is assumed unique.
+        ColumnStats stats = unique.getColumnStats(10000);
+        assert stats.getNumNullValues() == 1000;
+        assert stats.getNumUniqueValues() == 9000;
+
+        // Every sampled value was repeated, so no values were missed.
+        stats = repeated.getColumnStats(10000);
+        assert stats.getNumNullValues() == 0;
+        assert stats.getNumUniqueValues() == 7;
+    }
+}
@@ -0,0 +1,211 @@
+package edu.caltech.test.nanodb.queryeval;
+
+
+import java.util.ArrayList;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.BooleanOperator;
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.Expression;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.ColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
+import edu.caltech.nanodb.queryeval.MultiColumnStatsCollector;
+import edu.caltech.nanodb.queryeval.SelectivityEstimator;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.storage.DBPage;
+import edu.caltech.nanodb.storage.PageReader;
+import edu.caltech.nanodb.storage.PageWriter;
+import edu.caltech.nanodb.storage.StatsWriter;
+
+
+/**
+ * This test class exercises statistics on groups of columns, and the
+ * selectivity estimates made from them for correlated predicates.
+ */
+@Test(groups = {"framework"})
+public class TestMultiColumnStats {
+
+    /** The number of rows in the test table. */
+    private static final int NUM_ROWS = 5000;
+
+
+    /** The number of distinct zip codes in the test table. */
+    private static final int NUM_ZIPS = 100;
+
+
+    /** The number of distinct cities in the test table. */
+    private static final int NUM_CITIES = 20;
+
+
+    /**
+     * Returns a row of the test table.  Each zip code lies in one city, so
+     * the zip code determines the city.
+     */
+    private static TupleLiteral makeRow(int i) {
+        int zip = i % NUM_ZIPS;
+        return new TupleLiteral(zip, zip % NUM_CITIES);
+    }
+
+
+    private static MultiColumnStats makeDeclaration() {
+        return new MultiColumnStats("zip_city", new int[] {0, 1},
+            new String[] {"ZIP", "CITY"});
+    }
+
+
+    /**
+     * Analyzes the test table, with statistics on the group of its columns.
+     */
+    private static TableStats analyze() {
+        ArrayList<ColumnStatsCollector> collectors = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+            collectors.add(new ColumnStatsCollector(SQLDataType.INTEGER));
+
+        MultiColumnStatsCollector groupCollector =
+            new MultiColumnStatsCollector(makeDeclaration());
+        for (int i = 0; i < NUM_ROWS; i++) {
+            TupleLiteral row = makeRow(i);
+            for (int k = 0; k < 2; k++)
+                collectors.get(k).addValue(row.getColumnValue(k));
+
+            groupCollector.addTuple(row);
+        }
+
+        ArrayList<ColumnStats> colStats = new ArrayList<>();
+        for (ColumnStatsCollector collector : collectors)
+            colStats.add(collector.getColumnStats());
+
+        TableStats stats = new TableStats(10, NUM_ROWS, 8.0f, colStats);
+        ArrayList<MultiColumnStats> groups = new ArrayList<>();
+        groups.add(groupCollector.getMultiColumnStats());
+        stats.setMultiColumnStats(groups);
+        return stats;
+    }
+
+
+    private static Schema makeSchema(String tableName) {
+        return new Schema(
+            new ColumnInfo("ZIP", tableName, ColumnType.INTEGER),
+            new ColumnInfo("CITY", tableName, ColumnType.INTEGER));
+    }
+
+
+    private static Expression equals(String table, String column, Object value) {
+        return new CompareOperator(CompareOperator.Type.EQUALS,
+            new ColumnValue(new ColumnName(table, column)),
+            new LiteralValue(value));
+    }
+
+
+    private static Expression joinOn(String column) {
+        return new CompareOperator(CompareOperator.Type.EQUALS,
+            new ColumnValue(new ColumnName("T", column)),
+            new ColumnValue(new ColumnName("U", column)));
+    }
+
+
+    private static Expression and(Expression... terms) {
+        BooleanOperator bool = new BooleanOperator(BooleanOperator.Type.AND_EXPR);
+        for (Expression term : terms)
+            bool.addTerm(term);
+
+        return bool;
+    }
+
+
+    /**
+     * Verifies that the group's distinct combinations and functional
+     * dependencies are collected.
+     */
+    public void testCollect() {
+        MultiColumnStats group = analyze().getMultiColumnStats("zip_city");
+        assert group.getNumUniqueValues() == NUM_ZIPS;
+
+        // The zip code determines the city, but each city has several zips.
+        assert group.getDependencyDegree(0, 1) == 1.0f;
+        assert group.getDependencyDegree(1, 0) == 0.0f;
+    }
+
+
+    /**
+     * Verifies that equalities on correlated columns are estimated from the
+     * group's statistics, instead of as independent predicates.
+     */
+    public void testCorrelatedEqualities() {
+        TableStats stats = analyze();
+        Expression pred = and(equals("T", "ZIP", 23), equals("T", "CITY", 3));
+        float estimate = SelectivityEstimator.estimateSelectivity(pred,
+            makeSchema("T"), stats.getAllColumnStats());
+
+        // Independent predicates would give 1 / 2000.
+        float expected = 1.0f / NUM_ZIPS;
+        assert Math.abs(estimate - expected) < 0.001f : estimate;
+
+        // Without dependencies, the number of combinations is used.
+        stats.getMultiColumnStats("zip_city").setDependencies(null);
+        estimate = SelectivityEstimator.estimateSelectivity(pred,
+            makeSchema("T"), stats.getAllColumnStats());
+        assert Math.abs(estimate - expected) < 0.001f : estimate;
+
+        // Columns of another table aren't estimated with the group.
+        Schema schema = new Schema(makeSchema("T"), makeSchema("U"));
+        ArrayList<ColumnStats> both = new ArrayList<>(stats.getAllColumnStats());
+        both.addAll(analyze().getAllColumnStats());
+        pred = and(equals("T", "ZIP", 23), equals("U", "CITY", 3));
+        estimate = SelectivityEstimator.estimateSelectivity(pred, schema, both);
+        expected = 1.0f / NUM_ZIPS / NUM_CITIES;
+        assert Math.abs(estimate - expected) < 0.0001f : estimate;
+    }
+
+
+    /**
+     * Verifies that a join on all of a group's columns is estimated from
+     * the number of distinct combinations on each side.
+     */
+    public void testMultiColumnJoin() {
+        Schema schema = new Schema(makeSchema("T"), makeSchema("U"));
+        ArrayList<ColumnStats> stats = new ArrayList<>();
+        stats.addAll(analyze().getAllColumnStats());
+        stats.addAll(analyze().getAllColumnStats());
+
+        Expression pred = and(joinOn("ZIP"), joinOn("CITY"));
+        float estimate =
+            SelectivityEstimator.estimateSelectivity(pred, schema, stats);
+
+        // Matching zip codes always have matching cities.
+        float expected = 1.0f / NUM_ZIPS;
+        assert Math.abs(estimate - expected) < 0.001f : estimate;
+    }
+
+
+    /**
+     * Verifies that groups are written to and read back from a page, and
+     * are linked to their columns' statistics.
+     */
+    public void testStatsRoundTrip() {
+        Schema schema = makeSchema(null);
+        TableStats stats = analyze();
+
+        DBPage page = new DBPage(new byte[512]);
+        StatsWriter.writeTableStats(schema, stats, new PageWriter(page));
+        TableStats read = StatsWriter.readTableStats(new PageReader(page), schema);
+
+        MultiColumnStats group = read.getMultiColumnStats("zip_city");
+        assert group != null;
+        assert group.getNumUniqueValues() == NUM_ZIPS;
+        assert group.getDependencyDegree(0, 1) == 1.0f;
+        assert group.getColumnNames()[1].equals("CITY");
+        assert read.getColumnStats(1).getMultiColumnStats().contains(group);
+        assert read.getColumnStats(0).getNumUniqueValues() == NUM_ZIPS;
+    }
+}
@@ -0,0 +1,137 @@
+package edu.caltech.test.nanodb.relations;
+
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.ColumnVector;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.TupleBatch;
+import org.testng.annotations.Test;
+
+
+/**
+ * This class exercises the column vectors and tuple batches used by the
+ * batch-at-a-time execution path.
+ */
+@Test(groups = {"framework"})
+public class TestTupleBatch {
+
+    public void testPrimitiveVectors() {
+        ColumnVector ints = new ColumnVector(ColumnType.INTEGER, 100);
+        ColumnVector doubles = new ColumnVector(ColumnType.DOUBLE, 100);
+        assert ints.getKind() == ColumnVector.Kind.INT;
+        assert doubles.getKind() == ColumnVector.Kind.DOUBLE;
+
+        for (int i = 0; i < 100; i++) {
+            ints.append(i % 3 == 0 ? null : i);
+            doubles.append(i % 5 == 0 ? null : i * 0.5);
+        }
+
+        assert ints.size() == 100;
+        for (int i = 0; i < 100; i++) {
+            assert ints.isNull(i) == (i % 3 == 0);
+            if (i % 3 != 0) {
+                assert ints.getInt(i) == i;
+                assert ints.getObject(i).equals(i);
+            } else {
+                assert ints.getObject(i) == null;
+            }
+
+            assert doubles.isNull(i) == (i % 5 == 0);
+            if (i % 5 != 0)
+                assert doubles.getDouble(i) == i * 0.5;
+        }
+
+        ints.clear();
+        assert ints.size() == 0;
+        ints.append(7);
+        assert !ints.isNull(0);
+        assert ints.getInt(0) == 7;
+    }
+
+
+    public void testSetSkipsRowsAsNull() {
+        ColumnVector v = new ColumnVector(ColumnType.BIGINT, 10);
+        v.set(4, 40L);
+
+        assert v.size() == 5;
+        for (int i = 0; i < 4; i++)
+            assert v.isNull(i);
+
+        assert v.getLong(4) == 40L;
+    }
+
+
+    public void testMismatchedValuesConvertToObjects() {
+        ColumnVector v = new ColumnVector(ColumnType.INTEGER, 10);
+        v.append(1);
+        v.append(null);
+        v.append(3L);
+
+        assert v.getKind() == ColumnVector.Kind.OBJECT;
+        assert v.getObject(0).equals(1);
+        assert v.getObject(1) == null;
+        assert v.getObject(2).equals(3L);
+    }
+
+
+    private TupleBatch makeBatch(int numRows) {
+        Schema schema = new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(20))
+        );
+
+        TupleBatch batch = new TupleBatch(schema, 16);
+        for (int i = 0; i < numRows; i++) {
+            TupleLiteral tup = new TupleLiteral();
+            tup.addValue(i);
+            tup.addValue("row" + i);
+            batch.addTuple(tup);
+        }
+        return batch;
+    }
+
+
+    public void testBatchSelection() {
+        TupleBatch batch = makeBatch(10);
+        assert batch.size() == 10;
+        assert batch.getSelection() == null;
+
+        batch.setSelection(new int[] {1, 3, 5, 7, 9}, 5);
+        assert batch.size() == 5;
+        assert batch.getNumPhysicalRows() == 10;
+        assert batch.getPhysicalRow(2) == 5;
+
+        TupleLiteral tup = batch.getTuple(2);
+        assert tup.getColumnValue(0).equals(5);
+        assert tup.getColumnValue(1).equals("row5");
+
+        batch.restrict(1, 3);
+        assert batch.size() == 3;
+        assert batch.getPhysicalRow(0) == 3;
+        assert batch.getPhysicalRow(2) == 7;
+    }
+
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRestrictOutOfRange() {
+        TupleBatch batch = makeBatch(4);
+        batch.restrict(2, 3);
+    }
+
+
+    public void testBatchFillAndClear() {
+        TupleBatch batch = makeBatch(16);
+        assert batch.isFull();
+
+        TupleBatch.Row row = batch.getRowView();
+        row.setRow(12);
+        assert row.getColumnValue(0).equals(12);
+        assert row.getColumnValue(1).equals("row12");
+
+        batch.clear();
+        assert batch.size() == 0;
+        assert !batch.isFull();
+    }
+}
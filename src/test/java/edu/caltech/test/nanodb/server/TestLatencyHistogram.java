@@ -0,0 +1,88 @@
+package edu.caltech.test.nanodb.server;
+
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.server.performance.LatencyHistogram;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+
+
+/**
+ * This test class exercises the latency histograms and striped counters
+ * of the performance-counter mechanism.
+ */
+@Test(groups = {"framework"})
+public class TestLatencyHistogram {
+
+    /**
+     * Verifies the count, mean, maximum and percentiles of a histogram.
+     */
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assert histogram.getPercentileNanos(50) == 0;
+
+        // 90 latencies of 3us, and 10 of 1ms.
+        for (int i = 0; i < 90; i++)
+            histogram.record(3_000);
+        for (int i = 0; i < 10; i++)
+            histogram.record(1_000_000);
+
+        assert histogram.getCount() == 100;
+        assert histogram.getMaxNanos() == 1_000_000;
+        assert histogram.getMeanNanos() == (90 * 3_000 + 10 * 1_000_000) / 100;
+
+        // Percentiles are the upper bounds of their buckets.
+        long p50 = histogram.getPercentileNanos(50);
+        assert p50 >= 3_000 && p50 <= 6_000 : p50;
+        assert histogram.getPercentileNanos(95) == 1_000_000;
+        assert histogram.getPercentileNanos(100) == 1_000_000;
+
+        histogram.clear();
+        assert histogram.getCount() == 0;
+        assert histogram.getMaxNanos() == 0;
+    }
+
+
+    /**
+     * Verifies that counters and histograms are updated correctly from
+     * several threads at once.
+     */
+    public void testConcurrentUpdates() throws Exception {
+        final String counter = "test.concurrentCounter";
+        final String latency = "test.concurrentLatency";
+        final int numThreads = 4;
+        final int numUpdates = 10000;
+
+        PerformanceCounters.clear(counter);
+        PerformanceCounters.getHistogram(latency).clear();
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < numUpdates; i++) {
+                    PerformanceCounters.inc(counter);
+                    PerformanceCounters.recordLatency(latency, i);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+
+        assert PerformanceCounters.get(counter) == numThreads * numUpdates;
+        assert PerformanceCounters.getHistogram(latency).getCount() ==
+            numThreads * numUpdates;
+        assert PerformanceCounters.getHistogram(latency).getMaxNanos() ==
+            numUpdates - 1;
+
+        assert PerformanceCounters.clear(counter) == numThreads * numUpdates;
+        assert PerformanceCounters.get(counter) == 0;
+
+        // With no concurrent updates, the updates return the new value.
+        assert PerformanceCounters.inc(counter) == 1;
+        assert PerformanceCounters.add(counter, 5) == 6;
+        assert PerformanceCounters.sub(counter, 2) == 4;
+        assert PerformanceCounters.dec(counter) == 3;
+    }
+}
@@ -89,6 +89,7 @@ public class SqlTestCase {
         Properties props = new Properties();
         props.setProperty(ServerProperties.PROP_BASE_DIRECTORY,
             testBaseDir.getAbsolutePath());
+        configureServer(props);
 
         server.startup(props);
 
@@ -112,6 +113,18 @@ public class SqlTestCase {
     }
 
 
+    /**
+     * Subclasses can override this method to specify additional server
+     * properties, such as read-only properties that can only be set when the
+     * server is started.  The default implementation does nothing.
+     *
+     * @param props the properties that the test server will be started with
+     */
+    protected void configureServer(Properties props) {
+        // Do nothing by default.
+    }
+
+
     private void loadTestSQLProperties() throws IOException {
         InputStream is =
             getClass().getClassLoader().getResourceAsStream(TEST_SQL_PROPS);
@@ -0,0 +1,166 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.sqlparse.ParseUtil;
+
+
+/**
+ * This class exercises equijoins, which are planned as adaptive joins, to
+ * see that each strategy the join can choose produces the right results.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestAdaptiveJoin extends SqlTestCase {
+
+    /** The number of rows in the probe table. */
+    private static final int NUM_PROBE = 200;
+
+
+    /** The number of rows in the build table. */
+    private static final int NUM_BUILD = 150;
+
+
+    /** The query that is run against the test tables. */
+    private static final String QUERY =
+        "SELECT p.id, p.k, b.id, b.tag FROM test_aj_probe p " +
+        "JOIN test_aj_build b ON p.k = b.k AND p.id > b.id;";
+
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_aj_probe (id INTEGER, k INTEGER);");
+        tryDoCommand("CREATE TABLE test_aj_build (id INTEGER, k INTEGER, " +
+            "tag VARCHAR(10));");
+
+        for (int i = 0; i < NUM_PROBE; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_aj_probe VALUES (%d, %s);", i, probeKey(i)));
+        }
+
+        for (int i = 0; i < NUM_BUILD; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_aj_build VALUES (%d, %s, 't%d');",
+                i, buildKey(i), i % 4));
+        }
+    }
+
+
+    private static Integer probeKey(int i) {
+        return (i % 23 == 0) ? null : i % 17;
+    }
+
+
+    private static Integer buildKey(int i) {
+        return (i % 19 == 0) ? null : i % 13;
+    }
+
+
+    @AfterMethod
+    public void resetProperties() {
+        PropertyRegistry props = server.getPropertyRegistry();
+        props.setPropertyValue(ServerProperties.PROP_ADAPTIVE_JOIN_THRESHOLD,
+            ServerProperties.DEFAULT_ADAPTIVE_JOIN_THRESHOLD);
+        props.setPropertyValue(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT,
+            ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
+    }
+
+
+    private TupleLiteral[] expectedResults() {
+        List<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_PROBE; i++) {
+            for (int j = 0; j < NUM_BUILD; j++) {
+                Integer pk = probeKey(i);
+                if (pk != null && pk.equals(buildKey(j)) && i > j)
+                    expected.add(new TupleLiteral(i, pk, j, "t" + j % 4));
+            }
+        }
+
+        return expected.toArray(new TupleLiteral[0]);
+    }
+
+
+    /**
+     * Plans and runs the test query, and returns the printed plan, which
+     * reports the strategy the adaptive join chose.
+     */
+    private String runPlan(int expectedRows) {
+        SelectCommand cmd = (SelectCommand) ParseUtil.parseCommand(QUERY);
+        SelectClause selClause = cmd.getSelectClause();
+        selClause.computeSchema(server.getStorageManager().getTableManager(), null);
+        PlanNode plan = server.getQueryPlanner().makePlan(selClause, null);
+
+        plan.initialize();
+        int numRows = 0;
+        while (plan.getNextTuple() != null)
+            numRows++;
+
+        plan.cleanUp();
+        assert numRows == expectedRows : "Got " + numRows + " rows";
+
+        String planText = PlanNode.printNodeTreeToString(plan);
+        assert planText.contains("AdaptiveJoin") : planText;
+        return planText;
+    }
+
+
+    /**
+     * With the default threshold, the build side is too large for nested
+     * loops, so the hash strategy is used.
+     */
+    public void testHashStrategy() throws Throwable {
+        TupleLiteral[] expected = expectedResults();
+        CommandResult result = server.doCommand(QUERY, true);
+        assert checkUnorderedResults(expected, result);
+
+        String plan = runPlan(expected.length);
+        assert plan.contains("chose hash for " + NUM_PROBE + " build rows") ||
+               plan.contains("chose hash for " + NUM_BUILD + " build rows") : plan;
+    }
+
+
+    /**
+     * With a threshold above the build side's size, nested loops are used.
+     */
+    public void testNestedLoopStrategy() throws Throwable {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_ADAPTIVE_JOIN_THRESHOLD, 1000);
+
+        TupleLiteral[] expected = expectedResults();
+        CommandResult result = server.doCommand(QUERY, true);
+        assert checkUnorderedResults(expected, result);
+
+        String plan = runPlan(expected.length);
+        assert plan.contains("chose nested_loop") : plan;
+    }
+
+
+    /**
+     * With a tiny memory limit, the build rows are hashed a chunk at a time.
+     */
+    public void testChunkedBuild() throws Throwable {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_ADAPTIVE_JOIN_THRESHOLD, 0);
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_OPERATOR_MEMORY_LIMIT, 1024);
+
+        TupleLiteral[] expected = expectedResults();
+        CommandResult result = server.doCommand(QUERY, true);
+        assert checkUnorderedResults(expected, result);
+
+        String plan = runPlan(expected.length);
+        assert plan.contains("chunks") : plan;
+    }
+}
@@ -157,7 +157,7 @@ public class TestAggregation extends SqlTestCase {
         result = server.doCommand(
             "SELECT VARIANCE(balance) FROM test_aggregate", true);
         TupleLiteral[] expected1 = {
-            createTupleFromNum(5.0809257708733545E12)
+            createTupleFromNum(5.080925770873357E12)
         };
         assert checkSizeResults(expected1, result);
         assert checkOrderedResults(expected1, result);
@@ -0,0 +1,184 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.TableStatsMaintainer;
+
+
+/**
+ * This class exercises the maintenance of table statistics as rows change,
+ * and the automatic re-analysis of tables once enough rows have changed.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestAutoAnalyze extends SqlTestCase {
+
+    @AfterMethod
+    public void resetProperties() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_AUTO_ANALYZE,
+            ServerProperties.DEFAULT_AUTO_ANALYZE);
+    }
+
+
+    private TableInfo openTable(String tableName) {
+        return server.getStorageManager().getTableManager()
+            .openTable(tableName);
+    }
+
+
+    private int getChangesSinceAnalyze(String tableName) {
+        return server.getStorageManager().getStatsMaintainer()
+            .getChangesSinceAnalyze(openTable(tableName));
+    }
+
+
+    private void insertRows(String tableName, int first, int count)
+        throws Exception {
+        for (int i = first; i < first + count; i++) {
+            tryDoCommand(String.format("INSERT INTO %s VALUES (%d, 'v%d');",
+                tableName, i, i % 7));
+        }
+    }
+
+
+    /**
+     * Verifies that inserts keep the tuple and page counts current, without
+     * the table being analyzed.
+     */
+    public void testCountsTrackInserts() throws Exception {
+        tryDoCommand("CREATE TABLE test_aa_counts (a INTEGER, b VARCHAR(10)) " +
+            "PROPERTIES (pagesize = 512);");
+
+        int numRows = TableStatsMaintainer.AUTO_ANALYZE_MIN_CHANGES;
+        insertRows("test_aa_counts", 0, numRows);
+
+        TableInfo tableInfo = openTable("test_aa_counts");
+        TableStats stats = tableInfo.getTupleFile().getStats();
+        assert stats.numTuples == numRows : stats;
+        assert stats.numDataPages ==
+            tableInfo.getTupleFile().getDBFile().getNumPages() - 1 : stats;
+        assert stats.numDataPages > 1 : stats;
+
+        assert getChangesSinceAnalyze("test_aa_counts") == numRows;
+        assert stats.getColumnStats(0).getNumUniqueValues() == -1 : stats;
+
+        tryDoCommand("DELETE FROM test_aa_counts WHERE a < 10;");
+        stats = openTable("test_aa_counts").getTupleFile().getStats();
+        assert stats.numTuples == numRows - 10 : stats;
+    }
+
+
+    /**
+     * Verifies that the table is analyzed once enough rows have changed, and
+     * that its modification count then starts over.
+     */
+    public void testAnalyzeAfterChanges() throws Exception {
+        tryDoCommand("CREATE TABLE test_aa_auto (a INTEGER, b VARCHAR(10));");
+
+        int numRows = TableStatsMaintainer.AUTO_ANALYZE_MIN_CHANGES + 1;
+        insertRows("test_aa_auto", 0, numRows);
+
+        assert getChangesSinceAnalyze("test_aa_auto") == 0;
+
+        TableStats stats = openTable("test_aa_auto").getTupleFile().getStats();
+        assert stats.numTuples == numRows : stats;
+        assert stats.getColumnStats(0).getNumUniqueValues() == numRows : stats;
+        assert stats.getColumnStats(1).getNumUniqueValues() == 7 : stats;
+
+        // The threshold now includes a percentage of the analyzed rows.
+        insertRows("test_aa_auto", numRows, 10);
+        assert getChangesSinceAnalyze("test_aa_auto") == 10;
+    }
+
+
+    /**
+     * Verifies that tables aren't analyzed automatically when the feature is
+     * turned off, but that their counts are still maintained.
+     */
+    public void testAutoAnalyzeDisabled() throws Exception {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_AUTO_ANALYZE, false);
+        tryDoCommand("CREATE TABLE test_aa_off (a INTEGER, b VARCHAR(10));");
+
+        int numRows = TableStatsMaintainer.AUTO_ANALYZE_MIN_CHANGES * 2;
+        insertRows("test_aa_off", 0, numRows);
+
+        assert getChangesSinceAnalyze("test_aa_off") == numRows;
+
+        TableStats stats = openTable("test_aa_off").getTupleFile().getStats();
+        assert stats.numTuples == numRows : stats;
+        assert stats.getColumnStats(0).getNumUniqueValues() == -1 : stats;
+
+        tryDoCommand("ANALYZE test_aa_off;");
+        assert getChangesSinceAnalyze("test_aa_off") == 0;
+    }
+
+
+    /**
+     * Verifies that rows inserted past the analyzed range widen the column's
+     * minimum and maximum values.
+     */
+    public void testMinMaxWidened() throws Exception {
+        tryDoCommand("CREATE TABLE test_aa_range (a INTEGER, b VARCHAR(10));");
+        insertRows("test_aa_range", 100, 20);
+        tryDoCommand("ANALYZE test_aa_range;");
+
+        insertRows("test_aa_range", 500, 1);
+        insertRows("test_aa_range", 5, 1);
+
+        ColumnStats colStats = openTable("test_aa_range").getTupleFile()
+            .getStats().getColumnStats(0);
+        assert Integer.valueOf(5).equals(colStats.getMinValue()) : colStats;
+        assert Integer.valueOf(500).equals(colStats.getMaxValue()) : colStats;
+    }
+
+
+    /**
+     * Verifies that the maintained statistics are only saved once enough
+     * rows have changed, by reopening the table and checking the statistics
+     * read back from its header page.
+     */
+    public void testStatsSavedAtThreshold() throws Exception {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_AUTO_ANALYZE, false);
+        tryDoCommand("CREATE TABLE test_aa_save (a INTEGER, b VARCHAR(10));");
+
+        int numRows = TableStatsMaintainer.AUTO_ANALYZE_MIN_CHANGES + 1;
+        insertRows("test_aa_save", 0, numRows);
+        insertRows("test_aa_save", numRows, 10);
+
+        TableInfo tableInfo = openTable("test_aa_save");
+        assert tableInfo.getTupleFile().getStats().numTuples == numRows + 10;
+        server.getStorageManager().getTableManager().closeTable(tableInfo);
+
+        TableStats stats = openTable("test_aa_save").getTupleFile().getStats();
+        assert stats.numTuples == numRows : stats;
+    }
+
+
+    /**
+     * Verifies that a table created with the name of a dropped table doesn't
+     * inherit the dropped table's modification count.
+     */
+    public void testDroppedTableStartsOver() throws Exception {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_AUTO_ANALYZE, false);
+        tryDoCommand("CREATE TABLE test_aa_drop (a INTEGER, b VARCHAR(10));");
+        insertRows("test_aa_drop", 0, 20);
+        assert getChangesSinceAnalyze("test_aa_drop") == 20;
+
+        tryDoCommand("DROP TABLE test_aa_drop;");
+        tryDoCommand("CREATE TABLE test_aa_drop (a INTEGER, b VARCHAR(10));");
+        insertRows("test_aa_drop", 0, 3);
+
+        assert getChangesSinceAnalyze("test_aa_drop") == 3;
+        TableStats stats = openTable("test_aa_drop").getTupleFile().getStats();
+        assert stats.numTuples == 3 : stats;
+    }
+}
@@ -0,0 +1,151 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * This class exercises nested-loop joins with several block sizes, with
+ * and without caching the inner rows, to see that they all produce the
+ * same results.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestBlockNestedLoopJoin extends SqlTestCase {
+
+    /** The number of rows in the outer table. */
+    private static final int NUM_OUTER = 60;
+
+
+    /** The number of rows in the inner table. */
+    private static final int NUM_INNER = 40;
+
+
+    /** The block sizes to run each query with. */
+    private static final int[] BLOCK_SIZES =
+        {1, 3, 7, ServerProperties.DEFAULT_JOIN_BLOCK_SIZE};
+
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_bnl_outer (a INTEGER, b VARCHAR(10));");
+        tryDoCommand("CREATE TABLE test_bnl_inner (c INTEGER, d VARCHAR(10));");
+
+        for (int i = 0; i < NUM_OUTER; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_bnl_outer VALUES (%d, 'o%d');", i, i % 4));
+        }
+
+        for (int i = 0; i < NUM_INNER; i++) {
+            String c = (i % 10 == 9) ? "NULL" : Integer.toString(i * 2);
+            tryDoCommand(String.format(
+                "INSERT INTO test_bnl_inner VALUES (%s, 'i%d');", c, i % 5));
+        }
+    }
+
+
+    @AfterMethod
+    public void resetProperties() {
+        PropertyRegistry props = server.getPropertyRegistry();
+        props.setPropertyValue(ServerProperties.PROP_JOIN_BLOCK_SIZE,
+            ServerProperties.DEFAULT_JOIN_BLOCK_SIZE);
+        props.setPropertyValue(ServerProperties.PROP_OPERATOR_MEMORY_LIMIT,
+            ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
+    }
+
+
+    /**
+     * Runs a query with every block size, both with the default memory
+     * limit (so the inner rows are cached) and with the smallest memory
+     * limit (so the inner input is rescanned), and checks the results.
+     */
+    private void checkAllBlockSizes(TupleLiteral[] expected, String query)
+        throws Throwable {
+
+        PropertyRegistry props = server.getPropertyRegistry();
+        for (int memoryLimit : new int[] {
+                ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT, 1024}) {
+            props.setPropertyValue(
+                ServerProperties.PROP_OPERATOR_MEMORY_LIMIT, memoryLimit);
+
+            for (int blockSize : BLOCK_SIZES) {
+                props.setPropertyValue(
+                    ServerProperties.PROP_JOIN_BLOCK_SIZE, blockSize);
+
+                CommandResult result = server.doCommand(query, true);
+                assert checkUnorderedResults(expected, result) :
+                    "Wrong results with block size " + blockSize +
+                    " and memory limit " + memoryLimit;
+            }
+        }
+    }
+
+
+    /**
+     * This test performs a band join, which can only be evaluated with a
+     * nested-loop join.
+     */
+    public void testBandJoin() throws Throwable {
+        List<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_OUTER; i++) {
+            for (int j = 0; j < NUM_INNER; j++) {
+                if (j % 10 == 9)
+                    continue;
+
+                int c = j * 2;
+                if (i > c && i < c + 3)
+                    expected.add(new TupleLiteral(i, c, "i" + j % 5));
+            }
+        }
+
+        checkAllBlockSizes(expected.toArray(new TupleLiteral[0]),
+            "SELECT a, c, d FROM test_bnl_outer JOIN test_bnl_inner " +
+            "ON a > c AND a < c + 3;");
+    }
+
+
+    /**
+     * This test performs a cross join, so every pair of rows is produced.
+     */
+    public void testCrossJoin() throws Throwable {
+        List<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_OUTER; i++) {
+            for (int j = 0; j < NUM_INNER; j++)
+                expected.add(new TupleLiteral("o" + i % 4, "i" + j % 5));
+        }
+
+        checkAllBlockSizes(expected.toArray(new TupleLiteral[0]),
+            "SELECT b, d FROM test_bnl_outer, test_bnl_inner;");
+    }
+
+
+    /**
+     * This test performs outer joins, to see that buffering the outer rows
+     * doesn't change the rows produced for rows that don't match.
+     */
+    public void testOuterJoins() throws Throwable {
+        for (String joinType : new String[] {"LEFT OUTER", "RIGHT OUTER"}) {
+            String query = "SELECT a, c FROM test_bnl_outer " + joinType +
+                " JOIN test_bnl_inner ON a = c + 1 AND a < 8;";
+
+            // A block size of 1 joins one outer row at a time, as a simple
+            // nested-loop join does.
+            server.getPropertyRegistry().setPropertyValue(
+                ServerProperties.PROP_JOIN_BLOCK_SIZE, 1);
+            TupleLiteral[] expected = server.doCommand(query, true)
+                .getTuples().toArray(new TupleLiteral[0]);
+            assert expected.length > 0;
+
+            checkAllBlockSizes(expected, query);
+        }
+    }
+}
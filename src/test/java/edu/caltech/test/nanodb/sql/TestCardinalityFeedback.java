@@ -0,0 +1,145 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.Command;
+import edu.caltech.nanodb.commands.QueryCommand;
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.queryeval.CardinalityFeedback;
+import edu.caltech.nanodb.queryeval.SelectivityEstimator;
+import edu.caltech.nanodb.server.PlanCache;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.sqlparse.ParseUtil;
+
+
+/**
+ * This class verifies that the selectivities of predicates observed when
+ * plans are executed are used to plan the same predicates later, until the
+ * tables they were observed on change.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestCardinalityFeedback extends SqlTestCase {
+
+    /** The number of rows in the first test table. */
+    private static final int NUM_ROWS = 200;
+
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_cf1 (a INTEGER, b INTEGER);");
+        tryDoCommand("CREATE TABLE test_cf2 (c INTEGER);");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_cf1 VALUES (%d, %d);", i, i % 10));
+        }
+
+        for (int i = 0; i < 10; i++)
+            tryDoCommand(String.format("INSERT INTO test_cf2 VALUES (%d);", i));
+
+        tryDoCommand("ANALYZE test_cf1, test_cf2;");
+    }
+
+
+    private float estimateRows(String query) {
+        SelectCommand cmd = (SelectCommand) ParseUtil.parseCommand(query);
+        SelectClause selClause = cmd.getSelectClause();
+        selClause.computeSchema(server.getStorageManager().getTableManager(), null);
+        PlanNode plan = server.getQueryPlanner().makePlan(selClause, null);
+        return plan.getCost().numTuples;
+    }
+
+
+    /**
+     * Verifies that the observed selectivity of a filter replaces the
+     * default estimate, and is discarded once the table changes enough.
+     */
+    public void testFilterFeedback() throws Throwable {
+        String query = "SELECT * FROM test_cf1 WHERE a * 2 > 20;";
+
+        // The estimator can't estimate an expression on a column.
+        float estimate = estimateRows(query);
+        assert Math.abs(estimate -
+            NUM_ROWS * SelectivityEstimator.DEFAULT_SELECTIVITY) < 0.5 : estimate;
+
+        // Rows 11 through 199 are selected.
+        tryDoCommand(query);
+        estimate = estimateRows(query);
+        assert Math.abs(estimate - 189) < 0.5 : estimate;
+
+        // A few changes to the table don't discard the observation.
+        for (int i = 0; i < 5; i++)
+            tryDoCommand("INSERT INTO test_cf1 VALUES (500, 0);");
+
+        estimate = estimateRows(query);
+        assert estimate == (int) (189 * 205 / 200.0f) : estimate;
+
+        // More than 10% of the rows changing does.
+        tryDoCommand("DELETE FROM test_cf1 WHERE a = 500;");
+        for (int i = 0; i < 20; i++)
+            tryDoCommand("UPDATE test_cf1 SET b = b WHERE a = " + i + ";");
+
+        estimate = estimateRows(query);
+        assert Math.abs(estimate -
+            NUM_ROWS * SelectivityEstimator.DEFAULT_SELECTIVITY) < 0.5 : estimate;
+    }
+
+
+    /**
+     * Verifies that a query whose plan is cached is planned again once the
+     * selectivity of its predicate is observed to be far from the estimate
+     * it was planned with, and that the new plan is then reused.
+     */
+    public void testFeedbackReplansCachedQuery() throws Throwable {
+        String query = "SELECT * FROM test_cf1 WHERE a * 3 > 30;";
+        String key = PlanCache.normalize(query);
+        PlanCache planCache = server.getPlanCache();
+
+        // The default estimate is far from the 189 rows selected, so the
+        // first plan isn't kept.
+        long version = planCache.getVersion();
+        tryDoCommand(query);
+        assert planCache.getVersion() > version;
+
+        // The second plan uses the observed selectivity, and is kept.
+        version = planCache.getVersion();
+        tryDoCommand(query);
+        assert planCache.getVersion() == version;
+
+        Command cached = planCache.checkOut(key);
+        assert cached != null;
+        float estimate = ((QueryCommand) cached).getPlan().getCost().numTuples;
+        assert Math.abs(estimate - 189) < 0.5 : estimate;
+        planCache.checkIn(key, cached, version);
+
+        long hits = PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS);
+        tryDoCommand(query);
+        assert PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS) ==
+            hits + 1;
+    }
+
+
+    /**
+     * Verifies that the observed selectivity of a nested-loop join's
+     * predicate is used to estimate the size of the join, and that dropping
+     * a table discards the observations made on it.
+     */
+    public void testJoinFeedback() throws Throwable {
+        String query = "SELECT * FROM test_cf1, test_cf2 " +
+            "WHERE test_cf1.b + test_cf2.c = 3;";
+
+        // Each of the 200 rows of test_cf1 matches exactly one row of
+        // test_cf2 if b <= 3, so 80 rows are produced.
+        tryDoCommand(query);
+        float estimate = estimateRows(query);
+        assert Math.abs(estimate - 80) < 0.5 : estimate;
+
+        int size = CardinalityFeedback.size();
+        tryDoCommand("DROP TABLE test_cf2;");
+        assert CardinalityFeedback.size() < size;
+    }
+}
@@ -0,0 +1,111 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.queryeval.MultiColumnStats;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.sqlparse.ParseUtil;
+
+
+/**
+ * This class exercises the <tt>CREATE STATISTICS</tt> command, and the
+ * planner's use of the statistics it declares.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestCreateStatistics extends SqlTestCase {
+
+    /** The number of rows in the test table. */
+    private static final int NUM_ROWS = 1000;
+
+
+    /** The number of distinct zip codes in the test table. */
+    private static final int NUM_ZIPS = 50;
+
+
+    /**
+     * Creates a table where each zip code lies in one of 10 cities.
+     */
+    @BeforeClass(alwaysRun = true)
+    public void loadTable() throws Exception {
+        tryDoCommand("CREATE TABLE test_cs (id INTEGER, zip INTEGER, " +
+            "city VARCHAR(10));");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            int zip = i % NUM_ZIPS;
+            tryDoCommand(String.format(
+                "INSERT INTO test_cs VALUES (%d, %d, 'c%d');", i, zip, zip % 10));
+        }
+    }
+
+
+    private TableStats getStats() {
+        return server.getStorageManager().getTableManager()
+            .openTable("test_cs").getTupleFile().getStats();
+    }
+
+
+    private float estimateRows(String query) {
+        SelectCommand cmd = (SelectCommand) ParseUtil.parseCommand(query);
+        SelectClause selClause = cmd.getSelectClause();
+        selClause.computeSchema(server.getStorageManager().getTableManager(), null);
+        PlanNode plan = server.getQueryPlanner().makePlan(selClause, null);
+        return plan.getCost().numTuples;
+    }
+
+
+    /**
+     * Verifies that declared statistics are collected by <tt>ANALYZE</tt>,
+     * and that the estimate of a correlated filter uses them.
+     */
+    public void testCreateAndAnalyze() throws Exception {
+        tryDoCommand("CREATE STATISTICS cs_zip_city ON test_cs (zip, city);");
+        MultiColumnStats group = getStats().getMultiColumnStats("cs_zip_city");
+        assert group != null;
+        assert group.getNumUniqueValues() == -1;
+
+        tryDoCommand("ANALYZE test_cs;");
+        group = getStats().getMultiColumnStats("cs_zip_city");
+        assert group.getNumUniqueValues() == NUM_ZIPS : group;
+        assert group.getDependencyDegree(0, 1) == 1.0f : group;
+        assert getStats().getColumnStats(2).getMultiColumnStats().contains(group);
+
+        // 1/50 of the rows match, not 1/500 as independent filters would.
+        float rows = estimateRows(
+            "SELECT * FROM test_cs WHERE zip = 13 AND city = 'c3';");
+        float expected = (float) NUM_ROWS / NUM_ZIPS;
+        assert Math.abs(rows - expected) < 1.0f : rows;
+
+        CommandResult result = server.doCommand(
+            "CREATE STATISTICS IF NOT EXISTS cs_zip_city ON test_cs (id, zip);",
+            false);
+        assert !result.failed();
+        assert getStats().getMultiColumnStats().size() == 1;
+    }
+
+
+    /**
+     * Verifies that invalid declarations are rejected.
+     */
+    public void testInvalidStatistics() throws Exception {
+        CommandResult result = server.doCommand(
+            "CREATE STATISTICS cs_one ON test_cs (zip, zip);", false);
+        assert result.failed();
+
+        result = server.doCommand(
+            "CREATE STATISTICS cs_bad ON test_cs (zip, nosuchcol);", false);
+        assert result.failed();
+
+        result = server.doCommand(
+            "CREATE STATISTICS cs_single ON test_cs (zip);", false);
+        assert result.failed();
+
+        assert getStats().getMultiColumnStats("cs_one") == null;
+        assert getStats().getMultiColumnStats("cs_bad") == null;
+    }
+}
@@ -0,0 +1,143 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.util.LinkedHashSet;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryast.SelectClause;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.sqlparse.ParseUtil;
+
+
+/**
+ * This class exercises <tt>SELECT DISTINCT</tt> queries, and verifies that
+ * the planner chooses a sort-based plan when the rows are already ordered.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestDistinct extends SqlTestCase {
+
+    /** The number of rows in the test table. */
+    private static final int NUM_ROWS = 300;
+
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTable() throws Exception {
+        tryDoCommand("CREATE TABLE test_distinct (id INTEGER, grp INTEGER, " +
+            "name VARCHAR(10));");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            String grp = (i % 50 == 0) ? "NULL" : Integer.toString(i % 7);
+            tryDoCommand(String.format(
+                "INSERT INTO test_distinct VALUES (%d, %s, 'n%d');",
+                i, grp, i % 3));
+        }
+    }
+
+
+    @AfterMethod
+    public void resetMemoryLimit() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_OPERATOR_MEMORY_LIMIT,
+            ServerProperties.DEFAULT_OPERATOR_MEMORY_LIMIT);
+    }
+
+
+    /** Returns the expected distinct (grp, name) rows, in any order. */
+    private TupleLiteral[] expectedGroupNames() {
+        LinkedHashSet<TupleLiteral> expected = new LinkedHashSet<>();
+        for (int i = 0; i < NUM_ROWS; i++) {
+            Integer grp = (i % 50 == 0) ? null : i % 7;
+            expected.add(new TupleLiteral(grp, "n" + i % 3));
+        }
+
+        return expected.toArray(new TupleLiteral[0]);
+    }
+
+
+    /** Plans a query, and returns the top node of its plan. */
+    private PlanNode makePlan(String query) {
+        SelectCommand cmd = (SelectCommand) ParseUtil.parseCommand(query);
+        SelectClause selClause = cmd.getSelectClause();
+        selClause.computeSchema(server.getStorageManager().getTableManager(), null);
+        return server.getQueryPlanner().makePlan(selClause, null);
+    }
+
+
+    /** Returns true if the printed plan mentions the specified node. */
+    private boolean hasNode(PlanNode plan, String nodeName) {
+        return PlanNode.printNodeTreeToString(plan).contains(nodeName);
+    }
+
+
+    public void testDistinctSingleColumn() throws Throwable {
+        TupleLiteral[] expected = {
+            new TupleLiteral(0), new TupleLiteral(1), new TupleLiteral(2),
+            new TupleLiteral(3), new TupleLiteral(4), new TupleLiteral(5),
+            new TupleLiteral(6), new TupleLiteral((Object) null)
+        };
+
+        CommandResult result = server.doCommand(
+            "SELECT DISTINCT grp FROM test_distinct;", true);
+        assert checkUnorderedResults(expected, result);
+        assert hasNode(makePlan("SELECT DISTINCT grp FROM test_distinct;"),
+            "HashDistinct");
+    }
+
+
+    public void testDistinctMultipleColumns() throws Throwable {
+        CommandResult result = server.doCommand(
+            "SELECT DISTINCT grp, name FROM test_distinct;", true);
+        assert checkUnorderedResults(expectedGroupNames(), result);
+
+        // A LIMIT applies to the distinct rows.
+        result = server.doCommand(
+            "SELECT DISTINCT name FROM test_distinct LIMIT 2;", true);
+        assert result.getTuples().size() == 2;
+    }
+
+
+    /**
+     * Verifies that ordered rows use the sort-based plan, and stay ordered.
+     */
+    public void testDistinctOrdered() throws Throwable {
+        TupleLiteral[] expected = {
+            new TupleLiteral(6, "n2"), new TupleLiteral(6, "n1"),
+            new TupleLiteral(6, "n0"), new TupleLiteral(5, "n2"),
+            new TupleLiteral(5, "n1"), new TupleLiteral(5, "n0")
+        };
+
+        String query = "SELECT DISTINCT grp, name FROM test_distinct " +
+            "WHERE grp >= 5 ORDER BY grp DESC, name DESC;";
+        CommandResult result = server.doCommand(query, true);
+        assert checkOrderedResults(expected, result);
+
+        PlanNode plan = makePlan(query);
+        assert hasNode(plan, "SortedDistinct");
+        assert !hasNode(plan, "HashDistinct");
+
+        // Ordering on only some of the columns isn't enough.
+        assert hasNode(makePlan("SELECT DISTINCT grp, name FROM " +
+            "test_distinct ORDER BY grp;"), "HashDistinct");
+    }
+
+
+    /**
+     * Verifies that the results are right when the hash table is too small
+     * to hold all of the distinct rows.
+     */
+    public void testDistinctSpills() throws Throwable {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_OPERATOR_MEMORY_LIMIT, 1024);
+
+        CommandResult result = server.doCommand(
+            "SELECT DISTINCT grp, name FROM test_distinct;", true);
+        assert checkUnorderedResults(expectedGroupNames(), result);
+    }
+}
@@ -0,0 +1,157 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.FileScanNode;
+import edu.caltech.nanodb.plannodes.InstrumentNode;
+import edu.caltech.nanodb.plannodes.NestedLoopJoinNode;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.queryeval.EvalStats;
+import edu.caltech.nanodb.queryeval.QueryEvaluator;
+import edu.caltech.nanodb.queryeval.TuplePrinter;
+import edu.caltech.nanodb.relations.JoinType;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.TableManager;
+
+
+/**
+ * This class exercises the <tt>EXPLAIN ANALYZE</tt> command, and the
+ * measurement of plan nodes as they are executed.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestExplainAnalyze extends SqlTestCase {
+
+    /** The number of rows in each test table. */
+    private static final int NUM_ROWS = 200;
+
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_ea1 (a INTEGER, b INTEGER) " +
+            "PROPERTIES (pagesize = 512);");
+        tryDoCommand("CREATE TABLE test_ea2 (b INTEGER, c INTEGER);");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_ea1 VALUES (%d, %d);", i, i % 10));
+            tryDoCommand(String.format(
+                "INSERT INTO test_ea2 VALUES (%d, %d);", i, i));
+        }
+    }
+
+
+    /**
+     * Runs a command, and returns what it printed.
+     */
+    private String doCommandWithOutput(String command) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionState session = SessionState.get();
+        PrintStream oldOut = session.getOutputStream();
+        session.setOutputStream(new PrintStream(bytes, true));
+        try {
+            CommandResult result = server.doCommand(command, false);
+            assert !result.failed() : result.getFailure();
+        } finally {
+            session.setOutputStream(oldOut);
+        }
+
+        return bytes.toString();
+    }
+
+
+    /**
+     * Verifies that the actual rows are printed with the plan, and that the
+     * results of the query are not.
+     */
+    public void testExplainAnalyzeSelect() {
+        String output = doCommandWithOutput(
+            "EXPLAIN ANALYZE SELECT * FROM test_ea1 WHERE a < 25;");
+
+        assert output.contains("cost=") : output;
+        assert output.contains("actual=[rows=25, loops=1") : output;
+        assert output.contains("Actual 25 tuples") : output;
+
+        // Plain EXPLAIN doesn't execute the query.
+        output = doCommandWithOutput(
+            "EXPLAIN SELECT * FROM test_ea1 WHERE a < 25;");
+        assert !output.contains("actual=") : output;
+        assert !output.contains("Actual ") : output;
+    }
+
+
+    /**
+     * Verifies the measurements of the scans under a join, which must each
+     * produce the whole table every time they are scanned.
+     */
+    public void testInstrumentedJoin() {
+        TableManager tableManager = server.getStorageManager().getTableManager();
+        InstrumentNode outer = new InstrumentNode(
+            new FileScanNode(tableManager.openTable("test_ea1"), null));
+        InstrumentNode inner = new InstrumentNode(
+            new FileScanNode(tableManager.openTable("test_ea2"), null));
+
+        PlanNode join = new NestedLoopJoinNode(outer, inner,
+            JoinType.INNER, null);
+        join.prepare();
+        InstrumentNode root = new InstrumentNode(join);
+        root.bindExpressions();
+
+        EvalStats stats = QueryEvaluator.executePlan(root,
+            new TuplePrinter(new PrintStream(new ByteArrayOutputStream())));
+
+        assert stats.getRowsProduced() == NUM_ROWS * NUM_ROWS;
+        assert root.getRowsProduced() == NUM_ROWS * NUM_ROWS;
+        assert root.getLoops() == 1;
+        assert root.getElapsedTimeNanos() > 0;
+        assert root.getBufferHits() + root.getBufferMisses() > 0;
+
+        assert outer.getLoops() == 1;
+        assert outer.getRowsProduced() == NUM_ROWS : outer.getActualsString();
+
+        // The inner table may be scanned many times, or cached.
+        assert inner.getLoops() >= 1;
+        assert inner.getRowsProduced() ==
+            (long) inner.getLoops() * NUM_ROWS : inner.getActualsString();
+        assert root.getElapsedTimeNanos() >= inner.getElapsedTimeNanos();
+    }
+
+
+    /**
+     * Verifies that other commands are executed by <tt>EXPLAIN ANALYZE</tt>,
+     * and that parallel aggregation still runs with instrumentation.
+     */
+    public void testExplainAnalyzeModifies() throws Throwable {
+        tryDoCommand("CREATE TABLE test_ea3 (a INTEGER);");
+        tryDoCommand("INSERT INTO test_ea3 VALUES (1);");
+        tryDoCommand("INSERT INTO test_ea3 VALUES (2);");
+
+        String output = doCommandWithOutput(
+            "EXPLAIN ANALYZE DELETE FROM test_ea3 WHERE a = 1;");
+        assert output.contains("Actual 1 tuples") : output;
+
+        CommandResult result = tryDoCommand("SELECT * FROM test_ea3;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(2)}, result);
+
+        PropertyRegistry props = server.getPropertyRegistry();
+        props.setPropertyValue(ServerProperties.PROP_PARALLELISM, 4);
+        props.setPropertyValue(ServerProperties.PROP_PARALLEL_SCAN_MIN_PAGES, 2);
+        try {
+            output = doCommandWithOutput("EXPLAIN ANALYZE SELECT b, COUNT(*) " +
+                "FROM test_ea1 GROUP BY b;");
+            assert output.contains("Actual 10 tuples") : output;
+        } finally {
+            props.setPropertyValue(ServerProperties.PROP_PARALLELISM,
+                ServerProperties.DEFAULT_PARALLELISM);
+        }
+    }
+}
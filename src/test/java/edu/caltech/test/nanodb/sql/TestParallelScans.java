@@ -0,0 +1,199 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.plannodes.FileScanNode;
+import edu.caltech.nanodb.plannodes.GatherNode;
+import edu.caltech.nanodb.plannodes.PlanNode;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * This class exercises parallel table scans, verifying that queries produce
+ * the same results when their scans are divided among several workers.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestParallelScans extends SqlTestCase {
+
+    /** The number of rows in the test table. */
+    private static final int NUM_ROWS = 2000;
+
+
+    /**
+     * Creates a table with small pages, so that it spans many morsels.
+     */
+    @BeforeClass(alwaysRun = true)
+    public void loadTable() throws Exception {
+        tryDoCommand("CREATE TABLE par_scan (id INTEGER, grp INTEGER, " +
+            "note VARCHAR(10)) PROPERTIES (pagesize = 512);");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO par_scan VALUES (%d, %d, 'n%d');", i, i % 7, i));
+        }
+    }
+
+
+    @BeforeMethod
+    public void enableParallelism() {
+        PropertyRegistry props = server.getPropertyRegistry();
+        props.setPropertyValue(ServerProperties.PROP_PARALLELISM, 4);
+        props.setPropertyValue(ServerProperties.PROP_PARALLEL_SCAN_MIN_PAGES, 2);
+    }
+
+
+    @AfterMethod
+    public void disableParallelism() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_PARALLELISM,
+            ServerProperties.DEFAULT_PARALLELISM);
+    }
+
+
+    /**
+     * Runs a gather node directly, twice, and verifies that every tuple of
+     * the table is produced exactly once each time.
+     */
+    public void testGatherProducesEveryTuple() {
+        TableInfo tableInfo =
+            server.getStorageManager().getTableManager().openTable("par_scan");
+        assert tableInfo.getTupleFile().getDBFile().getNumPages() >
+            2 * GatherNode.PAGES_PER_MORSEL;
+
+        PlanNode plan = new GatherNode(new FileScanNode(tableInfo, null), 4);
+        plan.prepare();
+        plan.bindExpressions();
+
+        for (int run = 0; run < 2; run++) {
+            HashSet<Integer> ids = new HashSet<>();
+            plan.initialize();
+
+            Tuple tup;
+            while ((tup = plan.getNextTuple()) != null) {
+                boolean added = ids.add((Integer) tup.getColumnValue(0));
+                assert added : "Duplicate tuple " + tup;
+            }
+            plan.cleanUp();
+
+            assert ids.size() == NUM_ROWS : "Got " + ids.size() + " tuples";
+        }
+    }
+
+
+    /**
+     * Verifies that a filtered, projected scan returns the right rows.
+     */
+    public void testFilterAndProject() throws Throwable {
+        ArrayList<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < NUM_ROWS; i++) {
+            if (i % 7 == 3 && i >= 500)
+                expected.add(new TupleLiteral(i, i * 2));
+        }
+
+        CommandResult result = server.doCommand(
+            "SELECT id, id * 2 FROM par_scan WHERE grp = 3 AND id >= 500;",
+            true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+    }
+
+
+    /**
+     * Verifies that aggregates over a parallel scan are computed over every
+     * row.
+     */
+    public void testAggregates() throws Throwable {
+        long sum = 0;
+        for (int i = 0; i < NUM_ROWS; i++)
+            sum += i;
+
+        CommandResult result = server.doCommand(
+            "SELECT COUNT(*), SUM(id) FROM par_scan;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(NUM_ROWS, sum)
+        }, result);
+
+        result = server.doCommand(
+            "SELECT grp, COUNT(*) FROM par_scan WHERE grp < 2 GROUP BY grp;",
+            true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(0, 286), new TupleLiteral(1, 286)
+        }, result);
+    }
+
+
+    /**
+     * Verifies that grouped aggregates computed in two phases, by the scan
+     * workers and then by merging their partial results, match the
+     * aggregates computed over all rows at once.
+     */
+    public void testPartialAggregates() throws Throwable {
+        ArrayList<TupleLiteral> expected = new ArrayList<>();
+        for (int g = 0; g < 7; g++) {
+            int count = 0, min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            long sum = 0;
+            for (int i = g; i < NUM_ROWS; i += 7) {
+                count++;
+                sum += i;
+                min = Math.min(min, i);
+                max = Math.max(max, i);
+            }
+
+            double mean = (double) sum / count;
+            double m2 = 0;
+            for (int i = g; i < NUM_ROWS; i += 7)
+                m2 += (i - mean) * (i - mean);
+
+            expected.add(new TupleLiteral(g, count, sum, min, max, mean,
+                m2 / count));
+        }
+
+        CommandResult result = server.doCommand(
+            "SELECT grp, COUNT(id), SUM(id), MIN(id), MAX(id), AVG(id), " +
+            "VARIANCE(id) FROM par_scan GROUP BY grp;", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+
+        // Every worker sees every distinct value of grp, so the merge must
+        // not count them more than once.
+        double mean = (NUM_ROWS - 1) / 2.0;
+        double m2 = 0;
+        for (int i = 0; i < NUM_ROWS; i++)
+            m2 += (i - mean) * (i - mean);
+
+        result = server.doCommand(
+            "SELECT COUNT(DISTINCT grp), STDDEV(id) FROM par_scan;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(7, Math.sqrt(m2 / NUM_ROWS))
+        }, result);
+    }
+
+
+    /**
+     * Verifies that a query stopped early by a <tt>LIMIT</tt> returns the
+     * right number of rows, and that the next query still works.
+     */
+    public void testLimit() throws Throwable {
+        CommandResult result = server.doCommand(
+            "SELECT id FROM par_scan LIMIT 10;", true);
+        assert result.getTuples().size() == 10;
+
+        result = server.doCommand(
+            "SELECT COUNT(*) FROM par_scan WHERE grp = 6;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(285)
+        }, result);
+    }
+}
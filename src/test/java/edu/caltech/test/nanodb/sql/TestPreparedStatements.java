@@ -0,0 +1,174 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.PlanCache;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+
+
+/**
+ * This class exercises prepared statements, and the server's cache of
+ * parsed and planned commands.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestPreparedStatements extends SqlTestCase {
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_ps1 (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (pagesize = 512);");
+
+        for (int i = 0; i < 100; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_ps1 VALUES (%d, 'row%d');", i, i));
+        }
+    }
+
+
+    /**
+     * Verifies that a prepared <tt>SELECT</tt> produces the right results
+     * for different parameter values, including parameters in expressions,
+     * which must not be computed when the statement is planned.
+     */
+    public void testPreparedSelect() throws Throwable {
+        tryDoCommand("PREPARE ps_sel AS " +
+            "SELECT b FROM test_ps1 WHERE a = $1;");
+
+        CommandResult result = tryDoCommand("EXECUTE ps_sel(5);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row5")}, result);
+
+        result = tryDoCommand("EXECUTE ps_sel(42);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row42")}, result);
+
+        tryDoCommand("PREPARE ps_expr AS " +
+            "SELECT a FROM test_ps1 WHERE a BETWEEN $1 + 1 AND $2 * 2;");
+
+        result = tryDoCommand("EXECUTE ps_expr(0, 1);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(1), new TupleLiteral(2)}, result);
+
+        result = tryDoCommand("EXECUTE ps_expr(9, 6);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(10), new TupleLiteral(11),
+            new TupleLiteral(12)}, result);
+
+        // The wrong number of values, and unknown statements, are errors.
+        assert server.doCommand("EXECUTE ps_sel;", false).failed();
+        assert server.doCommand("EXECUTE ps_sel(1, 2);", false).failed();
+        assert server.doCommand("EXECUTE ps_nonexistent(1);", false).failed();
+
+        // The statement still works after a failed execution.
+        result = tryDoCommand("EXECUTE ps_sel(7);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row7")}, result);
+
+        tryDoCommand("DEALLOCATE ps_sel;");
+        assert server.doCommand("EXECUTE ps_sel(5);", false).failed();
+        assert server.doCommand("DEALLOCATE ps_sel;", false).failed();
+
+        // Parameters can only appear in prepared statements.
+        assert server.doCommand(
+            "SELECT * FROM test_ps1 WHERE a = $1;", false).failed();
+    }
+
+
+    /**
+     * Verifies prepared <tt>INSERT</tt>, <tt>UPDATE</tt> and <tt>DELETE</tt>
+     * statements.
+     */
+    public void testPreparedModifications() throws Throwable {
+        tryDoCommand("CREATE TABLE test_ps2 (a INTEGER, b INTEGER);");
+        tryDoCommand("PREPARE ps_ins AS INSERT INTO test_ps2 VALUES ($1, $2);");
+        tryDoCommand("PREPARE ps_upd AS " +
+            "UPDATE test_ps2 SET b = $2 WHERE a = $1;");
+        tryDoCommand("PREPARE ps_del AS DELETE FROM test_ps2 WHERE a = $1;");
+
+        for (int i = 1; i <= 4; i++)
+            tryDoCommand(String.format("EXECUTE ps_ins(%d, %d);", i, i * 10));
+
+        tryDoCommand("EXECUTE ps_upd(2, 99);");
+        tryDoCommand("EXECUTE ps_upd(3, 98);");
+        tryDoCommand("EXECUTE ps_del(4);");
+
+        CommandResult result = tryDoCommand("SELECT * FROM test_ps2;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(1, 10), new TupleLiteral(2, 99),
+            new TupleLiteral(3, 98)}, result);
+    }
+
+
+    /**
+     * Verifies that a prepared statement is planned again after the schema
+     * changes, and after its table is analyzed.
+     */
+    public void testPreparedInvalidation() throws Throwable {
+        tryDoCommand("CREATE TABLE test_ps3 (a INTEGER);");
+        tryDoCommand("INSERT INTO test_ps3 VALUES (1);");
+        tryDoCommand("PREPARE ps_inv AS SELECT * FROM test_ps3 WHERE a >= $1;");
+
+        CommandResult result = tryDoCommand("EXECUTE ps_inv(0);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(1)}, result);
+
+        // Recreate the table with a different schema.
+        tryDoCommand("DROP TABLE test_ps3;");
+        tryDoCommand("CREATE TABLE test_ps3 (a INTEGER, c VARCHAR(10));");
+        tryDoCommand("INSERT INTO test_ps3 VALUES (2, 'two');");
+
+        result = tryDoCommand("EXECUTE ps_inv(0);", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(2, "two")}, result);
+
+        tryDoCommand("ANALYZE test_ps3;");
+        result = tryDoCommand("EXECUTE ps_inv(3);", true);
+        assert checkUnorderedResults(new TupleLiteral[0], result);
+    }
+
+
+    /**
+     * Verifies that a repeated command reuses its cached plan, and that
+     * cached plans are discarded by DDL.
+     */
+    public void testPlanCache() throws Throwable {
+        assert PlanCache.normalize("  SELECT  a,\tb\n  FROM t ;  ")
+            .equals("SELECT a, b\nFROM t");
+        assert PlanCache.normalize("SELECT 'a   b';").equals("SELECT 'a   b'");
+
+        String query = "SELECT b FROM test_ps1 WHERE a < 3;";
+        TupleLiteral[] expected = {
+            new TupleLiteral("row0"), new TupleLiteral("row1"),
+            new TupleLiteral("row2")
+        };
+
+        CommandResult result = tryDoCommand(query, true);
+        assert checkUnorderedResults(expected, result);
+
+        long hits = PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS);
+        result = tryDoCommand("SELECT  b FROM test_ps1\t WHERE a < 3 ;", true);
+        assert checkUnorderedResults(expected, result);
+        assert PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS) ==
+            hits + 1;
+
+        // The plan can be reused many times.
+        result = tryDoCommand(query, true);
+        assert checkUnorderedResults(expected, result);
+
+        // DDL discards cached plans.
+        long version = server.getPlanCache().getVersion();
+        tryDoCommand("CREATE TABLE test_ps4 (a INTEGER);");
+        assert server.getPlanCache().getVersion() > version;
+        assert server.getPlanCache().size() == 0;
+
+        hits = PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS);
+        result = tryDoCommand(query, true);
+        assert checkUnorderedResults(expected, result);
+        assert PerformanceCounters.get(PerformanceCounters.PLAN_CACHE_HITS) ==
+            hits;
+    }
+}
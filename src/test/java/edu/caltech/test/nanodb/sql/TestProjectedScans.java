@@ -0,0 +1,104 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.server.CommandResult;
+
+
+/**
+ * This class exercises queries that only read some of a table's columns, to
+ * make sure that scans which skip decoding the unused columns still produce
+ * the expected results.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestProjectedScans extends SqlTestCase {
+
+    public TestProjectedScans() {
+        super("setup_testProjectedScans");
+    }
+
+
+    /**
+     * This test selects a column past several variable-size and
+     * <tt>NULL</tt> columns, with a predicate on another column.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testProjectTrailingColumn() throws Throwable {
+        TupleLiteral[] expected = {
+            new TupleLiteral(100),
+            new TupleLiteral(300)
+        };
+
+        CommandResult result = server.doCommand(
+            "SELECT e FROM test_projected_scans WHERE c = 10", true);
+        assert checkUnorderedResults(expected, result);
+    }
+
+
+    /**
+     * This test orders by a column after a variable-size column that may be
+     * <tt>NULL</tt>, and groups by a column while aggregating over a column
+     * that is only named inside the aggregate.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testProjectGroupAndOrder() throws Throwable {
+        TupleLiteral[] expected1 = {
+            new TupleLiteral("five", 500),
+            new TupleLiteral("three", 300),
+            new TupleLiteral(null, 200),
+            new TupleLiteral("one", 100)
+        };
+
+        CommandResult result = server.doCommand(
+            "SELECT d, e FROM test_projected_scans WHERE e IS NOT NULL " +
+            "ORDER BY e DESC", true);
+        assert checkOrderedResults(expected1, result);
+
+        TupleLiteral[] expected2 = {
+            new TupleLiteral(10, 400L),
+            new TupleLiteral(20, 700L),
+            new TupleLiteral(null, null)
+        };
+
+        result = server.doCommand(
+            "SELECT c, SUM(e) FROM test_projected_scans GROUP BY c", true);
+        assert checkUnorderedResults(expected2, result);
+    }
+
+
+    /**
+     * This test joins the table with itself and uses a correlated subquery,
+     * so that the columns referenced only by the join condition or by the
+     * subquery must still be decoded.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testProjectJoinAndSubquery() throws Throwable {
+        TupleLiteral[] expected1 = {
+            new TupleLiteral(1, 3),
+            new TupleLiteral(3, 1),
+            new TupleLiteral(2, 5),
+            new TupleLiteral(5, 2)
+        };
+
+        CommandResult result = server.doCommand(
+            "SELECT t1.a, t2.a FROM test_projected_scans t1 " +
+            "JOIN test_projected_scans t2 ON t1.c = t2.c WHERE t1.a <> t2.a",
+            true);
+        assert checkUnorderedResults(expected1, result);
+
+        TupleLiteral[] expected2 = {
+            new TupleLiteral("yellow")
+        };
+
+        result = server.doCommand(
+            "SELECT b FROM test_projected_scans t1 WHERE EXISTS (" +
+            "SELECT * FROM test_projected_scans t2 " +
+            "WHERE t2.c = t1.c AND t2.a < t1.a) AND b IS NOT NULL", true);
+        assert checkUnorderedResults(expected2, result);
+    }
+}
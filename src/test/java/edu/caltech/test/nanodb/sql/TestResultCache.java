@@ -0,0 +1,178 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.SelectCommand;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.ResultCache;
+import edu.caltech.nanodb.server.performance.PerformanceCounters;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * This class exercises the server's cache of query results, and verifies
+ * that cached results are not used once the tables they were read from
+ * have changed.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestResultCache extends SqlTestCase {
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTables() throws Exception {
+        tryDoCommand("CREATE TABLE test_rc1 (a INTEGER, b VARCHAR(20));");
+        tryDoCommand("CREATE TABLE test_rc2 (a INTEGER);");
+
+        for (int i = 0; i < 20; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_rc1 VALUES (%d, 'row%d');", i, i));
+        }
+        tryDoCommand("INSERT INTO test_rc2 VALUES (1);");
+    }
+
+
+    @BeforeMethod
+    public void enableResultCache() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_RESULT_CACHE_SIZE, 1024 * 1024);
+    }
+
+
+    @AfterMethod
+    public void disableResultCache() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_RESULT_CACHE_SIZE,
+            ServerProperties.DEFAULT_RESULT_CACHE_SIZE);
+    }
+
+
+    private long getHits() {
+        return PerformanceCounters.get(PerformanceCounters.RESULT_CACHE_HITS);
+    }
+
+
+    /**
+     * Verifies that a repeated query is answered from the cache, and that
+     * only changes to the tables it reads keep it from being answered from
+     * the cache.
+     */
+    public void testCachedResults() throws Throwable {
+        String query = "SELECT b FROM test_rc1 WHERE a < 2;";
+
+        long hits = getHits();
+        CommandResult result = tryDoCommand(query, true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row0"), new TupleLiteral("row1")}, result);
+        assert getHits() == hits;
+
+        result = tryDoCommand("SELECT  b FROM test_rc1\tWHERE a < 2", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row0"), new TupleLiteral("row1")}, result);
+        assert getHits() == hits + 1;
+
+        // Changing another table doesn't affect the cached result.
+        tryDoCommand("INSERT INTO test_rc2 VALUES (2);");
+        tryDoCommand(query, true);
+        assert getHits() == hits + 2;
+
+        // Changing the query's table does.
+        tryDoCommand("UPDATE test_rc1 SET b = 'new1' WHERE a = 1;");
+        result = tryDoCommand(query, true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row0"), new TupleLiteral("new1")}, result);
+        assert getHits() == hits + 2;
+
+        tryDoCommand("INSERT INTO test_rc1 VALUES (-1, 'neg');");
+        result = tryDoCommand(query, true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("neg"), new TupleLiteral("row0"),
+            new TupleLiteral("new1")}, result);
+
+        tryDoCommand("DELETE FROM test_rc1 WHERE a = -1;");
+        tryDoCommand("UPDATE test_rc1 SET b = 'row1' WHERE a = 1;");
+        result = tryDoCommand(query, true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row0"), new TupleLiteral("row1")}, result);
+    }
+
+
+    /**
+     * Verifies that the tables read by subqueries are tracked, and that
+     * queries calling non-deterministic functions are not cached.
+     */
+    public void testSubqueriesAndFunctions() throws Throwable {
+        String query = "SELECT a FROM test_rc1 " +
+            "WHERE a > 2 AND a IN (SELECT a FROM test_rc2);";
+        tryDoCommand(query, true);
+        long hits = getHits();
+        CommandResult result = tryDoCommand(query, true);
+        assert checkUnorderedResults(new TupleLiteral[0], result);
+        assert getHits() == hits + 1;
+
+        tryDoCommand("INSERT INTO test_rc2 VALUES (3);");
+        result = tryDoCommand(query, true);
+        assert getHits() == hits + 1;
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(3)}, result);
+
+        SelectCommand cmd = (SelectCommand) server.parseCommand(
+            "SELECT PERF_COUNTER('resultcache.hits');");
+        assert ResultCache.getCacheableTables(cmd.getSelectClause()) == null;
+
+        hits = getHits();
+        tryDoCommand("SELECT PERF_COUNTER('resultcache.hits');", true);
+        tryDoCommand("SELECT PERF_COUNTER('resultcache.hits');", true);
+        assert getHits() == hits;
+    }
+
+
+    /**
+     * Verifies that DDL, rollbacks and changes to the cache's size discard
+     * the cached results, and that the least recently used results are
+     * evicted when the cache is full.
+     */
+    public void testInvalidationAndEviction() throws Throwable {
+        String query = "SELECT * FROM test_rc2 WHERE a = 1;";
+        tryDoCommand(query, true);
+        assert server.getResultCache().size() > 0;
+
+        tryDoCommand("CREATE TABLE test_rc3 (a INTEGER);");
+        assert server.getResultCache().size() == 0;
+
+        // Results read within a transaction that is rolled back are wrong
+        // once the rollback is done.
+        tryDoCommand("BEGIN;");
+        tryDoCommand("INSERT INTO test_rc3 VALUES (7);");
+        CommandResult result = tryDoCommand("SELECT * FROM test_rc3;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(7)}, result);
+        tryDoCommand("ROLLBACK;");
+        result = tryDoCommand("SELECT * FROM test_rc3;", true);
+        assert checkUnorderedResults(new TupleLiteral[0], result);
+
+        // Each result of these queries needs at least one 4KB chunk, so a
+        // small cache can only hold a couple of them.
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_RESULT_CACHE_SIZE, 10000);
+        long evictions =
+            PerformanceCounters.get(PerformanceCounters.RESULT_CACHE_EVICTIONS);
+        for (int i = 0; i < 5; i++)
+            tryDoCommand("SELECT b FROM test_rc1 WHERE a = " + i + ";", true);
+
+        assert server.getResultCache().size() < 5;
+        assert server.getResultCache().getUsedBytes() <= 10000;
+        assert PerformanceCounters.get(
+            PerformanceCounters.RESULT_CACHE_EVICTIONS) > evictions;
+
+        // The most recently used result is still cached.
+        long hits = getHits();
+        result = tryDoCommand("SELECT b FROM test_rc1 WHERE a = 4;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral("row4")}, result);
+        assert getHits() == hits + 1;
+    }
+}
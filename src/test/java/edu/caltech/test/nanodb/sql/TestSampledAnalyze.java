@@ -0,0 +1,122 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.queryeval.ColumnStats;
+import edu.caltech.nanodb.queryeval.TableStats;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * This class exercises <tt>ANALYZE</tt>, both reading every page of a table
+ * and reading a sample of its pages.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestSampledAnalyze extends SqlTestCase {
+
+    /** The number of rows in the test table. */
+    private static final int NUM_ROWS = 3000;
+
+
+    /** The number of distinct non-<tt>NULL</tt> values in the note column. */
+    private static final int NUM_NOTES = 375;
+
+
+    /**
+     * Creates a table with small pages, so that it spans many pages.  Every
+     * fourth note is <tt>NULL</tt>.
+     */
+    @BeforeClass(alwaysRun = true)
+    public void loadTable() throws Exception {
+        tryDoCommand("CREATE TABLE test_analyze (id INTEGER, grp INTEGER, " +
+            "note VARCHAR(10)) PROPERTIES (pagesize = 512);");
+
+        for (int i = 0; i < NUM_ROWS; i++) {
+            String note = (i % 4 == 0) ? "NULL" : "'n" + i % 500 + "'";
+            tryDoCommand(String.format(
+                "INSERT INTO test_analyze VALUES (%d, %d, %s);",
+                i, i % 10, note));
+        }
+    }
+
+
+    @AfterMethod
+    public void resetProperties() {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_ANALYZE_SAMPLE_PERCENT,
+            ServerProperties.DEFAULT_ANALYZE_SAMPLE_PERCENT);
+    }
+
+
+    private TableStats analyze(int samplePercent) throws Exception {
+        server.getPropertyRegistry().setPropertyValue(
+            ServerProperties.PROP_ANALYZE_SAMPLE_PERCENT, samplePercent);
+        tryDoCommand("ANALYZE test_analyze;");
+
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("test_analyze");
+        TableStats stats = tableInfo.getTupleFile().getStats();
+        assert stats.numDataPages ==
+            tableInfo.getTupleFile().getDBFile().getNumPages() - 1 : stats;
+
+        return stats;
+    }
+
+
+    private static void checkNear(int actual, int expected, double tolerance) {
+        assert Math.abs(actual - expected) <= expected * tolerance :
+            "Got " + actual + "; expected about " + expected;
+    }
+
+
+    /**
+     * Verifies that reading every page gives exact statistics, except for
+     * the number of distinct IDs, which are too many to count exactly.
+     */
+    public void testFullScan() throws Exception {
+        TableStats stats = analyze(100);
+        assert stats.numTuples == NUM_ROWS : stats;
+
+        checkNear(stats.getColumnStats(0).getNumUniqueValues(), NUM_ROWS, 0.03);
+        assert stats.getColumnStats(0).getMinValue().equals(0);
+        assert stats.getColumnStats(0).getMaxValue().equals(NUM_ROWS - 1);
+
+        assert stats.getColumnStats(1).getNumUniqueValues() == 10;
+
+        ColumnStats noteStats = stats.getColumnStats(2);
+        assert noteStats.getNumNullValues() == NUM_ROWS / 4;
+        assert noteStats.getNumUniqueValues() == NUM_NOTES;
+    }
+
+
+    /**
+     * Verifies that sampling a quarter of the pages gives statistics close
+     * to the exact ones.
+     */
+    public void testSample() throws Exception {
+        TableStats stats = analyze(25);
+        checkNear(stats.numTuples, NUM_ROWS, 0.1);
+
+        // Every sampled ID is unique, so the column is assumed to be unique.
+        checkNear(stats.getColumnStats(0).getNumUniqueValues(), NUM_ROWS, 0.1);
+        assert stats.getColumnStats(1).getNumUniqueValues() == 10;
+
+        ColumnStats noteStats = stats.getColumnStats(2);
+        checkNear(noteStats.getNumNullValues(), NUM_ROWS / 4, 0.15);
+        checkNear(noteStats.getNumUniqueValues(), NUM_NOTES, 0.5);
+    }
+
+
+    /**
+     * Verifies that even the smallest sample reads at least one page.
+     */
+    public void testTinySample() throws Exception {
+        TableStats stats = analyze(1);
+        assert stats.numTuples > 0 : stats;
+        assert stats.getColumnStats(1).getNumUniqueValues() > 0;
+    }
+}
@@ -0,0 +1,167 @@
+package edu.caltech.test.nanodb.sql;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.SessionState;
+import edu.caltech.nanodb.server.performance.SessionCounters;
+import edu.caltech.nanodb.server.properties.PropertyRegistry;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+
+
+/**
+ * This class exercises the <tt>SHOW ... STATS</tt> command, and the
+ * attribution of storage activity to sessions and commands.
+ */
+@Test(groups = {"sql", "hw2"})
+public class TestSystemStats extends SqlTestCase {
+
+    @BeforeClass(alwaysRun = true)
+    public void loadTable() throws Exception {
+        tryDoCommand("CREATE TABLE test_sys_stats (a INTEGER, b VARCHAR(20));");
+        for (int i = 0; i < 100; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_sys_stats VALUES (%d, 'row %d');", i, i));
+        }
+    }
+
+
+    /**
+     * Runs a command, and returns what it printed.
+     */
+    private String doCommandWithOutput(String command) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SessionState session = SessionState.get();
+        PrintStream oldOut = session.getOutputStream();
+        session.setOutputStream(new PrintStream(bytes, true));
+        try {
+            CommandResult result = server.doCommand(command, false);
+            assert !result.failed() : result.getFailure();
+        } finally {
+            session.setOutputStream(oldOut);
+        }
+
+        return bytes.toString();
+    }
+
+
+    /**
+     * Verifies that the pages a command requests are attributed to the
+     * command and to its session.
+     */
+    public void testCommandCounters() throws Exception {
+        SessionState session = SessionState.get();
+        SessionCounters before = new SessionCounters(session.getCounters());
+
+        tryDoCommand("SELECT * FROM test_sys_stats;");
+        SessionCounters command = session.getLastCommandCounters();
+        assert command.getBufferHits() + command.getBufferMisses() > 0 : command;
+        assert command.getPagesRead() <= command.getBufferMisses();
+
+        SessionCounters total = session.getCounters().since(before);
+        assert total.getBufferHits() == command.getBufferHits();
+        assert total.getBufferMisses() == command.getBufferMisses();
+
+        String output = doCommandWithOutput("SHOW 'session' STATS;");
+        assert output.contains("session.lastCommand.bufferHits = " +
+            command.getBufferHits()) : output;
+    }
+
+
+    /**
+     * Verifies that the pages requested by the workers of parallel scans
+     * are attributed to the command and to its session.
+     */
+    public void testParallelScanCounters() throws Exception {
+        tryDoCommand("CREATE TABLE test_sys_stats_par (a INTEGER, " +
+            "b VARCHAR(20)) PROPERTIES (pagesize = 512);");
+        for (int i = 0; i < 800; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO test_sys_stats_par VALUES (%d, 'row %d');", i, i));
+        }
+
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("test_sys_stats_par");
+        int numPages = tableInfo.getTupleFile().getDBFile().getNumPages();
+
+        PropertyRegistry props = server.getPropertyRegistry();
+        props.setPropertyValue(ServerProperties.PROP_PARALLELISM, 4);
+        props.setPropertyValue(ServerProperties.PROP_PARALLEL_SCAN_MIN_PAGES, 2);
+        try {
+            // A parallel scan, and a parallel aggregate over one.
+            String[] queries = {
+                "SELECT * FROM test_sys_stats_par WHERE a >= 0;",
+                "SELECT COUNT(*) FROM test_sys_stats_par;"
+            };
+
+            SessionState session = SessionState.get();
+            for (String query : queries) {
+                SessionCounters before =
+                    new SessionCounters(session.getCounters());
+
+                tryDoCommand(query);
+                SessionCounters command = session.getLastCommandCounters();
+                assert command.getBufferHits() + command.getBufferMisses() >=
+                    numPages : query + ":  " + command;
+
+                SessionCounters total = session.getCounters().since(before);
+                assert total.getBufferHits() == command.getBufferHits();
+                assert total.getBufferMisses() == command.getBufferMisses();
+            }
+        } finally {
+            props.setPropertyValue(ServerProperties.PROP_PARALLELISM,
+                ServerProperties.DEFAULT_PARALLELISM);
+        }
+    }
+
+
+    /**
+     * Verifies that each system's statistics are shown, and that other
+     * systems' aren't.
+     */
+    public void testShowSystems() {
+        String output = doCommandWithOutput("SHOW 'buffer' STATS;");
+        assert output.contains("buffer.hits = ") : output;
+        assert output.contains("buffer.evictions = ") : output;
+        assert !output.contains("storage.") : output;
+
+        output = doCommandWithOutput("SHOW 'storage' STATS;");
+        assert output.contains("storage.pagesRead = ") : output;
+        assert output.contains("storage.pageLoadLatency:  count=") : output;
+
+        CommandResult result = server.doCommand("SHOW 'nosuch' STATS;", false);
+        assert result.failed();
+
+        result = server.doCommand("SHOW 'all' STATS FORMAT 'xml';", false);
+        assert result.failed();
+    }
+
+
+    /**
+     * Verifies that statistics can be written to a file as JSON.
+     */
+    public void testDumpJSON() throws Exception {
+        File file = File.createTempFile("nanodb-stats", ".json");
+        file.deleteOnExit();
+
+        String path = file.getAbsolutePath().replace("'", "''");
+        String output = doCommandWithOutput(String.format(
+            "SHOW 'all' STATS TO FILE '%s' FORMAT 'json';", path));
+        assert output.contains("Wrote all statistics") : output;
+
+        String json = new String(Files.readAllBytes(file.toPath())).trim();
+        assert json.startsWith("{") && json.endsWith("}") : json;
+        assert json.contains("\"buffer.hits\": ") : json;
+        assert json.contains("\"txn.commitLatency\": {\"count\": ") : json;
+        assert json.contains("\"session\": {\"id\": ") : json;
+        assert json.contains("\"lastCommand\": {\"bufferHits\": ") : json;
+    }
+}
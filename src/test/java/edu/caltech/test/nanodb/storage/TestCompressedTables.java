@@ -0,0 +1,138 @@
+package edu.caltech.test.nanodb.storage;
+
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.indexes.IndexInfo;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.storage.DBFile;
+
+
+/**
+ * This test class exercises tables whose files are stored compressed, to be
+ * sure that the tuple file formats work unchanged on top of compressed
+ * pages.
+ */
+@Test(groups = {"storage", "framework"})
+public class TestCompressedTables extends TableFormatTestCase {
+
+    private DBFile getTableFile(String tableName) {
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable(tableName);
+        return tableInfo.getTupleFile().getDBFile();
+    }
+
+
+    /**
+     * Inserts and deletes rows in a compressed heap table that spans many
+     * pages.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testCompressedHeapTable() throws Exception {
+        tryDoCommand("CREATE TABLE lz4_heap (a INTEGER, b VARCHAR(50)) " +
+            "PROPERTIES (storage = 'heap', pagesize = 4096, " +
+            "compression = 'lz4');", false);
+        assert getTableFile("lz4_heap").isCompressed();
+
+        insertRows("lz4_heap", 1000, 200, 20, 50, /* ordered */ false,
+            /* delete */ true);
+    }
+
+
+    /**
+     * Inserts into a compressed B<sup>+</sup> tree table.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testCompressedBTreeTable() throws Exception {
+        tryDoCommand("CREATE TABLE lz4_btree (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (storage = 'btree', pagesize = 4096, " +
+            "compression = 'lz4');", false);
+        assert getTableFile("lz4_btree").isCompressed();
+
+        insertRows("lz4_btree", 500, 1000, 3, 20, /* ordered */ true,
+            /* delete */ false);
+
+    }
+
+
+    /**
+     * Creates an index on a compressed table, which should be compressed as
+     * well, and then uses the index for lookups.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testCompressedIndex() throws Exception {
+        tryDoCommand("CREATE TABLE lz4_indexed (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (pagesize = 4096, compression = 'lz4');", false);
+        for (int i = 0; i < 300; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO lz4_indexed VALUES (%d, 'value %d');", i, i % 50),
+                false);
+        }
+
+        tryDoCommand("CREATE INDEX idx_lz4_b ON lz4_indexed (b);", false);
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("lz4_indexed");
+        IndexInfo indexInfo = server.getStorageManager().getIndexManager()
+            .openIndex(tableInfo, "idx_lz4_b");
+        assert indexInfo.getTupleFile().getDBFile().isCompressed();
+
+        CommandResult result = tryDoCommand(
+            "SELECT COUNT(*) FROM lz4_indexed WHERE b = 'value 7';", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(6L)
+        }, result);
+    }
+
+
+    /**
+     * Loads the same text-heavy rows into a compressed and an uncompressed
+     * table, and verifies that queries against both give the same results.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testCompressedTextTable() throws Exception {
+        tryDoCommand("CREATE TABLE plain_text (id INTEGER, status VARCHAR(20), " +
+            "note VARCHAR(100)) PROPERTIES (pagesize = 4096);", false);
+        tryDoCommand("CREATE TABLE lz4_text (id INTEGER, status VARCHAR(20), " +
+            "note VARCHAR(100)) PROPERTIES (pagesize = 4096, " +
+            "compression = 'lz4');", false);
+
+        String[] statuses = {"pending", "shipped", "delivered", "returned"};
+        for (int i = 0; i < 1000; i++) {
+            String values = String.format("(%d, '%s', 'Order %d was " +
+                "placed online and is %s')", i, statuses[i % 4], i,
+                statuses[i % 4]);
+            tryDoCommand("INSERT INTO plain_text VALUES " + values + ";", false);
+            tryDoCommand("INSERT INTO lz4_text VALUES " + values + ";", false);
+        }
+
+        assert getTableFile("lz4_text").getNumPages() ==
+            getTableFile("plain_text").getNumPages();
+
+        CommandResult result = tryDoCommand(
+            "SELECT COUNT(*), MIN(id), MAX(id) FROM lz4_text " +
+            "WHERE status = 'shipped';", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(250L, 1, 997)
+        }, result);
+
+        CommandResult plainResult = tryDoCommand(
+            "SELECT * FROM plain_text WHERE id BETWEEN 100 AND 300;", true);
+        result = tryDoCommand(
+            "SELECT * FROM lz4_text WHERE id BETWEEN 100 AND 300;", true);
+        assert checkUnorderedResults(
+            plainResult.getTuples().toArray(new TupleLiteral[0]), result);
+    }
+
+
+    @Test(expectedExceptions = Exception.class)
+    public void testUnknownCompression() throws Exception {
+        tryDoCommand("CREATE TABLE bad_compression (a INTEGER) " +
+            "PROPERTIES (compression = 'zip');", false);
+    }
+}
@@ -3,12 +3,16 @@ package edu.caltech.test.nanodb.storage;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
 
 import edu.caltech.nanodb.server.properties.PropertyRegistry;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import edu.caltech.nanodb.storage.BufferManager;
+import edu.caltech.nanodb.storage.DataFormatException;
 import edu.caltech.nanodb.storage.DBFile;
 import edu.caltech.nanodb.storage.DBFileType;
 import edu.caltech.nanodb.storage.DBPage;
@@ -97,4 +101,161 @@ public class TestFileManager extends StorageTestCase {
         fileMgr.deleteDBFile(dbf);
         assert !f.exists();
     }
+
+
+    /**
+     * Fills a page-sized buffer with text-like data that compresses well.
+     */
+    private byte[] makeTextPage(int pageSize, int seed) {
+        byte[] buf = new byte[pageSize];
+        for (int i = 0; i < pageSize; i++)
+            buf[i] = (byte) ('a' + ((i / 7 + seed) % 10));
+        return buf;
+    }
+
+
+    public void testCompressedFile() throws IOException {
+        String filename = "TestFileManager_testCompressedFile";
+        File f = new File(testBaseDir, filename);
+        if (f.exists()) {
+            if (!f.delete())
+                throw new IOException("Couldn't delete file:  " + f);
+        }
+
+        int pageSize = 4096;
+        DBFile dbf = fileMgr.createDBFile(filename, DBFileType.HEAP_TUPLE_FILE,
+            pageSize, /* compressed */ true);
+        assert dbf.isCompressed();
+        assert dbf.getNumPages() == 1;
+
+        for (int i = 1; i <= 10; i++)
+            fileMgr.savePage(dbf, i, makeTextPage(pageSize, i));
+
+        assert dbf.getNumPages() == 11;
+        assert f.length() < 4L * pageSize;
+
+        // Rewrite a page with data that won't compress, so that it must be
+        // moved to a larger record.
+        byte[] noise = new byte[pageSize];
+        new Random(42).nextBytes(noise);
+        fileMgr.savePage(dbf, 3, noise);
+
+        fileMgr.closeDBFile(dbf);
+
+        // Reopen the file, and make sure every page reads back correctly.
+        dbf = fileMgr.openDBFile(filename);
+        assert dbf.isCompressed();
+        assert dbf.getType() == DBFileType.HEAP_TUPLE_FILE;
+        assert dbf.getPageSize() == pageSize;
+        assert dbf.getNumPages() == 11;
+
+        byte[] buf = new byte[pageSize];
+        for (int i = 1; i <= 10; i++) {
+            assert fileMgr.loadPage(dbf, i, buf);
+            byte[] expected = (i == 3) ? noise : makeTextPage(pageSize, i);
+            assert Arrays.equals(buf, expected) : "page " + i;
+        }
+        assert !fileMgr.loadPage(dbf, 11, buf);
+
+        // Truncation should survive reopening the file too.
+        fileMgr.truncateDBFile(dbf, 5);
+        assert dbf.getNumPages() == 5;
+        fileMgr.closeDBFile(dbf);
+
+        dbf = fileMgr.openDBFile(filename);
+        assert dbf.getNumPages() == 5;
+        assert !fileMgr.loadPage(dbf, 5, buf);
+        assert fileMgr.loadPage(dbf, 4, buf);
+        assert Arrays.equals(buf, makeTextPage(pageSize, 4));
+
+        // Creating a page past the end fills the gap with empty pages.
+        assert fileMgr.loadPage(dbf, 7, buf, /* create */ true);
+        assert dbf.getNumPages() == 8;
+        assert fileMgr.loadPage(dbf, 6, buf);
+        assert Arrays.equals(buf, new byte[pageSize]);
+
+        fileMgr.closeDBFile(dbf);
+        fileMgr.deleteDBFile(dbf);
+        assert !f.exists();
+    }
+
+
+    /**
+     * Appends the specified bytes to the end of a file.
+     */
+    private void appendBytes(File f, byte[] bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(raf.length());
+            raf.write(bytes);
+        }
+    }
+
+
+    /**
+     * Verifies that a compressed file can still be opened after a crash
+     * leaves a torn record at its end, but not when a record in the middle
+     * of the file is damaged.
+     */
+    public void testCompressedFileTornRecord() throws IOException {
+        String filename = "TestFileManager_testCompressedFileTornRecord";
+        File f = new File(testBaseDir, filename);
+        if (f.exists()) {
+            if (!f.delete())
+                throw new IOException("Couldn't delete file:  " + f);
+        }
+
+        int pageSize = 4096;
+        DBFile dbf = fileMgr.createDBFile(filename, DBFileType.HEAP_TUPLE_FILE,
+            pageSize, /* compressed */ true);
+        for (int i = 1; i <= 4; i++)
+            fileMgr.savePage(dbf, i, makeTextPage(pageSize, i));
+        fileMgr.closeDBFile(dbf);
+
+        long length = f.length();
+
+        // A partial record header.
+        byte[] partialHeader = {0, 0, 0, 5, 0, 0, 0};
+
+        // A complete header for page 5, with only some of its data.
+        byte[] partialRecord = new byte[20 + 30];
+        partialRecord[3] = 5;        // page number
+        partialRecord[7] = (byte) 128;  // capacity
+        partialRecord[11] = 100;     // data length
+        partialRecord[19] = 99;      // sequence number
+
+        // Space that the file was extended by, but that was never written.
+        byte[] zeros = new byte[300];
+
+        byte[] buf = new byte[pageSize];
+        for (byte[] torn : new byte[][] {partialHeader, partialRecord, zeros}) {
+            appendBytes(f, torn);
+
+            dbf = fileMgr.openDBFile(filename);
+            assert dbf.getNumPages() == 5;
+            for (int i = 1; i <= 4; i++) {
+                assert fileMgr.loadPage(dbf, i, buf);
+                assert Arrays.equals(buf, makeTextPage(pageSize, i)) :
+                    "page " + i;
+            }
+            fileMgr.closeDBFile(dbf);
+
+            // The torn record is cut off.
+            assert f.length() == length;
+        }
+
+        // Damage the header of the first record, which isn't at the end.
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.seek(pageSize + 4);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+
+        try {
+            fileMgr.openDBFile(filename);
+            assert false : "Opening a corrupt file should fail";
+        } catch (DataFormatException e) {
+            // Success!
+        }
+
+        assert f.delete();
+    }
 }
@@ -0,0 +1,281 @@
+package edu.caltech.test.nanodb.storage;
+
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.indexes.IndexInfo;
+import edu.caltech.nanodb.indexes.IndexManager;
+import edu.caltech.nanodb.indexes.IndexUtils;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.server.properties.ServerProperties;
+import edu.caltech.nanodb.storage.FilePointer;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.TableManager;
+import edu.caltech.test.nanodb.sql.SqlTestCase;
+
+
+/**
+ * This test class exercises the <tt>OPTIMIZE</tt> command against tables of
+ * the various storage formats, making sure that the table files shrink after
+ * large deletes, and that the tables' contents are unchanged.
+ */
+@Test(groups = {"storage", "framework"})
+public class TestOptimizeTable extends SqlTestCase {
+
+    @Override
+    protected void configureServer(Properties props) {
+        // Indexes can only be enabled when the server starts up.
+        props.setProperty(ServerProperties.PROP_ENABLE_INDEXES, "true");
+    }
+
+
+    /**
+     * Inserts a number of rows into the specified table, then deletes all rows
+     * whose <tt>a</tt> value isn't a multiple of {@code keepEvery}.
+     *
+     * @return the rows that should remain in the table
+     */
+    private ArrayList<TupleLiteral> insertThenDelete(String tableName,
+        int numRows, int keepEvery) throws Exception {
+
+        ArrayList<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < numRows; i++) {
+            String b = "row number " + i;
+            tryDoCommand(String.format("INSERT INTO %s VALUES (%d, '%s');",
+                tableName, i, b));
+
+            if (i % keepEvery == 0)
+                expected.add(new TupleLiteral(i, b));
+        }
+
+        tryDoCommand(String.format("DELETE FROM %s WHERE a %% %d <> 0;",
+            tableName, keepEvery));
+
+        return expected;
+    }
+
+
+    private int getNumPages(String tableName) {
+        TableManager tableManager = server.getStorageManager().getTableManager();
+        TableInfo tableInfo = tableManager.openTable(tableName);
+        return tableInfo.getDBFile().getNumPages();
+    }
+
+
+    /**
+     * Deletes most of the rows in a heap file, then verifies that
+     * <tt>OPTIMIZE</tt> truncates the emptied pages without losing any rows.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testOptimizeHeapTable() throws Exception {
+        tryDoCommand("CREATE TABLE opt_heap (a INTEGER, b VARCHAR(40)) " +
+            "PROPERTIES (storage = 'heap', pagesize = 4096);");
+
+        ArrayList<TupleLiteral> expected = insertThenDelete("opt_heap", 600, 5);
+
+        int pagesBefore = getNumPages("opt_heap");
+        tryDoCommand("OPTIMIZE opt_heap;");
+        int pagesAfter = getNumPages("opt_heap");
+
+        assert pagesAfter < pagesBefore :
+            "Expected fewer than " + pagesBefore + " pages; got " + pagesAfter;
+
+        CommandResult result =
+            server.doCommand("SELECT * FROM opt_heap", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+
+        // The compacted table must still accept new rows.
+        tryDoCommand("INSERT INTO opt_heap VALUES (1000, 'after optimize');");
+        expected.add(new TupleLiteral(1000, "after optimize"));
+
+        result = server.doCommand("SELECT * FROM opt_heap", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+    }
+
+
+    /**
+     * Deletes most of the rows in a B<sup>+</sup> tree file, then verifies
+     * that <tt>OPTIMIZE</tt> merges the emptied leaves, and that the rows are
+     * still produced in order.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testOptimizeBTreeTable() throws Exception {
+        tryDoCommand("CREATE TABLE opt_btree (a INTEGER, b VARCHAR(40)) " +
+            "PROPERTIES (storage = 'btree', pagesize = 4096);");
+
+        ArrayList<TupleLiteral> expected =
+            insertThenDelete("opt_btree", 600, 5);
+
+        int pagesBefore = getNumPages("opt_btree");
+        tryDoCommand("OPTIMIZE opt_btree;");
+        int pagesAfter = getNumPages("opt_btree");
+
+        assert pagesAfter < pagesBefore :
+            "Expected fewer than " + pagesBefore + " pages; got " + pagesAfter;
+
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("opt_btree");
+        assert tableInfo.getTupleFile().verify().isEmpty();
+
+        CommandResult result =
+            server.doCommand("SELECT * FROM opt_btree", true);
+        assert checkOrderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+    }
+
+
+    /**
+     * Optimizes a heap file within a transaction that is then rolled back.
+     * The emptied pages must not be truncated until the transaction commits,
+     * so that rolling back can restore the tuples that were moved out of
+     * them.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testOptimizeHeapTableRolledBack() throws Exception {
+        tryDoCommand("CREATE TABLE opt_heap_rb (a INTEGER, b VARCHAR(40)) " +
+            "PROPERTIES (storage = 'heap', pagesize = 4096);");
+
+        ArrayList<TupleLiteral> expected =
+            insertThenDelete("opt_heap_rb", 600, 5);
+
+        int pagesBefore = getNumPages("opt_heap_rb");
+        tryDoCommand("BEGIN;");
+        tryDoCommand("OPTIMIZE opt_heap_rb;");
+        assert getNumPages("opt_heap_rb") == pagesBefore;
+        tryDoCommand("ROLLBACK;");
+        assert getNumPages("opt_heap_rb") == pagesBefore;
+
+        CommandResult result =
+            server.doCommand("SELECT * FROM opt_heap_rb", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+
+        // Optimizing the table again, and committing, truncates the file.
+        tryDoCommand("BEGIN;");
+        tryDoCommand("OPTIMIZE opt_heap_rb;");
+        tryDoCommand("COMMIT;");
+        assert getNumPages("opt_heap_rb") < pagesBefore;
+
+        result = server.doCommand("SELECT * FROM opt_heap_rb", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+    }
+
+
+    /**
+     * Verifies that optimizing a heap file with nothing to reclaim leaves the
+     * file alone.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testOptimizeFullHeapTable() throws Exception {
+        tryDoCommand("CREATE TABLE opt_heap_full (a INTEGER, b VARCHAR(40)) " +
+            "PROPERTIES (storage = 'heap', pagesize = 4096);");
+
+        ArrayList<TupleLiteral> expected =
+            insertThenDelete("opt_heap_full", 200, 1);
+
+        int pagesBefore = getNumPages("opt_heap_full");
+        tryDoCommand("OPTIMIZE opt_heap_full;");
+        assert getNumPages("opt_heap_full") == pagesBefore;
+
+        CommandResult result =
+            server.doCommand("SELECT * FROM opt_heap_full", true);
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]),
+            result);
+    }
+
+
+    /**
+     * Builds a two-leaf B<sup>+</sup> tree with an index on it, where neither
+     * leaf is less than half full (so deletes don't coalesce them), but the
+     * right leaf's tuples exactly fit into the left leaf's free space.  Then
+     * <tt>OPTIMIZE</tt> merges the leaves, moving the right leaf's tuples,
+     * and every row must still be found through the index.
+     *
+     * @throws Exception if any query parsing or execution issues occur.
+     */
+    public void testOptimizeIndexedBTreeTable() throws Exception {
+        tryDoCommand("CREATE TABLE opt_btree_idx (a INTEGER, " +
+            "b VARCHAR(100)) PROPERTIES (storage = 'btree', pagesize = 512);");
+
+        // Each tuple takes 7 bytes plus the length of its string, and a leaf
+        // has 507 bytes of space for tuples.  The sixth 100-byte tuple splits
+        // the leaf into {10, 20, 30} and {40, 50, 60}.
+        for (int a = 10; a <= 60; a += 10)
+            insertRow("opt_btree_idx", a, 100);
+
+        // Leave 251 bytes of tuples in the left leaf, and 256 bytes of tuples
+        // in the right leaf.  Inserting before deleting keeps both leaves at
+        // least half full throughout.
+        insertRow("opt_btree_idx", 15, 51);
+        insertRow("opt_btree_idx", 45, 56);
+        tryDoCommand("DELETE FROM opt_btree_idx WHERE a = 30 OR a = 60;");
+
+        tryDoCommand("CREATE INDEX idx_opt_b ON opt_btree_idx (b);");
+
+        int pagesBefore = getNumPages("opt_btree_idx");
+        tryDoCommand("OPTIMIZE opt_btree_idx;");
+        int pagesAfter = getNumPages("opt_btree_idx");
+        assert pagesAfter < pagesBefore :
+            "Expected fewer than " + pagesBefore + " pages; got " + pagesAfter;
+
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("opt_btree_idx");
+        IndexManager indexManager =
+            server.getStorageManager().getIndexManager();
+        IndexInfo indexInfo = indexManager.openIndex(tableInfo, "idx_opt_b");
+        assert indexInfo.getTupleFile().verify().isEmpty();
+
+        for (int a : new int[] {10, 15, 20, 40, 45, 50}) {
+            TupleLiteral row = makeRow(a, a == 15 ? 51 : (a == 45 ? 56 : 100));
+            TupleLiteral key = IndexUtils.makeTableSearchKey(
+                indexInfo.getColumnRefs(), row, /* findExactTuple */ false);
+            PageTuple idxTup =
+                IndexUtils.findTupleInIndex(key, indexInfo.getTupleFile());
+            assert idxTup != null : "Index has no entry for " + row;
+
+            // The last column of the index entry refers to the table's tuple.
+            FilePointer fptr = (FilePointer)
+                idxTup.getColumnValue(idxTup.getColumnCount() - 1);
+            Tuple tableTup = tableInfo.getTupleFile().getTuple(fptr);
+            assert TupleLiteral.fromTuple(tableTup).equals(row) :
+                "Index entry for " + row + " refers to " + tableTup;
+            idxTup.unpin();
+            tableTup.unpin();
+        }
+    }
+
+
+    /**
+     * Returns a row whose <tt>a</tt> value is {@code a}, and whose string
+     * value is padded so that the row takes {@code tupleSize} bytes in a
+     * B<sup>+</sup> tree leaf.
+     */
+    private TupleLiteral makeRow(int a, int tupleSize) {
+        StringBuilder buf = new StringBuilder("row " + a + " ");
+        while (buf.length() < tupleSize - 7)
+            buf.append('x');
+
+        return new TupleLiteral(a, buf.toString());
+    }
+
+
+    private void insertRow(String tableName, int a, int tupleSize)
+        throws Exception {
+        TupleLiteral row = makeRow(a, tupleSize);
+        tryDoCommand(String.format("INSERT INTO %s VALUES (%d, '%s');",
+            tableName, a, row.getColumnValue(1)));
+    }
+}
@@ -0,0 +1,101 @@
+package edu.caltech.test.nanodb.storage;
+
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.storage.DataFormatException;
+import edu.caltech.nanodb.storage.PageCompressor;
+
+
+/**
+ * Tests to exercise the page compressor, making sure that data of all kinds
+ * survives a round-trip through compression and decompression.
+ */
+@Test(groups = {"storage", "framework"})
+public class TestPageCompressor {
+
+    /**
+     * Compresses and decompresses the data, checks that the result matches,
+     * and returns the compressed size.
+     */
+    private int roundTrip(byte[] data) {
+        byte[] compressed =
+            new byte[PageCompressor.maxCompressedLength(data.length)];
+        int len = PageCompressor.compress(data, data.length, compressed);
+        assert len <= compressed.length;
+
+        byte[] result = new byte[data.length];
+        PageCompressor.decompress(compressed, 0, len, result, data.length);
+        assert Arrays.equals(data, result);
+
+        return len;
+    }
+
+
+    public void testSmallInputs() {
+        Random rand = new Random(12345);
+        for (int size = 0; size < 40; size++) {
+            byte[] data = new byte[size];
+            rand.nextBytes(data);
+            roundTrip(data);
+
+            Arrays.fill(data, (byte) 7);
+            roundTrip(data);
+        }
+    }
+
+
+    public void testEmptyPage() {
+        int len = roundTrip(new byte[8192]);
+        assert len < 100 : "empty page compressed to " + len + " bytes";
+    }
+
+
+    public void testRandomPage() {
+        byte[] data = new byte[8192];
+        new Random(42).nextBytes(data);
+        roundTrip(data);
+    }
+
+
+    public void testTextPage() {
+        // Row-like text with a limited vocabulary should compress well.
+        String[] words = {"pending", "shipped", "delivered", "returned",
+            "Pasadena", "Los Angeles", "San Diego", "Sacramento"};
+        Random rand = new Random(7);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; buf.length() < 8192; i++) {
+            buf.append(String.format("order %06d|status %s|city %s|\n", i,
+                words[rand.nextInt(4)], words[4 + rand.nextInt(4)]));
+        }
+
+        byte[] data = Arrays.copyOf(buf.toString().getBytes(), 8192);
+        int len = roundTrip(data);
+        assert len < data.length / 2 : "text compressed to " + len + " bytes";
+    }
+
+
+    public void testLongRuns() {
+        // Runs longer than 255 bytes exercise the extended length encoding.
+        byte[] data = new byte[65536];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) ((i / 1000) % 3);
+        roundTrip(data);
+    }
+
+
+    @Test(expectedExceptions = DataFormatException.class)
+    public void testCorruptData() {
+        byte[] data = new byte[4096];
+        Arrays.fill(data, (byte) 1);
+
+        byte[] compressed = new byte[PageCompressor.maxCompressedLength(4096)];
+        int len = PageCompressor.compress(data, data.length, compressed);
+
+        // Truncating the compressed data must be detected.
+        PageCompressor.decompress(compressed, 0, len - 1, new byte[4096], 4096);
+    }
+}
@@ -0,0 +1,161 @@
+package edu.caltech.test.nanodb.storage;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.OrderByExpression;
+import edu.caltech.nanodb.expressions.TupleComparator;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.Tuple;
+import edu.caltech.nanodb.storage.PageTuple;
+import edu.caltech.nanodb.storage.RowBuffer;
+
+
+/**
+ * This test class exercises the functionality of the
+ * {@link edu.caltech.nanodb.storage.RowBuffer} class.
+ */
+@Test(groups = {"storage", "framework"})
+public class TestRowBuffer {
+
+    private Schema makeSchema() {
+        return new Schema(
+            new ColumnInfo("A", ColumnType.INTEGER),
+            new ColumnInfo("B", ColumnType.VARCHAR(20)),
+            new ColumnInfo("C", ColumnType.DOUBLE)
+        );
+    }
+
+
+    private TupleLiteral makeRow(int i) {
+        return new TupleLiteral(i % 97, (i % 5 == 0) ? null : "row" + i,
+            (double) i / 4);
+    }
+
+
+    /**
+     * Verifies that rows are read back unchanged, including <tt>NULL</tt>s.
+     */
+    public void testAddAndGet() {
+        RowBuffer buffer = new RowBuffer(makeSchema(), Long.MAX_VALUE);
+        assert buffer.isEmpty();
+
+        for (int i = 0; i < 1000; i++)
+            buffer.add(makeRow(i));
+
+        assert buffer.size() == 1000;
+        assert !buffer.isSpilled();
+        for (int i = 0; i < 1000; i++) {
+            assert TupleComparator.areTuplesEqual(makeRow(i), buffer.get(i)) :
+                "Row " + i + " was " + buffer.get(i);
+        }
+
+        buffer.clear();
+        assert buffer.isEmpty();
+    }
+
+
+    /**
+     * Verifies that rows can be read back, in order and out of order, after
+     * most of them are spilled to disk.
+     */
+    public void testSpill() {
+        RowBuffer buffer = new RowBuffer(makeSchema(), 2048, 512);
+        for (int i = 0; i < 5000; i++)
+            buffer.add(makeRow(i));
+
+        assert buffer.isSpilled();
+        assert buffer.getMemoryUsage() < 5000 * 20;
+
+        for (int i = 0; i < 5000; i++)
+            assert TupleComparator.areTuplesEqual(makeRow(i), buffer.get(i));
+
+        // Views of spilled rows stay valid as other chunks are loaded.
+        Tuple first = buffer.get(0);
+        for (int i = 4999; i >= 0; i -= 37)
+            assert TupleComparator.areTuplesEqual(makeRow(i), buffer.get(i));
+
+        assert TupleComparator.areTuplesEqual(makeRow(0), first);
+
+        buffer.clear();
+    }
+
+
+    /**
+     * Verifies that sorting reorders the rows, keeping equal rows in the
+     * order they were added.
+     */
+    public void testSort() {
+        Schema schema = makeSchema();
+        RowBuffer buffer = new RowBuffer(schema, Long.MAX_VALUE, 1024);
+        List<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            buffer.add(makeRow(i));
+            expected.add(makeRow(i));
+        }
+
+        List<OrderByExpression> orderBy = new ArrayList<>();
+        orderBy.add(new OrderByExpression(
+            new ColumnValue(new ColumnName("A")), false));
+        TupleComparator comparator = new TupleComparator(schema, orderBy);
+
+        buffer.sort(comparator);
+        expected.sort(comparator);
+
+        for (int i = 0; i < expected.size(); i++) {
+            assert TupleComparator.areTuplesEqual(expected.get(i), buffer.get(i)) :
+                "Row " + i + " was " + buffer.get(i);
+        }
+    }
+
+
+    /**
+     * Verifies that reading a column that was projected out of a page tuple
+     * is an error, and that copies of the tuple get <tt>NULL</tt> for it.
+     */
+    public void testProjectedColumns() {
+        RowBuffer buffer = new RowBuffer(makeSchema(), Long.MAX_VALUE);
+        buffer.add(makeRow(1));
+
+        PageTuple tup = (PageTuple) buffer.get(0);
+        BitSet projection = new BitSet();
+        projection.set(0);
+        projection.set(2);
+        tup.setProjectedColumns(projection);
+
+        assert !tup.isColumnProjectedOut(0);
+        assert tup.isColumnProjectedOut(1);
+        assert tup.getColumnValue(0).equals(1);
+
+        try {
+            tup.getColumnValue(1);
+            assert false : "Reading a projected-out column should fail";
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        try {
+            tup.isNullValue(1);
+            assert false : "Reading a projected-out column should fail";
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        TupleLiteral expected = new TupleLiteral(1, null, 0.25);
+        assert TupleComparator.areTuplesEqual(expected,
+            TupleLiteral.fromTuple(tup));
+
+        RowBuffer copy = new RowBuffer(makeSchema(), Long.MAX_VALUE);
+        copy.add(tup);
+        assert TupleComparator.areTuplesEqual(expected, copy.get(0));
+    }
+}
@@ -0,0 +1,185 @@
+package edu.caltech.test.nanodb.storage.heapfile;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.expressions.ColumnName;
+import edu.caltech.nanodb.expressions.ColumnValue;
+import edu.caltech.nanodb.expressions.CompareOperator;
+import edu.caltech.nanodb.expressions.LiteralValue;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.storage.ColumnRangeFilter;
+import edu.caltech.nanodb.storage.heapfile.HeapTupleFile;
+import edu.caltech.nanodb.storage.heapfile.ZoneMap;
+import edu.caltech.test.nanodb.storage.TableFormatTestCase;
+
+
+/**
+ * This test class exercises the zone maps of heap files, verifying that the
+ * zone maps are kept consistent with the data as it is inserted, updated,
+ * deleted and compacted, and that scans which skip zones still produce the
+ * right results.
+ */
+@Test(groups = {"hw1"})
+public class TestHeapZoneMaps extends TableFormatTestCase {
+
+    /**
+     * Creates a heap table with small pages, and loads it in order of its
+     * key so that each data page covers a narrow range of keys.
+     */
+    private void loadTable(String tableName, int numRows) throws Exception {
+        tryDoCommand("CREATE TABLE " + tableName + " (id INTEGER, " +
+            "grp INTEGER, note VARCHAR(10)) PROPERTIES (pagesize = 512);",
+            false);
+
+        for (int i = 0; i < numRows; i++) {
+            String note = (i % 7 == 0) ? "NULL" : "'n" + i + "'";
+            tryDoCommand(String.format(
+                "INSERT INTO %s VALUES (%d, %d, %s);", tableName, i, i % 5,
+                note), false);
+        }
+    }
+
+
+    private HeapTupleFile getHeapFile(String tableName) {
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable(tableName);
+        return (HeapTupleFile) tableInfo.getTupleFile();
+    }
+
+
+    private void checkZoneMap(String tableName) {
+        List<String> errors = getHeapFile(tableName).verify();
+        assert errors.isEmpty() : errors;
+    }
+
+
+    /**
+     * Verifies that range, equality and <tt>NULL</tt> queries return exactly
+     * the rows they should, and that the zone map actually lets a range scan
+     * skip over the leading pages of the file.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testRangeQueries() throws Exception {
+        loadTable("zm_ranges", 500);
+        checkZoneMap("zm_ranges");
+
+        CommandResult result = tryDoCommand(
+            "SELECT id FROM zm_ranges WHERE id >= 120 AND id < 130;", true);
+        ArrayList<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 120; i < 130; i++)
+            expected.add(new TupleLiteral(i));
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]), result);
+
+        result = tryDoCommand(
+            "SELECT id FROM zm_ranges WHERE id = 250 AND note IS NOT NULL;",
+            true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(250)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM zm_ranges WHERE id < 30 AND note IS NULL;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(0), new TupleLiteral(7), new TupleLiteral(14),
+            new TupleLiteral(21), new TupleLiteral(28)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM zm_ranges WHERE id > 1000;", true);
+        assert result.getTuples().size() == 0;
+
+        // The first zone that may hold "id >= 450" must be past page 1.
+        HeapTupleFile heapFile = getHeapFile("zm_ranges");
+        ColumnRangeFilter filter = ColumnRangeFilter.fromPredicate(
+            new CompareOperator(CompareOperator.Type.GREATER_OR_EQUAL,
+                new ColumnValue(new ColumnName("id")), new LiteralValue(450)),
+            heapFile.getSchema());
+        ZoneMap zoneMap = heapFile.getZoneMap();
+        int numPages = heapFile.getDBFile().getNumPages();
+        int pageNo = zoneMap.findCandidatePage(1, numPages, filter);
+        assert pageNo > 1 && pageNo < numPages : "page " + pageNo;
+    }
+
+
+    /**
+     * Updates values so that they move outside of their zone's original
+     * range, and deletes rows, then verifies that the zone map stays
+     * consistent and that queries still find the rows that now match.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testUpdatesAndDeletes() throws Exception {
+        loadTable("zm_updates", 300);
+
+        tryDoCommand("UPDATE zm_updates SET id = 10000 WHERE id = 5;", false);
+        tryDoCommand("UPDATE zm_updates SET grp = NULL WHERE id = 6;", false);
+        tryDoCommand("DELETE FROM zm_updates WHERE id >= 100 AND id < 200;",
+            false);
+        checkZoneMap("zm_updates");
+
+        CommandResult result = tryDoCommand(
+            "SELECT grp FROM zm_updates WHERE id > 5000;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(0)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM zm_updates WHERE grp IS NULL;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(6)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT COUNT(*) FROM zm_updates WHERE id BETWEEN 90 AND 210;",
+            true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(21L)
+        }, result);
+
+        // Rows inserted into the freed space must still be found.
+        tryDoCommand("INSERT INTO zm_updates VALUES (-1, 1, 'x');", false);
+        result = tryDoCommand(
+            "SELECT id FROM zm_updates WHERE id < 0;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(-1)
+        }, result);
+
+        // ANALYZE rebuilds the zone map with exact ranges.
+        tryDoCommand("ANALYZE zm_updates;", false);
+        checkZoneMap("zm_updates");
+
+        result = tryDoCommand(
+            "SELECT COUNT(*) FROM zm_updates WHERE id >= 200;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(101L)
+        }, result);
+    }
+
+
+    /**
+     * Compacts a heap table after deleting most of its rows, and verifies
+     * that the zone map follows the relocated tuples.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testCompaction() throws Exception {
+        loadTable("zm_compact", 400);
+        tryDoCommand("DELETE FROM zm_compact WHERE grp <> 0;", false);
+        tryDoCommand("OPTIMIZE zm_compact;", false);
+        checkZoneMap("zm_compact");
+
+        CommandResult result = tryDoCommand(
+            "SELECT id FROM zm_compact WHERE id >= 380;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(380), new TupleLiteral(385),
+            new TupleLiteral(390), new TupleLiteral(395)
+        }, result);
+    }
+}
@@ -0,0 +1,240 @@
+package edu.caltech.test.nanodb.storage.paxfile;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import edu.caltech.nanodb.commands.ExecutionException;
+import edu.caltech.nanodb.expressions.TupleLiteral;
+import edu.caltech.nanodb.relations.ColumnInfo;
+import edu.caltech.nanodb.relations.ColumnType;
+import edu.caltech.nanodb.relations.SQLDataType;
+import edu.caltech.nanodb.relations.Schema;
+import edu.caltech.nanodb.relations.TableInfo;
+import edu.caltech.nanodb.server.CommandResult;
+import edu.caltech.nanodb.storage.DBFile;
+import edu.caltech.nanodb.storage.DBFileType;
+import edu.caltech.nanodb.storage.FileManager;
+import edu.caltech.nanodb.storage.StorageManager;
+import edu.caltech.nanodb.storage.TupleFile;
+import edu.caltech.nanodb.storage.TupleFileManager;
+import edu.caltech.test.nanodb.storage.TableFormatTestCase;
+
+
+/**
+ * This test class exercises basic capabilities of the PAX (columnar) tuple
+ * file, to be sure that inserts work correctly, that updates and deletes are
+ * rejected, and that scans which skip pages using the per-page column
+ * summaries still produce the right results.  As with the heap file tests, the tuple file
+ * format is tested by performing SQL operations against a table of that
+ * format.
+ */
+@Test(groups = {"hw1"})
+public class TestPaxTableFormat extends TableFormatTestCase {
+
+    /**
+     * Inserts into a table file, where everything should stay within a single
+     * data page.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testPaxTableOnePageInsert() throws Exception {
+        tryDoCommand("CREATE TABLE pax_1p_ins (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (storage = 'columnar', pagesize = 4096);", false);
+
+        insertRows("pax_1p_ins", 100, 200, 3, 20, /* ordered */ false,
+            /* delete */ false);
+    }
+
+
+    /**
+     * Inserts into a table file that spans many data pages.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testPaxTableMultiPageInsert() throws Exception {
+        tryDoCommand("CREATE TABLE pax_mp_ins (a INTEGER, b VARCHAR(50)) " +
+            "PROPERTIES (storage = 'columnar', pagesize = 4096);", false);
+
+        insertRows("pax_mp_ins", 1000, 200, 20, 50, /* ordered */ false,
+            /* delete */ false);
+    }
+
+
+    /**
+     * Loads a table in order of its key, so that each data page covers a
+     * narrow range of keys, and then verifies that range queries (which skip
+     * most pages) return exactly the rows they should.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testRangeQueries() throws Exception {
+        tryDoCommand("CREATE TABLE pax_ranges (id INTEGER, grp INTEGER, " +
+            "note VARCHAR(10)) PROPERTIES (storage = 'columnar', " +
+            "pagesize = 512);", false);
+
+        for (int i = 0; i < 500; i++) {
+            String note = (i % 7 == 0) ? "NULL" : "'n" + i + "'";
+            tryDoCommand(String.format(
+                "INSERT INTO pax_ranges VALUES (%d, %d, %s);", i, i % 5, note),
+                false);
+        }
+
+        CommandResult result = tryDoCommand(
+            "SELECT id FROM pax_ranges WHERE id >= 120 AND id < 130;", true);
+        ArrayList<TupleLiteral> expected = new ArrayList<>();
+        for (int i = 120; i < 130; i++)
+            expected.add(new TupleLiteral(i));
+        assert checkUnorderedResults(expected.toArray(new TupleLiteral[0]), result);
+
+        // The literal on the left-hand side of the comparison.
+        result = tryDoCommand(
+            "SELECT id FROM pax_ranges WHERE 495 < id;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(496), new TupleLiteral(497),
+            new TupleLiteral(498), new TupleLiteral(499)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM pax_ranges WHERE id = 250 AND note IS NOT NULL;",
+            true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(250)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM pax_ranges WHERE id < 30 AND note IS NULL;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(0), new TupleLiteral(7), new TupleLiteral(14),
+            new TupleLiteral(21), new TupleLiteral(28)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT id FROM pax_ranges WHERE id > 1000;", true);
+        assert result.getTuples().size() == 0;
+
+        result = tryDoCommand(
+            "SELECT grp, COUNT(*) FROM pax_ranges WHERE id BETWEEN 100 AND 199 " +
+            "GROUP BY grp;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(0, 20L), new TupleLiteral(1, 20L),
+            new TupleLiteral(2, 20L), new TupleLiteral(3, 20L),
+            new TupleLiteral(4, 20L)
+        }, result);
+    }
+
+
+    /**
+     * Verifies that <tt>UPDATE</tt> and <tt>DELETE</tt> fail on a PAX
+     * table, since the format is append-only, and that the table's rows and
+     * page summaries are left unchanged.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testUpdateDeleteRejected() throws Exception {
+        tryDoCommand("CREATE TABLE pax_updates (id INTEGER, val INTEGER) " +
+            "PROPERTIES (storage = 'columnar', pagesize = 512);", false);
+
+        for (int i = 0; i < 300; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO pax_updates VALUES (%d, %d);", i, i), false);
+        }
+
+        CommandResult result = server.doCommand(
+            "UPDATE pax_updates SET val = 10000 WHERE id = 5;", false);
+        assert result.failed();
+        assert result.getFailure() instanceof ExecutionException;
+
+        result = server.doCommand(
+            "DELETE FROM pax_updates WHERE id >= 100 AND id < 200;", false);
+        assert result.failed();
+        assert result.getFailure() instanceof ExecutionException;
+
+        result = tryDoCommand(
+            "SELECT id FROM pax_updates WHERE val > 5000;", true);
+        assert result.getTuples().size() == 0;
+
+        result = tryDoCommand(
+            "SELECT COUNT(*), MIN(id), MAX(id) FROM pax_updates;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(300L, 0, 299)
+        }, result);
+
+        result = tryDoCommand(
+            "SELECT COUNT(*) FROM pax_updates WHERE id BETWEEN 90 AND 210;",
+            true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(121L)
+        }, result);
+
+        // The page summaries should remain consistent with the data.
+        TableInfo tableInfo = server.getStorageManager().getTableManager()
+            .openTable("pax_updates");
+        List<String> errors = tableInfo.getTupleFile().verify();
+        assert errors.isEmpty() : errors;
+    }
+
+
+    /**
+     * Drops a PAX table, and verifies that the table's file is gone and that
+     * a new table can be created with the same name.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testDropPaxTable() throws Exception {
+        tryDoCommand("CREATE TABLE pax_drop (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (storage = 'columnar', pagesize = 512);", false);
+
+        for (int i = 0; i < 100; i++) {
+            tryDoCommand(String.format(
+                "INSERT INTO pax_drop VALUES (%d, 'n%d');", i, i), false);
+        }
+
+        tryDoCommand("DROP TABLE pax_drop;", false);
+
+        FileManager fileManager = server.getStorageManager().getFileManager();
+        assert !fileManager.fileExists("pax_drop.tbl");
+
+        tryDoCommand("CREATE TABLE pax_drop (a INTEGER, b VARCHAR(20)) " +
+            "PROPERTIES (storage = 'columnar', pagesize = 512);", false);
+        tryDoCommand("INSERT INTO pax_drop VALUES (1, 'again');", false);
+
+        CommandResult result = tryDoCommand("SELECT * FROM pax_drop;", true);
+        assert checkUnorderedResults(new TupleLiteral[] {
+            new TupleLiteral(1, "again")
+        }, result);
+    }
+
+
+    /**
+     * Deletes a PAX tuple file directly through its tuple-file manager.
+     *
+     * @throws Exception if an IO error occurs, or if the test fails.
+     */
+    public void testDeletePaxTupleFile() throws Exception {
+        StorageManager storageManager = server.getStorageManager();
+        FileManager fileManager = storageManager.getFileManager();
+
+        Schema schema = new Schema();
+        schema.addColumnInfo(
+            new ColumnInfo("a", "pax_delete",
+                new ColumnType(SQLDataType.INTEGER)));
+
+        // Adding a tuple is logged, so it must happen within a transaction.
+        tryDoCommand("BEGIN;", false);
+
+        DBFile dbFile = fileManager.createDBFile("pax_delete.tbl",
+            DBFileType.PAX_TUPLE_FILE, 512);
+        TupleFileManager tupleFileManager =
+            storageManager.getTupleFileManager(DBFileType.PAX_TUPLE_FILE);
+        TupleFile tupleFile = tupleFileManager.createTupleFile(dbFile, schema);
+        tupleFile.addTuple(new TupleLiteral(42));
+
+        tupleFileManager.deleteTupleFile(tupleFile);
+        tryDoCommand("COMMIT;", false);
+
+        assert !fileManager.fileExists("pax_delete.tbl");
+    }
+}